@@ -0,0 +1,168 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.benchmarks.buffer;
+
+import org.jboss.netty.benchmarks.AbstractBenchmark;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.buffer.PooledChannelBufferFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures the random and the bulk access operations of the
+ * {@link ChannelBuffer} implementations.  Each operation accesses the whole
+ * content of a {@code size}-byte buffer.  A {@code composite} buffer is made
+ * of four components so that an access often crosses a component boundary.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+@State(Scope.Thread)
+public class ChannelBufferBenchmark extends AbstractBenchmark {
+
+    @Param({ "heap", "direct", "composite", "dynamic", "pooled" })
+    public String type;
+
+    @Param({ "1024", "65536" })
+    public int size;
+
+    private ChannelBuffer buffer;
+    private byte[] array;
+
+    @Setup
+    public void setUp() {
+        buffer = newBuffer(type, size);
+        array = new byte[size];
+        for (int i = 0; i < size; i ++) {
+            array[i] = (byte) i;
+        }
+        buffer.setBytes(0, array);
+    }
+
+    @TearDown
+    public void tearDown() {
+        ChannelBuffers.release(buffer);
+        buffer = null;
+    }
+
+    static ChannelBuffer newBuffer(String type, int size) {
+        ChannelBuffer buf;
+        if ("heap".equals(type)) {
+            buf = ChannelBuffers.buffer(size);
+        } else if ("direct".equals(type)) {
+            buf = ChannelBuffers.directBuffer(size);
+        } else if ("composite".equals(type)) {
+            int componentSize = size / 4;
+            buf = ChannelBuffers.wrappedBuffer(
+                    newComponent(componentSize), newComponent(componentSize),
+                    newComponent(componentSize),
+                    newComponent(size - componentSize * 3));
+        } else if ("dynamic".equals(type)) {
+            buf = ChannelBuffers.dynamicBuffer(size);
+        } else if ("pooled".equals(type)) {
+            buf = PooledChannelBufferFactory.getInstance().getBuffer(size);
+        } else {
+            throw new IllegalArgumentException("type: " + type);
+        }
+
+        buf.clear();
+        buf.writeZero(size);
+        return buf;
+    }
+
+    private static ChannelBuffer newComponent(int size) {
+        ChannelBuffer buf = ChannelBuffers.buffer(size);
+        buf.writerIndex(size);
+        return buf;
+    }
+
+    @Benchmark
+    public int getByte() {
+        ChannelBuffer buffer = this.buffer;
+        int sum = 0;
+        for (int i = 0; i < size; i ++) {
+            sum += buffer.getByte(i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public ChannelBuffer setByte() {
+        ChannelBuffer buffer = this.buffer;
+        for (int i = 0; i < size; i ++) {
+            buffer.setByte(i, i);
+        }
+        return buffer;
+    }
+
+    @Benchmark
+    public int getInt() {
+        ChannelBuffer buffer = this.buffer;
+        int sum = 0;
+        for (int i = 0; i < size; i += 4) {
+            sum += buffer.getInt(i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public ChannelBuffer setInt() {
+        ChannelBuffer buffer = this.buffer;
+        for (int i = 0; i < size; i += 4) {
+            buffer.setInt(i, i);
+        }
+        return buffer;
+    }
+
+    @Benchmark
+    public byte[] getBytes() {
+        buffer.getBytes(0, array);
+        return array;
+    }
+
+    @Benchmark
+    public ChannelBuffer setBytes() {
+        buffer.setBytes(0, array);
+        return buffer;
+    }
+
+    @Benchmark
+    public int readWrite() {
+        ChannelBuffer buffer = this.buffer;
+        buffer.clear();
+        for (int i = 0; i < size; i += 8) {
+            buffer.writeLong(i);
+        }
+        int sum = 0;
+        while (buffer.readable()) {
+            sum += buffer.readLong();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public ChannelBuffer allocate() {
+        ChannelBuffer buf = newBuffer(type, size);
+        ChannelBuffers.release(buf);
+        return buf;
+    }
+}
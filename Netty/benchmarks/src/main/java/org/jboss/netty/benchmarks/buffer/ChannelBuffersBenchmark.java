@@ -0,0 +1,88 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.benchmarks.buffer;
+
+import java.nio.charset.Charset;
+import java.util.Random;
+
+import org.jboss.netty.benchmarks.AbstractBenchmark;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the utility methods of {@link ChannelBuffers} which copy or
+ * convert the whole content: {@code copiedBuffer()}, {@code toString()} and
+ * {@code hexDump()}.  The text is made of the printable ASCII characters, so
+ * it is encoded to the same bytes with all the charsets.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+@State(Scope.Thread)
+public class ChannelBuffersBenchmark extends AbstractBenchmark {
+
+    @Param({ "US-ASCII", "ISO-8859-1", "UTF-8" })
+    public String charset;
+
+    @Param({ "16", "1024" })
+    public int length;
+
+    private Charset cs;
+    private String text;
+    private byte[] array;
+    private ChannelBuffer buffer;
+
+    @Setup
+    public void setUp() {
+        cs = Charset.forName(charset);
+
+        // A fixed seed so that every run measures the same content.
+        Random random = new Random(0);
+        StringBuilder buf = new StringBuilder(length);
+        for (int i = 0; i < length; i ++) {
+            buf.append((char) (' ' + random.nextInt(95)));
+        }
+        text = buf.toString();
+        array = text.getBytes(cs);
+        buffer = ChannelBuffers.wrappedBuffer(array);
+    }
+
+    @Benchmark
+    public ChannelBuffer copiedBufferFromString() {
+        return ChannelBuffers.copiedBuffer(text, cs);
+    }
+
+    @Benchmark
+    public ChannelBuffer copiedBufferFromArray() {
+        return ChannelBuffers.copiedBuffer(array);
+    }
+
+    @Benchmark
+    public String decodeString() {
+        return buffer.toString(cs);
+    }
+
+    @Benchmark
+    public String hexDump() {
+        return ChannelBuffers.hexDump(buffer);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.benchmarks.channel;
+
+import org.jboss.netty.benchmarks.AbstractBenchmark;
+import org.jboss.netty.channel.ChannelDownstreamHandler;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelUpstreamHandler;
+import org.jboss.netty.channel.DefaultChannelPipeline;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelDownstreamHandler;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jboss.netty.handler.codec.embedder.EncoderEmbedder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the cost of passing a message through a
+ * {@link DefaultChannelPipeline} of {@code depth} handlers which do nothing
+ * but forward the message to the next handler.  The upstream direction is
+ * driven by a {@link DecoderEmbedder} and the downstream direction by an
+ * {@link EncoderEmbedder}.  The {@code simple} handlers extend
+ * {@link SimpleChannelUpstreamHandler} and {@link SimpleChannelDownstreamHandler},
+ * which look at the type of every event, while the {@code raw} handlers
+ * forward the event as it is.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+@State(Scope.Thread)
+public class PipelineBenchmark extends AbstractBenchmark {
+
+    private static final Object MESSAGE = new Object();
+
+    @Param({ "1", "8", "32" })
+    public int depth;
+
+    @Param({ "simple", "raw" })
+    public String handler;
+
+    private DecoderEmbedder<Object> upstream;
+    private EncoderEmbedder<Object> downstream;
+
+    @Setup
+    public void setUp() {
+        boolean simple = "simple".equals(handler);
+        if (!simple && !"raw".equals(handler)) {
+            throw new IllegalArgumentException("handler: " + handler);
+        }
+
+        ChannelUpstreamHandler[] upstreamHandlers = new ChannelUpstreamHandler[depth];
+        ChannelDownstreamHandler[] downstreamHandlers = new ChannelDownstreamHandler[depth];
+        for (int i = 0; i < depth; i ++) {
+            if (simple) {
+                upstreamHandlers[i] = new SimpleChannelUpstreamHandler() {
+                    @Override
+                    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+                        ctx.sendUpstream(e);
+                    }
+                };
+                downstreamHandlers[i] = new SimpleChannelDownstreamHandler() {
+                    @Override
+                    public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) {
+                        ctx.sendDownstream(e);
+                    }
+                };
+            } else {
+                upstreamHandlers[i] = new ChannelUpstreamHandler() {
+                    public void handleUpstream(ChannelHandlerContext ctx, ChannelEvent e) {
+                        ctx.sendUpstream(e);
+                    }
+                };
+                downstreamHandlers[i] = new ChannelDownstreamHandler() {
+                    public void handleDownstream(ChannelHandlerContext ctx, ChannelEvent e) {
+                        ctx.sendDownstream(e);
+                    }
+                };
+            }
+        }
+
+        upstream = new DecoderEmbedder<Object>(upstreamHandlers);
+        downstream = new EncoderEmbedder<Object>(downstreamHandlers);
+    }
+
+    @Benchmark
+    public Object upstream() {
+        upstream.offer(MESSAGE);
+        return upstream.poll();
+    }
+
+    @Benchmark
+    public Object downstream() {
+        downstream.offer(MESSAGE);
+        return downstream.poll();
+    }
+}
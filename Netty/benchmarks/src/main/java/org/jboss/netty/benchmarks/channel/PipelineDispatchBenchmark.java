@@ -0,0 +1,203 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.benchmarks.channel;
+
+import java.net.SocketAddress;
+
+import org.jboss.netty.benchmarks.AbstractBenchmark;
+import org.jboss.netty.channel.AbstractChannel;
+import org.jboss.netty.channel.AbstractChannelSink;
+import org.jboss.netty.channel.ChannelConfig;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.DefaultChannelConfig;
+import org.jboss.netty.channel.DefaultChannelPipeline;
+import org.jboss.netty.channel.DownstreamMessageEvent;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelDownstreamHandler;
+import org.jboss.netty.channel.SimpleChannelHandler;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.StaticChannelPipeline;
+import org.jboss.netty.channel.UpstreamMessageEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures how many message events per second pass through a pipeline of
+ * ten handlers laid out like a typical application pipeline: a few codec-like
+ * handlers which create a new event for every message, a few handlers which
+ * look at every message and forward it, and a few handlers which are only
+ * interested in the other events, such as an exception logger.  The last
+ * kind lets the pipeline skip the handler for message events.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+@State(Scope.Thread)
+public class PipelineDispatchBenchmark extends AbstractBenchmark {
+
+    private static final Object MESSAGE = new Object();
+
+    @Param({ "default", "static" })
+    public String pipeline;
+
+    private ChannelPipeline p;
+    private MessageEvent upstreamEvent;
+    private MessageEvent downstreamEvent;
+
+    @Setup
+    public void setUp() {
+        ChannelHandler[] handlers = {
+                new ExceptionLogger(),
+                new UpstreamCodec(),
+                new DownstreamCodec(),
+                new UpstreamForwarder(),
+                new ExceptionLogger(),
+                new DownstreamForwarder(),
+                new UpstreamCodec(),
+                new DownstreamCodec(),
+                new ExceptionLogger(),
+                new UpstreamForwarder(),
+        };
+
+        if ("default".equals(pipeline)) {
+            p = new DefaultChannelPipeline();
+            for (int i = 0; i < handlers.length; i ++) {
+                p.addLast(String.valueOf(i), handlers[i]);
+            }
+        } else if ("static".equals(pipeline)) {
+            p = new StaticChannelPipeline(handlers);
+        } else {
+            throw new IllegalArgumentException("pipeline: " + pipeline);
+        }
+
+        BenchmarkChannel channel = new BenchmarkChannel(p);
+        upstreamEvent = new UpstreamMessageEvent(channel, MESSAGE, null);
+        downstreamEvent = new DownstreamMessageEvent(
+                channel, Channels.succeededFuture(channel), MESSAGE, null);
+    }
+
+    @Benchmark
+    public void upstream() {
+        p.sendUpstream(upstreamEvent);
+    }
+
+    @Benchmark
+    public void downstream() {
+        p.sendDownstream(downstreamEvent);
+    }
+
+    private static final class ExceptionLogger extends SimpleChannelHandler {
+        ExceptionLogger() {
+            super();
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+            e.getCause().printStackTrace();
+        }
+    }
+
+    private static final class UpstreamCodec extends SimpleChannelUpstreamHandler {
+        UpstreamCodec() {
+            super();
+        }
+
+        @Override
+        public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+            Channels.fireMessageReceived(ctx, e.getMessage(), e.getRemoteAddress());
+        }
+    }
+
+    private static final class DownstreamCodec extends SimpleChannelDownstreamHandler {
+        DownstreamCodec() {
+            super();
+        }
+
+        @Override
+        public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) {
+            Channels.write(ctx, e.getFuture(), e.getMessage(), e.getRemoteAddress());
+        }
+    }
+
+    private static final class UpstreamForwarder extends SimpleChannelUpstreamHandler {
+        UpstreamForwarder() {
+            super();
+        }
+
+        @Override
+        public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+            ctx.sendUpstream(e);
+        }
+    }
+
+    private static final class DownstreamForwarder extends SimpleChannelDownstreamHandler {
+        DownstreamForwarder() {
+            super();
+        }
+
+        @Override
+        public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) {
+            ctx.sendDownstream(e);
+        }
+    }
+
+    private static final class BenchmarkChannel extends AbstractChannel {
+        private final ChannelConfig config = new DefaultChannelConfig();
+
+        BenchmarkChannel(ChannelPipeline pipeline) {
+            super(null, null, pipeline, new DiscardingSink());
+        }
+
+        public ChannelConfig getConfig() {
+            return config;
+        }
+
+        public boolean isBound() {
+            return true;
+        }
+
+        public boolean isConnected() {
+            return true;
+        }
+
+        public SocketAddress getLocalAddress() {
+            return null;
+        }
+
+        public SocketAddress getRemoteAddress() {
+            return null;
+        }
+    }
+
+    private static final class DiscardingSink extends AbstractChannelSink {
+        DiscardingSink() {
+            super();
+        }
+
+        public void eventSunk(ChannelPipeline pipeline, ChannelEvent e) {
+            // Discard
+        }
+    }
+}
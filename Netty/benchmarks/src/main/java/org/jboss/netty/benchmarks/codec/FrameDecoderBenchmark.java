@@ -0,0 +1,128 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.benchmarks.codec;
+
+import org.jboss.netty.benchmarks.AbstractBenchmark;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelUpstreamHandler;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jboss.netty.handler.codec.frame.FrameDecoder;
+import org.jboss.netty.handler.codec.frame.LengthFieldBasedFrameDecoder;
+import org.jboss.netty.handler.codec.replay.ReplayingDecoder;
+import org.jboss.netty.handler.codec.replay.VoidEnum;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures how fast a {@link FrameDecoder} and a {@link ReplayingDecoder}
+ * split a stream of length-prefixed frames.  An operation decodes
+ * {@value #STREAM_SIZE} bytes of the stream which arrive in
+ * {@code chunkSize}-byte chunks, just like they are read from a socket.
+ * A frame which spans over two or more chunks has to be cumulated by the
+ * decoder, either by copying ("frame") or by composing ("composite") the
+ * chunks.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+@State(Scope.Thread)
+public class FrameDecoderBenchmark extends AbstractBenchmark {
+
+    static final int STREAM_SIZE = 65536;
+
+    @Param({ "frame", "composite", "replaying" })
+    public String decoder;
+
+    @Param({ "32", "1024" })
+    public int frameSize;
+
+    @Param({ "512", "8192" })
+    public int chunkSize;
+
+    private DecoderEmbedder<ChannelBuffer> embedder;
+    private ChannelBuffer[] chunks;
+
+    @Setup
+    public void setUp() {
+        ChannelUpstreamHandler handler;
+        if ("frame".equals(decoder)) {
+            handler = new LengthFieldBasedFrameDecoder(Integer.MAX_VALUE, 0, 4, 0, 4);
+        } else if ("composite".equals(decoder)) {
+            FrameDecoder frameDecoder =
+                new LengthFieldBasedFrameDecoder(Integer.MAX_VALUE, 0, 4, 0, 4);
+            frameDecoder.setCompositeCumulation(true);
+            handler = frameDecoder;
+        } else if ("replaying".equals(decoder)) {
+            handler = new LengthFieldReplayingDecoder();
+        } else {
+            throw new IllegalArgumentException("decoder: " + decoder);
+        }
+        embedder = new DecoderEmbedder<ChannelBuffer>(handler);
+
+        // Fill the stream with as many whole frames as possible.
+        int frames = STREAM_SIZE / (frameSize + 4);
+        ChannelBuffer stream = ChannelBuffers.buffer(frames * (frameSize + 4));
+        for (int i = 0; i < frames; i ++) {
+            stream.writeInt(frameSize);
+            for (int j = 0; j < frameSize; j ++) {
+                stream.writeByte(j);
+            }
+        }
+
+        int length = stream.readableBytes();
+        chunks = new ChannelBuffer[(length + chunkSize - 1) / chunkSize];
+        for (int i = 0; i < chunks.length; i ++) {
+            chunks[i] = stream.readSlice(Math.min(chunkSize, stream.readableBytes()));
+        }
+    }
+
+    @Benchmark
+    public void decode(Blackhole blackhole) {
+        DecoderEmbedder<ChannelBuffer> embedder = this.embedder;
+        for (ChannelBuffer chunk: chunks) {
+            // A duplicate because the decoder moves the readerIndex.
+            embedder.offer(chunk.duplicate());
+            for (;;) {
+                ChannelBuffer frame = embedder.poll();
+                if (frame == null) {
+                    break;
+                }
+                blackhole.consume(frame);
+            }
+        }
+    }
+
+    /**
+     * Decodes the same frames as the {@link LengthFieldBasedFrameDecoder}
+     * above does, without checking the readable bytes by itself.
+     */
+    static final class LengthFieldReplayingDecoder extends ReplayingDecoder<VoidEnum> {
+        @Override
+        protected Object decode(ChannelHandlerContext ctx, Channel channel,
+                ChannelBuffer buffer, VoidEnum state) throws Exception {
+            int length = buffer.readInt();
+            return buffer.readBytes(length);
+        }
+    }
+}
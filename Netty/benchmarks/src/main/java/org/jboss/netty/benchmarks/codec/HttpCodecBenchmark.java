@@ -0,0 +1,109 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.benchmarks.codec;
+
+import org.jboss.netty.benchmarks.AbstractBenchmark;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jboss.netty.handler.codec.embedder.EncoderEmbedder;
+import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpRequestDecoder;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseEncoder;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.jboss.netty.util.CharsetUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures {@link HttpRequestDecoder} with a typical browser request and
+ * {@link HttpResponseEncoder} with a typical response of a small document.
+ * The request is offered as one buffer, so the decoder does not have to wait
+ * for more data.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+@State(Scope.Thread)
+public class HttpCodecBenchmark extends AbstractBenchmark {
+
+    private static final String REQUEST =
+        "GET /docs/index.html?lang=en HTTP/1.1\r\n" +
+        "Host: www.example.com\r\n" +
+        "User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:2.0) Gecko/20100101 Firefox/4.0\r\n" +
+        "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\r\n" +
+        "Accept-Language: en-us,en;q=0.5\r\n" +
+        "Accept-Encoding: gzip, deflate\r\n" +
+        "Accept-Charset: ISO-8859-1,utf-8;q=0.7,*;q=0.7\r\n" +
+        "Connection: keep-alive\r\n" +
+        "Referer: http://www.example.com/\r\n" +
+        "Cookie: JSESSIONID=0123456789ABCDEF0123456789ABCDEF; theme=dark\r\n" +
+        "If-Modified-Since: Sat, 01 Jan 2011 00:00:00 GMT\r\n" +
+        "\r\n";
+
+    private DecoderEmbedder<HttpRequest> decoder;
+    private EncoderEmbedder<ChannelBuffer> encoder;
+    private ChannelBuffer request;
+    private ChannelBuffer content;
+
+    @Setup
+    public void setUp() {
+        decoder = new DecoderEmbedder<HttpRequest>(new HttpRequestDecoder());
+        encoder = new EncoderEmbedder<ChannelBuffer>(new HttpResponseEncoder());
+        request = ChannelBuffers.copiedBuffer(REQUEST, CharsetUtil.US_ASCII);
+
+        StringBuilder buf = new StringBuilder();
+        while (buf.length() < 1024) {
+            buf.append("<p>The quick brown fox jumps over the lazy dog.</p>\n");
+        }
+        content = ChannelBuffers.copiedBuffer(buf, CharsetUtil.UTF_8);
+    }
+
+    @Benchmark
+    public HttpRequest decodeRequest() {
+        decoder.offer(request.duplicate());
+        return decoder.poll();
+    }
+
+    @Benchmark
+    public void encodeResponse(Blackhole blackhole) {
+        HttpResponse res = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        res.setHeader(HttpHeaders.Names.CONTENT_TYPE, "text/html; charset=UTF-8");
+        res.setHeader(HttpHeaders.Names.DATE, "Sat, 01 Jan 2011 00:00:00 GMT");
+        res.setHeader(HttpHeaders.Names.SERVER, "Netty");
+        res.setHeader(HttpHeaders.Names.CACHE_CONTROL, "max-age=3600");
+        res.setHeader(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.KEEP_ALIVE);
+        HttpHeaders.setContentLength(res, content.readableBytes());
+        res.setContent(content.duplicate());
+
+        encoder.offer(res);
+        for (;;) {
+            ChannelBuffer buf = encoder.poll();
+            if (buf == null) {
+                break;
+            }
+            blackhole.consume(buf);
+        }
+    }
+}
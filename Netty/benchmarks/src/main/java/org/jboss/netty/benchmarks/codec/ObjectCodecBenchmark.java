@@ -0,0 +1,171 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.benchmarks.codec;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.netty.benchmarks.AbstractBenchmark;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.ChannelDownstreamHandler;
+import org.jboss.netty.channel.ChannelUpstreamHandler;
+import org.jboss.netty.example.localtime.LocalTimeProtocol;
+import org.jboss.netty.handler.codec.binary.BinaryClassRegistry;
+import org.jboss.netty.handler.codec.binary.BinaryObjectDecoder;
+import org.jboss.netty.handler.codec.binary.BinaryObjectEncoder;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jboss.netty.handler.codec.embedder.EncoderEmbedder;
+import org.jboss.netty.handler.codec.frame.LengthFieldBasedFrameDecoder;
+import org.jboss.netty.handler.codec.frame.LengthFieldPrepender;
+import org.jboss.netty.handler.codec.protobuf.ProtobufDecoder;
+import org.jboss.netty.handler.codec.protobuf.ProtobufEncoder;
+import org.jboss.netty.handler.codec.serialization.ObjectDecoder;
+import org.jboss.netty.handler.codec.serialization.ObjectEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares the {@link BinaryObjectEncoder} and {@link BinaryObjectDecoder}
+ * with and without reference tracking ("binary" and "binary-noref"), the
+ * {@link ObjectEncoder} and {@link ObjectDecoder} ("serialization") and the
+ * Google Protocol Buffers codec with a 4-byte length prefix ("protobuf").
+ * A message holds {@code times} records of seven small integers each, taken
+ * from the {@code localtime} example, so that all codecs encode the same
+ * information.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+@State(Scope.Thread)
+public class ObjectCodecBenchmark extends AbstractBenchmark {
+
+    @Param({ "binary", "binary-noref", "serialization", "protobuf" })
+    public String codec;
+
+    @Param({ "1", "32" })
+    public int times;
+
+    private EncoderEmbedder<ChannelBuffer> encoder;
+    private DecoderEmbedder<Object> decoder;
+    private Object message;
+    private ChannelBuffer encoded;
+
+    @Setup
+    public void setUp() {
+        ChannelDownstreamHandler[] encoders;
+        ChannelUpstreamHandler[] decoders;
+        if (codec.startsWith("binary")) {
+            BinaryClassRegistry registry = new BinaryClassRegistry();
+            registry.register(LocalTimes.class);
+            registry.register(LocalTime.class);
+            registry.register(DayOfWeek.class);
+            encoders = new ChannelDownstreamHandler[] {
+                    new BinaryObjectEncoder(registry, "binary".equals(codec)) };
+            decoders = new ChannelUpstreamHandler[] { new BinaryObjectDecoder(registry) };
+            message = newLocalTimes();
+        } else if ("serialization".equals(codec)) {
+            encoders = new ChannelDownstreamHandler[] { new ObjectEncoder() };
+            decoders = new ChannelUpstreamHandler[] { new ObjectDecoder() };
+            message = newLocalTimes();
+        } else if ("protobuf".equals(codec)) {
+            encoders = new ChannelDownstreamHandler[] {
+                    new LengthFieldPrepender(4), new ProtobufEncoder() };
+            decoders = new ChannelUpstreamHandler[] {
+                    new LengthFieldBasedFrameDecoder(1048576, 0, 4, 0, 4),
+                    new ProtobufDecoder(LocalTimeProtocol.LocalTimes.getDefaultInstance()) };
+            message = newProtobufLocalTimes();
+        } else {
+            throw new IllegalArgumentException("codec: " + codec);
+        }
+
+        encoder = new EncoderEmbedder<ChannelBuffer>(encoders);
+        decoder = new DecoderEmbedder<Object>(decoders);
+
+        encoder.offer(message);
+        encoded = encoder.poll();
+    }
+
+    private LocalTimes newLocalTimes() {
+        LocalTimes localTimes = new LocalTimes();
+        for (int i = 0; i < times; i ++) {
+            LocalTime t = new LocalTime();
+            t.year = 2010;
+            t.month = 1 + i % 12;
+            t.dayOfMonth = 1 + i % 28;
+            t.dayOfWeek = DayOfWeek.values()[i % 7];
+            t.hour = i % 24;
+            t.minute = i % 60;
+            t.second = i % 60;
+            localTimes.localTimes.add(t);
+        }
+        return localTimes;
+    }
+
+    private LocalTimeProtocol.LocalTimes newProtobufLocalTimes() {
+        LocalTimeProtocol.LocalTimes.Builder builder = LocalTimeProtocol.LocalTimes.newBuilder();
+        for (int i = 0; i < times; i ++) {
+            builder.addLocalTime(LocalTimeProtocol.LocalTime.newBuilder()
+                    .setYear(2010)
+                    .setMonth(1 + i % 12)
+                    .setDayOfMonth(1 + i % 28)
+                    .setDayOfWeek(LocalTimeProtocol.DayOfWeek.valueOf(1 + i % 7))
+                    .setHour(i % 24)
+                    .setMinute(i % 60)
+                    .setSecond(i % 60).build());
+        }
+        return builder.build();
+    }
+
+    @Benchmark
+    public ChannelBuffer encode() {
+        encoder.offer(message);
+        return encoder.poll();
+    }
+
+    @Benchmark
+    public Object decode() {
+        // A duplicate because the decoder moves the readerIndex.
+        decoder.offer(encoded.duplicate());
+        return decoder.poll();
+    }
+
+    enum DayOfWeek {
+        SUNDAY, MONDAY, TUESDAY, WEDNESDAY, THURSDAY, FRIDAY, SATURDAY
+    }
+
+    static final class LocalTime implements Serializable {
+        private static final long serialVersionUID = -4406433707398624532L;
+
+        int year;
+        int month;
+        int dayOfMonth;
+        DayOfWeek dayOfWeek;
+        int hour;
+        int minute;
+        int second;
+    }
+
+    static final class LocalTimes implements Serializable {
+        private static final long serialVersionUID = 5386328069522549137L;
+
+        final List<LocalTime> localTimes = new ArrayList<LocalTime>();
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.benchmarks.codec;
+
+import org.jboss.netty.benchmarks.AbstractBenchmark;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelDownstreamHandler;
+import org.jboss.netty.channel.ChannelUpstreamHandler;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jboss.netty.handler.codec.embedder.EncoderEmbedder;
+import org.jboss.netty.handler.codec.http.websocketx.DefaultWebSocketFrame;
+import org.jboss.netty.handler.codec.http.websocketx.PerMessageDeflateDecoder;
+import org.jboss.netty.handler.codec.http.websocketx.PerMessageDeflateEncoder;
+import org.jboss.netty.handler.codec.http.websocketx.WebSocket13FrameDecoder;
+import org.jboss.netty.handler.codec.http.websocketx.WebSocket13FrameEncoder;
+import org.jboss.netty.handler.codec.http.websocketx.WebSocketFrame;
+import org.jboss.netty.handler.codec.http.websocketx.WebSocketOpcode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the {@link WebSocket13FrameEncoder} of a client, which masks the
+ * payload, and the {@link WebSocket13FrameDecoder} of a server, which unmasks
+ * it, with and without the per-message deflate extension ({@code deflate}).
+ * The decoder receives 64 frames of {@code payloadSize} bytes
+ * in one buffer, as it does when a client sends many small messages, and
+ * the scores are per frame.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+@State(Scope.Thread)
+public class WebSocketFrameBenchmark extends AbstractBenchmark {
+
+    private static final int FRAMES = 64;
+
+    @Param({ "16", "128", "4096" })
+    public int payloadSize;
+
+    @Param({ "false", "true" })
+    public boolean deflate;
+
+    private EncoderEmbedder<ChannelBuffer> encoder;
+    private DecoderEmbedder<WebSocketFrame> decoder;
+    private WebSocketFrame frame;
+    private ChannelBuffer encoded;
+
+    @Setup
+    public void setUp() {
+        ChannelDownstreamHandler[] encoders;
+        ChannelUpstreamHandler[] decoders;
+        if (deflate) {
+            encoders = new ChannelDownstreamHandler[] {
+                    new WebSocket13FrameEncoder(true), new PerMessageDeflateEncoder(false) };
+            decoders = new ChannelUpstreamHandler[] {
+                    new WebSocket13FrameDecoder(true, true), new PerMessageDeflateDecoder(false) };
+        } else {
+            encoders = new ChannelDownstreamHandler[] { new WebSocket13FrameEncoder(true) };
+            decoders = new ChannelUpstreamHandler[] { new WebSocket13FrameDecoder(true, false) };
+        }
+        encoder = new EncoderEmbedder<ChannelBuffer>(encoders);
+        decoder = new DecoderEmbedder<WebSocketFrame>(decoders);
+
+        // Somewhat compressible text, like the JSON messages of a typical application.
+        StringBuilder buf = new StringBuilder(payloadSize);
+        for (int i = 0; buf.length() < payloadSize; i ++) {
+            buf.append("{\"id\":").append(i).append(",\"type\":\"tick\"}");
+        }
+        buf.setLength(payloadSize);
+        frame = new DefaultWebSocketFrame(buf.toString());
+
+        ChannelBuffer[] frames = new ChannelBuffer[FRAMES];
+        for (int i = 0; i < FRAMES; i ++) {
+            encoder.offer(frame);
+            frames[i] = encoder.poll();
+        }
+        encoded = ChannelBuffers.copiedBuffer(frames);
+
+        decoder.offer(encoded.duplicate());
+        if (decoder.size() != FRAMES ||
+            decoder.peek().getOpcode() != WebSocketOpcode.TEXT) {
+            throw new IllegalStateException("unexpected decoder output");
+        }
+        decoder.pollAll();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public void encode() {
+        for (int i = 0; i < FRAMES; i ++) {
+            encoder.offer(frame);
+        }
+        encoder.pollAll();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public Object[] decode() {
+        // A duplicate because the decoder moves the readerIndex.
+        decoder.offer(encoded.duplicate());
+        return decoder.pollAll();
+    }
+}
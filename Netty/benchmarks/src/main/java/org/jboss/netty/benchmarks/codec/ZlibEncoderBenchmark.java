@@ -0,0 +1,102 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.benchmarks.codec;
+
+import java.util.Random;
+
+import org.jboss.netty.benchmarks.AbstractBenchmark;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.compression.ZlibEncoder;
+import org.jboss.netty.handler.codec.compression.ZlibWrapper;
+import org.jboss.netty.handler.codec.embedder.EncoderEmbedder;
+import org.jboss.netty.util.CharsetUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures how fast {@link ZlibEncoder} compresses a {@code size}-byte
+ * message.  The messages are written to the same stream one after another,
+ * just like the messages written to a connection.  The content is a text
+ * made of random English words.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+@State(Scope.Thread)
+public class ZlibEncoderBenchmark extends AbstractBenchmark {
+
+    private static final String[] WORDS = {
+        "the", "of", "and", "to", "in", "is", "that", "for", "it", "as",
+        "was", "with", "be", "by", "on", "not", "he", "this", "are", "or",
+        "his", "from", "at", "which", "but", "have", "an", "had", "they",
+        "you", "were", "their", "one", "all", "we", "can", "her", "has",
+        "there", "been", "if", "more", "when", "will", "would", "who", "so",
+        "channel", "buffer", "pipeline", "handler", "event", "future",
+    };
+
+    @Param({ "ZLIB", "GZIP" })
+    public String wrapper;
+
+    @Param({ "1", "6" })
+    public int level;
+
+    @Param({ "1024", "65536" })
+    public int size;
+
+    private EncoderEmbedder<ChannelBuffer> embedder;
+    private ChannelBuffer message;
+
+    @Setup
+    public void setUp() {
+        embedder = new EncoderEmbedder<ChannelBuffer>(
+                new ZlibEncoder(ZlibWrapper.valueOf(wrapper), level));
+
+        // A fixed seed so that every run compresses the same content.
+        Random random = new Random(0);
+        StringBuilder buf = new StringBuilder(size + 16);
+        while (buf.length() < size) {
+            buf.append(WORDS[random.nextInt(WORDS.length)]);
+            buf.append(random.nextInt(16) == 0? ".\n" : " ");
+        }
+        buf.setLength(size);
+        message = ChannelBuffers.copiedBuffer(buf, CharsetUtil.US_ASCII);
+    }
+
+    @TearDown
+    public void tearDown() {
+        embedder.finish();
+    }
+
+    @Benchmark
+    public void encode(Blackhole blackhole) {
+        EncoderEmbedder<ChannelBuffer> embedder = this.embedder;
+        embedder.offer(message.duplicate());
+        for (;;) {
+            ChannelBuffer buf = embedder.poll();
+            if (buf == null) {
+                break;
+            }
+            blackhole.consume(buf);
+        }
+    }
+}
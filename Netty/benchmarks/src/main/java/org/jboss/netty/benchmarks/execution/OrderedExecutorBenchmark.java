@@ -0,0 +1,143 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.benchmarks.execution;
+
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.benchmarks.AbstractBenchmark;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jboss.netty.handler.execution.ExecutionHandler;
+import org.jboss.netty.handler.execution.LegacyOrderedMemoryAwareThreadPoolExecutor;
+import org.jboss.netty.handler.execution.OrderedMemoryAwareThreadPoolExecutor;
+import org.jboss.netty.util.internal.ExecutorUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * Measures how many events per second an {@link ExecutionHandler} can hand
+ * over to an ordered executor when the events are spread over many channels.
+ * The {@code legacy} executor is the implementation with a synchronized task
+ * list per channel and a weak key map of child executors.  Four threads
+ * submit the events just like the I/O threads do, and each invocation waits
+ * until all submitted events are handled.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+@State(Scope.Benchmark)
+@Threads(4)
+public class OrderedExecutorBenchmark extends AbstractBenchmark {
+
+    private static final int EVENTS_PER_INVOCATION = 1024;
+
+    @Param({ "1000", "10000", "100000" })
+    public int channels;
+
+    @Param({ "legacy", "current" })
+    public String executor;
+
+    @Param({ "false", "true" })
+    public boolean memoryLimit;
+
+    private ThreadPoolExecutor pool;
+    private DecoderEmbedder<Object>[] embedders;
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong handled = new AtomicLong();
+
+    /**
+     * The range of the channels a thread submits the events to.  Like an I/O
+     * thread, each thread has its own channels.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int start;
+        int end;
+        int index;
+
+        @Setup
+        public void setUp(OrderedExecutorBenchmark benchmark, ThreadParams params) {
+            int n = benchmark.channels / params.getThreadCount();
+            start = params.getThreadIndex() * n;
+            end = start + n;
+            index = start;
+        }
+    }
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        long maxChannelMemorySize = memoryLimit? 1048576 : 0;
+        long maxTotalMemorySize = memoryLimit? 67108864 : 0;
+        int threads = Runtime.getRuntime().availableProcessors() * 2;
+        if ("legacy".equals(executor)) {
+            pool = new LegacyOrderedMemoryAwareThreadPoolExecutor(
+                    threads, maxChannelMemorySize, maxTotalMemorySize);
+        } else {
+            pool = new OrderedMemoryAwareThreadPoolExecutor(
+                    threads, maxChannelMemorySize, maxTotalMemorySize);
+        }
+
+        ExecutionHandler executionHandler = new ExecutionHandler(pool);
+        SimpleChannelUpstreamHandler counter = new SimpleChannelUpstreamHandler() {
+            @Override
+            public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+                handled.incrementAndGet();
+            }
+        };
+
+        embedders = new DecoderEmbedder[channels];
+        for (int i = 0; i < channels; i ++) {
+            embedders[i] = new DecoderEmbedder<Object>(executionHandler, counter);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        ExecutorUtil.terminate(pool);
+        embedders = null;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS_PER_INVOCATION)
+    public void submit(Cursor cursor) {
+        DecoderEmbedder<Object>[] embedders = this.embedders;
+        int index = cursor.index;
+        for (int i = 0; i < EVENTS_PER_INVOCATION; i ++) {
+            embedders[index].offer(Integer.valueOf(i));
+            if (++ index == cursor.end) {
+                index = cursor.start;
+            }
+        }
+        cursor.index = index;
+
+        long target = submitted.addAndGet(EVENTS_PER_INVOCATION);
+        while (handled.get() < target) {
+            Thread.yield();
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.benchmarks.http;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.benchmarks.AbstractBenchmark;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.handler.codec.http.DefaultHttpRequest;
+import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpRequestDecoder;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseEncoder;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.jboss.netty.handler.codec.http.client.HttpClientPool;
+import org.jboss.netty.handler.codec.http.client.HttpResponseFuture;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Measures the {@link HttpClientPool} over the loopback interface.  An
+ * operation sends {@code requests} GET requests at once and waits for all
+ * responses.  In the {@code close} mode, every request has the
+ * {@code "Connection: close"} header, which costs a new connection per
+ * request like a client without a pool.  The {@code pooled} mode reuses up
+ * to {@code requests} connections, and the {@code pipelined} mode sends all
+ * requests over one connection.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+@State(Scope.Benchmark)
+@Threads(1)
+public class HttpClientPoolBenchmark extends AbstractBenchmark {
+
+    private static final long RESPONSE_TIMEOUT_SECONDS = 10;
+
+    @Param({ "close", "pooled", "pipelined" })
+    public String mode;
+
+    @Param({ "1", "16" })
+    public int requests;
+
+    private ServerBootstrap sb;
+    private NioClientSocketChannelFactory clientFactory;
+    private HashedWheelTimer timer;
+    private Channel serverChannel;
+    private InetSocketAddress serverAddress;
+    private HttpClientPool pool;
+    private HttpResponseFuture[] futures;
+
+    @Setup
+    public void setUp() {
+        int maxConnections;
+        int maxPipelineDepth;
+        if ("close".equals(mode) || "pooled".equals(mode)) {
+            maxConnections = requests;
+            maxPipelineDepth = 1;
+        } else if ("pipelined".equals(mode)) {
+            maxConnections = 1;
+            maxPipelineDepth = requests;
+        } else {
+            throw new IllegalArgumentException("mode: " + mode);
+        }
+
+        sb = new ServerBootstrap(new NioServerSocketChannelFactory(
+                Executors.newCachedThreadPool(), Executors.newCachedThreadPool()));
+        sb.setPipelineFactory(new ChannelPipelineFactory() {
+            public ChannelPipeline getPipeline() {
+                return Channels.pipeline(
+                        new HttpRequestDecoder(), new HttpResponseEncoder(),
+                        new ServerHandler());
+            }
+        });
+        sb.setOption("child.tcpNoDelay", true);
+        serverChannel = sb.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        serverAddress = (InetSocketAddress) serverChannel.getLocalAddress();
+
+        clientFactory = new NioClientSocketChannelFactory(
+                Executors.newCachedThreadPool(), Executors.newCachedThreadPool());
+        timer = new HashedWheelTimer();
+        pool = new HttpClientPool(
+                clientFactory, null, timer, maxConnections, maxPipelineDepth,
+                HttpClientPool.DEFAULT_IDLE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS,
+                HttpClientPool.DEFAULT_MAX_CONTENT_LENGTH);
+        pool.setOption("tcpNoDelay", true);
+        futures = new HttpResponseFuture[requests];
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.close();
+        timer.stop();
+        serverChannel.close().awaitUninterruptibly();
+        clientFactory.releaseExternalResources();
+        sb.releaseExternalResources();
+    }
+
+    @Benchmark
+    public void execute() throws Exception {
+        for (int i = 0; i < futures.length; i ++) {
+            HttpRequest request = new DefaultHttpRequest(
+                    HttpVersion.HTTP_1_1, HttpMethod.GET, "/");
+            if ("close".equals(mode)) {
+                request.setHeader(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.CLOSE);
+            }
+            futures[i] = pool.execute(serverAddress, request);
+        }
+        for (HttpResponseFuture f: futures) {
+            if (!f.await(RESPONSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new IllegalStateException(
+                        "no response in " + RESPONSE_TIMEOUT_SECONDS + " seconds");
+            }
+            if (!f.isSuccess()) {
+                throw new IllegalStateException("request failed", f.getCause());
+            }
+        }
+    }
+
+    private static final class ServerHandler extends SimpleChannelUpstreamHandler {
+        @Override
+        public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+            HttpRequest request = (HttpRequest) e.getMessage();
+            HttpResponse response = new DefaultHttpResponse(
+                    HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+            response.setContent(ChannelBuffers.wrappedBuffer(new byte[] { 'O', 'K' }));
+            HttpHeaders.setContentLength(response, 2);
+            if (HttpHeaders.isKeepAlive(request)) {
+                e.getChannel().write(response);
+            } else {
+                response.setHeader(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.CLOSE);
+                e.getChannel().write(response).addListener(ChannelFutureListener.CLOSE);
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+            e.getChannel().close();
+        }
+    }
+}
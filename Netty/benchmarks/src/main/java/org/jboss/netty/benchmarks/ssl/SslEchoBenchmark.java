@@ -0,0 +1,205 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.benchmarks.ssl;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.security.Security;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLEngine;
+
+import org.jboss.netty.benchmarks.AbstractBenchmark;
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.example.securechat.SecureChatSslContextFactory;
+import org.jboss.netty.handler.ssl.SslHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Compares the default {@link SslHandler} with the one in
+ * {@linkplain SslHandler#setBatching(boolean) batching mode} over the
+ * loopback interface.  An operation writes {@code writes} messages of
+ * {@code messageSize} bytes at once and waits until the server echoes all of
+ * them back, so a large {@code writes} with a small {@code messageSize}
+ * shows how well the small writes are aggregated into records.
+ * <p>
+ * The key in the example key store is too weak for the default security
+ * policy of the recent JDKs, so the policy is relaxed in the forked JVM and
+ * TLSv1.2 is used.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+@State(Scope.Benchmark)
+@Threads(1)
+public class SslEchoBenchmark extends AbstractBenchmark {
+
+    private static final long ECHO_TIMEOUT_SECONDS = 10;
+
+    private static final String[] PROTOCOLS = { "TLSv1.2" };
+
+    @Param({ "default", "batching" })
+    public String mode;
+
+    @Param({ "64", "1024", "16384" })
+    public int messageSize;
+
+    @Param({ "1", "16" })
+    public int writes;
+
+    private final Semaphore echoed = new Semaphore(0);
+    private ServerBootstrap sb;
+    private ClientBootstrap cb;
+    private Channel serverChannel;
+    private Channel clientChannel;
+    private ChannelBuffer message;
+
+    @Setup
+    public void setUp() {
+        if (!"default".equals(mode) && !"batching".equals(mode)) {
+            throw new IllegalArgumentException("mode: " + mode);
+        }
+
+        // Must be done before the first SSLContext is created.
+        Security.setProperty("jdk.certpath.disabledAlgorithms", "");
+        Security.setProperty("jdk.tls.disabledAlgorithms", "");
+
+        sb = new ServerBootstrap(new NioServerSocketChannelFactory(
+                Executors.newCachedThreadPool(), Executors.newCachedThreadPool()));
+        cb = new ClientBootstrap(new NioClientSocketChannelFactory(
+                Executors.newCachedThreadPool(), Executors.newCachedThreadPool()));
+
+        sb.setPipelineFactory(new ChannelPipelineFactory() {
+            public ChannelPipeline getPipeline() {
+                SSLEngine engine =
+                    SecureChatSslContextFactory.getServerContext().createSSLEngine();
+                engine.setUseClientMode(false);
+                return Channels.pipeline(newSslHandler(engine), new EchoServerHandler());
+            }
+        });
+        sb.setOption("child.tcpNoDelay", true);
+
+        SSLEngine engine = SecureChatSslContextFactory.getClientContext().createSSLEngine();
+        engine.setUseClientMode(true);
+        cb.getPipeline().addLast("ssl", newSslHandler(engine));
+        cb.getPipeline().addLast("handler", new EchoClientHandler());
+        cb.setOption("tcpNoDelay", true);
+
+        serverChannel = sb.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        ChannelFuture f = cb.connect(serverChannel.getLocalAddress()).awaitUninterruptibly();
+        if (f.isSuccess()) {
+            clientChannel = f.getChannel();
+            f = clientChannel.getPipeline().get(SslHandler.class).handshake();
+            f.awaitUninterruptibly();
+        }
+        if (!f.isSuccess()) {
+            tearDown();
+            throw new IllegalStateException("failed to connect", f.getCause());
+        }
+
+        byte[] content = new byte[messageSize];
+        for (int i = 0; i < content.length; i ++) {
+            content[i] = (byte) i;
+        }
+        message = ChannelBuffers.wrappedBuffer(content);
+    }
+
+    private SslHandler newSslHandler(SSLEngine engine) {
+        engine.setEnabledProtocols(PROTOCOLS);
+        SslHandler handler = new SslHandler(engine);
+        handler.setBatching("batching".equals(mode));
+        return handler;
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (clientChannel != null) {
+            clientChannel.close().awaitUninterruptibly();
+        }
+        if (serverChannel != null) {
+            serverChannel.close().awaitUninterruptibly();
+        }
+        cb.releaseExternalResources();
+        sb.releaseExternalResources();
+    }
+
+    @Benchmark
+    public void echo() throws Exception {
+        for (int i = 0; i < writes; i ++) {
+            clientChannel.write(message.duplicate());
+        }
+        if (!echoed.tryAcquire(writes, ECHO_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new IllegalStateException(
+                    "no echo in " + ECHO_TIMEOUT_SECONDS + " seconds");
+        }
+    }
+
+    private static final class EchoServerHandler extends SimpleChannelUpstreamHandler {
+        @Override
+        public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+            e.getChannel().write(e.getMessage());
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+            e.getChannel().close();
+        }
+    }
+
+    private final class EchoClientHandler extends SimpleChannelUpstreamHandler {
+        private int receivedBytes;
+
+        @Override
+        public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+            ChannelBuffer buf = (ChannelBuffer) e.getMessage();
+            receivedBytes += buf.readableBytes();
+
+            int messages = receivedBytes / messageSize;
+            if (messages > 0) {
+                receivedBytes -= messages * messageSize;
+                echoed.release(messages);
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+            e.getChannel().close();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.benchmarks.transport;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.benchmarks.AbstractBenchmark;
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Measures how fast a {@link NioServerSocketChannelFactory} with
+ * {@code bosses} boss threads accepts a burst of {@code connections}
+ * connections over the loopback interface.  An operation connects all of them
+ * at once, waits until the server has accepted every one of them and then
+ * closes them.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+@State(Scope.Benchmark)
+@Threads(1)
+public class ConnectBenchmark extends AbstractBenchmark {
+
+    private static final long ACCEPT_TIMEOUT_SECONDS = 10;
+
+    @Param({ "1", "4" })
+    public int bosses;
+
+    @Param({ "1", "64" })
+    public int connections;
+
+    private final Semaphore accepted = new Semaphore(0);
+    private ServerBootstrap sb;
+    private ClientBootstrap cb;
+    private Channel serverChannel;
+    private InetSocketAddress serverAddress;
+    private ChannelFuture[] futures;
+
+    @Setup
+    public void setUp() {
+        sb = new ServerBootstrap(new NioServerSocketChannelFactory(
+                Executors.newCachedThreadPool(), Executors.newCachedThreadPool(),
+                Runtime.getRuntime().availableProcessors() * 2, bosses));
+        cb = new ClientBootstrap(new NioClientSocketChannelFactory(
+                Executors.newCachedThreadPool(), Executors.newCachedThreadPool()));
+
+        sb.getPipeline().addLast("handler", new AcceptHandler());
+        sb.setOption("backlog", 1024);
+        cb.getPipeline().addLast("handler", new SimpleChannelUpstreamHandler());
+
+        serverChannel = sb.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        serverAddress = (InetSocketAddress) serverChannel.getLocalAddress();
+        futures = new ChannelFuture[connections];
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (serverChannel != null) {
+            serverChannel.close().awaitUninterruptibly();
+        }
+        cb.releaseExternalResources();
+        sb.releaseExternalResources();
+    }
+
+    @Benchmark
+    public void connect() throws Exception {
+        for (int i = 0; i < futures.length; i ++) {
+            futures[i] = cb.connect(serverAddress);
+        }
+        try {
+            if (!accepted.tryAcquire(connections, ACCEPT_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new IllegalStateException(
+                        "not accepted in " + ACCEPT_TIMEOUT_SECONDS + " seconds");
+            }
+        } finally {
+            for (ChannelFuture f: futures) {
+                f.getChannel().close().awaitUninterruptibly();
+            }
+        }
+    }
+
+    private final class AcceptHandler extends SimpleChannelUpstreamHandler {
+        @Override
+        public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e) {
+            accepted.release();
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+            e.getChannel().close();
+        }
+    }
+}
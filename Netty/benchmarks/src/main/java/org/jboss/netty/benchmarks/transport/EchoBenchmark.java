@@ -0,0 +1,196 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.benchmarks.transport;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.benchmarks.AbstractBenchmark;
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.socket.epoll.EpollClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.epoll.EpollServerSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.channel.socket.oio.OioClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.oio.OioServerSocketChannelFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Measures how many {@code messageSize}-byte messages per second a client
+ * gets echoed back by a server over the loopback interface.  The client keeps
+ * {@code outstanding} messages in flight, so {@code 1} measures the round
+ * trip time and a larger value measures the throughput of the transport.
+ * The epoll transport is not measured by default because it is not available
+ * on every platform; specify {@code -p transport=nio,oio,epoll} to measure
+ * it.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+@State(Scope.Benchmark)
+@Threads(1)
+public class EchoBenchmark extends AbstractBenchmark {
+
+    private static final long ECHO_TIMEOUT_SECONDS = 10;
+
+    @Param({ "nio", "oio" })
+    public String transport;
+
+    @Param({ "64", "1024", "16384" })
+    public int messageSize;
+
+    @Param({ "1", "16" })
+    public int outstanding;
+
+    private final Semaphore echoed = new Semaphore(0);
+    private ServerBootstrap sb;
+    private ClientBootstrap cb;
+    private Channel serverChannel;
+    private Channel clientChannel;
+    private ChannelBuffer message;
+
+    @Setup
+    public void setUp() {
+        if ("nio".equals(transport)) {
+            sb = new ServerBootstrap(new NioServerSocketChannelFactory(
+                    Executors.newCachedThreadPool(), Executors.newCachedThreadPool()));
+            cb = new ClientBootstrap(new NioClientSocketChannelFactory(
+                    Executors.newCachedThreadPool(), Executors.newCachedThreadPool()));
+        } else if ("oio".equals(transport)) {
+            sb = new ServerBootstrap(new OioServerSocketChannelFactory(
+                    Executors.newCachedThreadPool(), Executors.newCachedThreadPool()));
+            cb = new ClientBootstrap(new OioClientSocketChannelFactory(
+                    Executors.newCachedThreadPool()));
+        } else if ("epoll".equals(transport)) {
+            sb = new ServerBootstrap(new EpollServerSocketChannelFactory(
+                    Executors.newCachedThreadPool(), Executors.newCachedThreadPool()));
+            cb = new ClientBootstrap(new EpollClientSocketChannelFactory(
+                    Executors.newCachedThreadPool()));
+        } else {
+            throw new IllegalArgumentException("transport: " + transport);
+        }
+
+        sb.getPipeline().addLast("handler", new EchoServerHandler());
+        sb.setOption("child.tcpNoDelay", true);
+        cb.getPipeline().addLast("handler", new EchoClientHandler());
+        cb.setOption("tcpNoDelay", true);
+
+        serverChannel = sb.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        ChannelFuture f = cb.connect(serverChannel.getLocalAddress()).awaitUninterruptibly();
+        if (!f.isSuccess()) {
+            tearDown();
+            throw new IllegalStateException("failed to connect", f.getCause());
+        }
+        clientChannel = f.getChannel();
+
+        byte[] content = new byte[messageSize];
+        for (int i = 0; i < content.length; i ++) {
+            content[i] = (byte) i;
+        }
+        message = ChannelBuffers.wrappedBuffer(content);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (clientChannel != null) {
+            clientChannel.close().awaitUninterruptibly();
+        }
+        if (serverChannel != null) {
+            serverChannel.close().awaitUninterruptibly();
+        }
+        cb.releaseExternalResources();
+        sb.releaseExternalResources();
+    }
+
+    @Setup(Level.Iteration)
+    public void fill() {
+        for (int i = 1; i < outstanding; i ++) {
+            clientChannel.write(message.duplicate());
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void drain() throws Exception {
+        awaitEcho(outstanding - 1);
+    }
+
+    @Benchmark
+    public void echo() throws Exception {
+        clientChannel.write(message.duplicate());
+        awaitEcho(1);
+    }
+
+    private void awaitEcho(int messages) throws Exception {
+        if (!echoed.tryAcquire(messages, ECHO_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new IllegalStateException(
+                    "no echo in " + ECHO_TIMEOUT_SECONDS + " seconds");
+        }
+    }
+
+    private static final class EchoServerHandler extends SimpleChannelUpstreamHandler {
+        @Override
+        public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+            e.getChannel().write(e.getMessage());
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+            e.getChannel().close();
+        }
+    }
+
+    private final class EchoClientHandler extends SimpleChannelUpstreamHandler {
+        private int receivedBytes;
+
+        @Override
+        public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+            ChannelBuffer buf = (ChannelBuffer) e.getMessage();
+            receivedBytes += buf.readableBytes();
+            ChannelBuffers.release(buf);
+
+            int messages = receivedBytes / messageSize;
+            if (messages > 0) {
+                receivedBytes -= messages * messageSize;
+                echoed.release(messages);
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+            e.getChannel().close();
+        }
+    }
+}
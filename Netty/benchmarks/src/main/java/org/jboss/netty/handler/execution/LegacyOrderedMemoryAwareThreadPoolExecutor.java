@@ -0,0 +1,239 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.execution;
+
+import java.util.LinkedList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelState;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.util.ObjectSizeEstimator;
+import org.jboss.netty.util.internal.ConcurrentIdentityWeakKeyHashMap;
+
+/**
+ * A copy of {@link OrderedMemoryAwareThreadPoolExecutor} before its child
+ * executors were made lock-free and attached to the channel, which is kept as
+ * the baseline of
+ * {@link org.jboss.netty.benchmarks.execution.OrderedExecutorBenchmark}.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public class LegacyOrderedMemoryAwareThreadPoolExecutor extends
+        LegacyMemoryAwareThreadPoolExecutor {
+
+    // TODO Make OMATPE focus on the case where Channel is the key.
+    //      Add a new less-efficient TPE that allows custom key.
+
+    private final ConcurrentMap<Object, Executor> childExecutors = newChildExecutorMap();
+
+    /**
+     * Creates a new instance.
+     *
+     * @param corePoolSize          the maximum number of active threads
+     * @param maxChannelMemorySize  the maximum total size of the queued events per channel.
+     *                              Specify {@code 0} to disable.
+     * @param maxTotalMemorySize    the maximum total size of the queued events for this pool
+     *                              Specify {@code 0} to disable.
+     */
+    public LegacyOrderedMemoryAwareThreadPoolExecutor(
+            int corePoolSize, long maxChannelMemorySize, long maxTotalMemorySize) {
+        super(corePoolSize, maxChannelMemorySize, maxTotalMemorySize);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param corePoolSize          the maximum number of active threads
+     * @param maxChannelMemorySize  the maximum total size of the queued events per channel.
+     *                              Specify {@code 0} to disable.
+     * @param maxTotalMemorySize    the maximum total size of the queued events for this pool
+     *                              Specify {@code 0} to disable.
+     * @param keepAliveTime         the amount of time for an inactive thread to shut itself down
+     * @param unit                  the {@link TimeUnit} of {@code keepAliveTime}
+     */
+    public LegacyOrderedMemoryAwareThreadPoolExecutor(
+            int corePoolSize, long maxChannelMemorySize, long maxTotalMemorySize,
+            long keepAliveTime, TimeUnit unit) {
+        super(corePoolSize, maxChannelMemorySize, maxTotalMemorySize,
+                keepAliveTime, unit);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param corePoolSize          the maximum number of active threads
+     * @param maxChannelMemorySize  the maximum total size of the queued events per channel.
+     *                              Specify {@code 0} to disable.
+     * @param maxTotalMemorySize    the maximum total size of the queued events for this pool
+     *                              Specify {@code 0} to disable.
+     * @param keepAliveTime         the amount of time for an inactive thread to shut itself down
+     * @param unit                  the {@link TimeUnit} of {@code keepAliveTime}
+     * @param threadFactory         the {@link ThreadFactory} of this pool
+     */
+    public LegacyOrderedMemoryAwareThreadPoolExecutor(
+            int corePoolSize, long maxChannelMemorySize, long maxTotalMemorySize,
+            long keepAliveTime, TimeUnit unit, ThreadFactory threadFactory) {
+        super(corePoolSize, maxChannelMemorySize, maxTotalMemorySize,
+                keepAliveTime, unit, threadFactory);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param corePoolSize          the maximum number of active threads
+     * @param maxChannelMemorySize  the maximum total size of the queued events per channel.
+     *                              Specify {@code 0} to disable.
+     * @param maxTotalMemorySize    the maximum total size of the queued events for this pool
+     *                              Specify {@code 0} to disable.
+     * @param keepAliveTime         the amount of time for an inactive thread to shut itself down
+     * @param unit                  the {@link TimeUnit} of {@code keepAliveTime}
+     * @param threadFactory         the {@link ThreadFactory} of this pool
+     * @param objectSizeEstimator   the {@link ObjectSizeEstimator} of this pool
+     */
+    public LegacyOrderedMemoryAwareThreadPoolExecutor(
+            int corePoolSize, long maxChannelMemorySize, long maxTotalMemorySize,
+            long keepAliveTime, TimeUnit unit,
+            ObjectSizeEstimator objectSizeEstimator, ThreadFactory threadFactory) {
+        super(corePoolSize, maxChannelMemorySize, maxTotalMemorySize,
+                keepAliveTime, unit, objectSizeEstimator, threadFactory);
+    }
+
+    protected ConcurrentMap<Object, Executor> newChildExecutorMap() {
+        return new ConcurrentIdentityWeakKeyHashMap<Object, Executor>();
+    }
+
+    protected Object getChildExecutorKey(ChannelEvent e) {
+        return e.getChannel();
+    }
+
+    protected Set<Object> getChildExecutorKeySet() {
+        return childExecutors.keySet();
+    }
+
+    protected boolean removeChildExecutor(Object key) {
+        // FIXME: Succeed only when there is no task in the ChildExecutor's queue.
+        //        Note that it will need locking which might slow down task submission.
+        return childExecutors.remove(key) != null;
+    }
+
+    /**
+     * Executes the specified task concurrently while maintaining the event
+     * order.
+     */
+    @Override
+    protected void doExecute(Runnable task) {
+        if (!(task instanceof ChannelEventRunnable)) {
+            doUnorderedExecute(task);
+        } else {
+            ChannelEventRunnable r = (ChannelEventRunnable) task;
+            getChildExecutor(r.getEvent()).execute(task);
+        }
+    }
+
+    private Executor getChildExecutor(ChannelEvent e) {
+        Object key = getChildExecutorKey(e);
+        Executor executor = childExecutors.get(key);
+        if (executor == null) {
+            executor = new ChildExecutor();
+            Executor oldExecutor = childExecutors.putIfAbsent(key, executor);
+            if (oldExecutor != null) {
+                executor = oldExecutor;
+            }
+        }
+
+        // Remove the entry when the channel closes.
+        if (e instanceof ChannelStateEvent) {
+            Channel channel = e.getChannel();
+            ChannelStateEvent se = (ChannelStateEvent) e;
+            if (se.getState() == ChannelState.OPEN &&
+                !channel.isOpen()) {
+                childExecutors.remove(channel);
+            }
+        }
+        return executor;
+    }
+
+    @Override
+    protected boolean shouldCount(Runnable task) {
+        if (task instanceof ChildExecutor) {
+            return false;
+        }
+
+        return super.shouldCount(task);
+    }
+
+    void onAfterExecute(Runnable r, Throwable t) {
+        afterExecute(r, t);
+    }
+
+    private final class ChildExecutor implements Executor, Runnable {
+        private final LinkedList<Runnable> tasks = new LinkedList<Runnable>();
+
+        ChildExecutor() {
+            super();
+        }
+
+        public void execute(Runnable command) {
+            boolean needsExecution;
+            synchronized (tasks) {
+                needsExecution = tasks.isEmpty();
+                tasks.add(command);
+            }
+
+            if (needsExecution) {
+                doUnorderedExecute(this);
+            }
+        }
+
+        public void run() {
+            Thread thread = Thread.currentThread();
+            for (;;) {
+                final Runnable task;
+                synchronized (tasks) {
+                    task = tasks.getFirst();
+                }
+
+                boolean ran = false;
+                beforeExecute(thread, task);
+                try {
+                    task.run();
+                    ran = true;
+                    onAfterExecute(task, null);
+                } catch (RuntimeException e) {
+                    if (!ran) {
+                        onAfterExecute(task, e);
+                    }
+                    throw e;
+                } finally {
+                    synchronized (tasks) {
+                        tasks.removeFirst();
+                        if (tasks.isEmpty()) {
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
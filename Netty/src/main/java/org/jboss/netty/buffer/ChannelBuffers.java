@@ -840,6 +840,24 @@ public class ChannelBuffers {
         return new ReadOnlyChannelBuffer(buffer);
     }
 
+    /**
+     * Releases the specified message if it is a {@link PooledChannelBuffer}
+     * or a dynamic buffer whose current storage is a
+     * {@link PooledChannelBuffer}.  Otherwise, this method does nothing.
+     *
+     * @return {@code true} if and only if the memory of the message has been
+     *         returned to its {@link PooledChannelBufferFactory}
+     */
+    public static boolean release(Object message) {
+        if (message instanceof PooledChannelBuffer) {
+            return ((PooledChannelBuffer) message).release();
+        }
+        if (message instanceof DynamicChannelBuffer) {
+            return ((DynamicChannelBuffer) message).releaseBuffer();
+        }
+        return false;
+    }
+
     /**
      * Returns a <a href="http://en.wikipedia.org/wiki/Hex_dump">hex dump</a>
      * of the specified buffer's readable bytes.
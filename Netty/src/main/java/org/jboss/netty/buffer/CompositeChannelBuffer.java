@@ -51,6 +51,13 @@ public class CompositeChannelBuffer extends AbstractChannelBuffer {
         setComponents(buffers);
     }
 
+    /**
+     * Returns the number of the buffers composed by this buffer.
+     */
+    public int numComponents() {
+        return components.length;
+    }
+
     /**
      * Same with {@link #slice(int, int)} except that this method returns a list.
      */
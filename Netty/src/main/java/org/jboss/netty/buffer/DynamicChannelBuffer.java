@@ -28,6 +28,15 @@ import java.nio.channels.ScatteringByteChannel;
  * A dynamic capacity buffer which increases its capacity as needed.  It is
  * recommended to use {@link ChannelBuffers#dynamicBuffer(int)} instead of
  * calling the constructor explicitly.
+ * <p>
+ * When the capacity increases, the content is moved to a new storage
+ * obtained from the {@link #factory()}, and the old storage is released if
+ * it came from a {@link PooledChannelBufferFactory}.  The buffers derived by
+ * {@link #slice()} and {@link #duplicate()} refer to this buffer and keep
+ * working after the move, but the NIO buffers returned by
+ * {@link #toByteBuffer()} and the array returned by {@link #array()} refer
+ * to the old storage and must not be used after a write which increases the
+ * capacity.
  *
  * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
  * @author <a href="http://gleamynode.net/">Trustin Lee</a>
@@ -83,9 +92,14 @@ public class DynamicChannelBuffer extends AbstractChannelBuffer {
 
         ChannelBuffer newBuffer = factory().getBuffer(order(), newCapacity);
         newBuffer.writeBytes(buffer, 0, writerIndex());
+        ChannelBuffers.release(buffer);
         buffer = newBuffer;
     }
 
+    boolean releaseBuffer() {
+        return ChannelBuffers.release(buffer);
+    }
+
     public ChannelBufferFactory factory() {
         return factory;
     }
@@ -271,6 +285,7 @@ public class DynamicChannelBuffer extends AbstractChannelBuffer {
 
     public ChannelBuffer copy(int index, int length) {
         DynamicChannelBuffer copiedBuffer = new DynamicChannelBuffer(order(), Math.max(length, 64), factory());
+        ChannelBuffers.release(copiedBuffer.buffer);
         copiedBuffer.buffer = buffer.copy(index, length);
         copiedBuffer.setIndex(0, length);
         return copiedBuffer;
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.buffer;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A set of per-size-class free lists shared by the threads which were
+ * assigned to it by {@link PooledChannelBufferFactory}.  Memory is carved out
+ * of slabs; a slab is dedicated to a single size class and is never returned
+ * to the JVM once it has been allocated.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+final class PoolArena {
+
+    static final int MIN_SIZE_SHIFT = 4;
+    static final int MIN_SIZE = 1 << MIN_SIZE_SHIFT;
+
+    private static final int MAX_SLOTS_PER_SLAB = 64;
+
+    private final PooledChannelBufferFactory parent;
+    private final Slot[] freeLists;
+
+    /**
+     * Keeps all slots reachable, so that the {@link LeakReference} of a slot
+     * in use is enqueued when its buffer is garbage-collected.
+     */
+    private final List<Slot[]> slabs = new ArrayList<Slot[]>();
+
+    PoolArena(PooledChannelBufferFactory parent, int sizeClasses) {
+        this.parent = parent;
+        freeLists = new Slot[sizeClasses];
+    }
+
+    /**
+     * Returns the index of the smallest size class which can hold
+     * {@code capacity} bytes.
+     */
+    static int sizeIndex(int capacity) {
+        if (capacity <= MIN_SIZE) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(capacity - 1) - MIN_SIZE_SHIFT;
+    }
+
+    static int sizeOf(int sizeIdx) {
+        return MIN_SIZE << sizeIdx;
+    }
+
+    /**
+     * Returns a free slot of the specified size class, or {@code null} if a
+     * new slab could not be allocated because the pool reached its capacity
+     * limit.
+     */
+    synchronized Slot allocate(int sizeIdx) {
+        Slot slot = freeLists[sizeIdx];
+        if (slot == null) {
+            if (!newSlab(sizeIdx)) {
+                return null;
+            }
+            slot = freeLists[sizeIdx];
+        }
+        freeLists[sizeIdx] = slot.next;
+        slot.next = null;
+        return slot;
+    }
+
+    synchronized void free(Slot slot) {
+        int sizeIdx = slot.sizeIdx;
+        slot.next = freeLists[sizeIdx];
+        freeLists[sizeIdx] = slot;
+    }
+
+    private boolean newSlab(int sizeIdx) {
+        final int slotSize = sizeOf(sizeIdx);
+        final int slots = Math.max(1, Math.min(
+                MAX_SLOTS_PER_SLAB, parent.getSlabCapacity() / slotSize));
+        final int slabSize = slotSize * slots;
+        if (!parent.reserve(slabSize)) {
+            return false;
+        }
+
+        ChannelBuffer bigEndian;
+        ChannelBuffer littleEndian;
+        if (parent.isDirect()) {
+            ByteBuffer memory = ByteBuffer.allocateDirect(slabSize);
+            bigEndian = new ByteBufferBackedChannelBuffer(
+                    memory.duplicate().order(ByteOrder.BIG_ENDIAN));
+            littleEndian = new ByteBufferBackedChannelBuffer(
+                    memory.duplicate().order(ByteOrder.LITTLE_ENDIAN));
+        } else {
+            byte[] memory = new byte[slabSize];
+            bigEndian = new BigEndianHeapChannelBuffer(memory);
+            littleEndian = new LittleEndianHeapChannelBuffer(memory);
+        }
+
+        Slot[] slab = new Slot[slots];
+        Slot head = freeLists[sizeIdx];
+        for (int i = slots - 1; i >= 0; i --) {
+            Slot slot = new Slot(this, bigEndian, littleEndian, i * slotSize, sizeIdx);
+            slot.next = head;
+            head = slot;
+            slab[i] = slot;
+        }
+        slabs.add(slab);
+        freeLists[sizeIdx] = head;
+        return true;
+    }
+
+    /**
+     * A fixed-size region of a slab.  Slots are created once when their slab
+     * is allocated and are recycled for the lifetime of the arena.
+     */
+    static final class Slot {
+        final PoolArena arena;
+        final ChannelBuffer bigEndian;
+        final ChannelBuffer littleEndian;
+        final int offset;
+        final int sizeIdx;
+
+        /** The next free slot; only accessed while the slot is not in use. */
+        Slot next;
+
+        /** Tracks the buffer which currently owns this slot, if any. */
+        volatile LeakReference leakRef;
+
+        Slot(PoolArena arena, ChannelBuffer bigEndian, ChannelBuffer littleEndian,
+             int offset, int sizeIdx) {
+            this.arena = arena;
+            this.bigEndian = bigEndian;
+            this.littleEndian = littleEndian;
+            this.offset = offset;
+            this.sizeIdx = sizeIdx;
+        }
+
+        ChannelBuffer memory(ByteOrder order) {
+            return order == ByteOrder.BIG_ENDIAN? bigEndian : littleEndian;
+        }
+    }
+
+    /**
+     * Becomes enqueued when a {@link PooledChannelBuffer} was
+     * garbage-collected without being released, so that its slot can be
+     * reclaimed.  The slot refers to this reference while the buffer is alive,
+     * which keeps the reference itself reachable.
+     */
+    static final class LeakReference extends WeakReference<PooledChannelBuffer> {
+        final Slot slot;
+        final Throwable allocationSite;
+
+        LeakReference(PooledChannelBuffer referent, ReferenceQueue<PooledChannelBuffer> queue,
+                      Slot slot, Throwable allocationSite) {
+            super(referent, queue);
+            this.slot = slot;
+            this.allocationSite = allocationSite;
+        }
+    }
+}
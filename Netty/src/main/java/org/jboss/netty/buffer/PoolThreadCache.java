@@ -0,0 +1,112 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.buffer;
+
+import java.lang.ref.WeakReference;
+
+import org.jboss.netty.buffer.PoolArena.Slot;
+
+/**
+ * A small per-thread stack of free slots for each size class, which lets a
+ * thread allocate and release pooled buffers without acquiring the lock of
+ * its {@link PoolArena}.  All fields are accessed by the owner thread only,
+ * except for the statistics counters which are read without synchronization
+ * and therefore are approximate.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+final class PoolThreadCache {
+
+    private static final int MAX_CACHED_BYTES_PER_SIZE_CLASS = 65536;
+
+    final PoolArena arena;
+    private final WeakReference<Thread> owner;
+    private final Slot[][] stacks;
+    private final int[] sizes;
+
+    long allocations;
+    long hits;
+    long unpooledAllocations;
+    long deallocations;
+
+    PoolThreadCache(PoolArena arena, int sizeClasses, int maxCachedSlots) {
+        this.arena = arena;
+        owner = new WeakReference<Thread>(Thread.currentThread());
+        stacks = new Slot[sizeClasses][];
+        sizes = new int[sizeClasses];
+        for (int i = 0; i < sizeClasses; i ++) {
+            int capacity = Math.min(
+                    maxCachedSlots,
+                    MAX_CACHED_BYTES_PER_SIZE_CLASS / PoolArena.sizeOf(i));
+            stacks[i] = new Slot[Math.max(capacity, 0)];
+        }
+    }
+
+    Slot allocate(int sizeIdx) {
+        int size = sizes[sizeIdx];
+        if (size == 0) {
+            return null;
+        }
+
+        Slot[] stack = stacks[sizeIdx];
+        Slot slot = stack[-- size];
+        stack[size] = null;
+        sizes[sizeIdx] = size;
+        hits ++;
+        return slot;
+    }
+
+    /**
+     * Caches the specified slot.
+     *
+     * @return {@code false} if the cache for the size class of the slot is
+     *         full and the slot needs to be returned to its arena
+     */
+    boolean free(Slot slot) {
+        int sizeIdx = slot.sizeIdx;
+        Slot[] stack = stacks[sizeIdx];
+        int size = sizes[sizeIdx];
+        if (size == stack.length) {
+            return false;
+        }
+        stack[size] = slot;
+        sizes[sizeIdx] = size + 1;
+        return true;
+    }
+
+    boolean isOwnerAlive() {
+        Thread t = owner.get();
+        return t != null && t.isAlive();
+    }
+
+    /**
+     * Returns all cached slots to their arenas.  Must be called only after
+     * the owner thread died.
+     */
+    void drain() {
+        for (int i = 0; i < stacks.length; i ++) {
+            Slot[] stack = stacks[i];
+            for (int j = sizes[i] - 1; j >= 0; j --) {
+                Slot slot = stack[j];
+                stack[j] = null;
+                slot.arena.free(slot);
+            }
+            sizes[i] = 0;
+        }
+    }
+}
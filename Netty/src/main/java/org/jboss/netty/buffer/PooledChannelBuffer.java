@@ -0,0 +1,318 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.buffer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ScatteringByteChannel;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * A reference-counted buffer whose memory is borrowed from a
+ * {@link PooledChannelBufferFactory}.  A newly allocated buffer has a
+ * reference count of {@code 1}.  When the reference count drops to
+ * {@code 0}, the memory of the buffer is returned to the pool and the buffer
+ * must not be accessed anymore.  Any attempt to read or write the content
+ * of a released buffer raises an {@link IllegalStateException}, but the NIO
+ * buffers returned by {@link #toByteBuffer()} and the array returned by
+ * {@link #array()} before the release are not guarded and must not be used
+ * after the release either.
+ * <p>
+ * The buffers derived from a pooled buffer, such as {@link #slice()} and
+ * {@link #duplicate()}, do not have their own reference count; they become
+ * invalid as soon as their origin is released.  Call {@link #retain()} if a
+ * derived buffer outlives the code which releases the original buffer.  On
+ * the other hand, the buffers copied from a pooled buffer, such as
+ * {@link #copy()} and {@link #readBytes(int)}, are ordinary buffers which
+ * are not pooled, because {@link #factory()} returns the non-pooling factory
+ * of the same kind.
+ * <p>
+ * Please refer to {@link PooledChannelBufferFactory} for who is responsible
+ * for releasing a pooled buffer.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public final class PooledChannelBuffer extends SlicedChannelBuffer {
+
+    private static final AtomicIntegerFieldUpdater<PooledChannelBuffer> refCntUpdater =
+        AtomicIntegerFieldUpdater.newUpdater(PooledChannelBuffer.class, "refCnt");
+
+    private final PooledChannelBufferFactory pool;
+    final PoolArena.Slot slot;
+    private volatile int refCnt = 1;
+
+    PooledChannelBuffer(PooledChannelBufferFactory pool, PoolArena.Slot slot,
+                        ChannelBuffer memory, int capacity) {
+        super(memory, slot.offset, capacity);
+        this.pool = pool;
+        this.slot = slot;
+        clear();
+    }
+
+    /**
+     * Returns the non-pooling factory which creates the same kind of buffers
+     * as this buffer, so that the buffers copied from this buffer do not
+     * need to be released.
+     */
+    @Override
+    public ChannelBufferFactory factory() {
+        if (isDirect()) {
+            return DirectChannelBufferFactory.getInstance(order());
+        } else {
+            return HeapChannelBufferFactory.getInstance(order());
+        }
+    }
+
+    /**
+     * Returns the {@link PooledChannelBufferFactory} which owns the memory of
+     * this buffer.
+     */
+    public PooledChannelBufferFactory pool() {
+        return pool;
+    }
+
+    // Derived buffers refer to this buffer rather than to the pooled memory
+    // so that the memory is not reclaimed while they are reachable.
+
+    @Override
+    public ChannelBuffer duplicate() {
+        return new DuplicatedChannelBuffer(this);
+    }
+
+    @Override
+    public ChannelBuffer slice(int index, int length) {
+        if (length == 0) {
+            return ChannelBuffers.EMPTY_BUFFER;
+        }
+        return new SlicedChannelBuffer(this, index, length);
+    }
+
+    /**
+     * Returns the current reference count of this buffer.
+     */
+    public int refCnt() {
+        return refCnt;
+    }
+
+    /**
+     * Increases the reference count of this buffer by {@code 1}.
+     *
+     * @throws IllegalStateException if this buffer has been released already
+     */
+    public void retain() {
+        for (;;) {
+            int refCnt = this.refCnt;
+            if (refCnt <= 0) {
+                throw new IllegalStateException("released already");
+            }
+            if (refCntUpdater.compareAndSet(this, refCnt, refCnt + 1)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Decreases the reference count of this buffer by {@code 1} and returns
+     * its memory to the pool if the reference count reaches {@code 0}.
+     *
+     * @return {@code true} if and only if the memory of this buffer has been
+     *         returned to the pool by this call
+     * @throws IllegalStateException if this buffer has been released already
+     */
+    public boolean release() {
+        for (;;) {
+            int refCnt = this.refCnt;
+            if (refCnt <= 0) {
+                throw new IllegalStateException("released already");
+            }
+            if (refCntUpdater.compareAndSet(this, refCnt, refCnt - 1)) {
+                if (refCnt == 1) {
+                    pool.free(this);
+                    return true;
+                }
+                return false;
+            }
+        }
+    }
+
+    private void ensureAccessible() {
+        if (refCnt <= 0) {
+            throw new IllegalStateException("released already");
+        }
+    }
+
+    @Override
+    public byte[] array() {
+        ensureAccessible();
+        return super.array();
+    }
+
+    @Override
+    public int arrayOffset() {
+        ensureAccessible();
+        return super.arrayOffset();
+    }
+
+    @Override
+    public byte getByte(int index) {
+        ensureAccessible();
+        return super.getByte(index);
+    }
+
+    @Override
+    public short getShort(int index) {
+        ensureAccessible();
+        return super.getShort(index);
+    }
+
+    @Override
+    public int getUnsignedMedium(int index) {
+        ensureAccessible();
+        return super.getUnsignedMedium(index);
+    }
+
+    @Override
+    public int getInt(int index) {
+        ensureAccessible();
+        return super.getInt(index);
+    }
+
+    @Override
+    public long getLong(int index) {
+        ensureAccessible();
+        return super.getLong(index);
+    }
+
+    @Override
+    public ChannelBuffer copy(int index, int length) {
+        ensureAccessible();
+        return super.copy(index, length);
+    }
+
+    @Override
+    public void getBytes(int index, ChannelBuffer dst, int dstIndex, int length) {
+        ensureAccessible();
+        super.getBytes(index, dst, dstIndex, length);
+    }
+
+    @Override
+    public void getBytes(int index, byte[] dst, int dstIndex, int length) {
+        ensureAccessible();
+        super.getBytes(index, dst, dstIndex, length);
+    }
+
+    @Override
+    public void getBytes(int index, ByteBuffer dst) {
+        ensureAccessible();
+        super.getBytes(index, dst);
+    }
+
+    @Override
+    public void getBytes(int index, OutputStream out, int length)
+            throws IOException {
+        ensureAccessible();
+        super.getBytes(index, out, length);
+    }
+
+    @Override
+    public int getBytes(int index, GatheringByteChannel out, int length)
+            throws IOException {
+        ensureAccessible();
+        return super.getBytes(index, out, length);
+    }
+
+    @Override
+    public void setByte(int index, int value) {
+        ensureAccessible();
+        super.setByte(index, value);
+    }
+
+    @Override
+    public void setShort(int index, int value) {
+        ensureAccessible();
+        super.setShort(index, value);
+    }
+
+    @Override
+    public void setMedium(int index, int value) {
+        ensureAccessible();
+        super.setMedium(index, value);
+    }
+
+    @Override
+    public void setInt(int index, int value) {
+        ensureAccessible();
+        super.setInt(index, value);
+    }
+
+    @Override
+    public void setLong(int index, long value) {
+        ensureAccessible();
+        super.setLong(index, value);
+    }
+
+    @Override
+    public void setBytes(int index, byte[] src, int srcIndex, int length) {
+        ensureAccessible();
+        super.setBytes(index, src, srcIndex, length);
+    }
+
+    @Override
+    public void setBytes(int index, ChannelBuffer src, int srcIndex, int length) {
+        ensureAccessible();
+        super.setBytes(index, src, srcIndex, length);
+    }
+
+    @Override
+    public void setBytes(int index, ByteBuffer src) {
+        ensureAccessible();
+        super.setBytes(index, src);
+    }
+
+    @Override
+    public int setBytes(int index, InputStream in, int length)
+            throws IOException {
+        ensureAccessible();
+        return super.setBytes(index, in, length);
+    }
+
+    @Override
+    public int setBytes(int index, ScatteringByteChannel in, int length)
+            throws IOException {
+        ensureAccessible();
+        return super.setBytes(index, in, length);
+    }
+
+    @Override
+    public ByteBuffer toByteBuffer(int index, int length) {
+        ensureAccessible();
+        return super.toByteBuffer(index, length);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + '(' +
+               "ridx=" + readerIndex() + ", " +
+               "widx=" + writerIndex() + ", " +
+               "cap=" + capacity() + ", " +
+               "refCnt=" + refCnt + ')';
+    }
+}
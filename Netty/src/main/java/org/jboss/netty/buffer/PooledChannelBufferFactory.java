@@ -0,0 +1,612 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.buffer;
+
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.buffer.PoolArena.LeakReference;
+import org.jboss.netty.buffer.PoolArena.Slot;
+import org.jboss.netty.logging.InternalLogger;
+import org.jboss.netty.logging.InternalLoggerFactory;
+import org.jboss.netty.util.internal.SystemPropertyUtil;
+
+/**
+ * A {@link ChannelBufferFactory} which recycles the memory of the buffers it
+ * creates instead of leaving it to the garbage collector.  It is useful when
+ * the allocation rate of short-lived buffers, such as the buffers created for
+ * every read operation, puts too much pressure on the young generation or on
+ * the direct buffer reclamation of the JVM.
+ *
+ * <h3>Releasing a buffer</h3>
+ *
+ * A buffer returned by this factory is usually a {@link PooledChannelBuffer}
+ * which must be released by calling {@link PooledChannelBuffer#release()} or
+ * {@link ChannelBuffers#release(Object)} once it is not used anymore.  A
+ * buffer which was larger than {@link #getMaxPooledCapacity()} or which was
+ * requested when the pool was full is an ordinary buffer, and releasing it
+ * has no effect.  The party which releases a buffer is determined as follows:
+ * <ul>
+ * <li>The code which obtained a buffer from this factory owns it, and passing
+ *     the buffer to another party, by writing it or by firing it upstream in a
+ *     {@link org.jboss.netty.channel.MessageEvent}, passes the ownership
+ *     too.</li>
+ * <li>A received buffer is owned by the handler which receives it.  A handler
+ *     which neither releases nor forwards a received buffer leaks it.
+ *     {@link org.jboss.netty.handler.codec.frame.FrameDecoder} and
+ *     {@link org.jboss.netty.handler.codec.replay.ReplayingDecoder} release
+ *     the buffers they consumed, and the frames they produce are not
+ *     pooled.</li>
+ * <li>A written buffer is owned by the writer until the write is complete,
+ *     which is usually handled with a
+ *     {@link org.jboss.netty.channel.ChannelFutureListener}.  If the
+ *     {@code "releaseWrittenBuffers"} option of a NIO socket channel is
+ *     {@code true}, the transport releases every written buffer instead, and
+ *     the same buffer must be {@linkplain PooledChannelBuffer#retain() retained}
+ *     once more for each extra write.</li>
+ * <li>A buffer copied from a pooled buffer, such as
+ *     {@link ChannelBuffer#copy()} and {@link ChannelBuffer#readBytes(int)},
+ *     is not pooled and does not need to be released.</li>
+ * </ul>
+ * Releasing an unpooled buffer is a no-op, so a handler can simply pass every
+ * buffer it consumed to {@link ChannelBuffers#release(Object)}.
+ *
+ * <h3>Memory layout</h3>
+ *
+ * The requested capacity is rounded up to the next power of two which is
+ * equal to or greater than {@code 16}, and the buffer is carved out of a slab
+ * which was allocated for that size class.  Slabs are owned by one of the
+ * arenas of the factory, and each thread is assigned to an arena in a
+ * round-robin fashion to reduce lock contention.  In addition, every thread
+ * keeps a small cache of recently released slots so that most allocations do
+ * not need to acquire any lock at all.
+ *
+ * <h3>Leak detection</h3>
+ *
+ * Unless {@link LeakDetectionLevel#DISABLED} is specified, some of the pooled
+ * buffers are tracked, and the memory of a tracked buffer which was
+ * garbage-collected without being released is reclaimed and counted as a
+ * leak.  {@link LeakDetectionLevel#SIMPLE} tracks one out of every
+ * {@value #LEAK_SAMPLING_INTERVAL} buffers to keep the overhead low, while
+ * {@link LeakDetectionLevel#ADVANCED} tracks every buffer and records where
+ * it was allocated, which is expensive and should be used only while
+ * debugging.  The memory of a leaked buffer which was not tracked is never
+ * returned to the pool.  The default level can be changed with the system
+ * property {@code "org.jboss.netty.buffer.leakDetectionLevel"}.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ *
+ * @apiviz.landmark
+ */
+public class PooledChannelBufferFactory extends AbstractChannelBufferFactory {
+
+    /**
+     * Determines how {@link PooledChannelBufferFactory} deals with the
+     * buffers which were garbage-collected without being released.
+     */
+    public enum LeakDetectionLevel {
+        /**
+         * Leaks are not tracked.  The memory of a leaked buffer is never
+         * returned to the pool.
+         */
+        DISABLED,
+        /**
+         * One out of every {@value PooledChannelBufferFactory#LEAK_SAMPLING_INTERVAL}
+         * buffers is tracked.  Its leak is reclaimed and counted, and the
+         * first leak is logged.
+         */
+        SIMPLE,
+        /**
+         * Every buffer is tracked.  Its leak is reclaimed and counted, and
+         * every leak is logged with the stack trace of its allocation.
+         */
+        ADVANCED
+    }
+
+    private static final InternalLogger logger =
+        InternalLoggerFactory.getInstance(PooledChannelBufferFactory.class);
+
+    private static final String LEAK_DETECTION_LEVEL_PROPERTY =
+        "org.jboss.netty.buffer.leakDetectionLevel";
+
+    /**
+     * The number of allocations per tracked buffer when the leak detection
+     * level is {@link LeakDetectionLevel#SIMPLE}.
+     */
+    public static final int LEAK_SAMPLING_INTERVAL = 128;
+
+    static final int DEFAULT_MAX_POOLED_CAPACITY = 65536;
+    static final int DEFAULT_SLAB_CAPACITY = 262144;
+    static final int DEFAULT_MAX_CACHED_SLOTS = 32;
+
+    private static final LeakDetectionLevel DEFAULT_LEAK_DETECTION_LEVEL;
+
+    static {
+        LeakDetectionLevel level = LeakDetectionLevel.SIMPLE;
+        String value = SystemPropertyUtil.get(LEAK_DETECTION_LEVEL_PROPERTY);
+        if (value != null) {
+            try {
+                level = LeakDetectionLevel.valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                logger.warn(
+                        "Unknown " + LEAK_DETECTION_LEVEL_PROPERTY + ": " + value +
+                        " - using the default level " + level);
+            }
+        }
+        DEFAULT_LEAK_DETECTION_LEVEL = level;
+    }
+
+    private static final PooledChannelBufferFactory HEAP_INSTANCE =
+        new PooledChannelBufferFactory(false);
+
+    private static final PooledChannelBufferFactory DIRECT_INSTANCE =
+        new PooledChannelBufferFactory(true);
+
+    /**
+     * Returns the shared big-endian factory which pools heap buffers.
+     */
+    public static PooledChannelBufferFactory getInstance() {
+        return HEAP_INSTANCE;
+    }
+
+    /**
+     * Returns the shared big-endian factory which pools heap buffers if
+     * {@code direct} is {@code false} or direct buffers otherwise.
+     */
+    public static PooledChannelBufferFactory getInstance(boolean direct) {
+        return direct? DIRECT_INSTANCE : HEAP_INSTANCE;
+    }
+
+    private final boolean direct;
+    private final int maxPooledCapacity;
+    private final int slabCapacity;
+    private final long maxPooledMemory;
+    private final int maxCachedSlots;
+    private final int sizeClasses;
+    private final PoolArena[] arenas;
+    private final AtomicInteger nextArena = new AtomicInteger();
+    private final AtomicLong pooledMemory = new AtomicLong();
+
+    private final List<PoolThreadCache> threadCaches = new ArrayList<PoolThreadCache>();
+    private final ThreadLocal<PoolThreadCache> threadCache = new ThreadLocal<PoolThreadCache>() {
+        @Override
+        protected PoolThreadCache initialValue() {
+            return newThreadCache();
+        }
+    };
+
+    // Statistics of the thread caches which were discarded with their threads
+    private long retiredAllocations;
+    private long retiredHits;
+    private long retiredUnpooledAllocations;
+    private long retiredDeallocations;
+
+    private volatile LeakDetectionLevel leakDetectionLevel = DEFAULT_LEAK_DETECTION_LEVEL;
+    private final ReferenceQueue<PooledChannelBuffer> leakQueue =
+        new ReferenceQueue<PooledChannelBuffer>();
+    private final AtomicLong leakedBuffers = new AtomicLong();
+    private final AtomicBoolean leakLogged = new AtomicBoolean();
+
+    /**
+     * Creates a new factory which pools big-endian heap buffers.
+     */
+    public PooledChannelBufferFactory() {
+        this(false);
+    }
+
+    /**
+     * Creates a new factory which pools big-endian heap buffers if
+     * {@code direct} is {@code false} or direct buffers otherwise.
+     */
+    public PooledChannelBufferFactory(boolean direct) {
+        this(ByteOrder.BIG_ENDIAN, direct);
+    }
+
+    /**
+     * Creates a new factory with the specified default {@link ByteOrder},
+     * which pools heap buffers if {@code direct} is {@code false} or direct
+     * buffers otherwise.
+     */
+    public PooledChannelBufferFactory(ByteOrder defaultOrder, boolean direct) {
+        this(defaultOrder, direct,
+             Runtime.getRuntime().availableProcessors() * 2,
+             DEFAULT_MAX_POOLED_CAPACITY,
+             Runtime.getRuntime().maxMemory() / 4);
+    }
+
+    /**
+     * Creates a new factory.
+     *
+     * @param defaultOrder      the default {@link ByteOrder} of this factory
+     * @param direct            {@code true} to pool direct buffers,
+     *                          {@code false} to pool heap buffers
+     * @param arenas            the number of arenas, which limits the lock
+     *                          contention between the threads that share
+     *                          this factory
+     * @param maxPooledCapacity the capacity of the largest buffer which is
+     *                          pooled.  A larger buffer is allocated without
+     *                          pooling.
+     * @param maxPooledMemory   the maximum amount of memory in bytes which
+     *                          this factory reserves for pooling
+     */
+    public PooledChannelBufferFactory(
+            ByteOrder defaultOrder, boolean direct, int arenas,
+            int maxPooledCapacity, long maxPooledMemory) {
+        super(defaultOrder);
+        if (arenas <= 0) {
+            throw new IllegalArgumentException(
+                    "arenas must be greater than 0: " + arenas);
+        }
+        if (maxPooledCapacity < PoolArena.MIN_SIZE ||
+            maxPooledCapacity > 1 << 30) {
+            throw new IllegalArgumentException(
+                    "maxPooledCapacity must be between " + PoolArena.MIN_SIZE +
+                    " and " + (1 << 30) + ": " + maxPooledCapacity);
+        }
+        if (maxPooledMemory < 0) {
+            throw new IllegalArgumentException(
+                    "maxPooledMemory: " + maxPooledMemory);
+        }
+
+        this.direct = direct;
+        sizeClasses = PoolArena.sizeIndex(maxPooledCapacity) + 1;
+        this.maxPooledCapacity = PoolArena.sizeOf(sizeClasses - 1);
+        slabCapacity = Math.max(DEFAULT_SLAB_CAPACITY, this.maxPooledCapacity);
+        this.maxPooledMemory = maxPooledMemory;
+        maxCachedSlots = DEFAULT_MAX_CACHED_SLOTS;
+
+        this.arenas = new PoolArena[arenas];
+        for (int i = 0; i < arenas; i ++) {
+            this.arenas[i] = new PoolArena(this, sizeClasses);
+        }
+    }
+
+    /**
+     * Returns {@code true} if and only if this factory pools direct buffers.
+     */
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * Returns the capacity of the largest buffer which is pooled.
+     */
+    public int getMaxPooledCapacity() {
+        return maxPooledCapacity;
+    }
+
+    /**
+     * Returns the maximum amount of memory in bytes which this factory
+     * reserves for pooling.
+     */
+    public long getMaxPooledMemory() {
+        return maxPooledMemory;
+    }
+
+    public LeakDetectionLevel getLeakDetectionLevel() {
+        return leakDetectionLevel;
+    }
+
+    /**
+     * Sets the {@link LeakDetectionLevel} of this factory.  The new level
+     * applies to the buffers allocated after this call.
+     */
+    public void setLeakDetectionLevel(LeakDetectionLevel leakDetectionLevel) {
+        if (leakDetectionLevel == null) {
+            throw new NullPointerException("leakDetectionLevel");
+        }
+        this.leakDetectionLevel = leakDetectionLevel;
+    }
+
+    /**
+     * Returns the factory which creates the same kind of buffers as this
+     * factory without pooling them.
+     */
+    public ChannelBufferFactory getUnpooledFactory() {
+        if (direct) {
+            return DirectChannelBufferFactory.getInstance(getDefaultOrder());
+        } else {
+            return HeapChannelBufferFactory.getInstance(getDefaultOrder());
+        }
+    }
+
+    int getSlabCapacity() {
+        return slabCapacity;
+    }
+
+    public ChannelBuffer getBuffer(ByteOrder order, int capacity) {
+        if (order == null) {
+            throw new NullPointerException("order");
+        }
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity: " + capacity);
+        }
+        if (capacity == 0) {
+            return ChannelBuffers.EMPTY_BUFFER;
+        }
+
+        PoolThreadCache cache = threadCache.get();
+        if (capacity > maxPooledCapacity) {
+            cache.unpooledAllocations ++;
+            return newUnpooledBuffer(order, capacity);
+        }
+
+        int sizeIdx = PoolArena.sizeIndex(capacity);
+        Slot slot = cache.allocate(sizeIdx);
+        if (slot == null) {
+            slot = cache.arena.allocate(sizeIdx);
+            if (slot == null) {
+                // Reached maxPooledMemory.
+                cache.unpooledAllocations ++;
+                return newUnpooledBuffer(order, capacity);
+            }
+        }
+        long allocations = cache.allocations ++;
+
+        PooledChannelBuffer buf =
+            new PooledChannelBuffer(this, slot, slot.memory(order), capacity);
+        LeakDetectionLevel level = leakDetectionLevel;
+        if (level == LeakDetectionLevel.ADVANCED ||
+            level == LeakDetectionLevel.SIMPLE &&
+            allocations % LEAK_SAMPLING_INTERVAL == 0) {
+            reclaimLeakedBuffers();
+            slot.leakRef = new LeakReference(
+                    buf, leakQueue, slot,
+                    level == LeakDetectionLevel.ADVANCED? new Throwable() : null);
+        }
+        return buf;
+    }
+
+    /**
+     * Wraps the specified array if this factory pools heap buffers, or copies
+     * its content into a pooled buffer otherwise.
+     */
+    public ChannelBuffer getBuffer(ByteOrder order, byte[] array, int offset, int length) {
+        if (!direct) {
+            return ChannelBuffers.wrappedBuffer(order, array, offset, length);
+        }
+
+        if (array == null) {
+            throw new NullPointerException("array");
+        }
+        if (offset < 0) {
+            throw new IndexOutOfBoundsException("offset: " + offset);
+        }
+        if (length == 0) {
+            return ChannelBuffers.EMPTY_BUFFER;
+        }
+        if (offset + length > array.length) {
+            throw new IndexOutOfBoundsException("length: " + length);
+        }
+
+        ChannelBuffer buf = getBuffer(order, length);
+        buf.writeBytes(array, offset, length);
+        return buf;
+    }
+
+    /**
+     * Wraps the specified buffer if this factory pools heap buffers and the
+     * specified buffer is backed by an accessible array, or copies its content
+     * into a pooled buffer otherwise.
+     */
+    public ChannelBuffer getBuffer(ByteBuffer nioBuffer) {
+        if (!direct && nioBuffer.hasArray()) {
+            return ChannelBuffers.wrappedBuffer(nioBuffer);
+        }
+
+        ChannelBuffer buf = getBuffer(nioBuffer.order(), nioBuffer.remaining());
+        int pos = nioBuffer.position();
+        buf.writeBytes(nioBuffer);
+        nioBuffer.position(pos);
+        return buf;
+    }
+
+    /**
+     * Returns the number of the pooled buffers allocated so far, including
+     * the buffers whose memory came from a thread cache.
+     */
+    public long getAllocatedBuffers() {
+        long sum;
+        synchronized (threadCaches) {
+            sum = retiredAllocations;
+            for (PoolThreadCache c: threadCaches) {
+                sum += c.allocations;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the number of the pooled buffers whose memory came from a
+     * thread cache rather than from an arena.
+     */
+    public long getThreadCacheHits() {
+        long sum;
+        synchronized (threadCaches) {
+            sum = retiredHits;
+            for (PoolThreadCache c: threadCaches) {
+                sum += c.hits;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the number of the buffers which were allocated without pooling
+     * because they were too large or because the pool was full.
+     */
+    public long getUnpooledBuffers() {
+        long sum;
+        synchronized (threadCaches) {
+            sum = retiredUnpooledAllocations;
+            for (PoolThreadCache c: threadCaches) {
+                sum += c.unpooledAllocations;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the number of the pooled buffers which were released.
+     */
+    public long getReleasedBuffers() {
+        long sum;
+        synchronized (threadCaches) {
+            sum = retiredDeallocations;
+            for (PoolThreadCache c: threadCaches) {
+                sum += c.deallocations;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the number of the tracked pooled buffers which were
+     * garbage-collected without being released.
+     */
+    public long getLeakedBuffers() {
+        reclaimLeakedBuffers();
+        return leakedBuffers.get();
+    }
+
+    /**
+     * Returns the number of the pooled buffers which were neither released
+     * nor reclaimed as a leak yet.
+     */
+    public long getActiveBuffers() {
+        return getAllocatedBuffers() - getReleasedBuffers() - getLeakedBuffers();
+    }
+
+    /**
+     * Returns the amount of memory in bytes which has been reserved for
+     * pooling so far.
+     */
+    public long getPooledMemory() {
+        return pooledMemory.get();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + '(' +
+               (direct? "direct" : "heap") + ", " +
+               "arenas: " + arenas.length + ", " +
+               "pooledMemory: " + getPooledMemory() + '/' + maxPooledMemory + ", " +
+               "allocated: " + getAllocatedBuffers() + ", " +
+               "cacheHits: " + getThreadCacheHits() + ", " +
+               "unpooled: " + getUnpooledBuffers() + ", " +
+               "released: " + getReleasedBuffers() + ", " +
+               "leaked: " + getLeakedBuffers() + ')';
+    }
+
+    void free(PooledChannelBuffer buf) {
+        Slot slot = buf.slot;
+        LeakReference leakRef = slot.leakRef;
+        if (leakRef != null) {
+            slot.leakRef = null;
+            leakRef.clear();
+        }
+
+        PoolThreadCache cache = threadCache.get();
+        cache.deallocations ++;
+        if (!cache.free(slot)) {
+            slot.arena.free(slot);
+        }
+    }
+
+    boolean reserve(int bytes) {
+        for (;;) {
+            long pooledMemory = this.pooledMemory.get();
+            long newPooledMemory = pooledMemory + bytes;
+            if (newPooledMemory > maxPooledMemory) {
+                return false;
+            }
+            if (this.pooledMemory.compareAndSet(pooledMemory, newPooledMemory)) {
+                return true;
+            }
+        }
+    }
+
+    private ChannelBuffer newUnpooledBuffer(ByteOrder order, int capacity) {
+        if (direct) {
+            return ChannelBuffers.directBuffer(order, capacity);
+        } else {
+            return ChannelBuffers.buffer(order, capacity);
+        }
+    }
+
+    private PoolThreadCache newThreadCache() {
+        PoolArena arena = arenas[Math.abs(nextArena.getAndIncrement() % arenas.length)];
+        PoolThreadCache cache = new PoolThreadCache(arena, sizeClasses, maxCachedSlots);
+        synchronized (threadCaches) {
+            // Return the memory cached by the dead threads to their arenas.
+            for (Iterator<PoolThreadCache> i = threadCaches.iterator(); i.hasNext();) {
+                PoolThreadCache c = i.next();
+                if (!c.isOwnerAlive()) {
+                    i.remove();
+                    c.drain();
+                    retiredAllocations += c.allocations;
+                    retiredHits += c.hits;
+                    retiredUnpooledAllocations += c.unpooledAllocations;
+                    retiredDeallocations += c.deallocations;
+                }
+            }
+            threadCaches.add(cache);
+        }
+        return cache;
+    }
+
+    private void reclaimLeakedBuffers() {
+        for (;;) {
+            LeakReference leakRef = (LeakReference) leakQueue.poll();
+            if (leakRef == null) {
+                break;
+            }
+
+            Slot slot = leakRef.slot;
+            if (slot.leakRef != leakRef) {
+                // Released already.
+                continue;
+            }
+
+            slot.leakRef = null;
+            slot.arena.free(slot);
+            leakedBuffers.incrementAndGet();
+
+            if (leakRef.allocationSite != null) {
+                logger.warn(
+                        "LEAK: " + PooledChannelBuffer.class.getSimpleName() +
+                        " was garbage-collected without being released.  " +
+                        "It was allocated at:", leakRef.allocationSite);
+            } else if (leakLogged.compareAndSet(false, true)) {
+                logger.warn(
+                        "LEAK: " + PooledChannelBuffer.class.getSimpleName() +
+                        " was garbage-collected without being released.  " +
+                        "Set the system property '" + LEAK_DETECTION_LEVEL_PROPERTY +
+                        "' to '" + LeakDetectionLevel.ADVANCED.name().toLowerCase() +
+                        "' to find out where the leaked buffers were allocated.");
+            }
+        }
+    }
+}
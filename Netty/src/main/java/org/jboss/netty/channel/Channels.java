@@ -342,6 +342,18 @@ public class Channels {
     public static void fireWriteComplete(ChannelHandlerContext ctx, long amount) {
         ctx.sendUpstream(new DefaultWriteCompletionEvent(ctx.getChannel(), amount));
     }
+
+    /**
+     * Sends a {@code "writeBufferChanged"} event to the first
+     * {@link ChannelUpstreamHandler} in the {@link ChannelPipeline} of
+     * the specified {@link Channel}.
+     */
+    public static void fireWriteBufferChanged(
+            Channel channel, boolean writable, long queuedBytes, int queuedMessages) {
+        channel.getPipeline().sendUpstream(
+                new DefaultWriteBufferEvent(channel, writable, queuedBytes, queuedMessages));
+    }
+
     /**
      * Sends a {@code "channelInterestChanged"} event to the first
      * {@link ChannelUpstreamHandler} in the {@link ChannelPipeline} of
@@ -45,6 +45,12 @@ public class DefaultChannelPipeline implements ChannelPipeline {
     private volatile ChannelSink sink;
     private volatile DefaultChannelHandlerContext head;
     private volatile DefaultChannelHandlerContext tail;
+    // The first handlers which handle an event, updated on modification.
+    private volatile DefaultChannelHandlerContext firstUpstream;
+    private volatile DefaultChannelHandlerContext firstMessageUpstream;
+    private volatile DefaultChannelHandlerContext lastDownstream;
+    private volatile DefaultChannelHandlerContext lastMessageDownstream;
+    private volatile int modificationCount;
     private final Map<String, DefaultChannelHandlerContext> name2ctx =
         new HashMap<String, DefaultChannelHandlerContext>(4);
 
@@ -104,6 +110,7 @@ public class DefaultChannelPipeline implements ChannelPipeline {
             oldHead.prev = newHead;
             head = newHead;
             name2ctx.put(name, newHead);
+            updateDispatchLinks();
 
             callAfterAdd(newHead);
         }
@@ -133,6 +140,7 @@ public class DefaultChannelPipeline implements ChannelPipeline {
             oldTail.next = newTail;
             tail = newTail;
             name2ctx.put(name, newTail);
+            updateDispatchLinks();
 
             callAfterAdd(newTail);
         }
@@ -155,6 +163,7 @@ public class DefaultChannelPipeline implements ChannelPipeline {
             ctx.prev.next = newCtx;
             ctx.prev = newCtx;
             name2ctx.put(name, newCtx);
+            updateDispatchLinks();
 
             callAfterAdd(newCtx);
         }
@@ -173,6 +182,7 @@ public class DefaultChannelPipeline implements ChannelPipeline {
             ctx.next.prev = newCtx;
             ctx.next = newCtx;
             name2ctx.put(name, newCtx);
+            updateDispatchLinks();
 
             callAfterAdd(newCtx);
         }
@@ -195,6 +205,7 @@ public class DefaultChannelPipeline implements ChannelPipeline {
         if (head == tail) {
             head = tail = null;
             name2ctx.clear();
+            updateDispatchLinks();
         } else if (ctx == head) {
             removeFirst();
         } else if (ctx == tail) {
@@ -207,6 +218,7 @@ public class DefaultChannelPipeline implements ChannelPipeline {
             prev.next = next;
             next.prev = prev;
             name2ctx.remove(ctx.getName());
+            updateDispatchLinks();
 
             callAfterRemove(ctx);
         }
@@ -233,6 +245,7 @@ public class DefaultChannelPipeline implements ChannelPipeline {
             head = oldHead.next;
             name2ctx.remove(oldHead.getName());
         }
+        updateDispatchLinks();
 
         callAfterRemove(oldHead);
 
@@ -259,6 +272,7 @@ public class DefaultChannelPipeline implements ChannelPipeline {
             tail = oldTail.prev;
             name2ctx.remove(oldTail.getName());
         }
+        updateDispatchLinks();
 
         callBeforeRemove(oldTail);
 
@@ -306,6 +320,7 @@ public class DefaultChannelPipeline implements ChannelPipeline {
                 name2ctx.remove(ctx.getName());
                 name2ctx.put(newName, newCtx);
             }
+            updateDispatchLinks();
 
             ChannelHandlerLifeCycleException removeException = null;
             ChannelHandlerLifeCycleException addException = null;
@@ -558,7 +573,7 @@ public class DefaultChannelPipeline implements ChannelPipeline {
 		DEBUG.P("e="+e);
 		DEBUG.P("this.head="+this.head);
 
-        DefaultChannelHandlerContext head = getActualUpstreamContext(this.head);
+        DefaultChannelHandlerContext head = firstUpstream;
         
 		DEBUG.P("head="+head);
 		if (head == null) {
@@ -567,6 +582,14 @@ public class DefaultChannelPipeline implements ChannelPipeline {
             return;
         }
 
+        if (e instanceof MessageEvent) {
+            head = firstMessageUpstream;
+            if (head == null) {
+                // All upstream handlers forward the message.
+                return;
+            }
+        }
+
         sendUpstream(head, e);
 
 		}finally{//我加上的
@@ -599,7 +622,8 @@ public class DefaultChannelPipeline implements ChannelPipeline {
 		DEBUG.P("e="+e);
 		DEBUG.P("this.tail="+this.tail);
 
-        DefaultChannelHandlerContext tail = getActualDownstreamContext(this.tail);
+        DefaultChannelHandlerContext tail =
+            e instanceof MessageEvent? lastMessageDownstream : lastDownstream;
 
 		DEBUG.P("tail="+tail);
         if (tail == null) {
@@ -635,36 +659,54 @@ public class DefaultChannelPipeline implements ChannelPipeline {
 		}
     }
 
-    DefaultChannelHandlerContext getActualUpstreamContext(DefaultChannelHandlerContext ctx) {
-        if (ctx == null) {
-            return null;
-        }
-
-        DefaultChannelHandlerContext realCtx = ctx;
-        while (!realCtx.canHandleUpstream()) {
-            realCtx = realCtx.next;
-            if (realCtx == null) {
-                return null;
+    /**
+     * Precomputes the next handler of each handler for each direction, so
+     * that an event is dispatched without looking for the handlers which
+     * can handle it.  The handlers which just
+     * {@linkplain PassThroughHandlers forward a message} are skipped for
+     * {@link MessageEvent}s.  Called whenever this pipeline is modified.
+     */
+    private void updateDispatchLinks() {
+        DefaultChannelHandlerContext nextUpstream = null;
+        DefaultChannelHandlerContext nextMessageUpstream = null;
+        for (DefaultChannelHandlerContext ctx = tail; ctx != null; ctx = ctx.prev) {
+            ctx.nextUpstream = nextUpstream;
+            ctx.nextMessageUpstream = nextMessageUpstream;
+            if (ctx.canHandleUpstream()) {
+                nextUpstream = ctx;
+                if (!ctx.upstreamPassThrough) {
+                    nextMessageUpstream = ctx;
+                }
             }
         }
-
-        return realCtx;
-    }
-
-    DefaultChannelHandlerContext getActualDownstreamContext(DefaultChannelHandlerContext ctx) {
-        if (ctx == null) {
-            return null;
-        }
-
-        DefaultChannelHandlerContext realCtx = ctx;
-        while (!realCtx.canHandleDownstream()) {
-            realCtx = realCtx.prev;
-            if (realCtx == null) {
-                return null;
+        firstUpstream = nextUpstream;
+        firstMessageUpstream = nextMessageUpstream;
+
+        DefaultChannelHandlerContext nextDownstream = null;
+        DefaultChannelHandlerContext nextMessageDownstream = null;
+        for (DefaultChannelHandlerContext ctx = head; ctx != null; ctx = ctx.next) {
+            ctx.nextDownstream = nextDownstream;
+            ctx.nextMessageDownstream = nextMessageDownstream;
+            if (ctx.canHandleDownstream()) {
+                nextDownstream = ctx;
+                if (!ctx.downstreamPassThrough) {
+                    nextMessageDownstream = ctx;
+                }
             }
         }
+        lastDownstream = nextDownstream;
+        lastMessageDownstream = nextMessageDownstream;
+        modificationCount ++;
+    }
 
-        return realCtx;
+    /**
+     * Returns the number of the modifications made to this pipeline so far.
+     * A caller which keeps what it derived from the handlers of this pipeline
+     * can compare the returned value with the value at the time of the
+     * derivation to find out if it is still up to date.
+     */
+    public int getModificationCount() {
+        return modificationCount;
     }
 
     protected void notifyHandlerException(ChannelEvent e, Throwable t) {
@@ -700,6 +742,7 @@ public class DefaultChannelPipeline implements ChannelPipeline {
         head = tail = ctx;
         name2ctx.clear();
         name2ctx.put(name, ctx);
+        updateDispatchLinks();
         callAfterAdd(ctx);
 
 		}finally{//我加上的
@@ -743,10 +786,16 @@ public class DefaultChannelPipeline implements ChannelPipeline {
     private final class DefaultChannelHandlerContext implements ChannelHandlerContext {
         volatile DefaultChannelHandlerContext next;
         volatile DefaultChannelHandlerContext prev;
+        volatile DefaultChannelHandlerContext nextUpstream;
+        volatile DefaultChannelHandlerContext nextMessageUpstream;
+        volatile DefaultChannelHandlerContext nextDownstream;
+        volatile DefaultChannelHandlerContext nextMessageDownstream;
         private final String name;
         private final ChannelHandler handler;
         private final boolean canHandleUpstream;
         private final boolean canHandleDownstream;
+        final boolean upstreamPassThrough;
+        final boolean downstreamPassThrough;
         private volatile Object attachment;
 
 		public String toString() {
@@ -774,6 +823,8 @@ public class DefaultChannelPipeline implements ChannelPipeline {
                         ChannelDownstreamHandler.class.getName() + '.');
             }
 
+            upstreamPassThrough = PassThroughHandlers.isUpstreamPassThrough(handler);
+            downstreamPassThrough = PassThroughHandlers.isDownstreamPassThrough(handler);
             this.prev = prev;
             this.next = next;
             this.name = name;
@@ -821,7 +872,8 @@ public class DefaultChannelPipeline implements ChannelPipeline {
 			try {//我加上的
 			DEBUG.P(this,"sendDownstream(1)");
 
-            DefaultChannelHandlerContext prev = getActualDownstreamContext(this.prev);
+            DefaultChannelHandlerContext prev =
+                e instanceof MessageEvent? nextMessageDownstream : nextDownstream;
             DEBUG.P("prev="+prev);
 			if (prev == null) {
                 try {
@@ -842,7 +894,8 @@ public class DefaultChannelPipeline implements ChannelPipeline {
 			try {//我加上的
 			DEBUG.P(this,"sendUpstream(1)");
 
-            DefaultChannelHandlerContext next = getActualUpstreamContext(this.next);
+            DefaultChannelHandlerContext next =
+                e instanceof MessageEvent? nextMessageUpstream : nextUpstream;
             
 			DEBUG.P("next="+next);
 			if (next != null) {
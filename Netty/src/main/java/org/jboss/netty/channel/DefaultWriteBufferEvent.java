@@ -0,0 +1,89 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel;
+
+import static org.jboss.netty.channel.Channels.*;
+
+/**
+ * The default {@link WriteBufferEvent} implementation.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public class DefaultWriteBufferEvent implements WriteBufferEvent {
+
+    private final Channel channel;
+    private final boolean writable;
+    private final long queuedBytes;
+    private final int queuedMessages;
+
+    /**
+     * Creates a new instance.
+     */
+    public DefaultWriteBufferEvent(
+            Channel channel, boolean writable, long queuedBytes, int queuedMessages) {
+        if (channel == null) {
+            throw new NullPointerException("channel");
+        }
+        if (queuedBytes < 0) {
+            throw new IllegalArgumentException(
+                    "queuedBytes must be 0 or a positive integer: " + queuedBytes);
+        }
+        if (queuedMessages < 0) {
+            throw new IllegalArgumentException(
+                    "queuedMessages must be 0 or a positive integer: " + queuedMessages);
+        }
+
+        this.channel = channel;
+        this.writable = writable;
+        this.queuedBytes = queuedBytes;
+        this.queuedMessages = queuedMessages;
+    }
+
+    public Channel getChannel() {
+        return channel;
+    }
+
+    public ChannelFuture getFuture() {
+        return succeededFuture(getChannel());
+    }
+
+    public boolean isWritable() {
+        return writable;
+    }
+
+    public long getQueuedBytes() {
+        return queuedBytes;
+    }
+
+    public int getQueuedMessages() {
+        return queuedMessages;
+    }
+
+    @Override
+    public String toString() {
+        String channelString = getChannel().toString();
+        StringBuilder buf = new StringBuilder(channelString.length() + 64);
+        buf.append(channelString);
+        buf.append(writable? " WRITABLE" : " UNWRITABLE");
+        buf.append(", QUEUED_BYTES: ");
+        buf.append(getQueuedBytes());
+        buf.append(", QUEUED_MESSAGES: ");
+        buf.append(getQueuedMessages());
+        return buf.toString();
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel;
+
+import java.util.concurrent.ConcurrentMap;
+
+import org.jboss.netty.util.internal.ConcurrentHashMap;
+
+/**
+ * Tells which handlers pass a {@link MessageEvent} through as it is, so that
+ * {@link DefaultChannelPipeline} and {@link StaticChannelPipeline} can skip
+ * them when a message is received or written.  A
+ * {@link SimpleChannelUpstreamHandler} (or {@link SimpleChannelHandler})
+ * which overrides neither {@code handleUpstream()} nor
+ * {@code messageReceived()} only forwards the received messages, and a
+ * {@link SimpleChannelDownstreamHandler} (or {@link SimpleChannelHandler})
+ * which overrides neither {@code handleDownstream()} nor
+ * {@code writeRequested()} only forwards the write requests.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+final class PassThroughHandlers {
+
+    private static final int UPSTREAM = 1;
+    private static final int DOWNSTREAM = 2;
+
+    private static final ConcurrentMap<Class<?>, Integer> cache =
+        new ConcurrentHashMap<Class<?>, Integer>();
+
+    /**
+     * Returns {@code true} if the specified handler forwards the received
+     * {@link MessageEvent}s to the next handler without handling them.
+     */
+    static boolean isUpstreamPassThrough(ChannelHandler handler) {
+        return (getFlags(handler.getClass()) & UPSTREAM) != 0;
+    }
+
+    /**
+     * Returns {@code true} if the specified handler forwards the write
+     * requests to the next handler without handling them.
+     */
+    static boolean isDownstreamPassThrough(ChannelHandler handler) {
+        return (getFlags(handler.getClass()) & DOWNSTREAM) != 0;
+    }
+
+    private static int getFlags(Class<?> type) {
+        Integer flags = cache.get(type);
+        if (flags == null) {
+            int f = 0;
+            if (isUpstreamPassThrough(type)) {
+                f |= UPSTREAM;
+            }
+            if (isDownstreamPassThrough(type)) {
+                f |= DOWNSTREAM;
+            }
+            flags = Integer.valueOf(f);
+            cache.put(type, flags);
+        }
+        return flags.intValue();
+    }
+
+    private static boolean isUpstreamPassThrough(Class<?> type) {
+        Class<?> base;
+        if (SimpleChannelUpstreamHandler.class.isAssignableFrom(type)) {
+            base = SimpleChannelUpstreamHandler.class;
+        } else if (SimpleChannelHandler.class.isAssignableFrom(type)) {
+            base = SimpleChannelHandler.class;
+        } else {
+            return false;
+        }
+
+        return isInherited(type, base, "handleUpstream", ChannelEvent.class) &&
+               isInherited(type, base, "messageReceived", MessageEvent.class);
+    }
+
+    private static boolean isDownstreamPassThrough(Class<?> type) {
+        Class<?> base;
+        if (SimpleChannelDownstreamHandler.class.isAssignableFrom(type)) {
+            base = SimpleChannelDownstreamHandler.class;
+        } else if (SimpleChannelHandler.class.isAssignableFrom(type)) {
+            base = SimpleChannelHandler.class;
+        } else {
+            return false;
+        }
+
+        return isInherited(type, base, "handleDownstream", ChannelEvent.class) &&
+               isInherited(type, base, "writeRequested", MessageEvent.class);
+    }
+
+    private static boolean isInherited(
+            Class<?> type, Class<?> base, String methodName, Class<?> eventType) {
+        try {
+            return type.getMethod(
+                    methodName, ChannelHandlerContext.class, eventType).getDeclaringClass() == base;
+        } catch (Exception e) {
+            // Not accessible - assume it's overridden.
+            return false;
+        }
+    }
+
+    private PassThroughHandlers() {
+        // Unused
+    }
+}
@@ -104,6 +104,8 @@ public class SimpleChannelHandler implements ChannelUpstreamHandler, ChannelDown
         } else if (e instanceof WriteCompletionEvent) {
             WriteCompletionEvent evt = (WriteCompletionEvent) e;
             writeComplete(ctx, evt);
+        } else if (e instanceof WriteBufferEvent) {
+            writeBufferChanged(ctx, (WriteBufferEvent) e);
         } else if (e instanceof ChildChannelStateEvent) {
             ChildChannelStateEvent evt = (ChildChannelStateEvent) e;
             if (evt.getChildChannel().isOpen()) {
@@ -239,6 +241,16 @@ public class SimpleChannelHandler implements ChannelUpstreamHandler, ChannelDown
         ctx.sendUpstream(e);
     }
 
+    /**
+     * Invoked when the write buffer of a {@link Channel} crossed one of its
+     * water marks, which means the {@link Channel} became writable or
+     * unwritable.
+     */
+    public void writeBufferChanged(
+            ChannelHandlerContext ctx, WriteBufferEvent e) throws Exception {
+        ctx.sendUpstream(e);
+    }
+
     /**
      * Invoked when a child {@link Channel} was open.
      * (e.g. a server channel accepted a connection)
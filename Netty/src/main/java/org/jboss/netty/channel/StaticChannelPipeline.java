@@ -47,6 +47,11 @@ public class StaticChannelPipeline implements ChannelPipeline {
     private volatile ChannelSink sink;
     private final StaticChannelHandlerContext[] contexts;
     private final int lastIndex;
+    // The first handlers which handle an event.
+    private final StaticChannelHandlerContext firstUpstream;
+    private final StaticChannelHandlerContext firstMessageUpstream;
+    private final StaticChannelHandlerContext lastDownstream;
+    private final StaticChannelHandlerContext lastMessageDownstream;
     private final Map<String, StaticChannelHandlerContext> name2ctx =
         new HashMap<String, StaticChannelHandlerContext>(4);
 
@@ -98,6 +103,39 @@ public class StaticChannelPipeline implements ChannelPipeline {
             name2ctx.put(name, ctx);
         }
 
+        // Precompute the next handler of each handler for each direction.
+        StaticChannelHandlerContext nextUpstream = null;
+        StaticChannelHandlerContext nextMessageUpstream = null;
+        for (int i = nContexts - 1; i >= 0; i --) {
+            StaticChannelHandlerContext ctx = contexts[i];
+            ctx.nextUpstream = nextUpstream;
+            ctx.nextMessageUpstream = nextMessageUpstream;
+            if (ctx.canHandleUpstream()) {
+                nextUpstream = ctx;
+                if (!ctx.upstreamPassThrough) {
+                    nextMessageUpstream = ctx;
+                }
+            }
+        }
+        firstUpstream = nextUpstream;
+        firstMessageUpstream = nextMessageUpstream;
+
+        StaticChannelHandlerContext nextDownstream = null;
+        StaticChannelHandlerContext nextMessageDownstream = null;
+        for (int i = 0; i < nContexts; i ++) {
+            StaticChannelHandlerContext ctx = contexts[i];
+            ctx.nextDownstream = nextDownstream;
+            ctx.nextMessageDownstream = nextMessageDownstream;
+            if (ctx.canHandleDownstream()) {
+                nextDownstream = ctx;
+                if (!ctx.downstreamPassThrough) {
+                    nextMessageDownstream = ctx;
+                }
+            }
+        }
+        lastDownstream = nextDownstream;
+        lastMessageDownstream = nextMessageDownstream;
+
 		DEBUG.P("name2ctx="+name2ctx);
 
         for (ChannelHandlerContext ctx: contexts) {
@@ -381,7 +419,7 @@ public class StaticChannelPipeline implements ChannelPipeline {
 		DEBUG.P(this,"sendUpstream(1)");
 		DEBUG.P("e="+e);
 
-        StaticChannelHandlerContext head = getActualUpstreamContext(0);
+        StaticChannelHandlerContext head = firstUpstream;
         
 		DEBUG.P("head="+head);
 		if (head == null) {
@@ -390,6 +428,14 @@ public class StaticChannelPipeline implements ChannelPipeline {
             return;
         }
 
+        if (e instanceof MessageEvent) {
+            head = firstMessageUpstream;
+            if (head == null) {
+                // All upstream handlers forward the message.
+                return;
+            }
+        }
+
         sendUpstream(head, e);
 
 		}finally{//我加上的
@@ -418,7 +464,8 @@ public class StaticChannelPipeline implements ChannelPipeline {
 		DEBUG.P(this,"sendDownstream(1)");
 		DEBUG.P("e="+e);
 
-        StaticChannelHandlerContext tail = getActualDownstreamContext(lastIndex);
+        StaticChannelHandlerContext tail =
+            e instanceof MessageEvent? lastMessageDownstream : lastDownstream;
 
 		DEBUG.P("tail="+tail);
         if (tail == null) {
@@ -446,26 +493,6 @@ public class StaticChannelPipeline implements ChannelPipeline {
         }
     }
 
-    StaticChannelHandlerContext getActualUpstreamContext(int index) {
-        for (int i = index; i < contexts.length; i ++) {
-            StaticChannelHandlerContext ctx = contexts[i];
-            if (ctx.canHandleUpstream()) {
-                return ctx;
-            }
-        }
-        return null;
-    }
-
-    StaticChannelHandlerContext getActualDownstreamContext(int index) {
-        for (int i = index; i >= 0; i --) {
-            StaticChannelHandlerContext ctx = contexts[i];
-            if (ctx.canHandleDownstream()) {
-                return ctx;
-            }
-        }
-        return null;
-    }
-
     protected void notifyHandlerException(ChannelEvent e, Throwable t) {
         if (e instanceof ExceptionEvent) {
             logger.warn(
@@ -495,6 +522,12 @@ public class StaticChannelPipeline implements ChannelPipeline {
         private final ChannelHandler handler;
         private final boolean canHandleUpstream;
         private final boolean canHandleDownstream;
+        final boolean upstreamPassThrough;
+        final boolean downstreamPassThrough;
+        StaticChannelHandlerContext nextUpstream;
+        StaticChannelHandlerContext nextMessageUpstream;
+        StaticChannelHandlerContext nextDownstream;
+        StaticChannelHandlerContext nextMessageDownstream;
         private volatile Object attachment;
 
 		public String toString() {
@@ -521,6 +554,8 @@ public class StaticChannelPipeline implements ChannelPipeline {
                         ChannelDownstreamHandler.class.getName() + '.');
             }
 
+            upstreamPassThrough = PassThroughHandlers.isUpstreamPassThrough(handler);
+            downstreamPassThrough = PassThroughHandlers.isDownstreamPassThrough(handler);
             this.index = index;
             this.name = name;
             this.handler = handler;
@@ -559,7 +594,8 @@ public class StaticChannelPipeline implements ChannelPipeline {
         }
 
         public void sendDownstream(ChannelEvent e) {
-            StaticChannelHandlerContext prev = getActualDownstreamContext(index - 1);
+            StaticChannelHandlerContext prev =
+                e instanceof MessageEvent? nextMessageDownstream : nextDownstream;
             if (prev == null) {
                 try {
                     getSink().eventSunk(StaticChannelPipeline.this, e);
@@ -576,7 +612,8 @@ public class StaticChannelPipeline implements ChannelPipeline {
 			DEBUG.P(this,"sendUpstream(1)");
 			DEBUG.P("e="+e);
 
-            StaticChannelHandlerContext next = getActualUpstreamContext(index + 1);
+            StaticChannelHandlerContext next =
+                e instanceof MessageEvent? nextMessageUpstream : nextUpstream;
             
 			DEBUG.P("next="+next);
 
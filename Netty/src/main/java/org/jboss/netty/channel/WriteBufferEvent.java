@@ -0,0 +1,49 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel;
+
+/**
+ * A {@link ChannelEvent} which notifies that the write buffer of a
+ * {@link Channel} crossed one of its water marks, and therefore the
+ * {@link Channel} became {@linkplain Channel#isWritable() writable} or
+ * unwritable.  It tells how much data was waiting in the write buffer at
+ * that moment, including the data which was being written.  This event is
+ * for going upstream only.  Please refer to the {@link ChannelEvent}
+ * documentation to find out what an upstream event and a downstream event
+ * are and what fundamental differences they have.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public interface WriteBufferEvent extends ChannelEvent {
+
+    /**
+     * Returns {@code true} if the write buffer dropped below its low water
+     * marks, or {@code false} if it reached one of its high water marks.
+     */
+    boolean isWritable();
+
+    /**
+     * Returns the number of bytes which were waiting to be written.
+     */
+    long getQueuedBytes();
+
+    /**
+     * Returns the number of write requests which were waiting to be written.
+     */
+    int getQueuedMessages();
+}
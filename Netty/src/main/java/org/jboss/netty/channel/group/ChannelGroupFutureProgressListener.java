@@ -0,0 +1,53 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.group;
+
+import org.jboss.netty.channel.Channel;
+
+/**
+ * Listens to the progress of a {@link ChannelGroupFuture} as well as its
+ * result.  {@link #operationProgressed(ChannelGroupFuture, int, int, int)} is
+ * called back whenever the I/O operation of a {@link Channel} in the group is
+ * complete, which is useful to monitor a
+ * {@linkplain DefaultChannelGroup#broadcast(Object) broadcast} to a large group.
+ * Like a usual {@link ChannelGroupFutureListener} that this interface
+ * extends, {@link #operationComplete(ChannelGroupFuture)} will be called when
+ * all I/O operations are complete.
+ * <p>
+ * {@link #operationProgressed(ChannelGroupFuture, int, int, int)} is directly
+ * called by the I/O threads of the member {@link Channel}s, possibly at the
+ * same time, and the counts reported by two concurrent calls may arrive out of
+ * order.  Please return the control to the caller quickly.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public interface ChannelGroupFutureProgressListener extends ChannelGroupFutureListener {
+
+    /**
+     * Invoked when the I/O operation of a {@link Channel} associated with the
+     * {@link ChannelGroupFuture} has been completed.
+     *
+     * @param future     the source {@link ChannelGroupFuture} which called
+     *                   this callback
+     * @param succeeded  the number of the operations which succeeded so far
+     * @param failed     the number of the operations which failed so far
+     * @param total      the number of all operations
+     */
+    void operationProgressed(
+            ChannelGroupFuture future, int succeeded, int failed, int total) throws Exception;
+}
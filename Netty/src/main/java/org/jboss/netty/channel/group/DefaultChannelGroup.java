@@ -20,15 +20,20 @@ import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFuture;
 import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.Channels;
 import org.jboss.netty.channel.ServerChannel;
 import org.jboss.netty.util.internal.ConcurrentHashMap;
 
@@ -53,6 +58,11 @@ public class DefaultChannelGroup extends AbstractSet<Channel> implements Channel
             remove(future.getChannel());
         }
     };
+    // The encoder chain of each member, derived again only when the pipeline
+    // of the member is modified
+    private final ConcurrentMap<Integer, SharedEncoderChain> encoderChains =
+        new ConcurrentHashMap<Integer, SharedEncoderChain>();
+    private volatile boolean skipUnwritable = true;
 
     /**
      * Creates a new group with a generated name.
@@ -77,6 +87,25 @@ public class DefaultChannelGroup extends AbstractSet<Channel> implements Channel
         return name;
     }
 
+    /**
+     * Returns {@code true} if and only if {@link #broadcast(Object)} skips
+     * the {@link Channel}s which are not {@linkplain Channel#isWritable() writable}.
+     * The default is {@code true}.
+     */
+    public boolean isSkipUnwritable() {
+        return skipUnwritable;
+    }
+
+    /**
+     * Sets whether {@link #broadcast(Object)} skips the {@link Channel}s
+     * which are not {@linkplain Channel#isWritable() writable}, so that a slow
+     * receiver does not queue up the broadcast messages.  The write to a
+     * skipped {@link Channel} fails with an {@link UnwritableChannelException}.
+     */
+    public void setSkipUnwritable(boolean skipUnwritable) {
+        this.skipUnwritable = skipUnwritable;
+    }
+
     @Override
     public boolean isEmpty() {
         return nonServerChannels.isEmpty() && serverChannels.isEmpty();
@@ -145,6 +174,7 @@ public class DefaultChannelGroup extends AbstractSet<Channel> implements Channel
             return false;
         }
 
+        encoderChains.remove(c.getId());
         c.getCloseFuture().removeListener(remover);
         return true;
     }
@@ -153,6 +183,7 @@ public class DefaultChannelGroup extends AbstractSet<Channel> implements Channel
     public void clear() {
         nonServerChannels.clear();
         serverChannels.clear();
+        encoderChains.clear();
     }
 
     @Override
@@ -280,6 +311,128 @@ public class DefaultChannelGroup extends AbstractSet<Channel> implements Channel
         return new DefaultChannelGroupFuture(this, futures);
     }
 
+    /**
+     * Writes the specified {@code message} to all {@link Channel}s in this
+     * group, like {@link #write(Object)} does, but runs the encoders only once
+     * for each distinct set of encoders.  If the downstream handlers at the
+     * tail of the pipeline of a {@link Channel} are
+     * {@linkplain ChannelHandler.Sharable sharable}, the message is encoded
+     * by those handler instances once, and the encoded {@link ChannelBuffer}
+     * is sent to the rest of the pipeline of every {@link Channel} whose
+     * pipeline ends with the same handler instances, as a
+     * {@linkplain ChannelBuffers#unmodifiableBuffer(ChannelBuffer) read-only}
+     * view.  Therefore, the sharable handlers must not do anything specific
+     * to a {@link Channel} when a message is written.  The message is written
+     * in the usual way if the last downstream handler is not sharable or the
+     * handlers did not produce a {@link ChannelBuffer}.
+     * <p>
+     * The encoded buffers are owned by this group and
+     * {@linkplain ChannelBuffers#release(Object) released} once the writes
+     * to all the {@link Channel}s they were sent to are done.  The handlers
+     * found at the tail of the pipeline of a {@link Channel} are remembered
+     * until the pipeline is modified.
+     * <p>
+     * A {@link Channel} which is not {@linkplain Channel#isWritable() writable}
+     * is skipped unless {@link #setSkipUnwritable(boolean)} is turned off, in
+     * which case the write to the {@link Channel} fails with an
+     * {@link UnwritableChannelException}.  Please note that this operation is
+     * asynchronous as {@link Channel#write(Object)} is.
+     *
+     * @return the {@link ChannelGroupFuture} instance that notifies when
+     *         the operation is done for all channels.  Add a
+     *         {@link ChannelGroupFutureProgressListener} to monitor the
+     *         progress.
+     */
+    public ChannelGroupFuture broadcast(Object message) {
+        return broadcast(message, null);
+    }
+
+    /**
+     * Writes the specified {@code message} with the specified
+     * {@code remoteAddress} to all {@link Channel}s in this group, encoding
+     * it only once for each distinct set of encoders.  Please refer to
+     * {@link #broadcast(Object)} for the details.
+     *
+     * @return the {@link ChannelGroupFuture} instance that notifies when
+     *         the operation is done for all channels
+     */
+    public ChannelGroupFuture broadcast(Object message, SocketAddress remoteAddress) {
+        if (message == null) {
+            throw new NullPointerException("message");
+        }
+
+        Map<Integer, ChannelFuture> futures =
+            new LinkedHashMap<Integer, ChannelFuture>(size());
+        // A null value means the message can't be encoded only once.
+        Map<SharedEncoderChain, EncodedMessage> encoded =
+            new HashMap<SharedEncoderChain, EncodedMessage>();
+        boolean skipUnwritable = this.skipUnwritable;
+        UnwritableChannelException unwritable = null;
+
+        try {
+            for (Channel c: this) {
+                if (skipUnwritable && !c.isWritable()) {
+                    if (unwritable == null) {
+                        unwritable = new UnwritableChannelException(
+                                "skipped by the broadcast to " + getName());
+                    }
+                    futures.put(c.getId(), Channels.failedFuture(c, unwritable));
+                    continue;
+                }
+
+                SharedEncoderChain chain = getEncoderChain(c);
+                if (chain.isSharable()) {
+                    EncodedMessage m;
+                    if (encoded.containsKey(chain)) {
+                        m = encoded.get(chain);
+                    } else {
+                        ChannelBuffer[] buffers =
+                            chain.encode(c, duplicate(message), remoteAddress);
+                        m = buffers == null? null : new EncodedMessage(buffers);
+                        encoded.put(chain, m);
+                    }
+
+                    if (m != null) {
+                        futures.put(
+                                c.getId(),
+                                m.write(chain.getLastContext(), remoteAddress));
+                        continue;
+                    }
+                }
+
+                futures.put(c.getId(), c.write(duplicate(message), remoteAddress));
+            }
+        } finally {
+            for (EncodedMessage m: encoded.values()) {
+                if (m != null) {
+                    m.release();
+                }
+            }
+        }
+        return new DefaultChannelGroupFuture(this, futures);
+    }
+
+    private SharedEncoderChain getEncoderChain(Channel channel) {
+        Integer id = channel.getId();
+        SharedEncoderChain cached = encoderChains.get(id);
+        SharedEncoderChain chain = SharedEncoderChain.get(channel.getPipeline(), cached);
+        if (chain != cached) {
+            encoderChains.put(id, chain);
+            if (!contains(channel)) {
+                // Removed from this group in the meantime.
+                encoderChains.remove(id);
+            }
+        }
+        return chain;
+    }
+
+    private static Object duplicate(Object message) {
+        if (message instanceof ChannelBuffer) {
+            return ((ChannelBuffer) message).duplicate();
+        }
+        return message;
+    }
+
     @Override
     public int hashCode() {
         return System.identityHashCode(this);
@@ -304,4 +457,48 @@ public class DefaultChannelGroup extends AbstractSet<Channel> implements Channel
         return getClass().getSimpleName() +
                "(name: " + getName() + ", size: " + size() + ')';
     }
+
+    /**
+     * A message encoded once for all the {@link Channel}s whose pipelines end
+     * with the same {@link SharedEncoderChain}.  The encoded buffers are
+     * released when the writes to all those {@link Channel}s are done.
+     */
+    private static final class EncodedMessage implements ChannelFutureListener {
+
+        private final ChannelBuffer[] buffers;
+        private final ChannelBuffer content;
+        // One for each pending write and one for the broadcast itself
+        private final AtomicInteger refCnt = new AtomicInteger(1);
+
+        EncodedMessage(ChannelBuffer[] buffers) {
+            this.buffers = buffers;
+            if (buffers.length == 1) {
+                content = buffers[0];
+            } else {
+                content = ChannelBuffers.wrappedBuffer(buffers);
+            }
+        }
+
+        ChannelFuture write(ChannelHandlerContext ctx, SocketAddress remoteAddress) {
+            ChannelFuture future = Channels.future(ctx.getChannel());
+            refCnt.incrementAndGet();
+            future.addListener(this);
+            Channels.write(
+                    ctx, future, ChannelBuffers.unmodifiableBuffer(content),
+                    remoteAddress);
+            return future;
+        }
+
+        public void operationComplete(ChannelFuture future) {
+            release();
+        }
+
+        void release() {
+            if (refCnt.decrementAndGet() == 0) {
+                for (ChannelBuffer b: buffers) {
+                    ChannelBuffers.release(b);
+                }
+            }
+        }
+    }
 }
@@ -54,11 +54,16 @@ public class DefaultChannelGroupFuture implements ChannelGroupFuture {
     int successCount;
     int failureCount;
     private int waiters;
+    private int progressListenerCount;
+    private ChannelGroupFutureProgressListener[] progressListeners;
 
     private final ChannelFutureListener childListener = new ChannelFutureListener() {
         public void operationComplete(ChannelFuture future) throws Exception {
             boolean success = future.isSuccess();
             boolean callSetDone = false;
+            ChannelGroupFutureProgressListener[] progressListeners = null;
+            int succeeded;
+            int failed;
             synchronized (DefaultChannelGroupFuture.this) {
                 if (success) {
                     successCount ++;
@@ -66,8 +71,20 @@ public class DefaultChannelGroupFuture implements ChannelGroupFuture {
                     failureCount ++;
                 }
 
+                succeeded = successCount;
+                failed = failureCount;
                 callSetDone = successCount + failureCount == futures.size();
                 assert successCount + failureCount <= futures.size();
+
+                if (progressListenerCount > 0) {
+                    progressListeners = getProgressListeners();
+                }
+            }
+
+            if (progressListeners != null) {
+                for (ChannelGroupFutureProgressListener l: progressListeners) {
+                    notifyProgressListener(l, succeeded, failed);
+                }
             }
 
             if (callSetDone) {
@@ -173,6 +190,11 @@ public class DefaultChannelGroupFuture implements ChannelGroupFuture {
                     }
                     otherListeners.add(listener);
                 }
+
+                if (listener instanceof ChannelGroupFutureProgressListener) {
+                    progressListenerCount ++;
+                    progressListeners = null;
+                }
             }
         }
 
@@ -188,17 +210,51 @@ public class DefaultChannelGroupFuture implements ChannelGroupFuture {
 
         synchronized (this) {
             if (!done) {
+                boolean removed;
                 if (listener == firstListener) {
                     if (otherListeners != null && !otherListeners.isEmpty()) {
                         firstListener = otherListeners.remove(0);
                     } else {
                         firstListener = null;
                     }
+                    removed = true;
                 } else if (otherListeners != null) {
-                    otherListeners.remove(listener);
+                    removed = otherListeners.remove(listener);
+                } else {
+                    removed = false;
+                }
+
+                if (removed && listener instanceof ChannelGroupFutureProgressListener) {
+                    progressListenerCount --;
+                    progressListeners = null;
+                }
+            }
+        }
+    }
+
+    private ChannelGroupFutureProgressListener[] getProgressListeners() {
+        // Called in synchronized (this) block.
+        ChannelGroupFutureProgressListener[] progressListeners = this.progressListeners;
+        if (progressListeners != null) {
+            return progressListeners;
+        }
+
+        List<ChannelGroupFutureProgressListener> list =
+            new ArrayList<ChannelGroupFutureProgressListener>(progressListenerCount);
+        if (firstListener instanceof ChannelGroupFutureProgressListener) {
+            list.add((ChannelGroupFutureProgressListener) firstListener);
+        }
+        if (otherListeners != null) {
+            for (ChannelGroupFutureListener l: otherListeners) {
+                if (l instanceof ChannelGroupFutureProgressListener) {
+                    list.add((ChannelGroupFutureProgressListener) l);
                 }
             }
         }
+
+        progressListeners = list.toArray(new ChannelGroupFutureProgressListener[list.size()]);
+        this.progressListeners = progressListeners;
+        return progressListeners;
     }
 
     public ChannelGroupFuture await() throws InterruptedException {
@@ -373,4 +429,15 @@ public class DefaultChannelGroupFuture implements ChannelGroupFuture {
                     ChannelFutureListener.class.getSimpleName() + ".", t);
         }
     }
+
+    private void notifyProgressListener(
+            ChannelGroupFutureProgressListener l, int succeeded, int failed) {
+        try {
+            l.operationProgressed(this, succeeded, failed, futures.size());
+        } catch (Throwable t) {
+            logger.warn(
+                    "An exception was thrown by " +
+                    ChannelGroupFutureProgressListener.class.getSimpleName() + ".", t);
+        }
+    }
 }
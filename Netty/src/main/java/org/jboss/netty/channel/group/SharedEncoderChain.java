@@ -0,0 +1,322 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.group;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelDownstreamHandler;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelException;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.DefaultChannelPipeline;
+import org.jboss.netty.channel.DownstreamMessageEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.StaticChannelPipeline;
+import org.jboss.netty.channel.ChannelHandler.Sharable;
+import org.jboss.netty.util.internal.ConcurrentHashMap;
+
+/**
+ * The {@linkplain Sharable sharable} {@link ChannelDownstreamHandler}s at the
+ * tail of a {@link ChannelPipeline}, which are run only once for all the
+ * {@link Channel}s whose pipelines end with the same handler instances when
+ * a message is {@linkplain DefaultChannelGroup#broadcast(Object) broadcast}.
+ * Two chains are equal if they consist of the same handler instances.
+ * <p>
+ * A chain is derived from the handlers of a pipeline, which is expensive
+ * enough not to be repeated for every broadcast message.  A chain can be
+ * kept and passed to {@link #get(ChannelPipeline, SharedEncoderChain)},
+ * which returns it as it is while the pipeline is not modified.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+final class SharedEncoderChain {
+
+    private static final ConcurrentMap<Class<?>, Boolean> sharableTypes =
+        new ConcurrentHashMap<Class<?>, Boolean>();
+
+    /**
+     * Returns the chain of the sharable downstream handlers at the tail of the
+     * specified pipeline.  The chain is empty if the last downstream handler
+     * is not sharable.
+     *
+     * @param cached the chain previously returned for the same channel, or
+     *               {@code null}.  It is returned again if it is still up to
+     *               date with the specified pipeline.
+     */
+    static SharedEncoderChain get(ChannelPipeline pipeline, SharedEncoderChain cached) {
+        if (cached != null && cached.isUpToDate(pipeline)) {
+            return cached;
+        }
+
+        // Read the modification count before the handlers so that a
+        // modification made in the meantime makes the chain out of date.
+        int modificationCount = modificationCount(pipeline);
+        Object[] handlers = pipeline.toMap().values().toArray();
+        List<ChannelDownstreamHandler> chain = new ArrayList<ChannelDownstreamHandler>();
+        for (int i = handlers.length - 1; i >= 0; i --) {
+            Object h = handlers[i];
+            if (!(h instanceof ChannelDownstreamHandler)) {
+                continue;
+            }
+            if (!isSharable(h.getClass())) {
+                break;
+            }
+            chain.add((ChannelDownstreamHandler) h);
+        }
+
+        return new SharedEncoderChain(pipeline, modificationCount, chain);
+    }
+
+    /**
+     * Returns the modification count of the specified pipeline, or {@code -1}
+     * if the pipeline does not tell when it is modified.
+     */
+    private static int modificationCount(ChannelPipeline pipeline) {
+        if (pipeline instanceof DefaultChannelPipeline) {
+            return ((DefaultChannelPipeline) pipeline).getModificationCount() & Integer.MAX_VALUE;
+        }
+        if (pipeline instanceof StaticChannelPipeline) {
+            // Never modified.
+            return 0;
+        }
+        return -1;
+    }
+
+    private static boolean isSharable(Class<?> type) {
+        Boolean sharable = sharableTypes.get(type);
+        if (sharable == null) {
+            sharable = Boolean.valueOf(type.isAnnotationPresent(Sharable.class));
+            sharableTypes.put(type, sharable);
+        }
+        return sharable.booleanValue();
+    }
+
+    private final ChannelPipeline pipeline;
+    private final int modificationCount;
+    private final ChannelDownstreamHandler[] handlers;
+    private final ChannelHandlerContext lastContext;
+    private final int hashCode;
+
+    private SharedEncoderChain(
+            ChannelPipeline pipeline, int modificationCount,
+            List<ChannelDownstreamHandler> handlers) {
+        this.pipeline = pipeline;
+        this.modificationCount = modificationCount;
+        this.handlers = handlers.toArray(new ChannelDownstreamHandler[handlers.size()]);
+        if (this.handlers.length == 0) {
+            lastContext = null;
+        } else {
+            lastContext = pipeline.getContext(this.handlers[this.handlers.length - 1]);
+        }
+
+        int hashCode = 1;
+        for (ChannelDownstreamHandler h: this.handlers) {
+            hashCode = 31 * hashCode + System.identityHashCode(h);
+        }
+        this.hashCode = hashCode;
+    }
+
+    private boolean isUpToDate(ChannelPipeline pipeline) {
+        return this.pipeline == pipeline &&
+               modificationCount >= 0 &&
+               modificationCount == modificationCount(pipeline);
+    }
+
+    /**
+     * Returns {@code true} if and only if this chain has any handler, and
+     * therefore a message can be encoded once with it.
+     */
+    boolean isSharable() {
+        return lastContext != null;
+    }
+
+    /**
+     * Returns the context of the handler nearest to the head of the pipeline
+     * in this chain.  The encoded message is sent downstream from there.
+     */
+    ChannelHandlerContext getLastContext() {
+        return lastContext;
+    }
+
+    /**
+     * Runs the specified message through this chain in the pipeline of the
+     * specified channel.
+     *
+     * @return the buffers written by the handlers, or {@code null} if they did not
+     *         produce only {@link ChannelBuffer} writes, in which case the
+     *         message has to be written to every channel separately
+     */
+    ChannelBuffer[] encode(Channel channel, Object message, SocketAddress remoteAddress) {
+        ChannelPipeline pipeline = channel.getPipeline();
+        Context[] contexts = new Context[handlers.length];
+        for (int i = 0; i < handlers.length; i ++) {
+            ChannelHandlerContext ctx = pipeline.getContext(handlers[i]);
+            if (ctx == null) {
+                // The pipeline has been modified.
+                return null;
+            }
+            contexts[i] = new Context(contexts, i, ctx);
+        }
+
+        ChannelFuture future = Channels.future(channel);
+        try {
+            contexts[0].getHandler().handleDownstream(
+                    contexts[0],
+                    new DownstreamMessageEvent(channel, future, message, remoteAddress));
+        } catch (Throwable t) {
+            // Let the pipeline of each channel deal with the failure.
+            return null;
+        }
+
+        if (future.isDone()) {
+            // One of the handlers completed the write by itself.
+            return null;
+        }
+
+        List<ChannelEvent> events = contexts[handlers.length - 1].events;
+        if (events == null || events.isEmpty()) {
+            return null;
+        }
+
+        ChannelBuffer[] buffers = new ChannelBuffer[events.size()];
+        for (int i = 0; i < buffers.length; i ++) {
+            ChannelEvent e = events.get(i);
+            Object m = e instanceof MessageEvent? ((MessageEvent) e).getMessage() : null;
+            if (!(m instanceof ChannelBuffer)) {
+                // The message is written to every channel separately instead.
+                release(events);
+                return null;
+            }
+            buffers[i] = (ChannelBuffer) m;
+        }
+        return buffers;
+    }
+
+    private static void release(List<ChannelEvent> events) {
+        for (ChannelEvent e: events) {
+            if (e instanceof MessageEvent) {
+                ChannelBuffers.release(((MessageEvent) e).getMessage());
+            }
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof SharedEncoderChain)) {
+            return false;
+        }
+
+        ChannelDownstreamHandler[] thoseHandlers = ((SharedEncoderChain) o).handlers;
+        if (handlers.length != thoseHandlers.length) {
+            return false;
+        }
+        for (int i = 0; i < handlers.length; i ++) {
+            if (handlers[i] != thoseHandlers[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Passes the events between the handlers of the chain and captures the
+     * ones leaving the chain instead of sending them further downstream.
+     */
+    private static final class Context implements ChannelHandlerContext {
+
+        private final Context[] contexts;
+        private final int index;
+        private final ChannelHandlerContext ctx;
+        List<ChannelEvent> events;
+
+        Context(Context[] contexts, int index, ChannelHandlerContext ctx) {
+            super();
+            this.contexts = contexts;
+            this.index = index;
+            this.ctx = ctx;
+        }
+
+        public Channel getChannel() {
+            return ctx.getChannel();
+        }
+
+        public ChannelPipeline getPipeline() {
+            return ctx.getPipeline();
+        }
+
+        public String getName() {
+            return ctx.getName();
+        }
+
+        public ChannelDownstreamHandler getHandler() {
+            return (ChannelDownstreamHandler) ctx.getHandler();
+        }
+
+        public boolean canHandleUpstream() {
+            return ctx.canHandleUpstream();
+        }
+
+        public boolean canHandleDownstream() {
+            return true;
+        }
+
+        public void sendUpstream(ChannelEvent e) {
+            ctx.sendUpstream(e);
+        }
+
+        public void sendDownstream(ChannelEvent e) {
+            if (index + 1 < contexts.length) {
+                Context next = contexts[index + 1];
+                try {
+                    next.getHandler().handleDownstream(next, e);
+                } catch (RuntimeException ex) {
+                    throw ex;
+                } catch (Exception ex) {
+                    throw new ChannelException(ex);
+                }
+            } else {
+                if (events == null) {
+                    events = new ArrayList<ChannelEvent>(1);
+                }
+                events.add(e);
+            }
+        }
+
+        public Object getAttachment() {
+            return ctx.getAttachment();
+        }
+
+        public void setAttachment(Object attachment) {
+            ctx.setAttachment(attachment);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.group;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelException;
+
+/**
+ * A {@link ChannelException} which fails the write to a {@link Channel} that
+ * was skipped by {@link DefaultChannelGroup#broadcast(Object)} because the
+ * {@link Channel} was not {@linkplain Channel#isWritable() writable}.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ *
+ * @apiviz.hidden
+ */
+public class UnwritableChannelException extends ChannelException {
+
+    private static final long serialVersionUID = -5297353297218461203L;
+
+    /**
+     * Creates a new exception.
+     */
+    public UnwritableChannelException() {
+        super();
+    }
+
+    /**
+     * Creates a new exception.
+     */
+    public UnwritableChannelException(String message) {
+        super(message);
+    }
+}
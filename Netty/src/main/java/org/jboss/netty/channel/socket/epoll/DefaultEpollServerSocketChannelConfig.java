@@ -0,0 +1,126 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.epoll;
+
+import java.io.IOException;
+
+import org.jboss.netty.channel.ChannelException;
+import org.jboss.netty.channel.DefaultServerChannelConfig;
+import org.jboss.netty.util.internal.ConversionUtil;
+
+/**
+ * The default {@link EpollServerSocketChannelConfig} implementation.  The
+ * socket options are read from and written to the first listening socket of
+ * the channel, and are copied to the other listening sockets when the
+ * channel is bound.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+class DefaultEpollServerSocketChannelConfig extends DefaultServerChannelConfig
+        implements EpollServerSocketChannelConfig {
+
+    private final int fd;
+    private volatile int backlog;
+
+    DefaultEpollServerSocketChannelConfig(int fd) {
+        this.fd = fd;
+    }
+
+    @Override
+    public boolean setOption(String key, Object value) {
+        if (super.setOption(key, value)) {
+            return true;
+        }
+
+        if (key.equals("receiveBufferSize")) {
+            setReceiveBufferSize(ConversionUtil.toInt(value));
+        } else if (key.equals("reuseAddress")) {
+            setReuseAddress(ConversionUtil.toBoolean(value));
+        } else if (key.equals("reusePort")) {
+            setReusePort(ConversionUtil.toBoolean(value));
+        } else if (key.equals("backlog")) {
+            setBacklog(ConversionUtil.toInt(value));
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    public boolean isReuseAddress() {
+        try {
+            return Native.isReuseAddress(fd);
+        } catch (IOException e) {
+            throw new ChannelException(e);
+        }
+    }
+
+    public void setReuseAddress(boolean reuseAddress) {
+        try {
+            Native.setReuseAddress(fd, reuseAddress);
+        } catch (IOException e) {
+            throw new ChannelException(e);
+        }
+    }
+
+    public boolean isReusePort() {
+        try {
+            return Native.isReusePort(fd);
+        } catch (IOException e) {
+            throw new ChannelException(e);
+        }
+    }
+
+    public void setReusePort(boolean reusePort) {
+        try {
+            Native.setReusePort(fd, reusePort);
+        } catch (IOException e) {
+            throw new ChannelException(e);
+        }
+    }
+
+    public int getReceiveBufferSize() {
+        try {
+            return Native.getReceiveBufferSize(fd);
+        } catch (IOException e) {
+            throw new ChannelException(e);
+        }
+    }
+
+    public void setReceiveBufferSize(int receiveBufferSize) {
+        try {
+            Native.setReceiveBufferSize(fd, receiveBufferSize);
+        } catch (IOException e) {
+            throw new ChannelException(e);
+        }
+    }
+
+    public void setPerformancePreferences(int connectionTime, int latency, int bandwidth) {
+        // Not supported by Linux - ignore like java.net.ServerSocket does.
+    }
+
+    public int getBacklog() {
+        return backlog;
+    }
+
+    public void setBacklog(int backlog) {
+        if (backlog < 0) {
+            throw new IllegalArgumentException("backlog: " + backlog);
+        }
+        this.backlog = backlog;
+    }
+}
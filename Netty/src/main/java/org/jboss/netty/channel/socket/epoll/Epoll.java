@@ -0,0 +1,70 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.epoll;
+
+import org.jboss.netty.channel.ChannelException;
+
+/**
+ * Tells if the native library of the epoll transport has been loaded
+ * successfully.  A typical application falls back to the NIO transport when
+ * the epoll transport is not available:
+ * <pre>
+ * {@link org.jboss.netty.channel.socket.ServerSocketChannelFactory} factory;
+ * if ({@link Epoll}.isAvailable()) {
+ *     factory = new {@link EpollServerSocketChannelFactory}(bossExecutor, workerExecutor);
+ * } else {
+ *     factory = new {@link org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory}(bossExecutor, workerExecutor);
+ * }
+ * </pre>
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public final class Epoll {
+
+    /**
+     * Returns {@code true} if and only if the epoll transport can be used.
+     */
+    public static boolean isAvailable() {
+        return Native.UNAVAILABILITY_CAUSE == null;
+    }
+
+    /**
+     * Returns the cause of the unavailability of the epoll transport, or
+     * {@code null} if it is available.
+     */
+    public static Throwable unavailabilityCause() {
+        return Native.UNAVAILABILITY_CAUSE;
+    }
+
+    /**
+     * Ensures that the epoll transport can be used.
+     *
+     * @throws ChannelException if the native library could not be loaded
+     */
+    public static void ensureAvailability() {
+        if (Native.UNAVAILABILITY_CAUSE != null) {
+            throw new ChannelException(
+                    "failed to load the native library of the epoll transport",
+                    Native.UNAVAILABILITY_CAUSE);
+        }
+    }
+
+    private Epoll() {
+        // Unused
+    }
+}
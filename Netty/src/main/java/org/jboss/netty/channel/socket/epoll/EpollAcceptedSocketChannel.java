@@ -0,0 +1,44 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.epoll;
+
+import static org.jboss.netty.channel.Channels.*;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFactory;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelSink;
+
+/**
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+final class EpollAcceptedSocketChannel extends EpollSocketChannel {
+
+    EpollAcceptedSocketChannel(
+            ChannelFactory factory, ChannelPipeline pipeline,
+            Channel parent, ChannelSink sink,
+            int fd, EpollWorker worker) {
+
+        super(parent, factory, pipeline, sink, fd, worker);
+
+        setConnected();
+        fireChannelOpen(this);
+        fireChannelBound(this, getLocalAddress());
+        fireChannelConnected(this, getRemoteAddress());
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.epoll;
+
+import static org.jboss.netty.channel.Channels.*;
+
+import java.io.IOException;
+
+import org.jboss.netty.channel.ChannelException;
+import org.jboss.netty.channel.ChannelFactory;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelSink;
+
+/**
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+final class EpollClientSocketChannel extends EpollSocketChannel {
+
+    private static int newSocket() {
+        try {
+            return Native.socketStream();
+        } catch (IOException e) {
+            throw new ChannelException("Failed to open a socket.", e);
+        }
+    }
+
+    // The following fields are accessed by the worker thread only.
+    ChannelFuture connectFuture;
+    long connectDeadlineNanos;
+
+    volatile boolean boundManually;
+
+    EpollClientSocketChannel(
+            ChannelFactory factory, ChannelPipeline pipeline,
+            ChannelSink sink, EpollWorker worker) {
+
+        super(null, factory, pipeline, sink, newSocket(), worker);
+        fireChannelOpen(this);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.epoll;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.group.ChannelGroup;
+import org.jboss.netty.channel.socket.ClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.SocketChannel;
+import org.jboss.netty.util.internal.ExecutorUtil;
+
+/**
+ * A {@link ClientSocketChannelFactory} which creates a client-side
+ * {@link SocketChannel} on top of the Linux edge-triggered {@code epoll(7)}
+ * API.  It is a drop-in replacement of
+ * {@link org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory};
+ * the same {@link org.jboss.netty.channel.ChannelPipelineFactory} can be used
+ * with both.  The native library must be available - see {@link Epoll}.
+ *
+ * <h3>How threads work</h3>
+ * <p>
+ * One {@link EpollClientSocketChannelFactory} can have one or more worker
+ * threads.  A worker thread makes a non-blocking connection attempt on
+ * request, and then performs non-blocking read and write for one or more
+ * {@link Channel}s.  Unlike the NIO transport, no boss thread is required.
+ *
+ * <h3>Life cycle of threads and graceful shutdown</h3>
+ * <p>
+ * All threads are acquired from the {@link Executor} which was specified
+ * when a {@link EpollClientSocketChannelFactory} was created.  Therefore, you
+ * should make sure the specified {@link Executor} is able to lend the
+ * sufficient number of threads.  It is the best bet to specify
+ * {@linkplain Executors#newCachedThreadPool() a cached thread pool}.
+ * <p>
+ * Worker threads are acquired lazily, and then released when there's nothing
+ * left to process.  All the related resources such as epoll instances are
+ * also released when the worker threads are released.  Therefore, to shut
+ * down a service gracefully, you should do the following:
+ *
+ * <ol>
+ * <li>close all channels created by the factory usually using
+ *     {@link ChannelGroup#close()}, and</li>
+ * <li>call {@link #releaseExternalResources()}.</li>
+ * </ol>
+ *
+ * Please make sure not to shut down the executor until all channels are
+ * closed.  Otherwise, you will end up with a {@link RejectedExecutionException}
+ * and the related resources might not be released properly.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ *
+ * @apiviz.landmark
+ */
+public class EpollClientSocketChannelFactory implements ClientSocketChannelFactory {
+
+    private final Executor workerExecutor;
+    private final EpollClientSocketPipelineSink sink;
+
+    /**
+     * Creates a new instance.  Calling this constructor is same with calling
+     * {@link #EpollClientSocketChannelFactory(Executor, int)} with 2 * the
+     * number of available processors in the machine.  The number of
+     * available processors is obtained by {@link Runtime#availableProcessors()}.
+     *
+     * @param workerExecutor
+     *        the {@link Executor} which will execute the I/O worker threads
+     */
+    public EpollClientSocketChannelFactory(Executor workerExecutor) {
+        this(workerExecutor, EpollServerSocketChannelFactory.DEFAULT_IO_THREADS);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param workerExecutor
+     *        the {@link Executor} which will execute the I/O worker threads
+     * @param workerCount
+     *        the maximum number of I/O worker threads
+     *
+     * @throws org.jboss.netty.channel.ChannelException
+     *         if the native library is not available
+     */
+    public EpollClientSocketChannelFactory(
+            Executor workerExecutor, int workerCount) {
+        if (workerExecutor == null) {
+            throw new NullPointerException("workerExecutor");
+        }
+        if (workerCount <= 0) {
+            throw new IllegalArgumentException(
+                    "workerCount (" + workerCount + ") " +
+                    "must be a positive integer.");
+        }
+        Epoll.ensureAvailability();
+
+        this.workerExecutor = workerExecutor;
+        sink = new EpollClientSocketPipelineSink(workerExecutor, workerCount);
+    }
+
+    public SocketChannel newChannel(ChannelPipeline pipeline) {
+        return new EpollClientSocketChannel(this, pipeline, sink, sink.nextWorker());
+    }
+
+    public void releaseExternalResources() {
+        ExecutorUtil.terminate(workerExecutor);
+    }
+}
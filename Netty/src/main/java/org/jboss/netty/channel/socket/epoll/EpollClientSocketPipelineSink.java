@@ -0,0 +1,136 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.epoll;
+
+import static org.jboss.netty.channel.Channels.*;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.netty.channel.AbstractChannelSink;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelState;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.MessageEvent;
+
+/**
+ * Unlike {@code NioClientSocketPipelineSink}, there is no boss thread; a
+ * non-blocking connection attempt is completed by the worker thread which
+ * the channel belongs to.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+class EpollClientSocketPipelineSink extends AbstractChannelSink {
+
+    private static final AtomicInteger nextId = new AtomicInteger();
+
+    final int id = nextId.incrementAndGet();
+    private final EpollWorker[] workers;
+    private final AtomicInteger workerIndex = new AtomicInteger();
+
+    EpollClientSocketPipelineSink(Executor workerExecutor, int workerCount) {
+        workers = new EpollWorker[workerCount];
+        for (int i = 0; i < workers.length; i ++) {
+            workers[i] = new EpollWorker(id, i + 1, workerExecutor, false);
+        }
+    }
+
+    public void eventSunk(
+            ChannelPipeline pipeline, ChannelEvent e) throws Exception {
+        if (e instanceof ChannelStateEvent) {
+            ChannelStateEvent event = (ChannelStateEvent) e;
+            EpollClientSocketChannel channel =
+                (EpollClientSocketChannel) event.getChannel();
+            ChannelFuture future = event.getFuture();
+            ChannelState state = event.getState();
+            Object value = event.getValue();
+
+            switch (state) {
+            case OPEN:
+                if (Boolean.FALSE.equals(value)) {
+                    channel.worker.close(channel, future);
+                }
+                break;
+            case BOUND:
+                if (value != null) {
+                    bind(channel, future, (SocketAddress) value);
+                } else {
+                    channel.worker.close(channel, future);
+                }
+                break;
+            case CONNECTED:
+                if (value != null) {
+                    connect(channel, future, (SocketAddress) value);
+                } else {
+                    channel.worker.close(channel, future);
+                }
+                break;
+            case INTEREST_OPS:
+                channel.worker.setInterestOps(channel, future, ((Integer) value).intValue());
+                break;
+            }
+        } else if (e instanceof MessageEvent) {
+            MessageEvent event = (MessageEvent) e;
+            EpollSocketChannel channel = (EpollSocketChannel) event.getChannel();
+            boolean offered = channel.writeBuffer.offer(event);
+            assert offered;
+            channel.worker.writeFromUserCode(channel);
+        }
+    }
+
+    private void bind(
+            EpollClientSocketChannel channel, ChannelFuture future,
+            SocketAddress localAddress) {
+        try {
+            Native.bind(channel.fd, (InetSocketAddress) localAddress);
+            channel.boundManually = true;
+            channel.setBound();
+            future.setSuccess();
+            fireChannelBound(channel, channel.getLocalAddress());
+        } catch (Throwable t) {
+            future.setFailure(t);
+            fireExceptionCaught(channel, t);
+        }
+    }
+
+    private void connect(
+            EpollClientSocketChannel channel, ChannelFuture cf,
+            SocketAddress remoteAddress) {
+        if (!(remoteAddress instanceof InetSocketAddress)) {
+            Exception cause = new IllegalArgumentException(
+                    "unsupported address type: " + remoteAddress.getClass().getName());
+            cf.setFailure(cause);
+            fireExceptionCaught(channel, cause);
+            channel.worker.close(channel, succeededFuture(channel));
+            return;
+        }
+
+        cf.addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+        channel.worker.connect(channel, cf, remoteAddress);
+    }
+
+    EpollWorker nextWorker() {
+        return workers[Math.abs(
+                workerIndex.getAndIncrement() % workers.length)];
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.epoll;
+
+import static org.jboss.netty.channel.Channels.*;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+import org.jboss.netty.channel.AbstractServerChannel;
+import org.jboss.netty.channel.ChannelException;
+import org.jboss.netty.channel.ChannelFactory;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelSink;
+import org.jboss.netty.logging.InternalLogger;
+import org.jboss.netty.logging.InternalLoggerFactory;
+
+/**
+ * An epoll-based {@link org.jboss.netty.channel.socket.ServerSocketChannel}.
+ * When the channel is bound, one listening socket is created per boss
+ * thread, and the kernel distributes the incoming connections among them
+ * with {@code SO_REUSEPORT}.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+class EpollServerSocketChannel extends AbstractServerChannel
+                               implements org.jboss.netty.channel.socket.ServerSocketChannel {
+
+    private static final InternalLogger logger =
+        InternalLoggerFactory.getInstance(EpollServerSocketChannel.class);
+
+    /**
+     * The first listening socket, whose options are exposed by
+     * {@link #getConfig()}.
+     */
+    final int fd;
+    private final EpollServerSocketChannelConfig config;
+
+    /**
+     * Guards the transition from the unbound state to the bound state.
+     */
+    final Object stateLock = new Object();
+
+    // Guarded by stateLock
+    boolean fdClosed;
+    volatile EpollServerSocketPipelineSink.Boss[] bosses;
+    private volatile InetSocketAddress localAddress;
+
+    EpollServerSocketChannel(
+            ChannelFactory factory,
+            ChannelPipeline pipeline,
+            ChannelSink sink) {
+
+        super(factory, pipeline, sink);
+
+        try {
+            fd = Native.socketStream();
+        } catch (IOException e) {
+            throw new ChannelException(
+                    "Failed to open a server socket.", e);
+        }
+
+        try {
+            // Same with the default of java.nio.channels.ServerSocketChannel.
+            Native.setReuseAddress(fd, true);
+        } catch (IOException e) {
+            try {
+                Native.close(fd);
+            } catch (IOException e2) {
+                logger.warn(
+                        "Failed to close a partially initialized socket.", e2);
+            }
+
+            throw new ChannelException("Failed to configure a server socket.", e);
+        }
+
+        config = new DefaultEpollServerSocketChannelConfig(fd);
+
+        fireChannelOpen(this);
+    }
+
+    public EpollServerSocketChannelConfig getConfig() {
+        return config;
+    }
+
+    public InetSocketAddress getLocalAddress() {
+        return localAddress;
+    }
+
+    public InetSocketAddress getRemoteAddress() {
+        return null;
+    }
+
+    public boolean isBound() {
+        return isOpen() && localAddress != null;
+    }
+
+    void setBound(InetSocketAddress localAddress) {
+        this.localAddress = localAddress;
+    }
+
+    @Override
+    protected boolean setClosed() {
+        return super.setClosed();
+    }
+}
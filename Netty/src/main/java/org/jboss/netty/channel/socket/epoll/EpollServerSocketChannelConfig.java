@@ -0,0 +1,59 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.epoll;
+
+import org.jboss.netty.channel.ChannelConfig;
+import org.jboss.netty.channel.socket.ServerSocketChannel;
+import org.jboss.netty.channel.socket.ServerSocketChannelConfig;
+
+/**
+ * A {@link ServerSocketChannelConfig} for an epoll TCP/IP
+ * {@link ServerSocketChannel}.
+ *
+ * <h3>Available options</h3>
+ *
+ * In addition to the options provided by {@link ChannelConfig} and
+ * {@link ServerSocketChannelConfig}, {@link EpollServerSocketChannelConfig}
+ * allows the following options in the option map:
+ *
+ * <table border="1" cellspacing="0" cellpadding="6">
+ * <tr>
+ * <th>Name</th><th>Associated setter method</th>
+ * </tr><tr>
+ * <td>{@code "reusePort"}</td><td>{@link #setReusePort(boolean)}</td>
+ * </tr>
+ * </table>
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public interface EpollServerSocketChannelConfig extends ServerSocketChannelConfig {
+
+    /**
+     * Gets the {@code SO_REUSEPORT} option.
+     */
+    boolean isReusePort();
+
+    /**
+     * Sets the {@code SO_REUSEPORT} option, which allows more than one
+     * listening socket to be bound to the same address so that the kernel
+     * distributes incoming connections among them.  Requires Linux 3.9 or
+     * later.  The option is always turned on when the channel has more than
+     * one boss thread.
+     */
+    void setReusePort(boolean reusePort);
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.epoll;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelSink;
+import org.jboss.netty.channel.group.ChannelGroup;
+import org.jboss.netty.channel.socket.ServerSocketChannel;
+import org.jboss.netty.channel.socket.ServerSocketChannelFactory;
+import org.jboss.netty.util.internal.ExecutorUtil;
+
+/**
+ * A {@link ServerSocketChannelFactory} which creates a server-side
+ * {@link ServerSocketChannel} on top of the Linux edge-triggered
+ * {@code epoll(7)} API.  It is a drop-in replacement of
+ * {@link org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory};
+ * the same {@link org.jboss.netty.channel.ChannelPipelineFactory} can be used
+ * with both.  The native library must be available - see {@link Epoll}.
+ *
+ * <h3>How threads work</h3>
+ * <p>
+ * There are two types of threads in a {@link EpollServerSocketChannelFactory};
+ * one is boss thread and the other is worker thread.
+ *
+ * <h4>Boss threads</h4>
+ * <p>
+ * Each bound {@link ServerSocketChannel} has {@code bossCount} boss threads.
+ * Each boss thread owns a listening socket bound to the same address with
+ * {@code SO_REUSEPORT}, and the kernel distributes the incoming connections
+ * among them, so that a high connection rate does not make a single boss
+ * thread a bottleneck.  A boss thread accepts incoming connections until the
+ * port is unbound.  Once a connection is accepted successfully, the boss
+ * thread passes the accepted {@link Channel} to one of the worker threads
+ * that the {@link EpollServerSocketChannelFactory} manages.
+ *
+ * <h4>Worker threads</h4>
+ * <p>
+ * One {@link EpollServerSocketChannelFactory} can have one or more worker
+ * threads.  A worker thread performs non-blocking read and write for one or
+ * more {@link Channel}s in a non-blocking mode.  Outbound messages are
+ * gathered into a single {@code writev()} call.
+ *
+ * <h3>Life cycle of threads and graceful shutdown</h3>
+ * <p>
+ * All threads are acquired from the {@link Executor}s which were specified
+ * when a {@link EpollServerSocketChannelFactory} was created.  Boss threads
+ * are acquired from the {@code bossExecutor}, and worker threads are acquired
+ * from the {@code workerExecutor}.  Therefore, you should make sure the
+ * specified {@link Executor}s are able to lend the sufficient number of
+ * threads.  It is the best bet to specify
+ * {@linkplain Executors#newCachedThreadPool() a cached thread pool}.
+ * <p>
+ * Both boss and worker threads are acquired lazily, and then released when
+ * there's nothing left to process.  All the related resources such as
+ * epoll instances are also released when the boss and worker threads are
+ * released.  Therefore, to shut down a service gracefully, you should do the
+ * following:
+ *
+ * <ol>
+ * <li>unbind all channels created by the factory,
+ * <li>close all child channels accepted by the unbound channels, and
+ *     (these two steps so far is usually done using {@link ChannelGroup#close()})</li>
+ * <li>call {@link #releaseExternalResources()}.</li>
+ * </ol>
+ *
+ * Please make sure not to shut down the executor until all channels are
+ * closed.  Otherwise, you will end up with a {@link RejectedExecutionException}
+ * and the related resources might not be released properly.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ *
+ * @apiviz.landmark
+ */
+public class EpollServerSocketChannelFactory implements ServerSocketChannelFactory {
+
+    static final int DEFAULT_IO_THREADS =
+        Runtime.getRuntime().availableProcessors() * 2;
+
+    final Executor bossExecutor;
+    final int bossCount;
+    private final Executor workerExecutor;
+    private final ChannelSink sink;
+
+    /**
+     * Creates a new instance.  Calling this constructor is same with calling
+     * {@link #EpollServerSocketChannelFactory(Executor, Executor, int)} with
+     * 2 * the number of available processors in the machine.  The number of
+     * available processors is obtained by {@link Runtime#availableProcessors()}.
+     *
+     * @param bossExecutor
+     *        the {@link Executor} which will execute the boss threads
+     * @param workerExecutor
+     *        the {@link Executor} which will execute the I/O worker threads
+     */
+    public EpollServerSocketChannelFactory(
+            Executor bossExecutor, Executor workerExecutor) {
+        this(bossExecutor, workerExecutor, DEFAULT_IO_THREADS);
+    }
+
+    /**
+     * Creates a new instance with one boss thread per bound channel.
+     *
+     * @param bossExecutor
+     *        the {@link Executor} which will execute the boss threads
+     * @param workerExecutor
+     *        the {@link Executor} which will execute the I/O worker threads
+     * @param workerCount
+     *        the maximum number of I/O worker threads
+     */
+    public EpollServerSocketChannelFactory(
+            Executor bossExecutor, Executor workerExecutor,
+            int workerCount) {
+        this(bossExecutor, workerExecutor, workerCount, 1);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param bossExecutor
+     *        the {@link Executor} which will execute the boss threads
+     * @param workerExecutor
+     *        the {@link Executor} which will execute the I/O worker threads
+     * @param workerCount
+     *        the maximum number of I/O worker threads
+     * @param bossCount
+     *        the number of boss threads (and listening sockets) per bound
+     *        channel.  {@code SO_REUSEPORT} is turned on if greater than 1.
+     *
+     * @throws org.jboss.netty.channel.ChannelException
+     *         if the native library is not available
+     */
+    public EpollServerSocketChannelFactory(
+            Executor bossExecutor, Executor workerExecutor,
+            int workerCount, int bossCount) {
+
+        if (bossExecutor == null) {
+            throw new NullPointerException("bossExecutor");
+        }
+        if (workerExecutor == null) {
+            throw new NullPointerException("workerExecutor");
+        }
+        if (workerCount <= 0) {
+            throw new IllegalArgumentException(
+                    "workerCount (" + workerCount + ") " +
+                    "must be a positive integer.");
+        }
+        if (bossCount <= 0) {
+            throw new IllegalArgumentException(
+                    "bossCount (" + bossCount + ") " +
+                    "must be a positive integer.");
+        }
+        Epoll.ensureAvailability();
+
+        this.bossExecutor = bossExecutor;
+        this.bossCount = bossCount;
+        this.workerExecutor = workerExecutor;
+        sink = new EpollServerSocketPipelineSink(workerExecutor, workerCount);
+    }
+
+    public ServerSocketChannel newChannel(ChannelPipeline pipeline) {
+        return new EpollServerSocketChannel(this, pipeline, sink);
+    }
+
+    public void releaseExternalResources() {
+        ExecutorUtil.terminate(bossExecutor, workerExecutor);
+    }
+}
@@ -0,0 +1,446 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.epoll;
+
+import static org.jboss.netty.channel.Channels.*;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.netty.channel.AbstractChannelSink;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelState;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.logging.InternalLogger;
+import org.jboss.netty.logging.InternalLoggerFactory;
+import org.jboss.netty.util.ThreadRenamingRunnable;
+import org.jboss.netty.util.internal.IoWorkerRunnable;
+
+/**
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+class EpollServerSocketPipelineSink extends AbstractChannelSink {
+
+    static final InternalLogger logger =
+        InternalLoggerFactory.getInstance(EpollServerSocketPipelineSink.class);
+    private static final AtomicInteger nextId = new AtomicInteger();
+
+    private static final int DEFAULT_BACKLOG = 128;
+
+    private final int id = nextId.incrementAndGet();
+    private final EpollWorker[] workers;
+    private final AtomicInteger workerIndex = new AtomicInteger();
+
+    EpollServerSocketPipelineSink(Executor workerExecutor, int workerCount) {
+        workers = new EpollWorker[workerCount];
+        for (int i = 0; i < workers.length; i ++) {
+            workers[i] = new EpollWorker(id, i + 1, workerExecutor, true);
+        }
+    }
+
+    public void eventSunk(
+            ChannelPipeline pipeline, ChannelEvent e) throws Exception {
+        Channel channel = e.getChannel();
+        if (channel instanceof EpollServerSocketChannel) {
+            handleServerSocket(e);
+        } else if (channel instanceof EpollSocketChannel) {
+            handleAcceptedSocket(e);
+        }
+    }
+
+    private void handleServerSocket(ChannelEvent e) {
+        if (!(e instanceof ChannelStateEvent)) {
+            return;
+        }
+
+        ChannelStateEvent event = (ChannelStateEvent) e;
+        EpollServerSocketChannel channel =
+            (EpollServerSocketChannel) event.getChannel();
+        ChannelFuture future = event.getFuture();
+        ChannelState state = event.getState();
+        Object value = event.getValue();
+
+        switch (state) {
+        case OPEN:
+            if (Boolean.FALSE.equals(value)) {
+                close(channel, future);
+            }
+            break;
+        case BOUND:
+            if (value != null) {
+                bind(channel, future, (SocketAddress) value);
+            } else {
+                close(channel, future);
+            }
+            break;
+        }
+    }
+
+    private void handleAcceptedSocket(ChannelEvent e) {
+        if (e instanceof ChannelStateEvent) {
+            ChannelStateEvent event = (ChannelStateEvent) e;
+            EpollSocketChannel channel = (EpollSocketChannel) event.getChannel();
+            ChannelFuture future = event.getFuture();
+            ChannelState state = event.getState();
+            Object value = event.getValue();
+
+            switch (state) {
+            case OPEN:
+                if (Boolean.FALSE.equals(value)) {
+                    channel.worker.close(channel, future);
+                }
+                break;
+            case BOUND:
+            case CONNECTED:
+                if (value == null) {
+                    channel.worker.close(channel, future);
+                }
+                break;
+            case INTEREST_OPS:
+                channel.worker.setInterestOps(channel, future, ((Integer) value).intValue());
+                break;
+            }
+        } else if (e instanceof MessageEvent) {
+            MessageEvent event = (MessageEvent) e;
+            EpollSocketChannel channel = (EpollSocketChannel) event.getChannel();
+            boolean offered = channel.writeBuffer.offer(event);
+            assert offered;
+            channel.worker.writeFromUserCode(channel);
+        }
+    }
+
+    private void bind(
+            EpollServerSocketChannel channel, ChannelFuture future,
+            SocketAddress localAddress) {
+
+        EpollServerSocketChannelFactory factory =
+            (EpollServerSocketChannelFactory) channel.getFactory();
+        int bossCount = factory.bossCount;
+
+        int[] fds = new int[bossCount];
+        Arrays.fill(fds, -1);
+        Boss[] bosses = new Boss[bossCount];
+        int bossesStarted = 0;
+        boolean bound = false;
+        try {
+            synchronized (channel.stateLock) {
+                if (channel.fdClosed || channel.bosses != null) {
+                    throw new IllegalStateException(
+                            "closed or bound already: " + channel);
+                }
+
+                fds[0] = channel.fd;
+                try {
+                    EpollServerSocketChannelConfig config = channel.getConfig();
+                    if (bossCount > 1) {
+                        config.setReusePort(true);
+                        boolean reuseAddress = config.isReuseAddress();
+                        int receiveBufferSize = config.getReceiveBufferSize();
+                        for (int i = 1; i < bossCount; i ++) {
+                            fds[i] = Native.socketStream();
+                            Native.setReuseAddress(fds[i], reuseAddress);
+                            Native.setReusePort(fds[i], true);
+                            Native.setReceiveBufferSize(fds[i], receiveBufferSize);
+                        }
+                    }
+
+                    int backlog = config.getBacklog();
+                    if (backlog < 1) {
+                        backlog = DEFAULT_BACKLOG;
+                    }
+
+                    Native.bind(fds[0], (InetSocketAddress) localAddress);
+                    InetSocketAddress boundAddress = Native.getLocalAddress(fds[0]);
+                    for (int i = 1; i < bossCount; i ++) {
+                        // Bind to the actual port in case of an ephemeral port.
+                        Native.bind(fds[i], boundAddress);
+                    }
+                    for (int fd: fds) {
+                        Native.listen(fd, backlog);
+                    }
+
+                    for (int i = 0; i < bossCount; i ++) {
+                        bosses[i] = new Boss(channel, fds[i]);
+                    }
+
+                    channel.setBound(boundAddress);
+                    channel.bosses = bosses;
+                    bound = true;
+                } finally {
+                    if (!bound) {
+                        // The first socket is kept open - it belongs to the
+                        // channel which has not been bound.
+                        for (int i = 1; i < bossCount; i ++) {
+                            closeQuietly(fds[i]);
+                        }
+                        for (Boss boss: bosses) {
+                            if (boss != null) {
+                                boss.closeEpoll();
+                            }
+                        }
+                    }
+                }
+            }
+
+            future.setSuccess();
+            fireChannelBound(channel, channel.getLocalAddress());
+
+            Executor bossExecutor = factory.bossExecutor;
+            for (int i = 0; i < bossCount; i ++) {
+                bossExecutor.execute(
+                        new IoWorkerRunnable(
+                                new ThreadRenamingRunnable(
+                                        bosses[i],
+                                        "Epoll server boss #" + id + '-' + (i + 1) +
+                                        " (channelId: " + channel.getId() +
+                                        ", " + channel.getLocalAddress() + ')')));
+                bossesStarted ++;
+            }
+        } catch (Throwable t) {
+            future.setFailure(t);
+            fireExceptionCaught(channel, t);
+        } finally {
+            if (bound && bossesStarted < bossCount) {
+                for (int i = bossesStarted; i < bossCount; i ++) {
+                    bosses[i].close();
+                }
+                close(channel, future);
+            }
+        }
+    }
+
+    private void close(EpollServerSocketChannel channel, ChannelFuture future) {
+        boolean bound = channel.isBound();
+        try {
+            Boss[] bosses;
+            synchronized (channel.stateLock) {
+                bosses = channel.bosses;
+                if (bosses == null && !channel.fdClosed) {
+                    // Not bound - no boss owns the socket.
+                    channel.fdClosed = true;
+                    Native.close(channel.fd);
+                }
+            }
+
+            if (bosses != null) {
+                boolean inBossThread = false;
+                for (Boss boss: bosses) {
+                    boss.shutdown();
+                    if (boss.thread == Thread.currentThread()) {
+                        inBossThread = true;
+                    }
+                }
+
+                // Make sure the boss threads are not running so that that the
+                // future is notified after a new connection cannot be accepted
+                // anymore.  See NETTY-256 for more information.
+                if (!inBossThread) {
+                    for (Boss boss: bosses) {
+                        boss.awaitTermination();
+                    }
+                }
+            }
+
+            if (channel.setClosed()) {
+                future.setSuccess();
+                if (bound) {
+                    fireChannelUnbound(channel);
+                }
+                fireChannelClosed(channel);
+            } else {
+                future.setSuccess();
+            }
+        } catch (Throwable t) {
+            future.setFailure(t);
+            fireExceptionCaught(channel, t);
+        }
+    }
+
+    EpollWorker nextWorker() {
+        return workers[Math.abs(
+                workerIndex.getAndIncrement() % workers.length)];
+    }
+
+    static void closeQuietly(int fd) {
+        if (fd < 0) {
+            return;
+        }
+        try {
+            Native.close(fd);
+        } catch (IOException e) {
+            logger.warn("Failed to close a file descriptor.", e);
+        }
+    }
+
+    /**
+     * Accepts the incoming connections of one listening socket in
+     * edge-triggered mode.
+     */
+    final class Boss implements Runnable {
+        private final EpollServerSocketChannel channel;
+        private final int listenFd;
+        private final int epollFd;
+        private final int eventFd;
+        private final long[] events = new long[2];
+        private final CountDownLatch terminated = new CountDownLatch(1);
+        volatile Thread thread;
+
+        // Guarded by this
+        private boolean closed;
+
+        Boss(EpollServerSocketChannel channel, int listenFd) throws IOException {
+            this.channel = channel;
+            this.listenFd = listenFd;
+
+            int epollFd = -1;
+            int eventFd = -1;
+            boolean success = false;
+            try {
+                epollFd = Native.epollCreate();
+                eventFd = Native.eventFd();
+                Native.epollCtlAdd(epollFd, eventFd, Native.EPOLLIN);
+                Native.epollCtlAdd(epollFd, listenFd, Native.EPOLLIN | Native.EPOLLET);
+                success = true;
+            } finally {
+                if (!success) {
+                    closeQuietly(eventFd);
+                    closeQuietly(epollFd);
+                }
+            }
+
+            this.epollFd = epollFd;
+            this.eventFd = eventFd;
+        }
+
+        public void run() {
+            thread = Thread.currentThread();
+
+            // There might be pending connections before the registration.
+            int timeout = 0;
+            for (;;) {
+                try {
+                    int ready = Native.epollWait(epollFd, events, timeout);
+                    timeout = -1;
+
+                    boolean shutdown = false;
+                    for (int i = 0; i < ready; i ++) {
+                        if ((int) (events[i] >>> 32) == eventFd) {
+                            shutdown = true;
+                        }
+                    }
+                    if (shutdown) {
+                        break;
+                    }
+
+                    for (;;) {
+                        int acceptedFd = Native.accept(listenFd);
+                        if (acceptedFd < 0) {
+                            break;
+                        }
+                        registerAcceptedChannel(acceptedFd);
+                    }
+                } catch (IOException e) {
+                    logger.warn(
+                            "Failed to accept a connection.", e);
+                    try {
+                        Thread.sleep(1000);
+                    } catch (InterruptedException e1) {
+                        // Ignore
+                    }
+
+                    // No more edge might be triggered for the connections
+                    // which are still in the backlog.
+                    timeout = 0;
+                }
+            }
+
+            close();
+        }
+
+        private void registerAcceptedChannel(int acceptedFd) {
+            try {
+                ChannelPipeline pipeline =
+                    channel.getConfig().getPipelineFactory().getPipeline();
+                EpollWorker worker = nextWorker();
+                worker.register(new EpollAcceptedSocketChannel(
+                        channel.getFactory(), pipeline, channel,
+                        EpollServerSocketPipelineSink.this, acceptedFd, worker));
+            } catch (Exception e) {
+                logger.warn(
+                        "Failed to initialize an accepted socket.", e);
+                closeQuietly(acceptedFd);
+            }
+        }
+
+        /**
+         * Requests the boss thread to stop accepting connections.
+         */
+        synchronized void shutdown() {
+            if (closed) {
+                return;
+            }
+            try {
+                Native.eventFdWrite(eventFd, 1L);
+            } catch (IOException e) {
+                logger.warn("Failed to wake up a boss thread.", e);
+            }
+        }
+
+        void awaitTermination() {
+            boolean interrupted = false;
+            for (;;) {
+                try {
+                    terminated.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Closes the listening socket and releases the resources of this boss.
+         */
+        synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            closeQuietly(listenFd);
+            closeEpoll();
+            terminated.countDown();
+        }
+
+        void closeEpoll() {
+            closeQuietly(eventFd);
+            closeQuietly(epollFd);
+        }
+    }
+}
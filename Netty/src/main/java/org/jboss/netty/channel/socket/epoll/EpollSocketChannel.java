@@ -0,0 +1,292 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.epoll;
+
+import static org.jboss.netty.channel.Channels.*;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.AbstractChannel;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFactory;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelSink;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.util.internal.LinkedTransferQueue;
+import org.jboss.netty.util.internal.ThreadLocalBoolean;
+
+/**
+ * The base class of the epoll-based {@link org.jboss.netty.channel.socket.SocketChannel}s.
+ * The file descriptor is registered to and closed by its {@link EpollWorker}
+ * only, so that the worker never sees a file descriptor which was closed and
+ * reused by another connection.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+class EpollSocketChannel extends AbstractChannel
+                         implements org.jboss.netty.channel.socket.SocketChannel {
+
+    /**
+     * The maximum number of messages which are polled from the write buffer
+     * and gathered into a single {@code writev()} call.
+     */
+    static final int MAX_GATHERED_MESSAGES = 64;
+
+    private static final int ST_OPEN = 0;
+    private static final int ST_BOUND = 1;
+    private static final int ST_CONNECTED = 2;
+    private static final int ST_CLOSED = -1;
+    private volatile int state = ST_OPEN;
+
+    final int fd;
+    final EpollWorker worker;
+    private final EpollSocketChannelConfig config;
+    private volatile InetSocketAddress localAddress;
+    private volatile InetSocketAddress remoteAddress;
+
+    final Object writeLock = new Object();
+
+    final Runnable writeTask = new WriteTask();
+    final AtomicBoolean writeTaskInTaskQueue = new AtomicBoolean();
+
+    final Queue<MessageEvent> writeBuffer = new WriteRequestQueue();
+    final AtomicInteger writeBufferSize = new AtomicInteger();
+    final AtomicInteger highWaterMarkCounter = new AtomicInteger();
+    boolean inWriteNowLoop;
+    boolean writeSuspended;
+
+    /**
+     * The messages which were polled from {@link #writeBuffer} but have not
+     * been written out completely yet, in a circular array.  The first message
+     * may have been written partially; see {@link #headWrittenBytes}.
+     * Guarded by {@link #writeLock}.
+     */
+    final MessageEvent[] gatheredWrites = new MessageEvent[MAX_GATHERED_MESSAGES];
+    int gatheredWritesHead;
+    int gatheredWritesCount;
+    long headWrittenBytes;
+
+    // The following fields are accessed by the worker thread only.
+    boolean registered;
+    boolean readPending;
+
+    EpollSocketChannel(
+            Channel parent, ChannelFactory factory,
+            ChannelPipeline pipeline, ChannelSink sink,
+            int fd, EpollWorker worker) {
+        super(parent, factory, pipeline, sink);
+
+        this.fd = fd;
+        this.worker = worker;
+        config = new DefaultEpollSocketChannelConfig(fd);
+    }
+
+    public EpollSocketChannelConfig getConfig() {
+        return config;
+    }
+
+    public InetSocketAddress getLocalAddress() {
+        InetSocketAddress localAddress = this.localAddress;
+        if (localAddress == null && isOpen()) {
+            this.localAddress = localAddress = Native.getLocalAddress(fd);
+        }
+        return localAddress;
+    }
+
+    public InetSocketAddress getRemoteAddress() {
+        InetSocketAddress remoteAddress = this.remoteAddress;
+        if (remoteAddress == null && isOpen()) {
+            this.remoteAddress = remoteAddress = Native.getRemoteAddress(fd);
+        }
+        return remoteAddress;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return state >= ST_OPEN;
+    }
+
+    public boolean isBound() {
+        return state >= ST_BOUND;
+    }
+
+    public boolean isConnected() {
+        return state == ST_CONNECTED;
+    }
+
+    final void setBound() {
+        assert state == ST_OPEN : "Invalid state: " + state;
+        state = ST_BOUND;
+    }
+
+    final void setConnected() {
+        if (state != ST_CLOSED) {
+            state = ST_CONNECTED;
+        }
+    }
+
+    @Override
+    protected boolean setClosed() {
+        state = ST_CLOSED;
+        return super.setClosed();
+    }
+
+    @Override
+    public int getInterestOps() {
+        if (!isOpen()) {
+            return Channel.OP_WRITE;
+        }
+
+        int interestOps = getRawInterestOps();
+        int writeBufferSize = this.writeBufferSize.get();
+        if (writeBufferSize != 0) {
+            if (highWaterMarkCounter.get() > 0) {
+                int lowWaterMark = getConfig().getWriteBufferLowWaterMark();
+                if (writeBufferSize >= lowWaterMark) {
+                    interestOps |= Channel.OP_WRITE;
+                } else {
+                    interestOps &= ~Channel.OP_WRITE;
+                }
+            } else {
+                int highWaterMark = getConfig().getWriteBufferHighWaterMark();
+                if (writeBufferSize >= highWaterMark) {
+                    interestOps |= Channel.OP_WRITE;
+                } else {
+                    interestOps &= ~Channel.OP_WRITE;
+                }
+            }
+        } else {
+            interestOps &= ~Channel.OP_WRITE;
+        }
+
+        return interestOps;
+    }
+
+    int getRawInterestOps() {
+        return super.getInterestOps();
+    }
+
+    void setRawInterestOpsNow(int interestOps) {
+        super.setInterestOpsNow(interestOps);
+    }
+
+    /**
+     * Returns the epoll event flags which correspond to the specified
+     * interestOps.
+     */
+    static int epollFlags(int interestOps) {
+        int flags = Native.EPOLLET;
+        if ((interestOps & Channel.OP_READ) != 0) {
+            flags |= Native.EPOLLIN;
+        }
+        if ((interestOps & Channel.OP_WRITE) != 0) {
+            flags |= Native.EPOLLOUT;
+        }
+        return flags;
+    }
+
+    @Override
+    public ChannelFuture write(Object message, SocketAddress remoteAddress) {
+        if (remoteAddress == null || remoteAddress.equals(getRemoteAddress())) {
+            return super.write(message, null);
+        } else {
+            return getUnsupportedOperationFuture();
+        }
+    }
+
+    private final class WriteRequestQueue extends LinkedTransferQueue<MessageEvent> {
+
+        private static final long serialVersionUID = 4615318489484524522L;
+
+        private final ThreadLocalBoolean notifying = new ThreadLocalBoolean();
+
+        WriteRequestQueue() {
+            super();
+        }
+
+        @Override
+        public boolean offer(MessageEvent e) {
+            boolean success = super.offer(e);
+            assert success;
+
+            int messageSize = getMessageSize(e);
+            int newWriteBufferSize = writeBufferSize.addAndGet(messageSize);
+            int highWaterMark = getConfig().getWriteBufferHighWaterMark();
+
+            if (newWriteBufferSize >= highWaterMark) {
+                if (newWriteBufferSize - messageSize < highWaterMark) {
+                    highWaterMarkCounter.incrementAndGet();
+                    if (!notifying.get()) {
+                        notifying.set(Boolean.TRUE);
+                        fireChannelInterestChanged(EpollSocketChannel.this);
+                        notifying.set(Boolean.FALSE);
+                    }
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public MessageEvent poll() {
+            MessageEvent e = super.poll();
+            if (e != null) {
+                int messageSize = getMessageSize(e);
+                int newWriteBufferSize = writeBufferSize.addAndGet(-messageSize);
+                int lowWaterMark = getConfig().getWriteBufferLowWaterMark();
+
+                if (newWriteBufferSize == 0 || newWriteBufferSize < lowWaterMark) {
+                    if (newWriteBufferSize + messageSize >= lowWaterMark) {
+                        highWaterMarkCounter.decrementAndGet();
+                        if (!notifying.get()) {
+                            notifying.set(Boolean.TRUE);
+                            fireChannelInterestChanged(EpollSocketChannel.this);
+                            notifying.set(Boolean.FALSE);
+                        }
+                    }
+                }
+            }
+            return e;
+        }
+
+        private int getMessageSize(MessageEvent e) {
+            Object m = e.getMessage();
+            if (m instanceof ChannelBuffer) {
+                return ((ChannelBuffer) m).readableBytes();
+            }
+            return 0;
+        }
+    }
+
+    private final class WriteTask implements Runnable {
+
+        WriteTask() {
+            super();
+        }
+
+        public void run() {
+            writeTaskInTaskQueue.set(false);
+            worker.writeFromTaskLoop(EpollSocketChannel.this);
+        }
+    }
+}
@@ -0,0 +1,1158 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.epoll;
+
+import static org.jboss.netty.channel.Channels.*;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NotYetConnectedException;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelException;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.FileRegion;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.ReceiveBufferSizePredictor;
+import org.jboss.netty.logging.InternalLogger;
+import org.jboss.netty.logging.InternalLoggerFactory;
+import org.jboss.netty.util.ThreadRenamingRunnable;
+import org.jboss.netty.util.internal.IoWorkerRunnable;
+import org.jboss.netty.util.internal.LinkedTransferQueue;
+
+/**
+ * An I/O thread which performs edge-triggered, non-blocking read and write
+ * for one or more {@link EpollSocketChannel}s.
+ * <p>
+ * Unlike {@code NioWorker}, all operations which change the state of a file
+ * descriptor (registration, connection, interestOps update and close) are
+ * executed in the worker thread itself, so that no lock is needed to guard
+ * the epoll instance.  A request from other threads is queued as a task and
+ * the worker is woken up by an {@code eventfd}, which stays readable until
+ * the worker consumes it and therefore never loses a wake-up.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+class EpollWorker implements Runnable {
+
+    private static final InternalLogger logger =
+        InternalLoggerFactory.getInstance(EpollWorker.class);
+
+    private static final int WAIT_TIMEOUT_MILLIS = 500;
+    private static final int MAX_EVENTS = 1024;
+
+    /**
+     * The maximum number of buffers passed to a single {@code writev()} call,
+     * which must not exceed {@code IOV_MAX} (1024 on Linux).
+     */
+    private static final int MAX_IOV = 256;
+
+    /**
+     * The size of the direct buffer which heap buffers are copied into
+     * before they are written.
+     */
+    private static final int SCRATCH_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The maximum number of bytes which are gathered from the write buffer
+     * of a channel before a {@code writev()} call.
+     */
+    private static final int MAX_GATHERED_BYTES = 256 * 1024;
+
+    /**
+     * The maximum number of {@code read()} calls per readiness notification.
+     * When exceeded, the channel is read again in the next loop so that a busy
+     * connection does not starve the others.
+     */
+    private static final int MAX_READS_PER_EVENT = 16;
+
+    private static final int GATHERED_WRITES_MASK = EpollSocketChannel.MAX_GATHERED_MESSAGES - 1;
+
+    private final int bossId;
+    private final int id;
+    private final boolean server;
+    private final Executor executor;
+    private volatile Thread thread;
+    private final AtomicBoolean wakenUp = new AtomicBoolean();
+    private final Object startStopLock = new Object();
+    private final Queue<Runnable> taskQueue = new LinkedTransferQueue<Runnable>();
+
+    // Guarded by startStopLock
+    private boolean started;
+    private int epollFd = -1;
+    private int eventFd = -1;
+
+    // The following fields are accessed by the worker thread only.
+    private final long[] events = new long[MAX_EVENTS];
+    private final ByteBuffer[] iov = new ByteBuffer[MAX_IOV];
+    private final FileRegionTarget fileRegionTarget = new FileRegionTarget();
+    private final List<EpollClientSocketChannel> pendingConnects =
+        new ArrayList<EpollClientSocketChannel>();
+    private List<EpollSocketChannel> pendingReads = new ArrayList<EpollSocketChannel>();
+    private List<EpollSocketChannel> pendingReadsSwap = new ArrayList<EpollSocketChannel>();
+    private EpollSocketChannel[] channels = new EpollSocketChannel[64];
+    private int channelCount;
+    private ByteBuffer receiveBuffer;
+    private ByteBuffer scratchBuffer;
+
+    EpollWorker(int bossId, int id, Executor executor, boolean server) {
+        this.bossId = bossId;
+        this.id = id;
+        this.executor = executor;
+        this.server = server;
+    }
+
+    void register(EpollSocketChannel channel) {
+        executeInIoThread(new RegisterTask(channel));
+    }
+
+    void connect(EpollClientSocketChannel channel, ChannelFuture future,
+                 SocketAddress remoteAddress) {
+        executeInIoThread(new ConnectTask(channel, future, remoteAddress));
+    }
+
+    /**
+     * Queues the specified task, starting the worker thread if necessary.
+     */
+    private void executeInIoThread(Runnable task) {
+        synchronized (startStopLock) {
+            if (!started) {
+                start();
+            }
+
+            boolean offered = taskQueue.offer(task);
+            assert offered;
+
+            // The wake-up is issued while holding the lock, so that the eventfd
+            // is never written after the worker closed it.
+            if (wakenUp.compareAndSet(false, true)) {
+                try {
+                    Native.eventFdWrite(eventFd, 1L);
+                } catch (IOException e) {
+                    logger.warn("Failed to wake up an epoll worker.", e);
+                }
+            }
+        }
+    }
+
+    private void start() {
+        int epollFd = -1;
+        int eventFd = -1;
+        boolean success = false;
+        try {
+            epollFd = Native.epollCreate();
+            eventFd = Native.eventFd();
+            // Level-triggered, so that a wake-up is never lost.
+            Native.epollCtlAdd(epollFd, eventFd, Native.EPOLLIN);
+
+            this.epollFd = epollFd;
+            this.eventFd = eventFd;
+
+            String threadName =
+                (server ? "Epoll server worker #"
+                        : "Epoll client worker #") + bossId + '-' + id;
+            executor.execute(
+                    new IoWorkerRunnable(
+                            new ThreadRenamingRunnable(this, threadName)));
+            started = true;
+            success = true;
+        } catch (IOException e) {
+            throw new ChannelException("Failed to create an epoll instance.", e);
+        } finally {
+            if (!success) {
+                closeQuietly(eventFd);
+                closeQuietly(epollFd);
+                this.epollFd = this.eventFd = -1;
+            }
+        }
+    }
+
+    public void run() {
+        thread = Thread.currentThread();
+
+        final long[] events = this.events;
+        final int epollFd = this.epollFd;
+        final int eventFd = this.eventFd;
+        receiveBuffer = ByteBuffer.allocateDirect(65536);
+        scratchBuffer = ByteBuffer.allocateDirect(SCRATCH_BUFFER_SIZE);
+
+        boolean shutdown = false;
+        for (;;) {
+            wakenUp.set(false);
+
+            try {
+                int timeout;
+                if (taskQueue.isEmpty() && pendingReads.isEmpty()) {
+                    timeout = WAIT_TIMEOUT_MILLIS;
+                } else {
+                    timeout = 0;
+                }
+
+                int ready = Native.epollWait(epollFd, events, timeout);
+                for (int i = 0; i < ready; i ++) {
+                    long e = events[i];
+                    int fd = (int) (e >>> 32);
+                    if (fd == eventFd) {
+                        Native.eventFdRead(eventFd);
+                    } else {
+                        processEvent(fd, (int) e);
+                    }
+                }
+
+                processTaskQueue();
+                processPendingReads();
+                if (!pendingConnects.isEmpty()) {
+                    processConnectTimeout(System.nanoTime());
+                }
+
+                // Exit the loop when there's nothing to handle.
+                // The shutdown flag is used to delay the shutdown of this
+                // loop to avoid excessive epoll instance creation when
+                // connections are registered in a one-by-one manner instead of
+                // concurrent manner.
+                if (channelCount == 0) {
+                    if (shutdown ||
+                        executor instanceof ExecutorService && ((ExecutorService) executor).isShutdown()) {
+
+                        synchronized (startStopLock) {
+                            if (taskQueue.isEmpty() && channelCount == 0) {
+                                started = false;
+                                thread = null;
+                                closeQuietly(eventFd);
+                                closeQuietly(epollFd);
+                                this.epollFd = this.eventFd = -1;
+                                break;
+                            } else {
+                                shutdown = false;
+                            }
+                        }
+                    } else {
+                        // Give one more second.
+                        shutdown = true;
+                    }
+                } else {
+                    shutdown = false;
+                }
+            } catch (Throwable t) {
+                logger.warn(
+                        "Unexpected exception in the epoll loop.", t);
+
+                // Prevent possible consecutive immediate failures that lead to
+                // excessive CPU consumption.
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException e) {
+                    // Ignore.
+                }
+            }
+        }
+    }
+
+    private void processTaskQueue() {
+        for (;;) {
+            final Runnable task = taskQueue.poll();
+            if (task == null) {
+                break;
+            }
+
+            task.run();
+        }
+    }
+
+    private void processEvent(int fd, int flags) {
+        EpollSocketChannel[] channels = this.channels;
+        if (fd >= channels.length) {
+            return;
+        }
+        EpollSocketChannel channel = channels[fd];
+        if (channel == null) {
+            // Closed already while handling the previous events.
+            return;
+        }
+
+        if (channel instanceof EpollClientSocketChannel &&
+            ((EpollClientSocketChannel) channel).connectFuture != null) {
+            finishConnect((EpollClientSocketChannel) channel);
+            return;
+        }
+
+        if ((flags & (Native.EPOLLIN | Native.EPOLLERR | Native.EPOLLHUP)) != 0 &&
+            (channel.getRawInterestOps() & Channel.OP_READ) != 0) {
+            if (!read(channel)) {
+                // Connection already closed - no need to handle write.
+                return;
+            }
+        }
+        if ((flags & Native.EPOLLOUT) != 0) {
+            writeFromEpollLoop(channel);
+        }
+    }
+
+    private boolean read(EpollSocketChannel channel) {
+        final ReceiveBufferSizePredictor predictor =
+            channel.getConfig().getReceiveBufferSizePredictor();
+        final ChannelBufferFactory bufferFactory =
+            channel.getConfig().getBufferFactory();
+
+        for (int i = 0; i < MAX_READS_PER_EVENT; i ++) {
+            final int predictedRecvBufSize = predictor.nextReceiveBufferSize();
+            ByteBuffer bb = receiveBuffer;
+            if (bb.capacity() < predictedRecvBufSize) {
+                receiveBuffer = bb = ByteBuffer.allocateDirect(predictedRecvBufSize);
+            }
+
+            int readBytes;
+            try {
+                readBytes = Native.read(channel.fd, bb, 0, predictedRecvBufSize);
+            } catch (ClosedChannelException e) {
+                // Can happen, and does not need a user attention.
+                readBytes = -1;
+            } catch (Throwable t) {
+                fireExceptionCaught(channel, t);
+                readBytes = -1;
+            }
+
+            if (readBytes > 0) {
+                // Always copy - the receive buffer is reused for the next read.
+                bb.clear().limit(readBytes);
+                ChannelBuffer buffer = bufferFactory.getBuffer(
+                        bufferFactory.getDefaultOrder(), readBytes);
+                buffer.writeBytes(bb);
+
+                // Update the predictor.
+                predictor.previousReceiveBufferSize(readBytes);
+
+                // Fire the event.
+                fireMessageReceived(channel, buffer);
+
+                if (!channel.isOpen()) {
+                    return false;
+                }
+                if (readBytes < predictedRecvBufSize ||
+                    (channel.getRawInterestOps() & Channel.OP_READ) == 0) {
+                    // The socket receive buffer has been drained, or the
+                    // user suspended reading.  In the former case, the next
+                    // incoming packet will trigger a new event.
+                    return true;
+                }
+            } else if (readBytes == 0) {
+                return true;
+            } else {
+                close(channel, succeededFuture(channel));
+                return false;
+            }
+        }
+
+        // There might be more data in the socket receive buffer, but no more
+        // event will be triggered for it.  Read again in the next loop.
+        if (!channel.readPending) {
+            channel.readPending = true;
+            pendingReads.add(channel);
+        }
+        return true;
+    }
+
+    private void processPendingReads() {
+        if (pendingReads.isEmpty()) {
+            return;
+        }
+
+        List<EpollSocketChannel> reads = pendingReads;
+        pendingReads = pendingReadsSwap;
+        pendingReadsSwap = reads;
+        for (int i = 0; i < reads.size(); i ++) {
+            EpollSocketChannel channel = reads.get(i);
+            channel.readPending = false;
+            if (channel.registered &&
+                (channel.getRawInterestOps() & Channel.OP_READ) != 0) {
+                read(channel);
+            }
+        }
+        reads.clear();
+    }
+
+    void writeFromUserCode(final EpollSocketChannel channel) {
+        if (!channel.isConnected()) {
+            cleanUpWriteBuffer(channel);
+            return;
+        }
+
+        if (scheduleWriteIfNecessary(channel)) {
+            return;
+        }
+
+        // From here, we are sure Thread.currentThread() == workerThread.
+
+        if (channel.writeSuspended) {
+            return;
+        }
+
+        if (channel.inWriteNowLoop) {
+            return;
+        }
+
+        write0(channel);
+    }
+
+    void writeFromTaskLoop(final EpollSocketChannel ch) {
+        if (!ch.writeSuspended) {
+            write0(ch);
+        }
+    }
+
+    private void writeFromEpollLoop(final EpollSocketChannel ch) {
+        ch.writeSuspended = false;
+        write0(ch);
+    }
+
+    private boolean scheduleWriteIfNecessary(final EpollSocketChannel channel) {
+        if (Thread.currentThread() != thread) {
+            if (channel.writeTaskInTaskQueue.compareAndSet(false, true)) {
+                executeInIoThread(channel.writeTask);
+            }
+            return true;
+        }
+
+        return false;
+    }
+
+    private void write0(EpollSocketChannel channel) {
+        boolean open = true;
+        boolean addOpWrite = false;
+        boolean removeOpWrite = false;
+
+        long writtenBytes = 0;
+
+        synchronized (channel.writeLock) {
+            channel.inWriteNowLoop = true;
+            for (;;) {
+                gatherWrites(channel);
+                if (channel.gatheredWritesCount == 0) {
+                    removeOpWrite = true;
+                    channel.writeSuspended = false;
+                    break;
+                }
+
+                MessageEvent evt = channel.gatheredWrites[channel.gatheredWritesHead];
+                try {
+                    long localWrittenBytes;
+                    Object m = evt.getMessage();
+                    if (m instanceof ChannelBuffer) {
+                        localWrittenBytes = writeBuffers(channel);
+                    } else if (m instanceof FileRegion) {
+                        localWrittenBytes = writeFileRegion(channel, (FileRegion) m);
+                    } else {
+                        throw new IllegalArgumentException(
+                                "unsupported message type: " + m.getClass().getName());
+                    }
+
+                    if (localWrittenBytes < 0) {
+                        // Not written fully - the kernel buffer is full.
+                        writtenBytes += ~localWrittenBytes;
+                        addOpWrite = true;
+                        channel.writeSuspended = true;
+                        break;
+                    }
+                    writtenBytes += localWrittenBytes;
+                } catch (Throwable t) {
+                    completeHead(channel, t);
+                    fireExceptionCaught(channel, t);
+                    if (t instanceof IOException) {
+                        open = false;
+                        close(channel, succeededFuture(channel));
+                        break;
+                    }
+                }
+            }
+            channel.inWriteNowLoop = false;
+        }
+
+        if (writtenBytes > 0) {
+            fireWriteComplete(channel, writtenBytes);
+        }
+
+        if (open) {
+            if (addOpWrite) {
+                setOpWrite(channel);
+            } else if (removeOpWrite) {
+                clearOpWrite(channel);
+            }
+        }
+    }
+
+    /**
+     * Moves the write requests from the write buffer of the specified channel
+     * to its gathered writes.
+     */
+    private static void gatherWrites(EpollSocketChannel channel) {
+        final MessageEvent[] gatheredWrites = channel.gatheredWrites;
+        final Queue<MessageEvent> writeBuffer = channel.writeBuffer;
+        int count = channel.gatheredWritesCount;
+        if (count == gatheredWrites.length) {
+            return;
+        }
+
+        long gatheredBytes = 0;
+        for (int i = 0; i < count; i ++) {
+            Object m = gatheredWrites[channel.gatheredWritesHead + i & GATHERED_WRITES_MASK].getMessage();
+            if (m instanceof ChannelBuffer) {
+                gatheredBytes += ((ChannelBuffer) m).readableBytes();
+            }
+        }
+        gatheredBytes -= channel.headWrittenBytes;
+
+        while (count < gatheredWrites.length && gatheredBytes < MAX_GATHERED_BYTES) {
+            MessageEvent evt = writeBuffer.poll();
+            if (evt == null) {
+                break;
+            }
+            gatheredWrites[channel.gatheredWritesHead + count & GATHERED_WRITES_MASK] = evt;
+            count ++;
+
+            Object m = evt.getMessage();
+            if (m instanceof ChannelBuffer) {
+                gatheredBytes += ((ChannelBuffer) m).readableBytes();
+            }
+        }
+        channel.gatheredWritesCount = count;
+    }
+
+    /**
+     * Writes the leading {@link ChannelBuffer}s of the gathered writes with a
+     * single {@code writev()} call.  Direct buffers are passed to the kernel
+     * as they are, and heap buffers are copied into the scratch buffer.
+     *
+     * @return the number of written bytes, or its one's complement if the
+     *         kernel did not accept all the bytes
+     */
+    private long writeBuffers(EpollSocketChannel channel) throws IOException {
+        final ByteBuffer[] iov = this.iov;
+        final ByteBuffer scratch = scratchBuffer;
+        final MessageEvent[] gatheredWrites = channel.gatheredWrites;
+        final int head = channel.gatheredWritesHead;
+        final int count = channel.gatheredWritesCount;
+
+        scratch.clear();
+        int iovCount = 0;
+        int copyStart = -1;
+        long attemptedBytes = 0;
+
+    gather:
+        for (int i = 0; i < count; i ++) {
+            Object m = gatheredWrites[head + i & GATHERED_WRITES_MASK].getMessage();
+            if (!(m instanceof ChannelBuffer)) {
+                break;
+            }
+
+            ChannelBuffer buf = (ChannelBuffer) m;
+            int index = buf.readerIndex();
+            int length = buf.readableBytes();
+            if (i == 0) {
+                index += (int) channel.headWrittenBytes;
+                length -= (int) channel.headWrittenBytes;
+            }
+            if (length == 0) {
+                continue;
+            }
+
+            ByteBuffer[] components = buf.toByteBuffers(index, length);
+            for (ByteBuffer c: components) {
+                int remaining = c.remaining();
+                if (remaining == 0) {
+                    continue;
+                }
+
+                // Keep one slot for the pending copied region.
+                if (iovCount >= MAX_IOV - 1) {
+                    break gather;
+                }
+
+                if (c.isDirect()) {
+                    if (copyStart >= 0) {
+                        iov[iovCount ++] = copiedRegion(scratch, copyStart);
+                        copyStart = -1;
+                    }
+                    iov[iovCount ++] = c;
+                    attemptedBytes += remaining;
+                } else {
+                    int space = scratch.remaining();
+                    if (space == 0) {
+                        break gather;
+                    }
+                    if (copyStart < 0) {
+                        copyStart = scratch.position();
+                    }
+                    if (remaining > space) {
+                        c.limit(c.position() + space);
+                        remaining = space;
+                    }
+                    scratch.put(c);
+                    attemptedBytes += remaining;
+                }
+            }
+        }
+
+        if (copyStart >= 0) {
+            iov[iovCount ++] = copiedRegion(scratch, copyStart);
+        }
+
+        long localWrittenBytes;
+        try {
+            if (iovCount == 0) {
+                localWrittenBytes = 0;
+            } else if (iovCount == 1) {
+                ByteBuffer b = iov[0];
+                localWrittenBytes = Native.write(channel.fd, b, b.position(), b.limit());
+            } else {
+                localWrittenBytes = Native.writev(channel.fd, iov, 0, iovCount);
+            }
+        } finally {
+            for (int i = 0; i < iovCount; i ++) {
+                iov[i] = null;
+            }
+        }
+
+        completeWrittenBuffers(channel, localWrittenBytes);
+
+        if (localWrittenBytes < attemptedBytes) {
+            return ~localWrittenBytes;
+        }
+        return localWrittenBytes;
+    }
+
+    private static ByteBuffer copiedRegion(ByteBuffer scratch, int start) {
+        ByteBuffer region = scratch.duplicate();
+        region.limit(scratch.position());
+        region.position(start);
+        return region;
+    }
+
+    /**
+     * Notifies the futures of the gathered writes which were written out
+     * completely by the last write operation.
+     */
+    private static void completeWrittenBuffers(EpollSocketChannel channel, long writtenBytes) {
+        final MessageEvent[] gatheredWrites = channel.gatheredWrites;
+        while (channel.gatheredWritesCount > 0) {
+            MessageEvent evt = gatheredWrites[channel.gatheredWritesHead];
+            Object m = evt.getMessage();
+            if (!(m instanceof ChannelBuffer)) {
+                break;
+            }
+
+            ChannelBuffer buf = (ChannelBuffer) m;
+            long total = buf.readableBytes();
+            long remaining = total - channel.headWrittenBytes;
+            if (writtenBytes >= remaining) {
+                writtenBytes -= remaining;
+                removeHead(channel);
+                releaseWrittenMessage(channel, m);
+                evt.getFuture().setSuccess();
+            } else {
+                if (writtenBytes > 0) {
+                    channel.headWrittenBytes += writtenBytes;
+                    // Notify progress listeners if necessary.
+                    evt.getFuture().setProgress(
+                            writtenBytes, channel.headWrittenBytes, total);
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * @return the number of written bytes, or its one's complement if the
+     *         kernel did not accept all the bytes
+     */
+    private long writeFileRegion(EpollSocketChannel channel, FileRegion region) throws IOException {
+        FileRegionTarget target = fileRegionTarget;
+        target.fd = channel.fd;
+        long localWrittenBytes = region.transferTo(target, channel.headWrittenBytes);
+        channel.headWrittenBytes += localWrittenBytes;
+
+        MessageEvent evt = channel.gatheredWrites[channel.gatheredWritesHead];
+        if (channel.headWrittenBytes >= region.getCount()) {
+            removeHead(channel);
+            evt.getFuture().setSuccess();
+            return localWrittenBytes;
+        }
+
+        if (localWrittenBytes > 0) {
+            // Notify progress listeners if necessary.
+            evt.getFuture().setProgress(
+                    localWrittenBytes, channel.headWrittenBytes, region.getCount());
+        }
+        return ~localWrittenBytes;
+    }
+
+    private static void removeHead(EpollSocketChannel channel) {
+        channel.gatheredWrites[channel.gatheredWritesHead] = null;
+        channel.gatheredWritesHead = channel.gatheredWritesHead + 1 & GATHERED_WRITES_MASK;
+        channel.gatheredWritesCount --;
+        channel.headWrittenBytes = 0;
+    }
+
+    private static void completeHead(EpollSocketChannel channel, Throwable cause) {
+        MessageEvent evt = channel.gatheredWrites[channel.gatheredWritesHead];
+        removeHead(channel);
+        releaseWrittenMessage(channel, evt.getMessage());
+        evt.getFuture().setFailure(cause);
+    }
+
+    /**
+     * Releases the specified message whose write operation is complete or
+     * failed, if the {@code "releaseWrittenBuffers"} option of the specified
+     * channel is {@code true}.
+     */
+    private static void releaseWrittenMessage(EpollSocketChannel channel, Object message) {
+        if (!channel.getConfig().isReleaseWrittenBuffers()) {
+            return;
+        }
+        try {
+            ChannelBuffers.release(message);
+        } catch (IllegalStateException e) {
+            logger.warn(
+                    "A written buffer was released already.  Retain a buffer " +
+                    "once more for each extra write when " +
+                    "'releaseWrittenBuffers' is enabled.", e);
+        }
+    }
+
+    private void setOpWrite(EpollSocketChannel channel) {
+        int interestOps = channel.getRawInterestOps();
+        if ((interestOps & Channel.OP_WRITE) == 0) {
+            updateInterestOps(channel, interestOps | Channel.OP_WRITE);
+        }
+    }
+
+    private void clearOpWrite(EpollSocketChannel channel) {
+        int interestOps = channel.getRawInterestOps();
+        if ((interestOps & Channel.OP_WRITE) != 0) {
+            updateInterestOps(channel, interestOps & ~Channel.OP_WRITE);
+        }
+    }
+
+    private void updateInterestOps(EpollSocketChannel channel, int interestOps) {
+        if (channel.registered) {
+            try {
+                Native.epollCtlMod(epollFd, channel.fd, EpollSocketChannel.epollFlags(interestOps));
+            } catch (IOException e) {
+                fireExceptionCaught(channel, e);
+                close(channel, succeededFuture(channel));
+                return;
+            }
+        }
+        channel.setRawInterestOpsNow(interestOps);
+    }
+
+    void setInterestOps(
+            EpollSocketChannel channel, ChannelFuture future, int interestOps) {
+        if (Thread.currentThread() != thread) {
+            executeInIoThread(new SetInterestOpsTask(channel, future, interestOps));
+            return;
+        }
+
+        if (!channel.isOpen()) {
+            ClosedChannelException cce = new ClosedChannelException();
+            future.setFailure(cce);
+            fireExceptionCaught(channel, cce);
+            return;
+        }
+
+        // Override OP_WRITE flag - a user cannot change this flag.
+        interestOps &= ~Channel.OP_WRITE;
+        interestOps |= channel.getRawInterestOps() & Channel.OP_WRITE;
+
+        boolean changed = false;
+        try {
+            if (channel.getRawInterestOps() != interestOps) {
+                if (channel.registered) {
+                    // If the channel became readable, EPOLL_CTL_MOD reports the
+                    // data which arrived while reading was suspended.
+                    Native.epollCtlMod(
+                            epollFd, channel.fd, EpollSocketChannel.epollFlags(interestOps));
+                }
+                changed = true;
+            }
+
+            future.setSuccess();
+            if (changed) {
+                channel.setRawInterestOpsNow(interestOps);
+                fireChannelInterestChanged(channel);
+            }
+        } catch (Throwable t) {
+            future.setFailure(t);
+            fireExceptionCaught(channel, t);
+        }
+    }
+
+    void close(EpollSocketChannel channel, ChannelFuture future) {
+        if (Thread.currentThread() != thread) {
+            try {
+                executeInIoThread(new CloseTask(channel, future));
+                return;
+            } catch (ChannelException e) {
+                // The worker could not be started (e.g. the executor has been
+                // shut down.)  The channel is not registered then, so it can
+                // be closed right here.
+            } catch (RuntimeException e) {
+                // Rejected by the executor - same as above.
+            }
+        }
+
+        boolean connected = channel.isConnected();
+        boolean bound = channel.isBound();
+        try {
+            if (channel.registered) {
+                channels[channel.fd] = null;
+                channel.registered = false;
+                channelCount --;
+            }
+
+            if (channel instanceof EpollClientSocketChannel) {
+                EpollClientSocketChannel ch = (EpollClientSocketChannel) channel;
+                ChannelFuture connectFuture = ch.connectFuture;
+                if (connectFuture != null) {
+                    ch.connectFuture = null;
+                    pendingConnects.remove(ch);
+                    connectFuture.setFailure(new ClosedChannelException());
+                }
+            }
+
+            if (channel.setClosed()) {
+                // Closing the file descriptor also removes it from the epoll
+                // instance.
+                Native.close(channel.fd);
+
+                future.setSuccess();
+                if (connected) {
+                    fireChannelDisconnected(channel);
+                }
+                if (bound) {
+                    fireChannelUnbound(channel);
+                }
+
+                cleanUpWriteBuffer(channel);
+                fireChannelClosed(channel);
+            } else {
+                future.setSuccess();
+            }
+        } catch (Throwable t) {
+            future.setFailure(t);
+            fireExceptionCaught(channel, t);
+        }
+    }
+
+    private void cleanUpWriteBuffer(EpollSocketChannel channel) {
+        Exception cause = null;
+        boolean fireExceptionCaught = false;
+
+        // Clean up the stale messages in the write buffer.
+        synchronized (channel.writeLock) {
+            if (channel.gatheredWritesCount != 0) {
+                // Create the exception only once to avoid the excessive overhead
+                // caused by fillStackTrace.
+                if (channel.isOpen()) {
+                    cause = new NotYetConnectedException();
+                } else {
+                    cause = new ClosedChannelException();
+                }
+
+                while (channel.gatheredWritesCount != 0) {
+                    completeHead(channel, cause);
+                }
+                fireExceptionCaught = true;
+            }
+
+            Queue<MessageEvent> writeBuffer = channel.writeBuffer;
+            if (!writeBuffer.isEmpty()) {
+                // Create the exception only once to avoid the excessive overhead
+                // caused by fillStackTrace.
+                if (cause == null) {
+                    if (channel.isOpen()) {
+                        cause = new NotYetConnectedException();
+                    } else {
+                        cause = new ClosedChannelException();
+                    }
+                }
+
+                for (;;) {
+                    MessageEvent evt = writeBuffer.poll();
+                    if (evt == null) {
+                        break;
+                    }
+                    releaseWrittenMessage(channel, evt.getMessage());
+                    evt.getFuture().setFailure(cause);
+                    fireExceptionCaught = true;
+                }
+            }
+        }
+
+        if (fireExceptionCaught) {
+            fireExceptionCaught(channel, cause);
+        }
+    }
+
+    private boolean register0(EpollSocketChannel channel, int interestOps) {
+        int fd = channel.fd;
+        EpollSocketChannel[] channels = this.channels;
+        if (fd >= channels.length) {
+            int newLength = channels.length << 1;
+            while (newLength <= fd) {
+                newLength <<= 1;
+            }
+            EpollSocketChannel[] newChannels = new EpollSocketChannel[newLength];
+            System.arraycopy(channels, 0, newChannels, 0, channels.length);
+            this.channels = channels = newChannels;
+        }
+
+        try {
+            Native.epollCtlAdd(epollFd, fd, EpollSocketChannel.epollFlags(interestOps));
+        } catch (IOException e) {
+            fireExceptionCaught(channel, e);
+            close(channel, succeededFuture(channel));
+            return false;
+        }
+
+        channels[fd] = channel;
+        channel.registered = true;
+        channelCount ++;
+        return true;
+    }
+
+    private void finishConnect(EpollClientSocketChannel channel) {
+        ChannelFuture future = channel.connectFuture;
+        try {
+            if (!Native.finishConnect(channel.fd)) {
+                return;
+            }
+
+            channel.connectFuture = null;
+            pendingConnects.remove(channel);
+            int interestOps = channel.getRawInterestOps();
+            Native.epollCtlMod(epollFd, channel.fd, EpollSocketChannel.epollFlags(interestOps));
+        } catch (Throwable t) {
+            channel.connectFuture = null;
+            pendingConnects.remove(channel);
+            future.setFailure(t);
+            fireExceptionCaught(channel, t);
+            close(channel, succeededFuture(channel));
+            return;
+        }
+
+        connected(channel, future);
+    }
+
+    private static void connected(EpollClientSocketChannel channel, ChannelFuture future) {
+        channel.setConnected();
+        future.setSuccess();
+        if (!channel.boundManually) {
+            fireChannelBound(channel, channel.getLocalAddress());
+        }
+        fireChannelConnected(channel, channel.getRemoteAddress());
+    }
+
+    private void processConnectTimeout(long currentTimeNanos) {
+        ConnectException cause = null;
+        for (int i = pendingConnects.size() - 1; i >= 0; i --) {
+            EpollClientSocketChannel ch = pendingConnects.get(i);
+            if (ch.connectDeadlineNanos > 0 &&
+                currentTimeNanos >= ch.connectDeadlineNanos) {
+
+                if (cause == null) {
+                    cause = new ConnectException("connection timed out");
+                }
+
+                ChannelFuture future = ch.connectFuture;
+                ch.connectFuture = null;
+                pendingConnects.remove(i);
+                future.setFailure(cause);
+                fireExceptionCaught(ch, cause);
+                close(ch, succeededFuture(ch));
+            }
+        }
+    }
+
+    private static void closeQuietly(int fd) {
+        if (fd < 0) {
+            return;
+        }
+        try {
+            Native.close(fd);
+        } catch (IOException e) {
+            logger.warn("Failed to close a file descriptor.", e);
+        }
+    }
+
+    private final class RegisterTask implements Runnable {
+        private final EpollSocketChannel channel;
+
+        RegisterTask(EpollSocketChannel channel) {
+            this.channel = channel;
+        }
+
+        public void run() {
+            if (!channel.isOpen()) {
+                // Closed before registration.
+                return;
+            }
+
+            if (register0(channel, channel.getRawInterestOps()) &&
+                channel.getRawInterestOps() != Channel.OP_NONE) {
+                // Data might have arrived before the registration.
+                // EPOLL_CTL_ADD reports it as an event, so nothing to do here.
+            }
+        }
+    }
+
+    private final class ConnectTask implements Runnable {
+        private final EpollClientSocketChannel channel;
+        private final ChannelFuture future;
+        private final SocketAddress remoteAddress;
+
+        ConnectTask(EpollClientSocketChannel channel, ChannelFuture future,
+                    SocketAddress remoteAddress) {
+            this.channel = channel;
+            this.future = future;
+            this.remoteAddress = remoteAddress;
+        }
+
+        public void run() {
+            if (!channel.isOpen()) {
+                future.setFailure(new ClosedChannelException());
+                return;
+            }
+
+            boolean connected;
+            try {
+                connected = Native.connect(channel.fd, (InetSocketAddress) remoteAddress);
+            } catch (Throwable t) {
+                future.setFailure(t);
+                fireExceptionCaught(channel, t);
+                close(channel, succeededFuture(channel));
+                return;
+            }
+
+            if (connected) {
+                if (register0(channel, channel.getRawInterestOps())) {
+                    EpollWorker.connected(channel, future);
+                } else {
+                    future.setFailure(new ClosedChannelException());
+                }
+                return;
+            }
+
+            // Wait for EPOLLOUT, which is triggered when the connection attempt
+            // succeeds or fails.
+            channel.connectFuture = future;
+            if (!register0(channel, Channel.OP_WRITE)) {
+                return;
+            }
+
+            pendingConnects.add(channel);
+            int connectTimeout = channel.getConfig().getConnectTimeoutMillis();
+            if (connectTimeout > 0) {
+                channel.connectDeadlineNanos = System.nanoTime() + connectTimeout * 1000000L;
+            }
+        }
+    }
+
+    private final class SetInterestOpsTask implements Runnable {
+        private final EpollSocketChannel channel;
+        private final ChannelFuture future;
+        private final int interestOps;
+
+        SetInterestOpsTask(EpollSocketChannel channel, ChannelFuture future, int interestOps) {
+            this.channel = channel;
+            this.future = future;
+            this.interestOps = interestOps;
+        }
+
+        public void run() {
+            setInterestOps(channel, future, interestOps);
+        }
+    }
+
+    private final class CloseTask implements Runnable {
+        private final EpollSocketChannel channel;
+        private final ChannelFuture future;
+
+        CloseTask(EpollSocketChannel channel, ChannelFuture future) {
+            this.channel = channel;
+            this.future = future;
+        }
+
+        public void run() {
+            close(channel, future);
+        }
+    }
+
+    /**
+     * Writes the content of a {@link FileRegion} to the socket.  Heap buffers
+     * are copied into the scratch buffer first, because {@code write()} needs
+     * a stable memory address.
+     */
+    private final class FileRegionTarget implements WritableByteChannel {
+
+        int fd;
+
+        FileRegionTarget() {
+            super();
+        }
+
+        public int write(ByteBuffer src) throws IOException {
+            int position = src.position();
+            int localWrittenBytes;
+            if (src.isDirect()) {
+                localWrittenBytes = Native.write(fd, src, position, src.limit());
+            } else {
+                ByteBuffer scratch = scratchBuffer;
+                scratch.clear();
+                int length = Math.min(src.remaining(), scratch.capacity());
+                ByteBuffer chunk = src.duplicate();
+                chunk.limit(position + length);
+                scratch.put(chunk);
+                localWrittenBytes = Native.write(fd, scratch, 0, length);
+            }
+            src.position(position + localWrittenBytes);
+            return localWrittenBytes;
+        }
+
+        public boolean isOpen() {
+            return true;
+        }
+
+        public void close() {
+            // Unused
+        }
+    }
+}
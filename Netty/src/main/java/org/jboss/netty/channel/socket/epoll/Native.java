@@ -0,0 +1,196 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.epoll;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+
+import org.jboss.netty.util.internal.SystemPropertyUtil;
+
+/**
+ * The JNI binding of {@code libnetty-epoll}.  All file descriptors are
+ * non-blocking; {@link #read(int, ByteBuffer, int, int)},
+ * {@link #write(int, ByteBuffer, int, int)} and
+ * {@link #writev(int, ByteBuffer[], int, int)} return {@code 0} when the
+ * operation would block, and {@link #accept(int)} returns {@code -1}.
+ * <p>
+ * The library is looked up in the directory specified by the
+ * {@code org.jboss.netty.channel.socket.epoll.libraryPath} system property
+ * first, and then in {@code java.library.path}.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+final class Native {
+
+    static final String LIBRARY_NAME = "netty-epoll";
+    static final String LIBRARY_PATH_PROPERTY =
+        "org.jboss.netty.channel.socket.epoll.libraryPath";
+
+    // These values are defined by the Linux ABI and are the same on all
+    // architectures.
+    static final int EPOLLIN  = 0x001;
+    static final int EPOLLOUT = 0x004;
+    static final int EPOLLERR = 0x008;
+    static final int EPOLLHUP = 0x010;
+    static final int EPOLLET  = 0x80000000;
+
+    static final Throwable UNAVAILABILITY_CAUSE;
+
+    static {
+        Throwable cause = null;
+        try {
+            String libraryPath = SystemPropertyUtil.get(LIBRARY_PATH_PROPERTY);
+            if (libraryPath != null) {
+                System.load(new File(
+                        libraryPath,
+                        System.mapLibraryName(LIBRARY_NAME)).getAbsolutePath());
+            } else {
+                System.loadLibrary(LIBRARY_NAME);
+            }
+        } catch (Throwable t) {
+            cause = t;
+        }
+        UNAVAILABILITY_CAUSE = cause;
+    }
+
+    // epoll
+    static native int epollCreate() throws IOException;
+    static native int epollWait(int efd, long[] events, int timeoutMillis) throws IOException;
+    static native void epollCtlAdd(int efd, int fd, int flags) throws IOException;
+    static native void epollCtlMod(int efd, int fd, int flags) throws IOException;
+    static native void epollCtlDel(int efd, int fd) throws IOException;
+
+    // eventfd
+    static native int eventFd() throws IOException;
+    static native void eventFdWrite(int fd, long value) throws IOException;
+    static native void eventFdRead(int fd) throws IOException;
+
+    // File descriptors
+    static native void close(int fd) throws IOException;
+    static native void shutdown(int fd, boolean input, boolean output) throws IOException;
+    static native int read(int fd, ByteBuffer buf, int pos, int limit) throws IOException;
+    static native int write(int fd, ByteBuffer buf, int pos, int limit) throws IOException;
+    static native long writev(int fd, ByteBuffer[] buffers, int offset, int length) throws IOException;
+
+    // Sockets
+    static native int socketStream() throws IOException;
+    static native void bind(int fd, byte[] address, int scopeId, int port) throws IOException;
+    static native void listen(int fd, int backlog) throws IOException;
+    static native int accept(int fd) throws IOException;
+    static native boolean connect(int fd, byte[] address, int scopeId, int port) throws IOException;
+    static native boolean finishConnect(int fd) throws IOException;
+    static native byte[] localAddress(int fd);
+    static native byte[] remoteAddress(int fd);
+
+    // Socket options
+    static native void setReuseAddress(int fd, boolean reuseAddress) throws IOException;
+    static native boolean isReuseAddress(int fd) throws IOException;
+    static native void setReusePort(int fd, boolean reusePort) throws IOException;
+    static native boolean isReusePort(int fd) throws IOException;
+    static native void setTcpNoDelay(int fd, boolean tcpNoDelay) throws IOException;
+    static native boolean isTcpNoDelay(int fd) throws IOException;
+    static native void setKeepAlive(int fd, boolean keepAlive) throws IOException;
+    static native boolean isKeepAlive(int fd) throws IOException;
+    static native void setReceiveBufferSize(int fd, int receiveBufferSize) throws IOException;
+    static native int getReceiveBufferSize(int fd) throws IOException;
+    static native void setSendBufferSize(int fd, int sendBufferSize) throws IOException;
+    static native int getSendBufferSize(int fd) throws IOException;
+    static native void setSoLinger(int fd, int soLinger) throws IOException;
+    static native int getSoLinger(int fd) throws IOException;
+    static native void setTrafficClass(int fd, int trafficClass) throws IOException;
+    static native int getTrafficClass(int fd) throws IOException;
+
+    static void bind(int fd, InetSocketAddress localAddress) throws IOException {
+        InetAddress address = localAddress.getAddress();
+        Native.bind(fd, address.getAddress(), scopeId(address), localAddress.getPort());
+    }
+
+    static boolean connect(int fd, InetSocketAddress remoteAddress) throws IOException {
+        InetAddress address = remoteAddress.getAddress();
+        if (address == null) {
+            throw new UnknownHostException(remoteAddress.getHostName());
+        }
+        return Native.connect(
+                fd, address.getAddress(), scopeId(address), remoteAddress.getPort());
+    }
+
+    static InetSocketAddress getLocalAddress(int fd) {
+        return toSocketAddress(localAddress(fd));
+    }
+
+    static InetSocketAddress getRemoteAddress(int fd) {
+        return toSocketAddress(remoteAddress(fd));
+    }
+
+    private static int scopeId(InetAddress address) {
+        if (address instanceof Inet6Address) {
+            return ((Inet6Address) address).getScopeId();
+        }
+        return 0;
+    }
+
+    /**
+     * Decodes the address returned by {@link #localAddress(int)} and
+     * {@link #remoteAddress(int)}: {@code address, port} for IPv4 and
+     * {@code address, scopeId, port} for IPv6.
+     */
+    private static InetSocketAddress toSocketAddress(byte[] encoded) {
+        if (encoded == null) {
+            return null;
+        }
+
+        try {
+            if (encoded.length == 8) {
+                byte[] address = new byte[4];
+                System.arraycopy(encoded, 0, address, 0, 4);
+                return new InetSocketAddress(
+                        InetAddress.getByAddress(address), getInt(encoded, 4));
+            }
+
+            byte[] address = new byte[16];
+            System.arraycopy(encoded, 0, address, 0, 16);
+            int scopeId = getInt(encoded, 16);
+            InetAddress inetAddress;
+            if (scopeId != 0) {
+                inetAddress = Inet6Address.getByAddress(null, address, scopeId);
+            } else {
+                inetAddress = InetAddress.getByAddress(address);
+            }
+            return new InetSocketAddress(inetAddress, getInt(encoded, 20));
+        } catch (UnknownHostException e) {
+            // Never happens - the length of the address is always valid.
+            throw new Error(e);
+        }
+    }
+
+    private static int getInt(byte[] a, int index) {
+        return (a[index] & 0xff) << 24 |
+               (a[index + 1] & 0xff) << 16 |
+               (a[index + 2] & 0xff) <<  8 |
+               a[index + 3] & 0xff;
+    }
+
+    private Native() {
+        // Unused
+    }
+}
@@ -0,0 +1,23 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * Linux <a href="http://man7.org/linux/man-pages/man7/epoll.7.html">epoll</a>-based
+ * socket channel API implementation which uses a small native library -
+ * a drop-in replacement of the NIO transport with less garbage and fewer
+ * system calls per message.
+ */
+package org.jboss.netty.channel.socket.epoll;
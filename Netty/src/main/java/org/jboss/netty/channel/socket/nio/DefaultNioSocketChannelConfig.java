@@ -19,6 +19,7 @@ import java.net.Socket;
 import java.util.Map;
 
 import org.jboss.netty.channel.AdaptiveReceiveBufferSizePredictorFactory;
+import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelException;
 import org.jboss.netty.channel.ReceiveBufferSizePredictor;
 import org.jboss.netty.channel.ReceiveBufferSizePredictorFactory;
@@ -47,9 +48,17 @@ class DefaultNioSocketChannelConfig extends DefaultSocketChannelConfig
 
     private volatile int writeBufferHighWaterMark = 64 * 1024;
     private volatile int writeBufferLowWaterMark  = 32 * 1024;
+    private volatile int writeBufferHighWaterMarkMessages;
+    private volatile int writeBufferLowWaterMarkMessages;
+    private volatile boolean autoSuspendRead;
+    private volatile Channel backpressurePeer;
     private volatile ReceiveBufferSizePredictor predictor;
     private volatile ReceiveBufferSizePredictorFactory predictorFactory = DEFAULT_PREDICTOR_FACTORY;
+    private volatile boolean predictorConfigured;
     private volatile int writeSpinCount = 16;
+    private volatile int gatheringWriteMaxBytes = 256 * 1024;
+    private volatile int gatheringWriteMaxBuffers = 64;
+    private volatile boolean releaseWrittenBuffers;
 
     DefaultNioSocketChannelConfig(Socket socket) {
         super(socket);
@@ -67,6 +76,13 @@ class DefaultNioSocketChannelConfig extends DefaultSocketChannelConfig
                     "writeBufferHighWaterMark; setting to the half of the " +
                     "writeBufferHighWaterMark.");
         }
+        if (getWriteBufferHighWaterMarkMessages() < getWriteBufferLowWaterMarkMessages()) {
+            setWriteBufferLowWaterMarkMessages0(getWriteBufferHighWaterMarkMessages() >>> 1);
+            logger.warn(
+                    "writeBufferLowWaterMarkMessages cannot be greater than " +
+                    "writeBufferHighWaterMarkMessages; setting to the half of the " +
+                    "writeBufferHighWaterMarkMessages.");
+        }
     }
 
     @Override
@@ -79,8 +95,22 @@ class DefaultNioSocketChannelConfig extends DefaultSocketChannelConfig
             setWriteBufferHighWaterMark0(ConversionUtil.toInt(value));
         } else if (key.equals("writeBufferLowWaterMark")) {
             setWriteBufferLowWaterMark0(ConversionUtil.toInt(value));
+        } else if (key.equals("writeBufferHighWaterMarkMessages")) {
+            setWriteBufferHighWaterMarkMessages0(ConversionUtil.toInt(value));
+        } else if (key.equals("writeBufferLowWaterMarkMessages")) {
+            setWriteBufferLowWaterMarkMessages0(ConversionUtil.toInt(value));
+        } else if (key.equals("autoSuspendRead")) {
+            setAutoSuspendRead(ConversionUtil.toBoolean(value));
+        } else if (key.equals("backpressurePeer")) {
+            setBackpressurePeer((Channel) value);
         } else if (key.equals("writeSpinCount")) {
             setWriteSpinCount(ConversionUtil.toInt(value));
+        } else if (key.equals("gatheringWriteMaxBytes")) {
+            setGatheringWriteMaxBytes(ConversionUtil.toInt(value));
+        } else if (key.equals("gatheringWriteMaxBuffers")) {
+            setGatheringWriteMaxBuffers(ConversionUtil.toInt(value));
+        } else if (key.equals("releaseWrittenBuffers")) {
+            setReleaseWrittenBuffers(ConversionUtil.toBoolean(value));
         } else if (key.equals("receiveBufferSizePredictorFactory")) {
             setReceiveBufferSizePredictorFactory((ReceiveBufferSizePredictorFactory) value);
         } else if (key.equals("receiveBufferSizePredictor")) {
@@ -135,6 +165,70 @@ class DefaultNioSocketChannelConfig extends DefaultSocketChannelConfig
         this.writeBufferLowWaterMark = writeBufferLowWaterMark;
     }
 
+    public int getWriteBufferHighWaterMarkMessages() {
+        return writeBufferHighWaterMarkMessages;
+    }
+
+    public void setWriteBufferHighWaterMarkMessages(int writeBufferHighWaterMarkMessages) {
+        if (writeBufferHighWaterMarkMessages != 0 &&
+            writeBufferHighWaterMarkMessages < getWriteBufferLowWaterMarkMessages()) {
+            throw new IllegalArgumentException(
+                    "writeBufferHighWaterMarkMessages cannot be less than " +
+                    "writeBufferLowWaterMarkMessages (" +
+                    getWriteBufferLowWaterMarkMessages() + "): " +
+                    writeBufferHighWaterMarkMessages);
+        }
+        setWriteBufferHighWaterMarkMessages0(writeBufferHighWaterMarkMessages);
+    }
+
+    private void setWriteBufferHighWaterMarkMessages0(int writeBufferHighWaterMarkMessages) {
+        if (writeBufferHighWaterMarkMessages < 0) {
+            throw new IllegalArgumentException(
+                    "writeBufferHighWaterMarkMessages: " + writeBufferHighWaterMarkMessages);
+        }
+        this.writeBufferHighWaterMarkMessages = writeBufferHighWaterMarkMessages;
+    }
+
+    public int getWriteBufferLowWaterMarkMessages() {
+        return writeBufferLowWaterMarkMessages;
+    }
+
+    public void setWriteBufferLowWaterMarkMessages(int writeBufferLowWaterMarkMessages) {
+        if (getWriteBufferHighWaterMarkMessages() != 0 &&
+            writeBufferLowWaterMarkMessages > getWriteBufferHighWaterMarkMessages()) {
+            throw new IllegalArgumentException(
+                    "writeBufferLowWaterMarkMessages cannot be greater than " +
+                    "writeBufferHighWaterMarkMessages (" +
+                    getWriteBufferHighWaterMarkMessages() + "): " +
+                    writeBufferLowWaterMarkMessages);
+        }
+        setWriteBufferLowWaterMarkMessages0(writeBufferLowWaterMarkMessages);
+    }
+
+    private void setWriteBufferLowWaterMarkMessages0(int writeBufferLowWaterMarkMessages) {
+        if (writeBufferLowWaterMarkMessages < 0) {
+            throw new IllegalArgumentException(
+                    "writeBufferLowWaterMarkMessages: " + writeBufferLowWaterMarkMessages);
+        }
+        this.writeBufferLowWaterMarkMessages = writeBufferLowWaterMarkMessages;
+    }
+
+    public boolean isAutoSuspendRead() {
+        return autoSuspendRead;
+    }
+
+    public void setAutoSuspendRead(boolean autoSuspendRead) {
+        this.autoSuspendRead = autoSuspendRead;
+    }
+
+    public Channel getBackpressurePeer() {
+        return backpressurePeer;
+    }
+
+    public void setBackpressurePeer(Channel backpressurePeer) {
+        this.backpressurePeer = backpressurePeer;
+    }
+
     public int getWriteSpinCount() {
         return writeSpinCount;
     }
@@ -147,6 +241,38 @@ class DefaultNioSocketChannelConfig extends DefaultSocketChannelConfig
         this.writeSpinCount = writeSpinCount;
     }
 
+    public int getGatheringWriteMaxBytes() {
+        return gatheringWriteMaxBytes;
+    }
+
+    public void setGatheringWriteMaxBytes(int gatheringWriteMaxBytes) {
+        if (gatheringWriteMaxBytes <= 0) {
+            throw new IllegalArgumentException(
+                    "gatheringWriteMaxBytes must be a positive integer.");
+        }
+        this.gatheringWriteMaxBytes = gatheringWriteMaxBytes;
+    }
+
+    public int getGatheringWriteMaxBuffers() {
+        return gatheringWriteMaxBuffers;
+    }
+
+    public void setGatheringWriteMaxBuffers(int gatheringWriteMaxBuffers) {
+        if (gatheringWriteMaxBuffers <= 0) {
+            throw new IllegalArgumentException(
+                    "gatheringWriteMaxBuffers must be a positive integer.");
+        }
+        this.gatheringWriteMaxBuffers = gatheringWriteMaxBuffers;
+    }
+
+    public boolean isReleaseWrittenBuffers() {
+        return releaseWrittenBuffers;
+    }
+
+    public void setReleaseWrittenBuffers(boolean releaseWrittenBuffers) {
+        this.releaseWrittenBuffers = releaseWrittenBuffers;
+    }
+
     public ReceiveBufferSizePredictor getReceiveBufferSizePredictor() {
         ReceiveBufferSizePredictor predictor = this.predictor;
         if (predictor == null) {
@@ -168,6 +294,7 @@ class DefaultNioSocketChannelConfig extends DefaultSocketChannelConfig
             throw new NullPointerException("predictor");
         }
         this.predictor = predictor;
+        predictorConfigured = true;
     }
 
     public ReceiveBufferSizePredictorFactory getReceiveBufferSizePredictorFactory() {
@@ -179,5 +306,14 @@ class DefaultNioSocketChannelConfig extends DefaultSocketChannelConfig
             throw new NullPointerException("predictorFactory");
         }
         this.predictorFactory = predictorFactory;
+        predictorConfigured = true;
+    }
+
+    /**
+     * Returns {@code true} if and only if neither a predictor nor a predictor
+     * factory was set, so that the I/O worker may use its own predictor.
+     */
+    boolean isReceiveBufferSizePredictorConfigured() {
+        return predictorConfigured;
     }
 }
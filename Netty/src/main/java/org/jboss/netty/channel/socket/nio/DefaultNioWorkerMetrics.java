@@ -0,0 +1,195 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import java.nio.channels.Selector;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.jboss.netty.channel.Channel;
+
+/**
+ * The {@link NioWorkerMetrics} of a {@link NioWorker}, which is also the
+ * recorder called by the worker.  The counters updated only by the I/O
+ * thread are plain volatile fields, and the others are atomic.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+final class DefaultNioWorkerMetrics implements NioWorkerMetrics {
+
+    private static final int HISTOGRAM_SIZE = 8;
+
+    private final NioWorker worker;
+    private final int bossId;
+    private final int workerId;
+    volatile NioMetricsListener listener;
+
+    // Updated only by the I/O thread.
+    private volatile long selectCount;
+    private volatile long selectTimeNanos;
+    private volatile long selectedKeyCount;
+    private volatile long cancelledKeyCleanupCount;
+    private volatile long readCount;
+    private volatile long readBytes;
+
+    // Updated by any thread which writes.
+    private final AtomicLong writeCount = new AtomicLong();
+    private final AtomicLong zeroByteWriteCount = new AtomicLong();
+    private final AtomicLong writtenBytes = new AtomicLong();
+    private final AtomicLongArray queuedBytesHistogram = new AtomicLongArray(HISTOGRAM_SIZE);
+
+    DefaultNioWorkerMetrics(NioWorker worker, int bossId, int workerId) {
+        this.worker = worker;
+        this.bossId = bossId;
+        this.workerId = workerId;
+    }
+
+    public int getBossId() {
+        return bossId;
+    }
+
+    public int getWorkerId() {
+        return workerId;
+    }
+
+    public int getChannelCount() {
+        Selector selector = worker.selector;
+        if (selector == null) {
+            return 0;
+        }
+        try {
+            return selector.keys().size();
+        } catch (Exception e) {
+            // Closed concurrently.
+            return 0;
+        }
+    }
+
+    public long getSelectCount() {
+        return selectCount;
+    }
+
+    public long getSelectTimeNanos() {
+        return selectTimeNanos;
+    }
+
+    public long getSelectedKeyCount() {
+        return selectedKeyCount;
+    }
+
+    public long getCancelledKeyCleanupCount() {
+        return cancelledKeyCleanupCount;
+    }
+
+    public long getReadCount() {
+        return readCount;
+    }
+
+    public long getReadBytes() {
+        return readBytes;
+    }
+
+    public long getWriteCount() {
+        return writeCount.get();
+    }
+
+    public long getZeroByteWriteCount() {
+        return zeroByteWriteCount.get();
+    }
+
+    public long getWrittenBytes() {
+        return writtenBytes.get();
+    }
+
+    public int getWriteTaskQueueSize() {
+        return worker.getWriteTaskQueueSize();
+    }
+
+    public int getRegisterTaskQueueSize() {
+        return worker.getRegisterTaskQueueSize();
+    }
+
+    public long[] getQueuedBytesHistogram() {
+        long[] histogram = new long[HISTOGRAM_SIZE];
+        for (int i = 0; i < histogram.length; i ++) {
+            histogram[i] = queuedBytesHistogram.get(i);
+        }
+        return histogram;
+    }
+
+    void selected(int selectedKeys, long selectTimeNanos) {
+        selectCount ++;
+        this.selectTimeNanos += selectTimeNanos;
+        selectedKeyCount += selectedKeys;
+
+        NioMetricsListener listener = this.listener;
+        if (listener != null) {
+            listener.selected(this, selectedKeys, selectTimeNanos);
+        }
+    }
+
+    void cancelledKeysCleanedUp() {
+        cancelledKeyCleanupCount ++;
+    }
+
+    void read(Channel channel, int readBytes, int readCount) {
+        this.readCount += readCount;
+        this.readBytes += readBytes;
+
+        NioMetricsListener listener = this.listener;
+        if (listener != null) {
+            listener.read(this, channel, readBytes, readCount);
+        }
+    }
+
+    void written(
+            Channel channel, long writtenBytes, int writeCount,
+            int zeroByteWriteCount, long queuedBytes) {
+        if (writeCount != 0) {
+            this.writeCount.addAndGet(writeCount);
+            if (zeroByteWriteCount != 0) {
+                this.zeroByteWriteCount.addAndGet(zeroByteWriteCount);
+            }
+            if (writtenBytes != 0) {
+                this.writtenBytes.addAndGet(writtenBytes);
+            }
+        }
+        queuedBytesHistogram.incrementAndGet(histogramIndex(queuedBytes));
+
+        NioMetricsListener listener = this.listener;
+        if (listener != null) {
+            listener.written(this, channel, writtenBytes, writeCount, queuedBytes);
+        }
+    }
+
+    static int histogramIndex(long queuedBytes) {
+        if (queuedBytes <= 0) {
+            return 0;
+        }
+        if (queuedBytes < 1024) {
+            return 1;
+        }
+        int log2 = 63 - Long.numberOfLeadingZeros(queuedBytes >>> 10);
+        return Math.min(2 + (log2 >>> 1), HISTOGRAM_SIZE - 1);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + '(' + bossId + '-' + workerId + ')';
+    }
+}
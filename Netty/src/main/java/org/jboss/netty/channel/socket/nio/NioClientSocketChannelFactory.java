@@ -92,6 +92,7 @@ public class NioClientSocketChannelFactory implements ClientSocketChannelFactory
 	//当ChannelDownstreamHandler一直向前prev时，最后prev=null时就会转到sink
 	//见DefaultChannelPipeline类的sendDownstream
     private final NioClientSocketPipelineSink sink;
+    private volatile NioMetricsListener metricsListener;
 
     /**
      * Creates a new instance.  Calling this constructor is same with calling
@@ -160,6 +161,35 @@ public class NioClientSocketChannelFactory implements ClientSocketChannelFactory
 		}
     }
 
+    /**
+     * Returns the {@link NioWorkerMetrics} of the I/O worker threads of this
+     * factory.  The returned metrics are updated as the workers run, so they
+     * do not need to be retrieved again.
+     */
+    public NioWorkerMetrics[] getWorkerMetrics() {
+        return sink.getWorkerMetrics();
+    }
+
+    /**
+     * Returns the {@link NioMetricsListener} which is notified of the I/O
+     * operations of the I/O worker threads of this factory.
+     *
+     * @return the listener, or {@code null} if not set
+     */
+    public NioMetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * Sets the {@link NioMetricsListener} which is notified of the I/O
+     * operations of the I/O worker threads of this factory.  {@code null}
+     * removes the current listener.
+     */
+    public void setMetricsListener(NioMetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+        sink.setMetricsListener(metricsListener);
+    }
+
     public void releaseExternalResources() {
         ExecutorUtil.terminate(bossExecutor, workerExecutor);
     }
@@ -219,6 +219,20 @@ class NioClientSocketPipelineSink extends AbstractChannelSink {
                 workerIndex.getAndIncrement() % workers.length)];
     }
 
+    NioWorkerMetrics[] getWorkerMetrics() {
+        NioWorkerMetrics[] metrics = new NioWorkerMetrics[workers.length];
+        for (int i = 0; i < workers.length; i ++) {
+            metrics[i] = workers[i].metrics;
+        }
+        return metrics;
+    }
+
+    void setMetricsListener(NioMetricsListener listener) {
+        for (NioWorker w: workers) {
+            w.metrics.listener = listener;
+        }
+    }
+
 	//Boss主要处理SocketChannel的connect，因为connect在非阻塞的情况下可能马上返回false，
 	//必须在一个for循环中检测connect的状态
     private final class Boss implements Runnable {
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import org.jboss.netty.channel.Channel;
+
+/**
+ * Listens to the I/O operations performed by the I/O worker threads of
+ * {@link NioServerSocketChannelFactory} or {@link NioClientSocketChannelFactory}
+ * in more detail than {@link NioWorkerMetrics} provides.  It is set with
+ * {@link NioServerSocketChannelFactory#setMetricsListener(NioMetricsListener)}
+ * or {@link NioClientSocketChannelFactory#setMetricsListener(NioMetricsListener)}.
+ * <p>
+ * The methods are called by the thread which performed the operation, which
+ * is usually an I/O worker thread, for every operation.  Therefore, they must
+ * return quickly and must not block; a typical implementation updates a few
+ * counters or histograms of its own.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public interface NioMetricsListener {
+
+    /**
+     * Invoked when an iteration of the selector loop of the specified worker
+     * finished waiting for the I/O readiness.
+     *
+     * @param selectedKeys    the number of the selected keys
+     * @param selectTimeNanos the time spent waiting, in nanoseconds
+     */
+    void selected(NioWorkerMetrics worker, int selectedKeys, long selectTimeNanos);
+
+    /**
+     * Invoked when the specified worker read from the specified
+     * {@link Channel}.
+     *
+     * @param readBytes the number of the bytes read
+     * @param readCount the number of the read calls on the socket
+     */
+    void read(NioWorkerMetrics worker, Channel channel, int readBytes, int readCount);
+
+    /**
+     * Invoked when the specified worker wrote the write buffer of the
+     * specified {@link Channel} to its socket, before the futures of the
+     * write requests written fully are notified.
+     *
+     * @param writtenBytes the number of the bytes written
+     * @param writeCount   the number of the write calls on the socket
+     * @param queuedBytes  the number of the bytes left in the write buffer
+     */
+    void written(
+            NioWorkerMetrics worker, Channel channel,
+            long writtenBytes, int writeCount, long queuedBytes);
+}
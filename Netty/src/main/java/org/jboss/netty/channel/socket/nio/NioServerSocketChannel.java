@@ -21,8 +21,9 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.jboss.netty.channel.AbstractServerChannel;
 import org.jboss.netty.channel.ChannelException;
@@ -50,8 +51,12 @@ class NioServerSocketChannel extends AbstractServerChannel
         InternalLoggerFactory.getInstance(NioServerSocketChannel.class);
 
     final ServerSocketChannel socket;
-    final Lock shutdownLock = new ReentrantLock();
-    volatile Selector selector;
+    /**
+     * The locks held by the boss threads while they accept connections.
+     * The channel is marked as closed only after all of them are acquired.
+     */
+    final List<Lock> shutdownLocks = new CopyOnWriteArrayList<Lock>();
+    final List<Selector> selectors = new CopyOnWriteArrayList<Selector>();
     private final ServerSocketChannelConfig config;
 
     NioServerSocketChannel(
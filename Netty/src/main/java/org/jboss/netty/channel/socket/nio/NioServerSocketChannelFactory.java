@@ -22,7 +22,6 @@ import java.util.concurrent.RejectedExecutionException;
 
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelPipeline;
-import org.jboss.netty.channel.ChannelSink;
 import org.jboss.netty.channel.group.ChannelGroup;
 import org.jboss.netty.channel.socket.ServerSocketChannel;
 import org.jboss.netty.channel.socket.ServerSocketChannelFactory;
@@ -45,8 +44,15 @@ import org.jboss.netty.util.internal.ExecutorUtil;
  * For example, if you opened two server ports such as 80 and 443, you will
  * have two boss threads.  A boss thread accepts incoming connections until
  * the port is unbound.  Once a connection is accepted successfully, the boss
- * thread passes the accepted {@link Channel} to one of the worker
- * threads that the {@link NioServerSocketChannelFactory} manages.
+ * thread passes the accepted {@link Channel} to the worker thread with the
+ * least open accepted {@link Channel}s among the worker threads that the
+ * {@link NioServerSocketChannelFactory} manages.
+ *
+ * If a single boss thread cannot keep up with the rate of the incoming
+ * connections, you can specify the number of the boss threads per bound
+ * {@link ServerSocketChannel} with
+ * {@link #NioServerSocketChannelFactory(Executor, Executor, int, int)}.
+ * The boss threads of the same port accept the connections concurrently.
  *
  * <h4>Worker threads</h4>
  * <p>
@@ -92,7 +98,8 @@ public class NioServerSocketChannelFactory implements ServerSocketChannelFactory
 
     final Executor bossExecutor;
     private final Executor workerExecutor;
-    private final ChannelSink sink;
+    private final NioServerSocketPipelineSink sink;
+    private volatile NioMetricsListener metricsListener;
 
     /**
      * Creates a new instance.  Calling this constructor is same with calling
@@ -124,9 +131,28 @@ public class NioServerSocketChannelFactory implements ServerSocketChannelFactory
     public NioServerSocketChannelFactory(
             Executor bossExecutor, Executor workerExecutor,
             int workerCount) {
+        this(bossExecutor, workerExecutor, workerCount, 1);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param bossExecutor
+     *        the {@link Executor} which will execute the boss threads
+     * @param workerExecutor
+     *        the {@link Executor} which will execute the I/O worker threads
+     * @param workerCount
+     *        the maximum number of I/O worker threads
+     * @param bossCount
+     *        the number of boss threads per bound {@link ServerSocketChannel}
+     */
+    public NioServerSocketChannelFactory(
+            Executor bossExecutor, Executor workerExecutor,
+            int workerCount, int bossCount) {
 		try {//我加上的
-		DEBUG.P(this,"NioServerSocketChannelFactory(3)");
+		DEBUG.P(this,"NioServerSocketChannelFactory(4)");
 		DEBUG.P("workerCount="+workerCount);
+		DEBUG.P("bossCount="+bossCount);
 
         if (bossExecutor == null) {
             throw new NullPointerException("bossExecutor");
@@ -139,12 +165,17 @@ public class NioServerSocketChannelFactory implements ServerSocketChannelFactory
                     "workerCount (" + workerCount + ") " +
                     "must be a positive integer.");
         }
+        if (bossCount <= 0) {
+            throw new IllegalArgumentException(
+                    "bossCount (" + bossCount + ") " +
+                    "must be a positive integer.");
+        }
         this.bossExecutor = bossExecutor;
         this.workerExecutor = workerExecutor;
-        sink = new NioServerSocketPipelineSink(workerExecutor, workerCount);
+        sink = new NioServerSocketPipelineSink(workerExecutor, workerCount, bossCount);
 
 		}finally{//我加上的
-		DEBUG.P(0,this,"NioServerSocketChannelFactory(3)");
+		DEBUG.P(0,this,"NioServerSocketChannelFactory(4)");
 		}
     }
 
@@ -161,6 +192,35 @@ public class NioServerSocketChannelFactory implements ServerSocketChannelFactory
 		}
     }
 
+    /**
+     * Returns the {@link NioWorkerMetrics} of the I/O worker threads of this
+     * factory.  The returned metrics are updated as the workers run, so they
+     * do not need to be retrieved again.
+     */
+    public NioWorkerMetrics[] getWorkerMetrics() {
+        return sink.getWorkerMetrics();
+    }
+
+    /**
+     * Returns the {@link NioMetricsListener} which is notified of the I/O
+     * operations of the I/O worker threads of this factory.
+     *
+     * @return the listener, or {@code null} if not set
+     */
+    public NioMetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * Sets the {@link NioMetricsListener} which is notified of the I/O
+     * operations of the I/O worker threads of this factory.  {@code null}
+     * removes the current listener.
+     */
+    public void setMetricsListener(NioMetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+        sink.setMetricsListener(metricsListener);
+    }
+
     public void releaseExternalResources() {
 		try {//我加上的
 		DEBUG.P(this,"releaseExternalResources()");
@@ -28,11 +28,15 @@ import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.jboss.netty.channel.AbstractChannelSink;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelEvent;
 import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
 import org.jboss.netty.channel.ChannelPipeline;
 import org.jboss.netty.channel.ChannelState;
 import org.jboss.netty.channel.ChannelStateEvent;
@@ -58,22 +62,27 @@ class NioServerSocketPipelineSink extends AbstractChannelSink {
     private static final AtomicInteger nextId = new AtomicInteger();
 
     private final int id = nextId.incrementAndGet();
+    private final int bossCount;
     private final NioWorker[] workers;
     private final AtomicInteger workerIndex = new AtomicInteger();
+    // The number of the open accepted channels of each worker.
+    private final AtomicIntegerArray workerLoads;
 
-    NioServerSocketPipelineSink(Executor workerExecutor, int workerCount) {
+    NioServerSocketPipelineSink(Executor workerExecutor, int workerCount, int bossCount) {
 		try {//我加上的
-		DEBUG.P(this,"NioServerSocketPipelineSink(2)");
+		DEBUG.P(this,"NioServerSocketPipelineSink(3)");
 		
+        this.bossCount = bossCount;
         workers = new NioWorker[workerCount];
         for (int i = 0; i < workers.length; i ++) {
             workers[i] = new NioWorker(id, i + 1, workerExecutor);
         }
+        workerLoads = new AtomicIntegerArray(workerCount);
 
 		//DEBUG.PA("workers",workers);
 
 		}finally{//我加上的
-		DEBUG.P(0,this,"NioServerSocketPipelineSink(2)");
+		DEBUG.P(0,this,"NioServerSocketPipelineSink(3)");
 		}
     }
 
@@ -194,13 +203,24 @@ class NioServerSocketPipelineSink extends AbstractChannelSink {
 
             Executor bossExecutor =
                 ((NioServerSocketChannelFactory) channel.getFactory()).bossExecutor;
-            bossExecutor.execute(
-                    new IoWorkerRunnable(
-                            new ThreadRenamingRunnable(
-                                    new Boss(channel),
-                                    "New I/O server boss #" + id +
-                                    " (channelId: " + channel.getId() +
-                                    ", " + channel.getLocalAddress() + ')')));
+            for (int i = 0; i < bossCount; i ++) {
+                Boss boss = new Boss(channel);
+                boolean started = false;
+                try {
+                    bossExecutor.execute(
+                            new IoWorkerRunnable(
+                                    new ThreadRenamingRunnable(
+                                            boss,
+                                            "New I/O server boss #" + id + '-' + (i + 1) +
+                                            " (channelId: " + channel.getId() +
+                                            ", " + channel.getLocalAddress() + ')')));
+                    started = true;
+                } finally {
+                    if (!started) {
+                        boss.closeSelector();
+                    }
+                }
+            }
             bossStarted = true;
         } catch (Throwable t) {
             future.setFailure(t);
@@ -221,16 +241,19 @@ class NioServerSocketPipelineSink extends AbstractChannelSink {
         try {
             if (channel.socket.isOpen()) {
                 channel.socket.close();
-                Selector selector = channel.selector;
-                if (selector != null) {
+                for (Selector selector: channel.selectors) {
                     selector.wakeup();
                 }
             }
 
-            // Make sure the boss thread is not running so that that the future
-            // is notified after a new connection cannot be accepted anymore.
-            // See NETTY-256 for more information.
-            channel.shutdownLock.lock();
+            // Make sure the boss threads are not running so that that the
+            // future is notified after a new connection cannot be accepted
+            // anymore.  See NETTY-256 for more information.
+            Lock[] shutdownLocks =
+                channel.shutdownLocks.toArray(new Lock[channel.shutdownLocks.size()]);
+            for (Lock l: shutdownLocks) {
+                l.lock();
+            }
             try {
                 if (channel.setClosed()) {
                     future.setSuccess();
@@ -242,7 +265,9 @@ class NioServerSocketPipelineSink extends AbstractChannelSink {
                     future.setSuccess();
                 }
             } finally {
-                channel.shutdownLock.unlock();
+                for (int i = shutdownLocks.length - 1; i >= 0; i --) {
+                    shutdownLocks[i].unlock();
+                }
             }
         } catch (Throwable t) {
             future.setFailure(t);
@@ -250,13 +275,60 @@ class NioServerSocketPipelineSink extends AbstractChannelSink {
         }
     }
 
-    NioWorker nextWorker() {
-        return workers[Math.abs(
-                workerIndex.getAndIncrement() % workers.length)];
+    /**
+     * Returns the index of the worker with the least open accepted channels.
+     * The search starts from a rotating index so that the workers with the
+     * same load are chosen in a round-robin fashion.
+     */
+    int nextWorkerIndex() {
+        int start = Math.abs(workerIndex.getAndIncrement() % workers.length);
+        int index = start;
+        int minLoad = workerLoads.get(start);
+        for (int i = 1; i < workers.length && minLoad > 0; i ++) {
+            int j = (start + i) % workers.length;
+            int load = workerLoads.get(j);
+            if (load < minLoad) {
+                index = j;
+                minLoad = load;
+            }
+        }
+        return index;
+    }
+
+    int getWorkerLoad(int index) {
+        return workerLoads.get(index);
+    }
+
+    NioWorkerMetrics[] getWorkerMetrics() {
+        NioWorkerMetrics[] metrics = new NioWorkerMetrics[workers.length];
+        for (int i = 0; i < workers.length; i ++) {
+            metrics[i] = workers[i].metrics;
+        }
+        return metrics;
+    }
+
+    void setMetricsListener(NioMetricsListener listener) {
+        for (NioWorker w: workers) {
+            w.metrics.listener = listener;
+        }
+    }
+
+    private final class WorkerLoadUpdater implements ChannelFutureListener {
+        private final int index;
+
+        WorkerLoadUpdater(int index) {
+            super();
+            this.index = index;
+        }
+
+        public void operationComplete(ChannelFuture future) {
+            workerLoads.decrementAndGet(index);
+        }
     }
 
     private final class Boss implements Runnable {
         private final Selector selector;
+        private final Lock shutdownLock = new ReentrantLock();
         private final NioServerSocketChannel channel;
 
         Boss(NioServerSocketChannel channel) throws IOException {
@@ -274,7 +346,8 @@ class NioServerSocketPipelineSink extends AbstractChannelSink {
                 }
             }
 
-            channel.selector = selector;
+            channel.selectors.add(selector);
+            channel.shutdownLocks.add(shutdownLock);
         }
 
         public void run() {
@@ -283,19 +356,24 @@ class NioServerSocketPipelineSink extends AbstractChannelSink {
 
             final Thread currentThread = Thread.currentThread();
 
-            channel.shutdownLock.lock();
+            shutdownLock.lock();
             for (;;) {
                 try {
                     if (selector.select(1000) > 0) {
                         selector.selectedKeys().clear();
                     }
 
-					//在NioServerSocketChannel的构造函数中已将channel.socket设成非阻塞模式
-                    SocketChannel acceptedSocket = channel.socket.accept();
-
-					//select后，如果没有通道套接字的连接，accept()返回null
-					DEBUG.P("acceptedSocket="+acceptedSocket);
-                    if (acceptedSocket != null) {
+                    // Accept all pending connections at once.  The other boss
+                    // threads of the channel may take some of them.
+                    for (;;) {
+						//在NioServerSocketChannel的构造函数中已将channel.socket设成非阻塞模式
+                        SocketChannel acceptedSocket = channel.socket.accept();
+
+						//select后，如果没有通道套接字的连接，accept()返回null
+						DEBUG.P("acceptedSocket="+acceptedSocket);
+                        if (acceptedSocket == null) {
+                            break;
+                        }
                         registerAcceptedChannel(acceptedSocket, currentThread);
                     }
                 } catch (SocketTimeoutException e) {
@@ -322,7 +400,7 @@ class NioServerSocketPipelineSink extends AbstractChannelSink {
                 }
             }
 
-            channel.shutdownLock.unlock();
+            shutdownLock.unlock();
             closeSelector();
 
 			}finally{//我加上的
@@ -338,11 +416,15 @@ class NioServerSocketPipelineSink extends AbstractChannelSink {
 				//channel.socket.accept()后得到的每个SocketChannel都会对应一个新的pipeline
                 ChannelPipeline pipeline =
                     channel.getConfig().getPipelineFactory().getPipeline();
-                NioWorker worker = nextWorker();
-                worker.register(new NioAcceptedSocketChannel(
+                int index = nextWorkerIndex();
+                NioWorker worker = workers[index];
+                NioAcceptedSocketChannel acceptedChannel = new NioAcceptedSocketChannel(
                         channel.getFactory(), pipeline, channel,
                         NioServerSocketPipelineSink.this, acceptedSocket,
-                        worker, currentThread), null);
+                        worker, currentThread);
+                worker.register(acceptedChannel, null);
+                workerLoads.incrementAndGet(index);
+                acceptedChannel.getCloseFuture().addListener(new WorkerLoadUpdater(index));
             } catch (Exception e) {
                 logger.warn(
                         "Failed to initialize an accepted socket.", e);
@@ -360,8 +442,9 @@ class NioServerSocketPipelineSink extends AbstractChannelSink {
 			}
         }
 
-        private void closeSelector() {
-            channel.selector = null;
+        void closeSelector() {
+            channel.selectors.remove(selector);
+            channel.shutdownLocks.remove(shutdownLock);
             try {
                 selector.close();
             } catch (Exception e) {
@@ -23,6 +23,7 @@ import java.nio.channels.SocketChannel;
 import java.util.Queue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.AbstractChannel;
@@ -31,10 +32,13 @@ import org.jboss.netty.channel.ChannelFactory;
 import org.jboss.netty.channel.ChannelFuture;
 import org.jboss.netty.channel.ChannelPipeline;
 import org.jboss.netty.channel.ChannelSink;
+import org.jboss.netty.channel.FileRegion;
 import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.channel.socket.nio.SocketSendBufferPool.SendBuffer;
 import org.jboss.netty.util.internal.LinkedTransferQueue;
 import org.jboss.netty.util.internal.ThreadLocalBoolean;
+import org.jboss.netty.util.internal.WorkerTimer;
+import org.jboss.netty.util.internal.WorkerTimerProvider;
 
 /**
  * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
@@ -44,7 +48,8 @@ import org.jboss.netty.util.internal.ThreadLocalBoolean;
  *
  */
 class NioSocketChannel extends AbstractChannel
-                                implements org.jboss.netty.channel.socket.SocketChannel {
+                                implements org.jboss.netty.channel.socket.SocketChannel,
+                                           WorkerTimerProvider {
 
     private static final int ST_OPEN = 0;
     private static final int ST_BOUND = 1;
@@ -65,13 +70,37 @@ class NioSocketChannel extends AbstractChannel
     final AtomicBoolean writeTaskInTaskQueue = new AtomicBoolean();
 
     final Queue<MessageEvent> writeBuffer = new WriteRequestQueue();
-    final AtomicInteger writeBufferSize = new AtomicInteger();
-    final AtomicInteger highWaterMarkCounter = new AtomicInteger();
+
+    /**
+     * The number of the bytes which were requested to be written but have not
+     * been written out yet, and the number of such write requests.
+     */
+    final AtomicLong writeBufferSize = new AtomicLong();
+    final AtomicInteger writeBufferMessages = new AtomicInteger();
+
+    private final Object writeBufferStateLock = new Object();
+    private final ThreadLocalBoolean notifying = new ThreadLocalBoolean();
+    private volatile boolean unwritable;
+    private boolean readSuspendedBySelf;
+    private Channel readSuspendedPeer;
+
+    /**
+     * The number of the reasons why the reading is suspended regardless of
+     * {@link #getRawInterestOps()}.  Guarded by {@link #interestOpsLock}.
+     */
+    int readSuspensions;
     boolean inWriteNowLoop;
     boolean writeSuspended;
 
-    MessageEvent currentWriteEvent;
-    SendBuffer currentWriteBuffer;
+    /**
+     * The write requests which were polled from {@link #writeBuffer} but have
+     * not been written out completely yet, and their {@link SendBuffer}s.
+     * Only the first request can be partially written.  Guarded by
+     * {@link #writeLock}.
+     */
+    MessageEvent[] currentWriteEvents = new MessageEvent[1];
+    SendBuffer[] currentWriteBuffers = new SendBuffer[1];
+    int currentWriteCount;
 
     public NioSocketChannel(
             Channel parent, ChannelFactory factory,
@@ -88,6 +117,10 @@ class NioSocketChannel extends AbstractChannel
         return config;
     }
 
+    public WorkerTimer getWorkerTimer() {
+        return worker.timer;
+    }
+
     public InetSocketAddress getLocalAddress() {
         InetSocketAddress localAddress = this.localAddress;
         if (localAddress == null) {
@@ -153,23 +186,8 @@ class NioSocketChannel extends AbstractChannel
         }
 
         int interestOps = getRawInterestOps();
-        int writeBufferSize = this.writeBufferSize.get();
-        if (writeBufferSize != 0) {
-            if (highWaterMarkCounter.get() > 0) {
-                int lowWaterMark = getConfig().getWriteBufferLowWaterMark();
-                if (writeBufferSize >= lowWaterMark) {
-                    interestOps |= Channel.OP_WRITE;
-                } else {
-                    interestOps &= ~Channel.OP_WRITE;
-                }
-            } else {
-                int highWaterMark = getConfig().getWriteBufferHighWaterMark();
-                if (writeBufferSize >= highWaterMark) {
-                    interestOps |= Channel.OP_WRITE;
-                } else {
-                    interestOps &= ~Channel.OP_WRITE;
-                }
-            }
+        if (unwritable) {
+            interestOps |= Channel.OP_WRITE;
         } else {
             interestOps &= ~Channel.OP_WRITE;
         }
@@ -181,6 +199,18 @@ class NioSocketChannel extends AbstractChannel
         return super.getInterestOps();
     }
 
+    /**
+     * Returns the interest ops which have to be set to the selection key of
+     * this channel for the specified raw interest ops.  Must be called while
+     * holding {@link #interestOpsLock}.
+     */
+    int getKeyInterestOps(int rawInterestOps) {
+        if (readSuspensions > 0) {
+            return rawInterestOps & ~Channel.OP_READ;
+        }
+        return rawInterestOps;
+    }
+
     void setRawInterestOpsNow(int interestOps) {
         super.setInterestOpsNow(interestOps);
     }
@@ -194,12 +224,131 @@ class NioSocketChannel extends AbstractChannel
         }
     }
 
+    /**
+     * Called by the worker when the specified number of bytes were written
+     * out or the specified number of write requests were removed from the
+     * write buffer.
+     */
+    void writeBufferDrained(long bytes, int messages) {
+        if (bytes != 0) {
+            writeBufferSize.addAndGet(-bytes);
+        }
+        if (messages != 0) {
+            writeBufferMessages.addAndGet(-messages);
+        }
+        updateWritability();
+    }
+
+    private void updateWritability() {
+        if (unwritable) {
+            if (!isBelowLowWaterMark()) {
+                return;
+            }
+        } else if (!isAboveHighWaterMark()) {
+            return;
+        }
+
+        final boolean writable;
+        final long queuedBytes;
+        final int queuedMessages;
+        synchronized (writeBufferStateLock) {
+            // Check again - another thread might have made the transition.
+            if (unwritable) {
+                if (!isBelowLowWaterMark()) {
+                    return;
+                }
+                unwritable = false;
+            } else {
+                if (!isAboveHighWaterMark()) {
+                    return;
+                }
+                unwritable = true;
+            }
+            writable = !unwritable;
+            queuedBytes = writeBufferSize.get();
+            queuedMessages = writeBufferMessages.get();
+
+            if (writable) {
+                if (readSuspendedBySelf) {
+                    readSuspendedBySelf = false;
+                    worker.setReadSuspended(this, false);
+                }
+                Channel peer = readSuspendedPeer;
+                if (peer != null) {
+                    readSuspendedPeer = null;
+                    setReadSuspended(peer, false);
+                }
+            } else {
+                if (getConfig().isAutoSuspendRead()) {
+                    readSuspendedBySelf = true;
+                    worker.setReadSuspended(this, true);
+                }
+                Channel peer = getConfig().getBackpressurePeer();
+                if (peer != null && peer != this) {
+                    readSuspendedPeer = peer;
+                    setReadSuspended(peer, true);
+                }
+            }
+        }
+
+        if (!notifying.get()) {
+            notifying.set(Boolean.TRUE);
+            try {
+                fireChannelInterestChanged(this);
+                fireWriteBufferChanged(this, writable, queuedBytes, queuedMessages);
+            } finally {
+                notifying.set(Boolean.FALSE);
+            }
+        }
+    }
+
+    private boolean isAboveHighWaterMark() {
+        NioSocketChannelConfig config = getConfig();
+        if (writeBufferSize.get() >= config.getWriteBufferHighWaterMark()) {
+            return true;
+        }
+        int highWaterMarkMessages = config.getWriteBufferHighWaterMarkMessages();
+        return highWaterMarkMessages > 0 &&
+               writeBufferMessages.get() >= highWaterMarkMessages;
+    }
+
+    private boolean isBelowLowWaterMark() {
+        NioSocketChannelConfig config = getConfig();
+        long size = writeBufferSize.get();
+        if (size != 0 && size >= config.getWriteBufferLowWaterMark()) {
+            return false;
+        }
+        if (config.getWriteBufferHighWaterMarkMessages() <= 0) {
+            return true;
+        }
+        int messages = writeBufferMessages.get();
+        return messages == 0 || messages < config.getWriteBufferLowWaterMarkMessages();
+    }
+
+    private static void setReadSuspended(Channel channel, boolean suspended) {
+        if (channel instanceof NioSocketChannel) {
+            NioSocketChannel ch = (NioSocketChannel) channel;
+            ch.worker.setReadSuspended(ch, suspended);
+        } else {
+            channel.setReadable(!suspended);
+        }
+    }
+
+    static long getMessageSize(MessageEvent e) {
+        Object m = e.getMessage();
+        if (m instanceof ChannelBuffer) {
+            return ((ChannelBuffer) m).readableBytes();
+        }
+        if (m instanceof FileRegion) {
+            return ((FileRegion) m).getCount();
+        }
+        return 0;
+    }
+
     private final class WriteRequestQueue extends LinkedTransferQueue<MessageEvent> {
 
         private static final long serialVersionUID = -246694024103520626L;
 
-        private final ThreadLocalBoolean notifying = new ThreadLocalBoolean();
-
         WriteRequestQueue() {
             super();
         }
@@ -209,52 +358,11 @@ class NioSocketChannel extends AbstractChannel
             boolean success = super.offer(e);
             assert success;
 
-            int messageSize = getMessageSize(e);
-            int newWriteBufferSize = writeBufferSize.addAndGet(messageSize);
-            int highWaterMark = getConfig().getWriteBufferHighWaterMark();
-
-            if (newWriteBufferSize >= highWaterMark) {
-                if (newWriteBufferSize - messageSize < highWaterMark) {
-                    highWaterMarkCounter.incrementAndGet();
-                    if (!notifying.get()) {
-                        notifying.set(Boolean.TRUE);
-                        fireChannelInterestChanged(NioSocketChannel.this);
-                        notifying.set(Boolean.FALSE);
-                    }
-                }
-            }
+            writeBufferSize.addAndGet(getMessageSize(e));
+            writeBufferMessages.incrementAndGet();
+            updateWritability();
             return true;
         }
-
-        @Override
-        public MessageEvent poll() {
-            MessageEvent e = super.poll();
-            if (e != null) {
-                int messageSize = getMessageSize(e);
-                int newWriteBufferSize = writeBufferSize.addAndGet(-messageSize);
-                int lowWaterMark = getConfig().getWriteBufferLowWaterMark();
-
-                if (newWriteBufferSize == 0 || newWriteBufferSize < lowWaterMark) {
-                    if (newWriteBufferSize + messageSize >= lowWaterMark) {
-                        highWaterMarkCounter.decrementAndGet();
-                        if (!notifying.get()) {
-                            notifying.set(Boolean.TRUE);
-                            fireChannelInterestChanged(NioSocketChannel.this);
-                            notifying.set(Boolean.FALSE);
-                        }
-                    }
-                }
-            }
-            return e;
-        }
-
-        private int getMessageSize(MessageEvent e) {
-            Object m = e.getMessage();
-            if (m instanceof ChannelBuffer) {
-                return ((ChannelBuffer) m).readableBytes();
-            }
-            return 0;
-        }
     }
 
     private final class WriteTask implements Runnable {
@@ -16,14 +16,18 @@
 package org.jboss.netty.channel.socket.nio;
 
 import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.WritableByteChannel;
 
+import org.jboss.netty.buffer.PooledChannelBuffer;
 import org.jboss.netty.channel.AdaptiveReceiveBufferSizePredictor;
 import org.jboss.netty.channel.AdaptiveReceiveBufferSizePredictorFactory;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelConfig;
+import org.jboss.netty.channel.ChannelFutureListener;
 import org.jboss.netty.channel.ReceiveBufferSizePredictor;
 import org.jboss.netty.channel.ReceiveBufferSizePredictorFactory;
+import org.jboss.netty.channel.WriteBufferEvent;
 import org.jboss.netty.channel.socket.SocketChannel;
 import org.jboss.netty.channel.socket.SocketChannelConfig;
 
@@ -44,14 +48,49 @@ import org.jboss.netty.channel.socket.SocketChannelConfig;
  * </tr><tr>
  * <td>{@code "writeBufferLowWaterMark"}</td><td>{@link #setWriteBufferLowWaterMark(int)}</td>
  * </tr><tr>
+ * <td>{@code "writeBufferHighWaterMarkMessages"}</td><td>{@link #setWriteBufferHighWaterMarkMessages(int)}</td>
+ * </tr><tr>
+ * <td>{@code "writeBufferLowWaterMarkMessages"}</td><td>{@link #setWriteBufferLowWaterMarkMessages(int)}</td>
+ * </tr><tr>
+ * <td>{@code "autoSuspendRead"}</td><td>{@link #setAutoSuspendRead(boolean)}</td>
+ * </tr><tr>
+ * <td>{@code "backpressurePeer"}</td><td>{@link #setBackpressurePeer(Channel)}</td>
+ * </tr><tr>
  * <td>{@code "writeSpinCount"}</td><td>{@link #setWriteSpinCount(int)}</td>
  * </tr><tr>
+ * <td>{@code "gatheringWriteMaxBytes"}</td><td>{@link #setGatheringWriteMaxBytes(int)}</td>
+ * </tr><tr>
+ * <td>{@code "gatheringWriteMaxBuffers"}</td><td>{@link #setGatheringWriteMaxBuffers(int)}</td>
+ * </tr><tr>
+ * <td>{@code "releaseWrittenBuffers"}</td><td>{@link #setReleaseWrittenBuffers(boolean)}</td>
+ * </tr><tr>
  * <td>{@code "receiveBufferSizePredictor"}</td><td>{@link #setReceiveBufferSizePredictor(ReceiveBufferSizePredictor)}</td>
  * </tr><tr>
  * <td>{@code "receiveBufferSizePredictorFactory"}</td><td>{@link #setReceiveBufferSizePredictorFactory(ReceiveBufferSizePredictorFactory)}</td>
  * </tr>
  * </table>
  *
+ * <h3>Backpressure</h3>
+ *
+ * A {@link Channel} becomes unwritable when its write buffer reaches either
+ * of its high water marks, and becomes writable again when the write buffer
+ * drops below both of its low water marks.  The write buffer includes the
+ * write requests which are being written, and the bytes are counted until
+ * they are actually written to the socket.  On each transition a
+ * {@link WriteBufferEvent} is sent upstream with the size of the write buffer
+ * at that moment, after the usual {@code "channelInterestChanged"} event.
+ * <p>
+ * By default, nothing stops a handler from writing to an unwritable
+ * {@link Channel}.  To keep the memory usage bounded when the remote peer
+ * reads slowly, {@linkplain #setAutoSuspendRead(boolean) auto-suspend-read}
+ * stops reading from the {@link Channel} while it is unwritable, which is
+ * what a request-response server needs.  A proxy, which writes what it reads
+ * from one {@link Channel} to another, can make the reading side stop instead
+ * by setting it as the {@linkplain #setBackpressurePeer(Channel) backpressure peer}
+ * of the writing side.  The reading is suspended independently from
+ * {@link Channel#setReadable(boolean)}; a {@link Channel} is read only when
+ * neither suspends it.
+ *
  * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
  * @author <a href="http://gleamynode.net/">Trustin Lee</a>
  *
@@ -91,6 +130,70 @@ public interface NioSocketChannelConfig extends SocketChannelConfig {
      */
     void setWriteBufferLowWaterMark(int writeBufferLowWaterMark);
 
+    /**
+     * Returns the high water mark of the write buffer in the number of write
+     * requests.  {@code 0} means no limit, which is the default.
+     */
+    int getWriteBufferHighWaterMarkMessages();
+
+    /**
+     * Sets the high water mark of the write buffer in the number of write
+     * requests.  If the number of queued write requests reaches this value,
+     * {@link Channel#isWritable()} will start to return {@code false} even if
+     * the {@linkplain #setWriteBufferHighWaterMark(int) high water mark in
+     * bytes} has not been reached.  It is useful when a lot of small messages
+     * are written.  {@code 0} means no limit.
+     */
+    void setWriteBufferHighWaterMarkMessages(int writeBufferHighWaterMarkMessages);
+
+    /**
+     * Returns the low water mark of the write buffer in the number of write
+     * requests.  The default value is {@code 0}.
+     */
+    int getWriteBufferLowWaterMarkMessages();
+
+    /**
+     * Sets the low water mark of the write buffer in the number of write
+     * requests.  Once the write buffer reached a high water mark, the number
+     * of queued write requests must drop below this value (or to {@code 0})
+     * as well before {@link Channel#isWritable()} returns {@code true} again.
+     * It has no effect if the
+     * {@linkplain #setWriteBufferHighWaterMarkMessages(int) high water mark in
+     * messages} is {@code 0}.
+     */
+    void setWriteBufferLowWaterMarkMessages(int writeBufferLowWaterMarkMessages);
+
+    /**
+     * Returns {@code true} if and only if the reading from the
+     * {@link Channel} is suspended automatically while the {@link Channel} is
+     * not writable.  The default value is {@code false}.
+     */
+    boolean isAutoSuspendRead();
+
+    /**
+     * Sets whether the reading from the {@link Channel} is suspended
+     * automatically while the {@link Channel} is not writable, so that a slow
+     * reader on the other side cannot make the write buffer grow without
+     * bounds.
+     */
+    void setAutoSuspendRead(boolean autoSuspendRead);
+
+    /**
+     * Returns the {@link Channel} whose reading is suspended while the
+     * {@link Channel} of this configuration is not writable.
+     *
+     * @return the peer {@link Channel}, or {@code null} if not set
+     */
+    Channel getBackpressurePeer();
+
+    /**
+     * Sets the {@link Channel} whose reading is suspended while the
+     * {@link Channel} of this configuration is not writable, for example the
+     * inbound {@link Channel} of a proxy which relays what it reads to the
+     * {@link Channel} of this configuration.  {@code null} removes the peer.
+     */
+    void setBackpressurePeer(Channel backpressurePeer);
+
     /**
      * Returns the maximum loop count for a write operation until
      * {@link WritableByteChannel#write(ByteBuffer)} returns a non-zero value.
@@ -112,10 +215,75 @@ public interface NioSocketChannelConfig extends SocketChannelConfig {
      */
     void setWriteSpinCount(int writeSpinCount);
 
+    /**
+     * Returns the maximum number of bytes which are taken from the write
+     * buffer and written with a single
+     * {@link GatheringByteChannel#write(ByteBuffer[], int, int)} call.
+     * The default value is {@code 262144}.
+     */
+    int getGatheringWriteMaxBytes();
+
+    /**
+     * Sets the maximum number of bytes which are taken from the write
+     * buffer and written with a single
+     * {@link GatheringByteChannel#write(ByteBuffer[], int, int)} call.
+     * A write request which exceeds the limit by itself is still written
+     * as a whole.  The default value is {@code 262144}.
+     *
+     * @throws IllegalArgumentException
+     *         if the specified value is {@code 0} or less than {@code 0}
+     */
+    void setGatheringWriteMaxBytes(int gatheringWriteMaxBytes);
+
+    /**
+     * Returns the maximum number of {@link ByteBuffer}s which are written
+     * with a single {@link GatheringByteChannel#write(ByteBuffer[], int, int)}
+     * call.  The default value is {@code 64}.
+     */
+    int getGatheringWriteMaxBuffers();
+
+    /**
+     * Sets the maximum number of {@link ByteBuffer}s which are written
+     * with a single {@link GatheringByteChannel#write(ByteBuffer[], int, int)}
+     * call.  Each component of a composite buffer counts as one buffer.
+     * {@code 1} disables gathering writes, making the write buffer flushed
+     * one message at a time.  The default value is {@code 64}.
+     *
+     * @throws IllegalArgumentException
+     *         if the specified value is {@code 0} or less than {@code 0}
+     */
+    void setGatheringWriteMaxBuffers(int gatheringWriteMaxBuffers);
+
+    /**
+     * Returns {@code true} if and only if the I/O worker releases every
+     * written {@link PooledChannelBuffer} once its write operation is
+     * complete or failed.  The default value is {@code false}.
+     */
+    boolean isReleaseWrittenBuffers();
+
+    /**
+     * Sets whether the I/O worker releases every written
+     * {@link PooledChannelBuffer} once its write operation is complete or
+     * failed.  If {@code true}, the ownership of a written buffer is passed
+     * to the I/O worker, which means the buffer must not be accessed after
+     * the write, and a buffer written more than once, for example to more
+     * than one channel, must be {@linkplain PooledChannelBuffer#retain() retained}
+     * once more for each extra write.  If {@code false}, the writer remains
+     * responsible for releasing the buffer, usually in a
+     * {@link ChannelFutureListener} of the write.  The default value is
+     * {@code false}.
+     */
+    void setReleaseWrittenBuffers(boolean releaseWrittenBuffers);
+
     /**
      * Returns the {@link ReceiveBufferSizePredictor} which predicts the
      * number of readable bytes in the socket receive buffer.  The default
      * predictor is <tt>{@link AdaptiveReceiveBufferSizePredictor}(64, 1024, 65536)</tt>.
+     * <p>
+     * Unless a predictor or a predictor factory was set explicitly, the I/O
+     * worker does not use the predictor of each channel but one
+     * <tt>{@link AdaptiveReceiveBufferSizePredictor}(64, 1024, 65536)</tt>
+     * which learns from all the channels it serves.
      */
     ReceiveBufferSizePredictor getReceiveBufferSizePredictor();
 
@@ -38,6 +38,7 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelException;
 import org.jboss.netty.channel.ChannelFuture;
@@ -49,6 +50,7 @@ import org.jboss.netty.logging.InternalLoggerFactory;
 import org.jboss.netty.util.ThreadRenamingRunnable;
 import org.jboss.netty.util.internal.IoWorkerRunnable;
 import org.jboss.netty.util.internal.LinkedTransferQueue;
+import org.jboss.netty.util.internal.WorkerTimer;
 
 /**
  *
@@ -81,8 +83,23 @@ class NioWorker implements Runnable {
     private final Queue<Runnable> writeTaskQueue = new LinkedTransferQueue<Runnable>();
     private volatile int cancelledKeys; // should use AtomicInteger but we just need approximation
 
-    private final SocketReceiveBufferPool recvBufferPool = new SocketReceiveBufferPool();
+    private final SocketReceiveBufferAllocator recvBufferAllocator = new SocketReceiveBufferAllocator();
     private final SocketSendBufferPool sendBufferPool = new SocketSendBufferPool();
+    private ByteBuffer[] gatheredBuffers = new ByteBuffer[0];
+    final DefaultNioWorkerMetrics metrics;
+
+    /**
+     * The timer which is updated from the selector loop.  It is used by the
+     * timeout handlers instead of a shared {@link org.jboss.netty.util.Timer}.
+     */
+    final WorkerTimer timer = new WorkerTimer(new Runnable() {
+        public void run() {
+            Selector selector = NioWorker.this.selector;
+            if (selector != null && wakenUp.compareAndSet(false, true)) {
+                selector.wakeup();
+            }
+        }
+    });
 
     NioWorker(int bossId, int id, Executor executor) {
 		try {//我加上的
@@ -93,6 +110,7 @@ class NioWorker implements Runnable {
         this.bossId = bossId;
         this.id = id;
         this.executor = executor;
+        metrics = new DefaultNioWorkerMetrics(this, bossId, id);
 
 		}finally{//我加上的
 		DEBUG.P(0,this,"NioWorker(3)");
@@ -173,6 +191,7 @@ class NioWorker implements Runnable {
 		DEBUG.P(this,"run()");
 
         thread = Thread.currentThread();
+        timer.setThread(thread);
 		DEBUG.P("thread="+thread);
 		DEBUG.P("CONSTRAINT_LEVEL="+CONSTRAINT_LEVEL);
 
@@ -189,7 +208,12 @@ class NioWorker implements Runnable {
             }
 
             try {
-                SelectorUtil.select(selector);
+                long selectStartTime = System.nanoTime();
+                SelectorUtil.select(
+                        selector, timer.getSelectTimeout(SelectorUtil.SELECT_TIMEOUT));
+                metrics.selected(
+                        selector.selectedKeys().size(),
+                        System.nanoTime() - selectStartTime);
 
                 // 'wakenUp.compareAndSet(false, true)' is always evaluated
                 // before calling 'selector.wakeup()' to reduce the wake-up
@@ -227,6 +251,7 @@ class NioWorker implements Runnable {
                 processRegisterTaskQueue();
                 processWriteTaskQueue();
                 processSelectedKeys(selector.selectedKeys());
+                timer.expireTimeouts();
 
                 // Exit the loop when there's nothing to handle.
                 // The shutdown flag is used to delay the shutdown of this
@@ -240,6 +265,7 @@ class NioWorker implements Runnable {
                         synchronized (startStopLock) {
                             if (registerTaskQueue.isEmpty() && selector.keys().isEmpty()) {
                                 started = false;
+                                timer.setThread(null);
                                 try {
                                     selector.close();
                                 } catch (IOException e) {
@@ -342,6 +368,7 @@ class NioWorker implements Runnable {
         if (cancelledKeys >= CLEANUP_INTERVAL) {
             cancelledKeys = 0;
             selector.selectNow();
+            metrics.cancelledKeysCleanedUp();
             return true;
         }
         return false;
@@ -358,16 +385,33 @@ class NioWorker implements Runnable {
 		DEBUG.P("channel="+channel);
 
         final ReceiveBufferSizePredictor predictor =
-            channel.getConfig().getReceiveBufferSizePredictor();
+            recvBufferAllocator.getPredictor(channel);
         final int predictedRecvBufSize = predictor.nextReceiveBufferSize();
+        final ChannelBufferFactory bufferFactory =
+            channel.getConfig().getBufferFactory();
+        final boolean readDirectly =
+            SocketReceiveBufferAllocator.isReadableDirectly(bufferFactory);
 
         int ret = 0;
         int readBytes = 0;
+        int readCount = 0;
         boolean failure = true;
 
-        ByteBuffer bb = recvBufferPool.acquire(predictedRecvBufSize);
+        ChannelBuffer buffer = null;
+        ByteBuffer bb;
+        if (readDirectly) {
+            buffer = bufferFactory.getBuffer(predictedRecvBufSize);
+            bb = buffer.toByteBuffer(0, buffer.capacity());
+        } else {
+            bb = recvBufferAllocator.acquire(predictedRecvBufSize);
+        }
         try {
-            while ((ret = ch.read(bb)) > 0) {
+            for (;;) {
+                readCount ++;
+                ret = ch.read(bb);
+                if (ret <= 0) {
+                    break;
+                }
                 readBytes += ret;
                 if (!bb.hasRemaining()) {
                     break;
@@ -379,26 +423,34 @@ class NioWorker implements Runnable {
         } catch (Throwable t) {
             fireExceptionCaught(channel, t);
         }
+        metrics.read(channel, readBytes, readCount);
 
 		DEBUG.P("readBytes="+readBytes);
 
         if (readBytes > 0) {
-            bb.flip();
-
-            final ChannelBufferFactory bufferFactory =
-                channel.getConfig().getBufferFactory();
-            final ChannelBuffer buffer = bufferFactory.getBuffer(
-                    bb.order(bufferFactory.getDefaultOrder()));
-
-            recvBufferPool.release(bb);
+            if (readDirectly) {
+                buffer.writerIndex(readBytes);
+                if (SocketReceiveBufferAllocator.isMostlyUnused(buffer.capacity(), readBytes)) {
+                    // Copy into a smaller buffer not to pin the large one.
+                    ChannelBuffer large = buffer;
+                    buffer = bufferFactory.getBuffer(readBytes);
+                    buffer.writeBytes(large);
+                    ChannelBuffers.release(large);
+                }
+            } else {
+                // Copy into a new buffer; the shared one is reused by the next read.
+                bb.flip();
+                buffer = bufferFactory.getBuffer(readBytes);
+                buffer.writeBytes(bb);
+            }
 
             // Update the predictor.
             predictor.previousReceiveBufferSize(readBytes);
 
             // Fire the event.
             fireMessageReceived(channel, buffer);
-        } else {
-            recvBufferPool.release(bb);
+        } else if (readDirectly) {
+            ChannelBuffers.release(buffer);
         }
 
         if (ret < 0 || failure) {
@@ -418,6 +470,14 @@ class NioWorker implements Runnable {
         close(ch, succeededFuture(ch));
     }
 
+    int getWriteTaskQueueSize() {
+        return writeTaskQueue.size();
+    }
+
+    int getRegisterTaskQueueSize() {
+        return registerTaskQueue.size();
+    }
+
     void writeFromUserCode(final NioSocketChannel channel) {
 		try {//我加上的
 		DEBUG.P(this,"writeFromUserCode(1)");
@@ -506,58 +566,100 @@ class NioWorker implements Runnable {
 
         long writtenBytes = 0;
 
-        final SocketSendBufferPool sendBufferPool = this.sendBufferPool;
         final SocketChannel ch = channel.socket;
-        final Queue<MessageEvent> writeBuffer = channel.writeBuffer;
-        final int writeSpinCount = channel.getConfig().getWriteSpinCount();
+        final NioSocketChannelConfig config = channel.getConfig();
+        final int writeSpinCount = config.getWriteSpinCount();
+        final int gatheringWriteMaxBytes = config.getGatheringWriteMaxBytes();
+        final int gatheringWriteMaxBuffers = config.getGatheringWriteMaxBuffers();
+        ByteBuffer[] gathered = this.gatheredBuffers;
+        if (gathered.length < gatheringWriteMaxBuffers) {
+            this.gatheredBuffers = gathered = new ByteBuffer[gatheringWriteMaxBuffers];
+        }
+
         synchronized (channel.writeLock) {
             channel.inWriteNowLoop = true;
             for (;;) {
-                MessageEvent evt = channel.currentWriteEvent;
-                SendBuffer buf;
-                if (evt == null) {
-                    if ((channel.currentWriteEvent = evt = writeBuffer.poll()) == null) {
-                        removeOpWrite = true;
-                        channel.writeSuspended = false;
-                        break;
-                    }
+                pollWriteRequests(channel, gatheringWriteMaxBytes, gatheringWriteMaxBuffers);
+                if (channel.currentWriteCount == 0) {
+                    removeOpWrite = true;
+                    channel.writeSuspended = false;
+                    break;
+                }
 
-                    channel.currentWriteBuffer = buf = sendBufferPool.acquire(evt.getMessage());
-                } else {
-                    buf = channel.currentWriteBuffer;
+                final SendBuffer[] bufs = channel.currentWriteBuffers;
+                final SendBuffer head = bufs[0];
+
+                // Put as many buffers as possible into a single gathering
+                // write.  A file region or a composite buffer which does not
+                // fit is written alone when it becomes the head.
+                int gatheredCount = 0;
+                int attempted = 0;
+                if (gatheringWriteMaxBuffers > 1) {
+                    while (attempted < channel.currentWriteCount) {
+                        int nextCount = bufs[attempted].gather(
+                                gathered, gatheredCount);
+                        if (nextCount < 0) {
+                            break;
+                        }
+                        gatheredCount = nextCount;
+                        attempted ++;
+                    }
+                }
+                if (attempted == 0) {
+                    attempted = 1;
                 }
 
-                ChannelFuture future = evt.getFuture();
                 try {
+                    final long headWrittenBytes = head.writtenBytes();
                     long localWrittenBytes = 0;
+                    int writeCount = 0;
+                    int zeroByteWriteCount = 0;
                     for (int i = writeSpinCount; i > 0; i --) {
-                        localWrittenBytes = buf.transferTo(ch);
+                        if (gatheredCount > 1) {
+                            localWrittenBytes = ch.write(gathered, 0, gatheredCount);
+                        } else if (gatheredCount == 1) {
+                            localWrittenBytes = ch.write(gathered[0]);
+                        } else {
+                            localWrittenBytes = head.transferTo(ch);
+                        }
+                        writeCount ++;
                         if (localWrittenBytes != 0) {
                             writtenBytes += localWrittenBytes;
                             break;
                         }
-                        if (buf.finished()) {
+                        zeroByteWriteCount ++;
+                        if (head.finished()) {
                             break;
                         }
                     }
 
-                    if (buf.finished()) {
-                        // Successful write - proceed to the next message.
-                        buf.release();
-                        channel.currentWriteEvent = null;
-                        channel.currentWriteBuffer = null;
-                        evt = null;
-                        buf = null;
-                        future.setSuccess();
-                    } else {
+                    // Record the metrics before the futures are notified so
+                    // that whoever waits for a future finds them up to date.
+                    metrics.written(
+                            channel, localWrittenBytes, writeCount, zeroByteWriteCount,
+                            channel.writeBufferSize.get() - localWrittenBytes);
+
+                    // Notify the futures of the requests written fully.
+                    int finished = 0;
+                    while (finished < attempted && bufs[finished].finished()) {
+                        finished ++;
+                    }
+                    removeWriteRequests(channel, finished, localWrittenBytes, null);
+
+                    if (finished < attempted) {
                         // Not written fully - perhaps the kernel buffer is full.
                         addOpWrite = true;
                         channel.writeSuspended = true;
 
-                        if (localWrittenBytes > 0) {
+                        SendBuffer buf = channel.currentWriteBuffers[0];
+                        long headLocalWrittenBytes = buf.writtenBytes();
+                        if (finished == 0) {
+                            headLocalWrittenBytes -= headWrittenBytes;
+                        }
+                        if (headLocalWrittenBytes > 0) {
                             // Notify progress listeners if necessary.
-                            future.setProgress(
-                                    localWrittenBytes,
+                            channel.currentWriteEvents[0].getFuture().setProgress(
+                                    headLocalWrittenBytes,
                                     buf.writtenBytes(), buf.totalBytes());
                         }
                         break;
@@ -565,17 +667,16 @@ class NioWorker implements Runnable {
                 } catch (AsynchronousCloseException e) {
                     // Doesn't need a user attention - ignore.
                 } catch (Throwable t) {
-                    buf.release();
-                    channel.currentWriteEvent = null;
-                    channel.currentWriteBuffer = null;
-                    buf = null;
-                    evt = null;
-                    future.setFailure(t);
+                    removeWriteRequests(channel, 1, 0, t);
                     fireExceptionCaught(channel, t);
                     if (t instanceof IOException) {
                         open = false;
                         close(channel, succeededFuture(channel));
                     }
+                } finally {
+                    for (int i = 0; i < gatheredCount; i ++) {
+                        gathered[i] = null;
+                    }
                 }
             }
             channel.inWriteNowLoop = false;
@@ -596,6 +697,125 @@ class NioWorker implements Runnable {
 		}
     }
 
+    /**
+     * Moves the write requests from the write buffer of the specified channel
+     * to its current write requests until the specified limits are reached.
+     * Nothing is polled after a request which cannot be gathered.
+     */
+    private void pollWriteRequests(
+            NioSocketChannel channel, int maxBytes, int maxRequests) {
+        final Queue<MessageEvent> writeBuffer = channel.writeBuffer;
+        int count = channel.currentWriteCount;
+        if (count > 0 && !(channel.currentWriteEvents[count - 1].getMessage() instanceof ChannelBuffer)) {
+            return;
+        }
+
+        long pendingBytes = 0;
+        for (int i = 0; i < count; i ++) {
+            SendBuffer buf = channel.currentWriteBuffers[i];
+            pendingBytes += buf.totalBytes() - buf.writtenBytes();
+        }
+
+        while (count < maxRequests && pendingBytes < maxBytes) {
+            MessageEvent evt = writeBuffer.poll();
+            if (evt == null) {
+                break;
+            }
+
+            SendBuffer buf;
+            try {
+                buf = sendBufferPool.acquire(evt.getMessage());
+            } catch (Throwable t) {
+                channel.writeBufferDrained(NioSocketChannel.getMessageSize(evt), 1);
+                releaseWrittenMessage(channel, evt.getMessage());
+                evt.getFuture().setFailure(t);
+                fireExceptionCaught(channel, t);
+                continue;
+            }
+
+            if (count == channel.currentWriteEvents.length) {
+                int newLength = count << 1;
+                MessageEvent[] newEvents = new MessageEvent[newLength];
+                SendBuffer[] newBuffers = new SendBuffer[newLength];
+                System.arraycopy(channel.currentWriteEvents, 0, newEvents, 0, count);
+                System.arraycopy(channel.currentWriteBuffers, 0, newBuffers, 0, count);
+                channel.currentWriteEvents = newEvents;
+                channel.currentWriteBuffers = newBuffers;
+            }
+            channel.currentWriteEvents[count] = evt;
+            channel.currentWriteBuffers[count] = buf;
+            channel.currentWriteCount = ++ count;
+
+            if (!(evt.getMessage() instanceof ChannelBuffer)) {
+                break;
+            }
+            pendingBytes += buf.totalBytes();
+        }
+    }
+
+    /**
+     * Removes the specified number of the current write requests of the
+     * specified channel, notifying their futures of the success or the
+     * specified failure, and updates the size of the write buffer by the
+     * specified number of the bytes written just now.  The unwritten bytes
+     * of the failed requests are removed from the write buffer as well.
+     */
+    private static void removeWriteRequests(
+            NioSocketChannel channel, int n, long writtenBytes, Throwable cause) {
+        if (n == 0) {
+            if (writtenBytes != 0) {
+                channel.writeBufferDrained(writtenBytes, 0);
+            }
+            return;
+        }
+
+        final MessageEvent[] events = channel.currentWriteEvents;
+        final SendBuffer[] bufs = channel.currentWriteBuffers;
+        final int count = channel.currentWriteCount;
+        long drainedBytes = writtenBytes;
+        for (int i = 0; i < n; i ++) {
+            MessageEvent evt = events[i];
+            if (cause != null) {
+                drainedBytes += bufs[i].totalBytes() - bufs[i].writtenBytes();
+            }
+            bufs[i].release();
+            releaseWrittenMessage(channel, evt.getMessage());
+            if (cause == null) {
+                evt.getFuture().setSuccess();
+            } else {
+                evt.getFuture().setFailure(cause);
+            }
+        }
+
+        System.arraycopy(events, n, events, 0, count - n);
+        System.arraycopy(bufs, n, bufs, 0, count - n);
+        for (int i = count - n; i < count; i ++) {
+            events[i] = null;
+            bufs[i] = null;
+        }
+        channel.currentWriteCount = count - n;
+        channel.writeBufferDrained(drainedBytes, n);
+    }
+
+    /**
+     * Releases the specified message whose write operation is complete or
+     * failed, if the {@code "releaseWrittenBuffers"} option of the specified
+     * channel is {@code true}.
+     */
+    private static void releaseWrittenMessage(NioSocketChannel channel, Object message) {
+        if (!channel.getConfig().isReleaseWrittenBuffers()) {
+            return;
+        }
+        try {
+            ChannelBuffers.release(message);
+        } catch (IllegalStateException e) {
+            logger.warn(
+                    "A written buffer was released already.  Retain a buffer " +
+                    "once more for each extra write when " +
+                    "'releaseWrittenBuffers' is enabled.", e);
+        }
+    }
+
     private void setOpWrite(NioSocketChannel channel) {
         Selector selector = this.selector;
         SelectionKey key = channel.socket.keyFor(selector);
@@ -615,7 +835,7 @@ class NioWorker implements Runnable {
             interestOps = channel.getRawInterestOps();
             if ((interestOps & SelectionKey.OP_WRITE) == 0) {
                 interestOps |= SelectionKey.OP_WRITE;
-                key.interestOps(interestOps);
+                key.interestOps(channel.getKeyInterestOps(interestOps));
                 changed = true;
             }
         }
@@ -644,7 +864,7 @@ class NioWorker implements Runnable {
             interestOps = channel.getRawInterestOps();
             if ((interestOps & SelectionKey.OP_WRITE) != 0) {
                 interestOps &= ~SelectionKey.OP_WRITE;
-                key.interestOps(interestOps);
+                key.interestOps(channel.getKeyInterestOps(interestOps));
                 changed = true;
             }
         }
@@ -702,8 +922,7 @@ class NioWorker implements Runnable {
 
         // Clean up the stale messages in the write buffer.
         synchronized (channel.writeLock) {
-            MessageEvent evt = channel.currentWriteEvent;
-            if (evt != null) {
+            if (channel.currentWriteCount != 0) {
                 // Create the exception only once to avoid the excessive overhead
                 // caused by fillStackTrace.
                 if (channel.isOpen()) {
@@ -712,12 +931,7 @@ class NioWorker implements Runnable {
                     cause = new ClosedChannelException();
                 }
 
-                ChannelFuture future = evt.getFuture();
-                channel.currentWriteBuffer.release();
-                channel.currentWriteBuffer = null;
-                channel.currentWriteEvent = null;
-                evt = null;
-                future.setFailure(cause);
+                removeWriteRequests(channel, channel.currentWriteCount, 0, cause);
                 fireExceptionCaught = true;
             }
 
@@ -733,14 +947,20 @@ class NioWorker implements Runnable {
                     }
                 }
 
+                long drainedBytes = 0;
+                int drainedMessages = 0;
                 for (;;) {
-                    evt = writeBuffer.poll();
+                    MessageEvent evt = writeBuffer.poll();
                     if (evt == null) {
                         break;
                     }
+                    drainedBytes += NioSocketChannel.getMessageSize(evt);
+                    drainedMessages ++;
+                    releaseWrittenMessage(channel, evt.getMessage());
                     evt.getFuture().setFailure(cause);
                     fireExceptionCaught = true;
                 }
+                channel.writeBufferDrained(drainedBytes, drainedMessages);
             }
         }
 
@@ -770,39 +990,9 @@ class NioWorker implements Runnable {
                 interestOps &= ~Channel.OP_WRITE;
                 interestOps |= channel.getRawInterestOps() & Channel.OP_WRITE;
 
-                switch (CONSTRAINT_LEVEL) {
-                case 0:
-                    if (channel.getRawInterestOps() != interestOps) {
-                        key.interestOps(interestOps);
-                        if (Thread.currentThread() != thread &&
-                            wakenUp.compareAndSet(false, true)) {
-                            selector.wakeup();
-                        }
-                        changed = true;
-                    }
-                    break;
-                case 1:
-                case 2:
-                    if (channel.getRawInterestOps() != interestOps) {
-                        if (Thread.currentThread() == thread) {
-                            key.interestOps(interestOps);
-                            changed = true;
-                        } else {
-                            selectorGuard.readLock().lock();
-                            try {
-                                if (wakenUp.compareAndSet(false, true)) {
-                                    selector.wakeup();
-                                }
-                                key.interestOps(interestOps);
-                                changed = true;
-                            } finally {
-                                selectorGuard.readLock().unlock();
-                            }
-                        }
-                    }
-                    break;
-                default:
-                    throw new Error();
+                if (channel.getRawInterestOps() != interestOps) {
+                    setKeyInterestOps(key, channel.getKeyInterestOps(interestOps));
+                    changed = true;
                 }
             }
 
@@ -822,6 +1012,69 @@ class NioWorker implements Runnable {
         }
     }
 
+    /**
+     * Suspends or resumes the reading from the specified channel regardless
+     * of its interest ops.  The reading is resumed when it has been resumed
+     * as many times as it has been suspended.
+     */
+    void setReadSuspended(NioSocketChannel channel, boolean suspended) {
+        synchronized (channel.interestOpsLock) {
+            boolean wasSuspended = channel.readSuspensions > 0;
+            channel.readSuspensions += suspended? 1 : -1;
+            if (wasSuspended == channel.readSuspensions > 0) {
+                return;
+            }
+
+            Selector selector = this.selector;
+            SelectionKey key = channel.socket.keyFor(selector);
+            if (key == null || selector == null) {
+                // Not registered to the worker yet - RegisterTask will pick it up.
+                return;
+            }
+
+            try {
+                setKeyInterestOps(
+                        key, channel.getKeyInterestOps(channel.getRawInterestOps()));
+            } catch (CancelledKeyException e) {
+                // Closed already - nothing to suspend or resume.
+            }
+        }
+    }
+
+    /**
+     * Sets the interest ops of the specified key, waking up the selector if
+     * necessary so that the change takes effect immediately.
+     */
+    private void setKeyInterestOps(SelectionKey key, int interestOps) {
+        switch (CONSTRAINT_LEVEL) {
+        case 0:
+            key.interestOps(interestOps);
+            if (Thread.currentThread() != thread &&
+                wakenUp.compareAndSet(false, true)) {
+                selector.wakeup();
+            }
+            break;
+        case 1:
+        case 2:
+            if (Thread.currentThread() == thread) {
+                key.interestOps(interestOps);
+            } else {
+                selectorGuard.readLock().lock();
+                try {
+                    if (wakenUp.compareAndSet(false, true)) {
+                        selector.wakeup();
+                    }
+                    key.interestOps(interestOps);
+                } finally {
+                    selectorGuard.readLock().unlock();
+                }
+            }
+            break;
+        default:
+            throw new Error();
+        }
+    }
+
 	//当新建立通道时，会生成一个注册任务，
 	//通道分两种：NioAcceptedSocketChannel和NioClientSocketChannel
     private final class RegisterTask implements Runnable {
@@ -875,7 +1128,9 @@ class NioWorker implements Runnable {
 					//selector是NioWorker的,
 					//channel当成附件
                     channel.socket.register(
-                            selector, channel.getRawInterestOps(), channel);
+                            selector,
+                            channel.getKeyInterestOps(channel.getRawInterestOps()),
+                            channel);
                 }
 
 				DEBUG.P("future="+future);
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Registers the {@link NioWorkerMetrics} of the I/O worker threads to an
+ * {@link MBeanServer}, so that they can be monitored with any JMX client.
+ * <pre>
+ * {@link NioServerSocketChannelFactory} factory = ...;
+ * ObjectName[] names = NioWorkerMBeans.register("http", factory.getWorkerMetrics());
+ * ...
+ * NioWorkerMBeans.unregister(names);
+ * </pre>
+ * Each worker is registered as
+ * {@code org.jboss.netty:type=NioWorker,name="<name>",boss=<bossId>,worker=<workerId>}.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public final class NioWorkerMBeans {
+
+    /**
+     * The domain of the registered MBeans.
+     */
+    public static final String DOMAIN = "org.jboss.netty";
+
+    /**
+     * Registers the specified workers to the platform {@link MBeanServer}.
+     *
+     * @param name the name which tells the workers of a factory from the
+     *             workers of the other factories
+     *
+     * @return the names of the registered MBeans
+     */
+    public static ObjectName[] register(
+            String name, NioWorkerMetrics[] workers) throws JMException {
+        return register(ManagementFactory.getPlatformMBeanServer(), name, workers);
+    }
+
+    /**
+     * Registers the specified workers to the specified {@link MBeanServer}.
+     * If one of the workers fails to be registered, the workers registered
+     * so far are unregistered.
+     *
+     * @param name the name which tells the workers of a factory from the
+     *             workers of the other factories
+     *
+     * @return the names of the registered MBeans
+     */
+    public static ObjectName[] register(
+            MBeanServer server, String name, NioWorkerMetrics[] workers) throws JMException {
+        if (server == null) {
+            throw new NullPointerException("server");
+        }
+        if (name == null) {
+            throw new NullPointerException("name");
+        }
+        if (workers == null) {
+            throw new NullPointerException("workers");
+        }
+
+        ObjectName[] names = new ObjectName[workers.length];
+        boolean success = false;
+        try {
+            for (int i = 0; i < workers.length; i ++) {
+                NioWorkerMetrics w = workers[i];
+                ObjectName objectName = new ObjectName(
+                        DOMAIN + ":type=NioWorker,name=" + ObjectName.quote(name) +
+                        ",boss=" + w.getBossId() + ",worker=" + w.getWorkerId());
+                server.registerMBean(
+                        new StandardMBean(w, NioWorkerMetrics.class), objectName);
+                names[i] = objectName;
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                unregister(server, names);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Unregisters the specified MBeans from the platform {@link MBeanServer}.
+     */
+    public static void unregister(ObjectName[] names) throws JMException {
+        unregister(ManagementFactory.getPlatformMBeanServer(), names);
+    }
+
+    /**
+     * Unregisters the specified MBeans from the specified {@link MBeanServer}.
+     * The MBeans which were unregistered already are ignored.
+     */
+    public static void unregister(MBeanServer server, ObjectName[] names) throws JMException {
+        for (ObjectName n: names) {
+            if (n == null) {
+                continue;
+            }
+            try {
+                server.unregisterMBean(n);
+            } catch (InstanceNotFoundException e) {
+                // Unregistered already.
+            }
+        }
+    }
+
+    private NioWorkerMBeans() {
+        // Unused
+    }
+}
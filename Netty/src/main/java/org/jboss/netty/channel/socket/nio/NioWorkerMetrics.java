@@ -0,0 +1,128 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import org.jboss.netty.channel.Channel;
+
+/**
+ * The statistics of an I/O worker thread of {@link NioServerSocketChannelFactory}
+ * or {@link NioClientSocketChannelFactory}.  The counters are updated all the
+ * time with a negligible overhead, and they are never reset.  A monitoring
+ * tool is supposed to sample them periodically and compare the samples.
+ * They are available as the attributes of the MBeans registered by
+ * {@link NioWorkerMBeans} as well.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public interface NioWorkerMetrics {
+
+    /**
+     * Returns the ID of the boss which owns the worker, which is the first
+     * number in the name of the worker thread.
+     */
+    int getBossId();
+
+    /**
+     * Returns the ID of the worker, which is the second number in the name of
+     * the worker thread.
+     */
+    int getWorkerId();
+
+    /**
+     * Returns the number of the {@link Channel}s registered to the worker.
+     */
+    int getChannelCount();
+
+    /**
+     * Returns the number of the iterations of the selector loop.
+     */
+    long getSelectCount();
+
+    /**
+     * Returns the total time the selector loop spent waiting for the I/O
+     * readiness, in nanoseconds.
+     */
+    long getSelectTimeNanos();
+
+    /**
+     * Returns the total number of the selected keys processed by the selector
+     * loop.
+     */
+    long getSelectedKeyCount();
+
+    /**
+     * Returns how many times the cancelled keys were cleaned up by an extra
+     * non-blocking select.
+     */
+    long getCancelledKeyCleanupCount();
+
+    /**
+     * Returns the number of the read calls on the sockets, including the
+     * ones which read nothing.
+     */
+    long getReadCount();
+
+    /**
+     * Returns the number of the bytes read from the sockets.
+     */
+    long getReadBytes();
+
+    /**
+     * Returns the number of the write calls on the sockets, including the
+     * ones which wrote nothing.
+     */
+    long getWriteCount();
+
+    /**
+     * Returns the number of the write calls which wrote nothing because the
+     * send buffer of the socket was full.  A high ratio to
+     * {@link #getWriteCount()} means the
+     * {@linkplain NioSocketChannelConfig#setWriteSpinCount(int) write spin count}
+     * is too high for the workload.
+     */
+    long getZeroByteWriteCount();
+
+    /**
+     * Returns the number of the bytes written to the sockets.
+     */
+    long getWrittenBytes();
+
+    /**
+     * Returns the number of the {@link Channel}s waiting in the queue to be
+     * flushed by the worker.
+     */
+    int getWriteTaskQueueSize();
+
+    /**
+     * Returns the number of the {@link Channel}s waiting in the queue to be
+     * registered to the worker.
+     */
+    int getRegisterTaskQueueSize();
+
+    /**
+     * Returns the histogram of the number of the bytes left in the write
+     * buffer of a {@link Channel} after each write of the worker.  The elements
+     * count the samples in the following ranges:
+     * {@code 0}, {@code [1, 1KiB)}, {@code [1KiB, 4KiB)}, {@code [4KiB, 16KiB)},
+     * {@code [16KiB, 64KiB)}, {@code [64KiB, 256KiB)}, {@code [256KiB, 1MiB)}
+     * and {@code [1MiB, ∞)}.
+     *
+     * @return a new array which contains the current counts
+     */
+    long[] getQueuedBytesHistogram();
+}
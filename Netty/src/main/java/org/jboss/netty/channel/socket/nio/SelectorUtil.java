@@ -33,9 +33,15 @@ final class SelectorUtil {
 
     static final int DEFAULT_IO_THREADS = Runtime.getRuntime().availableProcessors() * 2;
 
+    static final long SELECT_TIMEOUT = 500;
+
     static void select(Selector selector) throws IOException {
+        select(selector, SELECT_TIMEOUT);
+    }
+
+    static void select(Selector selector, long timeoutMillis) throws IOException {
         try {
-            selector.select(500);
+            selector.select(timeoutMillis);
         } catch (CancelledKeyException e) {
             // Harmless exception - log anyway
             logger.debug(
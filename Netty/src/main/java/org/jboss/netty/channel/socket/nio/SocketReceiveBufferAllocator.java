@@ -0,0 +1,110 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import java.nio.ByteBuffer;
+
+import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.buffer.PooledChannelBufferFactory;
+import org.jboss.netty.channel.AdaptiveReceiveBufferSizePredictor;
+import org.jboss.netty.channel.ReceiveBufferSizePredictor;
+
+/**
+ * Provides the buffers which a {@link NioWorker} reads into.  There is one
+ * instance per worker, and it is accessed only by the I/O thread.
+ * <p>
+ * If the {@link ChannelBufferFactory} of a channel pools its buffers, the
+ * worker reads straight into a new buffer of the factory, whose capacity is
+ * the predicted size, and sends it upstream as it is unless only a small part
+ * of it was filled; in that case the read bytes are copied into a smaller
+ * buffer so that a large pooled buffer is not pinned by a small message.
+ * Otherwise, the worker reads into a direct buffer which is shared by all the
+ * channels of the worker and copies the read bytes into a new buffer of the
+ * factory, whose capacity is exactly the number of the read bytes; reading
+ * into a heap buffer would make the JDK copy through a temporary direct
+ * buffer anyway, and a direct buffer of the predicted size would waste direct
+ * memory until it is garbage-collected.  Either way, a buffer sent upstream
+ * is never reused by the worker, so a handler may keep it as long as it
+ * wants, and the memory held by the worker does not grow with the number of
+ * the connections.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+final class SocketReceiveBufferAllocator {
+
+    private final ReceiveBufferSizePredictor predictor =
+        new AdaptiveReceiveBufferSizePredictor();
+    private ByteBuffer buffer;
+
+    SocketReceiveBufferAllocator() {
+        super();
+    }
+
+    /**
+     * Returns the predictor of the worker unless the specified channel was
+     * given its own predictor or predictor factory.
+     */
+    ReceiveBufferSizePredictor getPredictor(NioSocketChannel channel) {
+        NioSocketChannelConfig config = channel.getConfig();
+        if (config instanceof DefaultNioSocketChannelConfig &&
+            !((DefaultNioSocketChannelConfig) config).isReceiveBufferSizePredictorConfigured()) {
+            return predictor;
+        }
+        return config.getReceiveBufferSizePredictor();
+    }
+
+    /**
+     * Returns {@code true} if and only if the worker can read straight into
+     * the buffers created by the specified factory.
+     */
+    static boolean isReadableDirectly(ChannelBufferFactory factory) {
+        return factory instanceof PooledChannelBufferFactory;
+    }
+
+    /**
+     * Returns {@code true} if and only if the specified number of the bytes
+     * read straight into a buffer of the specified capacity should be copied
+     * into a smaller buffer rather than sent upstream as they are.
+     */
+    static boolean isMostlyUnused(int capacity, int readBytes) {
+        return readBytes <= capacity >>> 2;
+    }
+
+    /**
+     * Returns the cleared shared direct buffer whose capacity is equal to or
+     * greater than the specified size.
+     */
+    ByteBuffer acquire(int size) {
+        ByteBuffer buffer = this.buffer;
+        if (buffer == null || buffer.capacity() < size) {
+            this.buffer = buffer = ByteBuffer.allocateDirect(normalizeCapacity(size));
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    private static int normalizeCapacity(int capacity) {
+        // Normalize to multiple of 1024
+        int q = capacity >>> 10;
+        int r = capacity & 1023;
+        if (r != 0) {
+            q ++;
+        }
+        return q << 10;
+    }
+}
@@ -20,6 +20,7 @@ import java.lang.ref.SoftReference;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.WritableByteChannel;
 
 import org.jboss.netty.buffer.ChannelBuffer;
@@ -77,7 +78,13 @@ final class SocketSendBufferPool {
             return new UnpooledSendBuffer(src.toByteBuffer());
         }
         if (src.readableBytes() > DEFAULT_PREALLOCATION_SIZE) {
-            return new UnpooledSendBuffer(src.toByteBuffer());
+            // Write the components of a composite buffer as they are
+            // instead of merging them into a new buffer.
+            ByteBuffer[] components = src.toByteBuffers();
+            if (components.length == 1) {
+                return new UnpooledSendBuffer(components[0]);
+            }
+            return new CompositeSendBuffer(components);
         }
 
         Preallocation current = this.current;
@@ -177,6 +184,18 @@ final class SocketSendBufferPool {
         long transferTo(WritableByteChannel ch) throws IOException;
         long transferTo(DatagramChannel ch, SocketAddress raddr) throws IOException;
 
+        /**
+         * Puts the unwritten part of this buffer into the specified array,
+         * starting from the specified index, so that it is written by a
+         * {@linkplain GatheringByteChannel#write(ByteBuffer[], int, int) gathering write}
+         * together with other buffers.
+         *
+         * @return the index next to the last element put, or {@code -1} if
+         *         this buffer cannot be gathered or the array does not have
+         *         enough room
+         */
+        int gather(ByteBuffer[] buffers, int index);
+
         void release();
     }
 
@@ -210,6 +229,102 @@ final class SocketSendBufferPool {
             return ch.send(buffer, raddr);
         }
 
+        public final int gather(ByteBuffer[] buffers, int index) {
+            if (index >= buffers.length) {
+                return -1;
+            }
+            buffers[index] = buffer;
+            return index + 1;
+        }
+
+        public void release() {
+            // Unpooled.
+        }
+    }
+
+    final class CompositeSendBuffer implements SendBuffer {
+
+        private final ByteBuffer[] buffers;
+        private final long totalBytes;
+        private int head;
+
+        CompositeSendBuffer(ByteBuffer[] buffers) {
+            this.buffers = buffers;
+            long totalBytes = 0;
+            for (ByteBuffer b: buffers) {
+                totalBytes += b.remaining();
+            }
+            this.totalBytes = totalBytes;
+        }
+
+        public boolean finished() {
+            return remainingBytes() == 0;
+        }
+
+        public long writtenBytes() {
+            return totalBytes - remainingBytes();
+        }
+
+        public long totalBytes() {
+            return totalBytes;
+        }
+
+        private long remainingBytes() {
+            // The buffers might have been written by a gathering write
+            // from outside.
+            final ByteBuffer[] buffers = this.buffers;
+            while (head < buffers.length && !buffers[head].hasRemaining()) {
+                head ++;
+            }
+
+            long remainingBytes = 0;
+            for (int i = head; i < buffers.length; i ++) {
+                remainingBytes += buffers[i].remaining();
+            }
+            return remainingBytes;
+        }
+
+        public long transferTo(WritableByteChannel ch) throws IOException {
+            remainingBytes();
+            if (head == buffers.length) {
+                return 0;
+            }
+            if (ch instanceof GatheringByteChannel) {
+                return ((GatheringByteChannel) ch).write(
+                        buffers, head, buffers.length - head);
+            }
+            return ch.write(buffers[head]);
+        }
+
+        public long transferTo(DatagramChannel ch, SocketAddress raddr) throws IOException {
+            // A datagram cannot be gathered - merge the components.
+            ByteBuffer merged = ByteBuffer.allocate((int) remainingBytes());
+            for (int i = head; i < buffers.length; i ++) {
+                merged.put(buffers[i].duplicate());
+            }
+            merged.flip();
+
+            int localWrittenBytes = ch.send(merged, raddr);
+            if (localWrittenBytes != 0) {
+                for (int i = head; i < buffers.length; i ++) {
+                    buffers[i].position(buffers[i].limit());
+                }
+            }
+            return localWrittenBytes;
+        }
+
+        public int gather(ByteBuffer[] buffers, int index) {
+            remainingBytes();
+            final ByteBuffer[] components = this.buffers;
+            if (buffers.length - index < components.length - head) {
+                return -1;
+            }
+            for (int i = head; i < components.length; i ++) {
+                buffers[index ++] = components[i];
+            }
+            return index;
+        }
+
         public void release() {
             // Unpooled.
         }
@@ -247,6 +362,14 @@ final class SocketSendBufferPool {
             return ch.send(buffer, raddr);
         }
 
+        public int gather(ByteBuffer[] buffers, int index) {
+            if (index >= buffers.length) {
+                return -1;
+            }
+            buffers[index] = buffer;
+            return index + 1;
+        }
+
         public void release() {
             final Preallocation parent = this.parent;
             if (-- parent.refCnt == 0) {
@@ -291,6 +414,11 @@ final class SocketSendBufferPool {
             throw new UnsupportedOperationException();
         }
 
+        public int gather(ByteBuffer[] buffers, int index) {
+            // A file region is transferred by FileChannel.transferTo().
+            return -1;
+        }
+
         public void release() {
             // Unpooled.
         }
@@ -322,6 +450,10 @@ final class SocketSendBufferPool {
             return 0;
         }
 
+        public final int gather(ByteBuffer[] buffers, int index) {
+            return index;
+        }
+
         public void release() {
             // Unpooled.
         }
@@ -33,18 +33,15 @@ import org.jboss.netty.channel.ChannelFuture;
 import org.jboss.netty.channel.ChannelFutureListener;
 import org.jboss.netty.channel.ChannelFutureProgressListener;
 import org.jboss.netty.channel.ChannelHandlerContext;
-import org.jboss.netty.channel.DefaultFileRegion;
 import org.jboss.netty.channel.ExceptionEvent;
-import org.jboss.netty.channel.FileRegion;
 import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
 import org.jboss.netty.handler.codec.frame.TooLongFrameException;
 import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
+import org.jboss.netty.handler.codec.http.HttpFileWriter;
 import org.jboss.netty.handler.codec.http.HttpRequest;
 import org.jboss.netty.handler.codec.http.HttpResponse;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
-import org.jboss.netty.handler.ssl.SslHandler;
-import org.jboss.netty.handler.stream.ChunkedFile;
 import org.jboss.netty.util.CharsetUtil;
 
 /**
@@ -56,7 +53,7 @@ public class HttpStaticFileServerHandler extends SimpleChannelUpstreamHandler {
     @Override
     public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
         HttpRequest request = (HttpRequest) e.getMessage();
-        if (request.getMethod() != GET) {
+        if (request.getMethod() != GET && request.getMethod() != HEAD) {
             sendError(ctx, METHOD_NOT_ALLOWED);
             return;
         }
@@ -84,37 +81,23 @@ public class HttpStaticFileServerHandler extends SimpleChannelUpstreamHandler {
             sendError(ctx, NOT_FOUND);
             return;
         }
-        long fileLength = raf.length();
-
         HttpResponse response = new DefaultHttpResponse(HTTP_1_1, OK);
-        setContentLength(response, fileLength);
 
-        Channel ch = e.getChannel();
+        // Write the header and the content.  The content is transferred in a
+        // zero-copy way unless the pipeline has an SslHandler or an
+        // HttpContentCompressor, and range requests are handled as well.
+        ChannelFuture writeFuture =
+            HttpFileWriter.write(e.getChannel(), request, response, raf);
+        writeFuture.addListener(new ChannelFutureProgressListener() {
+            public void operationComplete(ChannelFuture future) {
+                // Nothing to do - the file is closed by HttpFileWriter.
+            }
 
-        // Write the initial line and the header.
-        ch.write(response);
-
-        // Write the content.
-        ChannelFuture writeFuture;
-        if (ch.getPipeline().get(SslHandler.class) != null) {
-            // Cannot use zero-copy with HTTPS.
-            writeFuture = ch.write(new ChunkedFile(raf, 0, fileLength, 8192));
-        } else {
-            // No encryption - use zero-copy.
-            final FileRegion region =
-                new DefaultFileRegion(raf.getChannel(), 0, fileLength);
-            writeFuture = ch.write(region);
-            writeFuture.addListener(new ChannelFutureProgressListener() {
-                public void operationComplete(ChannelFuture future) {
-                    region.releaseExternalResources();
-                }
-
-                public void operationProgressed(
-                        ChannelFuture future, long amount, long current, long total) {
-                    System.out.printf("%s: %d / %d (+%d)%n", path, current, total, amount);
-                }
-            });
-        }
+            public void operationProgressed(
+                    ChannelFuture future, long amount, long current, long total) {
+                System.out.printf("%s: %d / %d (+%d)%n", path, current, total, amount);
+            }
+        });
 
         // Decide whether to close the connection or not.
         if (!isKeepAlive(request)) {
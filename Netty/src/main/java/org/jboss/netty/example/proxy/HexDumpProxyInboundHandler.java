@@ -66,6 +66,11 @@ public class HexDumpProxyInboundHandler extends SimpleChannelUpstreamHandler {
         f.addListener(new ChannelFutureListener() {
             public void operationComplete(ChannelFuture future) throws Exception {
                 if (future.isSuccess()) {
+                    // Stop reading from one side while the other side cannot
+                    // keep up with writing what was read.
+                    outboundChannel.getConfig().setOption("backpressurePeer", inboundChannel);
+                    inboundChannel.getConfig().setOption("backpressurePeer", outboundChannel);
+
                     // Connection attempt succeeded:
                     // Begin to accept incoming traffic.
                     inboundChannel.setReadable(true);
@@ -38,263 +38,265 @@ import java.io.InputStream;
 public class SecureChatKeyStore {
     private static final short[] DATA = new short[] {
         0xfe, 0xed, 0xfe, 0xed, 0x00, 0x00, 0x00, 0x02,
-        0x00, 0x00, 0x00, 0x02, 0x00, 0x00, 0x00, 0x01,
-        0x00, 0x07, 0x65, 0x78, 0x61, 0x6d, 0x70, 0x6c,
-        0x65, 0x00, 0x00, 0x01, 0x1a, 0x9f, 0x57, 0xa5,
-        0x27, 0x00, 0x00, 0x01, 0x9a, 0x30, 0x82, 0x01,
-        0x96, 0x30, 0x0e, 0x06, 0x0a, 0x2b, 0x06, 0x01,
-        0x04, 0x01, 0x2a, 0x02, 0x11, 0x01, 0x01, 0x05,
-        0x00, 0x04, 0x82, 0x01, 0x82, 0x48, 0x6d, 0xcf,
-        0x16, 0xb5, 0x50, 0x95, 0x36, 0xbf, 0x47, 0x27,
-        0x50, 0x58, 0x0d, 0xa2, 0x52, 0x7e, 0x25, 0xab,
-        0x14, 0x1a, 0x26, 0x5e, 0x2d, 0x8a, 0x23, 0x90,
-        0x60, 0x7f, 0x12, 0x20, 0x56, 0xd1, 0x43, 0xa2,
-        0x6b, 0x47, 0x5d, 0xed, 0x9d, 0xd4, 0xe5, 0x83,
-        0x28, 0x89, 0xc2, 0x16, 0x4c, 0x76, 0x06, 0xad,
-        0x8e, 0x8c, 0x29, 0x1a, 0x9b, 0x0f, 0xdd, 0x60,
-        0x4b, 0xb4, 0x62, 0x82, 0x9e, 0x4a, 0x63, 0x83,
-        0x2e, 0xd2, 0x43, 0x78, 0xc2, 0x32, 0x1f, 0x60,
-        0xa9, 0x8a, 0x7f, 0x0f, 0x7c, 0xa6, 0x1d, 0xe6,
-        0x92, 0x9e, 0x52, 0xc7, 0x7d, 0xbb, 0x35, 0x3b,
-        0xaa, 0x89, 0x73, 0x4c, 0xfb, 0x99, 0x54, 0x97,
-        0x99, 0x28, 0x6e, 0x66, 0x5b, 0xf7, 0x9b, 0x7e,
-        0x6d, 0x8a, 0x2f, 0xfa, 0xc3, 0x1e, 0x71, 0xb9,
-        0xbd, 0x8f, 0xc5, 0x63, 0x25, 0x31, 0x20, 0x02,
-        0xff, 0x02, 0xf0, 0xc9, 0x2c, 0xdd, 0x3a, 0x10,
-        0x30, 0xab, 0xe5, 0xad, 0x3d, 0x1a, 0x82, 0x77,
-        0x46, 0xed, 0x03, 0x38, 0xa4, 0x73, 0x6d, 0x36,
-        0x36, 0x33, 0x70, 0xb2, 0x63, 0x20, 0xca, 0x03,
-        0xbf, 0x5a, 0xf4, 0x7c, 0x35, 0xf0, 0x63, 0x1a,
-        0x12, 0x33, 0x12, 0x58, 0xd9, 0xa2, 0x63, 0x6b,
-        0x63, 0x82, 0x41, 0x65, 0x70, 0x37, 0x4b, 0x99,
-        0x04, 0x9f, 0xdd, 0x5e, 0x07, 0x01, 0x95, 0x9f,
-        0x36, 0xe8, 0xc3, 0x66, 0x2a, 0x21, 0x69, 0x68,
-        0x40, 0xe6, 0xbc, 0xbb, 0x85, 0x81, 0x21, 0x13,
-        0xe6, 0xa4, 0xcf, 0xd3, 0x67, 0xe3, 0xfd, 0x75,
-        0xf0, 0xdf, 0x83, 0xe0, 0xc5, 0x36, 0x09, 0xac,
-        0x1b, 0xd4, 0xf7, 0x2a, 0x23, 0x57, 0x1c, 0x5c,
-        0x0f, 0xf4, 0xcf, 0xa2, 0xcf, 0xf5, 0xbd, 0x9c,
-        0x69, 0x98, 0x78, 0x3a, 0x25, 0xe4, 0xfd, 0x85,
-        0x11, 0xcc, 0x7d, 0xef, 0xeb, 0x74, 0x60, 0xb1,
-        0xb7, 0xfb, 0x1f, 0x0e, 0x62, 0xff, 0xfe, 0x09,
-        0x0a, 0xc3, 0x80, 0x2f, 0x10, 0x49, 0x89, 0x78,
-        0xd2, 0x08, 0xfa, 0x89, 0x22, 0x45, 0x91, 0x21,
-        0xbc, 0x90, 0x3e, 0xad, 0xb3, 0x0a, 0xb4, 0x0e,
-        0x1c, 0xa1, 0x93, 0x92, 0xd8, 0x72, 0x07, 0x54,
-        0x60, 0xe7, 0x91, 0xfc, 0xd9, 0x3c, 0xe1, 0x6f,
-        0x08, 0xe4, 0x56, 0xf6, 0x0b, 0xb0, 0x3c, 0x39,
-        0x8a, 0x2d, 0x48, 0x44, 0x28, 0x13, 0xca, 0xe9,
-        0xf7, 0xa3, 0xb6, 0x8a, 0x5f, 0x31, 0xa9, 0x72,
-        0xf2, 0xde, 0x96, 0xf2, 0xb1, 0x53, 0xb1, 0x3e,
-        0x24, 0x57, 0xfd, 0x18, 0x45, 0x1f, 0xc5, 0x33,
-        0x1b, 0xa4, 0xe8, 0x21, 0xfa, 0x0e, 0xb2, 0xb9,
-        0xcb, 0xc7, 0x07, 0x41, 0xdd, 0x2f, 0xb6, 0x6a,
-        0x23, 0x18, 0xed, 0xc1, 0xef, 0xe2, 0x4b, 0xec,
-        0xc9, 0xba, 0xfb, 0x46, 0x43, 0x90, 0xd7, 0xb5,
-        0x68, 0x28, 0x31, 0x2b, 0x8d, 0xa8, 0x51, 0x63,
-        0xf7, 0x53, 0x99, 0x19, 0x68, 0x85, 0x66, 0x00,
-        0x00, 0x00, 0x01, 0x00, 0x05, 0x58, 0x2e, 0x35,
-        0x30, 0x39, 0x00, 0x00, 0x02, 0x3a, 0x30, 0x82,
-        0x02, 0x36, 0x30, 0x82, 0x01, 0xe0, 0xa0, 0x03,
-        0x02, 0x01, 0x02, 0x02, 0x04, 0x48, 0x59, 0xf1,
-        0x92, 0x30, 0x0d, 0x06, 0x09, 0x2a, 0x86, 0x48,
-        0x86, 0xf7, 0x0d, 0x01, 0x01, 0x05, 0x05, 0x00,
-        0x30, 0x81, 0xa0, 0x31, 0x0b, 0x30, 0x09, 0x06,
-        0x03, 0x55, 0x04, 0x06, 0x13, 0x02, 0x4b, 0x52,
-        0x31, 0x13, 0x30, 0x11, 0x06, 0x03, 0x55, 0x04,
-        0x08, 0x13, 0x0a, 0x4b, 0x79, 0x75, 0x6e, 0x67,
-        0x67, 0x69, 0x2d, 0x64, 0x6f, 0x31, 0x14, 0x30,
-        0x12, 0x06, 0x03, 0x55, 0x04, 0x07, 0x13, 0x0b,
-        0x53, 0x65, 0x6f, 0x6e, 0x67, 0x6e, 0x61, 0x6d,
-        0x2d, 0x73, 0x69, 0x31, 0x1a, 0x30, 0x18, 0x06,
-        0x03, 0x55, 0x04, 0x0a, 0x13, 0x11, 0x54, 0x68,
-        0x65, 0x20, 0x4e, 0x65, 0x74, 0x74, 0x79, 0x20,
-        0x50, 0x72, 0x6f, 0x6a, 0x65, 0x63, 0x74, 0x31,
-        0x18, 0x30, 0x16, 0x06, 0x03, 0x55, 0x04, 0x0b,
-        0x13, 0x0f, 0x45, 0x78, 0x61, 0x6d, 0x70, 0x6c,
-        0x65, 0x20, 0x41, 0x75, 0x74, 0x68, 0x6f, 0x72,
-        0x73, 0x31, 0x30, 0x30, 0x2e, 0x06, 0x03, 0x55,
-        0x04, 0x03, 0x13, 0x27, 0x73, 0x65, 0x63, 0x75,
-        0x72, 0x65, 0x63, 0x68, 0x61, 0x74, 0x2e, 0x65,
-        0x78, 0x61, 0x6d, 0x70, 0x6c, 0x65, 0x2e, 0x6e,
-        0x65, 0x74, 0x74, 0x79, 0x2e, 0x67, 0x6c, 0x65,
-        0x61, 0x6d, 0x79, 0x6e, 0x6f, 0x64, 0x65, 0x2e,
-        0x6e, 0x65, 0x74, 0x30, 0x20, 0x17, 0x0d, 0x30,
-        0x38, 0x30, 0x36, 0x31, 0x39, 0x30, 0x35, 0x34,
-        0x31, 0x33, 0x38, 0x5a, 0x18, 0x0f, 0x32, 0x31,
-        0x38, 0x37, 0x31, 0x31, 0x32, 0x34, 0x30, 0x35,
-        0x34, 0x31, 0x33, 0x38, 0x5a, 0x30, 0x81, 0xa0,
-        0x31, 0x0b, 0x30, 0x09, 0x06, 0x03, 0x55, 0x04,
-        0x06, 0x13, 0x02, 0x4b, 0x52, 0x31, 0x13, 0x30,
-        0x11, 0x06, 0x03, 0x55, 0x04, 0x08, 0x13, 0x0a,
-        0x4b, 0x79, 0x75, 0x6e, 0x67, 0x67, 0x69, 0x2d,
-        0x64, 0x6f, 0x31, 0x14, 0x30, 0x12, 0x06, 0x03,
-        0x55, 0x04, 0x07, 0x13, 0x0b, 0x53, 0x65, 0x6f,
-        0x6e, 0x67, 0x6e, 0x61, 0x6d, 0x2d, 0x73, 0x69,
-        0x31, 0x1a, 0x30, 0x18, 0x06, 0x03, 0x55, 0x04,
-        0x0a, 0x13, 0x11, 0x54, 0x68, 0x65, 0x20, 0x4e,
-        0x65, 0x74, 0x74, 0x79, 0x20, 0x50, 0x72, 0x6f,
-        0x6a, 0x65, 0x63, 0x74, 0x31, 0x18, 0x30, 0x16,
-        0x06, 0x03, 0x55, 0x04, 0x0b, 0x13, 0x0f, 0x45,
-        0x78, 0x61, 0x6d, 0x70, 0x6c, 0x65, 0x20, 0x41,
-        0x75, 0x74, 0x68, 0x6f, 0x72, 0x73, 0x31, 0x30,
-        0x30, 0x2e, 0x06, 0x03, 0x55, 0x04, 0x03, 0x13,
-        0x27, 0x73, 0x65, 0x63, 0x75, 0x72, 0x65, 0x63,
-        0x68, 0x61, 0x74, 0x2e, 0x65, 0x78, 0x61, 0x6d,
-        0x70, 0x6c, 0x65, 0x2e, 0x6e, 0x65, 0x74, 0x74,
-        0x79, 0x2e, 0x67, 0x6c, 0x65, 0x61, 0x6d, 0x79,
-        0x6e, 0x6f, 0x64, 0x65, 0x2e, 0x6e, 0x65, 0x74,
-        0x30, 0x5c, 0x30, 0x0d, 0x06, 0x09, 0x2a, 0x86,
-        0x48, 0x86, 0xf7, 0x0d, 0x01, 0x01, 0x01, 0x05,
-        0x00, 0x03, 0x4b, 0x00, 0x30, 0x48, 0x02, 0x41,
-        0x00, 0xc3, 0xe3, 0x5e, 0x41, 0xa7, 0x87, 0x11,
-        0x00, 0x42, 0x2a, 0xb0, 0x4b, 0xed, 0xb2, 0xe0,
-        0x23, 0xdb, 0xb1, 0x3d, 0x58, 0x97, 0x35, 0x60,
-        0x0b, 0x82, 0x59, 0xd3, 0x00, 0xea, 0xd4, 0x61,
-        0xb8, 0x79, 0x3f, 0xb6, 0x3c, 0x12, 0x05, 0x93,
-        0x2e, 0x9a, 0x59, 0x68, 0x14, 0x77, 0x3a, 0xc8,
-        0x50, 0x25, 0x57, 0xa4, 0x49, 0x18, 0x63, 0x41,
-        0xf0, 0x2d, 0x28, 0xec, 0x06, 0xfb, 0xb4, 0x9f,
-        0xbf, 0x02, 0x03, 0x01, 0x00, 0x01, 0x30, 0x0d,
-        0x06, 0x09, 0x2a, 0x86, 0x48, 0x86, 0xf7, 0x0d,
-        0x01, 0x01, 0x05, 0x05, 0x00, 0x03, 0x41, 0x00,
-        0x65, 0x6c, 0x30, 0x01, 0xc2, 0x8e, 0x3e, 0xcb,
-        0xb3, 0x77, 0x48, 0xe9, 0x66, 0x61, 0x9a, 0x40,
-        0x86, 0xaf, 0xf6, 0x03, 0xeb, 0xba, 0x6a, 0xf2,
-        0xfd, 0xe2, 0xaf, 0x36, 0x5e, 0x7b, 0xaa, 0x22,
-        0x04, 0xdd, 0x2c, 0x20, 0xc4, 0xfc, 0xdd, 0xd0,
-        0x82, 0x20, 0x1c, 0x3d, 0xd7, 0x9e, 0x5e, 0x5c,
-        0x92, 0x5a, 0x76, 0x71, 0x28, 0xf5, 0x07, 0x7d,
-        0xa2, 0x81, 0xba, 0x77, 0x9f, 0x2a, 0xd9, 0x44,
-        0x00, 0x00, 0x00, 0x01, 0x00, 0x05, 0x6d, 0x79,
-        0x6b, 0x65, 0x79, 0x00, 0x00, 0x01, 0x1a, 0x9f,
-        0x5b, 0x56, 0xa0, 0x00, 0x00, 0x01, 0x99, 0x30,
-        0x82, 0x01, 0x95, 0x30, 0x0e, 0x06, 0x0a, 0x2b,
-        0x06, 0x01, 0x04, 0x01, 0x2a, 0x02, 0x11, 0x01,
-        0x01, 0x05, 0x00, 0x04, 0x82, 0x01, 0x81, 0x29,
-        0xa8, 0xb6, 0x08, 0x0c, 0x85, 0x75, 0x3e, 0xdd,
-        0xb5, 0xe5, 0x1a, 0x87, 0x68, 0xd1, 0x90, 0x4b,
-        0x29, 0x31, 0xee, 0x90, 0xbc, 0x9d, 0x73, 0xa0,
-        0x3f, 0xe9, 0x0b, 0xa4, 0xef, 0x30, 0x9b, 0x36,
-        0x9a, 0xb2, 0x54, 0x77, 0x81, 0x07, 0x4b, 0xaa,
-        0xa5, 0x77, 0x98, 0xe1, 0xeb, 0xb5, 0x7c, 0x4e,
-        0x48, 0xd5, 0x08, 0xfc, 0x2c, 0x36, 0xe2, 0x65,
-        0x03, 0xac, 0xe5, 0xf3, 0x96, 0xb7, 0xd0, 0xb5,
-        0x3b, 0x92, 0xe4, 0x14, 0x05, 0x7a, 0x6a, 0x92,
-        0x56, 0xfe, 0x4e, 0xab, 0xd3, 0x0e, 0x32, 0x04,
-        0x22, 0x22, 0x74, 0x47, 0x7d, 0xec, 0x21, 0x99,
-        0x30, 0x31, 0x64, 0x46, 0x64, 0x9b, 0xc7, 0x13,
-        0xbf, 0xbe, 0xd0, 0x31, 0x49, 0xe7, 0x3c, 0xbf,
-        0xba, 0xb1, 0x20, 0xf9, 0x42, 0xf4, 0xa9, 0xa9,
-        0xe5, 0x13, 0x65, 0x32, 0xbf, 0x7c, 0xcc, 0x91,
-        0xd3, 0xfd, 0x24, 0x47, 0x0b, 0xe5, 0x53, 0xad,
-        0x50, 0x30, 0x56, 0xd1, 0xfa, 0x9c, 0x37, 0xa8,
-        0xc1, 0xce, 0xf6, 0x0b, 0x18, 0xaa, 0x7c, 0xab,
-        0xbd, 0x1f, 0xdf, 0xe4, 0x80, 0xb8, 0xa7, 0xe0,
-        0xad, 0x7d, 0x50, 0x74, 0xf1, 0x98, 0x78, 0xbc,
-        0x58, 0xb9, 0xc2, 0x52, 0xbe, 0xd2, 0x5b, 0x81,
-        0x94, 0x83, 0x8f, 0xb9, 0x4c, 0xee, 0x01, 0x2b,
-        0x5e, 0xc9, 0x6e, 0x9b, 0xf5, 0x63, 0x69, 0xe4,
-        0xd8, 0x0b, 0x47, 0xd8, 0xfd, 0xd8, 0xe0, 0xed,
-        0xa8, 0x27, 0x03, 0x74, 0x1e, 0x5d, 0x32, 0xe6,
-        0x5c, 0x63, 0xc2, 0xfb, 0x3f, 0xee, 0xb4, 0x13,
-        0xc6, 0x0e, 0x6e, 0x74, 0xe0, 0x22, 0xac, 0xce,
-        0x79, 0xf9, 0x43, 0x68, 0xc1, 0x03, 0x74, 0x2b,
-        0xe1, 0x18, 0xf8, 0x7f, 0x76, 0x9a, 0xea, 0x82,
-        0x3f, 0xc2, 0xa6, 0xa7, 0x4c, 0xfe, 0xae, 0x29,
-        0x3b, 0xc1, 0x10, 0x7c, 0xd5, 0x77, 0x17, 0x79,
-        0x5f, 0xcb, 0xad, 0x1f, 0xd8, 0xa1, 0xfd, 0x90,
-        0xe1, 0x6b, 0xb2, 0xef, 0xb9, 0x41, 0x26, 0xa4,
-        0x0b, 0x4f, 0xc6, 0x83, 0x05, 0x6f, 0xf0, 0x64,
-        0x40, 0xe1, 0x44, 0xc4, 0xf9, 0x40, 0x2b, 0x3b,
-        0x40, 0xdb, 0xaf, 0x35, 0xa4, 0x9b, 0x9f, 0xc4,
-        0x74, 0x07, 0xe5, 0x18, 0x60, 0xc5, 0xfe, 0x15,
-        0x0e, 0x3a, 0x25, 0x2a, 0x11, 0xee, 0x78, 0x2f,
-        0xb8, 0xd1, 0x6e, 0x4e, 0x3c, 0x0a, 0xb5, 0xb9,
-        0x40, 0x86, 0x27, 0x6d, 0x8f, 0x53, 0xb7, 0x77,
-        0x36, 0xec, 0x5d, 0xed, 0x32, 0x40, 0x43, 0x82,
-        0xc3, 0x52, 0x58, 0xc4, 0x26, 0x39, 0xf3, 0xb3,
-        0xad, 0x58, 0xab, 0xb7, 0xf7, 0x8e, 0x0e, 0xba,
-        0x8e, 0x78, 0x9d, 0xbf, 0x58, 0x34, 0xbd, 0x77,
-        0x73, 0xa6, 0x50, 0x55, 0x00, 0x60, 0x26, 0xbf,
-        0x6d, 0xb4, 0x98, 0x8a, 0x18, 0x83, 0x89, 0xf8,
-        0xcd, 0x0d, 0x49, 0x06, 0xae, 0x51, 0x6e, 0xaf,
-        0xbd, 0xe2, 0x07, 0x13, 0xd8, 0x64, 0xcc, 0xbf,
-        0x00, 0x00, 0x00, 0x01, 0x00, 0x05, 0x58, 0x2e,
-        0x35, 0x30, 0x39, 0x00, 0x00, 0x02, 0x34, 0x30,
-        0x82, 0x02, 0x30, 0x30, 0x82, 0x01, 0xda, 0xa0,
-        0x03, 0x02, 0x01, 0x02, 0x02, 0x04, 0x48, 0x59,
-        0xf2, 0x84, 0x30, 0x0d, 0x06, 0x09, 0x2a, 0x86,
-        0x48, 0x86, 0xf7, 0x0d, 0x01, 0x01, 0x05, 0x05,
-        0x00, 0x30, 0x81, 0x9d, 0x31, 0x0b, 0x30, 0x09,
-        0x06, 0x03, 0x55, 0x04, 0x06, 0x13, 0x02, 0x4b,
-        0x52, 0x31, 0x13, 0x30, 0x11, 0x06, 0x03, 0x55,
-        0x04, 0x08, 0x13, 0x0a, 0x4b, 0x79, 0x75, 0x6e,
-        0x67, 0x67, 0x69, 0x2d, 0x64, 0x6f, 0x31, 0x14,
-        0x30, 0x12, 0x06, 0x03, 0x55, 0x04, 0x07, 0x13,
-        0x0b, 0x53, 0x65, 0x6f, 0x6e, 0x67, 0x6e, 0x61,
-        0x6d, 0x2d, 0x73, 0x69, 0x31, 0x1a, 0x30, 0x18,
-        0x06, 0x03, 0x55, 0x04, 0x0a, 0x13, 0x11, 0x54,
-        0x68, 0x65, 0x20, 0x4e, 0x65, 0x74, 0x74, 0x79,
-        0x20, 0x50, 0x72, 0x6f, 0x6a, 0x65, 0x63, 0x74,
-        0x31, 0x15, 0x30, 0x13, 0x06, 0x03, 0x55, 0x04,
-        0x0b, 0x13, 0x0c, 0x43, 0x6f, 0x6e, 0x74, 0x72,
-        0x69, 0x62, 0x75, 0x74, 0x6f, 0x72, 0x73, 0x31,
-        0x30, 0x30, 0x2e, 0x06, 0x03, 0x55, 0x04, 0x03,
-        0x13, 0x27, 0x73, 0x65, 0x63, 0x75, 0x72, 0x65,
-        0x63, 0x68, 0x61, 0x74, 0x2e, 0x65, 0x78, 0x61,
-        0x6d, 0x70, 0x6c, 0x65, 0x2e, 0x6e, 0x65, 0x74,
-        0x74, 0x79, 0x2e, 0x67, 0x6c, 0x65, 0x61, 0x6d,
-        0x79, 0x6e, 0x6f, 0x64, 0x65, 0x2e, 0x6e, 0x65,
-        0x74, 0x30, 0x20, 0x17, 0x0d, 0x30, 0x38, 0x30,
-        0x36, 0x31, 0x39, 0x30, 0x35, 0x34, 0x35, 0x34,
-        0x30, 0x5a, 0x18, 0x0f, 0x32, 0x31, 0x38, 0x37,
-        0x31, 0x31, 0x32, 0x33, 0x30, 0x35, 0x34, 0x35,
-        0x34, 0x30, 0x5a, 0x30, 0x81, 0x9d, 0x31, 0x0b,
-        0x30, 0x09, 0x06, 0x03, 0x55, 0x04, 0x06, 0x13,
-        0x02, 0x4b, 0x52, 0x31, 0x13, 0x30, 0x11, 0x06,
-        0x03, 0x55, 0x04, 0x08, 0x13, 0x0a, 0x4b, 0x79,
-        0x75, 0x6e, 0x67, 0x67, 0x69, 0x2d, 0x64, 0x6f,
-        0x31, 0x14, 0x30, 0x12, 0x06, 0x03, 0x55, 0x04,
-        0x07, 0x13, 0x0b, 0x53, 0x65, 0x6f, 0x6e, 0x67,
-        0x6e, 0x61, 0x6d, 0x2d, 0x73, 0x69, 0x31, 0x1a,
-        0x30, 0x18, 0x06, 0x03, 0x55, 0x04, 0x0a, 0x13,
-        0x11, 0x54, 0x68, 0x65, 0x20, 0x4e, 0x65, 0x74,
-        0x74, 0x79, 0x20, 0x50, 0x72, 0x6f, 0x6a, 0x65,
-        0x63, 0x74, 0x31, 0x15, 0x30, 0x13, 0x06, 0x03,
-        0x55, 0x04, 0x0b, 0x13, 0x0c, 0x43, 0x6f, 0x6e,
-        0x74, 0x72, 0x69, 0x62, 0x75, 0x74, 0x6f, 0x72,
-        0x73, 0x31, 0x30, 0x30, 0x2e, 0x06, 0x03, 0x55,
-        0x04, 0x03, 0x13, 0x27, 0x73, 0x65, 0x63, 0x75,
-        0x72, 0x65, 0x63, 0x68, 0x61, 0x74, 0x2e, 0x65,
-        0x78, 0x61, 0x6d, 0x70, 0x6c, 0x65, 0x2e, 0x6e,
-        0x65, 0x74, 0x74, 0x79, 0x2e, 0x67, 0x6c, 0x65,
-        0x61, 0x6d, 0x79, 0x6e, 0x6f, 0x64, 0x65, 0x2e,
-        0x6e, 0x65, 0x74, 0x30, 0x5c, 0x30, 0x0d, 0x06,
-        0x09, 0x2a, 0x86, 0x48, 0x86, 0xf7, 0x0d, 0x01,
-        0x01, 0x01, 0x05, 0x00, 0x03, 0x4b, 0x00, 0x30,
-        0x48, 0x02, 0x41, 0x00, 0x95, 0xb3, 0x47, 0x17,
-        0x95, 0x0f, 0x57, 0xcf, 0x66, 0x72, 0x0a, 0x7e,
-        0x5b, 0x54, 0xea, 0x8c, 0x6f, 0x79, 0xde, 0x94,
-        0xac, 0x0b, 0x5a, 0xd4, 0xd6, 0x1b, 0x58, 0x12,
-        0x1a, 0x16, 0x3d, 0xfe, 0xdf, 0xa5, 0x2b, 0x86,
-        0xbc, 0x64, 0xd4, 0x80, 0x1e, 0x3f, 0xf9, 0xe2,
-        0x04, 0x03, 0x79, 0x9b, 0xc1, 0x5c, 0xf0, 0xf1,
-        0xf3, 0xf1, 0xe3, 0xbf, 0x3f, 0xc0, 0x1f, 0xdd,
-        0xdb, 0xc0, 0x5b, 0x21, 0x02, 0x03, 0x01, 0x00,
-        0x01, 0x30, 0x0d, 0x06, 0x09, 0x2a, 0x86, 0x48,
-        0x86, 0xf7, 0x0d, 0x01, 0x01, 0x05, 0x05, 0x00,
-        0x03, 0x41, 0x00, 0x02, 0xd7, 0xdd, 0xbd, 0x0c,
-        0x8e, 0x21, 0x20, 0xef, 0x9e, 0x4f, 0x1f, 0xf5,
-        0x49, 0xf1, 0xae, 0x58, 0x9b, 0x94, 0x3a, 0x1f,
-        0x70, 0x33, 0xf0, 0x9b, 0xbb, 0xe9, 0xc0, 0xf3,
-        0x72, 0xcb, 0xde, 0xb6, 0x56, 0x72, 0xcc, 0x1c,
-        0xf0, 0xd6, 0x5a, 0x2a, 0xbc, 0xa1, 0x7e, 0x23,
-        0x83, 0xe9, 0xe7, 0xcf, 0x9e, 0xa5, 0xf9, 0xcc,
-        0xc2, 0x61, 0xf4, 0xdb, 0x40, 0x93, 0x1d, 0x63,
-        0x8a, 0x50, 0x4c, 0x11, 0x39, 0xb1, 0x91, 0xc1,
-        0xe6, 0x9d, 0xd9, 0x1a, 0x62, 0x1b, 0xb8, 0xd3,
-        0xd6, 0x9a, 0x6d, 0xb9, 0x8e, 0x15, 0x51 };
+        0x00, 0x00, 0x00, 0x01, 0x00, 0x00, 0x00, 0x01,
+        0x00, 0x0a, 0x73, 0x65, 0x63, 0x75, 0x72, 0x65,
+        0x63, 0x68, 0x61, 0x74, 0x00, 0x00, 0x01, 0xa1,
+        0x50, 0x88, 0xb8, 0x26, 0x00, 0x00, 0x05, 0x02,
+        0x30, 0x82, 0x04, 0xfe, 0x30, 0x0e, 0x06, 0x0a,
+        0x2b, 0x06, 0x01, 0x04, 0x01, 0x2a, 0x02, 0x11,
+        0x01, 0x01, 0x05, 0x00, 0x04, 0x82, 0x04, 0xea,
+        0xc5, 0x70, 0x0b, 0xa1, 0x61, 0x20, 0x38, 0x48,
+        0xa8, 0xa8, 0xb7, 0x00, 0xeb, 0xd6, 0xe2, 0x6e,
+        0xdf, 0x93, 0x6a, 0xe4, 0x8a, 0xce, 0xae, 0x93,
+        0x85, 0xa7, 0x62, 0xec, 0x0e, 0xd4, 0x06, 0x53,
+        0xcb, 0x39, 0x1c, 0x16, 0xc3, 0xce, 0x95, 0x4a,
+        0x8f, 0xf9, 0x31, 0xf0, 0x46, 0xf6, 0x62, 0xe7,
+        0x48, 0x70, 0xbb, 0xb3, 0x5d, 0xc8, 0x40, 0x85,
+        0x62, 0xe3, 0x3a, 0x8a, 0xe3, 0xb2, 0x5d, 0x23,
+        0x77, 0x66, 0x5b, 0xfd, 0x53, 0xed, 0x47, 0xd8,
+        0x18, 0x30, 0x68, 0x68, 0x59, 0x3b, 0x63, 0x0e,
+        0x55, 0x0f, 0x85, 0xbf, 0x16, 0xfe, 0xd4, 0xa9,
+        0x55, 0xa2, 0x40, 0x6e, 0x8f, 0xa6, 0x48, 0xdf,
+        0x93, 0x7b, 0x76, 0x73, 0xdf, 0x9b, 0xc9, 0x6e,
+        0xfe, 0x59, 0xb4, 0xd5, 0xfc, 0xcb, 0x75, 0x0d,
+        0x6d, 0xcd, 0x68, 0xb3, 0x7c, 0xc8, 0xb3, 0xee,
+        0x48, 0x76, 0x76, 0x80, 0xfb, 0x41, 0x2b, 0x4d,
+        0xe1, 0xb0, 0x6b, 0xe0, 0xef, 0xee, 0x48, 0x2e,
+        0x03, 0xb6, 0x7f, 0x85, 0xcc, 0x0a, 0x24, 0xbb,
+        0x2c, 0x63, 0x65, 0x40, 0xc4, 0x8c, 0xb1, 0xf0,
+        0xa2, 0x9e, 0x06, 0xe5, 0x13, 0x99, 0x16, 0x3b,
+        0xbb, 0x63, 0x6a, 0x37, 0xfe, 0x84, 0x4b, 0x86,
+        0x16, 0x78, 0x5a, 0x0b, 0x99, 0x04, 0xb6, 0xbb,
+        0x97, 0x97, 0x6b, 0xc1, 0xa2, 0x76, 0x90, 0x7b,
+        0xf8, 0xaf, 0x3e, 0x09, 0x43, 0x16, 0x22, 0xbc,
+        0xd6, 0xf6, 0x86, 0xaa, 0xdc, 0x44, 0x9b, 0x4d,
+        0x75, 0xee, 0x87, 0xfc, 0xcf, 0xaf, 0x05, 0x48,
+        0xfb, 0x74, 0x12, 0x4b, 0xc2, 0x5a, 0xc3, 0x54,
+        0x20, 0x89, 0x21, 0x39, 0x9a, 0xae, 0x53, 0x71,
+        0x07, 0xd3, 0x7a, 0x52, 0xbb, 0xac, 0xb3, 0xd1,
+        0x33, 0x21, 0xa2, 0x90, 0xa2, 0x2a, 0x74, 0xdb,
+        0xdd, 0xd2, 0x83, 0x7e, 0x2f, 0x3b, 0xd3, 0x08,
+        0xc7, 0xec, 0x1e, 0x15, 0xc3, 0x27, 0xa7, 0x76,
+        0x2f, 0x1a, 0xdd, 0xea, 0x1e, 0x8b, 0x07, 0x26,
+        0x31, 0x92, 0x66, 0x44, 0x79, 0x9b, 0x42, 0x8c,
+        0x7d, 0x2d, 0xbb, 0xe6, 0x83, 0x43, 0xdd, 0x85,
+        0x59, 0x0b, 0x35, 0xee, 0xb7, 0x9f, 0x16, 0xa4,
+        0x84, 0x4a, 0x8a, 0x6f, 0x8b, 0xdc, 0x94, 0x79,
+        0x82, 0x6f, 0x90, 0x30, 0x7c, 0x2a, 0xbe, 0xcd,
+        0xc8, 0xb7, 0xfd, 0x7b, 0x6f, 0x5d, 0xb8, 0x39,
+        0x3c, 0xb0, 0xfe, 0x23, 0x7b, 0x27, 0xa1, 0x4e,
+        0xee, 0xae, 0x01, 0xbb, 0x01, 0x12, 0x02, 0xa4,
+        0xb6, 0xd0, 0x6d, 0xd5, 0xd2, 0x7f, 0xfc, 0xd2,
+        0xfe, 0xfb, 0xa5, 0x14, 0xf6, 0x0a, 0xe1, 0xc4,
+        0xd3, 0xd0, 0x86, 0x0c, 0x3c, 0x68, 0x38, 0xc5,
+        0xf7, 0x17, 0x53, 0xc9, 0x35, 0xc9, 0xa0, 0x9b,
+        0xe4, 0x56, 0x4c, 0xd3, 0xf0, 0x6e, 0xa8, 0x00,
+        0xe9, 0xa4, 0x67, 0x69, 0x1b, 0x1a, 0x61, 0x98,
+        0xed, 0x66, 0x7c, 0x8a, 0xc1, 0x24, 0x7b, 0x77,
+        0x02, 0x60, 0xf1, 0x35, 0xd5, 0x71, 0x0e, 0xdf,
+        0xf2, 0xd5, 0xf7, 0xfd, 0xe0, 0xc0, 0xf7, 0x07,
+        0x0d, 0x78, 0xb1, 0xef, 0x1f, 0xf0, 0xdc, 0xd3,
+        0x8c, 0x0a, 0x89, 0xa5, 0xf6, 0x4c, 0xfd, 0x9a,
+        0xea, 0x9b, 0x73, 0xed, 0x03, 0x73, 0xf5, 0x1d,
+        0xd6, 0xfd, 0x7f, 0xe3, 0xb0, 0xc6, 0x14, 0x12,
+        0x19, 0x04, 0x74, 0x55, 0xfe, 0x07, 0x45, 0x6e,
+        0x96, 0x3a, 0x2d, 0x45, 0x51, 0x0f, 0x22, 0x48,
+        0xc5, 0xb8, 0x3a, 0xba, 0xe1, 0xd2, 0xec, 0x41,
+        0x5c, 0x94, 0x6c, 0x4e, 0x4f, 0xfa, 0xa3, 0xb9,
+        0xb6, 0x2b, 0xe7, 0x0c, 0x67, 0x27, 0x0a, 0xc1,
+        0x44, 0x7c, 0x3f, 0xfd, 0x40, 0xa2, 0xe8, 0xce,
+        0x7c, 0xeb, 0x1b, 0x27, 0xfa, 0xaf, 0xf6, 0xd7,
+        0xd8, 0xe2, 0xa3, 0x2e, 0xf1, 0xc0, 0xc2, 0x37,
+        0x5e, 0x94, 0x41, 0x56, 0xef, 0x1a, 0x3b, 0xc9,
+        0xde, 0xb4, 0x7d, 0x84, 0xdf, 0x9b, 0xcb, 0xb9,
+        0x3c, 0xee, 0x5b, 0xad, 0x7d, 0xb3, 0xb7, 0x9a,
+        0xca, 0x97, 0x7f, 0x70, 0x0d, 0x86, 0x8b, 0xfa,
+        0x93, 0x15, 0x25, 0x47, 0x0c, 0x80, 0x2f, 0xd0,
+        0xe9, 0x2e, 0xc7, 0x14, 0x43, 0xe4, 0x65, 0x90,
+        0xe6, 0x0e, 0xe0, 0xcc, 0x67, 0xb9, 0x8c, 0xe0,
+        0x23, 0x09, 0xa4, 0x23, 0x3b, 0xe0, 0x97, 0x56,
+        0x1a, 0x92, 0x57, 0xf4, 0x42, 0x21, 0xeb, 0xec,
+        0x1b, 0x26, 0xee, 0x87, 0x28, 0x2b, 0x6d, 0x81,
+        0x21, 0xca, 0x79, 0xa8, 0xa4, 0x5b, 0xcf, 0xf7,
+        0xc3, 0x6a, 0x96, 0x05, 0xb7, 0x0a, 0x81, 0xee,
+        0x72, 0xdf, 0xe8, 0xd5, 0xd8, 0x15, 0x98, 0x9f,
+        0x57, 0x0c, 0xa1, 0xfc, 0x21, 0xe6, 0x9c, 0x35,
+        0x3d, 0x51, 0x6c, 0x4b, 0xf2, 0xd3, 0x17, 0x1c,
+        0xdf, 0xa2, 0x5f, 0x2a, 0x6f, 0x99, 0x05, 0xb7,
+        0x83, 0x50, 0xbb, 0xb6, 0x12, 0x7a, 0xcf, 0xbb,
+        0xe8, 0x5c, 0x2c, 0xc2, 0xeb, 0xff, 0xc0, 0x0a,
+        0xc5, 0x3c, 0x7e, 0xb7, 0x99, 0x35, 0xfb, 0x02,
+        0x58, 0x01, 0xf0, 0x77, 0xcb, 0xd4, 0x65, 0xba,
+        0x0c, 0x2f, 0xcb, 0xe9, 0x3d, 0xef, 0xf7, 0xf3,
+        0x80, 0x24, 0x03, 0x8b, 0xe3, 0x71, 0x7a, 0xae,
+        0x44, 0xd6, 0x9b, 0x92, 0x3f, 0x19, 0xc8, 0x8b,
+        0x8f, 0x44, 0xd1, 0x39, 0x85, 0x3d, 0xbf, 0x00,
+        0x6d, 0x7b, 0x7f, 0x1a, 0x36, 0xab, 0x26, 0xd7,
+        0x4f, 0x8b, 0xca, 0x46, 0x0f, 0x31, 0x30, 0xc9,
+        0xd0, 0xbb, 0x45, 0x3e, 0x09, 0x99, 0x52, 0x70,
+        0x6f, 0xa9, 0x8a, 0xac, 0x93, 0x52, 0xb3, 0x3b,
+        0xb2, 0xe3, 0x59, 0x11, 0x87, 0x63, 0xdc, 0xcf,
+        0x71, 0x9b, 0x0e, 0x4f, 0xf4, 0xfc, 0xd2, 0x05,
+        0xbb, 0x44, 0x4f, 0x8d, 0xf0, 0xb6, 0x3b, 0x0e,
+        0x17, 0x45, 0xd2, 0x33, 0x3c, 0xf3, 0x15, 0x65,
+        0x87, 0x87, 0x75, 0xd2, 0x7d, 0x8e, 0x8b, 0xf6,
+        0x59, 0x7e, 0xc7, 0xcd, 0x67, 0x32, 0x58, 0x66,
+        0xc5, 0xec, 0x10, 0x21, 0x50, 0x9e, 0x4b, 0x9e,
+        0x6d, 0xfc, 0xc3, 0x43, 0x88, 0x7a, 0xfa, 0xb7,
+        0x0d, 0x25, 0x29, 0x75, 0x6f, 0xaf, 0xf4, 0x30,
+        0xc6, 0xc6, 0x00, 0x98, 0x19, 0x39, 0x1f, 0x5e,
+        0x73, 0xb9, 0x1a, 0xdb, 0x1d, 0xd3, 0xe0, 0x7a,
+        0x14, 0x49, 0x2d, 0xe7, 0x25, 0x55, 0xf6, 0x0c,
+        0xff, 0xdb, 0xf0, 0x14, 0x7c, 0xe7, 0x8b, 0x4c,
+        0x65, 0xbd, 0xc2, 0x8e, 0xfd, 0xd2, 0x1e, 0x9e,
+        0xb6, 0x12, 0xb0, 0x8c, 0x3d, 0x52, 0xb2, 0x48,
+        0xc3, 0x0c, 0x08, 0x07, 0xd3, 0x8a, 0x18, 0xe9,
+        0xfd, 0x07, 0x54, 0x3c, 0xbe, 0x97, 0xca, 0x70,
+        0xe7, 0x60, 0x5a, 0xb0, 0xb9, 0x44, 0xb2, 0x98,
+        0xfa, 0xcc, 0x13, 0x92, 0xf6, 0x74, 0x20, 0x14,
+        0x0a, 0x18, 0xd6, 0x4a, 0xc0, 0x73, 0x9c, 0xee,
+        0x0d, 0x86, 0x03, 0x3c, 0xe4, 0x59, 0xe1, 0xf6,
+        0x07, 0x1c, 0xd5, 0x61, 0x0f, 0xb2, 0x7b, 0x49,
+        0xf4, 0xab, 0x87, 0x32, 0x08, 0xef, 0x8e, 0xda,
+        0x43, 0xa3, 0x84, 0xf3, 0x98, 0xd4, 0xbc, 0x85,
+        0x2f, 0x49, 0x89, 0xc7, 0xae, 0x9b, 0xcb, 0x44,
+        0x17, 0x2c, 0x60, 0x1f, 0x42, 0x9a, 0x0c, 0x8e,
+        0xc4, 0x1d, 0xc9, 0xa5, 0x05, 0xc3, 0x19, 0x9d,
+        0xb9, 0x9f, 0xe8, 0xc7, 0xf0, 0x4d, 0x06, 0x6f,
+        0x6f, 0x64, 0xbc, 0xc9, 0x09, 0xbe, 0xf2, 0x88,
+        0x60, 0x52, 0x4c, 0xe9, 0x97, 0xeb, 0xfd, 0xe0,
+        0xe6, 0x9c, 0x34, 0x10, 0xed, 0x7c, 0x10, 0x8a,
+        0x79, 0x67, 0xd6, 0x75, 0x40, 0x46, 0x20, 0x5c,
+        0xd2, 0x6a, 0x7e, 0x6c, 0x5a, 0x74, 0x74, 0x6c,
+        0xd8, 0xb9, 0x94, 0xc8, 0x9a, 0xff, 0xed, 0x10,
+        0xcf, 0x6f, 0x91, 0xba, 0x5d, 0xfd, 0x33, 0x08,
+        0x69, 0xc2, 0x7d, 0x35, 0x93, 0x24, 0xe7, 0x54,
+        0x2a, 0x21, 0xcf, 0x7b, 0xf4, 0x72, 0xbb, 0x2c,
+        0xe0, 0xca, 0x76, 0xb6, 0x2d, 0xeb, 0x0d, 0x20,
+        0xc8, 0xb7, 0x0d, 0xee, 0xdf, 0x7b, 0x9c, 0x31,
+        0x9a, 0x7b, 0x15, 0x34, 0xdf, 0x2f, 0x53, 0x18,
+        0xe3, 0xa8, 0xe1, 0xe4, 0xe6, 0xa5, 0xbb, 0x7a,
+        0xf9, 0x31, 0xa6, 0x46, 0x01, 0x95, 0xb1, 0xc7,
+        0x3d, 0xca, 0x3e, 0xc5, 0x9b, 0x13, 0x3f, 0x82,
+        0x68, 0xc5, 0xe3, 0xe1, 0x2f, 0x23, 0xa2, 0x34,
+        0x65, 0x82, 0x21, 0xa8, 0x20, 0x8f, 0xe1, 0x19,
+        0x24, 0x2a, 0xf4, 0x1b, 0xcd, 0x7c, 0xbc, 0xb7,
+        0x9e, 0xe4, 0x2a, 0xbd, 0x3f, 0x55, 0x5d, 0x81,
+        0xcf, 0x61, 0xdd, 0xd9, 0x71, 0x24, 0xfc, 0xd8,
+        0xc4, 0x5c, 0x1e, 0xf1, 0x2c, 0xb9, 0x26, 0xbd,
+        0x3d, 0x52, 0x85, 0xbe, 0x30, 0xe1, 0xd4, 0x85,
+        0x11, 0x55, 0xfa, 0xd8, 0xa0, 0x56, 0x9e, 0xd3,
+        0x03, 0xe3, 0xf1, 0x1f, 0x2a, 0xd3, 0x9a, 0x7f,
+        0x11, 0xca, 0x7c, 0x40, 0xee, 0x1f, 0xb4, 0x3a,
+        0xc4, 0x50, 0x30, 0x42, 0x85, 0xdc, 0x8b, 0x2f,
+        0xbf, 0x8d, 0xbe, 0xb2, 0x36, 0x18, 0x0b, 0x88,
+        0x12, 0x18, 0xa0, 0xe3, 0x9b, 0xe7, 0xd1, 0x82,
+        0xc4, 0x15, 0x97, 0xf6, 0x99, 0xde, 0x5b, 0x16,
+        0x96, 0x0b, 0x6c, 0x25, 0xd7, 0x13, 0x6b, 0xdf,
+        0xdc, 0x86, 0x5e, 0x8e, 0x53, 0xd0, 0x57, 0xb8,
+        0xf7, 0x4d, 0xfe, 0x06, 0xcd, 0xff, 0xb9, 0xff,
+        0x5a, 0x43, 0x3b, 0x36, 0xa5, 0x8b, 0x57, 0x50,
+        0x71, 0xb2, 0xf5, 0xd0, 0x17, 0x96, 0xd6, 0xf9,
+        0x6f, 0x98, 0xd3, 0x8c, 0x83, 0x2a, 0x39, 0x1e,
+        0xfd, 0x0a, 0x3b, 0xdb, 0x8e, 0xd6, 0x92, 0xc3,
+        0x45, 0x49, 0x87, 0xc0, 0x3e, 0xf9, 0x97, 0xba,
+        0xa5, 0xa0, 0xff, 0x72, 0x72, 0xb8, 0xd5, 0x1a,
+        0xd1, 0x21, 0x32, 0xd8, 0x8b, 0xec, 0x3c, 0x3f,
+        0xd1, 0xfc, 0x00, 0x00, 0x00, 0x01, 0x00, 0x05,
+        0x58, 0x2e, 0x35, 0x30, 0x39, 0x00, 0x00, 0x02,
+        0xcf, 0x30, 0x82, 0x02, 0xcb, 0x30, 0x82, 0x01,
+        0xb3, 0xa0, 0x03, 0x02, 0x01, 0x02, 0x02, 0x04,
+        0x7f, 0xa6, 0x6d, 0x98, 0x30, 0x0d, 0x06, 0x09,
+        0x2a, 0x86, 0x48, 0x86, 0xf7, 0x0d, 0x01, 0x01,
+        0x0b, 0x05, 0x00, 0x30, 0x15, 0x31, 0x13, 0x30,
+        0x11, 0x06, 0x03, 0x55, 0x04, 0x03, 0x13, 0x0a,
+        0x73, 0x65, 0x63, 0x75, 0x72, 0x65, 0x63, 0x68,
+        0x61, 0x74, 0x30, 0x20, 0x17, 0x0d, 0x31, 0x30,
+        0x30, 0x31, 0x30, 0x31, 0x30, 0x30, 0x30, 0x30,
+        0x30, 0x30, 0x5a, 0x18, 0x0f, 0x32, 0x31, 0x30,
+        0x39, 0x31, 0x32, 0x30, 0x38, 0x30, 0x30, 0x30,
+        0x30, 0x30, 0x30, 0x5a, 0x30, 0x15, 0x31, 0x13,
+        0x30, 0x11, 0x06, 0x03, 0x55, 0x04, 0x03, 0x13,
+        0x0a, 0x73, 0x65, 0x63, 0x75, 0x72, 0x65, 0x63,
+        0x68, 0x61, 0x74, 0x30, 0x82, 0x01, 0x22, 0x30,
+        0x0d, 0x06, 0x09, 0x2a, 0x86, 0x48, 0x86, 0xf7,
+        0x0d, 0x01, 0x01, 0x01, 0x05, 0x00, 0x03, 0x82,
+        0x01, 0x0f, 0x00, 0x30, 0x82, 0x01, 0x0a, 0x02,
+        0x82, 0x01, 0x01, 0x00, 0xc3, 0xfa, 0xb1, 0x03,
+        0x09, 0x72, 0x6b, 0x9e, 0x41, 0x25, 0x65, 0xb4,
+        0x66, 0xfa, 0x30, 0xc4, 0x1a, 0x26, 0xf9, 0xef,
+        0xd3, 0x85, 0x63, 0x49, 0x45, 0xbd, 0x78, 0x79,
+        0x54, 0x08, 0xc9, 0xe7, 0xa6, 0x6c, 0x37, 0xf1,
+        0x3d, 0x0c, 0xcc, 0x2b, 0xd4, 0x43, 0xb3, 0x31,
+        0x62, 0x48, 0x1d, 0x77, 0xb7, 0x33, 0x69, 0xbf,
+        0x2c, 0x62, 0x37, 0x7e, 0x39, 0xde, 0xe5, 0x06,
+        0xd1, 0x1f, 0x5f, 0x9e, 0xc6, 0xc0, 0x52, 0x7b,
+        0x47, 0x05, 0xa7, 0xd4, 0x2e, 0x9b, 0x97, 0x9d,
+        0x3b, 0x82, 0x44, 0xd6, 0x34, 0x90, 0x9f, 0x08,
+        0x38, 0x30, 0x59, 0xb6, 0x36, 0x1d, 0x85, 0x87,
+        0x37, 0x86, 0x38, 0x04, 0x0f, 0x15, 0x1e, 0x5a,
+        0x10, 0xf7, 0xc7, 0xe1, 0x89, 0xd3, 0x0e, 0xdc,
+        0xe7, 0x57, 0x33, 0x87, 0x3a, 0x92, 0xe0, 0x55,
+        0x3e, 0x33, 0x04, 0xbb, 0x42, 0x8f, 0xce, 0xef,
+        0xbc, 0x6e, 0xc3, 0x5d, 0x1f, 0x80, 0xec, 0x03,
+        0x92, 0x1f, 0xf6, 0x6d, 0xc6, 0x22, 0xda, 0xae,
+        0x79, 0x12, 0xe9, 0xd9, 0x20, 0x66, 0xb0, 0xfb,
+        0x68, 0x2f, 0xa6, 0x87, 0x46, 0xb1, 0x29, 0x57,
+        0x34, 0x15, 0xd5, 0x6b, 0xc2, 0x4d, 0x0b, 0x9a,
+        0xb8, 0x63, 0x1d, 0xc4, 0x71, 0xb1, 0xcf, 0xdd,
+        0xe9, 0xe1, 0x3b, 0x33, 0xf3, 0x63, 0xec, 0x32,
+        0x47, 0xc6, 0x4b, 0x5c, 0x4a, 0x44, 0xef, 0x10,
+        0xdb, 0xf4, 0x23, 0x58, 0x0d, 0x89, 0x0b, 0xb8,
+        0x2b, 0x31, 0xa7, 0x09, 0xb4, 0x73, 0xbd, 0x9f,
+        0xde, 0xfc, 0xa2, 0xaa, 0xad, 0xfb, 0x9c, 0xca,
+        0x25, 0xa8, 0xd2, 0x75, 0x50, 0x04, 0x50, 0xec,
+        0xaa, 0x83, 0x0e, 0xdf, 0xc2, 0x3b, 0xe8, 0xd4,
+        0x50, 0x43, 0xfd, 0x58, 0x33, 0x35, 0xb9, 0x9c,
+        0xbf, 0x88, 0x6a, 0xae, 0x66, 0x05, 0xea, 0x23,
+        0x7f, 0x53, 0xf5, 0xeb, 0x29, 0x0e, 0xf7, 0x4a,
+        0xad, 0xa9, 0xeb, 0x81, 0x02, 0x03, 0x01, 0x00,
+        0x01, 0xa3, 0x21, 0x30, 0x1f, 0x30, 0x1d, 0x06,
+        0x03, 0x55, 0x1d, 0x0e, 0x04, 0x16, 0x04, 0x14,
+        0xe7, 0xfb, 0xbb, 0xd0, 0x7a, 0x66, 0xf7, 0x6b,
+        0x2f, 0x54, 0x98, 0x9e, 0x06, 0x30, 0xf9, 0x15,
+        0x32, 0xed, 0x1f, 0x36, 0x30, 0x0d, 0x06, 0x09,
+        0x2a, 0x86, 0x48, 0x86, 0xf7, 0x0d, 0x01, 0x01,
+        0x0b, 0x05, 0x00, 0x03, 0x82, 0x01, 0x01, 0x00,
+        0xbe, 0x10, 0x35, 0xc2, 0xcf, 0x15, 0x67, 0x94,
+        0xcf, 0x37, 0x4d, 0xf9, 0xf9, 0xd9, 0x28, 0xea,
+        0xdf, 0x34, 0xd1, 0xbf, 0xb6, 0x46, 0x5f, 0xa0,
+        0xc2, 0xec, 0xbb, 0x55, 0xc7, 0x83, 0x38, 0xa5,
+        0x34, 0x36, 0x45, 0x28, 0x43, 0xe6, 0x5d, 0x82,
+        0xcc, 0xc4, 0xed, 0x9e, 0x33, 0xf9, 0x9b, 0x28,
+        0x3c, 0x05, 0xe1, 0xb9, 0x29, 0xa4, 0x8c, 0xb3,
+        0x98, 0xee, 0x89, 0xb5, 0x7a, 0xb7, 0xa9, 0xb8,
+        0x83, 0xb7, 0x31, 0x75, 0xa4, 0xd0, 0xea, 0xb3,
+        0xab, 0xbb, 0x7c, 0xe8, 0x38, 0x54, 0xa9, 0xe4,
+        0x83, 0x92, 0x4d, 0x90, 0xca, 0xd5, 0x3a, 0xfb,
+        0x68, 0x64, 0x9c, 0xe4, 0xb7, 0xb6, 0xa3, 0x79,
+        0x17, 0xc0, 0x67, 0xf9, 0x6f, 0xcd, 0xf9, 0xb1,
+        0x9f, 0xc8, 0x54, 0x82, 0x4c, 0x5c, 0x56, 0xb6,
+        0xcb, 0x86, 0x68, 0xc6, 0x1a, 0x98, 0x3b, 0x13,
+        0x1f, 0x45, 0x88, 0xab, 0x51, 0x15, 0xa5, 0x87,
+        0x5c, 0x39, 0xb6, 0xc4, 0x57, 0x75, 0x5f, 0x35,
+        0x06, 0x1a, 0xf5, 0x39, 0xc5, 0x7e, 0x4e, 0x92,
+        0x7d, 0x40, 0x02, 0x52, 0x26, 0x16, 0xd2, 0x8f,
+        0x92, 0x02, 0x49, 0xac, 0x64, 0x33, 0xde, 0x5b,
+        0x3f, 0x1a, 0x25, 0x45, 0xc3, 0xd4, 0xf0, 0x82,
+        0xe4, 0x5f, 0x30, 0x5c, 0x5c, 0xad, 0x7b, 0xc9,
+        0x16, 0x03, 0x7b, 0x7b, 0xe0, 0x0b, 0x41, 0xc0,
+        0x70, 0x17, 0xae, 0x96, 0x0c, 0x74, 0xf9, 0x31,
+        0x95, 0x4e, 0xd0, 0xa8, 0x05, 0x31, 0x92, 0x77,
+        0x55, 0x51, 0xb0, 0x14, 0xda, 0x52, 0xfc, 0x13,
+        0xbd, 0x85, 0x63, 0xde, 0x3f, 0x6d, 0xe2, 0xd5,
+        0x90, 0x6e, 0xf9, 0x2d, 0xb0, 0xcb, 0x00, 0xfc,
+        0xa0, 0x0e, 0x1d, 0x12, 0x19, 0xdd, 0xd8, 0x0e,
+        0xe1, 0x3e, 0x55, 0xbf, 0x02, 0x70, 0x27, 0x7c,
+        0x43, 0xbf, 0x1b, 0x09, 0xf9, 0xde, 0x78, 0xdb,
+        0x31, 0xe3, 0xa5, 0x2f, 0xea, 0x1c, 0xf3, 0xf4,
+        0xcc, 0x74, 0xd5, 0xea, 0x03, 0xe5, 0x2b, 0xea,
+        0x3a, 0xed, 0x5c, 0x9e, 0x2b, 0x7b, 0xe0, 0x58,
+        0x3c, 0x7f, 0xcb, 0xa0 };
 
     public static InputStream asInputStream() {
         byte[] data = new byte[DATA.length];
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.codec.binary;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The classes whose instances can be encoded by a {@link BinaryObjectEncoder}
+ * and decoded by a {@link BinaryObjectDecoder}.  Instead of the class name,
+ * only the ID of a class is written, so both sides must register the same
+ * classes in the same order:
+ * <pre>
+ * {@link BinaryClassRegistry} registry = new {@link BinaryClassRegistry}();
+ * registry.register(MyRequest.class);
+ * registry.register(MyResponse.class);
+ * registry.register(MyStatus.class); // an enum
+ * </pre>
+ * The following types are supported without registration: the primitive
+ * wrappers, {@link String}, {@code byte[]}, {@code int[]}, {@code long[]},
+ * {@code double[]}, {@code Object[]}, {@link java.util.ArrayList},
+ * {@link java.util.HashMap} and {@link java.util.HashSet}.  An array of a
+ * registered class or of {@link String} is also supported.
+ * <p>
+ * A registered class must be an {@code enum} or have a constructor without
+ * parameters.  All its non-static and non-transient fields, including the
+ * ones declared in its super classes, are encoded.  They are looked up only
+ * once when the class is registered.
+ * <p>
+ * A registry can be shared by many encoders and decoders.  Registering a
+ * class while they are in use is allowed, but the other side will fail to
+ * decode the instances of the class until it registers the class too.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public class BinaryClassRegistry {
+
+    /**
+     * The ID of the first registered class.  The smaller IDs are reserved
+     * for the built-in types.
+     */
+    static final int FIRST_ID = 32;
+
+    private final Object lock = new Object();
+    // Replaced on registration so that the lookups do not need a lock.
+    private volatile Map<Class<?>, ClassSchema> schemas = new HashMap<Class<?>, ClassSchema>();
+    private volatile ClassSchema[] schemasById = new ClassSchema[0];
+
+    /**
+     * Creates a new empty registry.
+     */
+    public BinaryClassRegistry() {
+        super();
+    }
+
+    /**
+     * Registers the specified class if it is not registered yet.
+     *
+     * @return the ID of the class
+     *
+     * @throws IllegalArgumentException
+     *         if the class is an interface, an abstract class or an array,
+     *         or it has no constructor without parameters
+     */
+    public int register(Class<?> type) {
+        if (type == null) {
+            throw new NullPointerException("type");
+        }
+
+        synchronized (lock) {
+            ClassSchema schema = schemas.get(type);
+            if (schema != null) {
+                return schema.id;
+            }
+
+            ClassSchema[] oldSchemasById = schemasById;
+            schema = new ClassSchema(type, FIRST_ID + oldSchemasById.length);
+
+            ClassSchema[] newSchemasById = new ClassSchema[oldSchemasById.length + 1];
+            System.arraycopy(oldSchemasById, 0, newSchemasById, 0, oldSchemasById.length);
+            newSchemasById[oldSchemasById.length] = schema;
+            Map<Class<?>, ClassSchema> newSchemas = new HashMap<Class<?>, ClassSchema>(schemas);
+            newSchemas.put(type, schema);
+
+            schemasById = newSchemasById;
+            schemas = newSchemas;
+            return schema.id;
+        }
+    }
+
+    /**
+     * Returns {@code true} if and only if the specified class has been
+     * registered.
+     */
+    public boolean isRegistered(Class<?> type) {
+        return schemas.containsKey(type);
+    }
+
+    /**
+     * Returns the number of the registered classes.
+     */
+    public int size() {
+        return schemasById.length;
+    }
+
+    /**
+     * Returns the schema of the specified class, or {@code null} if it is not
+     * registered.
+     */
+    ClassSchema getSchema(Class<?> type) {
+        return schemas.get(type);
+    }
+
+    /**
+     * Returns the schema of the class with the specified ID, or {@code null}
+     * if there is no such class.
+     */
+    ClassSchema getSchema(int id) {
+        ClassSchema[] schemasById = this.schemasById;
+        int index = id - FIRST_ID;
+        if (index < 0 || index >= schemasById.length) {
+            return null;
+        }
+        return schemasById[index];
+    }
+}
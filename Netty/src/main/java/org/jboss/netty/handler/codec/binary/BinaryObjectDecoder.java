@@ -0,0 +1,95 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.codec.binary;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.frame.CorruptedFrameException;
+import org.jboss.netty.handler.codec.frame.LengthFieldBasedFrameDecoder;
+import org.jboss.netty.handler.codec.frame.TooLongFrameException;
+
+/**
+ * A decoder which reads an object written by a {@link BinaryObjectEncoder}
+ * from a {@link ChannelBuffer}.  It must be given a
+ * {@link BinaryClassRegistry} with the same classes registered in the same
+ * order as the one of the encoder.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ *
+ * @apiviz.landmark
+ * @apiviz.uses org.jboss.netty.handler.codec.binary.BinaryClassRegistry
+ */
+public class BinaryObjectDecoder extends LengthFieldBasedFrameDecoder {
+
+    private final BinaryClassRegistry registry;
+
+    /**
+     * Creates a new decoder whose maximum object size is {@code 1048576}
+     * bytes.  If the size of the received object is greater than
+     * {@code 1048576} bytes, a {@link TooLongFrameException} will be raised.
+     */
+    public BinaryObjectDecoder(BinaryClassRegistry registry) {
+        this(registry, 1048576);
+    }
+
+    /**
+     * Creates a new decoder with the specified maximum object size.
+     *
+     * @param maxObjectSize  the maximum byte length of the encoded object.
+     *                       if the length of the received object is greater
+     *                       than this value, {@link TooLongFrameException}
+     *                       will be raised.
+     */
+    public BinaryObjectDecoder(BinaryClassRegistry registry, int maxObjectSize) {
+        super(maxObjectSize, 0, 4, 0, 4);
+        if (registry == null) {
+            throw new NullPointerException("registry");
+        }
+        this.registry = registry;
+    }
+
+    @Override
+    protected Object decode(
+            ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception {
+
+        ChannelBuffer frame = (ChannelBuffer) super.decode(ctx, channel, buffer);
+        if (frame == null) {
+            return null;
+        }
+
+        Object decoded;
+        try {
+            int flags = frame.readByte();
+            boolean referenceTracking = (flags & BinaryObjectWriter.FLAG_REFERENCES) != 0;
+            decoded = new BinaryObjectReader(registry, frame, referenceTracking).readObject();
+        } catch (IndexOutOfBoundsException e) {
+            throw new CorruptedFrameException("truncated object", e);
+        }
+        if (frame.readable()) {
+            throw new CorruptedFrameException(
+                    frame.readableBytes() + " trailing bytes after an object");
+        }
+        return decoded;
+    }
+
+    @Override
+    protected ChannelBuffer extractFrame(ChannelBuffer buffer, int index, int length) {
+        return buffer.slice(index, length);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.codec.binary;
+
+import static org.jboss.netty.buffer.ChannelBuffers.*;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelHandler.Sharable;
+import org.jboss.netty.handler.codec.oneone.OneToOneEncoder;
+
+/**
+ * An encoder which writes an object into a {@link ChannelBuffer} in a
+ * compact binary form, using the classes registered to a
+ * {@link BinaryClassRegistry}.  Unlike
+ * {@link org.jboss.netty.handler.codec.serialization.ObjectEncoder}, it does
+ * not write any class descriptor and writes the integers as variable-length
+ * integers.  A typical setup is:
+ * <pre>
+ * {@link BinaryClassRegistry} registry = ...; // the same classes on both sides
+ * {@link ChannelPipeline} pipeline = ...;
+ * pipeline.addLast("decoder", new {@link BinaryObjectDecoder}(registry));
+ * pipeline.addLast("encoder", new {@link BinaryObjectEncoder}(registry));
+ * </pre>
+ *
+ * <h3>Reference tracking</h3>
+ * By default, an object which appears more than once in the encoded object
+ * graph is written only once, so that the decoded graph has the same shape
+ * and cyclic graphs can be encoded.  If your messages are trees, you can
+ * switch reference tracking off to avoid the cost of the lookups.  An object
+ * which appears more than once is then written more than once, and a cyclic
+ * graph must not be encoded at all.  The decoder does not need to be told
+ * because every message records whether reference tracking was on.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ *
+ * @apiviz.landmark
+ * @apiviz.uses org.jboss.netty.handler.codec.binary.BinaryClassRegistry
+ */
+@Sharable
+public class BinaryObjectEncoder extends OneToOneEncoder {
+    private static final byte[] LENGTH_PLACEHOLDER = new byte[4];
+
+    private final BinaryClassRegistry registry;
+    private final boolean referenceTracking;
+    private final int estimatedLength;
+
+    /**
+     * Creates a new encoder which tracks references, with the estimated
+     * length of 256 bytes.
+     */
+    public BinaryObjectEncoder(BinaryClassRegistry registry) {
+        this(registry, true);
+    }
+
+    /**
+     * Creates a new encoder with the estimated length of 256 bytes.
+     *
+     * @param referenceTracking
+     *        {@code true} if an object which appears more than once in a
+     *        message should be written only once
+     */
+    public BinaryObjectEncoder(BinaryClassRegistry registry, boolean referenceTracking) {
+        this(registry, referenceTracking, 256);
+    }
+
+    /**
+     * Creates a new encoder.
+     *
+     * @param referenceTracking
+     *        {@code true} if an object which appears more than once in a
+     *        message should be written only once
+     * @param estimatedLength
+     *        the estimated byte length of the encoded form of an object.
+     *        If the length of the encoded form exceeds this value, the
+     *        buffer will be expanded automatically at the cost of memory
+     *        bandwidth.
+     */
+    public BinaryObjectEncoder(
+            BinaryClassRegistry registry, boolean referenceTracking, int estimatedLength) {
+        if (registry == null) {
+            throw new NullPointerException("registry");
+        }
+        if (estimatedLength < 0) {
+            throw new IllegalArgumentException(
+                    "estimatedLength: " + estimatedLength);
+        }
+        this.registry = registry;
+        this.referenceTracking = referenceTracking;
+        this.estimatedLength = estimatedLength;
+    }
+
+    /**
+     * Returns {@code true} if and only if this encoder writes an object which
+     * appears more than once in a message only once.
+     */
+    public boolean isReferenceTracking() {
+        return referenceTracking;
+    }
+
+    @Override
+    protected Object encode(ChannelHandlerContext ctx, Channel channel, Object msg) throws Exception {
+        ChannelBuffer encoded = dynamicBuffer(
+                estimatedLength, ctx.getChannel().getConfig().getBufferFactory());
+        encoded.writeBytes(LENGTH_PLACEHOLDER);
+        encoded.writeByte(referenceTracking? BinaryObjectWriter.FLAG_REFERENCES : 0);
+        new BinaryObjectWriter(registry, encoded, referenceTracking).writeObject(msg);
+        encoded.setInt(0, encoded.writerIndex() - 4);
+        return encoded;
+    }
+}
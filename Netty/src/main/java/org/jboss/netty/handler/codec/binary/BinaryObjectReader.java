@@ -0,0 +1,259 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.codec.binary;
+
+import static org.jboss.netty.handler.codec.binary.BinaryObjectWriter.*;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.handler.codec.frame.CorruptedFrameException;
+
+/**
+ * Reads an object graph written by a {@link BinaryObjectWriter} from a
+ * {@link ChannelBuffer}.  A new instance is created for each message.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+final class BinaryObjectReader {
+
+    static int decodeZigZag(int v) {
+        return v >>> 1 ^ -(v & 1);
+    }
+
+    static long decodeZigZag(long v) {
+        return v >>> 1 ^ -(v & 1);
+    }
+
+    private final BinaryClassRegistry registry;
+    final ChannelBuffer buffer;
+    private final List<Object> references;
+
+    BinaryObjectReader(BinaryClassRegistry registry, ChannelBuffer buffer, boolean referenceTracking) {
+        this.registry = registry;
+        this.buffer = buffer;
+        references = referenceTracking? new ArrayList<Object>() : null;
+    }
+
+    Object readObject() throws Exception {
+        int tag = readVarInt();
+        switch (tag) {
+        case NULL:
+            return null;
+        case REFERENCE: {
+            if (references == null) {
+                throw new CorruptedFrameException("reference without reference tracking");
+            }
+            int index = readVarInt();
+            if (index < 0 || index >= references.size()) {
+                throw new CorruptedFrameException("invalid reference: " + index);
+            }
+            return references.get(index);
+        }
+        case STRING:
+            return readString();
+        case INT:
+            return Integer.valueOf(decodeZigZag(readVarInt()));
+        case LONG:
+            return Long.valueOf(decodeZigZag(readVarLong()));
+        case BOOLEAN:
+            return Boolean.valueOf(buffer.readByte() != 0);
+        case BYTE:
+            return Byte.valueOf(buffer.readByte());
+        case SHORT:
+            return Short.valueOf((short) decodeZigZag(readVarInt()));
+        case CHAR:
+            return Character.valueOf((char) readVarInt());
+        case FLOAT:
+            return Float.valueOf(Float.intBitsToFloat(buffer.readInt()));
+        case DOUBLE:
+            return Double.valueOf(Double.longBitsToDouble(buffer.readLong()));
+        case BYTE_ARRAY: {
+            byte[] a = new byte[readLength(1)];
+            track(a);
+            buffer.readBytes(a);
+            return a;
+        }
+        case INT_ARRAY: {
+            int[] a = new int[readLength(1)];
+            track(a);
+            for (int i = 0; i < a.length; i ++) {
+                a[i] = decodeZigZag(readVarInt());
+            }
+            return a;
+        }
+        case LONG_ARRAY: {
+            long[] a = new long[readLength(1)];
+            track(a);
+            for (int i = 0; i < a.length; i ++) {
+                a[i] = decodeZigZag(readVarLong());
+            }
+            return a;
+        }
+        case DOUBLE_ARRAY: {
+            double[] a = new double[readLength(8)];
+            track(a);
+            for (int i = 0; i < a.length; i ++) {
+                a[i] = Double.longBitsToDouble(buffer.readLong());
+            }
+            return a;
+        }
+        case OBJECT_ARRAY: {
+            int componentId = readVarInt();
+            Class<?> componentType;
+            if (componentId == OBJECT) {
+                componentType = Object.class;
+            } else if (componentId == STRING) {
+                componentType = String.class;
+            } else {
+                componentType = getSchema(componentId).type;
+            }
+            Object[] a = (Object[]) Array.newInstance(componentType, readLength(1));
+            track(a);
+            for (int i = 0; i < a.length; i ++) {
+                Object e = readObject();
+                if (e != null && !componentType.isInstance(e)) {
+                    throw new CorruptedFrameException(
+                            "unexpected element type for " + componentType.getName() +
+                            "[]: " + e.getClass().getName());
+                }
+                a[i] = e;
+            }
+            return a;
+        }
+        case LIST: {
+            int size = readLength(1);
+            ArrayList<Object> l = new ArrayList<Object>(size);
+            track(l);
+            for (int i = 0; i < size; i ++) {
+                l.add(readObject());
+            }
+            return l;
+        }
+        case MAP: {
+            int size = readLength(2);
+            HashMap<Object, Object> m = new HashMap<Object, Object>(size * 4 / 3 + 1);
+            track(m);
+            for (int i = 0; i < size; i ++) {
+                Object key = readObject();
+                m.put(key, readObject());
+            }
+            return m;
+        }
+        case SET: {
+            int size = readLength(1);
+            HashSet<Object> s = new HashSet<Object>(size * 4 / 3 + 1);
+            track(s);
+            for (int i = 0; i < size; i ++) {
+                s.add(readObject());
+            }
+            return s;
+        }
+        default: {
+            ClassSchema schema = getSchema(tag);
+            if (schema.isEnum()) {
+                int ordinal = readVarInt();
+                Object constant = schema.getEnumConstant(ordinal);
+                if (constant == null) {
+                    throw new CorruptedFrameException(
+                            "invalid ordinal for " + schema.type.getName() + ": " + ordinal);
+                }
+                return constant;
+            }
+
+            Object o = schema.newInstance();
+            track(o);
+            schema.readFields(this, o);
+            return o;
+        }
+        }
+    }
+
+    private ClassSchema getSchema(int id) throws CorruptedFrameException {
+        ClassSchema schema = registry.getSchema(id);
+        if (schema == null) {
+            throw new CorruptedFrameException("unknown class ID: " + id);
+        }
+        return schema;
+    }
+
+    private void track(Object o) {
+        if (references != null) {
+            references.add(o);
+        }
+    }
+
+    /**
+     * Reads the length of a string, an array or a collection, making sure
+     * that it does not exceed the remaining bytes so that a corrupted length
+     * does not make us allocate a huge array.
+     */
+    private int readLength(int minElementSize) throws CorruptedFrameException {
+        int length = readVarInt();
+        if (length < 0 || length > buffer.readableBytes() / minElementSize) {
+            throw new CorruptedFrameException("invalid length: " + length);
+        }
+        return length;
+    }
+
+    private String readString() throws CorruptedFrameException {
+        char[] chars = new char[readLength(1)];
+        for (int i = 0; i < chars.length; i ++) {
+            int b = buffer.readByte() & 0xFF;
+            if (b < 0x80) {
+                chars[i] = (char) b;
+            } else if ((b & 0xE0) == 0xC0) {
+                chars[i] = (char) ((b & 0x1F) << 6 | buffer.readByte() & 0x3F);
+            } else if ((b & 0xF0) == 0xE0) {
+                int b2 = buffer.readByte();
+                chars[i] = (char) ((b & 0x0F) << 12 | (b2 & 0x3F) << 6 | buffer.readByte() & 0x3F);
+            } else {
+                throw new CorruptedFrameException("malformed string");
+            }
+        }
+        return new String(chars);
+    }
+
+    int readVarInt() throws CorruptedFrameException {
+        int v = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.readByte();
+            v |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return v;
+            }
+        }
+        throw new CorruptedFrameException("malformed varint");
+    }
+
+    long readVarLong() throws CorruptedFrameException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.readByte();
+            v |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return v;
+            }
+        }
+        throw new CorruptedFrameException("malformed varint");
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.codec.binary;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * Writes an object graph into a {@link ChannelBuffer}.  A new instance is
+ * created for each message.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+final class BinaryObjectWriter {
+
+    // Type tags
+    static final int NULL = 0;
+    static final int REFERENCE = 1;
+    static final int BOOLEAN = 2;
+    static final int BYTE = 3;
+    static final int SHORT = 4;
+    static final int CHAR = 5;
+    static final int INT = 6;
+    static final int LONG = 7;
+    static final int FLOAT = 8;
+    static final int DOUBLE = 9;
+    static final int STRING = 10;
+    static final int BYTE_ARRAY = 11;
+    static final int INT_ARRAY = 12;
+    static final int LONG_ARRAY = 13;
+    static final int DOUBLE_ARRAY = 14;
+    static final int OBJECT_ARRAY = 15;
+    static final int LIST = 16;
+    static final int MAP = 17;
+    static final int SET = 18;
+
+    // The component type of an OBJECT_ARRAY when it is Object.
+    static final int OBJECT = 0;
+
+    /**
+     * The flag in the first byte of a message which tells that the
+     * references are tracked.
+     */
+    static final int FLAG_REFERENCES = 1;
+
+    static int encodeZigZag(int v) {
+        return v << 1 ^ v >> 31;
+    }
+
+    static long encodeZigZag(long v) {
+        return v << 1 ^ v >> 63;
+    }
+
+    private final BinaryClassRegistry registry;
+    final ChannelBuffer buffer;
+    private final Map<Object, Integer> references;
+
+    BinaryObjectWriter(BinaryClassRegistry registry, ChannelBuffer buffer, boolean referenceTracking) {
+        this.registry = registry;
+        this.buffer = buffer;
+        references = referenceTracking? new IdentityHashMap<Object, Integer>() : null;
+    }
+
+    void writeObject(Object o) throws Exception {
+        if (o == null) {
+            buffer.writeByte(NULL);
+            return;
+        }
+
+        Class<?> type = o.getClass();
+
+        // Immutable types - never tracked.
+        if (type == String.class) {
+            buffer.writeByte(STRING);
+            writeString((String) o);
+            return;
+        }
+        if (type == Integer.class) {
+            buffer.writeByte(INT);
+            writeVarInt(encodeZigZag(((Integer) o).intValue()));
+            return;
+        }
+        if (type == Long.class) {
+            buffer.writeByte(LONG);
+            writeVarLong(encodeZigZag(((Long) o).longValue()));
+            return;
+        }
+        if (type == Boolean.class) {
+            buffer.writeByte(BOOLEAN);
+            buffer.writeByte(((Boolean) o).booleanValue()? 1 : 0);
+            return;
+        }
+        if (type == Byte.class) {
+            buffer.writeByte(BYTE);
+            buffer.writeByte(((Byte) o).byteValue());
+            return;
+        }
+        if (type == Short.class) {
+            buffer.writeByte(SHORT);
+            writeVarInt(encodeZigZag(((Short) o).shortValue()));
+            return;
+        }
+        if (type == Character.class) {
+            buffer.writeByte(CHAR);
+            writeVarInt(((Character) o).charValue());
+            return;
+        }
+        if (type == Float.class) {
+            buffer.writeByte(FLOAT);
+            buffer.writeInt(Float.floatToRawIntBits(((Float) o).floatValue()));
+            return;
+        }
+        if (type == Double.class) {
+            buffer.writeByte(DOUBLE);
+            buffer.writeLong(Double.doubleToRawLongBits(((Double) o).doubleValue()));
+            return;
+        }
+        if (o instanceof Enum) {
+            ClassSchema schema = getSchema(((Enum<?>) o).getDeclaringClass());
+            writeVarInt(schema.id);
+            writeVarInt(((Enum<?>) o).ordinal());
+            return;
+        }
+
+        // Mutable types - tracked if requested.
+        ClassSchema schema = null;
+        int tag;
+        if (type.isArray()) {
+            if (type == byte[].class) {
+                tag = BYTE_ARRAY;
+            } else if (type == int[].class) {
+                tag = INT_ARRAY;
+            } else if (type == long[].class) {
+                tag = LONG_ARRAY;
+            } else if (type == double[].class) {
+                tag = DOUBLE_ARRAY;
+            } else {
+                tag = OBJECT_ARRAY;
+            }
+        } else if (type == ArrayList.class) {
+            tag = LIST;
+        } else if (type == HashMap.class) {
+            tag = MAP;
+        } else if (type == HashSet.class) {
+            tag = SET;
+        } else {
+            schema = getSchema(type);
+            tag = schema.id;
+        }
+
+        if (references != null) {
+            Integer index = references.get(o);
+            if (index != null) {
+                buffer.writeByte(REFERENCE);
+                writeVarInt(index.intValue());
+                return;
+            }
+            references.put(o, Integer.valueOf(references.size()));
+        }
+
+        writeVarInt(tag);
+        switch (tag) {
+        case BYTE_ARRAY: {
+            byte[] a = (byte[]) o;
+            writeVarInt(a.length);
+            buffer.writeBytes(a);
+            break;
+        }
+        case INT_ARRAY: {
+            int[] a = (int[]) o;
+            writeVarInt(a.length);
+            for (int v: a) {
+                writeVarInt(encodeZigZag(v));
+            }
+            break;
+        }
+        case LONG_ARRAY: {
+            long[] a = (long[]) o;
+            writeVarInt(a.length);
+            for (long v: a) {
+                writeVarLong(encodeZigZag(v));
+            }
+            break;
+        }
+        case DOUBLE_ARRAY: {
+            double[] a = (double[]) o;
+            writeVarInt(a.length);
+            for (double v: a) {
+                buffer.writeLong(Double.doubleToRawLongBits(v));
+            }
+            break;
+        }
+        case OBJECT_ARRAY: {
+            Class<?> componentType = type.getComponentType();
+            if (componentType == Object.class) {
+                writeVarInt(OBJECT);
+            } else if (componentType == String.class) {
+                writeVarInt(STRING);
+            } else if (componentType.isPrimitive()) {
+                throw new IllegalArgumentException(
+                        "unsupported array type: " + type.getName());
+            } else {
+                writeVarInt(getSchema(componentType).id);
+            }
+            Object[] a = (Object[]) o;
+            writeVarInt(a.length);
+            for (Object e: a) {
+                writeObject(e);
+            }
+            break;
+        }
+        case LIST: {
+            ArrayList<?> l = (ArrayList<?>) o;
+            int size = l.size();
+            writeVarInt(size);
+            for (int i = 0; i < size; i ++) {
+                writeObject(l.get(i));
+            }
+            break;
+        }
+        case MAP: {
+            HashMap<?, ?> m = (HashMap<?, ?>) o;
+            writeVarInt(m.size());
+            for (Map.Entry<?, ?> e: m.entrySet()) {
+                writeObject(e.getKey());
+                writeObject(e.getValue());
+            }
+            break;
+        }
+        case SET: {
+            HashSet<?> s = (HashSet<?>) o;
+            writeVarInt(s.size());
+            for (Object e: s) {
+                writeObject(e);
+            }
+            break;
+        }
+        default:
+            schema.writeFields(this, o);
+        }
+    }
+
+    private ClassSchema getSchema(Class<?> type) {
+        ClassSchema schema = registry.getSchema(type);
+        if (schema == null) {
+            throw new IllegalArgumentException("unregistered class: " + type.getName());
+        }
+        return schema;
+    }
+
+    private void writeString(String s) {
+        int length = s.length();
+        writeVarInt(length);
+        buffer.ensureWritableBytes(length);
+        for (int i = 0; i < length; i ++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                buffer.writeByte(c);
+            } else if (c < 0x800) {
+                buffer.writeByte(0xC0 | c >> 6);
+                buffer.writeByte(0x80 | c & 0x3F);
+            } else {
+                buffer.writeByte(0xE0 | c >> 12);
+                buffer.writeByte(0x80 | c >> 6 & 0x3F);
+                buffer.writeByte(0x80 | c & 0x3F);
+            }
+        }
+    }
+
+    void writeVarInt(int v) {
+        while ((v & ~0x7F) != 0) {
+            buffer.writeByte(v & 0x7F | 0x80);
+            v >>>= 7;
+        }
+        buffer.writeByte(v);
+    }
+
+    void writeVarLong(long v) {
+        while ((v & ~0x7FL) != 0) {
+            buffer.writeByte((int) v & 0x7F | 0x80);
+            v >>>= 7;
+        }
+        buffer.writeByte((int) v);
+    }
+}
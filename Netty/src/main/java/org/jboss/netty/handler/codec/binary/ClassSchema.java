@@ -0,0 +1,130 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.codec.binary;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The cached layout of a class registered to a {@link BinaryClassRegistry}.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+final class ClassSchema {
+
+    private static final Comparator<Field> FIELD_ORDER = new Comparator<Field>() {
+        public int compare(Field f1, Field f2) {
+            return f1.getName().compareTo(f2.getName());
+        }
+    };
+
+    final Class<?> type;
+    final int id;
+    private final Object[] enumConstants;
+    private final Constructor<?> constructor;
+    private final FieldAccessor[] fields;
+
+    ClassSchema(Class<?> type, int id) {
+        if (type.isInterface() || type.isArray() || type.isPrimitive()) {
+            throw new IllegalArgumentException(
+                    "not a concrete class: " + type.getName());
+        }
+
+        this.type = type;
+        this.id = id;
+
+        if (type.isEnum()) {
+            enumConstants = type.getEnumConstants();
+            constructor = null;
+            fields = null;
+            return;
+        }
+
+        if (Modifier.isAbstract(type.getModifiers())) {
+            throw new IllegalArgumentException(
+                    "not a concrete class: " + type.getName());
+        }
+
+        enumConstants = null;
+        try {
+            constructor = type.getDeclaredConstructor();
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(
+                    "no constructor without parameters: " + type.getName());
+        }
+        constructor.setAccessible(true);
+
+        // The fields of the super classes first, each class in name order,
+        // so that the order does not depend on the JVM.
+        List<Class<?>> hierarchy = new ArrayList<Class<?>>();
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            hierarchy.add(0, c);
+        }
+
+        List<FieldAccessor> fields = new ArrayList<FieldAccessor>();
+        for (Class<?> c: hierarchy) {
+            Field[] declaredFields = c.getDeclaredFields();
+            Arrays.sort(declaredFields, FIELD_ORDER);
+            for (Field f: declaredFields) {
+                int modifiers = f.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+                    continue;
+                }
+                f.setAccessible(true);
+                fields.add(FieldAccessor.newInstance(f));
+            }
+        }
+        this.fields = fields.toArray(new FieldAccessor[fields.size()]);
+    }
+
+    boolean isEnum() {
+        return enumConstants != null;
+    }
+
+    /**
+     * Returns the enum constant with the specified ordinal, or {@code null}
+     * if there is no such constant.
+     */
+    Object getEnumConstant(int ordinal) {
+        if (ordinal < 0 || ordinal >= enumConstants.length) {
+            return null;
+        }
+        return enumConstants[ordinal];
+    }
+
+    Object newInstance() throws Exception {
+        return constructor.newInstance();
+    }
+
+    void writeFields(BinaryObjectWriter out, Object o) throws Exception {
+        for (FieldAccessor f: fields) {
+            f.write(out, o);
+        }
+    }
+
+    void readFields(BinaryObjectReader in, Object o) throws Exception {
+        for (FieldAccessor f: fields) {
+            f.read(in, o);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.codec.binary;
+
+import java.lang.reflect.Field;
+
+import org.jboss.netty.handler.codec.frame.CorruptedFrameException;
+
+/**
+ * Reads and writes a field of a class registered to a
+ * {@link BinaryClassRegistry}.  A primitive field is written as is, without
+ * boxing and without a type tag.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+abstract class FieldAccessor {
+
+    static FieldAccessor newInstance(Field field) {
+        Class<?> type = field.getType();
+        if (type == int.class) {
+            return new IntField(field);
+        }
+        if (type == long.class) {
+            return new LongField(field);
+        }
+        if (type == boolean.class) {
+            return new BooleanField(field);
+        }
+        if (type == byte.class) {
+            return new ByteField(field);
+        }
+        if (type == short.class) {
+            return new ShortField(field);
+        }
+        if (type == char.class) {
+            return new CharField(field);
+        }
+        if (type == float.class) {
+            return new FloatField(field);
+        }
+        if (type == double.class) {
+            return new DoubleField(field);
+        }
+        return new ObjectField(field);
+    }
+
+    final Field field;
+
+    FieldAccessor(Field field) {
+        this.field = field;
+    }
+
+    abstract void write(BinaryObjectWriter out, Object o) throws Exception;
+    abstract void read(BinaryObjectReader in, Object o) throws Exception;
+
+    private static final class IntField extends FieldAccessor {
+        IntField(Field field) {
+            super(field);
+        }
+
+        @Override
+        void write(BinaryObjectWriter out, Object o) throws Exception {
+            out.writeVarInt(BinaryObjectWriter.encodeZigZag(field.getInt(o)));
+        }
+
+        @Override
+        void read(BinaryObjectReader in, Object o) throws Exception {
+            field.setInt(o, BinaryObjectReader.decodeZigZag(in.readVarInt()));
+        }
+    }
+
+    private static final class LongField extends FieldAccessor {
+        LongField(Field field) {
+            super(field);
+        }
+
+        @Override
+        void write(BinaryObjectWriter out, Object o) throws Exception {
+            out.writeVarLong(BinaryObjectWriter.encodeZigZag(field.getLong(o)));
+        }
+
+        @Override
+        void read(BinaryObjectReader in, Object o) throws Exception {
+            field.setLong(o, BinaryObjectReader.decodeZigZag(in.readVarLong()));
+        }
+    }
+
+    private static final class BooleanField extends FieldAccessor {
+        BooleanField(Field field) {
+            super(field);
+        }
+
+        @Override
+        void write(BinaryObjectWriter out, Object o) throws Exception {
+            out.buffer.writeByte(field.getBoolean(o)? 1 : 0);
+        }
+
+        @Override
+        void read(BinaryObjectReader in, Object o) throws Exception {
+            field.setBoolean(o, in.buffer.readByte() != 0);
+        }
+    }
+
+    private static final class ByteField extends FieldAccessor {
+        ByteField(Field field) {
+            super(field);
+        }
+
+        @Override
+        void write(BinaryObjectWriter out, Object o) throws Exception {
+            out.buffer.writeByte(field.getByte(o));
+        }
+
+        @Override
+        void read(BinaryObjectReader in, Object o) throws Exception {
+            field.setByte(o, in.buffer.readByte());
+        }
+    }
+
+    private static final class ShortField extends FieldAccessor {
+        ShortField(Field field) {
+            super(field);
+        }
+
+        @Override
+        void write(BinaryObjectWriter out, Object o) throws Exception {
+            out.writeVarInt(BinaryObjectWriter.encodeZigZag(field.getShort(o)));
+        }
+
+        @Override
+        void read(BinaryObjectReader in, Object o) throws Exception {
+            field.setShort(o, (short) BinaryObjectReader.decodeZigZag(in.readVarInt()));
+        }
+    }
+
+    private static final class CharField extends FieldAccessor {
+        CharField(Field field) {
+            super(field);
+        }
+
+        @Override
+        void write(BinaryObjectWriter out, Object o) throws Exception {
+            out.writeVarInt(field.getChar(o));
+        }
+
+        @Override
+        void read(BinaryObjectReader in, Object o) throws Exception {
+            field.setChar(o, (char) in.readVarInt());
+        }
+    }
+
+    private static final class FloatField extends FieldAccessor {
+        FloatField(Field field) {
+            super(field);
+        }
+
+        @Override
+        void write(BinaryObjectWriter out, Object o) throws Exception {
+            out.buffer.writeInt(Float.floatToRawIntBits(field.getFloat(o)));
+        }
+
+        @Override
+        void read(BinaryObjectReader in, Object o) throws Exception {
+            field.setFloat(o, Float.intBitsToFloat(in.buffer.readInt()));
+        }
+    }
+
+    private static final class DoubleField extends FieldAccessor {
+        DoubleField(Field field) {
+            super(field);
+        }
+
+        @Override
+        void write(BinaryObjectWriter out, Object o) throws Exception {
+            out.buffer.writeLong(Double.doubleToRawLongBits(field.getDouble(o)));
+        }
+
+        @Override
+        void read(BinaryObjectReader in, Object o) throws Exception {
+            field.setDouble(o, Double.longBitsToDouble(in.buffer.readLong()));
+        }
+    }
+
+    private static final class ObjectField extends FieldAccessor {
+        ObjectField(Field field) {
+            super(field);
+        }
+
+        @Override
+        void write(BinaryObjectWriter out, Object o) throws Exception {
+            out.writeObject(field.get(o));
+        }
+
+        @Override
+        void read(BinaryObjectReader in, Object o) throws Exception {
+            Object value = in.readObject();
+            if (value != null && !field.getType().isInstance(value)) {
+                throw new CorruptedFrameException(
+                        "unexpected value type for " + field + ": " +
+                        value.getClass().getName());
+            }
+            field.set(o, value);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * Encoder and decoder which transform an object into a compact binary form
+ * and vice versa, using a registry of the classes instead of Java
+ * serialization.
+ *
+ * @apiviz.exclude \.codec\.(?!binary)[a-z0-9]+\.
+ */
+package org.jboss.netty.handler.codec.binary;
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.codec.compression;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.util.internal.jzlib.JZlib;
+import org.jboss.netty.util.internal.jzlib.ZStream;
+
+/**
+ * A {@link ZlibCompressor} which uses the pure Java port of zlib in
+ * {@code org.jboss.netty.util.internal.jzlib}.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+final class JZlibCompressor extends ZlibCompressor {
+
+    private static final byte[] EMPTY_ARRAY = new byte[0];
+
+    private final ZStream z = new ZStream();
+
+    JZlibCompressor(ZlibWrapper wrapper, int compressionLevel, byte[] dictionary) {
+        int resultCode = z.deflateInit(compressionLevel, ZlibUtil.convertWrapperType(wrapper));
+        if (resultCode != JZlib.Z_OK) {
+            ZlibUtil.fail(z, "initialization failure", resultCode);
+        } else if (dictionary != null) {
+            resultCode = z.deflateSetDictionary(dictionary, dictionary.length);
+            if (resultCode != JZlib.Z_OK){
+                ZlibUtil.fail(z, "failed to set the dictionary", resultCode);
+            }
+        }
+    }
+
+    @Override
+    public ChannelBuffer compress(ChannelBuffer uncompressed, ChannelBufferFactory factory) {
+        try {
+            // Configure input.
+            byte[] in = new byte[uncompressed.readableBytes()];
+            uncompressed.readBytes(in);
+            z.next_in = in;
+            z.next_in_index = 0;
+            z.avail_in = in.length;
+
+            // Configure output.
+            byte[] out = new byte[(int) Math.ceil(in.length * 1.001) + 12];
+            z.next_out = out;
+            z.next_out_index = 0;
+            z.avail_out = out.length;
+
+            // Note that Z_PARTIAL_FLUSH has been deprecated.
+            int resultCode = z.deflate(JZlib.Z_SYNC_FLUSH);
+            if (resultCode != JZlib.Z_OK) {
+                ZlibUtil.fail(z, "compression failure", resultCode);
+            }
+
+            if (z.next_out_index != 0) {
+                return factory.getBuffer(uncompressed.order(), out, 0, z.next_out_index);
+            } else {
+                return ChannelBuffers.EMPTY_BUFFER;
+            }
+        } finally {
+            // Deference the external references explicitly to tell the VM that
+            // the allocated byte arrays are temporary so that the call stack
+            // can be utilized.
+            // I'm not sure if the modern VMs do this optimization though.
+            z.next_in = null;
+            z.next_out = null;
+        }
+    }
+
+    @Override
+    public ChannelBuffer finish(ChannelBufferFactory factory) {
+        try {
+            // Configure input.
+            z.next_in = EMPTY_ARRAY;
+            z.next_in_index = 0;
+            z.avail_in = 0;
+
+            // Configure output.
+            byte[] out = new byte[32]; // room for ADLER32 + ZLIB / CRC32 + GZIP header
+            z.next_out = out;
+            z.next_out_index = 0;
+            z.avail_out = out.length;
+
+            // Write the ADLER32 checksum (stream footer).
+            int resultCode = z.deflate(JZlib.Z_FINISH);
+            if (resultCode != JZlib.Z_OK && resultCode != JZlib.Z_STREAM_END) {
+                throw ZlibUtil.exception(z, "compression failure", resultCode);
+            } else if (z.next_out_index != 0) {
+                return factory.getBuffer(out, 0, z.next_out_index);
+            } else {
+                return ChannelBuffers.EMPTY_BUFFER;
+            }
+        } finally {
+            z.deflateEnd();
+
+            // Deference the external references explicitly to tell the VM that
+            // the allocated byte arrays are temporary so that the call stack
+            // can be utilized.
+            // I'm not sure if the modern VMs do this optimization though.
+            z.next_in = null;
+            z.next_out = null;
+        }
+    }
+
+    @Override
+    public void end() {
+        z.deflateEnd();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.codec.compression;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.util.internal.jzlib.JZlib;
+import org.jboss.netty.util.internal.jzlib.ZStream;
+
+/**
+ * A {@link ZlibDecompressor} which uses the pure Java port of zlib in
+ * {@code org.jboss.netty.util.internal.jzlib}.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+final class JZlibDecompressor extends ZlibDecompressor {
+
+    private final ZStream z = new ZStream();
+    private final byte[] dictionary;
+    private boolean finished;
+
+    JZlibDecompressor(ZlibWrapper wrapper, byte[] dictionary) {
+        this.dictionary = dictionary;
+        int resultCode = z.inflateInit(ZlibUtil.convertWrapperType(wrapper));
+        if (resultCode != JZlib.Z_OK) {
+            ZlibUtil.fail(z, "initialization failure", resultCode);
+        }
+    }
+
+    @Override
+    public ChannelBuffer decompress(ChannelBuffer compressed, ChannelBufferFactory factory) {
+        try {
+            // Configure input.
+            byte[] in = new byte[compressed.readableBytes()];
+            compressed.readBytes(in);
+            z.next_in = in;
+            z.next_in_index = 0;
+            z.avail_in = in.length;
+
+            // Configure output.
+            byte[] out = new byte[in.length << 1];
+            ChannelBuffer decompressed = ChannelBuffers.dynamicBuffer(
+                    compressed.order(), out.length, factory);
+            z.next_out = out;
+            z.next_out_index = 0;
+            z.avail_out = out.length;
+
+            do {
+                // Decompress 'in' into 'out'
+                int resultCode = z.inflate(JZlib.Z_SYNC_FLUSH);
+                switch (resultCode) {
+                case JZlib.Z_NEED_DICT:
+                    // The dictionary can be set only after the header is read.
+                    if (dictionary == null) {
+                        ZlibUtil.fail(z, "decompression failure", resultCode);
+                    }
+                    resultCode = z.inflateSetDictionary(dictionary, dictionary.length);
+                    if (resultCode != JZlib.Z_OK) {
+                        ZlibUtil.fail(z, "failed to set the dictionary", resultCode);
+                    }
+                    break;
+                case JZlib.Z_STREAM_END:
+                case JZlib.Z_OK:
+                case JZlib.Z_BUF_ERROR:
+                    decompressed.writeBytes(out, 0, z.next_out_index);
+                    z.next_out_index = 0;
+                    z.avail_out = out.length;
+                    if (resultCode == JZlib.Z_STREAM_END) {
+                        finished = true; // Do not decode anymore.
+                        z.inflateEnd();
+                    }
+                    break;
+                default:
+                    ZlibUtil.fail(z, "decompression failure", resultCode);
+                }
+            } while (z.avail_in > 0 && !finished);
+
+            if (decompressed.writerIndex() != 0) { // readerIndex is always 0
+                return decompressed;
+            } else {
+                return null;
+            }
+        } finally {
+            // Deference the external references explicitly to tell the VM that
+            // the allocated byte arrays are temporary so that the call stack
+            // can be utilized.
+            // I'm not sure if the modern VMs do this optimization though.
+            z.next_in = null;
+            z.next_out = null;
+        }
+    }
+
+    @Override
+    public boolean isFinished() {
+        return finished;
+    }
+
+    @Override
+    public void end() {
+        if (!finished) {
+            finished = true;
+            z.inflateEnd();
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.codec.compression;
+
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+/**
+ * A {@link ZlibCompressor} which uses the native zlib of the JDK through a
+ * pooled {@link Deflater}.  The GZIP header and footer are written by this
+ * class because {@link Deflater} supports only the ZLIB and the raw format.
+ * <p>
+ * The content of a heap buffer is passed to the {@link Deflater} without a
+ * copy.  The content of a direct buffer is passed without a copy as well if
+ * {@link Deflater} accepts a {@link ByteBuffer} (Java 11 or above) and the
+ * wrapper is not GZIP, and otherwise it is copied into a reusable array.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+final class JdkZlibCompressor extends ZlibCompressor {
+
+    private static final byte[] GZIP_HEADER = {
+        0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+    private static final byte[] EMPTY_ARRAY = new byte[0];
+
+    private static final int MAX_SCRATCH_SIZE = 65536;
+
+    private static final Method SET_INPUT_BUFFER;
+
+    static {
+        Method m = null;
+        try {
+            m = Deflater.class.getMethod("setInput", ByteBuffer.class);
+        } catch (Exception e) {
+            // Not available before Java 11.
+        }
+        SET_INPUT_BUFFER = m;
+    }
+
+    private final int compressionLevel;
+    private final boolean nowrap;
+    private final CRC32 crc;
+    private Deflater deflater;
+    private boolean writeHeader;
+    private int uncompressedSize;
+    private byte[] inScratch;
+    private byte[] outScratch;
+
+    JdkZlibCompressor(ZlibWrapper wrapper, int compressionLevel, byte[] dictionary) {
+        this.compressionLevel = compressionLevel;
+        nowrap = wrapper != ZlibWrapper.ZLIB;
+        if (wrapper == ZlibWrapper.GZIP) {
+            crc = new CRC32();
+            writeHeader = true;
+        } else {
+            crc = null;
+        }
+
+        deflater = JdkZlibPool.acquireDeflater(compressionLevel, nowrap);
+        if (dictionary != null) {
+            try {
+                deflater.setDictionary(dictionary);
+            } catch (IllegalArgumentException e) {
+                JdkZlibPool.releaseDeflater(deflater, compressionLevel, nowrap);
+                deflater = null;
+                throw new CompressionException("failed to set the dictionary", e);
+            }
+        }
+    }
+
+    @Override
+    public ChannelBuffer compress(ChannelBuffer uncompressed, ChannelBufferFactory factory) {
+        if (deflater == null) {
+            throw new CompressionException("compression failure: stream finished");
+        }
+
+        int length = uncompressed.readableBytes();
+        ChannelBuffer out = ChannelBuffers.dynamicBuffer(
+                uncompressed.order(), estimateCompressedSize(length), factory);
+        if (writeHeader) {
+            writeHeader = false;
+            out.writeBytes(GZIP_HEADER);
+        }
+        if (length == 0) {
+            return out.readable()? out : ChannelBuffers.EMPTY_BUFFER;
+        }
+
+        Deflater deflater = this.deflater;
+        if (uncompressed.hasArray()) {
+            byte[] array = uncompressed.array();
+            int offset = uncompressed.arrayOffset() + uncompressed.readerIndex();
+            deflater.setInput(array, offset, length);
+            if (crc != null) {
+                crc.update(array, offset, length);
+            }
+        } else if (SET_INPUT_BUFFER != null && crc == null && uncompressed.isDirect()) {
+            try {
+                SET_INPUT_BUFFER.invoke(deflater, uncompressed.toByteBuffer());
+            } catch (Exception e) {
+                throw new CompressionException("compression failure", e);
+            }
+        } else {
+            byte[] array = inScratch(length);
+            uncompressed.getBytes(uncompressed.readerIndex(), array, 0, length);
+            deflater.setInput(array, 0, length);
+            if (crc != null) {
+                crc.update(array, 0, length);
+            }
+        }
+        uncompressedSize += length;
+
+        // All input is consumed once the output is not full.
+        while (deflate(out, Deflater.SYNC_FLUSH)) {
+            continue;
+        }
+
+        // Do not keep the reference to the input.
+        deflater.setInput(EMPTY_ARRAY);
+        uncompressed.skipBytes(length);
+        return out;
+    }
+
+    @Override
+    public ChannelBuffer finish(ChannelBufferFactory factory) {
+        Deflater deflater = this.deflater;
+        if (deflater == null) {
+            return ChannelBuffers.EMPTY_BUFFER;
+        }
+
+        try {
+            ChannelBuffer out = ChannelBuffers.dynamicBuffer(64, factory);
+            if (writeHeader) {
+                writeHeader = false;
+                out.writeBytes(GZIP_HEADER);
+            }
+
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflate(out, Deflater.NO_FLUSH);
+            }
+
+            if (crc != null) {
+                // The GZIP footer is written in little endian.
+                int crcValue = (int) crc.getValue();
+                out.writeInt(Integer.reverseBytes(crcValue));
+                out.writeInt(Integer.reverseBytes(uncompressedSize));
+            }
+            return out;
+        } finally {
+            this.deflater = null;
+            inScratch = null;
+            outScratch = null;
+            JdkZlibPool.releaseDeflater(deflater, compressionLevel, nowrap);
+        }
+    }
+
+    @Override
+    public void end() {
+        Deflater deflater = this.deflater;
+        if (deflater == null) {
+            return;
+        }
+
+        this.deflater = null;
+        inScratch = null;
+        outScratch = null;
+        JdkZlibPool.releaseDeflater(deflater, compressionLevel, nowrap);
+    }
+
+    /**
+     * Deflates into the writable space of the specified buffer, expanding
+     * the buffer if it has no room.
+     *
+     * @return {@code true} if the writable space was filled up, which means
+     *         there might be more output
+     */
+    private boolean deflate(ChannelBuffer out, int flush) {
+        if (out.writableBytes() < 16) {
+            out.ensureWritableBytes(Math.max(256, out.capacity()));
+        }
+
+        int writable = out.writableBytes();
+        int written;
+        if (out.hasArray()) {
+            written = deflater.deflate(
+                    out.array(), out.arrayOffset() + out.writerIndex(),
+                    writable, flush);
+            out.writerIndex(out.writerIndex() + written);
+        } else {
+            byte[] array = outScratch(writable);
+            written = deflater.deflate(array, 0, writable, flush);
+            out.writeBytes(array, 0, written);
+        }
+        return written == writable;
+    }
+
+    private byte[] inScratch(int minSize) {
+        byte[] scratch = inScratch;
+        if (scratch == null || scratch.length < minSize) {
+            scratch = new byte[minSize];
+            if (minSize <= MAX_SCRATCH_SIZE) {
+                inScratch = scratch;
+            }
+        }
+        return scratch;
+    }
+
+    private byte[] outScratch(int minSize) {
+        byte[] scratch = outScratch;
+        if (scratch == null || scratch.length < minSize) {
+            scratch = new byte[minSize];
+            if (minSize <= MAX_SCRATCH_SIZE) {
+                outScratch = scratch;
+            }
+        }
+        return scratch;
+    }
+
+    /**
+     * Returns the upper bound of the compressed size just like
+     * {@code deflateBound()} of zlib does, plus the room for the sync flush
+     * marker.
+     */
+    private static int estimateCompressedSize(int length) {
+        return length + (length >>> 12) + (length >>> 14) + (length >>> 25) + 32;
+    }
+}
@@ -0,0 +1,372 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.codec.compression;
+
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+/**
+ * A {@link ZlibDecompressor} which uses the native zlib of the JDK through a
+ * pooled {@link Inflater}.  The GZIP header and footer are parsed and
+ * verified by this class because {@link Inflater} supports only the ZLIB and
+ * the raw format.
+ * <p>
+ * The content of a heap buffer is passed to the {@link Inflater} without a
+ * copy, and so is the content of a direct buffer if {@link Inflater} accepts
+ * a {@link ByteBuffer} (Java 11 or above).  Otherwise, the content is copied
+ * into a reusable array.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+final class JdkZlibDecompressor extends ZlibDecompressor {
+
+    private static final byte[] EMPTY_ARRAY = new byte[0];
+
+    private static final int MAX_SCRATCH_SIZE = 65536;
+
+    private static final int FHCRC = 0x02;
+    private static final int FEXTRA = 0x04;
+    private static final int FNAME = 0x08;
+    private static final int FCOMMENT = 0x10;
+    private static final int FRESERVED = 0xE0;
+
+    private static final Method SET_INPUT_BUFFER;
+
+    static {
+        Method m = null;
+        try {
+            m = Inflater.class.getMethod("setInput", ByteBuffer.class);
+        } catch (Exception e) {
+            // Not available before Java 11.
+        }
+        SET_INPUT_BUFFER = m;
+    }
+
+    private enum State {
+        HEADER,
+        INFLATE,
+        FOOTER,
+        FINISHED
+    }
+
+    private final boolean nowrap;
+    private final byte[] dictionary;
+    private final CRC32 crc;
+    private Inflater inflater;
+    private State state;
+    private int decompressedSize;
+    private ChannelBuffer pending;
+    private byte[] inScratch;
+    private byte[] outScratch;
+
+    JdkZlibDecompressor(ZlibWrapper wrapper, byte[] dictionary) {
+        this.dictionary = dictionary;
+        nowrap = wrapper != ZlibWrapper.ZLIB;
+        if (wrapper == ZlibWrapper.GZIP) {
+            crc = new CRC32();
+            state = State.HEADER;
+        } else {
+            crc = null;
+            state = State.INFLATE;
+        }
+        inflater = JdkZlibPool.acquireInflater(nowrap);
+    }
+
+    @Override
+    public ChannelBuffer decompress(ChannelBuffer compressed, ChannelBufferFactory factory) {
+        ChannelBuffer in = compressed;
+        if (pending != null) {
+            pending.writeBytes(compressed);
+            in = pending;
+        }
+
+        ChannelBuffer out = null;
+        try {
+            loop: for (;;) {
+                switch (state) {
+                case HEADER:
+                    if (!readGzipHeader(in)) {
+                        break loop;
+                    }
+                    state = State.INFLATE;
+                    // Fall through
+                case INFLATE:
+                    if (!in.readable()) {
+                        break loop;
+                    }
+                    if (out == null) {
+                        out = ChannelBuffers.dynamicBuffer(
+                                compressed.order(), in.readableBytes() << 1, factory);
+                    }
+                    inflate(in, out);
+                    if (state == State.INFLATE) {
+                        break loop;
+                    }
+                    break;
+                case FOOTER:
+                    if (in.readableBytes() < 8) {
+                        break loop;
+                    }
+                    readGzipFooter(in);
+                    end();
+                    break;
+                case FINISHED:
+                    // Ignore the bytes after the end of the stream.
+                    in.skipBytes(in.readableBytes());
+                    break loop;
+                default:
+                    throw new Error();
+                }
+            }
+        } finally {
+            keepPending(in, compressed);
+        }
+
+        if (out != null && out.readable()) {
+            return out;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Keeps the bytes of an incomplete GZIP header or footer so that they are
+     * parsed again with the next buffer.
+     */
+    private void keepPending(ChannelBuffer in, ChannelBuffer compressed) {
+        if (state == State.FINISHED || !in.readable()) {
+            pending = null;
+        } else if (in == pending) {
+            pending.discardReadBytes();
+        } else {
+            pending = ChannelBuffers.dynamicBuffer(compressed.order(), 64);
+            pending.writeBytes(in);
+        }
+    }
+
+    private void inflate(ChannelBuffer in, ChannelBuffer out) {
+        Inflater inflater = this.inflater;
+        int length = in.readableBytes();
+        if (in.hasArray()) {
+            inflater.setInput(in.array(), in.arrayOffset() + in.readerIndex(), length);
+        } else if (SET_INPUT_BUFFER != null && in.isDirect()) {
+            try {
+                SET_INPUT_BUFFER.invoke(inflater, in.toByteBuffer());
+            } catch (Exception e) {
+                throw new CompressionException("decompression failure", e);
+            }
+        } else {
+            byte[] array = inScratch(length);
+            in.getBytes(in.readerIndex(), array, 0, length);
+            inflater.setInput(array, 0, length);
+        }
+
+        try {
+            for (;;) {
+                if (!out.writable()) {
+                    out.ensureWritableBytes(Math.max(256, out.capacity()));
+                }
+
+                int writable = out.writableBytes();
+                int written;
+                if (out.hasArray()) {
+                    byte[] array = out.array();
+                    int offset = out.arrayOffset() + out.writerIndex();
+                    written = inflater.inflate(array, offset, writable);
+                    if (crc != null) {
+                        crc.update(array, offset, written);
+                    }
+                    out.writerIndex(out.writerIndex() + written);
+                } else {
+                    byte[] array = outScratch(writable);
+                    written = inflater.inflate(array, 0, writable);
+                    if (crc != null) {
+                        crc.update(array, 0, written);
+                    }
+                    out.writeBytes(array, 0, written);
+                }
+                decompressedSize += written;
+
+                if (inflater.finished()) {
+                    in.skipBytes(length - inflater.getRemaining());
+                    if (crc != null) {
+                        state = State.FOOTER;
+                    } else {
+                        end();
+                    }
+                    return;
+                }
+                if (inflater.needsDictionary()) {
+                    if (dictionary == null) {
+                        throw new CompressionException(
+                                "decompression failure: dictionary required");
+                    }
+                    inflater.setDictionary(dictionary);
+                    continue;
+                }
+                if (inflater.needsInput() || written < writable) {
+                    break;
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new CompressionException("decompression failure", e);
+        }
+
+        // Do not keep the reference to the input.
+        inflater.setInput(EMPTY_ARRAY);
+        in.skipBytes(length);
+    }
+
+    /**
+     * Parses the GZIP header as specified in
+     * <a href="http://tools.ietf.org/html/rfc1952">RFC 1952</a>.
+     *
+     * @return {@code false} if the header is not complete yet
+     */
+    private static boolean readGzipHeader(ChannelBuffer in) {
+        int start = in.readerIndex();
+        int end = in.writerIndex();
+        if (end - start < 10) {
+            return false;
+        }
+
+        if (in.getUnsignedByte(start) != 0x1f ||
+            in.getUnsignedByte(start + 1) != 0x8b) {
+            throw new CompressionException("not in GZIP format");
+        }
+        int method = in.getUnsignedByte(start + 2);
+        if (method != Deflater.DEFLATED) {
+            throw new CompressionException(
+                    "unsupported compression method " + method + " in the GZIP header");
+        }
+        int flags = in.getUnsignedByte(start + 3);
+        if ((flags & FRESERVED) != 0) {
+            throw new CompressionException(
+                    "reserved flags are set in the GZIP header");
+        }
+
+        // Skip MTIME, XFL and OS.
+        int index = start + 10;
+        if ((flags & FEXTRA) != 0) {
+            if (end - index < 2) {
+                return false;
+            }
+            int xlen = in.getUnsignedByte(index) | in.getUnsignedByte(index + 1) << 8;
+            index += 2 + xlen;
+            if (index > end) {
+                return false;
+            }
+        }
+        if ((flags & FNAME) != 0) {
+            index = in.indexOf(index, end, (byte) 0) + 1;
+            if (index == 0) {
+                return false;
+            }
+        }
+        if ((flags & FCOMMENT) != 0) {
+            index = in.indexOf(index, end, (byte) 0) + 1;
+            if (index == 0) {
+                return false;
+            }
+        }
+        if ((flags & FHCRC) != 0) {
+            if (end - index < 2) {
+                return false;
+            }
+            byte[] header = new byte[index - start];
+            in.getBytes(start, header);
+            CRC32 headerCrc = new CRC32();
+            headerCrc.update(header);
+            int expected = in.getUnsignedByte(index) | in.getUnsignedByte(index + 1) << 8;
+            if (((int) headerCrc.getValue() & 0xFFFF) != expected) {
+                throw new CompressionException("GZIP header CRC mismatch");
+            }
+            index += 2;
+        }
+
+        in.readerIndex(index);
+        return true;
+    }
+
+    private void readGzipFooter(ChannelBuffer in) {
+        int expectedCrc = readIntLE(in);
+        int expectedSize = readIntLE(in);
+        if (expectedCrc != (int) crc.getValue()) {
+            throw new CompressionException("GZIP CRC mismatch");
+        }
+        if (expectedSize != decompressedSize) {
+            throw new CompressionException("GZIP size mismatch");
+        }
+    }
+
+    private static int readIntLE(ChannelBuffer in) {
+        return in.readUnsignedByte() |
+               in.readUnsignedByte() << 8 |
+               in.readUnsignedByte() << 16 |
+               in.readUnsignedByte() << 24;
+    }
+
+    private byte[] inScratch(int minSize) {
+        byte[] scratch = inScratch;
+        if (scratch == null || scratch.length < minSize) {
+            scratch = new byte[minSize];
+            if (minSize <= MAX_SCRATCH_SIZE) {
+                inScratch = scratch;
+            }
+        }
+        return scratch;
+    }
+
+    private byte[] outScratch(int minSize) {
+        byte[] scratch = outScratch;
+        if (scratch == null || scratch.length < minSize) {
+            scratch = new byte[minSize];
+            if (minSize <= MAX_SCRATCH_SIZE) {
+                outScratch = scratch;
+            }
+        }
+        return scratch;
+    }
+
+    @Override
+    public boolean isFinished() {
+        return state == State.FINISHED;
+    }
+
+    @Override
+    public void end() {
+        state = State.FINISHED;
+        pending = null;
+        inScratch = null;
+        outScratch = null;
+
+        Inflater inflater = this.inflater;
+        if (inflater != null) {
+            this.inflater = null;
+            JdkZlibPool.releaseInflater(inflater, nowrap);
+        }
+    }
+}
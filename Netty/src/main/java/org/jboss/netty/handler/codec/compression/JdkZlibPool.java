@@ -0,0 +1,113 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.codec.compression;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Recycles {@link Deflater}s and {@link Inflater}s.  Creating them is
+ * expensive because each of them allocates its native zlib stream, and a
+ * short-lived stream such as the body of an HTTP response would otherwise
+ * pay the cost every time.  A released instance is {@linkplain Deflater#reset() reset}
+ * and kept until the pool of its kind is full.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+final class JdkZlibPool {
+
+    static final int MAX_POOLED =
+        Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    // Index: compressionLevel * 2 + (nowrap? 1 : 0)
+    private static final Pool<Deflater>[] deflaters = newPools(20);
+    // Index: nowrap? 1 : 0
+    private static final Pool<Inflater>[] inflaters = newPools(2);
+
+    @SuppressWarnings("unchecked")
+    private static <T> Pool<T>[] newPools(int size) {
+        Pool<T>[] pools = new Pool[size];
+        for (int i = 0; i < pools.length; i ++) {
+            pools[i] = new Pool<T>();
+        }
+        return pools;
+    }
+
+    static Deflater acquireDeflater(int compressionLevel, boolean nowrap) {
+        Deflater deflater = deflaters[compressionLevel << 1 | (nowrap? 1 : 0)].poll();
+        if (deflater == null) {
+            deflater = new Deflater(compressionLevel, nowrap);
+        }
+        return deflater;
+    }
+
+    static void releaseDeflater(Deflater deflater, int compressionLevel, boolean nowrap) {
+        deflater.reset();
+        if (!deflaters[compressionLevel << 1 | (nowrap? 1 : 0)].offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    static Inflater acquireInflater(boolean nowrap) {
+        Inflater inflater = inflaters[nowrap? 1 : 0].poll();
+        if (inflater == null) {
+            inflater = new Inflater(nowrap);
+        }
+        return inflater;
+    }
+
+    static void releaseInflater(Inflater inflater, boolean nowrap) {
+        inflater.reset();
+        if (!inflaters[nowrap? 1 : 0].offer(inflater)) {
+            inflater.end();
+        }
+    }
+
+    private static final class Pool<T> {
+        private final Queue<T> queue = new ConcurrentLinkedQueue<T>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        Pool() {
+            super();
+        }
+
+        T poll() {
+            T e = queue.poll();
+            if (e != null) {
+                size.decrementAndGet();
+            }
+            return e;
+        }
+
+        boolean offer(T e) {
+            if (size.incrementAndGet() > MAX_POOLED) {
+                size.decrementAndGet();
+                return false;
+            }
+            queue.offer(e);
+            return true;
+        }
+    }
+
+    private JdkZlibPool() {
+        // Unused
+    }
+}
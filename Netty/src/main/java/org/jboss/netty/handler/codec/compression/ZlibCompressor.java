@@ -0,0 +1,72 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.codec.compression;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferFactory;
+
+/**
+ * The deflate implementation of {@link ZlibEncoder}.  It can also be used
+ * by a codec which compresses only some parts of its messages, such as the
+ * per-message compression of WebSocket.  An implementation is not
+ * thread-safe; {@link ZlibEncoder} synchronizes on it.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public abstract class ZlibCompressor {
+
+    /**
+     * Creates a new compressor.  The JDK {@link java.util.zip.Deflater} is
+     * used on Java 7 or above unless the system property
+     * {@code "org.jboss.netty.useJdkZlib"} is {@code false}.
+     */
+    public static ZlibCompressor newInstance(
+            ZlibWrapper wrapper, int compressionLevel, byte[] dictionary) {
+        if (ZlibUtil.isJdkZlibEnabled()) {
+            return new JdkZlibCompressor(wrapper, compressionLevel, dictionary);
+        }
+        return new JZlibCompressor(wrapper, compressionLevel, dictionary);
+    }
+
+    /**
+     * Compresses all readable bytes of the specified buffer and flushes the
+     * compressed data so that the other side can decompress everything
+     * written so far.
+     *
+     * @return the compressed data, which has the same byte order with
+     *         {@code uncompressed}
+     */
+    public abstract ChannelBuffer compress(
+            ChannelBuffer uncompressed, ChannelBufferFactory factory);
+
+    /**
+     * Finishes the compressed stream and releases the resources of this
+     * compressor, even if it fails.
+     *
+     * @return the end of the stream, such as the checksum
+     *
+     * @throws CompressionException if failed to finish the stream
+     */
+    public abstract ChannelBuffer finish(ChannelBufferFactory factory);
+
+    /**
+     * Releases the resources of this compressor without finishing the
+     * compressed stream.
+     */
+    public abstract void end();
+}
@@ -16,16 +16,21 @@
 package org.jboss.netty.handler.codec.compression;
 
 import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
 import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelState;
+import org.jboss.netty.channel.ChannelStateEvent;
 import org.jboss.netty.handler.codec.oneone.OneToOneDecoder;
-import org.jboss.netty.util.internal.jzlib.JZlib;
-import org.jboss.netty.util.internal.jzlib.ZStream;
 
 
 /**
  * Decompresses a {@link ChannelBuffer} using the deflate algorithm.
+ * <p>
+ * The native zlib of the JDK is used on Java 7 or above, and the pure Java
+ * port of zlib is used otherwise, just like {@link ZlibEncoder} does.  The
+ * native zlib instance is returned to the pool when the end of the
+ * compressed stream is reached or the channel is closed.
  *
  * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
  * @author <a href="http://gleamynode.net/">Trustin Lee</a>
@@ -36,7 +41,7 @@ import org.jboss.netty.util.internal.jzlib.ZStream;
  */
 public class ZlibDecoder extends OneToOneDecoder {
 
-    private final ZStream z = new ZStream();
+    private final ZlibDecompressor decompressor;
     private volatile boolean finished;
 
     /**
@@ -58,12 +63,7 @@ public class ZlibDecoder extends OneToOneDecoder {
             throw new NullPointerException("wrapper");
         }
 
-        synchronized (z) {
-            int resultCode = z.inflateInit(ZlibUtil.convertWrapperType(wrapper));
-            if (resultCode != JZlib.Z_OK) {
-                ZlibUtil.fail(z, "initialization failure", resultCode);
-            }
-        }
+        decompressor = ZlibDecompressor.newInstance(wrapper, null);
     }
 
     /**
@@ -78,18 +78,7 @@ public class ZlibDecoder extends OneToOneDecoder {
             throw new NullPointerException("dictionary");
         }
 
-        synchronized (z) {
-            int resultCode;
-            resultCode = z.inflateInit(JZlib.W_ZLIB);
-            if (resultCode != JZlib.Z_OK) {
-                ZlibUtil.fail(z, "initialization failure", resultCode);
-            } else {
-                resultCode = z.inflateSetDictionary(dictionary, dictionary.length);
-                if (resultCode != JZlib.Z_OK) {
-                    ZlibUtil.fail(z, "failed to set the dictionary", resultCode);
-                }
-            }
-        }
+        decompressor = ZlibDecompressor.newInstance(ZlibWrapper.ZLIB, dictionary);
     }
 
     /**
@@ -106,58 +95,30 @@ public class ZlibDecoder extends OneToOneDecoder {
             return msg;
         }
 
-        synchronized (z) {
+        synchronized (decompressor) {
             try {
-                // Configure input.
-                ChannelBuffer compressed = (ChannelBuffer) msg;
-                byte[] in = new byte[compressed.readableBytes()];
-                compressed.readBytes(in);
-                z.next_in = in;
-                z.next_in_index = 0;
-                z.avail_in = in.length;
-
-                // Configure output.
-                byte[] out = new byte[in.length << 1];
-                ChannelBuffer decompressed = ChannelBuffers.dynamicBuffer(
-                        compressed.order(), out.length,
+                return decompressor.decompress(
+                        (ChannelBuffer) msg,
                         ctx.getChannel().getConfig().getBufferFactory());
-                z.next_out = out;
-                z.next_out_index = 0;
-                z.avail_out = out.length;
-
-                do {
-                    // Decompress 'in' into 'out'
-                    int resultCode = z.inflate(JZlib.Z_SYNC_FLUSH);
-                    switch (resultCode) {
-                    case JZlib.Z_STREAM_END:
-                    case JZlib.Z_OK:
-                    case JZlib.Z_BUF_ERROR:
-                        decompressed.writeBytes(out, 0, z.next_out_index);
-                        z.next_out_index = 0;
-                        z.avail_out = out.length;
-                        if (resultCode == JZlib.Z_STREAM_END) {
-                            finished = true; // Do not decode anymore.
-                            z.inflateEnd();
-                        }
-                        break;
-                    default:
-                        ZlibUtil.fail(z, "decompression failure", resultCode);
-                    }
-                } while (z.avail_in > 0);
+            } finally {
+                finished = decompressor.isFinished();
+            }
+        }
+    }
 
-                if (decompressed.writerIndex() != 0) { // readerIndex is always 0
-                    return decompressed;
-                } else {
-                    return null;
+    @Override
+    public void handleUpstream(ChannelHandlerContext ctx, ChannelEvent evt)
+            throws Exception {
+        if (evt instanceof ChannelStateEvent) {
+            ChannelStateEvent e = (ChannelStateEvent) evt;
+            if (e.getState() == ChannelState.OPEN && !Boolean.TRUE.equals(e.getValue())) {
+                // Release the resources even if the stream was not finished.
+                synchronized (decompressor) {
+                    decompressor.end();
                 }
-            } finally {
-                // Deference the external references explicitly to tell the VM that
-                // the allocated byte arrays are temporary so that the call stack
-                // can be utilized.
-                // I'm not sure if the modern VMs do this optimization though.
-                z.next_in = null;
-                z.next_out = null;
             }
         }
+
+        super.handleUpstream(ctx, evt);
     }
 }
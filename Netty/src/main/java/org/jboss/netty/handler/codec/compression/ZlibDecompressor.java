@@ -0,0 +1,69 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.codec.compression;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferFactory;
+
+/**
+ * The inflate implementation of {@link ZlibDecoder}.  It can also be used
+ * by a codec which compresses only some parts of its messages, such as the
+ * per-message compression of WebSocket.  An implementation is not
+ * thread-safe; {@link ZlibDecoder} synchronizes on it.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public abstract class ZlibDecompressor {
+
+    /**
+     * Creates a new decompressor.  The JDK {@link java.util.zip.Inflater} is
+     * used on Java 7 or above unless the system property
+     * {@code "org.jboss.netty.useJdkZlib"} is {@code false}.
+     */
+    public static ZlibDecompressor newInstance(ZlibWrapper wrapper, byte[] dictionary) {
+        if (ZlibUtil.isJdkZlibEnabled()) {
+            return new JdkZlibDecompressor(wrapper, dictionary);
+        }
+        return new JZlibDecompressor(wrapper, dictionary);
+    }
+
+    /**
+     * Decompresses all readable bytes of the specified buffer.  The bytes
+     * after the end of the compressed stream are ignored.
+     *
+     * @return the decompressed data, or {@code null} if there's nothing
+     *         decompressed yet
+     *
+     * @throws CompressionException if the compressed data is corrupted
+     */
+    public abstract ChannelBuffer decompress(
+            ChannelBuffer compressed, ChannelBufferFactory factory);
+
+    /**
+     * Returns {@code true} if and only if the end of the compressed stream
+     * has been reached.  The resources of this decompressor are released
+     * when the end is reached.
+     */
+    public abstract boolean isFinished();
+
+    /**
+     * Releases the resources of this decompressor without waiting for the
+     * end of the compressed stream.
+     */
+    public abstract void end();
+}
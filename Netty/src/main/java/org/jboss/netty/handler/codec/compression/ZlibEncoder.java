@@ -18,7 +18,6 @@ package org.jboss.netty.handler.codec.compression;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelEvent;
 import org.jboss.netty.channel.ChannelFuture;
@@ -28,12 +27,16 @@ import org.jboss.netty.channel.ChannelStateEvent;
 import org.jboss.netty.channel.Channels;
 import org.jboss.netty.channel.LifeCycleAwareChannelHandler;
 import org.jboss.netty.handler.codec.oneone.OneToOneEncoder;
-import org.jboss.netty.util.internal.jzlib.JZlib;
-import org.jboss.netty.util.internal.jzlib.ZStream;
 
 
 /**
  * Compresses a {@link ChannelBuffer} using the deflate algorithm.
+ * <p>
+ * The native zlib of the JDK is used on Java 7 or above, and the pure Java
+ * port of zlib is used otherwise.  The native zlib instances are pooled and
+ * reused once the compressed stream is finished.  Set the system property
+ * {@code "org.jboss.netty.useJdkZlib"} to {@code false} to always use the
+ * pure Java port.
  *
  * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
  * @author <a href="http://gleamynode.net/">Trustin Lee</a>
@@ -44,9 +47,7 @@ import org.jboss.netty.util.internal.jzlib.ZStream;
  */
 public class ZlibEncoder extends OneToOneEncoder implements LifeCycleAwareChannelHandler {
 
-    private static final byte[] EMPTY_ARRAY = new byte[0];
-
-    private final ZStream z = new ZStream();
+    private final ZlibCompressor compressor;
     private final AtomicBoolean finished = new AtomicBoolean();
     private volatile ChannelHandlerContext ctx;
 
@@ -105,12 +106,7 @@ public class ZlibEncoder extends OneToOneEncoder implements LifeCycleAwareChanne
             throw new NullPointerException("wrapper");
         }
 
-        synchronized (z) {
-            int resultCode = z.deflateInit(compressionLevel, ZlibUtil.convertWrapperType(wrapper));
-            if (resultCode != JZlib.Z_OK) {
-                ZlibUtil.fail(z, "initialization failure", resultCode);
-            }
-        }
+        compressor = ZlibCompressor.newInstance(wrapper, compressionLevel, null);
     }
 
     /**
@@ -150,18 +146,8 @@ public class ZlibEncoder extends OneToOneEncoder implements LifeCycleAwareChanne
             throw new NullPointerException("dictionary");
         }
 
-        synchronized (z) {
-            int resultCode;
-            resultCode = z.deflateInit(compressionLevel, JZlib.W_ZLIB); // Default: ZLIB format
-            if (resultCode != JZlib.Z_OK) {
-                ZlibUtil.fail(z, "initialization failure", resultCode);
-            } else {
-                resultCode = z.deflateSetDictionary(dictionary, dictionary.length);
-                if (resultCode != JZlib.Z_OK){
-                    ZlibUtil.fail(z, "failed to set the dictionary", resultCode);
-                }
-            }
-        }
+        // Default: ZLIB format
+        compressor = ZlibCompressor.newInstance(ZlibWrapper.ZLIB, compressionLevel, dictionary);
     }
 
     public ChannelFuture close() {
@@ -182,46 +168,11 @@ public class ZlibEncoder extends OneToOneEncoder implements LifeCycleAwareChanne
             return msg;
         }
 
-        ChannelBuffer result;
-        synchronized (z) {
-            try {
-                // Configure input.
-                ChannelBuffer uncompressed = (ChannelBuffer) msg;
-                byte[] in = new byte[uncompressed.readableBytes()];
-                uncompressed.readBytes(in);
-                z.next_in = in;
-                z.next_in_index = 0;
-                z.avail_in = in.length;
-
-                // Configure output.
-                byte[] out = new byte[(int) Math.ceil(in.length * 1.001) + 12];
-                z.next_out = out;
-                z.next_out_index = 0;
-                z.avail_out = out.length;
-
-                // Note that Z_PARTIAL_FLUSH has been deprecated.
-                int resultCode = z.deflate(JZlib.Z_SYNC_FLUSH);
-                if (resultCode != JZlib.Z_OK) {
-                    ZlibUtil.fail(z, "compression failure", resultCode);
-                }
-
-                if (z.next_out_index != 0) {
-                    result = ctx.getChannel().getConfig().getBufferFactory().getBuffer(
-                            uncompressed.order(), out, 0, z.next_out_index);
-                } else {
-                    result = ChannelBuffers.EMPTY_BUFFER;
-                }
-            } finally {
-                // Deference the external references explicitly to tell the VM that
-                // the allocated byte arrays are temporary so that the call stack
-                // can be utilized.
-                // I'm not sure if the modern VMs do this optimization though.
-                z.next_in = null;
-                z.next_out = null;
-            }
+        synchronized (compressor) {
+            return compressor.compress(
+                    (ChannelBuffer) msg,
+                    ctx.getChannel().getConfig().getBufferFactory());
         }
-
-        return result;
     }
 
     @Override
@@ -253,47 +204,16 @@ public class ZlibEncoder extends OneToOneEncoder implements LifeCycleAwareChanne
 
         ChannelBuffer footer;
         ChannelFuture future;
-        synchronized (z) {
+        synchronized (compressor) {
             try {
-                // Configure input.
-                z.next_in = EMPTY_ARRAY;
-                z.next_in_index = 0;
-                z.avail_in = 0;
-
-                // Configure output.
-                byte[] out = new byte[32]; // room for ADLER32 + ZLIB / CRC32 + GZIP header
-                z.next_out = out;
-                z.next_out_index = 0;
-                z.avail_out = out.length;
-
-                // Write the ADLER32 checksum (stream footer).
-                int resultCode = z.deflate(JZlib.Z_FINISH);
-                if (resultCode != JZlib.Z_OK && resultCode != JZlib.Z_STREAM_END) {
-                    future = Channels.failedFuture(
-                            ctx.getChannel(),
-                            ZlibUtil.exception(z, "compression failure", resultCode));
-                    footer = null;
-                } else if (z.next_out_index != 0) {
-                    future = Channels.future(ctx.getChannel());
-                    footer =
-                        ctx.getChannel().getConfig().getBufferFactory().getBuffer(
-                                out, 0, z.next_out_index);
-                } else {
-                    // Note that we should never use a SucceededChannelFuture
-                    // here just in case any downstream handler or a sink wants
-                    // to notify a write error.
-                    future = Channels.future(ctx.getChannel());
-                    footer = ChannelBuffers.EMPTY_BUFFER;
-                }
-            } finally {
-                z.deflateEnd();
-
-                // Deference the external references explicitly to tell the VM that
-                // the allocated byte arrays are temporary so that the call stack
-                // can be utilized.
-                // I'm not sure if the modern VMs do this optimization though.
-                z.next_in = null;
-                z.next_out = null;
+                footer = compressor.finish(ctx.getChannel().getConfig().getBufferFactory());
+                // Note that we should never use a SucceededChannelFuture
+                // here just in case any downstream handler or a sink wants
+                // to notify a write error.
+                future = Channels.future(ctx.getChannel());
+            } catch (CompressionException e) {
+                future = Channels.failedFuture(ctx.getChannel(), e);
+                footer = null;
             }
         }
 
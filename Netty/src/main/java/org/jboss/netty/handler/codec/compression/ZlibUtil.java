@@ -15,6 +15,9 @@
  */
 package org.jboss.netty.handler.codec.compression;
 
+import java.util.zip.Deflater;
+
+import org.jboss.netty.util.internal.SystemPropertyUtil;
 import org.jboss.netty.util.internal.jzlib.JZlib;
 import org.jboss.netty.util.internal.jzlib.ZStream;
 
@@ -27,6 +30,33 @@ import org.jboss.netty.util.internal.jzlib.ZStream;
  */
 final class ZlibUtil {
 
+    private static final boolean JDK_ZLIB_ENABLED;
+
+    static {
+        boolean enabled = !"false".equalsIgnoreCase(
+                SystemPropertyUtil.get("org.jboss.netty.useJdkZlib", "true"));
+        if (enabled) {
+            // Deflater.SYNC_FLUSH is available since Java 7.
+            try {
+                Deflater.class.getMethod(
+                        "deflate", byte[].class, int.class, int.class, int.class);
+            } catch (Exception e) {
+                enabled = false;
+            }
+        }
+        JDK_ZLIB_ENABLED = enabled;
+    }
+
+    /**
+     * Returns {@code true} if {@link ZlibEncoder} and {@link ZlibDecoder} use
+     * the native zlib of the JDK, which is much faster than the pure Java
+     * port.  It requires Java 7 or above, and can be disabled by setting the
+     * system property {@code "org.jboss.netty.useJdkZlib"} to {@code false}.
+     */
+    static boolean isJdkZlibEnabled() {
+        return JDK_ZLIB_ENABLED;
+    }
+
     static void fail(ZStream z, String message, int resultCode) {
         throw exception(z, message, resultCode);
     }
@@ -102,6 +102,9 @@ abstract class AbstractCodecEmbedder<E> implements CodecEmbedder<E> {
     }
 
     public boolean finish() {
+        // Let the encoders flush their remaining data (e.g. a stream footer)
+        // on closure before the decoders are notified.
+        close(channel);
         fireChannelDisconnected(channel);
         fireChannelUnbound(channel);
         fireChannelClosed(channel);
@@ -68,6 +68,12 @@ public class DelimiterBasedFrameDecoder extends FrameDecoder {
     private final boolean stripDelimiter;
     private boolean discardingTooLongFrame;
     private long tooLongFrameLength;
+    /**
+     * The number of bytes from the readerIndex which were scanned by the
+     * previous {@link #decode(ChannelHandlerContext, Channel, ChannelBuffer)}
+     * call without finding any delimiter.
+     */
+    private int scannedBytes;
 
     /**
      * Creates a new instance.
@@ -148,10 +154,18 @@ public class DelimiterBasedFrameDecoder extends FrameDecoder {
     protected Object decode(
             ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception {
         // Try all delimiters and choose the delimiter which yields the shortest frame.
+        // The bytes scanned by the previous call are not scanned again except
+        // for the tail where a delimiter might have been received partially.
         int minFrameLength = Integer.MAX_VALUE;
         ChannelBuffer minDelim = null;
+        int readerIndex = buffer.readerIndex();
+        if (scannedBytes > buffer.readableBytes()) {
+            // Not the buffer scanned previously.
+            scannedBytes = 0;
+        }
         for (ChannelBuffer delim: delimiters) {
-            int frameLength = indexOf(buffer, delim);
+            int fromIndex = readerIndex + Math.max(0, scannedBytes - delim.capacity() + 1);
+            int frameLength = indexOf(buffer, fromIndex, delim);
             if (frameLength >= 0 && frameLength < minFrameLength) {
                 minFrameLength = frameLength;
                 minDelim = delim;
@@ -159,6 +173,7 @@ public class DelimiterBasedFrameDecoder extends FrameDecoder {
         }
 
         if (minDelim != null) {
+            scannedBytes = 0;
             int minDelimLength = minDelim.capacity();
             ChannelBuffer frame;
 
@@ -193,6 +208,7 @@ public class DelimiterBasedFrameDecoder extends FrameDecoder {
                 buffer.skipBytes(buffer.readableBytes());
                 discardingTooLongFrame = true;
             }
+            scannedBytes = buffer.readableBytes();
 
             return null;
         }
@@ -205,29 +221,33 @@ public class DelimiterBasedFrameDecoder extends FrameDecoder {
 
     /**
      * Returns the number of bytes between the readerIndex of the haystack and
-     * the first needle found in the haystack.  -1 is returned if no needle is
-     * found in the haystack.
+     * the first needle found in the haystack at or after {@code fromIndex}.
+     * -1 is returned if no needle is found in the haystack.
      */
-    private static int indexOf(ChannelBuffer haystack, ChannelBuffer needle) {
-        for (int i = haystack.readerIndex(); i < haystack.writerIndex(); i ++) {
-            int haystackIndex = i;
+    private static int indexOf(ChannelBuffer haystack, int fromIndex, ChannelBuffer needle) {
+        int needleLength = needle.capacity();
+        byte firstByte = needle.getByte(0);
+        int endIndex = haystack.writerIndex() - needleLength + 1;
+        int i = fromIndex;
+        while (i < endIndex) {
+            // Look for the first byte of the needle, and then compare the rest.
+            i = haystack.indexOf(i, endIndex, firstByte);
+            if (i < 0) {
+                break;
+            }
+
             int needleIndex;
-            for (needleIndex = 0; needleIndex < needle.capacity(); needleIndex ++) {
-                if (haystack.getByte(haystackIndex) != needle.getByte(needleIndex)) {
+            for (needleIndex = 1; needleIndex < needleLength; needleIndex ++) {
+                if (haystack.getByte(i + needleIndex) != needle.getByte(needleIndex)) {
                     break;
-                } else {
-                    haystackIndex ++;
-                    if (haystackIndex == haystack.writerIndex() &&
-                        needleIndex != needle.capacity() - 1) {
-                        return -1;
-                    }
                 }
             }
 
-            if (needleIndex == needle.capacity()) {
+            if (needleIndex == needleLength) {
                 // Found the needle from the haystack!
                 return i - haystack.readerIndex();
             }
+            i ++;
         }
         return -1;
     }
@@ -16,9 +16,15 @@
 package org.jboss.netty.handler.codec.frame;
 
 import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferFactory;
 import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.buffer.CompositeChannelBuffer;
+import org.jboss.netty.buffer.PooledChannelBuffer;
+import org.jboss.netty.buffer.PooledChannelBufferFactory;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandler;
 import org.jboss.netty.channel.ChannelHandlerContext;
@@ -132,6 +138,32 @@ import org.jboss.netty.handler.codec.replay.ReplayingDecoder;
  * {@link ChannelUpstreamHandler} receives a {@link MessageEvent} which
  * contains a POJO rather than a {@link ChannelBuffer}.
  *
+ * <h3>Cumulation strategy</h3>
+ * <p>
+ * When a frame spans more than one packet, the received bytes are kept in a
+ * cumulation buffer until the frame is complete.  By default, they are copied
+ * into a dynamic buffer, which is the fastest for small frames.  If the frames
+ * are large and fragmented into many packets, you can
+ * {@linkplain #setCompositeCumulation(boolean) enable composite cumulation}
+ * so that the received buffers are appended to a {@link CompositeChannelBuffer}
+ * as its components rather than being copied.  Composite cumulation requires
+ * the received buffers not to be modified by others once they are passed to
+ * this decoder, which is the case for all transports in Netty.
+ * <p>
+ * A decoder which knows the length of the incomplete frame in advance can
+ * call {@link #setExpectedFrameLength(int)} so that the dynamic cumulation
+ * buffer is allocated with enough room at once.
+ *
+ * <h3>Pooled buffers</h3>
+ * <p>
+ * A received {@link PooledChannelBuffer} is released by this decoder as soon
+ * as its content has been decoded or copied into the cumulation buffer, or
+ * once the composite cumulation buffer does not refer to it anymore.  The
+ * cumulation buffer itself is never pooled, so the frames read from it with
+ * {@link ChannelBuffer#readBytes(int)} do not need to be released.  However,
+ * a frame which is a slice of the buffer passed to {@code decode()} must not
+ * be accessed after {@code decode()} returns.
+ *
  * <h3>Replacing a decoder with another decoder in a pipeline</h3>
  * <p>
  * If you are going to write a protocol multiplexer, you will probably want to
@@ -181,8 +213,20 @@ import org.jboss.netty.handler.codec.replay.ReplayingDecoder;
  */
 public abstract class FrameDecoder extends SimpleChannelUpstreamHandler {
 
+    /**
+     * The maximum number of the components of a composite cumulation buffer.
+     * Once exceeded, the components are merged into one buffer so that a
+     * frame which arrives byte by byte does not slow down the lookup of the
+     * components.
+     */
+    private static final int MAX_CUMULATION_COMPONENTS = 1024;
+
     private final boolean unfold;
+    private volatile boolean compositeCumulation;
     private ChannelBuffer cumulation;
+    // The received buffers which the composite cumulation buffer refers to
+    private final List<ChannelBuffer> cumulatedInputs = new ArrayList<ChannelBuffer>();
+    private int expectedFrameLength;
 
     protected FrameDecoder() {
         this(false);
@@ -192,6 +236,25 @@ public abstract class FrameDecoder extends SimpleChannelUpstreamHandler {
         this.unfold = unfold;
     }
 
+    /**
+     * Returns {@code true} if and only if the received buffers are cumulated
+     * by appending them to a {@link CompositeChannelBuffer} rather than by
+     * copying them into a dynamic buffer.
+     */
+    public boolean isCompositeCumulation() {
+        return compositeCumulation;
+    }
+
+    /**
+     * Sets whether the received buffers are cumulated by appending them to a
+     * {@link CompositeChannelBuffer} rather than by copying them into a
+     * dynamic buffer.  This property should be set before this decoder is
+     * added to a pipeline.
+     */
+    public void setCompositeCumulation(boolean compositeCumulation) {
+        this.compositeCumulation = compositeCumulation;
+    }
+
     @Override
     public void messageReceived(
             ChannelHandlerContext ctx, MessageEvent e) throws Exception {
@@ -207,19 +270,97 @@ public abstract class FrameDecoder extends SimpleChannelUpstreamHandler {
             return;
         }
 
-        ChannelBuffer cumulation = cumulation(ctx);
-        if (cumulation.readable()) {
-            cumulation.discardReadBytes();
-            cumulation.writeBytes(input);
-            callDecode(ctx, e.getChannel(), cumulation, e.getRemoteAddress());
-        } else {
-            callDecode(ctx, e.getChannel(), input, e.getRemoteAddress());
-            if (input.readable()) {
+        if (compositeCumulation) {
+            ChannelBuffer cumulation = this.cumulation;
+            if (cumulation != null && cumulation.readable()) {
+                cumulation = appendToCumulation(cumulation, input);
+                cumulatedInputs.add(input);
+                this.cumulation = cumulation;
+                callDecode(ctx, e.getChannel(), cumulation, e.getRemoteAddress());
+            } else {
+                releaseCumulatedInputs();
+                cumulatedInputs.add(input);
+                callDecode(ctx, e.getChannel(), input, e.getRemoteAddress());
+                cumulation = input;
+            }
+
+            // Keep the remainder without copying it.  EMPTY_BUFFER tells
+            // cleanup() that a message has been received.
+            if (cumulation.readable()) {
+                this.cumulation = cumulation;
+            } else {
+                this.cumulation = ChannelBuffers.EMPTY_BUFFER;
+                releaseCumulatedInputs();
+            }
+            return;
+        }
+
+        try {
+            ChannelBuffer cumulation = cumulation(ctx);
+            if (cumulation.readable()) {
+                cumulation.discardReadBytes();
+                reserveCumulation(cumulation, input.readableBytes());
                 cumulation.writeBytes(input);
+                callDecode(ctx, e.getChannel(), cumulation, e.getRemoteAddress());
+            } else {
+                callDecode(ctx, e.getChannel(), input, e.getRemoteAddress());
+                if (input.readable()) {
+                    cumulation.clear();
+                    reserveCumulation(cumulation, input.readableBytes());
+                    cumulation.writeBytes(input);
+                }
             }
+        } finally {
+            // The input has been either decoded or copied.
+            ChannelBuffers.release(input);
+        }
+    }
+
+    private ChannelBuffer appendToCumulation(
+            ChannelBuffer cumulation, ChannelBuffer input) {
+        if (cumulation instanceof CompositeChannelBuffer &&
+            ((CompositeChannelBuffer) cumulation).numComponents() >= MAX_CUMULATION_COMPONENTS) {
+            cumulation = cumulation.copy();
+            releaseCumulatedInputs();
+        }
+        return ChannelBuffers.wrappedBuffer(cumulation, input);
+    }
+
+    private void releaseCumulatedInputs() {
+        List<ChannelBuffer> inputs = cumulatedInputs;
+        for (int i = 0; i < inputs.size(); i ++) {
+            ChannelBuffers.release(inputs.get(i));
+        }
+        inputs.clear();
+    }
+
+    /**
+     * Makes sure the specified dynamic cumulation buffer has enough room for
+     * the expected frame so that it is not expanded repeatedly.
+     */
+    private void reserveCumulation(ChannelBuffer cumulation, int minWritableBytes) {
+        int writableBytes = Math.max(
+                minWritableBytes, expectedFrameLength - cumulation.readableBytes());
+        if (writableBytes > cumulation.writableBytes()) {
+            cumulation.ensureWritableBytes(writableBytes);
         }
     }
 
+    /**
+     * Tells this decoder the length of the frame which is being decoded,
+     * measured from the current {@code readerIndex} of the cumulation buffer.
+     * A {@link #decode(ChannelHandlerContext, Channel, ChannelBuffer)}
+     * implementation which returns {@code null} because the frame is not
+     * complete yet can call this method so that the dynamic cumulation buffer
+     * is expanded only once to hold the whole frame.  The hint is cleared
+     * before every {@code decode()} call and ignored when
+     * {@linkplain #setCompositeCumulation(boolean) composite cumulation} is
+     * enabled.
+     */
+    protected void setExpectedFrameLength(int expectedFrameLength) {
+        this.expectedFrameLength = expectedFrameLength;
+    }
+
     @Override
     public void channelDisconnected(
             ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
@@ -279,6 +420,7 @@ public abstract class FrameDecoder extends SimpleChannelUpstreamHandler {
 
         while (cumulation.readable()) {
             int oldReaderIndex = cumulation.readerIndex();
+            expectedFrameLength = 0;
             Object frame = decode(context, channel, cumulation);
             if (frame == null) {
                 if (oldReaderIndex == cumulation.readerIndex()) {
@@ -341,6 +483,7 @@ public abstract class FrameDecoder extends SimpleChannelUpstreamHandler {
                 unfoldAndFireMessageReceived(ctx, null, partialFrame);
             }
         } finally {
+            releaseCumulatedInputs();
             ctx.sendUpstream(e);
         }
     }
@@ -348,8 +491,13 @@ public abstract class FrameDecoder extends SimpleChannelUpstreamHandler {
     private ChannelBuffer cumulation(ChannelHandlerContext ctx) {
         ChannelBuffer c = cumulation;
         if (c == null) {
-            c = ChannelBuffers.dynamicBuffer(
-                    ctx.getChannel().getConfig().getBufferFactory());
+            ChannelBufferFactory factory = ctx.getChannel().getConfig().getBufferFactory();
+            if (factory instanceof PooledChannelBufferFactory) {
+                // The cumulation lives as long as the channel, and the frames
+                // copied from it must not have to be released.
+                factory = ((PooledChannelBufferFactory) factory).getUnpooledFactory();
+            }
+            c = ChannelBuffers.dynamicBuffer(factory);
             cumulation = c;
         }
         return c;
@@ -356,6 +356,8 @@ public class LengthFieldBasedFrameDecoder extends FrameDecoder {
         // never overflows because it's less than maxFrameLength
         int frameLengthInt = (int) frameLength;
         if (buffer.readableBytes() < frameLengthInt) {
+            // Let the cumulation buffer hold the whole frame at once.
+            setExpectedFrameLength(frameLengthInt);
             return null;
         }
 
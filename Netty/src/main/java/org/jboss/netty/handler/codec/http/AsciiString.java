@@ -0,0 +1,326 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.codec.http;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * An immutable sequence of single-byte (ISO-8859-1) characters which is used
+ * to store HTTP header names and values without converting them into a
+ * {@link String} until requested.  The {@link String} representation is
+ * created lazily and cached, and the byte representation is created lazily
+ * for an instance created from a {@link String}.
+ * <p>
+ * {@link #hashCode()} is case-insensitive so that it can be used to look up
+ * a header name, while {@link #equals(Object)} is case-sensitive.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+final class AsciiString implements CharSequence {
+
+    private static final AsciiString[] KNOWN_NAMES;
+    private static final int KNOWN_NAMES_MASK;
+
+    static {
+        Field[] fields = HttpHeaders.Names.class.getFields();
+
+        int tableSize = 1;
+        while (tableSize < fields.length * 4) {
+            tableSize <<= 1;
+        }
+
+        AsciiString[] knownNames = new AsciiString[tableSize];
+        int mask = tableSize - 1;
+        for (Field f: fields) {
+            int m = f.getModifiers();
+            if (!Modifier.isStatic(m) || f.getType() != String.class) {
+                continue;
+            }
+
+            AsciiString name;
+            try {
+                name = new AsciiString((String) f.get(null));
+            } catch (IllegalAccessException e) {
+                throw (Error) new Error().initCause(e);
+            }
+
+            // Open addressing with linear probing
+            int i = name.hashCode() & mask;
+            for (;;) {
+                AsciiString n = knownNames[i];
+                if (n == null) {
+                    knownNames[i] = name;
+                    break;
+                }
+                if (n.equals(name)) {
+                    break;
+                }
+                i = i + 1 & mask;
+            }
+        }
+
+        KNOWN_NAMES = knownNames;
+        KNOWN_NAMES_MASK = mask;
+    }
+
+    /**
+     * Returns the interned instance of the specified header name if it is one
+     * of the {@linkplain HttpHeaders.Names standard header names}.  Otherwise,
+     * a new instance is returned.
+     */
+    static AsciiString of(String name) {
+        int h = hash(name);
+        AsciiString[] knownNames = KNOWN_NAMES;
+        int mask = KNOWN_NAMES_MASK;
+        for (int i = h & mask;; i = i + 1 & mask) {
+            AsciiString n = knownNames[i];
+            if (n == null) {
+                break;
+            }
+            if (n.hash == h && name.equals(n.string)) {
+                return n;
+            }
+        }
+        return new AsciiString(name, h);
+    }
+
+    /**
+     * Returns the interned instance of the header name at the specified
+     * absolute {@code index} of the specified {@code buffer} if it is one of
+     * the {@linkplain HttpHeaders.Names standard header names}.  Otherwise, a
+     * new instance is returned.  The {@code readerIndex} of the buffer is not
+     * modified.
+     */
+    static AsciiString of(ChannelBuffer buffer, int index, int length) {
+        int h = 0;
+        for (int i = index + length - 1; i >= index; i --) {
+            h = 31 * h + toLowerCase((char) (buffer.getByte(i) & 0xFF));
+        }
+        h = normalize(h);
+
+        AsciiString[] knownNames = KNOWN_NAMES;
+        int mask = KNOWN_NAMES_MASK;
+        for (int i = h & mask;; i = i + 1 & mask) {
+            AsciiString n = knownNames[i];
+            if (n == null) {
+                break;
+            }
+            if (n.hash == h && n.contentEquals(buffer, index, length)) {
+                return n;
+            }
+        }
+
+        byte[] value = new byte[length];
+        buffer.getBytes(index, value);
+        return new AsciiString(value, h);
+    }
+
+    /**
+     * Creates a new instance whose content is copied from the specified
+     * absolute {@code index} of the specified {@code buffer}.  The
+     * {@code readerIndex} of the buffer is not modified.
+     */
+    static AsciiString copyOf(ChannelBuffer buffer, int index, int length) {
+        byte[] value = new byte[length];
+        buffer.getBytes(index, value);
+        return new AsciiString(value, 0);
+    }
+
+    /**
+     * Calculates the case-insensitive hash code of the specified string.
+     * The result is same with {@link #hashCode()} of the {@link AsciiString}
+     * which has the same content.
+     */
+    static int hash(CharSequence name) {
+        int h = 0;
+        for (int i = name.length() - 1; i >= 0; i --) {
+            h = 31 * h + toLowerCase(name.charAt(i));
+        }
+        return normalize(h);
+    }
+
+    private static int normalize(int h) {
+        // Never zero so that zero can mean 'not calculated yet'.
+        if (h > 0) {
+            return h;
+        } else if (h == Integer.MIN_VALUE || h == 0) {
+            return Integer.MAX_VALUE;
+        } else {
+            return -h;
+        }
+    }
+
+    private static char toLowerCase(char c) {
+        if (c >= 'A' && c <= 'Z') {
+            return (char) (c + 32);
+        }
+        return c;
+    }
+
+    private byte[] value;
+    private String string;
+    private int hash;
+
+    private AsciiString(String string) {
+        this(string, hash(string));
+    }
+
+    private AsciiString(String string, int hash) {
+        this.string = string;
+        this.hash = hash;
+    }
+
+    private AsciiString(byte[] value, int hash) {
+        this.value = value;
+        this.hash = hash;
+    }
+
+    public int length() {
+        byte[] value = this.value;
+        if (value != null) {
+            return value.length;
+        }
+        return string.length();
+    }
+
+    public char charAt(int index) {
+        byte[] value = this.value;
+        if (value != null) {
+            return (char) (value[index] & 0xFF);
+        }
+        return string.charAt(index);
+    }
+
+    public CharSequence subSequence(int start, int end) {
+        return toString().substring(start, end);
+    }
+
+    /**
+     * Returns {@code true} if and only if this string and the specified
+     * string are same when the case is ignored.
+     */
+    boolean equalsIgnoreCase(CharSequence s) {
+        int length = length();
+        if (length != s.length()) {
+            return false;
+        }
+
+        for (int i = length - 1; i >= 0; i --) {
+            char c1 = charAt(i);
+            char c2 = s.charAt(i);
+            if (c1 != c2 && toLowerCase(c1) != toLowerCase(c2)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean contentEquals(ChannelBuffer buffer, int index, int length) {
+        if (length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i ++) {
+            if (charAt(i) != (char) (buffer.getByte(index + i) & 0xFF)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes this string into the specified buffer.  A character which does
+     * not fit into a byte is written as {@code '?'}.
+     */
+    void writeTo(ChannelBuffer buf) {
+        byte[] value = this.value;
+        if (value == null) {
+            this.value = value = toBytes(string);
+        }
+        buf.writeBytes(value);
+    }
+
+    /**
+     * Writes the specified string into the specified buffer, just like
+     * {@link #writeTo(ChannelBuffer)} does.
+     */
+    static void writeTo(ChannelBuffer buf, String s) {
+        int length = s.length();
+        for (int i = 0; i < length; i ++) {
+            char c = s.charAt(i);
+            buf.writeByte(c > 127? '?' : c);
+        }
+    }
+
+    private static byte[] toBytes(String s) {
+        int length = s.length();
+        byte[] value = new byte[length];
+        for (int i = 0; i < length; i ++) {
+            char c = s.charAt(i);
+            value[i] = (byte) (c > 127? '?' : c);
+        }
+        return value;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = this.hash;
+        if (hash == 0) {
+            this.hash = hash = hash(this);
+        }
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof AsciiString)) {
+            return false;
+        }
+
+        AsciiString that = (AsciiString) o;
+        int length = length();
+        if (length != that.length() || hashCode() != that.hashCode()) {
+            return false;
+        }
+        for (int i = 0; i < length; i ++) {
+            if (charAt(i) != that.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        String string = this.string;
+        if (string == null) {
+            byte[] value = this.value;
+            char[] chars = new char[value.length];
+            for (int i = 0; i < chars.length; i ++) {
+                chars[i] = (char) (value[i] & 0xFF);
+            }
+            this.string = string = new String(chars);
+        }
+        return string;
+    }
+}
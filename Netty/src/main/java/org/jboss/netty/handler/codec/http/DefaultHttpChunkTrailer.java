@@ -31,7 +31,7 @@ import org.jboss.netty.buffer.ChannelBuffers;
  */
 public class DefaultHttpChunkTrailer implements HttpChunkTrailer {
 
-    private final HttpHeaders headers = new HttpHeaders() {
+    final HttpHeaders headers = new HttpHeaders() {
         @Override
         void validateHeaderName(String name) {
             super.validateHeaderName(name);
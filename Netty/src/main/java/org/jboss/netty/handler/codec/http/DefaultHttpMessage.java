@@ -33,7 +33,7 @@ import org.jboss.netty.util.internal.StringUtil;
  */
 public class DefaultHttpMessage implements HttpMessage {
 
-    private final HttpHeaders headers = new HttpHeaders();
+    final HttpHeaders headers = new HttpHeaders();
     private HttpVersion version;
     private ChannelBuffer content = ChannelBuffers.EMPTY_BUFFER;
     private boolean chunked;
@@ -107,8 +107,7 @@ public class DefaultHttpMessage implements HttpMessage {
     }
 
     public String getHeader(final String name) {
-        List<String> values = getHeaders(name);
-        return values.size() > 0 ? values.get(0) : null;
+        return headers.getHeader(name);
     }
 
     public List<String> getHeaders(final String name) {
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.codec.http;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.handler.stream.ChunkedInput;
+import org.jboss.netty.handler.stream.ChunkedWriteHandler;
+
+/**
+ * A {@link ChunkedInput} that wraps another {@link ChunkedInput} which
+ * produces {@link ChannelBuffer}s and converts them into {@link HttpChunk}s,
+ * followed by the last chunk.  Use it with {@link ChunkedWriteHandler} to
+ * send the content of an {@link HttpMessage} whose transfer encoding is
+ * 'chunked':
+ * <pre>
+ * {@link HttpResponse} res = new {@link DefaultHttpResponse}({@link HttpVersion}.HTTP_1_1, {@link HttpResponseStatus}.OK);
+ * res.setChunked(true);
+ * res.setHeader({@link HttpHeaders.Names}.TRANSFER_ENCODING, {@link HttpHeaders.Values}.CHUNKED);
+ * channel.write(res);
+ * channel.write(<b>new {@link HttpChunkedInput}(new ChunkedNioFile(file))</b>);
+ * </pre>
+ * Unlike a plain {@link ChannelBuffer}, an {@link HttpChunk} is recognized by
+ * {@link HttpContentEncoder}s such as {@link HttpContentCompressor}, and thus
+ * the content can be encoded on the fly.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public class HttpChunkedInput implements ChunkedInput {
+
+    private final ChunkedInput input;
+    private volatile boolean sentLastChunk;
+
+    /**
+     * Creates a new instance that converts the {@link ChannelBuffer}s
+     * produced by the specified {@code input} into {@link HttpChunk}s.
+     */
+    public HttpChunkedInput(ChunkedInput input) {
+        if (input == null) {
+            throw new NullPointerException("input");
+        }
+        this.input = input;
+    }
+
+    public boolean hasNextChunk() throws Exception {
+        return !sentLastChunk;
+    }
+
+    public Object nextChunk() throws Exception {
+        if (sentLastChunk) {
+            return null;
+        }
+
+        if (input.isEndOfInput()) {
+            sentLastChunk = true;
+            return HttpChunk.LAST_CHUNK;
+        }
+
+        ChannelBuffer buf = (ChannelBuffer) input.nextChunk();
+        if (buf == null) {
+            return null;
+        }
+        if (!buf.readable()) {
+            // An empty chunk would be mistaken for the last chunk anyway.
+            sentLastChunk = true;
+            return HttpChunk.LAST_CHUNK;
+        }
+        return new DefaultHttpChunk(buf);
+    }
+
+    public boolean isEndOfInput() throws Exception {
+        return sentLastChunk;
+    }
+
+    public void close() throws Exception {
+        input.close();
+    }
+}
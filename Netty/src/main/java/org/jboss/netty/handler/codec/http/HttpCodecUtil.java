@@ -75,7 +75,7 @@ class HttpCodecUtil {
         super();
     }
 
-    static void validateHeaderName(String name) {
+    static void validateHeaderName(CharSequence name) {
         if (name == null) {
             throw new NullPointerException("name");
         }
@@ -97,7 +97,7 @@ class HttpCodecUtil {
         }
     }
 
-    static void validateHeaderValue(String value) {
+    static void validateHeaderValue(CharSequence value) {
         if (value == null) {
             throw new NullPointerException("value");
         }
@@ -0,0 +1,315 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.codec.http;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.DefaultFileRegion;
+import org.jboss.netty.channel.FileRegion;
+import org.jboss.netty.handler.ssl.SslHandler;
+import org.jboss.netty.handler.stream.ChunkedInput;
+import org.jboss.netty.handler.stream.ChunkedNioFile;
+import org.jboss.netty.handler.stream.ChunkedWriteHandler;
+
+/**
+ * Writes the content of a file as the body of an {@link HttpResponse}.
+ * The response header is encoded by {@link HttpResponseEncoder} as usual, and
+ * then the body is written as a {@link FileRegion} so that the file is
+ * transferred by {@link FileRegion#transferTo(java.nio.channels.WritableByteChannel, long)}
+ * without being copied into a {@link org.jboss.netty.buffer.ChannelBuffer}.
+ * <p>
+ * Zero-copy transfer is not possible if the pipeline has to see the content.
+ * If the {@link ChannelPipeline} contains an {@link SslHandler}, the body is
+ * written as a {@link ChunkedInput} instead.  If it contains an
+ * {@link HttpContentEncoder} such as {@link HttpContentCompressor}, the
+ * response is switched to the 'chunked' transfer encoding and the body is
+ * written as {@link HttpChunk}s so that it can be encoded on the fly.  In both
+ * cases, a {@link ChunkedWriteHandler} must be in the pipeline:
+ * <pre>
+ * {@link ChannelPipeline} p = ...;
+ * p.addLast("decoder", new {@link HttpRequestDecoder}());
+ * p.addLast("aggregator", new {@link HttpChunkAggregator}(65536));
+ * p.addLast("encoder", new {@link HttpResponseEncoder}());
+ * p.addLast("chunkedWriter", new {@link ChunkedWriteHandler}());
+ * p.addLast("handler", new MyHandler());
+ *
+ * // MyHandler.messageReceived():
+ * {@link HttpRequest} req = ({@link HttpRequest}) e.getMessage();
+ * {@link HttpResponse} res = new {@link DefaultHttpResponse}({@link HttpVersion}.HTTP_1_1, {@link HttpResponseStatus}.OK);
+ * res.setHeader({@link HttpHeaders.Names}.CONTENT_TYPE, "text/html");
+ * {@link ChannelFuture} f = <b>{@link HttpFileWriter}.write(e.getChannel(), req, res, new RandomAccessFile(file, "r"))</b>;
+ * if (!{@link HttpHeaders}.isKeepAlive(req)) {
+ *     f.addListener({@link ChannelFutureListener}.CLOSE);
+ * }
+ * </pre>
+ *
+ * <h3>Range requests</h3>
+ * <p>
+ * A request with a single byte range in its {@code "Range"} header is
+ * answered with {@code 206 Partial Content} and the requested part of the
+ * file, or with {@code 416 Requested Range Not Satisfiable} if the range is
+ * outside of the file.  A malformed {@code "Range"} header, a request for
+ * multiple ranges, and an {@code "If-Range"} header which does not match the
+ * {@code "ETag"} or the {@code "Last-Modified"} header of the response are
+ * answered with the whole file.  Ranges are not supported when an
+ * {@link HttpContentEncoder} is in the pipeline because they would refer to
+ * the encoded content.
+ * <p>
+ * Please note that the transport has to support {@link FileRegion} for
+ * zero-copy transfer, which is the case with the NIO and the epoll socket
+ * transports.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public class HttpFileWriter {
+
+    private static final int DEFAULT_CHUNK_SIZE = 8192;
+
+    /**
+     * Writes the specified {@code response} followed by the content of the
+     * specified {@code file} to the specified {@code channel}.  Calling this
+     * method is same with calling {@link #write(Channel, HttpRequest, HttpResponse, RandomAccessFile, int)}
+     * with the chunk size of {@code 8192}.
+     */
+    public static ChannelFuture write(
+            Channel channel, HttpRequest request, HttpResponse response,
+            RandomAccessFile file) throws IOException {
+        return write(channel, request, response, file, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Writes the specified {@code response} followed by the content of the
+     * specified {@code file} to the specified {@code channel}.  The status
+     * and the {@code "Accept-Ranges"}, {@code "Content-Length"} and
+     * {@code "Content-Range"} headers of the {@code response} are updated
+     * according to the {@code request}.  The {@code file} is closed when the
+     * transfer is done.
+     *
+     * @param chunkSize the number of bytes to read on each chunk when the
+     *                  content cannot be transferred in a zero-copy way
+     *
+     * @return the {@link ChannelFuture} which is notified when the whole
+     *         response has been written
+     *
+     * @throws IllegalStateException
+     *         if zero-copy transfer is not possible and there's no
+     *         {@link ChunkedWriteHandler} in the pipeline
+     */
+    public static ChannelFuture write(
+            Channel channel, HttpRequest request, HttpResponse response,
+            final RandomAccessFile file, int chunkSize) throws IOException {
+        if (channel == null) {
+            throw new NullPointerException("channel");
+        }
+        if (request == null) {
+            throw new NullPointerException("request");
+        }
+        if (response == null) {
+            throw new NullPointerException("response");
+        }
+        if (file == null) {
+            throw new NullPointerException("file");
+        }
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException(
+                    "chunkSize: " + chunkSize +
+                    " (expected: a positive integer)");
+        }
+
+        ChannelPipeline pipeline = channel.getPipeline();
+        boolean encoded = pipeline.get(HttpContentEncoder.class) != null;
+        boolean zeroCopy = !encoded && isZeroCopySupported(pipeline);
+        if (!zeroCopy && pipeline.get(ChunkedWriteHandler.class) == null) {
+            file.close();
+            throw new IllegalStateException(
+                    "zero-copy file transfer is not possible and " +
+                    ChunkedWriteHandler.class.getSimpleName() +
+                    " is not in the pipeline.");
+        }
+
+        long fileLength;
+        try {
+            fileLength = file.length();
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+
+        long offset = 0;
+        long length = fileLength;
+        if (encoded) {
+            response.setHeader(HttpHeaders.Names.ACCEPT_RANGES, HttpHeaders.Values.NONE);
+        } else {
+            response.setHeader(HttpHeaders.Names.ACCEPT_RANGES, HttpHeaders.Values.BYTES);
+
+            long[] range = getRange(request, response, fileLength);
+            if (range == UNSATISFIABLE) {
+                file.close();
+                response.setStatus(HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+                response.setHeader(
+                        HttpHeaders.Names.CONTENT_RANGE, "bytes */" + fileLength);
+                HttpHeaders.setContentLength(response, 0);
+                return channel.write(response);
+            }
+            if (range != null) {
+                offset = range[0];
+                length = range[1] - range[0] + 1;
+                response.setStatus(HttpResponseStatus.PARTIAL_CONTENT);
+                response.setHeader(
+                        HttpHeaders.Names.CONTENT_RANGE,
+                        "bytes " + range[0] + '-' + range[1] + '/' + fileLength);
+            }
+        }
+
+        if (encoded) {
+            response.removeHeader(HttpHeaders.Names.CONTENT_LENGTH);
+            response.setHeader(
+                    HttpHeaders.Names.TRANSFER_ENCODING, HttpHeaders.Values.CHUNKED);
+            response.setChunked(true);
+        } else {
+            HttpHeaders.setContentLength(response, length);
+        }
+
+        if (request.getMethod() == HttpMethod.HEAD) {
+            file.close();
+            return channel.write(response);
+        }
+
+        // Write the initial line and the header.
+        channel.write(response);
+
+        // Write the content.
+        if (zeroCopy) {
+            final FileRegion region =
+                new DefaultFileRegion(file.getChannel(), offset, length);
+            ChannelFuture future = channel.write(region);
+            future.addListener(new ChannelFutureListener() {
+                public void operationComplete(ChannelFuture future) {
+                    region.releaseExternalResources();
+                }
+            });
+            return future;
+        }
+
+        ChunkedInput body =
+            new ChunkedNioFile(file.getChannel(), offset, length, chunkSize);
+        if (encoded) {
+            body = new HttpChunkedInput(body);
+        }
+        return channel.write(body);
+    }
+
+    /**
+     * Returns {@code true} if and only if the content written to the
+     * specified {@code pipeline} can be transferred in a zero-copy way.
+     */
+    public static boolean isZeroCopySupported(ChannelPipeline pipeline) {
+        return pipeline.get(SslHandler.class) == null &&
+               pipeline.get(HttpContentEncoder.class) == null;
+    }
+
+    private static final long[] UNSATISFIABLE = new long[0];
+
+    /**
+     * Returns the first and the last byte position of the requested range,
+     * {@code null} if the whole file should be sent, or {@link #UNSATISFIABLE}.
+     */
+    private static long[] getRange(
+            HttpRequest request, HttpResponse response, long fileLength) {
+        if (response.getStatus().getCode() != HttpResponseStatus.OK.getCode() ||
+            request.getMethod() != HttpMethod.GET && request.getMethod() != HttpMethod.HEAD) {
+            return null;
+        }
+
+        String value = request.getHeader(HttpHeaders.Names.RANGE);
+        if (value == null) {
+            return null;
+        }
+
+        String ifRange = request.getHeader(HttpHeaders.Names.IF_RANGE);
+        if (ifRange != null &&
+            !ifRange.equals(response.getHeader(HttpHeaders.Names.ETAG)) &&
+            !ifRange.equals(response.getHeader(HttpHeaders.Names.LAST_MODIFIED))) {
+            return null;
+        }
+
+        value = value.trim();
+        if (!value.startsWith("bytes=")) {
+            return null;
+        }
+        value = value.substring(6).trim();
+        if (value.indexOf(',') >= 0) {
+            // Multiple ranges (multipart/byteranges) are not supported.
+            return null;
+        }
+
+        int dash = value.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+
+        long first;
+        long last;
+        try {
+            String firstValue = value.substring(0, dash).trim();
+            String lastValue = value.substring(dash + 1).trim();
+            if (firstValue.length() == 0) {
+                // Suffix byte range - the last N bytes.
+                long suffixLength = Long.parseLong(lastValue);
+                if (suffixLength < 0) {
+                    return null;
+                }
+                if (suffixLength == 0 || fileLength == 0) {
+                    return UNSATISFIABLE;
+                }
+                first = Math.max(0, fileLength - suffixLength);
+                last = fileLength - 1;
+            } else {
+                first = Long.parseLong(firstValue);
+                if (lastValue.length() == 0) {
+                    last = fileLength - 1;
+                } else {
+                    last = Long.parseLong(lastValue);
+                    if (last < first) {
+                        return null;
+                    }
+                    last = Math.min(last, fileLength - 1);
+                }
+                if (first < 0) {
+                    return null;
+                }
+                if (first >= fileLength) {
+                    return UNSATISFIABLE;
+                }
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        return new long[] { first, last };
+    }
+
+    private HttpFileWriter() {
+        // Unused
+    }
+}
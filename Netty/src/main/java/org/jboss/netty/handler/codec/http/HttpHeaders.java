@@ -15,12 +15,14 @@
  */
 package org.jboss.netty.handler.codec.http;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
+import org.jboss.netty.buffer.ChannelBuffer;
+
 
 /**
  * Provides the constants for the standard HTTP header names and values and
@@ -674,60 +676,20 @@ public class HttpHeaders {
         message.setHeader(Names.HOST, value);
     }
 
-    private static final int BUCKET_SIZE = 17;
+    private static final int INITIAL_CAPACITY = 16;
 
-    private static int hash(String name) {
-        int h = 0;
-        for (int i = name.length() - 1; i >= 0; i --) {
-            char c = name.charAt(i);
-            if (c >= 'A' && c <= 'Z') {
-                c += 32;
-            }
-            h = 31 * h + c;
-        }
-
-        if (h > 0) {
-            return h;
-        } else if (h == Integer.MIN_VALUE) {
-            return Integer.MAX_VALUE;
-        } else {
-            return -h;
-        }
-    }
-
-    private static boolean eq(String name1, String name2) {
-        int nameLen = name1.length();
-        if (nameLen != name2.length()) {
-            return false;
-        }
-
-        for (int i = nameLen - 1; i >= 0; i --) {
-            char c1 = name1.charAt(i);
-            char c2 = name2.charAt(i);
-            if (c1 != c2) {
-                if (c1 >= 'A' && c1 <= 'Z') {
-                    c1 += 32;
-                }
-                if (c2 >= 'A' && c2 <= 'Z') {
-                    c2 += 32;
-                }
-                if (c1 != c2) {
-                    return false;
-                }
-            }
-        }
-        return true;
-    }
-
-    private static int index(int hash) {
-        return hash % BUCKET_SIZE;
-    }
-
-    private final Entry[] entries = new Entry[BUCKET_SIZE];
-    private final Entry head = new Entry(-1, null, null);
+    // Headers are stored in insertion order in the following flat arrays.
+    // A name is looked up by a linear scan over the case-insensitive hash
+    // codes, which is faster than a hash table for the usual number of
+    // headers.  A value is either a String or an AsciiString whose String
+    // representation is created only when requested.
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private AsciiString[] names = new AsciiString[INITIAL_CAPACITY];
+    private Object[] values = new Object[INITIAL_CAPACITY];
+    private int size;
 
     HttpHeaders() {
-        head.before = head.after = head;
+        super();
     }
 
     void validateHeaderName(String name) {
@@ -738,75 +700,90 @@ public class HttpHeaders {
         validateHeaderName(name);
         String strVal = toString(value);
         HttpCodecUtil.validateHeaderValue(strVal);
-        int h = hash(name);
-        int i = index(h);
-        addHeader0(h, i, name, strVal);
+        add0(AsciiString.of(name), strVal);
+    }
+
+    /**
+     * Adds the header which has been validated already, such as the one
+     * decoded by {@link HttpMessageDecoder}.
+     */
+    void addHeader(final AsciiString name, final AsciiString value) {
+        add0(name, value);
     }
 
-    private void addHeader0(int h, int i, final String name, final String value) {
-        // Update the hash table.
-        Entry e = entries[i];
-        Entry newEntry;
-        entries[i] = newEntry = new Entry(h, name, value);
-        newEntry.next = e;
+    private void add0(AsciiString name, Object value) {
+        int size = this.size;
+        if (size == names.length) {
+            int newCapacity = size << 1;
+            int[] newHashes = new int[newCapacity];
+            AsciiString[] newNames = new AsciiString[newCapacity];
+            Object[] newValues = new Object[newCapacity];
+            System.arraycopy(hashes, 0, newHashes, 0, size);
+            System.arraycopy(names, 0, newNames, 0, size);
+            System.arraycopy(values, 0, newValues, 0, size);
+            hashes = newHashes;
+            names = newNames;
+            values = newValues;
+        }
+
+        hashes[size] = name.hashCode();
+        names[size] = name;
+        values[size] = value;
+        this.size = size + 1;
+    }
 
-        // Update the linked list.
-        newEntry.addBefore(head);
+    /**
+     * Appends the specified continuation of a folded header line to the
+     * value of the last header.
+     */
+    void appendToLastHeader(String continuation) {
+        int last = size - 1;
+        if (last < 0) {
+            return;
+        }
+        values[last] = valueAt(last) + ' ' + continuation;
     }
 
     void removeHeader(final String name) {
         if (name == null) {
             throw new NullPointerException("name");
         }
-        int h = hash(name);
-        int i = index(h);
-        removeHeader0(h, i, name);
+        remove0(AsciiString.hash(name), name);
     }
 
-    private void removeHeader0(int h, int i, String name) {
-        Entry e = entries[i];
-        if (e == null) {
-            return;
-        }
+    private void remove0(int h, String name) {
+        final int[] hashes = this.hashes;
+        final AsciiString[] names = this.names;
+        final Object[] values = this.values;
+        final int size = this.size;
 
-        for (;;) {
-            if (e.hash == h && eq(name, e.key)) {
-                e.remove();
-                Entry next = e.next;
-                if (next != null) {
-                    entries[i] = next;
-                    e = next;
-                } else {
-                    entries[i] = null;
-                    return;
-                }
-            } else {
-                break;
+        int newSize = 0;
+        for (int i = 0; i < size; i ++) {
+            if (hashes[i] == h && names[i].equalsIgnoreCase(name)) {
+                continue;
+            }
+            if (newSize != i) {
+                hashes[newSize] = hashes[i];
+                names[newSize] = names[i];
+                values[newSize] = values[i];
             }
+            newSize ++;
         }
 
-        for (;;) {
-            Entry next = e.next;
-            if (next == null) {
-                break;
-            }
-            if (next.hash == h && eq(name, next.key)) {
-                e.next = next.next;
-                next.remove();
-            } else {
-                e = next;
-            }
+        for (int i = newSize; i < size; i ++) {
+            names[i] = null;
+            values[i] = null;
         }
+        this.size = newSize;
     }
 
     void setHeader(final String name, final Object value) {
         validateHeaderName(name);
         String strVal = toString(value);
         HttpCodecUtil.validateHeaderValue(strVal);
-        int h = hash(name);
-        int i = index(h);
-        removeHeader0(h, i, name);
-        addHeader0(h, i, name, strVal);
+        AsciiString n = AsciiString.of(name);
+        remove0(n.hashCode(), name);
+        add0(n, strVal);
     }
 
     void setHeader(final String name, final Iterable<?> values) {
@@ -816,25 +793,24 @@ public class HttpHeaders {
 
         validateHeaderName(name);
 
-        int h = hash(name);
-        int i = index(h);
-
-        removeHeader0(h, i, name);
+        AsciiString n = AsciiString.of(name);
+        remove0(n.hashCode(), name);
         for (Object v: values) {
             if (v == null) {
                 break;
             }
             String strVal = toString(v);
             HttpCodecUtil.validateHeaderValue(strVal);
-            addHeader0(h, i, name, strVal);
+            add0(n, strVal);
         }
     }
 
     void clearHeaders() {
-        for (int i = 0; i < entries.length; i ++) {
-            entries[i] = null;
+        for (int i = 0; i < size; i ++) {
+            names[i] = null;
+            values[i] = null;
         }
-        head.before = head.after = head;
+        size = 0;
     }
 
     String getHeader(final String name) {
@@ -842,15 +818,13 @@ public class HttpHeaders {
             throw new NullPointerException("name");
         }
 
-        int h = hash(name);
-        int i = index(h);
-        Entry e = entries[i];
-        while (e != null) {
-            if (e.hash == h && eq(name, e.key)) {
-                return e.value;
+        int h = AsciiString.hash(name);
+        final int[] hashes = this.hashes;
+        final int size = this.size;
+        for (int i = 0; i < size; i ++) {
+            if (hashes[i] == h && names[i].equalsIgnoreCase(name)) {
+                return valueAt(i);
             }
-
-            e = e.next;
         }
         return null;
     }
@@ -860,28 +834,32 @@ public class HttpHeaders {
             throw new NullPointerException("name");
         }
 
-        LinkedList<String> values = new LinkedList<String>();
+        List<String> values = null;
 
-        int h = hash(name);
-        int i = index(h);
-        Entry e = entries[i];
-        while (e != null) {
-            if (e.hash == h && eq(name, e.key)) {
-                values.addFirst(e.value);
+        int h = AsciiString.hash(name);
+        final int[] hashes = this.hashes;
+        final int size = this.size;
+        for (int i = 0; i < size; i ++) {
+            if (hashes[i] == h && names[i].equalsIgnoreCase(name)) {
+                if (values == null) {
+                    values = new ArrayList<String>(4);
+                }
+                values.add(valueAt(i));
             }
-            e = e.next;
+        }
+
+        if (values == null) {
+            return new ArrayList<String>(0);
         }
         return values;
     }
 
     List<Map.Entry<String, String>> getHeaders() {
+        final int size = this.size;
         List<Map.Entry<String, String>> all =
-            new LinkedList<Map.Entry<String, String>>();
-
-        Entry e = head.after;
-        while (e != head) {
-            all.add(e);
-            e = e.after;
+            new ArrayList<Map.Entry<String, String>>(size);
+        for (int i = 0; i < size; i ++) {
+            all.add(new Entry(i));
         }
         return all;
     }
@@ -894,14 +872,48 @@ public class HttpHeaders {
         Set<String> names =
             new TreeSet<String>(CaseIgnoringComparator.INSTANCE);
 
-        Entry e = head.after;
-        while (e != head) {
-            names.add(e.key);
-            e = e.after;
+        for (int i = 0; i < size; i ++) {
+            names.add(this.names[i].toString());
         }
         return names;
     }
 
+    /**
+     * Writes all headers in the form of {@code "<name>: <value>\r\n"} into
+     * the specified buffer without creating intermediate {@link String}s or
+     * byte arrays.
+     */
+    void encode(ChannelBuffer buf) {
+        final AsciiString[] names = this.names;
+        final Object[] values = this.values;
+        final int size = this.size;
+        for (int i = 0; i < size; i ++) {
+            names[i].writeTo(buf);
+            buf.writeByte(HttpCodecUtil.COLON);
+            buf.writeByte(HttpCodecUtil.SP);
+            Object value = values[i];
+            if (value instanceof AsciiString) {
+                ((AsciiString) value).writeTo(buf);
+            } else {
+                AsciiString.writeTo(buf, (String) value);
+            }
+            buf.writeByte(HttpCodecUtil.CR);
+            buf.writeByte(HttpCodecUtil.LF);
+        }
+    }
+
+    private String valueAt(int index) {
+        Object value = values[index];
+        if (value instanceof String) {
+            return (String) value;
+        }
+
+        // Materialize and cache the String representation.
+        String strVal = value.toString();
+        values[index] = strVal;
+        return strVal;
+    }
+
     private static String toString(Object value) {
         if (value == null) {
             return null;
@@ -909,29 +921,17 @@ public class HttpHeaders {
         return value.toString();
     }
 
-    private static final class Entry implements Map.Entry<String, String> {
-        final int hash;
-        final String key;
-        String value;
-        Entry next;
-        Entry before, after;
-
-        Entry(int hash, String key, String value) {
-            this.hash = hash;
-            this.key = key;
-            this.value = value;
-        }
-
-        void remove() {
-            before.after = after;
-            after.before = before;
-        }
+    /**
+     * A view of the header at the specified index.  It is valid until a
+     * header is removed.
+     */
+    private final class Entry implements Map.Entry<String, String> {
+        private final int index;
+        private final String key;
 
-        void addBefore(Entry e) {
-            after  = e;
-            before = e.before;
-            before.after = this;
-            after.before = this;
+        Entry(int index) {
+            this.index = index;
+            key = names[index].toString();
         }
 
         public String getKey() {
@@ -939,7 +939,7 @@ public class HttpHeaders {
         }
 
         public String getValue() {
-            return value;
+            return valueAt(index);
         }
 
         public String setValue(String value) {
@@ -947,14 +947,14 @@ public class HttpHeaders {
                 throw new NullPointerException("value");
             }
             HttpCodecUtil.validateHeaderValue(value);
-            String oldValue = this.value;
-            this.value = value;
+            String oldValue = valueAt(index);
+            values[index] = value;
             return oldValue;
         }
 
         @Override
         public String toString() {
-            return key + "=" + value;
+            return key + "=" + getValue();
         }
     }
 }
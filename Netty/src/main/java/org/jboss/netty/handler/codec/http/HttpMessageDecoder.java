@@ -483,43 +483,53 @@ public abstract class HttpMessageDecoder extends ReplayingDecoder<HttpMessageDec
 
         headerSize = 0; //每次开始解析头部消息时headerSize都置0，重新开始验证是否超出预定值
         final HttpMessage message = this.message;
-        String line = readHeader(buffer);
+        final HttpHeaders headers;
+        if (message instanceof DefaultHttpMessage) {
+            headers = ((DefaultHttpMessage) message).headers;
+        } else {
+            headers = null;
+        }
+
+        // The header lines are parsed directly from the buffer.  The name and
+        // the value of a header are kept as AsciiStrings, and are converted
+        // into Strings only when requested.
+        int start = buffer.readerIndex();
+        int lf = findEndOfHeaderLine(buffer);
+        int end = findEndOfLine(buffer, start, lf);
 
-        String lastHeader = null;
-        if (line.length() != 0) {
+        AsciiString lastHeader = null;
+        if (end != start) {
             message.clearHeaders();
             do {
-                char firstChar = line.charAt(0);
+                byte firstByte = buffer.getByte(start);
 
-				DEBUG.P("firstChar="+firstChar);
+				DEBUG.P("firstByte="+firstByte);
 				DEBUG.P("lastHeader="+lastHeader);
 
 				//头值跨多行时，第二行开始要么以' '开始要么以'\t'开始
-				//如:request.setHeader("testHeader", "testHeaderVa\r\n \tlue begin another line");
-				//变成: 
-				//lastHeader=testHeader
-				//current=[testHeaderVa]
-				//current=[testHeaderValue begin another line]
-
-                if (lastHeader != null && (firstChar == ' ' || firstChar == '\t')) {
-                    List<String> current = message.getHeaders(lastHeader);
-                    int lastPos = current.size() - 1;
-
-					DEBUG.P("current="+current);
-
-                    String newString = current.get(lastPos) + line.trim();
-                    current.set(lastPos, newString);
-
-					DEBUG.P("current="+current);
+                if (lastHeader != null &&
+                    (firstByte == HttpCodecUtil.SP || firstByte == HttpCodecUtil.HT)) {
+                    String continuation = readContinuation(buffer, start, end);
+                    if (headers != null) {
+                        headers.appendToLastHeader(continuation);
+                    } else {
+                        String name = lastHeader.toString();
+                        List<String> current = message.getHeaders(name);
+                        int lastPos = current.size() - 1;
+                        current.set(lastPos, current.get(lastPos) + ' ' + continuation);
+                        message.setHeader(name, current);
+                    }
                 } else {
-                    String[] header = splitHeader(line);
-                    message.addHeader(header[0], header[1]);
-                    lastHeader = header[0];
+                    lastHeader = addHeader(message, headers, buffer, start, end, false);
                 }
 
-                line = readHeader(buffer);
-            } while (line.length() != 0);
+                buffer.readerIndex(lf + 1);
+                start = lf + 1;
+                lf = findEndOfHeaderLine(buffer);
+                end = findEndOfLine(buffer, start, lf);
+            } while (end != start);
         }
+        buffer.readerIndex(lf + 1);
 
         State nextState;
 
@@ -553,87 +563,174 @@ public abstract class HttpMessageDecoder extends ReplayingDecoder<HttpMessageDec
 
     private HttpChunkTrailer readTrailingHeaders(ChannelBuffer buffer) throws TooLongFrameException {
         headerSize = 0;
-        String line = readHeader(buffer);
-        String lastHeader = null;
-        if (line.length() != 0) {
-            HttpChunkTrailer trailer = new DefaultHttpChunkTrailer();
-            do {
-                char firstChar = line.charAt(0);
-                if (lastHeader != null && (firstChar == ' ' || firstChar == '\t')) {
-                    List<String> current = trailer.getHeaders(lastHeader);
-                    if (current.size() != 0) {
-                        int lastPos = current.size() - 1;
-                        String newString = current.get(lastPos) + line.trim();
-                        current.set(lastPos, newString);
-                    } else {
-                        // Content-Length, Transfer-Encoding, or Trailer
-                    }
+        int start = buffer.readerIndex();
+        int lf = findEndOfHeaderLine(buffer);
+        int end = findEndOfLine(buffer, start, lf);
+        if (end == start) {
+            buffer.readerIndex(lf + 1);
+            return HttpChunk.LAST_CHUNK;
+        }
+
+        DefaultHttpChunkTrailer trailer = new DefaultHttpChunkTrailer();
+        AsciiString lastHeader = null;
+        boolean lastHeaderAdded = false;
+        do {
+            byte firstByte = buffer.getByte(start);
+            if (lastHeader != null &&
+                (firstByte == HttpCodecUtil.SP || firstByte == HttpCodecUtil.HT)) {
+                String continuation = readContinuation(buffer, start, end);
+                if (lastHeaderAdded) {
+                    trailer.headers.appendToLastHeader(continuation);
                 } else {
-                    String[] header = splitHeader(line);
-                    String name = header[0];
-                    if (!name.equalsIgnoreCase(HttpHeaders.Names.CONTENT_LENGTH) &&
-                        !name.equalsIgnoreCase(HttpHeaders.Names.TRANSFER_ENCODING) &&
-                        !name.equalsIgnoreCase(HttpHeaders.Names.TRAILER)) {
-                        trailer.addHeader(name, header[1]);
-                    }
-                    lastHeader = name;
+                    // Content-Length, Transfer-Encoding, or Trailer
                 }
+            } else {
+                lastHeader = addHeader(null, trailer.headers, buffer, start, end, true);
+                lastHeaderAdded = lastHeader != null;
+                if (lastHeader == null) {
+                    // Keep skipping the continuation lines of the prohibited header.
+                    lastHeader = PROHIBITED_TRAILING_HEADER;
+                }
+            }
 
-                line = readHeader(buffer);
-            } while (line.length() != 0);
-
-            return trailer;
-        }
+            buffer.readerIndex(lf + 1);
+            start = lf + 1;
+            lf = findEndOfHeaderLine(buffer);
+            end = findEndOfLine(buffer, start, lf);
+        } while (end != start);
+        buffer.readerIndex(lf + 1);
 
-        return HttpChunk.LAST_CHUNK;
+        return trailer;
     }
 
-    private String readHeader(ChannelBuffer buffer) throws TooLongFrameException {
-		try {//我加上的
-		DEBUG.P(this,"readHeader(1)");
-		DEBUG.P("headerSize="+headerSize);
+    private static final AsciiString PROHIBITED_TRAILING_HEADER =
+        AsciiString.of(HttpHeaders.Names.TRAILER);
 
-        StringBuilder sb = new StringBuilder(64);
-        int headerSize = this.headerSize;
+    /**
+     * Splits the header line between {@code start} and {@code end} into a
+     * name and a value, and adds them to the specified {@link HttpHeaders},
+     * or to the specified {@link HttpMessage} if the headers are not
+     * accessible directly.
+     *
+     * @return the name of the added header, or {@code null} if the header is
+     *         a prohibited trailing header and thus has been discarded
+     */
+    private static AsciiString addHeader(
+            HttpMessage message, HttpHeaders headers,
+            ChannelBuffer buffer, int start, int end, boolean trailer) {
+        int nameStart;
+        int nameEnd;
+        int colonEnd;
+        int valueStart;
+        int valueEnd;
 
-        loop:
-        for (;;) {
-            char nextByte = (char) buffer.readByte();
-            headerSize ++;
+        nameStart = findNonWhitespace(buffer, start, end);
+        for (nameEnd = nameStart; nameEnd < end; nameEnd ++) {
+            byte b = buffer.getByte(nameEnd);
+            if (b == HttpCodecUtil.COLON || isWhitespace(b)) {
+                break;
+            }
+        }
 
-            switch (nextByte) {
-            case HttpCodecUtil.CR:
-                nextByte = (char) buffer.readByte();
-                headerSize ++;
-                if (nextByte == HttpCodecUtil.LF) {
-                    break loop;
-                }
+        for (colonEnd = nameEnd; colonEnd < end; colonEnd ++) {
+            if (buffer.getByte(colonEnd) == HttpCodecUtil.COLON) {
+                colonEnd ++;
                 break;
-            case HttpCodecUtil.LF:
-                break loop;
             }
+        }
+
+        valueStart = findNonWhitespace(buffer, colonEnd, end);
+        valueEnd = findEndOfValue(buffer, valueStart, end);
+
+        AsciiString name = AsciiString.of(buffer, nameStart, nameEnd - nameStart);
+        if (trailer &&
+            (name.equalsIgnoreCase(HttpHeaders.Names.CONTENT_LENGTH) ||
+             name.equalsIgnoreCase(HttpHeaders.Names.TRANSFER_ENCODING) ||
+             name.equalsIgnoreCase(HttpHeaders.Names.TRAILER))) {
+            return null;
+        }
 
-            // Abort decoding if the header part is too large.
-            if (headerSize >= maxHeaderSize) {
-                throw new TooLongFrameException(
-                        "HTTP header is larger than " +
-                        maxHeaderSize + " bytes.");
+        AsciiString value = AsciiString.copyOf(buffer, valueStart, valueEnd - valueStart);
+        if (headers != null) {
+            HttpCodecUtil.validateHeaderName(name);
+            HttpCodecUtil.validateHeaderValue(value);
+            headers.addHeader(name, value);
+        } else {
+            message.addHeader(name.toString(), value.toString());
+        }
+        return name;
+    }
+
+    private static String readContinuation(ChannelBuffer buffer, int start, int end) {
+        int valueStart = findNonWhitespace(buffer, start, end);
+        int valueEnd = findEndOfValue(buffer, valueStart, end);
+        return AsciiString.copyOf(buffer, valueStart, valueEnd - valueStart).toString();
+    }
 
+    /**
+     * Finds the LF which terminates the header line which starts at the
+     * current {@code readerIndex} of the specified buffer, without modifying
+     * the {@code readerIndex}.
+     *
+     * @return the absolute index of the LF
+     */
+    private int findEndOfHeaderLine(ChannelBuffer buffer) throws TooLongFrameException {
+        final int start = buffer.readerIndex();
+        final int available = actualReadableBytes();
+        final int remaining = maxHeaderSize - headerSize;
+        final int end = start + Math.min(available, remaining);
+        for (int i = start; i < end; i ++) {
+            if (buffer.getByte(i) == HttpCodecUtil.LF) {
+                headerSize += i - start + 1;
+                return i;
             }
+        }
 
-            sb.append(nextByte);
+        // Abort decoding if the header part is too large.
+        if (available >= remaining) {
+            throw new TooLongFrameException(
+                    "HTTP header is larger than " +
+                    maxHeaderSize + " bytes.");
         }
 
-        this.headerSize = headerSize;
+        // There's no LF in the received data.  It always ends up with a replay
+        // to wait for more data.
+        return start + buffer.bytesBefore(HttpCodecUtil.LF);
+    }
 
-		DEBUG.P("header="+sb.toString());
-		DEBUG.P("header.length="+sb.toString().length());
-		DEBUG.P("headerSize="+headerSize);
-        return sb.toString();
+    /**
+     * Returns the end index of the line terminated by the LF at the specified
+     * index, excluding the optional CR.
+     */
+    private static int findEndOfLine(ChannelBuffer buffer, int start, int lf) {
+        if (lf > start && buffer.getByte(lf - 1) == HttpCodecUtil.CR) {
+            return lf - 1;
+        }
+        return lf;
+    }
 
-		}finally{//我加上的
-		DEBUG.P(0,this,"readHeader(1)");
-		}
+    private static int findNonWhitespace(ChannelBuffer buffer, int start, int end) {
+        int result;
+        for (result = start; result < end; result ++) {
+            if (!isWhitespace(buffer.getByte(result))) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    private static int findEndOfValue(ChannelBuffer buffer, int start, int end) {
+        int result;
+        for (result = end; result > start; result --) {
+            if (!isWhitespace(buffer.getByte(result - 1))) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return Character.isWhitespace((char) (b & 0xFF));
     }
 
     protected abstract boolean isDecodingRequest();
@@ -725,44 +822,6 @@ public abstract class HttpMessageDecoder extends ReplayingDecoder<HttpMessageDec
 		}
     }
 
-    private String[] splitHeader(String sb) {
-        final int length = sb.length();
-        int nameStart;
-        int nameEnd;
-        int colonEnd;
-        int valueStart;
-        int valueEnd;
-
-        nameStart = findNonWhitespace(sb, 0);
-        for (nameEnd = nameStart; nameEnd < length; nameEnd ++) {
-            char ch = sb.charAt(nameEnd);
-            if (ch == ':' || Character.isWhitespace(ch)) {
-                break;
-            }
-        }
-
-        for (colonEnd = nameEnd; colonEnd < length; colonEnd ++) {
-            if (sb.charAt(colonEnd) == ':') {
-                colonEnd ++;
-                break;
-            }
-        }
-
-        valueStart = findNonWhitespace(sb, colonEnd);
-        if (valueStart == length) {
-            return new String[] {
-                    sb.substring(nameStart, nameEnd),
-                    ""
-            };
-        }
-
-        valueEnd = findEndOfString(sb);
-        return new String[] {
-                sb.substring(nameStart, nameEnd),
-                sb.substring(valueStart, valueEnd)
-        };
-    }
-
     private int findNonWhitespace(String sb, int offset) {
         int result;
         for (result = offset; result < sb.length(); result ++) {
@@ -18,7 +18,6 @@ package org.jboss.netty.handler.codec.http;
 import static org.jboss.netty.buffer.ChannelBuffers.*;
 import static org.jboss.netty.handler.codec.http.HttpCodecUtil.*;
 
-import java.io.UnsupportedEncodingException;
 import java.util.Map;
 
 import org.jboss.netty.buffer.ChannelBuffer;
@@ -131,31 +130,32 @@ public abstract class HttpMessageEncoder extends OneToOneEncoder {
     }
 
     private void encodeHeaders(ChannelBuffer buf, HttpMessage message) {
-        try {
-            for (Map.Entry<String, String> h: message.getHeaders()) {
-                encodeHeader(buf, h.getKey(), h.getValue());
-            }
-        } catch (UnsupportedEncodingException e) {
-            throw (Error) new Error().initCause(e);
+        if (message instanceof DefaultHttpMessage) {
+            ((DefaultHttpMessage) message).headers.encode(buf);
+            return;
+        }
+
+        for (Map.Entry<String, String> h: message.getHeaders()) {
+            encodeHeader(buf, h.getKey(), h.getValue());
         }
     }
 
     private void encodeTrailingHeaders(ChannelBuffer buf, HttpChunkTrailer trailer) {
-        try {
-            for (Map.Entry<String, String> h: trailer.getHeaders()) {
-                encodeHeader(buf, h.getKey(), h.getValue());
-            }
-        } catch (UnsupportedEncodingException e) {
-            throw (Error) new Error().initCause(e);
+        if (trailer instanceof DefaultHttpChunkTrailer) {
+            ((DefaultHttpChunkTrailer) trailer).headers.encode(buf);
+            return;
+        }
+
+        for (Map.Entry<String, String> h: trailer.getHeaders()) {
+            encodeHeader(buf, h.getKey(), h.getValue());
         }
     }
 
-    private void encodeHeader(ChannelBuffer buf, String header, String value)
-            throws UnsupportedEncodingException {
-        buf.writeBytes(header.getBytes("ASCII"));
+    private void encodeHeader(ChannelBuffer buf, String header, String value) {
+        AsciiString.writeTo(buf, header);
         buf.writeByte(COLON);
         buf.writeByte(SP);
-        buf.writeBytes(value.getBytes("ASCII"));
+        AsciiString.writeTo(buf, value);
         buf.writeByte(CR);
         buf.writeByte(LF);
     }
@@ -0,0 +1,757 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.codec.http.client;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.socket.ClientSocketChannelFactory;
+import org.jboss.netty.handler.codec.http.HttpChunkAggregator;
+import org.jboss.netty.handler.codec.http.HttpClientCodec;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+import org.jboss.netty.util.internal.ConcurrentHashMap;
+
+/**
+ * Executes {@link HttpRequest}s over persistent HTTP/1.1 connections which
+ * are reused for the following requests to the same host.
+ * <pre>
+ * {@link Timer} timer = new {@link org.jboss.netty.util.HashedWheelTimer}();
+ * {@link HttpClientPool} pool = new {@link HttpClientPool}(
+ *         new {@link org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory}(...), timer);
+ * pool.setOption("tcpNoDelay", true);
+ *
+ * {@link HttpRequest} request = new {@link org.jboss.netty.handler.codec.http.DefaultHttpRequest}(
+ *         {@link org.jboss.netty.handler.codec.http.HttpVersion}.HTTP_1_1, {@link HttpMethod}.GET, "/");
+ * pool.execute(new {@link InetSocketAddress}("example.com", 80), request).addListener(
+ *         new {@link HttpResponseFutureListener}() {
+ *             public void operationComplete({@link HttpResponseFuture} future) {
+ *                 {@link HttpResponse} response = future.getResponse();
+ *                 ...
+ *             }
+ *         });
+ * </pre>
+ *
+ * <h3>Connection management</h3>
+ * A request is sent over an idle connection to the host if there is one.
+ * Otherwise, a new connection is opened unless {@code maxConnectionsPerHost}
+ * connections are open already.  If the limit has been reached, an
+ * idempotent request is pipelined behind the requests on the least busy
+ * connection which has less than {@code maxPipelineDepth} requests in flight
+ * and only idempotent requests in flight.  Any other request waits until a
+ * connection becomes available.  The default pipeline depth is {@code 1},
+ * which disables pipelining, because some servers and proxies do not
+ * implement it correctly.
+ * <p>
+ * A connection is closed when a response or its request has the
+ * {@code "Connection: close"} header, and when it has been idle for
+ * {@code idleTimeout}.  The most recently used idle connection is reused
+ * first, so that the connections which are not needed anymore time out.
+ * <p>
+ * When a connection is closed before all its requests have been answered,
+ * the idempotent requests among them are retried once on another connection
+ * and the others fail.  This covers the common race where a server closes a
+ * persistent connection while a request is being sent over it.
+ *
+ * <h3>Pipeline and responses</h3>
+ * The pipeline of a connection is created by the optional
+ * {@link ChannelPipelineFactory}, which can add an
+ * {@link org.jboss.netty.handler.ssl.SslHandler} for example, followed by a
+ * {@link HttpClientCodec} and a {@link HttpChunkAggregator} which aggregates
+ * the content of a response up to {@code maxContentLength} bytes.  A request
+ * must not be {@linkplain HttpRequest#isChunked() chunked}.  The
+ * {@code "Host"} header of a request is set from the remote address if it is
+ * missing.
+ * <p>
+ * The {@link Timer} and the {@link ClientSocketChannelFactory} are not
+ * released by {@link #close()}.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ *
+ * @apiviz.landmark
+ * @apiviz.uses org.jboss.netty.handler.codec.http.client.HttpResponseFuture
+ */
+public class HttpClientPool {
+
+    /**
+     * The default maximum number of connections per host, which is {@code 8}.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 8;
+
+    /**
+     * The default maximum number of requests in flight per connection, which
+     * is {@code 1}.
+     */
+    public static final int DEFAULT_MAX_PIPELINE_DEPTH = 1;
+
+    /**
+     * The default idle timeout of a connection in milliseconds, which is
+     * one minute.
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60000;
+
+    /**
+     * The default maximum content length of a response, which is 1 MiB.
+     */
+    public static final int DEFAULT_MAX_CONTENT_LENGTH = 1048576;
+
+    private final ClientSocketChannelFactory factory;
+    private final ChannelPipelineFactory pipelineFactory;
+    private final Timer timer;
+    private final int maxConnectionsPerHost;
+    private final int maxPipelineDepth;
+    private final long idleTimeoutMillis;
+    private final int maxContentLength;
+    private final Map<String, Object> options = new ConcurrentHashMap<String, Object>();
+    private final ConcurrentMap<InetSocketAddress, HostPool> hosts =
+        new ConcurrentHashMap<InetSocketAddress, HostPool>();
+    private volatile boolean closed;
+
+    /**
+     * Creates a new instance with the default limits and no additional
+     * handlers in the pipeline of a connection.
+     *
+     * @param factory  the factory of the connections
+     * @param timer    the {@link Timer} which closes the idle connections
+     */
+    public HttpClientPool(ClientSocketChannelFactory factory, Timer timer) {
+        this(factory, null, timer,
+             DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_MAX_PIPELINE_DEPTH,
+             DEFAULT_IDLE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS,
+             DEFAULT_MAX_CONTENT_LENGTH);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param factory                the factory of the connections
+     * @param pipelineFactory        the factory of the handlers which are
+     *                               inserted before the HTTP codec, or
+     *                               {@code null} if there are none
+     * @param timer                  the {@link Timer} which closes the idle
+     *                               connections
+     * @param maxConnectionsPerHost  the maximum number of connections to a
+     *                               host
+     * @param maxPipelineDepth       the maximum number of requests in flight
+     *                               on a connection.  {@code 1} disables
+     *                               pipelining.
+     * @param idleTimeout            the time after which an idle connection
+     *                               is closed
+     * @param unit                   the {@link TimeUnit} of {@code idleTimeout}
+     * @param maxContentLength       the maximum content length of a response
+     */
+    public HttpClientPool(
+            ClientSocketChannelFactory factory, ChannelPipelineFactory pipelineFactory,
+            Timer timer, int maxConnectionsPerHost, int maxPipelineDepth,
+            long idleTimeout, TimeUnit unit, int maxContentLength) {
+        if (factory == null) {
+            throw new NullPointerException("factory");
+        }
+        if (timer == null) {
+            throw new NullPointerException("timer");
+        }
+        if (unit == null) {
+            throw new NullPointerException("unit");
+        }
+        if (maxConnectionsPerHost <= 0) {
+            throw new IllegalArgumentException(
+                    "maxConnectionsPerHost must be a positive integer: " +
+                    maxConnectionsPerHost);
+        }
+        if (maxPipelineDepth <= 0) {
+            throw new IllegalArgumentException(
+                    "maxPipelineDepth must be a positive integer: " +
+                    maxPipelineDepth);
+        }
+        if (idleTimeout <= 0) {
+            throw new IllegalArgumentException(
+                    "idleTimeout must be a positive value: " + idleTimeout);
+        }
+        if (maxContentLength <= 0) {
+            throw new IllegalArgumentException(
+                    "maxContentLength must be a positive integer: " +
+                    maxContentLength);
+        }
+
+        this.factory = factory;
+        this.pipelineFactory = pipelineFactory;
+        this.timer = timer;
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.maxPipelineDepth = maxPipelineDepth;
+        idleTimeoutMillis = Math.max(1, unit.toMillis(idleTimeout));
+        this.maxContentLength = maxContentLength;
+    }
+
+    /**
+     * Returns the value of the option with the specified key, or
+     * {@code null} if there is no such option.
+     */
+    public Object getOption(String key) {
+        if (key == null) {
+            throw new NullPointerException("key");
+        }
+        return options.get(key);
+    }
+
+    /**
+     * Sets an option which is applied to the connections opened from now on,
+     * such as {@code "tcpNoDelay"} or {@code "connectTimeoutMillis"}.  The
+     * option is removed if {@code value} is {@code null}.
+     */
+    public void setOption(String key, Object value) {
+        if (key == null) {
+            throw new NullPointerException("key");
+        }
+        if (value == null) {
+            options.remove(key);
+        } else {
+            options.put(key, value);
+        }
+    }
+
+    /**
+     * Sends the specified request to the specified host over a pooled
+     * connection.
+     *
+     * @return the future which is completed with the response
+     *
+     * @throws IllegalArgumentException if the request is chunked
+     */
+    public HttpResponseFuture execute(InetSocketAddress remoteAddress, HttpRequest request) {
+        if (remoteAddress == null) {
+            throw new NullPointerException("remoteAddress");
+        }
+        if (request == null) {
+            throw new NullPointerException("request");
+        }
+        if (request.isChunked()) {
+            throw new IllegalArgumentException("chunked request is not supported");
+        }
+        if (request.getHeader(HttpHeaders.Names.HOST) == null) {
+            request.setHeader(HttpHeaders.Names.HOST, hostHeader(remoteAddress));
+        }
+
+        HttpResponseFuture future = new HttpResponseFuture(request);
+        if (closed) {
+            future.setFailure(new ClosedChannelException());
+            return future;
+        }
+
+        HostPool host = hosts.get(remoteAddress);
+        if (host == null) {
+            host = new HostPool(remoteAddress);
+            HostPool oldHost = hosts.putIfAbsent(remoteAddress, host);
+            if (oldHost != null) {
+                host = oldHost;
+            }
+        }
+        host.execute(new PendingRequest(future));
+        return future;
+    }
+
+    /**
+     * Returns the number of the open connections to the specified host,
+     * including the ones being connected.
+     */
+    public int getConnectionCount(InetSocketAddress remoteAddress) {
+        HostPool host = hosts.get(remoteAddress);
+        if (host == null) {
+            return 0;
+        }
+        synchronized (host) {
+            return host.connections.size();
+        }
+    }
+
+    /**
+     * Closes all connections and fails the requests which have not been
+     * answered yet.  A request executed afterwards fails immediately.
+     */
+    public void close() {
+        closed = true;
+        for (HostPool host: hosts.values()) {
+            host.close();
+        }
+    }
+
+    private static String hostHeader(InetSocketAddress address) {
+        String host;
+        if (address.isUnresolved()) {
+            host = address.getHostName();
+        } else {
+            // InetAddress.toString() gives "hostname/address" without a
+            // reverse lookup, while getHostName() may do one.
+            String s = address.getAddress().toString();
+            int slash = s.indexOf('/');
+            host = slash > 0? s.substring(0, slash) : s.substring(slash + 1);
+            if (host.indexOf(':') >= 0) {
+                host = '[' + host + ']';
+            }
+        }
+        if (address.getPort() != 80) {
+            host = host + ':' + address.getPort();
+        }
+        return host;
+    }
+
+    private static boolean isIdempotent(HttpMethod method) {
+        return HttpMethod.GET.equals(method) || HttpMethod.HEAD.equals(method) ||
+               HttpMethod.PUT.equals(method) || HttpMethod.DELETE.equals(method) ||
+               HttpMethod.OPTIONS.equals(method) || HttpMethod.TRACE.equals(method);
+    }
+
+    private static final class PendingRequest {
+        final HttpResponseFuture future;
+        final boolean idempotent;
+        boolean retried;
+
+        PendingRequest(HttpResponseFuture future) {
+            super();
+            this.future = future;
+            idempotent = isIdempotent(future.getRequest().getMethod());
+        }
+    }
+
+    /**
+     * The connections and the waiting requests of a host.  All state changes
+     * happen while holding its lock, but a request is written, a connection
+     * is opened or closed, and a future is completed after the lock has been
+     * released so that no I/O and no listener runs with the lock held.
+     */
+    private final class HostPool {
+
+        final InetSocketAddress address;
+        // The most recently used connection is at the end.
+        final List<Connection> connections = new ArrayList<Connection>();
+        final LinkedList<PendingRequest> waiting = new LinkedList<PendingRequest>();
+        boolean closed;
+
+        HostPool(InetSocketAddress address) {
+            super();
+            this.address = address;
+        }
+
+        void execute(PendingRequest r) {
+            Connection c = null;
+            List<Connection> newConnections = null;
+            boolean rejected = false;
+            synchronized (this) {
+                if (closed) {
+                    rejected = true;
+                } else {
+                    c = findIdle();
+                    if (c == null && connections.size() >= maxConnectionsPerHost) {
+                        c = findPipelinable(r);
+                    }
+                    if (c != null) {
+                        c.enqueue(r);
+                    } else {
+                        waiting.add(r);
+                        newConnections = openIfNeeded(null);
+                    }
+                }
+            }
+
+            if (rejected) {
+                r.future.setFailure(new ClosedChannelException());
+            }
+            if (c != null) {
+                c.flush();
+            }
+            connect(newConnections);
+        }
+
+        void connected(Connection c) {
+            List<Connection> flush = new ArrayList<Connection>(1);
+            synchronized (this) {
+                c.connected = true;
+                serveWaiting(flush);
+                if (c.inFlight.isEmpty()) {
+                    c.scheduleIdleTimeout();
+                }
+            }
+            flush(flush);
+        }
+
+        void responseReceived(Connection c, HttpResponse response) {
+            PendingRequest r;
+            boolean close;
+            List<Connection> flush = new ArrayList<Connection>(1);
+            synchronized (this) {
+                r = c.poll();
+                close = r == null ||
+                        !HttpHeaders.isKeepAlive(response) ||
+                        !HttpHeaders.isKeepAlive(r.future.getRequest());
+                if (close) {
+                    // The requests pipelined behind are retried when the
+                    // connection is closed.
+                    c.closing = true;
+                } else if (c.inFlight.isEmpty()) {
+                    connections.remove(c);
+                    connections.add(c);
+                    serveWaiting(flush);
+                    if (c.inFlight.isEmpty()) {
+                        c.scheduleIdleTimeout();
+                    }
+                }
+            }
+
+            if (r != null) {
+                r.future.setSuccess(response);
+            }
+            flush(flush);
+            if (close) {
+                c.channel.close();
+            }
+        }
+
+        void closed(Connection c) {
+            List<PendingRequest> failed = new ArrayList<PendingRequest>();
+            List<Connection> flush = new ArrayList<Connection>(1);
+            List<Connection> newConnections = null;
+            synchronized (this) {
+                connections.remove(c);
+                c.cancelIdleTimeout();
+
+                // Retry the idempotent requests before the waiting ones.
+                boolean retry = !closed && c.connected &&
+                                (c.cause == null || c.cause instanceof IOException);
+                List<PendingRequest> retried = new ArrayList<PendingRequest>();
+                for (PendingRequest r = c.poll(); r != null; r = c.poll()) {
+                    if (retry && r.idempotent && !r.retried) {
+                        r.retried = true;
+                        retried.add(r);
+                    } else {
+                        failed.add(r);
+                    }
+                }
+                for (int i = retried.size() - 1; i >= 0; i --) {
+                    waiting.addFirst(retried.get(i));
+                }
+
+                if (closed || !c.connected && !hasConnected()) {
+                    // Nothing can be sent to this host now, either because
+                    // the pool has been closed or because it is unreachable.
+                    failed.addAll(waiting);
+                    waiting.clear();
+                } else if (c.connected) {
+                    serveWaiting(flush);
+                    newConnections = openIfNeeded(null);
+                }
+            }
+
+            Throwable cause = c.cause;
+            if (cause == null) {
+                cause = new ClosedChannelException();
+            }
+            for (PendingRequest r: failed) {
+                r.future.setFailure(cause);
+            }
+            flush(flush);
+            connect(newConnections);
+        }
+
+        void idle(Connection c, Timeout timeout) {
+            synchronized (this) {
+                if (timeout != c.idleTimeout || !c.inFlight.isEmpty() || c.closing) {
+                    return;
+                }
+                c.idleTimeout = null;
+                c.closing = true;
+            }
+            c.channel.close();
+        }
+
+        void close() {
+            List<PendingRequest> failed;
+            List<Connection> closing;
+            synchronized (this) {
+                closed = true;
+                failed = new ArrayList<PendingRequest>(waiting);
+                waiting.clear();
+                closing = new ArrayList<Connection>(connections);
+            }
+
+            for (PendingRequest r: failed) {
+                r.future.setFailure(new ClosedChannelException());
+            }
+            for (Connection c: closing) {
+                Channel ch = c.channel;
+                if (ch != null) {
+                    ch.close();
+                }
+            }
+        }
+
+        private boolean hasConnected() {
+            for (Connection c: connections) {
+                if (c.connected) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private Connection findIdle() {
+            for (int i = connections.size() - 1; i >= 0; i --) {
+                Connection c = connections.get(i);
+                if (c.connected && !c.closing && c.inFlight.isEmpty()) {
+                    return c;
+                }
+            }
+            return null;
+        }
+
+        private Connection findPipelinable(PendingRequest r) {
+            if (maxPipelineDepth <= 1 || !r.idempotent) {
+                return null;
+            }
+
+            Connection best = null;
+            for (Connection c: connections) {
+                if (!c.connected || c.closing || c.nonIdempotentInFlight > 0 ||
+                    c.inFlight.size() >= maxPipelineDepth) {
+                    continue;
+                }
+                if (best == null || c.inFlight.size() < best.inFlight.size()) {
+                    best = c;
+                }
+            }
+            return best;
+        }
+
+        private void serveWaiting(List<Connection> flush) {
+            while (!waiting.isEmpty()) {
+                PendingRequest r = waiting.peek();
+                Connection c = findIdle();
+                if (c == null) {
+                    c = findPipelinable(r);
+                    if (c == null) {
+                        break;
+                    }
+                }
+                waiting.poll();
+                c.enqueue(r);
+                if (!flush.contains(c)) {
+                    flush.add(c);
+                }
+            }
+        }
+
+        /**
+         * Adds a new connection for every waiting request which is not going
+         * to be served by a connection being opened, up to the limit.
+         */
+        private List<Connection> openIfNeeded(List<Connection> newConnections) {
+            int connecting = 0;
+            for (Connection c: connections) {
+                if (!c.connected) {
+                    connecting ++;
+                }
+            }
+
+            while (waiting.size() > connecting && connections.size() < maxConnectionsPerHost) {
+                Connection c = new Connection(this);
+                connections.add(c);
+                connecting ++;
+                if (newConnections == null) {
+                    newConnections = new ArrayList<Connection>(1);
+                }
+                newConnections.add(c);
+            }
+            return newConnections;
+        }
+
+        private void flush(List<Connection> connections) {
+            for (Connection c: connections) {
+                c.flush();
+            }
+        }
+
+        private void connect(List<Connection> newConnections) {
+            if (newConnections != null) {
+                for (Connection c: newConnections) {
+                    c.connect();
+                }
+            }
+        }
+    }
+
+    /**
+     * A connection to a host and the last handler of its pipeline.  The
+     * fields except {@link #channel}, {@link #outbound} and {@link #cause}
+     * are guarded by the lock of the {@link HostPool}.
+     */
+    private final class Connection extends SimpleChannelUpstreamHandler implements TimerTask {
+
+        private final HostPool host;
+        volatile Channel channel;
+        volatile Throwable cause;
+        boolean connected;
+        boolean closing;
+        final Queue<PendingRequest> inFlight = new LinkedList<PendingRequest>();
+        int nonIdempotentInFlight;
+        Timeout idleTimeout;
+
+        // The requests to write, in the same order as inFlight.
+        private final Queue<PendingRequest> outbound = new ConcurrentLinkedQueue<PendingRequest>();
+
+        private final ChannelFutureListener writeListener = new ChannelFutureListener() {
+            public void operationComplete(ChannelFuture future) throws Exception {
+                if (!future.isSuccess()) {
+                    if (cause == null) {
+                        cause = future.getCause();
+                    }
+                    future.getChannel().close();
+                }
+            }
+        };
+
+        Connection(HostPool host) {
+            super();
+            this.host = host;
+        }
+
+        void connect() {
+            ChannelPipeline pipeline;
+            try {
+                pipeline = pipelineFactory == null? Channels.pipeline() : pipelineFactory.getPipeline();
+            } catch (Exception e) {
+                cause = e;
+                host.closed(this);
+                return;
+            }
+            pipeline.addLast("codec", new HttpClientCodec());
+            pipeline.addLast("aggregator", new HttpChunkAggregator(maxContentLength));
+            pipeline.addLast("handler", this);
+
+            Channel ch = factory.newChannel(pipeline);
+            channel = ch;
+            ch.getConfig().setOptions(options);
+            ch.connect(host.address).addListener(new ChannelFutureListener() {
+                public void operationComplete(ChannelFuture future) throws Exception {
+                    if (!future.isSuccess()) {
+                        cause = future.getCause();
+                        future.getChannel().close();
+                    }
+                }
+            });
+        }
+
+        void enqueue(PendingRequest r) {
+            cancelIdleTimeout();
+            inFlight.add(r);
+            if (!r.idempotent) {
+                nonIdempotentInFlight ++;
+            }
+            outbound.add(r);
+        }
+
+        PendingRequest poll() {
+            PendingRequest r = inFlight.poll();
+            if (r != null && !r.idempotent) {
+                nonIdempotentInFlight --;
+            }
+            return r;
+        }
+
+        void flush() {
+            // Write in the order of enqueue() even if flushed concurrently.
+            synchronized (outbound) {
+                for (;;) {
+                    PendingRequest r = outbound.poll();
+                    if (r == null) {
+                        break;
+                    }
+                    channel.write(r.future.getRequest()).addListener(writeListener);
+                }
+            }
+        }
+
+        void scheduleIdleTimeout() {
+            cancelIdleTimeout();
+            idleTimeout = timer.newTimeout(this, idleTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+
+        void cancelIdleTimeout() {
+            if (idleTimeout != null) {
+                idleTimeout.cancel();
+                idleTimeout = null;
+            }
+        }
+
+        public void run(Timeout timeout) throws Exception {
+            host.idle(this, timeout);
+        }
+
+        @Override
+        public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e)
+                throws Exception {
+            host.connected(this);
+        }
+
+        @Override
+        public void messageReceived(ChannelHandlerContext ctx, MessageEvent e)
+                throws Exception {
+            Object m = e.getMessage();
+            if (m instanceof HttpResponse) {
+                host.responseReceived(this, (HttpResponse) m);
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e)
+                throws Exception {
+            if (cause == null) {
+                cause = e.getCause();
+            }
+            e.getChannel().close();
+        }
+
+        @Override
+        public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e)
+                throws Exception {
+            host.closed(this);
+        }
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.codec.http.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.logging.InternalLogger;
+import org.jboss.netty.logging.InternalLoggerFactory;
+import org.jboss.netty.util.internal.IoWorkerRunnable;
+
+/**
+ * The result of a request executed by a {@link HttpClientPool}.  It is
+ * completed with the aggregated {@link HttpResponse} or with the cause of
+ * the failure.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ *
+ * @apiviz.landmark
+ * @apiviz.owns org.jboss.netty.handler.codec.http.client.HttpResponseFutureListener - - notifies
+ */
+public class HttpResponseFuture {
+
+    private static final InternalLogger logger =
+        InternalLoggerFactory.getInstance(HttpResponseFuture.class);
+
+    private final HttpRequest request;
+    private List<HttpResponseFutureListener> listeners;
+    private boolean done;
+    private HttpResponse response;
+    private Throwable cause;
+    private int waiters;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param request  the request whose response this future waits for
+     */
+    public HttpResponseFuture(HttpRequest request) {
+        if (request == null) {
+            throw new NullPointerException("request");
+        }
+        this.request = request;
+    }
+
+    /**
+     * Returns the request whose response this future waits for.
+     */
+    public HttpRequest getRequest() {
+        return request;
+    }
+
+    /**
+     * Returns {@code true} if and only if the request has been answered or
+     * has failed.
+     */
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Returns {@code true} if and only if the request has been answered.
+     * Please note that an error status such as {@code 500} is also an answer.
+     */
+    public synchronized boolean isSuccess() {
+        return done && cause == null;
+    }
+
+    /**
+     * Returns the response, or {@code null} if the request has not been
+     * answered yet or has failed.
+     */
+    public synchronized HttpResponse getResponse() {
+        return response;
+    }
+
+    /**
+     * Returns the cause of the failure, or {@code null} if the request has
+     * been answered or is still in progress.
+     */
+    public synchronized Throwable getCause() {
+        return cause;
+    }
+
+    /**
+     * Adds the specified listener to this future.  The listener is notified
+     * when this future is {@linkplain #isDone() done}.  If this future is
+     * already done, the listener is notified immediately.
+     */
+    public void addListener(HttpResponseFutureListener listener) {
+        if (listener == null) {
+            throw new NullPointerException("listener");
+        }
+
+        synchronized (this) {
+            if (!done) {
+                if (listeners == null) {
+                    listeners = new ArrayList<HttpResponseFutureListener>(1);
+                }
+                listeners.add(listener);
+                return;
+            }
+        }
+        notifyListener(listener);
+    }
+
+    /**
+     * Waits for this future to be completed.
+     *
+     * @throws InterruptedException
+     *         if the current thread was interrupted
+     */
+    public HttpResponseFuture await() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+
+        synchronized (this) {
+            while (!done) {
+                checkDeadLock();
+                waiters ++;
+                try {
+                    wait();
+                } finally {
+                    waiters --;
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Waits for this future to be completed within the specified time limit.
+     *
+     * @return {@code true} if and only if the future was completed within
+     *         the specified time limit
+     *
+     * @throws InterruptedException
+     *         if the current thread was interrupted
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (this) {
+            while (!done) {
+                long waitTime = deadline - System.nanoTime();
+                if (waitTime <= 0) {
+                    return false;
+                }
+                checkDeadLock();
+                waiters ++;
+                try {
+                    wait(waitTime / 1000000, (int) (waitTime % 1000000));
+                } finally {
+                    waiters --;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Waits for this future to be completed without interruption.  This
+     * method catches an {@link InterruptedException} and discards it silently.
+     */
+    public HttpResponseFuture awaitUninterruptibly() {
+        boolean interrupted = false;
+        synchronized (this) {
+            while (!done) {
+                checkDeadLock();
+                waiters ++;
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } finally {
+                    waiters --;
+                }
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return this;
+    }
+
+    private static void checkDeadLock() {
+        if (IoWorkerRunnable.IN_IO_THREAD.get()) {
+            throw new IllegalStateException(
+                    "await*() in I/O thread causes a dead lock or " +
+                    "sudden performance drop. Use addListener() instead or " +
+                    "call await*() from a different thread.");
+        }
+    }
+
+    /**
+     * Marks this future as a success and notifies all listeners.
+     *
+     * @return {@code true} if and only if successfully marked this future as
+     *         a success. Otherwise {@code false} because this future is
+     *         already marked as either a success or a failure.
+     */
+    public boolean setSuccess(HttpResponse response) {
+        if (response == null) {
+            throw new NullPointerException("response");
+        }
+        return complete(response, null);
+    }
+
+    /**
+     * Marks this future as a failure and notifies all listeners.
+     *
+     * @return {@code true} if and only if successfully marked this future as
+     *         a failure. Otherwise {@code false} because this future is
+     *         already marked as either a success or a failure.
+     */
+    public boolean setFailure(Throwable cause) {
+        if (cause == null) {
+            throw new NullPointerException("cause");
+        }
+        return complete(null, cause);
+    }
+
+    private boolean complete(HttpResponse response, Throwable cause) {
+        List<HttpResponseFutureListener> listeners;
+        synchronized (this) {
+            // Allow only once.
+            if (done) {
+                return false;
+            }
+
+            done = true;
+            this.response = response;
+            this.cause = cause;
+            if (waiters > 0) {
+                notifyAll();
+            }
+            listeners = this.listeners;
+            this.listeners = null;
+        }
+
+        if (listeners != null) {
+            for (HttpResponseFutureListener l: listeners) {
+                notifyListener(l);
+            }
+        }
+        return true;
+    }
+
+    private void notifyListener(HttpResponseFutureListener l) {
+        try {
+            l.operationComplete(this);
+        } catch (Throwable t) {
+            logger.warn(
+                    "An exception was thrown by " +
+                    HttpResponseFutureListener.class.getSimpleName() + ".", t);
+        }
+    }
+}
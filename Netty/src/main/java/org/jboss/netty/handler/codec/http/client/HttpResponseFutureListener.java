@@ -0,0 +1,39 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.codec.http.client;
+
+import java.util.EventListener;
+
+/**
+ * Listens to the result of a {@link HttpResponseFuture}.  The listener is
+ * notified by an I/O thread in most cases, so it should not perform a
+ * blocking operation.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public interface HttpResponseFutureListener extends EventListener {
+
+    /**
+     * Invoked when the request associated with the {@link HttpResponseFuture}
+     * has been answered or has failed.
+     *
+     * @param future  the source {@link HttpResponseFuture} which called this
+     *                callback
+     */
+    void operationComplete(HttpResponseFuture future) throws Exception;
+}
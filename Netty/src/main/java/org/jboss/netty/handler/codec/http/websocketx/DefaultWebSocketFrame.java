@@ -0,0 +1,120 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.codec.http.websocketx;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.util.CharsetUtil;
+
+/**
+ * The default {@link WebSocketFrame} implementation.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public class DefaultWebSocketFrame implements WebSocketFrame {
+
+    private final WebSocketOpcode opcode;
+    private final boolean finalFragment;
+    private final int rsv;
+    private final ChannelBuffer binaryData;
+
+    /**
+     * Creates a new unfragmented text frame with the specified string.
+     */
+    public DefaultWebSocketFrame(String textData) {
+        this(WebSocketOpcode.TEXT, ChannelBuffers.copiedBuffer(textData, CharsetUtil.UTF_8));
+    }
+
+    /**
+     * Creates a new unfragmented frame with the specified opcode and payload.
+     */
+    public DefaultWebSocketFrame(WebSocketOpcode opcode, ChannelBuffer binaryData) {
+        this(opcode, true, 0, binaryData);
+    }
+
+    /**
+     * Creates a new frame.
+     *
+     * @param opcode         the opcode of the frame
+     * @param finalFragment  {@code true} if the frame is the last fragment of
+     *                       a message
+     * @param rsv            the reserved bits of the frame
+     * @param binaryData     the payload of the frame
+     *
+     * @throws IllegalArgumentException
+     *         if {@code rsv} is not between {@code 0} and {@code 7}, or a
+     *         control frame is fragmented or has more than 125 bytes of
+     *         payload
+     */
+    public DefaultWebSocketFrame(
+            WebSocketOpcode opcode, boolean finalFragment, int rsv,
+            ChannelBuffer binaryData) {
+        if (opcode == null) {
+            throw new NullPointerException("opcode");
+        }
+        if (binaryData == null) {
+            throw new NullPointerException("binaryData");
+        }
+        if (rsv < 0 || rsv > 7) {
+            throw new IllegalArgumentException("rsv: " + rsv + " (expected: 0-7)");
+        }
+        if (opcode.isControl()) {
+            if (!finalFragment) {
+                throw new IllegalArgumentException(
+                        "a control frame can not be fragmented: " + opcode);
+            }
+            if (binaryData.readableBytes() > 125) {
+                throw new IllegalArgumentException(
+                        "a control frame can not have more than 125 bytes of payload: " +
+                        binaryData.readableBytes());
+            }
+        }
+
+        this.opcode = opcode;
+        this.finalFragment = finalFragment;
+        this.rsv = rsv;
+        this.binaryData = binaryData;
+    }
+
+    public WebSocketOpcode getOpcode() {
+        return opcode;
+    }
+
+    public boolean isFinalFragment() {
+        return finalFragment;
+    }
+
+    public int getRsv() {
+        return rsv;
+    }
+
+    public ChannelBuffer getBinaryData() {
+        return binaryData;
+    }
+
+    public String getTextData() {
+        return getBinaryData().toString(CharsetUtil.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() +
+               "(opcode: " + getOpcode() + ", final: " + isFinalFragment() +
+               ", rsv: " + getRsv() + ", data: " + getBinaryData() + ')';
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.codec.http.websocketx;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+/**
+ * The constants shared by {@link PerMessageDeflateEncoder} and
+ * {@link PerMessageDeflateDecoder}.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+final class PerMessageDeflate {
+
+    /**
+     * The reserved bit which marks a compressed message.
+     */
+    static final int RSV1 = 4;
+
+    /**
+     * The empty stored block which ends every flushed deflate output.  It is
+     * removed from the end of a compressed message and appended back before
+     * the message is decompressed.
+     */
+    private static final ChannelBuffer TAIL = ChannelBuffers.unmodifiableBuffer(
+            ChannelBuffers.wrappedBuffer(new byte[] { 0, 0, (byte) 0xFF, (byte) 0xFF }));
+
+    /**
+     * The compressed empty message, which is an empty stored block without
+     * its length fields.
+     */
+    private static final ChannelBuffer EMPTY_MESSAGE = ChannelBuffers.unmodifiableBuffer(
+            ChannelBuffers.wrappedBuffer(new byte[] { 0 }));
+
+    static ChannelBuffer tail() {
+        return TAIL.duplicate();
+    }
+
+    /**
+     * Removes the tail from the flushed output of the last fragment of a
+     * message.
+     */
+    static ChannelBuffer removeTail(ChannelBuffer compressed) {
+        int length = compressed.readableBytes();
+        if (length == 0) {
+            // Nothing has been flushed because the fragment is empty.
+            return EMPTY_MESSAGE.duplicate();
+        }
+        if (length >= 4 &&
+            compressed.getByte(compressed.writerIndex() - 4) == 0 &&
+            compressed.getByte(compressed.writerIndex() - 3) == 0 &&
+            compressed.getByte(compressed.writerIndex() - 2) == (byte) 0xFF &&
+            compressed.getByte(compressed.writerIndex() - 1) == (byte) 0xFF) {
+            compressed.writerIndex(compressed.writerIndex() - 4);
+        }
+        return compressed;
+    }
+
+    private PerMessageDeflate() {
+        // Unused
+    }
+}
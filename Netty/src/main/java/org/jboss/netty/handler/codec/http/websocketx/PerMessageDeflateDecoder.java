@@ -0,0 +1,133 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.codec.http.websocketx;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelState;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.handler.codec.compression.ZlibDecompressor;
+import org.jboss.netty.handler.codec.compression.ZlibWrapper;
+import org.jboss.netty.handler.codec.frame.CorruptedFrameException;
+import org.jboss.netty.handler.codec.oneone.OneToOneDecoder;
+
+/**
+ * Decompresses the inbound data messages compressed with the per-message
+ * deflate extension (<a href="http://tools.ietf.org/html/rfc7692">RFC 7692</a>).
+ * Insert it between the {@link WebSocket13FrameDecoder}, which has to allow
+ * extensions, and the handler which receives {@link WebSocketFrame}s once the
+ * extension has been negotiated.
+ * <p>
+ * A message is decompressed if its first fragment has the RSV1 bit set, and
+ * every fragment is decompressed as soon as it is received.  The decoded
+ * fragments have the RSV1 bit cleared.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public class PerMessageDeflateDecoder extends OneToOneDecoder {
+
+    private final boolean noContextTakeover;
+    private ZlibDecompressor decompressor;
+    private boolean decompressing;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param noContextTakeover  {@code true} if the negotiated parameters
+     *                           include {@code client_no_context_takeover}
+     *                           on a server or
+     *                           {@code server_no_context_takeover} on a
+     *                           client, so that the decompressor can be
+     *                           released after every message
+     */
+    public PerMessageDeflateDecoder(boolean noContextTakeover) {
+        this.noContextTakeover = noContextTakeover;
+    }
+
+    @Override
+    protected synchronized Object decode(
+            ChannelHandlerContext ctx, Channel channel, Object msg) throws Exception {
+        if (!(msg instanceof WebSocketFrame)) {
+            return msg;
+        }
+
+        WebSocketFrame frame = (WebSocketFrame) msg;
+        WebSocketOpcode opcode = frame.getOpcode();
+        boolean rsv1 = (frame.getRsv() & PerMessageDeflate.RSV1) != 0;
+        if (opcode.isControl() || opcode == WebSocketOpcode.CONTINUATION) {
+            if (rsv1) {
+                throw new CorruptedFrameException(
+                        "WebSocket protocol violation: RSV1 set on a " + opcode + " frame");
+            }
+            if (opcode.isControl()) {
+                return msg;
+            }
+        } else {
+            decompressing = rsv1;
+        }
+        if (!decompressing) {
+            return msg;
+        }
+
+        ZlibDecompressor decompressor = this.decompressor;
+        if (decompressor == null) {
+            decompressor = ZlibDecompressor.newInstance(ZlibWrapper.NONE, null);
+            this.decompressor = decompressor;
+        }
+
+        ChannelBuffer compressed = frame.getBinaryData();
+        if (frame.isFinalFragment()) {
+            compressed = ChannelBuffers.wrappedBuffer(compressed, PerMessageDeflate.tail());
+        }
+        ChannelBuffer data = decompressor.decompress(
+                compressed, channel.getConfig().getBufferFactory());
+        if (data == null) {
+            data = ChannelBuffers.EMPTY_BUFFER;
+        }
+        if (frame.isFinalFragment() && noContextTakeover) {
+            this.decompressor = null;
+            decompressor.end();
+        }
+
+        return new DefaultWebSocketFrame(
+                opcode, frame.isFinalFragment(),
+                frame.getRsv() & ~PerMessageDeflate.RSV1, data);
+    }
+
+    @Override
+    public void handleUpstream(
+            ChannelHandlerContext ctx, ChannelEvent evt) throws Exception {
+        if (evt instanceof ChannelStateEvent) {
+            ChannelStateEvent e = (ChannelStateEvent) evt;
+            if (e.getState() == ChannelState.OPEN && Boolean.FALSE.equals(e.getValue())) {
+                release();
+            }
+        }
+        super.handleUpstream(ctx, evt);
+    }
+
+    private synchronized void release() {
+        if (decompressor != null) {
+            decompressor.end();
+            decompressor = null;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.codec.http.websocketx;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelState;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.ChannelUpstreamHandler;
+import org.jboss.netty.handler.codec.compression.ZlibCompressor;
+import org.jboss.netty.handler.codec.compression.ZlibWrapper;
+import org.jboss.netty.handler.codec.oneone.OneToOneEncoder;
+
+/**
+ * Compresses the outbound data messages with the per-message deflate
+ * extension (<a href="http://tools.ietf.org/html/rfc7692">RFC 7692</a>).
+ * Insert it between the {@link WebSocket13FrameEncoder} and the handler which
+ * writes {@link WebSocketFrame}s once the extension has been negotiated.
+ * <p>
+ * Every fragment of a compressed message is compressed and flushed, and the
+ * first fragment has the RSV1 bit set.  A message whose first fragment is
+ * smaller than the {@code compressionThreshold} is sent as it is, because
+ * compressing a tiny payload costs more than it saves.  Control frames are
+ * never compressed.
+ * <p>
+ * When {@code noContextTakeover} is {@code true}, the compressor is released
+ * after every message, so that the channels which send messages only
+ * occasionally share the pooled deflaters instead of holding one each.
+ * Otherwise, the compressor of a channel keeps the context between messages
+ * and is released when the channel is closed.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public class PerMessageDeflateEncoder extends OneToOneEncoder implements ChannelUpstreamHandler {
+
+    /**
+     * The default minimum payload length of the first fragment of a message
+     * to compress.
+     */
+    public static final int DEFAULT_COMPRESSION_THRESHOLD = 64;
+
+    private final int compressionLevel;
+    private final boolean noContextTakeover;
+    private final int compressionThreshold;
+    private ZlibCompressor compressor;
+    private boolean compressing;
+
+    /**
+     * Creates a new instance with the default compression level ({@code 6})
+     * and the default compression threshold.
+     *
+     * @param noContextTakeover  {@code true} if the negotiated parameters
+     *                           include {@code server_no_context_takeover}
+     *                           on a server or
+     *                           {@code client_no_context_takeover} on a
+     *                           client
+     */
+    public PerMessageDeflateEncoder(boolean noContextTakeover) {
+        this(6, noContextTakeover, DEFAULT_COMPRESSION_THRESHOLD);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param compressionLevel      {@code 1} yields the fastest compression
+     *                              and {@code 9} yields the best compression.
+     *                              {@code 0} means no compression.
+     * @param noContextTakeover     {@code true} if the compressor must not
+     *                              keep the context between messages
+     * @param compressionThreshold  the minimum payload length of the first
+     *                              fragment of a message to compress
+     */
+    public PerMessageDeflateEncoder(
+            int compressionLevel, boolean noContextTakeover, int compressionThreshold) {
+        if (compressionLevel < 0 || compressionLevel > 9) {
+            throw new IllegalArgumentException(
+                    "compressionLevel: " + compressionLevel +
+                    " (expected: 0-9)");
+        }
+        if (compressionThreshold < 0) {
+            throw new IllegalArgumentException(
+                    "compressionThreshold: " + compressionThreshold +
+                    " (expected: a non-negative integer)");
+        }
+        this.compressionLevel = compressionLevel;
+        this.noContextTakeover = noContextTakeover;
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    @Override
+    protected synchronized Object encode(
+            ChannelHandlerContext ctx, Channel channel, Object msg) throws Exception {
+        if (!(msg instanceof WebSocketFrame)) {
+            return msg;
+        }
+
+        WebSocketFrame frame = (WebSocketFrame) msg;
+        WebSocketOpcode opcode = frame.getOpcode();
+        if (opcode.isControl()) {
+            return msg;
+        }
+
+        ChannelBuffer data = frame.getBinaryData();
+        boolean firstFragment = opcode != WebSocketOpcode.CONTINUATION;
+        if (firstFragment) {
+            compressing = data.readableBytes() >= compressionThreshold;
+        }
+        if (!compressing) {
+            return msg;
+        }
+
+        ZlibCompressor compressor = this.compressor;
+        if (compressor == null) {
+            compressor = ZlibCompressor.newInstance(ZlibWrapper.NONE, compressionLevel, null);
+            this.compressor = compressor;
+        }
+
+        ChannelBuffer compressed = compressor.compress(
+                data.duplicate(), channel.getConfig().getBufferFactory());
+        if (frame.isFinalFragment()) {
+            compressed = PerMessageDeflate.removeTail(compressed);
+            if (noContextTakeover) {
+                this.compressor = null;
+                compressor.end();
+            }
+        }
+
+        int rsv = frame.getRsv();
+        if (firstFragment) {
+            rsv |= PerMessageDeflate.RSV1;
+        }
+        return new DefaultWebSocketFrame(opcode, frame.isFinalFragment(), rsv, compressed);
+    }
+
+    public void handleUpstream(
+            ChannelHandlerContext ctx, ChannelEvent evt) throws Exception {
+        if (evt instanceof ChannelStateEvent) {
+            ChannelStateEvent e = (ChannelStateEvent) evt;
+            if (e.getState() == ChannelState.OPEN && Boolean.FALSE.equals(e.getValue())) {
+                release();
+            }
+        }
+        ctx.sendUpstream(evt);
+    }
+
+    private synchronized void release() {
+        if (compressor != null) {
+            compressor.end();
+            compressor = null;
+        }
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.codec.http.websocketx;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.frame.CorruptedFrameException;
+import org.jboss.netty.handler.codec.frame.FrameDecoder;
+import org.jboss.netty.handler.codec.frame.TooLongFrameException;
+
+/**
+ * Decodes {@link ChannelBuffer}s into {@link WebSocketFrame}s of the
+ * protocol version 13 (<a href="http://tools.ietf.org/html/rfc6455">RFC 6455</a>).
+ * <p>
+ * A frame whose payload is not larger than {@code maxChunkSize} is decoded
+ * into one {@link WebSocketFrame} once it has been received entirely.  A
+ * larger frame is streamed: whatever part of its payload has been received
+ * is decoded into a fragment right away, up to {@code maxChunkSize} bytes at
+ * a time.  The first fragment has the opcode of the frame and the following
+ * ones have {@link WebSocketOpcode#CONTINUATION}, so a handler sees a
+ * fragmented message in either case and never has to buffer a large frame
+ * in this decoder.
+ * <p>
+ * A masked payload is unmasked eight bytes at a time while it is copied out
+ * of the received buffer into a buffer of the channel's
+ * {@link org.jboss.netty.buffer.ChannelBufferFactory}.
+ * <p>
+ * A protocol violation is reported as a {@link CorruptedFrameException}, and
+ * a frame longer than {@code maxFramePayloadLength} as a
+ * {@link TooLongFrameException}.  The decoder discards all the data received
+ * afterwards, so the handler should close the connection, optionally after
+ * sending a {@link WebSocketOpcode#CLOSE} frame with the status code 1002 or
+ * 1009.  Please note that this decoder does not validate whether the payload
+ * of a text message is UTF-8.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public class WebSocket13FrameDecoder extends FrameDecoder {
+
+    /**
+     * The default maximum payload length of a frame, which is 1 MiB.
+     */
+    public static final long DEFAULT_MAX_FRAME_PAYLOAD_LENGTH = 1048576;
+
+    /**
+     * The default maximum size of a decoded fragment, which is 8 KiB.
+     */
+    public static final int DEFAULT_MAX_CHUNK_SIZE = 8192;
+
+    private static final int MAX_CONTROL_FRAME_PAYLOAD_LENGTH = 125;
+
+    private final boolean expectMaskedFrames;
+    private final boolean allowExtensions;
+    private final long maxFramePayloadLength;
+    private final int maxChunkSize;
+
+    // The frame whose payload is being read
+    private boolean readingPayload;
+    private WebSocketOpcode opcode;
+    private boolean finalFragment;
+    private int rsv;
+    private boolean masked;
+    private int mask;
+    private long payloadLength;
+    private long payloadRead;
+
+    private boolean fragmentedMessage;
+    private boolean failed;
+
+    /**
+     * Creates a new instance with the default maximum lengths.
+     *
+     * @param expectMaskedFrames  {@code true} on a server, which receives
+     *                            only masked frames from a client, and
+     *                            {@code false} on a client
+     * @param allowExtensions     {@code true} if the reserved bits may be set
+     *                            because an extension has been negotiated
+     */
+    public WebSocket13FrameDecoder(boolean expectMaskedFrames, boolean allowExtensions) {
+        this(expectMaskedFrames, allowExtensions,
+             DEFAULT_MAX_FRAME_PAYLOAD_LENGTH, DEFAULT_MAX_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param expectMaskedFrames     {@code true} on a server, which receives
+     *                               only masked frames from a client, and
+     *                               {@code false} on a client
+     * @param allowExtensions        {@code true} if the reserved bits may be
+     *                               set because an extension has been
+     *                               negotiated
+     * @param maxFramePayloadLength  the maximum payload length of a frame
+     * @param maxChunkSize           the maximum payload length of a decoded
+     *                               {@link WebSocketFrame}.  It must not be
+     *                               less than 125 so that a control frame is
+     *                               never split.
+     */
+    public WebSocket13FrameDecoder(
+            boolean expectMaskedFrames, boolean allowExtensions,
+            long maxFramePayloadLength, int maxChunkSize) {
+        if (maxFramePayloadLength < 0) {
+            throw new IllegalArgumentException(
+                    "maxFramePayloadLength must not be a negative value: " +
+                    maxFramePayloadLength);
+        }
+        if (maxChunkSize < MAX_CONTROL_FRAME_PAYLOAD_LENGTH) {
+            throw new IllegalArgumentException(
+                    "maxChunkSize must be at least " +
+                    MAX_CONTROL_FRAME_PAYLOAD_LENGTH + ": " + maxChunkSize);
+        }
+
+        this.expectMaskedFrames = expectMaskedFrames;
+        this.allowExtensions = allowExtensions;
+        this.maxFramePayloadLength = maxFramePayloadLength;
+        this.maxChunkSize = maxChunkSize;
+    }
+
+    @Override
+    protected Object decode(ChannelHandlerContext ctx, Channel channel,
+            ChannelBuffer buffer) throws Exception {
+        if (failed) {
+            buffer.skipBytes(buffer.readableBytes());
+            return null;
+        }
+
+        if (!readingPayload && !readHeader(buffer)) {
+            return null;
+        }
+
+        long remaining = payloadLength - payloadRead;
+        int readable = buffer.readableBytes();
+        int length;
+        if (payloadLength <= maxChunkSize) {
+            // Decode a small frame at once.
+            if (readable < remaining) {
+                setExpectedFrameLength((int) remaining);
+                return null;
+            }
+            length = (int) remaining;
+        } else {
+            // Stream a large frame.
+            if (readable == 0) {
+                return null;
+            }
+            length = (int) Math.min(Math.min(readable, remaining), maxChunkSize);
+        }
+
+        ChannelBuffer data = readPayload(channel, buffer, length);
+
+        boolean firstChunk = payloadRead == 0;
+        payloadRead += length;
+        boolean lastChunk = payloadRead == payloadLength;
+        if (lastChunk) {
+            readingPayload = false;
+        }
+
+        return new DefaultWebSocketFrame(
+                firstChunk? opcode : WebSocketOpcode.CONTINUATION,
+                lastChunk && finalFragment,
+                firstChunk? rsv : 0,
+                data);
+    }
+
+    /**
+     * Reads the header of the next frame.
+     *
+     * @return {@code false} if the header is not complete yet
+     */
+    private boolean readHeader(ChannelBuffer buffer) throws Exception {
+        int readable = buffer.readableBytes();
+        if (readable < 2) {
+            return false;
+        }
+
+        int index = buffer.readerIndex();
+        int b0 = buffer.getUnsignedByte(index);
+        int b1 = buffer.getUnsignedByte(index + 1);
+        boolean masked = (b1 & 0x80) != 0;
+        int lengthField = b1 & 0x7F;
+        int headerLength = 2;
+        if (lengthField == 126) {
+            headerLength += 2;
+        } else if (lengthField == 127) {
+            headerLength += 8;
+        }
+        if (masked) {
+            headerLength += 4;
+        }
+        if (readable < headerLength) {
+            setExpectedFrameLength(headerLength);
+            return false;
+        }
+
+        long payloadLength;
+        if (lengthField == 126) {
+            payloadLength = getBigEndian(buffer, index + 2, 2);
+            if (payloadLength < 126) {
+                fail("non-minimal payload length: " + payloadLength);
+            }
+        } else if (lengthField == 127) {
+            payloadLength = getBigEndian(buffer, index + 2, 8);
+            if (payloadLength < 0) {
+                fail("invalid payload length: " + payloadLength);
+            }
+            if (payloadLength < 65536) {
+                fail("non-minimal payload length: " + payloadLength);
+            }
+        } else {
+            payloadLength = lengthField;
+        }
+
+        boolean finalFragment = (b0 & 0x80) != 0;
+        int rsv = (b0 & 0x70) >> 4;
+        WebSocketOpcode opcode = WebSocketOpcode.valueOf(b0 & 0x0F);
+        if (opcode == null) {
+            fail("reserved opcode: " + (b0 & 0x0F));
+        }
+        if (rsv != 0 && !allowExtensions) {
+            fail("reserved bits set without an extension: " + rsv);
+        }
+        if (masked != expectMaskedFrames) {
+            fail(masked? "unexpected masked frame" : "unmasked frame");
+        }
+
+        if (opcode.isControl()) {
+            if (!finalFragment) {
+                fail("fragmented control frame: " + opcode);
+            }
+            if (payloadLength > MAX_CONTROL_FRAME_PAYLOAD_LENGTH) {
+                fail("control frame too long: " + payloadLength);
+            }
+        } else if (opcode == WebSocketOpcode.CONTINUATION) {
+            if (!fragmentedMessage) {
+                fail("continuation frame without a message to continue");
+            }
+            fragmentedMessage = !finalFragment;
+        } else {
+            if (fragmentedMessage) {
+                fail("new message before the previous one is finished: " + opcode);
+            }
+            fragmentedMessage = !finalFragment;
+        }
+
+        if (payloadLength > maxFramePayloadLength) {
+            failed = true;
+            throw new TooLongFrameException(
+                    "WebSocket frame payload length exceeds " +
+                    maxFramePayloadLength + ": " + payloadLength);
+        }
+
+        if (masked) {
+            mask = (int) getBigEndian(buffer, index + headerLength - 4, 4);
+        }
+        buffer.skipBytes(headerLength);
+
+        this.opcode = opcode;
+        this.finalFragment = finalFragment;
+        this.rsv = rsv;
+        this.masked = masked;
+        this.payloadLength = payloadLength;
+        payloadRead = 0;
+        readingPayload = true;
+        return true;
+    }
+
+    /**
+     * Reads an integer in network byte order regardless of the byte order of
+     * the buffer.
+     */
+    private static long getBigEndian(ChannelBuffer buffer, int index, int length) {
+        long value = 0;
+        for (int i = 0; i < length; i ++) {
+            value = value << 8 | buffer.getUnsignedByte(index + i);
+        }
+        return value;
+    }
+
+    private ChannelBuffer readPayload(Channel channel, ChannelBuffer buffer, int length) {
+        if (length == 0) {
+            return ChannelBuffers.EMPTY_BUFFER;
+        }
+
+        ChannelBuffer data = channel.getConfig().getBufferFactory().getBuffer(
+                buffer.order(), length);
+        if (masked) {
+            WebSocketMasking.mask(
+                    buffer, buffer.readerIndex(), data, 0, length, mask, payloadRead);
+            buffer.skipBytes(length);
+            data.writerIndex(length);
+        } else {
+            buffer.readBytes(data, length);
+        }
+        return data;
+    }
+
+    private void fail(String reason) throws CorruptedFrameException {
+        failed = true;
+        throw new CorruptedFrameException("WebSocket protocol violation: " + reason);
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.codec.http.websocketx;
+
+import java.security.SecureRandom;
+import java.util.Random;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelHandler.Sharable;
+import org.jboss.netty.handler.codec.oneone.OneToOneEncoder;
+
+/**
+ * Encodes {@link WebSocketFrame}s into {@link ChannelBuffer}s of the
+ * protocol version 13 (<a href="http://tools.ietf.org/html/rfc6455">RFC 6455</a>).
+ * <p>
+ * The header of a small frame is written into the same buffer with a copy
+ * of its payload so that a frame is written with one buffer.  The payload of
+ * a larger frame is not copied but wrapped together with its header.  The
+ * payload of a frame from a client has to be masked, and then it is always
+ * copied while being masked eight bytes at a time.  The payload of a frame
+ * is never consumed, so the same frame can be written more than once.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+@Sharable
+public class WebSocket13FrameEncoder extends OneToOneEncoder {
+
+    private static final int COPY_THRESHOLD = 1024;
+
+    private final boolean maskPayload;
+    private final Random random;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param maskPayload  {@code true} on a client, which must mask the
+     *                     payload of every frame with a random key, and
+     *                     {@code false} on a server
+     */
+    public WebSocket13FrameEncoder(boolean maskPayload) {
+        this.maskPayload = maskPayload;
+        random = maskPayload? new SecureRandom() : null;
+    }
+
+    @Override
+    protected Object encode(
+            ChannelHandlerContext ctx, Channel channel, Object msg) throws Exception {
+        if (!(msg instanceof WebSocketFrame)) {
+            return msg;
+        }
+
+        WebSocketFrame frame = (WebSocketFrame) msg;
+        ChannelBuffer data = frame.getBinaryData();
+        int length = data.readableBytes();
+
+        int b0 = frame.getRsv() << 4 | frame.getOpcode().getCode();
+        if (frame.isFinalFragment()) {
+            b0 |= 0x80;
+        }
+        int headerLength = 2;
+        if (length > 0xFFFF) {
+            headerLength += 8;
+        } else if (length > 125) {
+            headerLength += 2;
+        }
+        if (maskPayload) {
+            headerLength += 4;
+        }
+
+        boolean copy = maskPayload || length <= COPY_THRESHOLD;
+        ChannelBuffer out = channel.getConfig().getBufferFactory().getBuffer(
+                data.order(), copy? headerLength + length : headerLength);
+
+        out.writeByte(b0);
+        int maskBit = maskPayload? 0x80 : 0;
+        if (length > 0xFFFF) {
+            out.writeByte(maskBit | 127);
+            writeBigEndian(out, length, 8);
+        } else if (length > 125) {
+            out.writeByte(maskBit | 126);
+            writeBigEndian(out, length, 2);
+        } else {
+            out.writeByte(maskBit | length);
+        }
+
+        if (maskPayload) {
+            int mask = random.nextInt();
+            writeBigEndian(out, mask, 4);
+            WebSocketMasking.mask(
+                    data, data.readerIndex(), out, headerLength, length, mask, 0);
+            out.writerIndex(headerLength + length);
+            return out;
+        }
+
+        if (copy) {
+            out.writeBytes(data, data.readerIndex(), length);
+            return out;
+        }
+        return ChannelBuffers.wrappedBuffer(out, data.slice());
+    }
+
+    /**
+     * Writes an integer in network byte order regardless of the byte order of
+     * the buffer.
+     */
+    private static void writeBigEndian(ChannelBuffer out, long value, int length) {
+        for (int shift = length - 1 << 3; shift >= 0; shift -= 8) {
+            out.writeByte((int) (value >>> shift));
+        }
+    }
+}
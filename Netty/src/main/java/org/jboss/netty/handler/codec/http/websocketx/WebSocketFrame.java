@@ -0,0 +1,70 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.codec.http.websocketx;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * A WebSocket frame of the protocol version 13
+ * (<a href="http://tools.ietf.org/html/rfc6455">RFC 6455</a>).
+ * <p>
+ * A message is sent as one frame or as a {@link WebSocketOpcode#TEXT} or
+ * {@link WebSocketOpcode#BINARY} frame followed by
+ * {@link WebSocketOpcode#CONTINUATION} frames, the last of which is the
+ * {@linkplain #isFinalFragment() final fragment}.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public interface WebSocketFrame {
+
+    /**
+     * Returns the opcode of this frame.
+     */
+    WebSocketOpcode getOpcode();
+
+    /**
+     * Returns {@code true} if and only if this frame is the last fragment of
+     * a message.  A control frame is always the final fragment.
+     */
+    boolean isFinalFragment();
+
+    /**
+     * Returns the three reserved bits of this frame ({@code 0} - {@code 7}),
+     * whose meaning is defined by the negotiated extensions.  {@code 4}
+     * (RSV1) marks a compressed message when per-message deflate is in use.
+     */
+    int getRsv();
+
+    /**
+     * Returns the payload of this frame as-is, with no UTF-8 decoding.
+     */
+    ChannelBuffer getBinaryData();
+
+    /**
+     * Converts the payload of this frame into a UTF-8 string and returns the
+     * converted string.  Please note that a fragment of a text message can
+     * end in the middle of a character.
+     */
+    String getTextData();
+
+    /**
+     * Returns the string representation of this frame.  Please note that this
+     * method is not identical to {@link #getTextData()}.
+     */
+    String toString();
+}
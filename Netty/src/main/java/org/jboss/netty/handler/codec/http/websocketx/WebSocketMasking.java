@@ -0,0 +1,74 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.codec.http.websocketx;
+
+import java.nio.ByteOrder;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * Masks and unmasks the payload of a WebSocket frame.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+final class WebSocketMasking {
+
+    /**
+     * XORs {@code length} bytes of {@code src} starting at {@code srcIndex}
+     * with the masking key and writes the result into {@code dst} starting at
+     * {@code dstIndex}.  Masking and unmasking are the same operation.
+     * <p>
+     * The payload is processed eight bytes at a time with a 64-bit key, and
+     * the remaining bytes one at a time.  {@code src} and {@code dst} must
+     * have the same byte order.
+     *
+     * @param mask    the 32-bit masking key of the frame
+     * @param offset  the position of {@code srcIndex} in the payload, so that
+     *                a payload which is processed in pieces is masked with
+     *                the right bytes of the key
+     */
+    static void mask(
+            ChannelBuffer src, int srcIndex, ChannelBuffer dst, int dstIndex,
+            int length, int mask, long offset) {
+        // Rotate the key so that its first byte applies to srcIndex.
+        int shift = (int) (offset & 3) << 3;
+        int key = shift == 0? mask : mask << shift | mask >>> 32 - shift;
+
+        int end = srcIndex + length;
+        if (length >= 8) {
+            int wordKey = src.order() == ByteOrder.BIG_ENDIAN? key : Integer.reverseBytes(key);
+            long longKey = (wordKey & 0xFFFFFFFFL) << 32 | wordKey & 0xFFFFFFFFL;
+            int longEnd = end - 7;
+            while (srcIndex < longEnd) {
+                dst.setLong(dstIndex, src.getLong(srcIndex) ^ longKey);
+                srcIndex += 8;
+                dstIndex += 8;
+            }
+        }
+
+        // The key repeats every four bytes, so the byte at each position of
+        // the tail uses the same key byte as if it had been done bytewise.
+        for (int i = 0; srcIndex < end; i ++) {
+            dst.setByte(dstIndex ++, src.getByte(srcIndex ++) ^ key >>> 24 - ((i & 3) << 3));
+        }
+    }
+
+    private WebSocketMasking() {
+        // Unused
+    }
+}
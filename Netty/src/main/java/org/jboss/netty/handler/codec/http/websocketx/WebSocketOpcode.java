@@ -0,0 +1,92 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.codec.http.websocketx;
+
+/**
+ * The opcode of a {@link WebSocketFrame}, as defined in
+ * <a href="http://tools.ietf.org/html/rfc6455#section-5.2">RFC 6455</a>.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public enum WebSocketOpcode {
+    /**
+     * A fragment which continues the message started by the previous frame.
+     */
+    CONTINUATION(0x0),
+    /**
+     * The first fragment of a message encoded in UTF-8.
+     */
+    TEXT(0x1),
+    /**
+     * The first fragment of a message with arbitrary binary data.
+     */
+    BINARY(0x2),
+    /**
+     * The control frame which starts or acknowledges the closing handshake.
+     */
+    CLOSE(0x8),
+    /**
+     * The control frame which asks the other side for a {@link #PONG}.
+     */
+    PING(0x9),
+    /**
+     * The control frame which answers a {@link #PING}.
+     */
+    PONG(0xA);
+
+    private static final WebSocketOpcode[] opcodes = new WebSocketOpcode[16];
+
+    static {
+        for (WebSocketOpcode o: values()) {
+            opcodes[o.code] = o;
+        }
+    }
+
+    /**
+     * Returns the opcode with the specified code, or {@code null} if the code
+     * is reserved.
+     */
+    public static WebSocketOpcode valueOf(int code) {
+        if (code < 0 || code >= opcodes.length) {
+            return null;
+        }
+        return opcodes[code];
+    }
+
+    private final int code;
+
+    private WebSocketOpcode(int code) {
+        this.code = code;
+    }
+
+    /**
+     * Returns the 4-bit code of this opcode.
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * Returns {@code true} if and only if this opcode denotes a control frame,
+     * which can not be fragmented and can be sent in the middle of a
+     * fragmented message.
+     */
+    public boolean isControl() {
+        return code >= 0x8;
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * Encoder, decoder and their related message types for the
+ * <a href="http://tools.ietf.org/html/rfc6455">WebSocket protocol version
+ * 13</a> and its per-message deflate extension
+ * (<a href="http://tools.ietf.org/html/rfc7692">RFC 7692</a>).
+ * <p>
+ * The handshake and the negotiation of the extension are done by the HTTP
+ * codec and the application.  Once done, replace the HTTP codec with
+ * {@link org.jboss.netty.handler.codec.http.websocketx.WebSocket13FrameDecoder}
+ * and {@link org.jboss.netty.handler.codec.http.websocketx.WebSocket13FrameEncoder},
+ * and add {@link org.jboss.netty.handler.codec.http.websocketx.PerMessageDeflateDecoder}
+ * and {@link org.jboss.netty.handler.codec.http.websocketx.PerMessageDeflateEncoder}
+ * after them if the extension has been accepted.
+ *
+ * @apiviz.exclude OneToOne(Encoder|Decoder)$
+ * @apiviz.exclude \.codec\.frame\.
+ * @apiviz.exclude \.Default
+ */
+package org.jboss.netty.handler.codec.http.websocketx;
@@ -20,6 +20,9 @@ import java.util.concurrent.atomic.AtomicReference;
 
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.buffer.PooledChannelBuffer;
+import org.jboss.netty.buffer.PooledChannelBufferFactory;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandler;
 import org.jboss.netty.channel.ChannelHandlerContext;
@@ -240,6 +243,13 @@ import org.jboss.netty.handler.codec.frame.FrameDecoder;
  * }
  * </pre>
  *
+ * <h3>Pooled buffers</h3>
+ * <p>
+ * A received {@link PooledChannelBuffer} is released by this decoder as soon
+ * as its content has been copied into the cumulation buffer.  The cumulation
+ * buffer itself is never pooled, so the frames read from it do not need to
+ * be released.
+ *
  * <h3>Replacing a decoder with another decoder in a pipeline</h3>
  * <p>
  * If you are going to write a protocol multiplexer, you will probably want to
@@ -466,6 +476,8 @@ public abstract class ReplayingDecoder<T extends Enum<T>>
 		DEBUG.P("cumulation="+cumulation);
 
         cumulation.writeBytes(input);
+        // The content of the input has been copied into the cumulation.
+        ChannelBuffers.release(input);
 
 		DEBUG.P("cumulation="+cumulation);
 
@@ -646,6 +658,11 @@ public abstract class ReplayingDecoder<T extends Enum<T>>
 
         if (buf == null) {
             ChannelBufferFactory factory = ctx.getChannel().getConfig().getBufferFactory();
+            if (factory instanceof PooledChannelBufferFactory) {
+                // The cumulation lives as long as the channel, and the frames
+                // copied from it must not have to be released.
+                factory = ((PooledChannelBufferFactory) factory).getUnpooledFactory();
+            }
 
 			DEBUG.P("factory="+factory);
 
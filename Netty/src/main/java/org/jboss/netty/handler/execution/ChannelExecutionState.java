@@ -0,0 +1,67 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.execution;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+
+/**
+ * The per-{@link Channel} state of an {@link ExecutionHandler}, which is
+ * attached to its {@link ChannelHandlerContext} so that the executor does not
+ * need to look it up from a map for every event.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+final class ChannelExecutionState {
+
+    /**
+     * Returns the state attached to the context of the specified
+     * {@link ChannelEventRunnable}, or {@code null} if the event was not
+     * submitted by an {@link ExecutionHandler}.
+     */
+    static ChannelExecutionState get(ChannelEventRunnable task) {
+        Object a = task.getContext().getAttachment();
+        if (a instanceof ChannelExecutionState) {
+            return (ChannelExecutionState) a;
+        }
+        return null;
+    }
+
+    /**
+     * The total size of the queued events of the channel.
+     */
+    final AtomicLong counter = new AtomicLong();
+
+    /**
+     * The ordered child executor of the channel.
+     */
+    final AtomicReference<Executor> childExecutor = new AtomicReference<Executor>();
+
+    /**
+     * {@code true} if the executor suspended the reads of the channel.
+     */
+    volatile boolean readSuspended;
+
+    ChannelExecutionState() {
+        super();
+    }
+}
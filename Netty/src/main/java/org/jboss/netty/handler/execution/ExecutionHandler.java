@@ -29,6 +29,7 @@ import org.jboss.netty.channel.ChannelState;
 import org.jboss.netty.channel.ChannelStateEvent;
 import org.jboss.netty.channel.ChannelUpstreamHandler;
 import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.LifeCycleAwareChannelHandler;
 import org.jboss.netty.channel.ChannelHandler.Sharable;
 import org.jboss.netty.util.ExternalResourceReleasable;
 import org.jboss.netty.util.internal.ExecutorUtil;
@@ -111,7 +112,7 @@ import org.jboss.netty.util.internal.ExecutorUtil;
  * @apiviz.has java.util.concurrent.ThreadPoolExecutor
  */
 @Sharable
-public class ExecutionHandler implements ChannelUpstreamHandler, ChannelDownstreamHandler, ExternalResourceReleasable {
+public class ExecutionHandler implements ChannelUpstreamHandler, ChannelDownstreamHandler, LifeCycleAwareChannelHandler, ExternalResourceReleasable {
 
     private final Executor executor;
 
@@ -141,6 +142,24 @@ public class ExecutionHandler implements ChannelUpstreamHandler, ChannelDownstre
         ExecutorUtil.terminate(getExecutor());
     }
 
+    public void beforeAdd(ChannelHandlerContext ctx) throws Exception {
+        // Attach the per-channel state so that the executor does not need to
+        // look it up from a map.
+        ctx.setAttachment(new ChannelExecutionState());
+    }
+
+    public void afterAdd(ChannelHandlerContext ctx) throws Exception {
+        // NOOP
+    }
+
+    public void beforeRemove(ChannelHandlerContext ctx) throws Exception {
+        // NOOP
+    }
+
+    public void afterRemove(ChannelHandlerContext ctx) throws Exception {
+        // NOOP
+    }
+
     public void handleUpstream(
             ChannelHandlerContext context, ChannelEvent e) throws Exception {
         executor.execute(new ChannelEventRunnable(context, e));
@@ -154,7 +173,9 @@ public class ExecutionHandler implements ChannelUpstreamHandler, ChannelDownstre
                 (((Integer) cse.getValue()).intValue() & Channel.OP_READ) != 0) {
 
                 // setReadable(true) requested
-                boolean readSuspended = ctx.getAttachment() != null;
+                Object a = ctx.getAttachment();
+                boolean readSuspended = a instanceof ChannelExecutionState?
+                        ((ChannelExecutionState) a).readSuspended : a != null;
                 if (readSuspended) {
                     // Drop the request silently if MemoryAwareThreadPool has
                     // set the flag.
@@ -26,6 +26,7 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
@@ -56,7 +57,8 @@ import org.jboss.netty.util.internal.SharedResourceMisuseDetector;
  * If the total size of the unprocessed tasks exceeds either per-{@link Channel}
  * or per-{@link Executor} threshold, any further {@link #execute(Runnable)}
  * call will block until the tasks in the queue are processed so that the total
- * size goes under the threshold.
+ * size goes under the threshold.  If both thresholds are {@code 0}, the size
+ * of a task is not even estimated.
  *
  * <h3>Using an alternative task size estimation strategy</h3>
  *
@@ -144,11 +146,28 @@ public class MemoryAwareThreadPoolExecutor extends ThreadPoolExecutor {
     private static final SharedResourceMisuseDetector misuseDetector =
         new SharedResourceMisuseDetector(MemoryAwareThreadPoolExecutor.class);
 
+    private static final int STRIPE_MASK;
+    private static final int STRIPE_PADDING = 16; // 128 bytes per stripe
+
+    static {
+        int stripes = 1;
+        while (stripes < Runtime.getRuntime().availableProcessors() * 2) {
+            stripes <<= 1;
+        }
+        STRIPE_MASK = stripes - 1;
+    }
+
     private volatile Settings settings;
 
+    /**
+     * Used only for the {@link ChannelEventRunnable}s which were not submitted
+     * by an {@link ExecutionHandler}.  Otherwise, the counter is attached to
+     * the {@link ChannelHandlerContext} of the {@link ExecutionHandler}.
+     */
     private final ConcurrentMap<Channel, AtomicLong> channelCounters =
         new ConcurrentIdentityHashMap<Channel, AtomicLong>();
-    private final AtomicLong totalCounter = new AtomicLong();
+    private final AtomicLongArray totalCounters =
+        new AtomicLongArray((STRIPE_MASK + 1) * STRIPE_PADDING);
 
     private final Semaphore semaphore = new Semaphore(0);
 
@@ -388,33 +407,33 @@ public class MemoryAwareThreadPoolExecutor extends ThreadPoolExecutor {
         Settings settings = this.settings;
         long maxTotalMemorySize = settings.maxTotalMemorySize;
         long maxChannelMemorySize = settings.maxChannelMemorySize;
+        if (maxTotalMemorySize == 0 && maxChannelMemorySize == 0) {
+            // Nothing to limit - do not even estimate the size.
+            return false;
+        }
 
         int increment = settings.objectSizeEstimator.estimateSize(task);
-        long totalCounter = this.totalCounter.addAndGet(increment);
 
         if (task instanceof ChannelEventRunnable) {
             ChannelEventRunnable eventTask = (ChannelEventRunnable) task;
             eventTask.estimatedSize = increment;
             Channel channel = eventTask.getEvent().getChannel();
-            long channelCounter = getChannelCounter(channel).addAndGet(increment);
-            //System.out.println("IC: " + channelCounter + ", " + increment);
-            if (maxChannelMemorySize != 0 && channelCounter >= maxChannelMemorySize && channel.isOpen()) {
-                if (channel.isReadable()) {
-                    //System.out.println("UNREADABLE");
-                    ChannelHandlerContext ctx = eventTask.getContext();
-                    if (ctx.getHandler() instanceof ExecutionHandler) {
-                        // readSuspended = true;
-                        ctx.setAttachment(Boolean.TRUE);
+            addTotalCounter(channel.getId(), increment);
+            if (maxChannelMemorySize != 0) {
+                long channelCounter = getChannelCounter(eventTask).addAndGet(increment);
+                if (channelCounter >= maxChannelMemorySize && channel.isOpen()) {
+                    if (channel.isReadable()) {
+                        setReadSuspended(eventTask, true);
+                        channel.setReadable(false);
                     }
-                    channel.setReadable(false);
                 }
             }
         } else {
             ((MemoryAwareRunnable) task).estimatedSize = increment;
+            addTotalCounter(System.identityHashCode(task), increment);
         }
 
-        //System.out.println("I: " + totalCounter + ", " + increment);
-        return maxTotalMemorySize != 0 && totalCounter >= maxTotalMemorySize;
+        return maxTotalMemorySize != 0 && getTotalCounter() >= maxTotalMemorySize;
     }
 
     protected void decreaseCounter(Runnable task) {
@@ -425,42 +444,65 @@ public class MemoryAwareThreadPoolExecutor extends ThreadPoolExecutor {
         Settings settings = this.settings;
         long maxTotalMemorySize = settings.maxTotalMemorySize;
         long maxChannelMemorySize = settings.maxChannelMemorySize;
+        if (maxTotalMemorySize == 0 && maxChannelMemorySize == 0) {
+            return;
+        }
 
         int increment;
         if (task instanceof ChannelEventRunnable) {
-            increment = ((ChannelEventRunnable) task).estimatedSize;
+            ChannelEventRunnable eventTask = (ChannelEventRunnable) task;
+            increment = eventTask.estimatedSize;
+            addTotalCounter(eventTask.getEvent().getChannel().getId(), -increment);
         } else {
             increment = ((MemoryAwareRunnable) task).estimatedSize;
+            addTotalCounter(System.identityHashCode(task), -increment);
         }
 
-        long totalCounter = this.totalCounter.addAndGet(-increment);
-
-        //System.out.println("D: " + totalCounter + ", " + increment);
-        if (maxTotalMemorySize != 0 && totalCounter + increment >= maxTotalMemorySize) {
-            //System.out.println("RELEASE: " + task);
+        if (maxTotalMemorySize != 0 && getTotalCounter() + increment >= maxTotalMemorySize) {
             semaphore.release();
         }
 
-        if (task instanceof ChannelEventRunnable) {
+        if (maxChannelMemorySize != 0 && task instanceof ChannelEventRunnable) {
             ChannelEventRunnable eventTask = (ChannelEventRunnable) task;
             Channel channel = eventTask.getEvent().getChannel();
-            long channelCounter = getChannelCounter(channel).addAndGet(-increment);
-            //System.out.println("DC: " + channelCounter + ", " + increment);
-            if (maxChannelMemorySize != 0 && channelCounter < maxChannelMemorySize && channel.isOpen()) {
+            long channelCounter = getChannelCounter(eventTask).addAndGet(-increment);
+            if (channelCounter < maxChannelMemorySize && channel.isOpen()) {
                 if (!channel.isReadable()) {
-                    //System.out.println("READABLE");
-                    ChannelHandlerContext ctx = eventTask.getContext();
-                    if (ctx.getHandler() instanceof ExecutionHandler) {
-                        // readSuspended = false;
-                        ctx.setAttachment(null);
-                    }
+                    setReadSuspended(eventTask, false);
                     channel.setReadable(true);
                 }
             }
         }
     }
 
-    private AtomicLong getChannelCounter(Channel channel) {
+    /**
+     * Adds the specified {@code delta} to one of the striped total counters.
+     * A task is always counted by the same stripe, and the tasks of the same
+     * {@link Channel} share a stripe, so that the threads which handle
+     * different channels rarely update the same counter.
+     */
+    private void addTotalCounter(int hash, long delta) {
+        hash ^= hash >>> 16;
+        hash ^= hash >>> 8;
+        totalCounters.addAndGet((hash & STRIPE_MASK) * STRIPE_PADDING, delta);
+    }
+
+    private long getTotalCounter() {
+        AtomicLongArray totalCounters = this.totalCounters;
+        long sum = 0;
+        for (int i = 0; i < totalCounters.length(); i += STRIPE_PADDING) {
+            sum += totalCounters.get(i);
+        }
+        return sum;
+    }
+
+    private AtomicLong getChannelCounter(ChannelEventRunnable task) {
+        ChannelExecutionState state = ChannelExecutionState.get(task);
+        if (state != null) {
+            return state.counter;
+        }
+
+        Channel channel = task.getEvent().getChannel();
         AtomicLong counter = channelCounters.get(channel);
         if (counter == null) {
             counter = new AtomicLong();
@@ -477,6 +519,18 @@ public class MemoryAwareThreadPoolExecutor extends ThreadPoolExecutor {
         return counter;
     }
 
+    private static void setReadSuspended(ChannelEventRunnable task, boolean readSuspended) {
+        ChannelExecutionState state = ChannelExecutionState.get(task);
+        if (state != null) {
+            state.readSuspended = readSuspended;
+        } else {
+            ChannelHandlerContext ctx = task.getContext();
+            if (ctx.getHandler() instanceof ExecutionHandler) {
+                ctx.setAttachment(readSuspended? Boolean.TRUE : null);
+            }
+        }
+    }
+
     /**
      * Returns {@code true} if and only if the specified {@code task} should
      * be counted to limit the global and per-channel memory consumption.
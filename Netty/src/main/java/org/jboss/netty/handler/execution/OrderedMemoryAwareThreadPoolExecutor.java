@@ -16,13 +16,13 @@
 package org.jboss.netty.handler.execution;
 
 import java.util.IdentityHashMap;
-import java.util.LinkedList;
 import java.util.Set;
 import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelEvent;
@@ -30,6 +30,7 @@ import org.jboss.netty.channel.ChannelState;
 import org.jboss.netty.channel.ChannelStateEvent;
 import org.jboss.netty.util.ObjectSizeEstimator;
 import org.jboss.netty.util.internal.ConcurrentIdentityWeakKeyHashMap;
+import org.jboss.netty.util.internal.MpscLinkedQueue;
 
 /**
  * A {@link MemoryAwareThreadPoolExecutor} which makes sure the events from the
@@ -66,6 +67,15 @@ import org.jboss.netty.util.internal.ConcurrentIdentityWeakKeyHashMap;
  * thread for the same channel.  The events from the same channel can be
  * executed by different threads.  For example, the Event A2 is executed by the
  * thread Y while the event A1 was executed by the thread X.
+ * <p>
+ * The events of a channel are queued into a lock-free queue, and a thread
+ * which picks up the channel executes up to 64 queued events in a row before
+ * it yields to the other channels.  When the events are submitted by an
+ * {@link ExecutionHandler}, the queue is attached to the
+ * {@link org.jboss.netty.channel.ChannelHandlerContext} of the handler, so
+ * that it is not looked up from the child executor map for every event and is
+ * released together with the pipeline.  Such a queue does not appear in
+ * {@link #getChildExecutorKeySet()}.
  *
  * <h3>Using a different key other than {@link Channel} to maintain event order</h3>
  * <p>
@@ -141,6 +151,12 @@ public class OrderedMemoryAwareThreadPoolExecutor extends
     // TODO Make OMATPE focus on the case where Channel is the key.
     //      Add a new less-efficient TPE that allows custom key.
 
+    /**
+     * The maximum number of tasks a child executor runs before it yields the
+     * thread to the other channels.
+     */
+    static final int MAX_TASKS_PER_RUN = 64;
+
     private final ConcurrentMap<Object, Executor> childExecutors = newChildExecutorMap();
 
     /**
@@ -243,12 +259,29 @@ public class OrderedMemoryAwareThreadPoolExecutor extends
             doUnorderedExecute(task);
         } else {
             ChannelEventRunnable r = (ChannelEventRunnable) task;
-            getChildExecutor(r.getEvent()).execute(task);
+            getChildExecutor(r).execute(task);
         }
     }
 
-    private Executor getChildExecutor(ChannelEvent e) {
+    private Executor getChildExecutor(ChannelEventRunnable task) {
+        ChannelEvent e = task.getEvent();
         Object key = getChildExecutorKey(e);
+        if (key == e.getChannel()) {
+            // Use the child executor attached to the context of the
+            // ExecutionHandler if available.
+            ChannelExecutionState state = ChannelExecutionState.get(task);
+            if (state != null) {
+                Executor executor = state.childExecutor.get();
+                if (executor == null) {
+                    executor = new ChildExecutor();
+                    if (!state.childExecutor.compareAndSet(null, executor)) {
+                        executor = state.childExecutor.get();
+                    }
+                }
+                return executor;
+            }
+        }
+
         Executor executor = childExecutors.get(key);
         if (executor == null) {
             executor = new ChildExecutor();
@@ -283,51 +316,63 @@ public class OrderedMemoryAwareThreadPoolExecutor extends
         afterExecute(r, t);
     }
 
+    /**
+     * Executes the tasks of a channel one by one.  The tasks are queued into a
+     * lock-free queue, and the {@link ChildExecutor} is submitted to the pool
+     * only when it is not scheduled yet.  Once run, it drains up to
+     * {@link #MAX_TASKS_PER_RUN} tasks and then yields to the other channels.
+     */
     private final class ChildExecutor implements Executor, Runnable {
-        private final LinkedList<Runnable> tasks = new LinkedList<Runnable>();
+        private final MpscLinkedQueue<Runnable> tasks = new MpscLinkedQueue<Runnable>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
 
         ChildExecutor() {
             super();
         }
 
         public void execute(Runnable command) {
-            boolean needsExecution;
-            synchronized (tasks) {
-                needsExecution = tasks.isEmpty();
-                tasks.add(command);
-            }
-
-            if (needsExecution) {
+            tasks.offer(command);
+            if (scheduled.compareAndSet(false, true)) {
                 doUnorderedExecute(this);
             }
         }
 
         public void run() {
             Thread thread = Thread.currentThread();
-            for (;;) {
-                final Runnable task;
-                synchronized (tasks) {
-                    task = tasks.getFirst();
-                }
-
-                boolean ran = false;
-                beforeExecute(thread, task);
-                try {
-                    task.run();
-                    ran = true;
-                    onAfterExecute(task, null);
-                } catch (RuntimeException e) {
-                    if (!ran) {
-                        onAfterExecute(task, e);
-                    }
-                    throw e;
-                } finally {
-                    synchronized (tasks) {
-                        tasks.removeFirst();
-                        if (tasks.isEmpty()) {
+            boolean idle = false;
+            try {
+                for (int i = 0; i < MAX_TASKS_PER_RUN; i ++) {
+                    Runnable task = tasks.poll();
+                    if (task == null) {
+                        scheduled.set(false);
+                        // Check again because a task could have been added
+                        // after poll() returned null and before the flag was
+                        // cleared.
+                        if (tasks.isEmpty() || !scheduled.compareAndSet(false, true)) {
+                            idle = true;
                             break;
                         }
+                        continue;
                     }
+
+                    boolean ran = false;
+                    beforeExecute(thread, task);
+                    try {
+                        task.run();
+                        ran = true;
+                        onAfterExecute(task, null);
+                    } catch (RuntimeException e) {
+                        if (!ran) {
+                            onAfterExecute(task, e);
+                        }
+                        throw e;
+                    }
+                }
+            } finally {
+                if (!idle) {
+                    // Yield to the other channels, or continue with the
+                    // remaining tasks in another thread if a task failed.
+                    doUnorderedExecute(this);
                 }
             }
         }
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.ssl;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLEngine;
+
+/**
+ * The bounded {@link Executor} which runs the delegated tasks of an
+ * {@link SSLEngine} when an {@link SslHandler} in
+ * {@linkplain SslHandler#setBatching(boolean) batching mode} was not given
+ * its own {@link Executor}.  It never runs more tasks at the same time than
+ * the number of the available processors, so that a burst of handshakes does
+ * not starve the rest of the application.  A task is run by the caller when
+ * the queue is full.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+final class DelegatedTaskExecutor {
+
+    private static final int MAX_QUEUED_TASKS = 1024;
+
+    static final Executor INSTANCE;
+
+    static {
+        final AtomicInteger threadId = new AtomicInteger();
+        int threads = Runtime.getRuntime().availableProcessors();
+        INSTANCE = new ThreadPoolExecutor(
+                threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(MAX_QUEUED_TASKS),
+                new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(
+                                r, "SSL delegated task executor #" + threadId.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    private DelegatedTaskExecutor() {
+        // Unused
+    }
+}
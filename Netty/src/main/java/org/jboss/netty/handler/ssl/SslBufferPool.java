@@ -44,6 +44,17 @@ public class SslBufferPool {
     private static final int MAX_PACKET_SIZE = 16665 + 1024;
     private static final int DEFAULT_POOL_SIZE = MAX_PACKET_SIZE * 1024;
 
+    // A wrap or an unwrap holds two buffers at most, plus one for the
+    // non-application data wrapped in the middle of an unwrap.
+    private static final int MAX_LOCAL_BUFFER_COUNT = 4;
+
+    private static final ThreadLocal<LocalCache> localCache = new ThreadLocal<LocalCache>() {
+        @Override
+        protected LocalCache initialValue() {
+            return new LocalCache();
+        }
+    };
+
     private final ByteBuffer[] pool;
     private final int maxBufferCount;
     private int index;
@@ -88,7 +99,10 @@ public class SslBufferPool {
      * acquired yet.  You can estimate how optimal the specified maximum pool
      * size is from this value.  If it keeps returning {@code 0}, it means the
      * pool is getting exhausted.  If it keeps returns a unnecessarily big
-     * value, it means the pool is wasting the heap space.
+     * value, it means the pool is wasting the heap space.  Please note that
+     * the buffers cached by each I/O thread of an {@link SslHandler} in
+     * {@linkplain SslHandler#setBatching(boolean) batching mode} are not
+     * counted.
      */
     public synchronized int getUnacquiredPoolSize() {
         return index * MAX_PACKET_SIZE;
@@ -107,4 +121,44 @@ public class SslBufferPool {
             pool[index ++] = buffer;
         }
     }
+
+    /**
+     * Same with {@link #acquire()} except that the buffers released by
+     * {@link #releaseLocal(ByteBuffer)} in the current thread are reused
+     * first without acquiring the lock of this pool.  Because an I/O worker
+     * thread acquires and releases its buffers by itself, it rarely touches
+     * the shared pool.
+     */
+    ByteBuffer acquireLocal() {
+        LocalCache cache = localCache.get();
+        if (cache.size == 0) {
+            return acquire();
+        }
+
+        ByteBuffer buffer = cache.buffers[-- cache.size];
+        cache.buffers[cache.size] = null;
+        return (ByteBuffer) buffer.clear();
+    }
+
+    /**
+     * Returns the specified buffer to the cache of the current thread, or to
+     * this pool if the cache is full.
+     */
+    void releaseLocal(ByteBuffer buffer) {
+        LocalCache cache = localCache.get();
+        if (cache.size < MAX_LOCAL_BUFFER_COUNT) {
+            cache.buffers[cache.size ++] = buffer;
+        } else {
+            release(buffer);
+        }
+    }
+
+    private static final class LocalCache {
+        final ByteBuffer[] buffers = new ByteBuffer[MAX_LOCAL_BUFFER_COUNT];
+        int size;
+
+        LocalCache() {
+            super();
+        }
+    }
 }
@@ -20,8 +20,11 @@ import static org.jboss.netty.channel.Channels.*;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Pattern;
@@ -81,6 +84,26 @@ import org.jboss.netty.util.internal.NonReentrantLock;
  * If {@link #isEnableRenegotiation() enableRenegotiation} is {@code false},
  * an attempt to trigger renegotiation will result in the connection closure.
  *
+ * <h3>Batching mode</h3>
+ * <p>
+ * Encrypting and decrypting the records is often the most expensive part of
+ * serving a secure connection.  You can reduce the cost by enabling the
+ * {@linkplain #setBatching(boolean) batching mode}, in which:
+ * <ul>
+ * <li>the small writes are aggregated into records as large as possible,
+ *     instead of being wrapped into one record each.  The writes requested
+ *     while this handler is delivering the decrypted data to the next
+ *     handler are wrapped together once the delivery is finished,</li>
+ * <li>all complete records in the received data are unwrapped at once and
+ *     delivered as one message,</li>
+ * <li>the buffers required by the {@link SSLEngine} are cached per I/O
+ *     thread before they are returned to the {@link SslBufferPool}, and</li>
+ * <li>the delegated tasks are run by a bounded {@link Executor} unless an
+ *     {@link Executor} is specified in the constructor.  The caller waits
+ *     for the tasks to finish, so that the {@link SSLEngine} is never used
+ *     by more than one thread.</li>
+ * </ul>
+ *
  * <h3>Closing the session</h3>
  * <p>
  * To close the SSL session, the {@link #close()} method should be
@@ -154,17 +177,23 @@ public class SslHandler extends FrameDecoder
             "^.*(?:connection.*reset|connection.*closed|broken.*pipe).*$",
             Pattern.CASE_INSENSITIVE);
 
-    private static SslBufferPool defaultBufferPool;
+    // The maximum length of the plaintext in a record (2^14)
+    private static final int MAX_PLAINTEXT_LENGTH = 16384;
 
     /**
      * Returns the default {@link SslBufferPool} used when no pool is
      * specified in the constructor.
      */
-    public static synchronized SslBufferPool getDefaultBufferPool() {
-        if (defaultBufferPool == null) {
-            defaultBufferPool = new SslBufferPool();
+    public static SslBufferPool getDefaultBufferPool() {
+        return DefaultBufferPoolHolder.INSTANCE;
+    }
+
+    private static final class DefaultBufferPoolHolder {
+        static final SslBufferPool INSTANCE = new SslBufferPool();
+
+        private DefaultBufferPoolHolder() {
+            // Unused
         }
-        return defaultBufferPool;
     }
 
     private volatile ChannelHandlerContext ctx;
@@ -174,6 +203,8 @@ public class SslHandler extends FrameDecoder
     private final boolean startTls;
 
     private volatile boolean enableRenegotiation;
+    private volatile boolean batching;
+    private volatile Thread decodingThread;
 
     final Object handshakeLock = new Object();
     private boolean handshaking;
@@ -397,6 +428,22 @@ public class SslHandler extends FrameDecoder
         this.enableRenegotiation = enableRenegotiation;
     }
 
+    /**
+     * Returns {@code true} if and only if the batching mode is enabled.
+     */
+    public boolean isBatching() {
+        return batching;
+    }
+
+    /**
+     * Enables or disables the batching mode.  Please refer to the class
+     * documentation for what the batching mode changes.  This property
+     * should be set before this handler is added to a pipeline.
+     */
+    public void setBatching(boolean batching) {
+        this.batching = batching;
+    }
+
     public void handleDownstream(
             final ChannelHandlerContext context, final ChannelEvent evt) throws Exception {
         if (evt instanceof ChannelStateEvent) {
@@ -443,9 +490,37 @@ public class SslHandler extends FrameDecoder
             assert offered;
         }
 
+        if (batching && decodingThread == Thread.currentThread()) {
+            // Will be wrapped with other writes when messageReceived() returns.
+            return;
+        }
+
         wrap(context, evt.getChannel());
     }
 
+    @Override
+    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e)
+            throws Exception {
+        if (!batching) {
+            super.messageReceived(ctx, e);
+            return;
+        }
+
+        Thread oldDecodingThread = decodingThread;
+        decodingThread = Thread.currentThread();
+        try {
+            super.messageReceived(ctx, e);
+        } finally {
+            decodingThread = oldDecodingThread;
+        }
+
+        if (oldDecodingThread == null) {
+            // Wrap the writes requested by the handlers which received the
+            // decrypted data.
+            wrap(ctx, e.getChannel());
+        }
+    }
+
     @Override
     public void channelDisconnected(ChannelHandlerContext ctx,
             ChannelStateEvent e) throws Exception {
@@ -518,11 +593,66 @@ public class SslHandler extends FrameDecoder
             return null;
         }
 
+        int packetLength = getEncryptedPacketLength(buffer, buffer.readerIndex());
+        if (packetLength < 0) {
+            // Bad data - discard the buffer and raise an exception.
+            SSLException e = new SSLException(
+                    "not an SSL/TLS record: " + ChannelBuffers.hexDump(buffer));
+            buffer.skipBytes(buffer.readableBytes());
+            throw e;
+        }
+
+        assert packetLength > 0;
+
+        if (buffer.readableBytes() < packetLength) {
+            return null;
+        }
+
+        if (batching) {
+            // Unwrap all complete records at once.  The incomplete or bad
+            // record is left for the next decode() call.
+            int endIndex = buffer.readerIndex() + packetLength;
+            int writerIndex = buffer.writerIndex();
+            while (writerIndex - endIndex >= 5) {
+                int nextPacketLength = getEncryptedPacketLength(buffer, endIndex);
+                if (nextPacketLength < 0 || writerIndex - endIndex < nextPacketLength) {
+                    break;
+                }
+                endIndex += nextPacketLength;
+            }
+            packetLength = endIndex - buffer.readerIndex();
+        }
+
+        // We advance the buffer's readerIndex before calling unwrap() because
+        // unwrap() can trigger FrameDecoder call decode(), this method, recursively.
+        // The recursive call results in decoding the same packet twice if
+        // the readerIndex is advanced *after* decode().
+        //
+        // Here's an example:
+        // 1) An SSL packet is received from the wire.
+        // 2) SslHandler.decode() deciphers the packet and calls the user code.
+        // 3) The user closes the channel in the same thread.
+        // 4) The same thread triggers a channelDisconnected() event.
+        // 5) FrameDecoder.cleanup() is called, and it calls SslHandler.decode().
+        // 6) SslHandler.decode() will feed the same packet with what was
+        //    deciphered at the step 2 again if the readerIndex was not advanced
+        //    before calling the user code.
+        final int packetOffset = buffer.readerIndex();
+        buffer.skipBytes(packetLength);
+        return unwrap(ctx, channel, buffer, packetOffset, packetLength);
+    }
+
+    /**
+     * Returns the length of the SSL/TLS record which starts at the specified
+     * offset, or {@code -1} if the data at the offset is not an SSL/TLS
+     * record.  At least 5 bytes must be readable from the offset.
+     */
+    private static int getEncryptedPacketLength(ChannelBuffer buffer, int offset) {
         int packetLength = 0;
 
         // SSLv3 or TLS - Check ContentType
         boolean tls;
-        switch (buffer.getUnsignedByte(buffer.readerIndex())) {
+        switch (buffer.getUnsignedByte(offset)) {
         case 20:  // change_cipher_spec
         case 21:  // alert
         case 22:  // handshake
@@ -536,10 +666,10 @@ public class SslHandler extends FrameDecoder
 
         if (tls) {
             // SSLv3 or TLS - Check ProtocolVersion
-            int majorVersion = buffer.getUnsignedByte(buffer.readerIndex() + 1);
+            int majorVersion = buffer.getUnsignedByte(offset + 1);
             if (majorVersion >= 3 && majorVersion < 10) {
                 // SSLv3 or TLS
-                packetLength = (buffer.getShort(buffer.readerIndex() + 3) & 0xFFFF) + 5;
+                packetLength = (buffer.getShort(offset + 3) & 0xFFFF) + 5;
                 if (packetLength <= 5) {
                     // Neither SSLv2 or TLSv1 (i.e. SSLv2 or bad data)
                     tls = false;
@@ -554,15 +684,15 @@ public class SslHandler extends FrameDecoder
             // SSLv2 or bad data - Check the version
             boolean sslv2 = true;
             int headerLength = (buffer.getUnsignedByte(
-                    buffer.readerIndex()) & 0x80) != 0 ? 2 : 3;
+                    offset) & 0x80) != 0 ? 2 : 3;
             int majorVersion = buffer.getUnsignedByte(
-                    buffer.readerIndex() + headerLength + 1);
+                    offset + headerLength + 1);
             if (majorVersion >= 2 && majorVersion < 10) {
                 // SSLv2
                 if (headerLength == 2) {
-                    packetLength = (buffer.getShort(buffer.readerIndex()) & 0x7FFF) + 2;
+                    packetLength = (buffer.getShort(offset) & 0x7FFF) + 2;
                 } else {
-                    packetLength = (buffer.getShort(buffer.readerIndex()) & 0x3FFF) + 3;
+                    packetLength = (buffer.getShort(offset) & 0x3FFF) + 3;
                 }
                 if (packetLength <= headerLength) {
                     sslv2 = false;
@@ -572,45 +702,39 @@ public class SslHandler extends FrameDecoder
             }
 
             if (!sslv2) {
-                // Bad data - discard the buffer and raise an exception.
-                SSLException e = new SSLException(
-                        "not an SSL/TLS record: " + ChannelBuffers.hexDump(buffer));
-                buffer.skipBytes(buffer.readableBytes());
-                throw e;
+                return -1;
             }
         }
 
-        assert packetLength > 0;
+        return packetLength;
+    }
 
-        if (buffer.readableBytes() < packetLength) {
-            return null;
+    private ByteBuffer acquireBuffer() {
+        if (batching) {
+            return bufferPool.acquireLocal();
+        } else {
+            return bufferPool.acquire();
         }
+    }
 
-        // We advance the buffer's readerIndex before calling unwrap() because
-        // unwrap() can trigger FrameDecoder call decode(), this method, recursively.
-        // The recursive call results in decoding the same packet twice if
-        // the readerIndex is advanced *after* decode().
-        //
-        // Here's an example:
-        // 1) An SSL packet is received from the wire.
-        // 2) SslHandler.decode() deciphers the packet and calls the user code.
-        // 3) The user closes the channel in the same thread.
-        // 4) The same thread triggers a channelDisconnected() event.
-        // 5) FrameDecoder.cleanup() is called, and it calls SslHandler.decode().
-        // 6) SslHandler.decode() will feed the same packet with what was
-        //    deciphered at the step 2 again if the readerIndex was not advanced
-        //    before calling the user code.
-        final int packetOffset = buffer.readerIndex();
-        buffer.skipBytes(packetLength);
-        return unwrap(ctx, channel, buffer, packetOffset, packetLength);
+    private void releaseBuffer(ByteBuffer buffer) {
+        if (batching) {
+            bufferPool.releaseLocal(buffer);
+        } else {
+            bufferPool.release(buffer);
+        }
     }
 
     private ChannelFuture wrap(ChannelHandlerContext context, Channel channel)
             throws SSLException {
 
+        if (batching && handshaken && !handshaking && wrapBatch(context, channel)) {
+            return succeededFuture(channel);
+        }
+
         ChannelFuture future = null;
         ChannelBuffer msg;
-        ByteBuffer outNetBuf = bufferPool.acquire();
+        ByteBuffer outNetBuf = acquireBuffer();
         boolean success = true;
         boolean offered = false;
         boolean needsUnwrap = false;
@@ -705,7 +829,7 @@ public class SslHandler extends FrameDecoder
             setHandshakeFailure(channel, e);
             throw e;
         } finally {
-            bufferPool.release(outNetBuf);
+            releaseBuffer(outNetBuf);
 
             if (offered) {
                 flushPendingEncryptedWrites(context);
@@ -742,6 +866,173 @@ public class SslHandler extends FrameDecoder
         return future;
     }
 
+    /**
+     * Wraps the pending writes into as few records as possible.  The small
+     * writes are copied into one buffer so that they are wrapped into one
+     * record, and a large write is wrapped without a copy.
+     *
+     * @return {@code true} if all pending writes were wrapped.
+     *         {@code false} if the {@link SSLEngine} stopped wrapping the
+     *         application data because of a handshake or a closure, which
+     *         {@link #wrap(ChannelHandlerContext, Channel)} has to handle.
+     */
+    private boolean wrapBatch(ChannelHandlerContext context, Channel channel)
+            throws SSLException {
+
+        ByteBuffer aggregation = acquireBuffer();
+        ByteBuffer outNetBuf = acquireBuffer();
+        boolean offered = false;
+        try {
+            for (;;) {
+                // Acquire a lock to make sure unencrypted data is polled
+                // in order and their encrypted counterpart is offered in
+                // order.
+                synchronized (pendingUnencryptedWrites) {
+                    PendingWrite first = pendingUnencryptedWrites.peek();
+                    if (first == null) {
+                        return true;
+                    }
+
+                    ByteBuffer outAppBuf;
+                    if (first.outAppBuf != null &&
+                        first.outAppBuf.remaining() >= MAX_PLAINTEXT_LENGTH) {
+                        outAppBuf = first.outAppBuf.duplicate();
+                    } else {
+                        aggregation.clear();
+                        aggregation.limit(MAX_PLAINTEXT_LENGTH);
+                        for (PendingWrite w: pendingUnencryptedWrites) {
+                            if (!aggregation.hasRemaining()) {
+                                break;
+                            }
+                            if (w.outAppBuf == null) {
+                                continue;
+                            }
+                            ByteBuffer src = w.outAppBuf.duplicate();
+                            if (src.remaining() > aggregation.remaining()) {
+                                src.limit(src.position() + aggregation.remaining());
+                            }
+                            aggregation.put(src);
+                        }
+                        aggregation.flip();
+                        outAppBuf = aggregation;
+                    }
+
+                    ChannelBuffer msg = null;
+                    int length = outAppBuf.remaining();
+                    while (outAppBuf.hasRemaining()) {
+                        SSLEngineResult result;
+                        synchronized (handshakeLock) {
+                            result = engine.wrap(outAppBuf, outNetBuf);
+                        }
+
+                        if (result.bytesProduced() > 0) {
+                            outNetBuf.flip();
+                            if (msg == null) {
+                                msg = ChannelBuffers.dynamicBuffer(outNetBuf.remaining());
+                            }
+                            msg.writeBytes(outNetBuf);
+                            outNetBuf.clear();
+                        }
+                        if (result.bytesConsumed() == 0) {
+                            break;
+                        }
+                    }
+
+                    int consumed = length - outAppBuf.remaining();
+                    List<ChannelFuture> futures = removeWrittenBytes(consumed);
+                    if (msg != null) {
+                        offerEncryptedWriteRequest(new DownstreamMessageEvent(
+                                channel, aggregateFutures(channel, futures),
+                                msg, channel.getRemoteAddress()));
+                        offered = true;
+                    } else if (!futures.isEmpty()) {
+                        // Empty write requests only
+                        offerEncryptedWriteRequest(new DownstreamMessageEvent(
+                                channel, aggregateFutures(channel, futures),
+                                ChannelBuffers.EMPTY_BUFFER, channel.getRemoteAddress()));
+                        offered = true;
+                    }
+
+                    if (consumed == 0 && futures.isEmpty()) {
+                        return false;
+                    }
+                }
+            }
+        } finally {
+            releaseBuffer(outNetBuf);
+            releaseBuffer(aggregation);
+
+            if (offered) {
+                flushPendingEncryptedWrites(context);
+            }
+        }
+    }
+
+    /**
+     * Marks the specified number of bytes of the pending writes as wrapped
+     * and removes the pending writes which were wrapped completely.
+     *
+     * @return the futures of the removed pending writes
+     */
+    private List<ChannelFuture> removeWrittenBytes(int writtenBytes) {
+        assert Thread.holdsLock(pendingUnencryptedWrites);
+
+        List<ChannelFuture> futures = new ArrayList<ChannelFuture>(4);
+        for (;;) {
+            PendingWrite pendingWrite = pendingUnencryptedWrites.peek();
+            if (pendingWrite == null) {
+                break;
+            }
+
+            ByteBuffer outAppBuf = pendingWrite.outAppBuf;
+            if (outAppBuf != null) {
+                int remaining = outAppBuf.remaining();
+                if (writtenBytes < remaining) {
+                    outAppBuf.position(outAppBuf.position() + writtenBytes);
+                    break;
+                }
+                outAppBuf.position(outAppBuf.limit());
+                writtenBytes -= remaining;
+            }
+
+            pendingUnencryptedWrites.remove();
+            futures.add(pendingWrite.future);
+        }
+        return futures;
+    }
+
+    /**
+     * Returns the future of a record which contains the specified pending
+     * writes.  The futures of the pending writes are notified when the
+     * record is written.
+     */
+    private static ChannelFuture aggregateFutures(
+            Channel channel, final List<ChannelFuture> futures) {
+        switch (futures.size()) {
+        case 0:
+            // pendingWrite's future shouldn't be notified if
+            // only partial data is written.
+            return succeededFuture(channel);
+        case 1:
+            return futures.get(0);
+        }
+
+        ChannelFuture future = future(channel);
+        future.addListener(new ChannelFutureListener() {
+            public void operationComplete(ChannelFuture future) throws Exception {
+                Throwable cause = future.getCause();
+                for (ChannelFuture f: futures) {
+                    if (cause == null) {
+                        f.setSuccess();
+                    } else {
+                        f.setFailure(cause);
+                    }
+                }
+            }
+        });
+        return future;
+    }
+
     private void offerEncryptedWriteRequest(MessageEvent encryptedWrite) {
         final boolean locked = pendingEncryptedWritesLock.tryLock();
         try {
@@ -773,7 +1064,7 @@ public class SslHandler extends FrameDecoder
 
     private ChannelFuture wrapNonAppData(ChannelHandlerContext ctx, Channel channel) throws SSLException {
         ChannelFuture future = null;
-        ByteBuffer outNetBuf = bufferPool.acquire();
+        ByteBuffer outNetBuf = acquireBuffer();
 
         SSLEngineResult result;
         try {
@@ -837,7 +1128,7 @@ public class SslHandler extends FrameDecoder
             setHandshakeFailure(channel, e);
             throw e;
         } finally {
-            bufferPool.release(outNetBuf);
+            releaseBuffer(outNetBuf);
         }
 
         if (future == null) {
@@ -850,7 +1141,8 @@ public class SslHandler extends FrameDecoder
     private ChannelBuffer unwrap(
             ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer, int offset, int length) throws SSLException {
         ByteBuffer inNetBuf = buffer.toByteBuffer(offset, length);
-        ByteBuffer outAppBuf = bufferPool.acquire();
+        ByteBuffer outAppBuf = acquireBuffer();
+        ChannelBuffer frame = null;
 
         try {
             boolean needsWrap = false;
@@ -870,6 +1162,11 @@ public class SslHandler extends FrameDecoder
                         throw e;
                     }
 
+                    if (batching && outAppBuf.position() > 0) {
+                        // Make room for the next record.
+                        frame = drainAppBuf(frame, outAppBuf);
+                    }
+
                     final HandshakeStatus handshakeStatus = result.getHandshakeStatus();
                     handleRenegotiation(handshakeStatus);
                     switch (handshakeStatus) {
@@ -888,10 +1185,18 @@ public class SslHandler extends FrameDecoder
                     case FINISHED:
                         setHandshakeSuccess(channel);
                         needsWrap = true;
-                        break loop;
+                        if (hasMoreRecords(inNetBuf, result)) {
+                            break;
+                        } else {
+                            break loop;
+                        }
                     case NOT_HANDSHAKING:
                         needsWrap = true;
-                        break loop;
+                        if (hasMoreRecords(inNetBuf, result)) {
+                            break;
+                        } else {
+                            break loop;
+                        }
                     default:
                         throw new IllegalStateException(
                                 "Unknown handshake status: " + handshakeStatus);
@@ -914,10 +1219,14 @@ public class SslHandler extends FrameDecoder
                 }
             }
 
+            if (batching) {
+                return drainAppBuf(frame, outAppBuf);
+            }
+
             outAppBuf.flip();
 
             if (outAppBuf.hasRemaining()) {
-                ChannelBuffer frame = ChannelBuffers.buffer(outAppBuf.remaining());
+                frame = ChannelBuffers.buffer(outAppBuf.remaining());
                 frame.writeBytes(outAppBuf.array(), 0, frame.capacity());
                 return frame;
             } else {
@@ -927,8 +1236,33 @@ public class SslHandler extends FrameDecoder
             setHandshakeFailure(channel, e);
             throw e;
         } finally {
-            bufferPool.release(outAppBuf);
+            releaseBuffer(outAppBuf);
+        }
+    }
+
+    /**
+     * Returns {@code true} if the batching mode is enabled and the records
+     * after the one which has just been unwrapped have to be unwrapped too.
+     */
+    private boolean hasMoreRecords(ByteBuffer inNetBuf, SSLEngineResult result) {
+        return batching && inNetBuf.hasRemaining() &&
+               result.getStatus() == Status.OK && !engine.isInboundDone();
+    }
+
+    /**
+     * Moves the unwrapped data in the specified buffer to the specified
+     * frame, creating a new frame if {@code null}.
+     */
+    private static ChannelBuffer drainAppBuf(ChannelBuffer frame, ByteBuffer outAppBuf) {
+        outAppBuf.flip();
+        if (outAppBuf.hasRemaining()) {
+            if (frame == null) {
+                frame = ChannelBuffers.dynamicBuffer(outAppBuf.remaining());
+            }
+            frame.writeBytes(outAppBuf);
         }
+        outAppBuf.clear();
+        return frame;
     }
 
     private void handleRenegotiation(HandshakeStatus handshakeStatus) {
@@ -973,6 +1307,11 @@ public class SslHandler extends FrameDecoder
     }
 
     private void runDelegatedTasks() {
+        if (batching) {
+            runDelegatedTasksAndWait();
+            return;
+        }
+
         for (;;) {
             final Runnable task;
             synchronized (handshakeLock) {
@@ -993,6 +1332,63 @@ public class SslHandler extends FrameDecoder
         }
     }
 
+    /**
+     * Runs the delegated tasks in the {@link Executor} specified in the
+     * constructor, or in the bounded default {@link Executor}, and waits
+     * for them to finish.  The tasks are not run with the handshake lock
+     * because the current thread might hold it while waiting.
+     */
+    private void runDelegatedTasksAndWait() {
+        final List<Runnable> tasks = new ArrayList<Runnable>(2);
+        for (;;) {
+            final Runnable task;
+            synchronized (handshakeLock) {
+                task = engine.getDelegatedTask();
+            }
+
+            if (task == null) {
+                break;
+            }
+            tasks.add(task);
+        }
+
+        if (tasks.isEmpty()) {
+            return;
+        }
+
+        Executor executor = delegatedTaskExecutor;
+        if (executor == ImmediateExecutor.INSTANCE) {
+            executor = DelegatedTaskExecutor.INSTANCE;
+        }
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    for (Runnable task: tasks) {
+                        task.run();
+                    }
+                } finally {
+                    latch.countDown();
+                }
+            }
+        });
+
+        boolean interrupted = false;
+        while (latch.getCount() != 0) {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                // Interrupt later.
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private void setHandshakeSuccess(Channel channel) {
         synchronized (handshakeLock) {
             handshaking = false;
@@ -1028,6 +1424,11 @@ public class SslHandler extends FrameDecoder
             return;
         }
 
+        if (batching) {
+            // Do not let close_notify overtake the deferred writes.
+            wrap(context, e.getChannel());
+        }
+
         unwrap(context, e.getChannel(), ChannelBuffers.EMPTY_BUFFER, 0, 0);
         if (!engine.isInboundDone()) {
             if (sentCloseNotify.compareAndSet(false, true)) {
@@ -35,6 +35,7 @@ import org.jboss.netty.util.HashedWheelTimer;
 import org.jboss.netty.util.Timeout;
 import org.jboss.netty.util.Timer;
 import org.jboss.netty.util.TimerTask;
+import org.jboss.netty.util.internal.WorkerTimer;
 
 /**
  * Triggers an {@link IdleStateEvent} when a {@link Channel} has not performed
@@ -108,6 +109,13 @@ import org.jboss.netty.util.TimerTask;
  * The {@link Timer} which was specified when the {@link ReadTimeoutHandler} is
  * created should be stopped manually by calling {@link #releaseExternalResources()}
  * or {@link Timer#stop()} when your application shuts down.
+ * <p>
+ * If the {@link org.jboss.netty.channel.Channel} is handled by the NIO socket
+ * transport, the timer of its I/O worker thread is used instead of the
+ * specified {@link Timer}, so that the worker threads do not contend for the
+ * shared {@link Timer}.  Set the system property
+ * {@code org.jboss.netty.useWorkerTimer} to {@code false} to always use the
+ * specified {@link Timer}.
  *
  * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
  * @author <a href="http://gleamynode.net/">Trustin Lee</a>
@@ -287,6 +295,7 @@ public class IdleStateHandler extends SimpleChannelUpstreamHandler
 
     private void initialize(ChannelHandlerContext ctx) {
         lastReadTime = lastWriteTime = System.currentTimeMillis();
+        Timer timer = WorkerTimer.getTimer(ctx.getChannel(), this.timer);
         if (readerIdleTimeMillis > 0) {
             readerIdleTimeout = timer.newTimeout(
                     new ReaderIdleTimeoutTask(ctx),
@@ -342,8 +351,7 @@ public class IdleStateHandler extends SimpleChannelUpstreamHandler
             long nextDelay = readerIdleTimeMillis - (currentTime - lastReadTime);
             if (nextDelay <= 0) {
                 // Reader is idle - set a new timeout and notify the callback.
-                readerIdleTimeout =
-                    timer.newTimeout(this, readerIdleTimeMillis, TimeUnit.MILLISECONDS);
+                readerIdleTimeout = WorkerTimer.reschedule(timeout, readerIdleTimeMillis);
                 try {
                     channelIdle(ctx, IdleState.READER_IDLE, lastReadTime);
                 } catch (Throwable t) {
@@ -351,8 +359,7 @@ public class IdleStateHandler extends SimpleChannelUpstreamHandler
                 }
             } else {
                 // Read occurred before the timeout - set a new timeout with shorter delay.
-                readerIdleTimeout =
-                    timer.newTimeout(this, nextDelay, TimeUnit.MILLISECONDS);
+                readerIdleTimeout = WorkerTimer.reschedule(timeout, nextDelay);
             }
         }
 
@@ -376,8 +383,7 @@ public class IdleStateHandler extends SimpleChannelUpstreamHandler
             long nextDelay = writerIdleTimeMillis - (currentTime - lastWriteTime);
             if (nextDelay <= 0) {
                 // Writer is idle - set a new timeout and notify the callback.
-                writerIdleTimeout =
-                    timer.newTimeout(this, writerIdleTimeMillis, TimeUnit.MILLISECONDS);
+                writerIdleTimeout = WorkerTimer.reschedule(timeout, writerIdleTimeMillis);
                 try {
                     channelIdle(ctx, IdleState.WRITER_IDLE, lastWriteTime);
                 } catch (Throwable t) {
@@ -385,8 +391,7 @@ public class IdleStateHandler extends SimpleChannelUpstreamHandler
                 }
             } else {
                 // Write occurred before the timeout - set a new timeout with shorter delay.
-                writerIdleTimeout =
-                    timer.newTimeout(this, nextDelay, TimeUnit.MILLISECONDS);
+                writerIdleTimeout = WorkerTimer.reschedule(timeout, nextDelay);
             }
         }
     }
@@ -410,8 +415,7 @@ public class IdleStateHandler extends SimpleChannelUpstreamHandler
             if (nextDelay <= 0) {
                 // Both reader and writer are idle - set a new timeout and
                 // notify the callback.
-                allIdleTimeout =
-                    timer.newTimeout(this, allIdleTimeMillis, TimeUnit.MILLISECONDS);
+                allIdleTimeout = WorkerTimer.reschedule(timeout, allIdleTimeMillis);
                 try {
                     channelIdle(ctx, IdleState.ALL_IDLE, lastIoTime);
                 } catch (Throwable t) {
@@ -420,8 +424,7 @@ public class IdleStateHandler extends SimpleChannelUpstreamHandler
             } else {
                 // Either read or write occurred before the timeout - set a new
                 // timeout with shorter delay.
-                allIdleTimeout =
-                    timer.newTimeout(this, nextDelay, TimeUnit.MILLISECONDS);
+                allIdleTimeout = WorkerTimer.reschedule(timeout, nextDelay);
             }
         }
     }
@@ -33,6 +33,7 @@ import org.jboss.netty.util.HashedWheelTimer;
 import org.jboss.netty.util.Timeout;
 import org.jboss.netty.util.Timer;
 import org.jboss.netty.util.TimerTask;
+import org.jboss.netty.util.internal.WorkerTimer;
 
 /**
  * Raises a {@link ReadTimeoutException} when no data was read within a certain
@@ -65,6 +66,13 @@ import org.jboss.netty.util.TimerTask;
  * The {@link Timer} which was specified when the {@link ReadTimeoutHandler} is
  * created should be stopped manually by calling {@link #releaseExternalResources()}
  * or {@link Timer#stop()} when your application shuts down.
+ * <p>
+ * If the {@link org.jboss.netty.channel.Channel} is handled by the NIO socket
+ * transport, the timer of its I/O worker thread is used instead of the
+ * specified {@link Timer}, so that the worker threads do not contend for the
+ * shared {@link Timer}.  Set the system property
+ * {@code org.jboss.netty.useWorkerTimer} to {@code false} to always use the
+ * specified {@link Timer}.
  *
  * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
  * @author <a href="http://gleamynode.net/">Trustin Lee</a>
@@ -190,7 +198,8 @@ public class ReadTimeoutHandler extends SimpleChannelUpstreamHandler
         updateLastReadTime();
         task = new ReadTimeoutTask(ctx);
         if (timeoutMillis > 0) {
-            timeout = timer.newTimeout(task, timeoutMillis, TimeUnit.MILLISECONDS);
+            timeout = WorkerTimer.getTimer(ctx.getChannel(), timer).newTimeout(
+                    task, timeoutMillis, TimeUnit.MILLISECONDS);
         }
     }
 
@@ -232,7 +241,7 @@ public class ReadTimeoutHandler extends SimpleChannelUpstreamHandler
             if (nextDelay <= 0) {
                 // Read timed out - set a new timeout and notify the callback.
                 ReadTimeoutHandler.this.timeout =
-                    timer.newTimeout(this, timeoutMillis, TimeUnit.MILLISECONDS);
+                    WorkerTimer.reschedule(timeout, timeoutMillis);
                 try {
                     readTimedOut(ctx);
                 } catch (Throwable t) {
@@ -241,7 +250,7 @@ public class ReadTimeoutHandler extends SimpleChannelUpstreamHandler
             } else {
                 // Read occurred before the timeout - set a new timeout with shorter delay.
                 ReadTimeoutHandler.this.timeout =
-                    timer.newTimeout(this, nextDelay, TimeUnit.MILLISECONDS);
+                    WorkerTimer.reschedule(timeout, nextDelay);
             }
         }
     }
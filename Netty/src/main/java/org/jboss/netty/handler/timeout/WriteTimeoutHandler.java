@@ -34,6 +34,7 @@ import org.jboss.netty.util.HashedWheelTimer;
 import org.jboss.netty.util.Timeout;
 import org.jboss.netty.util.Timer;
 import org.jboss.netty.util.TimerTask;
+import org.jboss.netty.util.internal.WorkerTimer;
 
 /**
  * Raises a {@link WriteTimeoutException} when no data was written within a
@@ -65,6 +66,13 @@ import org.jboss.netty.util.TimerTask;
  * The {@link Timer} which was specified when the {@link ReadTimeoutHandler} is
  * created should be stopped manually by calling {@link #releaseExternalResources()}
  * or {@link Timer#stop()} when your application shuts down.
+ * <p>
+ * If the {@link org.jboss.netty.channel.Channel} is handled by the NIO socket
+ * transport, the timer of its I/O worker thread is used instead of the
+ * specified {@link Timer}, so that the worker threads do not contend for the
+ * shared {@link Timer}.  Set the system property
+ * {@code org.jboss.netty.useWorkerTimer} to {@code false} to always use the
+ * specified {@link Timer}.
  *
  * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
  * @author <a href="http://gleamynode.net/">Trustin Lee</a>
@@ -147,6 +155,7 @@ public class WriteTimeoutHandler extends SimpleChannelDownstreamHandler
         if (timeoutMillis > 0) {
             // Set timeout only when getTimeoutMillis() returns a positive value.
             ChannelFuture future = e.getFuture();
+            Timer timer = WorkerTimer.getTimer(ctx.getChannel(), this.timer);
             final Timeout timeout = timer.newTimeout(
                     new WriteTimeoutTask(ctx, future),
                     timeoutMillis, TimeUnit.MILLISECONDS);
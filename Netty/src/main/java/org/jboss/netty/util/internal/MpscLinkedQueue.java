@@ -0,0 +1,86 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.util.internal;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * An unbounded lock-free queue which allows multiple producers but only one
+ * consumer at a time.  {@link #offer(Object)} is wait-free; it swaps the tail
+ * and then links the new node to the previous tail.  {@link #poll()} and
+ * {@link #isEmpty()} must not be called concurrently, and they might not see
+ * an element whose {@link #offer(Object)} has not returned yet.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public final class MpscLinkedQueue<E> {
+
+    private final AtomicReference<Node<E>> tail;
+    // Accessed by the consumer only
+    private Node<E> head;
+
+    public MpscLinkedQueue() {
+        head = new Node<E>(null);
+        tail = new AtomicReference<Node<E>>(head);
+    }
+
+    /**
+     * Inserts the specified element at the tail of this queue.  This method
+     * can be called by any thread.
+     */
+    public void offer(E e) {
+        if (e == null) {
+            throw new NullPointerException("e");
+        }
+        Node<E> node = new Node<E>(e);
+        Node<E> prev = tail.getAndSet(node);
+        prev.next = node;
+    }
+
+    /**
+     * Retrieves and removes the head of this queue, or returns {@code null}
+     * if this queue is empty.  This method must be called by the consumer.
+     */
+    public E poll() {
+        Node<E> next = head.next;
+        if (next == null) {
+            return null;
+        }
+        E e = next.value;
+        next.value = null;
+        head = next;
+        return e;
+    }
+
+    /**
+     * Returns {@code true} if this queue has no element to {@link #poll()}.
+     * This method must be called by the consumer.
+     */
+    public boolean isEmpty() {
+        return head.next == null;
+    }
+
+    private static final class Node<E> {
+        E value;
+        volatile Node<E> next;
+
+        Node(E value) {
+            this.value = value;
+        }
+    }
+}
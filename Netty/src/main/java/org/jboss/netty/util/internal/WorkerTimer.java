@@ -0,0 +1,408 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.util.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.logging.InternalLogger;
+import org.jboss.netty.logging.InternalLoggerFactory;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+
+/**
+ * A hashed wheel {@link Timer} which is bound to a single I/O worker thread.
+ * Unlike {@link HashedWheelTimer}, it has no thread of its own.  The worker
+ * calls {@link #expireTimeouts()} from its event loop, and the wheel is
+ * accessed by the worker thread only, so that no lock is acquired.  Each
+ * bucket of the wheel is a doubly linked list, and therefore scheduling,
+ * cancelling and {@linkplain #reschedule(Timeout, long) rescheduling} a
+ * {@link Timeout} costs O(1) in the worker thread.  A request made by other
+ * threads is handed over to the worker thread via a lock-free queue.
+ * <p>
+ * The {@link TimerTask}s are executed by the worker thread, and thus they
+ * must not block.  A {@link Timeout} can expire only while the worker thread
+ * is running.
+ *
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public final class WorkerTimer implements Timer {
+
+    private static final InternalLogger logger =
+        InternalLoggerFactory.getInstance(WorkerTimer.class);
+
+    private static final boolean ENABLED =
+        !"false".equalsIgnoreCase(
+                SystemPropertyUtil.get("org.jboss.netty.useWorkerTimer", "true"));
+
+    private static final long TICK_DURATION = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int TICKS_PER_WHEEL = 512;
+
+    private static final int ST_ACTIVE = 0;
+    private static final int ST_CANCELLED = 1;
+    private static final int ST_EXPIRED = 2;
+
+    /**
+     * Returns the {@link WorkerTimer} of the I/O worker which handles the
+     * specified {@code channel}, or {@code defaultTimer} if the transport
+     * does not provide one or the {@code org.jboss.netty.useWorkerTimer}
+     * system property is {@code false}.
+     */
+    public static Timer getTimer(Channel channel, Timer defaultTimer) {
+        if (ENABLED && channel instanceof WorkerTimerProvider) {
+            Timer timer = ((WorkerTimerProvider) channel).getWorkerTimer();
+            if (timer != null) {
+                return timer;
+            }
+        }
+        return defaultTimer;
+    }
+
+    /**
+     * Schedules the {@link TimerTask} of the specified {@code timeout} again
+     * after the specified delay.  The specified {@code timeout} itself is
+     * rescheduled and returned if it was created by a {@link WorkerTimer}.
+     * Otherwise, a new {@link Timeout} is created by the {@link Timer} of the
+     * specified {@code timeout} and returned.
+     */
+    public static Timeout reschedule(Timeout timeout, long delayMillis) {
+        if (timeout instanceof WheelTimeout) {
+            WheelTimeout t = (WheelTimeout) timeout;
+            t.timer.reschedule(t, TimeUnit.MILLISECONDS.toNanos(delayMillis));
+            return t;
+        }
+        return timeout.getTimer().newTimeout(
+                timeout.getTask(), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private final Runnable wakeUpTask;
+    private final long startTime = System.nanoTime();
+    private final WheelTimeout[] wheel = new WheelTimeout[TICKS_PER_WHEEL];
+    private final int mask = TICKS_PER_WHEEL - 1;
+    private final Queue<WheelTimeout> pendingTimeouts =
+        new ConcurrentLinkedQueue<WheelTimeout>();
+    private final List<WheelTimeout> expiredTimeouts = new ArrayList<WheelTimeout>();
+    private volatile Thread thread;
+    private volatile boolean empty = true;
+
+    // Accessed by the worker thread only
+    private long tick;
+    private int size;
+
+    /**
+     * Creates a new timer.
+     *
+     * @param wakeUpTask the task which wakes up the worker thread when a
+     *                   {@link Timeout} is scheduled by another thread while
+     *                   the worker is not waiting for the next tick
+     */
+    public WorkerTimer(Runnable wakeUpTask) {
+        if (wakeUpTask == null) {
+            throw new NullPointerException("wakeUpTask");
+        }
+        this.wakeUpTask = wakeUpTask;
+        for (int i = 0; i < wheel.length; i ++) {
+            WheelTimeout head = new WheelTimeout(this, null, 0);
+            head.prev = head.next = head;
+            wheel[i] = head;
+        }
+    }
+
+    /**
+     * Sets the worker thread which owns this timer.  Specify {@code null}
+     * when the worker thread exits.
+     */
+    public void setThread(Thread thread) {
+        this.thread = thread;
+    }
+
+    public Timeout newTimeout(TimerTask task, long delay, TimeUnit unit) {
+        if (task == null) {
+            throw new NullPointerException("task");
+        }
+        if (unit == null) {
+            throw new NullPointerException("unit");
+        }
+
+        WheelTimeout timeout =
+            new WheelTimeout(this, task, System.nanoTime() + unit.toNanos(delay));
+        if (Thread.currentThread() == thread) {
+            link(timeout);
+        } else {
+            handOver(timeout);
+        }
+        return timeout;
+    }
+
+    /**
+     * Always throws an {@link IllegalStateException} because the life cycle
+     * of this timer is bound to its worker.
+     */
+    public Set<Timeout> stop() {
+        throw new IllegalStateException(
+                WorkerTimer.class.getSimpleName() +
+                " is owned by an I/O worker and cannot be stopped.");
+    }
+
+    /**
+     * Returns the number of milliseconds the worker can wait for I/O before
+     * it calls {@link #expireTimeouts()}.  {@code maxMillis} is returned if
+     * there's no scheduled {@link Timeout}.
+     */
+    public long getSelectTimeout(long maxMillis) {
+        boolean empty = size == 0;
+        this.empty = empty;
+        if (empty && pendingTimeouts.isEmpty()) {
+            return maxMillis;
+        }
+
+        long delay = startTime + tick * TICK_DURATION - System.nanoTime();
+        long delayMillis = (delay + 999999) / 1000000;
+        return Math.max(1, Math.min(maxMillis, delayMillis));
+    }
+
+    /**
+     * Handles the requests made by other threads and runs the
+     * {@link TimerTask}s whose deadline has been reached.  This method must
+     * be called by the worker thread.
+     */
+    public void expireTimeouts() {
+        processPendingTimeouts();
+
+        long currentTick = (System.nanoTime() - startTime) / TICK_DURATION;
+        if (currentTick < tick) {
+            return;
+        }
+
+        if (size != 0) {
+            // Visit each bucket only once even if the worker was late.
+            long lastTick = Math.min(currentTick, tick + mask);
+            List<WheelTimeout> expiredTimeouts = this.expiredTimeouts;
+            for (long t = tick; t <= lastTick; t ++) {
+                fetchExpiredTimeouts(wheel[(int) (t & mask)], currentTick);
+            }
+            tick = currentTick + 1;
+
+            for (int i = 0; i < expiredTimeouts.size(); i ++) {
+                expiredTimeouts.get(i).expire();
+            }
+            expiredTimeouts.clear();
+        } else {
+            tick = currentTick + 1;
+        }
+    }
+
+    private void processPendingTimeouts() {
+        for (;;) {
+            WheelTimeout timeout = pendingTimeouts.poll();
+            if (timeout == null) {
+                break;
+            }
+
+            switch (timeout.state.get()) {
+            case ST_ACTIVE:
+                link(timeout);
+                break;
+            case ST_EXPIRED:
+                // Rescheduled by another thread while being expired.
+                if (timeout.state.compareAndSet(ST_EXPIRED, ST_ACTIVE)) {
+                    link(timeout);
+                }
+                break;
+            default:
+                unlink(timeout);
+            }
+        }
+    }
+
+    private void fetchExpiredTimeouts(WheelTimeout head, long currentTick) {
+        WheelTimeout timeout = head.next;
+        while (timeout != head) {
+            WheelTimeout next = timeout.next;
+            if (timeout.state.get() != ST_ACTIVE) {
+                unlink(timeout);
+            } else if (timeout.expirationTick <= currentTick) {
+                unlink(timeout);
+                expiredTimeouts.add(timeout);
+            }
+            timeout = next;
+        }
+    }
+
+    void reschedule(WheelTimeout timeout, long delayNanos) {
+        for (;;) {
+            int state = timeout.state.get();
+            if (state == ST_CANCELLED) {
+                return;
+            }
+            if (state == ST_ACTIVE ||
+                timeout.state.compareAndSet(ST_EXPIRED, ST_ACTIVE)) {
+                break;
+            }
+        }
+
+        timeout.requestedDeadline = System.nanoTime() + delayNanos;
+        if (Thread.currentThread() == thread) {
+            link(timeout);
+        } else {
+            handOver(timeout);
+        }
+    }
+
+    void cancel(WheelTimeout timeout) {
+        if (Thread.currentThread() == thread) {
+            unlink(timeout);
+        } else {
+            // Will be unlinked by the worker thread.
+            pendingTimeouts.offer(timeout);
+        }
+    }
+
+    private void handOver(WheelTimeout timeout) {
+        pendingTimeouts.offer(timeout);
+        if (empty) {
+            // The worker might be waiting without a timeout.
+            wakeUpTask.run();
+        }
+    }
+
+    private void link(WheelTimeout timeout) {
+        if (timeout.prev != null) {
+            unlink(timeout);
+        }
+
+        long deadline = timeout.requestedDeadline - startTime;
+        long expirationTick = deadline <= 0? 0 : (deadline + TICK_DURATION - 1) / TICK_DURATION;
+        if (expirationTick < tick) {
+            // Already expired - expire on the next tick.
+            expirationTick = tick;
+        }
+        timeout.expirationTick = expirationTick;
+
+        WheelTimeout head = wheel[(int) (expirationTick & mask)];
+        WheelTimeout tail = head.prev;
+        timeout.prev = tail;
+        timeout.next = head;
+        tail.next = timeout;
+        head.prev = timeout;
+        size ++;
+    }
+
+    private void unlink(WheelTimeout timeout) {
+        WheelTimeout prev = timeout.prev;
+        if (prev == null) {
+            return;
+        }
+        WheelTimeout next = timeout.next;
+        prev.next = next;
+        next.prev = prev;
+        timeout.prev = timeout.next = null;
+        size --;
+    }
+
+    private static final class WheelTimeout implements Timeout {
+
+        private final WorkerTimer timer;
+        private final TimerTask task;
+        final AtomicInteger state = new AtomicInteger();
+        volatile long requestedDeadline;
+
+        // Accessed by the worker thread only
+        long expirationTick;
+        WheelTimeout prev;
+        WheelTimeout next;
+
+        WheelTimeout(WorkerTimer timer, TimerTask task, long deadline) {
+            this.timer = timer;
+            this.task = task;
+            requestedDeadline = deadline;
+        }
+
+        public Timer getTimer() {
+            return timer;
+        }
+
+        public TimerTask getTask() {
+            return task;
+        }
+
+        public void cancel() {
+            if (state.compareAndSet(ST_ACTIVE, ST_CANCELLED)) {
+                timer.cancel(this);
+            }
+        }
+
+        public boolean isCancelled() {
+            return state.get() == ST_CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == ST_EXPIRED;
+        }
+
+        void expire() {
+            // Do not expire if cancelled or rescheduled by the previous task.
+            if (prev != null || !state.compareAndSet(ST_ACTIVE, ST_EXPIRED)) {
+                return;
+            }
+
+            try {
+                task.run(this);
+            } catch (Throwable t) {
+                logger.warn(
+                        "An exception was thrown by " +
+                        TimerTask.class.getSimpleName() + ".", t);
+            }
+        }
+
+        @Override
+        public String toString() {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(
+                    requestedDeadline - System.nanoTime());
+
+            StringBuilder buf = new StringBuilder(192);
+            buf.append(getClass().getSimpleName());
+            buf.append('(');
+
+            buf.append("deadline: ");
+            if (remaining > 0) {
+                buf.append(remaining);
+                buf.append(" ms later");
+            } else if (remaining < 0) {
+                buf.append(-remaining);
+                buf.append(" ms ago");
+            } else {
+                buf.append("now");
+            }
+
+            if (isCancelled()) {
+                buf.append(", cancelled");
+            }
+
+            return buf.append(')').toString();
+        }
+    }
+}
@@ -0,0 +1,695 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+/*
+ * Native part of org.jboss.netty.channel.socket.epoll.Native.
+ *
+ * The methods are bound with RegisterNatives() in JNI_OnLoad(), so no
+ * generated header is needed.  All sockets are created in non-blocking mode;
+ * EAGAIN is reported to the Java side as a zero (or -1 for accept()) return
+ * value rather than as an exception.
+ */
+
+#define _GNU_SOURCE
+
+#include <jni.h>
+#include <errno.h>
+#include <fcntl.h>
+#include <limits.h>
+#include <stdint.h>
+#include <string.h>
+#include <unistd.h>
+#include <netinet/in.h>
+#include <netinet/tcp.h>
+#include <arpa/inet.h>
+#include <sys/epoll.h>
+#include <sys/eventfd.h>
+#include <sys/socket.h>
+#include <sys/uio.h>
+
+#ifndef SO_REUSEPORT
+#define SO_REUSEPORT 15
+#endif
+
+#define NATIVE_CLASSNAME "org/jboss/netty/channel/socket/epoll/Native"
+#define MAX_EPOLL_EVENTS 4096
+
+static jfieldID positionFieldId;
+static jfieldID limitFieldId;
+static jclass ioExceptionClass;
+static jclass closedChannelExceptionClass;
+static jclass connectExceptionClass;
+static jclass bindExceptionClass;
+static int socketFamily = AF_INET6;
+
+/* Error helpers */
+
+static void throwException(JNIEnv *env, jclass exceptionClass, const char *message) {
+    (*env)->ThrowNew(env, exceptionClass, message);
+}
+
+static void throwIOException(JNIEnv *env, const char *operation, int err) {
+    char message[256];
+    snprintf(message, sizeof(message), "%s() failed: %s", operation, strerror(err));
+    if (err == EBADF) {
+        throwException(env, closedChannelExceptionClass, NULL);
+    } else {
+        throwException(env, ioExceptionClass, message);
+    }
+}
+
+static jclass findGlobalClass(JNIEnv *env, const char *name) {
+    jclass local = (*env)->FindClass(env, name);
+    if (local == NULL) {
+        return NULL;
+    }
+    jclass global = (jclass) (*env)->NewGlobalRef(env, local);
+    (*env)->DeleteLocalRef(env, local);
+    return global;
+}
+
+/* Address conversion */
+
+static int toSockaddr(JNIEnv *env, jbyteArray address, jint scopeId, jint port,
+                      struct sockaddr_storage *addr, socklen_t *addrLen) {
+    jint len = (*env)->GetArrayLength(env, address);
+    memset(addr, 0, sizeof(struct sockaddr_storage));
+
+    if (socketFamily == AF_INET6) {
+        struct sockaddr_in6 *ip6 = (struct sockaddr_in6 *) addr;
+        ip6->sin6_family = AF_INET6;
+        ip6->sin6_port = htons((uint16_t) port);
+        if (len == 4) {
+            /* IPv4-mapped IPv6 address */
+            ip6->sin6_addr.s6_addr[10] = 0xff;
+            ip6->sin6_addr.s6_addr[11] = 0xff;
+            (*env)->GetByteArrayRegion(env, address, 0, 4, (jbyte *) &ip6->sin6_addr.s6_addr[12]);
+        } else if (len == 16) {
+            ip6->sin6_scope_id = (uint32_t) scopeId;
+            (*env)->GetByteArrayRegion(env, address, 0, 16, (jbyte *) &ip6->sin6_addr.s6_addr);
+        } else {
+            throwException(env, ioExceptionClass, "invalid address length");
+            return -1;
+        }
+        *addrLen = sizeof(struct sockaddr_in6);
+    } else {
+        struct sockaddr_in *ip4 = (struct sockaddr_in *) addr;
+        if (len != 4) {
+            throwException(env, ioExceptionClass, "IPv6 is not supported by the kernel");
+            return -1;
+        }
+        ip4->sin_family = AF_INET;
+        ip4->sin_port = htons((uint16_t) port);
+        (*env)->GetByteArrayRegion(env, address, 0, 4, (jbyte *) &ip4->sin_addr.s_addr);
+        *addrLen = sizeof(struct sockaddr_in);
+    }
+    return 0;
+}
+
+/*
+ * Encodes a socket address as {address, port} (IPv4, 8 bytes) or
+ * {address, scopeId, port} (IPv6, 24 bytes).  Integers are big-endian.
+ */
+static jbyteArray fromSockaddr(JNIEnv *env, const struct sockaddr_storage *addr) {
+    jbyte buf[24];
+    int len;
+    uint32_t port;
+    uint32_t scopeId;
+
+    if (addr->ss_family == AF_INET) {
+        const struct sockaddr_in *ip4 = (const struct sockaddr_in *) addr;
+        memcpy(buf, &ip4->sin_addr.s_addr, 4);
+        port = htonl(ntohs(ip4->sin_port));
+        memcpy(buf + 4, &port, 4);
+        len = 8;
+    } else {
+        const struct sockaddr_in6 *ip6 = (const struct sockaddr_in6 *) addr;
+        if (IN6_IS_ADDR_V4MAPPED(&ip6->sin6_addr)) {
+            memcpy(buf, &ip6->sin6_addr.s6_addr[12], 4);
+            port = htonl(ntohs(ip6->sin6_port));
+            memcpy(buf + 4, &port, 4);
+            len = 8;
+        } else {
+            memcpy(buf, &ip6->sin6_addr.s6_addr, 16);
+            scopeId = htonl(ip6->sin6_scope_id);
+            memcpy(buf + 16, &scopeId, 4);
+            port = htonl(ntohs(ip6->sin6_port));
+            memcpy(buf + 20, &port, 4);
+            len = 24;
+        }
+    }
+
+    jbyteArray result = (*env)->NewByteArray(env, len);
+    if (result != NULL) {
+        (*env)->SetByteArrayRegion(env, result, 0, len, buf);
+    }
+    return result;
+}
+
+/* epoll */
+
+static jint netty_epoll_epollCreate(JNIEnv *env, jclass clazz) {
+    int efd = epoll_create1(EPOLL_CLOEXEC);
+    if (efd < 0) {
+        throwIOException(env, "epoll_create1", errno);
+    }
+    return efd;
+}
+
+static jint netty_epoll_epollWait(JNIEnv *env, jclass clazz, jint efd, jlongArray events, jint timeout) {
+    struct epoll_event ev[MAX_EPOLL_EVENTS];
+    int len = (*env)->GetArrayLength(env, events);
+    int ready;
+    int i;
+
+    if (len > MAX_EPOLL_EVENTS) {
+        len = MAX_EPOLL_EVENTS;
+    }
+
+    do {
+        ready = epoll_wait(efd, ev, len, timeout);
+    } while (ready < 0 && errno == EINTR && timeout < 0);
+
+    if (ready < 0) {
+        if (errno == EINTR) {
+            return 0;
+        }
+        throwIOException(env, "epoll_wait", errno);
+        return -1;
+    }
+    if (ready == 0) {
+        return 0;
+    }
+
+    jlong *elements = (*env)->GetPrimitiveArrayCritical(env, events, NULL);
+    if (elements == NULL) {
+        return -1;
+    }
+    for (i = 0; i < ready; i ++) {
+        elements[i] = (((jlong) ev[i].data.fd) << 32) | (jlong) (uint32_t) ev[i].events;
+    }
+    (*env)->ReleasePrimitiveArrayCritical(env, events, elements, 0);
+    return ready;
+}
+
+static void epollCtl(JNIEnv *env, jint efd, int op, jint fd, jint flags) {
+    struct epoll_event ev;
+    memset(&ev, 0, sizeof(ev));
+    ev.events = (uint32_t) flags;
+    ev.data.fd = fd;
+    if (epoll_ctl(efd, op, fd, &ev) < 0) {
+        throwIOException(env, "epoll_ctl", errno);
+    }
+}
+
+static void netty_epoll_epollCtlAdd(JNIEnv *env, jclass clazz, jint efd, jint fd, jint flags) {
+    epollCtl(env, efd, EPOLL_CTL_ADD, fd, flags);
+}
+
+static void netty_epoll_epollCtlMod(JNIEnv *env, jclass clazz, jint efd, jint fd, jint flags) {
+    epollCtl(env, efd, EPOLL_CTL_MOD, fd, flags);
+}
+
+static void netty_epoll_epollCtlDel(JNIEnv *env, jclass clazz, jint efd, jint fd) {
+    epollCtl(env, efd, EPOLL_CTL_DEL, fd, 0);
+}
+
+/* eventfd */
+
+static jint netty_epoll_eventFd(JNIEnv *env, jclass clazz) {
+    int fd = eventfd(0, EFD_NONBLOCK | EFD_CLOEXEC);
+    if (fd < 0) {
+        throwIOException(env, "eventfd", errno);
+    }
+    return fd;
+}
+
+static void netty_epoll_eventFdWrite(JNIEnv *env, jclass clazz, jint fd, jlong value) {
+    uint64_t v = (uint64_t) value;
+    if (write(fd, &v, sizeof(v)) < 0 && errno != EAGAIN) {
+        throwIOException(env, "eventfd_write", errno);
+    }
+}
+
+static void netty_epoll_eventFdRead(JNIEnv *env, jclass clazz, jint fd) {
+    uint64_t v;
+    if (read(fd, &v, sizeof(v)) < 0 && errno != EAGAIN) {
+        throwIOException(env, "eventfd_read", errno);
+    }
+}
+
+/* File descriptors */
+
+static void netty_epoll_close(JNIEnv *env, jclass clazz, jint fd) {
+    if (close(fd) < 0 && errno != EINTR) {
+        throwIOException(env, "close", errno);
+    }
+}
+
+static void netty_epoll_shutdown(JNIEnv *env, jclass clazz, jint fd, jboolean input, jboolean output) {
+    int how;
+    if (input && output) {
+        how = SHUT_RDWR;
+    } else if (input) {
+        how = SHUT_RD;
+    } else if (output) {
+        how = SHUT_WR;
+    } else {
+        return;
+    }
+    if (shutdown(fd, how) < 0 && errno != ENOTCONN) {
+        throwIOException(env, "shutdown", errno);
+    }
+}
+
+/* Read and write */
+
+static void *bufferAddress(JNIEnv *env, jobject buffer) {
+    void *address = (*env)->GetDirectBufferAddress(env, buffer);
+    if (address == NULL) {
+        throwException(env, ioExceptionClass, "not a direct buffer");
+    }
+    return address;
+}
+
+static jint netty_epoll_read(JNIEnv *env, jclass clazz, jint fd, jobject buffer, jint pos, jint limit) {
+    char *address = bufferAddress(env, buffer);
+    ssize_t n;
+    if (address == NULL) {
+        return -1;
+    }
+
+    do {
+        n = read(fd, address + pos, (size_t) (limit - pos));
+    } while (n < 0 && errno == EINTR);
+
+    if (n < 0) {
+        if (errno == EAGAIN || errno == EWOULDBLOCK) {
+            return 0;
+        }
+        throwIOException(env, "read", errno);
+        return -1;
+    }
+    if (n == 0) {
+        /* End of stream */
+        return -1;
+    }
+    return (jint) n;
+}
+
+static jint netty_epoll_write(JNIEnv *env, jclass clazz, jint fd, jobject buffer, jint pos, jint limit) {
+    char *address = bufferAddress(env, buffer);
+    ssize_t n;
+    if (address == NULL) {
+        return -1;
+    }
+
+    do {
+        n = send(fd, address + pos, (size_t) (limit - pos), MSG_NOSIGNAL);
+    } while (n < 0 && errno == EINTR);
+
+    if (n < 0) {
+        if (errno == EAGAIN || errno == EWOULDBLOCK) {
+            return 0;
+        }
+        throwIOException(env, "write", errno);
+        return -1;
+    }
+    return (jint) n;
+}
+
+static jlong netty_epoll_writev(JNIEnv *env, jclass clazz, jint fd, jobjectArray buffers, jint offset, jint length) {
+    struct iovec iov[IOV_MAX];
+    struct msghdr msg;
+    ssize_t n;
+    int i;
+
+    if (length > IOV_MAX) {
+        length = IOV_MAX;
+    }
+
+    for (i = 0; i < length; i ++) {
+        jobject buffer = (*env)->GetObjectArrayElement(env, buffers, offset + i);
+        char *address = bufferAddress(env, buffer);
+        if (address == NULL) {
+            return -1;
+        }
+        jint pos = (*env)->GetIntField(env, buffer, positionFieldId);
+        jint limit = (*env)->GetIntField(env, buffer, limitFieldId);
+        iov[i].iov_base = address + pos;
+        iov[i].iov_len = (size_t) (limit - pos);
+        (*env)->DeleteLocalRef(env, buffer);
+    }
+
+    /* sendmsg() is writev() with MSG_NOSIGNAL, which avoids SIGPIPE. */
+    memset(&msg, 0, sizeof(msg));
+    msg.msg_iov = iov;
+    msg.msg_iovlen = (size_t) length;
+
+    do {
+        n = sendmsg(fd, &msg, MSG_NOSIGNAL);
+    } while (n < 0 && errno == EINTR);
+
+    if (n < 0) {
+        if (errno == EAGAIN || errno == EWOULDBLOCK) {
+            return 0;
+        }
+        throwIOException(env, "writev", errno);
+        return -1;
+    }
+    return (jlong) n;
+}
+
+/* Sockets */
+
+static jint netty_epoll_socketStream(JNIEnv *env, jclass clazz) {
+    int fd = socket(socketFamily, SOCK_STREAM | SOCK_NONBLOCK | SOCK_CLOEXEC, 0);
+    if (fd < 0) {
+        throwIOException(env, "socket", errno);
+        return -1;
+    }
+    if (socketFamily == AF_INET6) {
+        /* Accept both IPv4 and IPv6 connections. */
+        int zero = 0;
+        if (setsockopt(fd, IPPROTO_IPV6, IPV6_V6ONLY, &zero, sizeof(zero)) < 0) {
+            int err = errno;
+            close(fd);
+            throwIOException(env, "setsockopt", err);
+            return -1;
+        }
+    }
+    return fd;
+}
+
+static void netty_epoll_bind(JNIEnv *env, jclass clazz, jint fd, jbyteArray address, jint scopeId, jint port) {
+    struct sockaddr_storage addr;
+    socklen_t addrLen;
+    if (toSockaddr(env, address, scopeId, port, &addr, &addrLen) < 0) {
+        return;
+    }
+    if (bind(fd, (struct sockaddr *) &addr, addrLen) < 0) {
+        int err = errno;
+        if (err == EADDRINUSE || err == EADDRNOTAVAIL || err == EACCES) {
+            throwException(env, bindExceptionClass, strerror(err));
+        } else {
+            throwIOException(env, "bind", err);
+        }
+    }
+}
+
+static void netty_epoll_listen(JNIEnv *env, jclass clazz, jint fd, jint backlog) {
+    if (listen(fd, backlog) < 0) {
+        throwIOException(env, "listen", errno);
+    }
+}
+
+static jint netty_epoll_accept(JNIEnv *env, jclass clazz, jint fd) {
+    int socketFd;
+    do {
+        socketFd = accept4(fd, NULL, NULL, SOCK_NONBLOCK | SOCK_CLOEXEC);
+    } while (socketFd < 0 && errno == EINTR);
+
+    if (socketFd < 0) {
+        if (errno == EAGAIN || errno == EWOULDBLOCK) {
+            return -1;
+        }
+        throwIOException(env, "accept", errno);
+        return -1;
+    }
+    return socketFd;
+}
+
+static jboolean netty_epoll_connect(JNIEnv *env, jclass clazz, jint fd, jbyteArray address, jint scopeId, jint port) {
+    struct sockaddr_storage addr;
+    socklen_t addrLen;
+    int res;
+
+    if (toSockaddr(env, address, scopeId, port, &addr, &addrLen) < 0) {
+        return JNI_FALSE;
+    }
+
+    do {
+        res = connect(fd, (struct sockaddr *) &addr, addrLen);
+    } while (res < 0 && errno == EINTR);
+
+    if (res < 0) {
+        int err = errno;
+        if (err == EINPROGRESS) {
+            return JNI_FALSE;
+        }
+        if (err == ECONNREFUSED || err == ENETUNREACH || err == EHOSTUNREACH || err == ETIMEDOUT) {
+            throwException(env, connectExceptionClass, strerror(err));
+        } else {
+            throwIOException(env, "connect", err);
+        }
+        return JNI_FALSE;
+    }
+    return JNI_TRUE;
+}
+
+static jboolean netty_epoll_finishConnect(JNIEnv *env, jclass clazz, jint fd) {
+    int err = 0;
+    socklen_t len = sizeof(err);
+    if (getsockopt(fd, SOL_SOCKET, SO_ERROR, &err, &len) < 0) {
+        throwIOException(env, "getsockopt", errno);
+        return JNI_FALSE;
+    }
+    if (err == 0) {
+        return JNI_TRUE;
+    }
+    if (err == EINPROGRESS || err == EALREADY) {
+        return JNI_FALSE;
+    }
+    throwException(env, connectExceptionClass, strerror(err));
+    return JNI_FALSE;
+}
+
+static jbyteArray netty_epoll_localAddress(JNIEnv *env, jclass clazz, jint fd) {
+    struct sockaddr_storage addr;
+    socklen_t len = sizeof(addr);
+    if (getsockname(fd, (struct sockaddr *) &addr, &len) < 0) {
+        return NULL;
+    }
+    return fromSockaddr(env, &addr);
+}
+
+static jbyteArray netty_epoll_remoteAddress(JNIEnv *env, jclass clazz, jint fd) {
+    struct sockaddr_storage addr;
+    socklen_t len = sizeof(addr);
+    if (getpeername(fd, (struct sockaddr *) &addr, &len) < 0) {
+        return NULL;
+    }
+    return fromSockaddr(env, &addr);
+}
+
+/* Socket options */
+
+static void setOption(JNIEnv *env, jint fd, int level, int optname, const void *value, socklen_t len) {
+    if (setsockopt(fd, level, optname, value, len) < 0) {
+        throwIOException(env, "setsockopt", errno);
+    }
+}
+
+static int getOption(JNIEnv *env, jint fd, int level, int optname, void *value, socklen_t len) {
+    if (getsockopt(fd, level, optname, value, &len) < 0) {
+        throwIOException(env, "getsockopt", errno);
+        return -1;
+    }
+    return 0;
+}
+
+static void setIntOption(JNIEnv *env, jint fd, int level, int optname, jint value) {
+    int v = value;
+    setOption(env, fd, level, optname, &v, sizeof(v));
+}
+
+static jint getIntOption(JNIEnv *env, jint fd, int level, int optname) {
+    int v = 0;
+    if (getOption(env, fd, level, optname, &v, sizeof(v)) < 0) {
+        return -1;
+    }
+    return v;
+}
+
+static void netty_epoll_setReuseAddress(JNIEnv *env, jclass clazz, jint fd, jboolean value) {
+    setIntOption(env, fd, SOL_SOCKET, SO_REUSEADDR, value ? 1 : 0);
+}
+
+static jboolean netty_epoll_isReuseAddress(JNIEnv *env, jclass clazz, jint fd) {
+    return getIntOption(env, fd, SOL_SOCKET, SO_REUSEADDR) > 0;
+}
+
+static void netty_epoll_setReusePort(JNIEnv *env, jclass clazz, jint fd, jboolean value) {
+    setIntOption(env, fd, SOL_SOCKET, SO_REUSEPORT, value ? 1 : 0);
+}
+
+static jboolean netty_epoll_isReusePort(JNIEnv *env, jclass clazz, jint fd) {
+    return getIntOption(env, fd, SOL_SOCKET, SO_REUSEPORT) > 0;
+}
+
+static void netty_epoll_setTcpNoDelay(JNIEnv *env, jclass clazz, jint fd, jboolean value) {
+    setIntOption(env, fd, IPPROTO_TCP, TCP_NODELAY, value ? 1 : 0);
+}
+
+static jboolean netty_epoll_isTcpNoDelay(JNIEnv *env, jclass clazz, jint fd) {
+    return getIntOption(env, fd, IPPROTO_TCP, TCP_NODELAY) > 0;
+}
+
+static void netty_epoll_setKeepAlive(JNIEnv *env, jclass clazz, jint fd, jboolean value) {
+    setIntOption(env, fd, SOL_SOCKET, SO_KEEPALIVE, value ? 1 : 0);
+}
+
+static jboolean netty_epoll_isKeepAlive(JNIEnv *env, jclass clazz, jint fd) {
+    return getIntOption(env, fd, SOL_SOCKET, SO_KEEPALIVE) > 0;
+}
+
+static void netty_epoll_setReceiveBufferSize(JNIEnv *env, jclass clazz, jint fd, jint value) {
+    setIntOption(env, fd, SOL_SOCKET, SO_RCVBUF, value);
+}
+
+static jint netty_epoll_getReceiveBufferSize(JNIEnv *env, jclass clazz, jint fd) {
+    return getIntOption(env, fd, SOL_SOCKET, SO_RCVBUF);
+}
+
+static void netty_epoll_setSendBufferSize(JNIEnv *env, jclass clazz, jint fd, jint value) {
+    setIntOption(env, fd, SOL_SOCKET, SO_SNDBUF, value);
+}
+
+static jint netty_epoll_getSendBufferSize(JNIEnv *env, jclass clazz, jint fd) {
+    return getIntOption(env, fd, SOL_SOCKET, SO_SNDBUF);
+}
+
+static void netty_epoll_setSoLinger(JNIEnv *env, jclass clazz, jint fd, jint value) {
+    struct linger l;
+    if (value < 0) {
+        l.l_onoff = 0;
+        l.l_linger = 0;
+    } else {
+        l.l_onoff = 1;
+        l.l_linger = value;
+    }
+    setOption(env, fd, SOL_SOCKET, SO_LINGER, &l, sizeof(l));
+}
+
+static jint netty_epoll_getSoLinger(JNIEnv *env, jclass clazz, jint fd) {
+    struct linger l;
+    if (getOption(env, fd, SOL_SOCKET, SO_LINGER, &l, sizeof(l)) < 0) {
+        return -1;
+    }
+    return l.l_onoff ? l.l_linger : -1;
+}
+
+static void netty_epoll_setTrafficClass(JNIEnv *env, jclass clazz, jint fd, jint value) {
+    setIntOption(env, fd, IPPROTO_IP, IP_TOS, value);
+    if (socketFamily == AF_INET6) {
+        setIntOption(env, fd, IPPROTO_IPV6, IPV6_TCLASS, value);
+    }
+}
+
+static jint netty_epoll_getTrafficClass(JNIEnv *env, jclass clazz, jint fd) {
+    return getIntOption(env, fd, IPPROTO_IP, IP_TOS);
+}
+
+/* Registration */
+
+static const JNINativeMethod methods[] = {
+    { "epollCreate", "()I", (void *) netty_epoll_epollCreate },
+    { "epollWait", "(I[JI)I", (void *) netty_epoll_epollWait },
+    { "epollCtlAdd", "(III)V", (void *) netty_epoll_epollCtlAdd },
+    { "epollCtlMod", "(III)V", (void *) netty_epoll_epollCtlMod },
+    { "epollCtlDel", "(II)V", (void *) netty_epoll_epollCtlDel },
+    { "eventFd", "()I", (void *) netty_epoll_eventFd },
+    { "eventFdWrite", "(IJ)V", (void *) netty_epoll_eventFdWrite },
+    { "eventFdRead", "(I)V", (void *) netty_epoll_eventFdRead },
+    { "close", "(I)V", (void *) netty_epoll_close },
+    { "shutdown", "(IZZ)V", (void *) netty_epoll_shutdown },
+    { "read", "(ILjava/nio/ByteBuffer;II)I", (void *) netty_epoll_read },
+    { "write", "(ILjava/nio/ByteBuffer;II)I", (void *) netty_epoll_write },
+    { "writev", "(I[Ljava/nio/ByteBuffer;II)J", (void *) netty_epoll_writev },
+    { "socketStream", "()I", (void *) netty_epoll_socketStream },
+    { "bind", "(I[BII)V", (void *) netty_epoll_bind },
+    { "listen", "(II)V", (void *) netty_epoll_listen },
+    { "accept", "(I)I", (void *) netty_epoll_accept },
+    { "connect", "(I[BII)Z", (void *) netty_epoll_connect },
+    { "finishConnect", "(I)Z", (void *) netty_epoll_finishConnect },
+    { "localAddress", "(I)[B", (void *) netty_epoll_localAddress },
+    { "remoteAddress", "(I)[B", (void *) netty_epoll_remoteAddress },
+    { "setReuseAddress", "(IZ)V", (void *) netty_epoll_setReuseAddress },
+    { "isReuseAddress", "(I)Z", (void *) netty_epoll_isReuseAddress },
+    { "setReusePort", "(IZ)V", (void *) netty_epoll_setReusePort },
+    { "isReusePort", "(I)Z", (void *) netty_epoll_isReusePort },
+    { "setTcpNoDelay", "(IZ)V", (void *) netty_epoll_setTcpNoDelay },
+    { "isTcpNoDelay", "(I)Z", (void *) netty_epoll_isTcpNoDelay },
+    { "setKeepAlive", "(IZ)V", (void *) netty_epoll_setKeepAlive },
+    { "isKeepAlive", "(I)Z", (void *) netty_epoll_isKeepAlive },
+    { "setReceiveBufferSize", "(II)V", (void *) netty_epoll_setReceiveBufferSize },
+    { "getReceiveBufferSize", "(I)I", (void *) netty_epoll_getReceiveBufferSize },
+    { "setSendBufferSize", "(II)V", (void *) netty_epoll_setSendBufferSize },
+    { "getSendBufferSize", "(I)I", (void *) netty_epoll_getSendBufferSize },
+    { "setSoLinger", "(II)V", (void *) netty_epoll_setSoLinger },
+    { "getSoLinger", "(I)I", (void *) netty_epoll_getSoLinger },
+    { "setTrafficClass", "(II)V", (void *) netty_epoll_setTrafficClass },
+    { "getTrafficClass", "(I)I", (void *) netty_epoll_getTrafficClass }
+};
+
+JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM *vm, void *reserved) {
+    JNIEnv *env;
+    jclass nativeClass;
+    jclass bufferClass;
+    int probe;
+
+    if ((*vm)->GetEnv(vm, (void **) &env, JNI_VERSION_1_4) != JNI_OK) {
+        return JNI_ERR;
+    }
+
+    nativeClass = (*env)->FindClass(env, NATIVE_CLASSNAME);
+    if (nativeClass == NULL) {
+        return JNI_ERR;
+    }
+    if ((*env)->RegisterNatives(env, nativeClass, methods,
+                                sizeof(methods) / sizeof(methods[0])) != 0) {
+        return JNI_ERR;
+    }
+
+    bufferClass = (*env)->FindClass(env, "java/nio/Buffer");
+    if (bufferClass == NULL) {
+        return JNI_ERR;
+    }
+    positionFieldId = (*env)->GetFieldID(env, bufferClass, "position", "I");
+    limitFieldId = (*env)->GetFieldID(env, bufferClass, "limit", "I");
+    if (positionFieldId == NULL || limitFieldId == NULL) {
+        return JNI_ERR;
+    }
+
+    ioExceptionClass = findGlobalClass(env, "java/io/IOException");
+    closedChannelExceptionClass = findGlobalClass(env, "java/nio/channels/ClosedChannelException");
+    connectExceptionClass = findGlobalClass(env, "java/net/ConnectException");
+    bindExceptionClass = findGlobalClass(env, "java/net/BindException");
+    if (ioExceptionClass == NULL || closedChannelExceptionClass == NULL ||
+        connectExceptionClass == NULL || bindExceptionClass == NULL) {
+        return JNI_ERR;
+    }
+
+    /* Fall back to IPv4-only sockets if the kernel has no IPv6 support. */
+    probe = socket(AF_INET6, SOCK_STREAM | SOCK_CLOEXEC, 0);
+    if (probe < 0) {
+        socketFamily = AF_INET;
+    } else {
+        close(probe);
+    }
+
+    return JNI_VERSION_1_4;
+}
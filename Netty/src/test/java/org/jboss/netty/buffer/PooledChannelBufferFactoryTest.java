@@ -0,0 +1,252 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.buffer;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+/**
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public class PooledChannelBufferFactoryTest {
+
+    private static PooledChannelBufferFactory newFactory(boolean direct) {
+        return new PooledChannelBufferFactory(
+                ByteOrder.BIG_ENDIAN, direct, 1, 4096, 1048576);
+    }
+
+    @Test
+    public void testSizeClasses() {
+        assertEquals(0, PoolArena.sizeIndex(1));
+        assertEquals(0, PoolArena.sizeIndex(16));
+        assertEquals(1, PoolArena.sizeIndex(17));
+        assertEquals(1, PoolArena.sizeIndex(32));
+        assertEquals(2, PoolArena.sizeIndex(33));
+        assertEquals(16, PoolArena.sizeOf(0));
+        assertEquals(4096, PoolArena.sizeOf(PoolArena.sizeIndex(4096)));
+    }
+
+    @Test
+    public void testReleasedMemoryIsReused() {
+        PooledChannelBufferFactory factory = newFactory(false);
+        PooledChannelBuffer a = (PooledChannelBuffer) factory.getBuffer(100);
+        assertEquals(100, a.capacity());
+        assertEquals(0, a.readerIndex());
+        assertEquals(0, a.writerIndex());
+        a.writeInt(42);
+        byte[] array = a.array();
+        int offset = a.arrayOffset();
+        assertTrue(a.release());
+
+        PooledChannelBuffer b = (PooledChannelBuffer) factory.getBuffer(120);
+        assertSame(array, b.array());
+        assertEquals(offset, b.arrayOffset());
+        assertEquals(0, b.writerIndex());
+
+        assertEquals(2, factory.getAllocatedBuffers());
+        assertEquals(1, factory.getThreadCacheHits());
+        assertEquals(1, factory.getReleasedBuffers());
+        assertEquals(1, factory.getActiveBuffers());
+    }
+
+    @Test
+    public void testReferenceCount() {
+        PooledChannelBufferFactory factory = newFactory(true);
+        PooledChannelBuffer buf = (PooledChannelBuffer) factory.getBuffer(8);
+        assertEquals(1, buf.refCnt());
+        buf.retain();
+        assertEquals(2, buf.refCnt());
+        assertFalse(buf.release());
+        assertTrue(ChannelBuffers.release(buf));
+        assertEquals(0, buf.refCnt());
+        assertEquals(0, factory.getActiveBuffers());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDoubleRelease() {
+        PooledChannelBuffer buf = (PooledChannelBuffer) newFactory(false).getBuffer(8);
+        buf.release();
+        buf.release();
+    }
+
+    @Test
+    public void testLargeBufferIsNotPooled() {
+        PooledChannelBufferFactory factory = newFactory(true);
+        ChannelBuffer buf = factory.getBuffer(4097);
+        assertFalse(buf instanceof PooledChannelBuffer);
+        assertTrue(buf.isDirect());
+        assertFalse(ChannelBuffers.release(buf));
+        assertEquals(1, factory.getUnpooledBuffers());
+        assertEquals(0, factory.getPooledMemory());
+    }
+
+    @Test
+    public void testMaxPooledMemory() {
+        PooledChannelBufferFactory factory = new PooledChannelBufferFactory(
+                ByteOrder.BIG_ENDIAN, false, 1, 4096, 0);
+        ChannelBuffer buf = factory.getBuffer(16);
+        assertFalse(buf instanceof PooledChannelBuffer);
+        assertEquals(16, buf.capacity());
+        assertEquals(1, factory.getUnpooledBuffers());
+    }
+
+    @Test
+    public void testByteOrder() {
+        PooledChannelBufferFactory factory = newFactory(true);
+        ChannelBuffer be = factory.getBuffer(ByteOrder.BIG_ENDIAN, 4);
+        ChannelBuffer le = factory.getBuffer(ByteOrder.LITTLE_ENDIAN, 4);
+        assertSame(ByteOrder.BIG_ENDIAN, be.order());
+        assertSame(ByteOrder.LITTLE_ENDIAN, le.order());
+        le.writeInt(1);
+        assertEquals(1, le.getInt(0));
+        be.writeBytes(le, 0, 4);
+        assertEquals(0x01000000, be.getInt(0));
+    }
+
+    @Test
+    public void testCopiedFromDirectNioBuffer() {
+        PooledChannelBufferFactory factory = newFactory(false);
+        ByteBuffer nioBuffer = ByteBuffer.allocateDirect(8);
+        nioBuffer.putLong(0x0102030405060708L).flip();
+        ChannelBuffer buf = factory.getBuffer(nioBuffer);
+        assertTrue(buf instanceof PooledChannelBuffer);
+        assertEquals(0, nioBuffer.position());
+        assertEquals(8, buf.readableBytes());
+        assertEquals(0x0102030405060708L, buf.readLong());
+    }
+
+    @Test
+    public void testDerivedBufferFactory() {
+        PooledChannelBufferFactory factory = newFactory(false);
+        ChannelBuffer buf = factory.getBuffer(32);
+        assertSame(factory, ((PooledChannelBuffer) buf).pool());
+        assertSame(HeapChannelBufferFactory.getInstance(ByteOrder.BIG_ENDIAN), buf.factory());
+        buf.writeLong(7);
+        ChannelBuffer slice = buf.slice();
+        assertEquals(8, slice.readableBytes());
+        assertEquals(7, slice.getLong(0));
+        assertSame(buf, ((WrappedChannelBuffer) slice).unwrap());
+
+        // Copies are not pooled.
+        ChannelBuffer copy = buf.readBytes(8);
+        assertFalse(copy instanceof PooledChannelBuffer);
+        assertEquals(7, copy.getLong(0));
+        assertEquals(1, factory.getActiveBuffers());
+    }
+
+    @Test
+    public void testAccessAfterRelease() {
+        PooledChannelBufferFactory factory = newFactory(true);
+        PooledChannelBuffer buf = (PooledChannelBuffer) factory.getBuffer(8);
+        buf.writeLong(7);
+        ChannelBuffer slice = buf.slice();
+        assertTrue(buf.release());
+
+        try {
+            buf.getLong(0);
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        try {
+            buf.writeByte(1);
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        try {
+            slice.readByte();
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        try {
+            buf.toByteBuffer();
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testLeakTrackingIsSampled() {
+        PooledChannelBufferFactory factory = newFactory(false);
+        int tracked = 0;
+        for (int i = 0; i < PooledChannelBufferFactory.LEAK_SAMPLING_INTERVAL * 2; i ++) {
+            PooledChannelBuffer buf = (PooledChannelBuffer) factory.getBuffer(8);
+            if (buf.slot.leakRef != null) {
+                tracked ++;
+            }
+            buf.release();
+        }
+        assertEquals(2, tracked);
+
+        factory.setLeakDetectionLevel(PooledChannelBufferFactory.LeakDetectionLevel.ADVANCED);
+        PooledChannelBuffer buf = (PooledChannelBuffer) factory.getBuffer(8);
+        assertNotNull(buf.slot.leakRef);
+        assertNotNull(buf.slot.leakRef.allocationSite);
+        buf.release();
+        assertNull(buf.slot.leakRef);
+
+        factory.setLeakDetectionLevel(PooledChannelBufferFactory.LeakDetectionLevel.DISABLED);
+        for (int i = 0; i < PooledChannelBufferFactory.LEAK_SAMPLING_INTERVAL; i ++) {
+            buf = (PooledChannelBuffer) factory.getBuffer(8);
+            assertNull(buf.slot.leakRef);
+            buf.release();
+        }
+    }
+
+    @Test
+    public void testDynamicBufferReleasesOldStorage() {
+        PooledChannelBufferFactory factory = newFactory(false);
+        ChannelBuffer buf = ChannelBuffers.dynamicBuffer(16, factory);
+        buf.writeBytes(new byte[100]);
+        assertEquals(100, buf.readableBytes());
+        assertEquals(1, factory.getActiveBuffers());
+        assertTrue(ChannelBuffers.release(buf));
+        assertEquals(0, factory.getActiveBuffers());
+    }
+
+    @Test
+    public void testDynamicBufferDerivedBuffersSurviveGrowth() {
+        PooledChannelBufferFactory factory = newFactory(false);
+        ChannelBuffer buf = ChannelBuffers.dynamicBuffer(16, factory);
+        buf.writeLong(7);
+        ChannelBuffer slice = buf.slice(0, 8);
+        ChannelBuffer duplicate = buf.duplicate();
+
+        // Moves the content to a new storage and releases the old one.
+        buf.writeBytes(new byte[100]);
+        assertEquals(1, factory.getActiveBuffers());
+        assertEquals(1, factory.getReleasedBuffers());
+        assertEquals(7, slice.getLong(0));
+        assertEquals(7, duplicate.readLong());
+
+        ChannelBuffer copy = buf.copy();
+        assertEquals(108, copy.readableBytes());
+        assertEquals(7, copy.getLong(0));
+        assertEquals(1, factory.getActiveBuffers());
+        assertFalse(ChannelBuffers.release(copy));
+        assertTrue(ChannelBuffers.release(buf));
+        assertEquals(0, factory.getActiveBuffers());
+    }
+}
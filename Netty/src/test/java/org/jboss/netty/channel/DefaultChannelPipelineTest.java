@@ -0,0 +1,179 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel;
+
+import static org.junit.Assert.*;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public class DefaultChannelPipelineTest {
+
+    @Test
+    public void testPassThroughHandlers() {
+        assertTrue(PassThroughHandlers.isUpstreamPassThrough(new SimpleChannelUpstreamHandler()));
+        assertTrue(PassThroughHandlers.isDownstreamPassThrough(new SimpleChannelDownstreamHandler()));
+        assertTrue(PassThroughHandlers.isUpstreamPassThrough(new ExceptionHandler(null)));
+        assertTrue(PassThroughHandlers.isDownstreamPassThrough(new ExceptionHandler(null)));
+        assertFalse(PassThroughHandlers.isUpstreamPassThrough(new Recorder("a", null)));
+        assertFalse(PassThroughHandlers.isDownstreamPassThrough(new Recorder("a", null)));
+        assertFalse(PassThroughHandlers.isUpstreamPassThrough(new SimpleChannelHandler() {
+            @Override
+            public void handleUpstream(ChannelHandlerContext ctx, ChannelEvent e) throws Exception {
+                super.handleUpstream(ctx, e);
+            }
+        }));
+        assertFalse(PassThroughHandlers.isDownstreamPassThrough(new ChannelDownstreamHandler() {
+            public void handleDownstream(ChannelHandlerContext ctx, ChannelEvent e) {
+                ctx.sendDownstream(e);
+            }
+        }));
+    }
+
+    @Test
+    public void testDispatchAfterModification() {
+        List<String> events = new ArrayList<String>();
+        DefaultChannelPipeline p = new DefaultChannelPipeline();
+        p.addLast("a", new Recorder("a", events));
+        TestChannel channel = new TestChannel(p, events);
+
+        assertDispatch(channel, events, "a");
+
+        p.addLast("c", new Recorder("c", events));
+        p.addFirst("e1", new ExceptionHandler(events));
+        p.addBefore("c", "b", new Recorder("b", events));
+        p.addAfter("c", "e2", new ExceptionHandler(events));
+        assertDispatch(channel, events, "a", "b", "c");
+
+        p.remove("b");
+        p.replace("a", "d", new Recorder("d", events));
+        assertDispatch(channel, events, "d", "c");
+
+        p.removeFirst();
+        p.removeLast();
+        assertDispatch(channel, events, "d", "c");
+
+        // The skipped handlers still get the other events.
+        p.addLast("e", new ExceptionHandler(events));
+        events.clear();
+        Channels.fireExceptionCaught(channel, new Exception());
+        assertEquals("[e:exception]", events.toString());
+    }
+
+    @Test
+    public void testStaticPipelineDispatch() {
+        List<String> events = new ArrayList<String>();
+        StaticChannelPipeline p = new StaticChannelPipeline(
+                new ExceptionHandler(events), new Recorder("a", events),
+                new ExceptionHandler(events), new Recorder("b", events),
+                new ExceptionHandler(events));
+        TestChannel channel = new TestChannel(p, events);
+        assertDispatch(channel, events, "a", "b");
+    }
+
+    private static void assertDispatch(Channel channel, List<String> events, String... names) {
+        events.clear();
+        Channels.fireMessageReceived(channel, "m");
+        channel.write("m");
+
+        List<String> expected = new ArrayList<String>();
+        for (String n: names) {
+            expected.add(n + ":received");
+        }
+        for (int i = names.length - 1; i >= 0; i --) {
+            expected.add(names[i] + ":written");
+        }
+        expected.add("sunk");
+        assertEquals(expected, events);
+    }
+
+    private static class Recorder extends SimpleChannelHandler {
+        private final String name;
+        private final List<String> events;
+
+        Recorder(String name, List<String> events) {
+            this.name = name;
+            this.events = events;
+        }
+
+        @Override
+        public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+            events.add(name + ":received");
+            ctx.sendUpstream(e);
+        }
+
+        @Override
+        public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) {
+            events.add(name + ":written");
+            ctx.sendDownstream(e);
+        }
+    }
+
+    private static class ExceptionHandler extends SimpleChannelHandler {
+        private final List<String> events;
+
+        ExceptionHandler(List<String> events) {
+            this.events = events;
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+            events.add("e:exception");
+        }
+    }
+
+    private static class TestChannel extends AbstractChannel {
+        private final ChannelConfig config = new DefaultChannelConfig();
+
+        TestChannel(ChannelPipeline pipeline, final List<String> events) {
+            super(null, null, pipeline, new AbstractChannelSink() {
+                public void eventSunk(ChannelPipeline pipeline, ChannelEvent e) {
+                    if (e instanceof MessageEvent) {
+                        events.add("sunk");
+                    }
+                }
+            });
+        }
+
+        public ChannelConfig getConfig() {
+            return config;
+        }
+
+        public boolean isBound() {
+            return true;
+        }
+
+        public boolean isConnected() {
+            return true;
+        }
+
+        public SocketAddress getLocalAddress() {
+            return null;
+        }
+
+        public SocketAddress getRemoteAddress() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.group;
+
+import static org.junit.Assert.*;
+
+import java.net.SocketAddress;
+import java.nio.ReadOnlyBufferException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.buffer.PooledChannelBufferFactory;
+import org.jboss.netty.channel.AbstractChannel;
+import org.jboss.netty.channel.AbstractChannelSink;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelConfig;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.DefaultChannelConfig;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.ChannelHandler.Sharable;
+import org.jboss.netty.handler.codec.oneone.OneToOneEncoder;
+import org.jboss.netty.util.CharsetUtil;
+import org.junit.Test;
+
+/**
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public class DefaultChannelGroupTest {
+
+    @Test
+    public void testBroadcastEncodesOnce() {
+        CountingEncoder sharedEncoder = new CountingEncoder();
+        CountingEncoder otherEncoder = new CountingEncoder();
+        UnsharableEncoder unsharableEncoder = new UnsharableEncoder();
+
+        DefaultChannelGroup group = new DefaultChannelGroup();
+        List<TestChannel> shared = new ArrayList<TestChannel>();
+        for (int i = 0; i < 3; i ++) {
+            TestChannel c = new TestChannel(sharedEncoder);
+            shared.add(c);
+            group.add(c);
+        }
+        TestChannel other = new TestChannel(otherEncoder);
+        TestChannel unsharable = new TestChannel(unsharableEncoder);
+        group.add(other);
+        group.add(unsharable);
+
+        ChannelGroupFuture future = group.broadcast("hello");
+        assertTrue(future.isCompleteSuccess());
+
+        assertEquals(1, sharedEncoder.count.get());
+        assertEquals(1, otherEncoder.count.get());
+        assertEquals(1, unsharableEncoder.count.get());
+
+        for (TestChannel c: shared) {
+            ChannelBuffer buf = c.sink.poll();
+            assertEquals("hello", buf.toString(CharsetUtil.UTF_8));
+            try {
+                buf.setByte(0, 0);
+                fail();
+            } catch (ReadOnlyBufferException e) {
+                // Expected
+            }
+        }
+        assertEquals("hello", other.sink.poll().toString(CharsetUtil.UTF_8));
+        assertEquals("hello", unsharable.sink.poll().toString(CharsetUtil.UTF_8));
+    }
+
+    @Test
+    public void testBroadcastBuffer() {
+        DefaultChannelGroup group = new DefaultChannelGroup();
+        TestChannel a = new TestChannel(new SimpleChannelUpstreamHandler());
+        TestChannel b = new TestChannel(new SimpleChannelUpstreamHandler());
+        group.add(a);
+        group.add(b);
+
+        ChannelBuffer message = ChannelBuffers.copiedBuffer("hello", CharsetUtil.UTF_8);
+        assertTrue(group.broadcast(message).isCompleteSuccess());
+        assertEquals(5, message.readableBytes());
+        assertEquals("hello", a.sink.poll().toString(CharsetUtil.UTF_8));
+        assertEquals("hello", b.sink.poll().toString(CharsetUtil.UTF_8));
+    }
+
+    @Test
+    public void testBroadcastReleasesEncodedBuffer() {
+        PooledChannelBufferFactory factory = new PooledChannelBufferFactory();
+        PooledEncoder encoder = new PooledEncoder(factory);
+        DefaultChannelGroup group = new DefaultChannelGroup();
+        TestChannel a = new TestChannel(encoder);
+        TestChannel b = new TestChannel(encoder);
+        a.sink.completeWrites = false;
+        b.sink.completeWrites = false;
+        group.add(a);
+        group.add(b);
+
+        ChannelGroupFuture future = group.broadcast("hello");
+        assertFalse(future.isDone());
+        assertEquals(1, factory.getActiveBuffers());
+
+        assertEquals("hello", a.sink.poll().toString(CharsetUtil.UTF_8));
+        a.sink.completeAll();
+        assertEquals(1, factory.getActiveBuffers());
+
+        assertEquals("hello", b.sink.poll().toString(CharsetUtil.UTF_8));
+        b.sink.completeAll();
+        assertTrue(future.isCompleteSuccess());
+        assertEquals(0, factory.getActiveBuffers());
+    }
+
+    @Test
+    public void testBroadcastAfterPipelineModification() {
+        CountingEncoder encoder = new CountingEncoder();
+        CountingEncoder newEncoder = new CountingEncoder();
+        DefaultChannelGroup group = new DefaultChannelGroup();
+        TestChannel a = new TestChannel(encoder);
+        TestChannel b = new TestChannel(encoder);
+        group.add(a);
+        group.add(b);
+
+        assertTrue(group.broadcast("hello").isCompleteSuccess());
+        assertTrue(group.broadcast("hello").isCompleteSuccess());
+        assertEquals(2, encoder.count.get());
+
+        a.getPipeline().replace(encoder, "encoder", newEncoder);
+        assertTrue(group.broadcast("world").isCompleteSuccess());
+        assertEquals(3, encoder.count.get());
+        assertEquals(1, newEncoder.count.get());
+
+        a.sink.poll();
+        a.sink.poll();
+        assertEquals("world", a.sink.poll().toString(CharsetUtil.UTF_8));
+        b.sink.poll();
+        b.sink.poll();
+        assertEquals("world", b.sink.poll().toString(CharsetUtil.UTF_8));
+    }
+
+    @Test
+    public void testBroadcastSkipsUnwritable() {
+        CountingEncoder encoder = new CountingEncoder();
+        DefaultChannelGroup group = new DefaultChannelGroup();
+        TestChannel writable1 = new TestChannel(encoder);
+        TestChannel writable2 = new TestChannel(encoder);
+        TestChannel unwritable = new TestChannel(encoder);
+        unwritable.writable = false;
+        group.add(writable1);
+        group.add(writable2);
+        group.add(unwritable);
+
+        final List<String> progress = new ArrayList<String>();
+        ChannelGroupFuture future = group.broadcast("hello");
+        future.addListener(new ChannelGroupFutureProgressListener() {
+            public void operationProgressed(
+                    ChannelGroupFuture future, int succeeded, int failed, int total) {
+                progress.add(succeeded + "/" + failed + "/" + total);
+            }
+
+            public void operationComplete(ChannelGroupFuture future) {
+                progress.add("complete");
+            }
+        });
+
+        assertTrue(future.isDone());
+        assertTrue(future.isPartialFailure());
+        assertTrue(future.isPartialSuccess());
+        assertTrue(future.find(unwritable).getCause() instanceof UnwritableChannelException);
+        assertTrue(future.find(writable1).isSuccess());
+        assertTrue(future.find(writable2).isSuccess());
+        assertNull(unwritable.sink.poll());
+        assertEquals(1, encoder.count.get());
+
+        // Added after completion - notified only of the completion.
+        assertEquals(1, progress.size());
+        assertEquals("complete", progress.get(0));
+
+        group.setSkipUnwritable(false);
+        assertTrue(group.broadcast("hello").isCompleteSuccess());
+        assertEquals("hello", unwritable.sink.poll().toString(CharsetUtil.UTF_8));
+    }
+
+    @Test
+    public void testProgress() {
+        DefaultChannelGroup group = new DefaultChannelGroup();
+        TestChannel a = new TestChannel(new SimpleChannelUpstreamHandler());
+        TestChannel b = new TestChannel(new SimpleChannelUpstreamHandler());
+        group.add(a);
+        group.add(b);
+
+        ChannelFuture fa = Channels.future(a);
+        ChannelFuture fb = Channels.future(b);
+        List<ChannelFuture> futures = new ArrayList<ChannelFuture>();
+        futures.add(fa);
+        futures.add(fb);
+        DefaultChannelGroupFuture future = new DefaultChannelGroupFuture(group, futures);
+
+        final List<String> progress = new ArrayList<String>();
+        future.addListener(new ChannelGroupFutureProgressListener() {
+            public void operationProgressed(
+                    ChannelGroupFuture future, int succeeded, int failed, int total) {
+                progress.add(succeeded + "/" + failed + "/" + total);
+            }
+
+            public void operationComplete(ChannelGroupFuture future) {
+                progress.add("complete");
+            }
+        });
+
+        fb.setFailure(new Exception());
+        assertEquals(1, progress.size());
+        assertEquals("0/1/2", progress.get(0));
+
+        fa.setSuccess();
+        assertEquals(3, progress.size());
+        assertEquals("1/1/2", progress.get(1));
+        assertEquals("complete", progress.get(2));
+    }
+
+    @Sharable
+    private static class CountingEncoder extends OneToOneEncoder {
+        final AtomicInteger count = new AtomicInteger();
+
+        CountingEncoder() {
+            super();
+        }
+
+        @Override
+        protected Object encode(ChannelHandlerContext ctx, Channel channel, Object msg) {
+            count.incrementAndGet();
+            return ChannelBuffers.copiedBuffer((String) msg, CharsetUtil.UTF_8);
+        }
+    }
+
+    @Sharable
+    private static class PooledEncoder extends OneToOneEncoder {
+        private final PooledChannelBufferFactory factory;
+
+        PooledEncoder(PooledChannelBufferFactory factory) {
+            this.factory = factory;
+        }
+
+        @Override
+        protected Object encode(ChannelHandlerContext ctx, Channel channel, Object msg) {
+            byte[] bytes = ((String) msg).getBytes(CharsetUtil.UTF_8);
+            ChannelBuffer buf = factory.getBuffer(bytes.length);
+            buf.writeBytes(bytes);
+            return buf;
+        }
+    }
+
+    private static class UnsharableEncoder extends OneToOneEncoder {
+        final AtomicInteger count = new AtomicInteger();
+
+        UnsharableEncoder() {
+            super();
+        }
+
+        @Override
+        protected Object encode(ChannelHandlerContext ctx, Channel channel, Object msg) {
+            count.incrementAndGet();
+            return ChannelBuffers.copiedBuffer((String) msg, CharsetUtil.UTF_8);
+        }
+    }
+
+    private static class TestChannel extends AbstractChannel {
+        final TestSink sink;
+        private final ChannelConfig config = new DefaultChannelConfig();
+        volatile boolean writable = true;
+
+        TestChannel(ChannelHandler... handlers) {
+            this(Channels.pipeline(handlers), new TestSink());
+        }
+
+        private TestChannel(ChannelPipeline pipeline, TestSink sink) {
+            super(null, null, pipeline, sink);
+            this.sink = sink;
+        }
+
+        public ChannelConfig getConfig() {
+            return config;
+        }
+
+        public boolean isBound() {
+            return true;
+        }
+
+        public boolean isConnected() {
+            return true;
+        }
+
+        @Override
+        public boolean isWritable() {
+            return writable;
+        }
+
+        public SocketAddress getLocalAddress() {
+            return null;
+        }
+
+        public SocketAddress getRemoteAddress() {
+            return null;
+        }
+    }
+
+    private static class TestSink extends AbstractChannelSink {
+        private final List<ChannelBuffer> written = new ArrayList<ChannelBuffer>();
+        private final List<ChannelFuture> pending = new ArrayList<ChannelFuture>();
+        volatile boolean completeWrites = true;
+
+        TestSink() {
+            super();
+        }
+
+        public void eventSunk(ChannelPipeline pipeline, ChannelEvent e) {
+            if (e instanceof MessageEvent) {
+                written.add((ChannelBuffer) ((MessageEvent) e).getMessage());
+                if (completeWrites) {
+                    e.getFuture().setSuccess();
+                } else {
+                    pending.add(e.getFuture());
+                }
+            }
+        }
+
+        void completeAll() {
+            for (ChannelFuture f: pending) {
+                f.setSuccess();
+            }
+            pending.clear();
+        }
+
+        ChannelBuffer poll() {
+            return written.isEmpty()? null : written.remove(0);
+        }
+    }
+}
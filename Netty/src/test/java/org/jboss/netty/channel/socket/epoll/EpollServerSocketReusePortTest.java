@@ -0,0 +1,166 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.epoll;
+
+import static org.junit.Assert.*;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.util.TestUtil;
+import org.jboss.netty.util.internal.ExecutorUtil;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public class EpollServerSocketReusePortTest {
+
+    private static final int BOSS_COUNT = 4;
+    private static final int CONNECTIONS = 200;
+
+    private ExecutorService executor;
+
+    @BeforeClass
+    public static void ensureEpollAvailability() {
+        Assume.assumeTrue(Epoll.isAvailable());
+    }
+
+    @Before
+    public void init() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void destroy() {
+        ExecutorUtil.terminate(executor);
+    }
+
+    @Test
+    public void testMultipleBosses() throws Throwable {
+        ServerBootstrap sb = new ServerBootstrap(
+                new EpollServerSocketChannelFactory(executor, executor, 4, BOSS_COUNT));
+        ClientBootstrap cb = new ClientBootstrap(
+                new EpollClientSocketChannelFactory(executor, 4));
+
+        final Map<String, Boolean> bossThreadNames =
+            new ConcurrentHashMap<String, Boolean>();
+        final AtomicReference<Throwable> exception = new AtomicReference<Throwable>();
+        sb.getPipeline().addLast("handler", new SimpleChannelUpstreamHandler() {
+            @Override
+            public void channelConnected(ChannelHandlerContext ctx,
+                    ChannelStateEvent e) {
+                bossThreadNames.put(Thread.currentThread().getName(), Boolean.TRUE);
+            }
+
+            @Override
+            public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+                e.getChannel().write(e.getMessage());
+            }
+
+            @Override
+            public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+                exception.compareAndSet(null, e.getCause());
+                e.getChannel().close();
+            }
+        });
+
+        final CountDownLatch echoed = new CountDownLatch(CONNECTIONS);
+        cb.getPipeline().addLast("handler", new SimpleChannelUpstreamHandler() {
+            @Override
+            public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+                // The context is not shared - a new pipeline is created
+                // for each connection.
+                Integer received = (Integer) ctx.getAttachment();
+                int expected = received == null? 0 : received.intValue();
+                ChannelBuffer m = (ChannelBuffer) e.getMessage();
+                while (m.readable()) {
+                    assertEquals(expected ++, m.readByte());
+                }
+                ctx.setAttachment(Integer.valueOf(expected));
+                if (expected == 8) {
+                    echoed.countDown();
+                }
+            }
+
+            @Override
+            public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+                exception.compareAndSet(null, e.getCause());
+                e.getChannel().close();
+            }
+        });
+
+        Channel sc = sb.bind(new InetSocketAddress(0));
+        int port = ((InetSocketAddress) sc.getLocalAddress()).getPort();
+
+        List<Channel> clients = new ArrayList<Channel>();
+        try {
+            for (int i = 0; i < CONNECTIONS; i ++) {
+                ChannelFuture ccf = cb.connect(
+                        new InetSocketAddress(TestUtil.getLocalHost(), port));
+                assertTrue(ccf.awaitUninterruptibly().isSuccess());
+                Channel cc = ccf.getChannel();
+                clients.add(cc);
+
+                // A direct buffer followed by a heap buffer, gathered into
+                // a single writev() call.
+                ChannelBuffer direct = ChannelBuffers.directBuffer(4);
+                direct.writeBytes(new byte[] { 0, 1, 2, 3 });
+                cc.write(direct);
+                cc.write(ChannelBuffers.wrappedBuffer(new byte[] { 4, 5, 6, 7 }));
+            }
+
+            assertTrue(echoed.await(10, TimeUnit.SECONDS));
+        } finally {
+            for (Channel cc: clients) {
+                cc.close().awaitUninterruptibly();
+            }
+            sc.close().awaitUninterruptibly();
+        }
+
+        if (exception.get() != null) {
+            throw exception.get();
+        }
+        assertTrue(
+                "connections were not distributed: " + bossThreadNames.keySet(),
+                bossThreadNames.size() > 1);
+    }
+}
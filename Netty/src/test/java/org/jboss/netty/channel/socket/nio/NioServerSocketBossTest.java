@@ -0,0 +1,202 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import static org.junit.Assert.*;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.util.TestUtil;
+import org.jboss.netty.util.internal.ExecutorUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public class NioServerSocketBossTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void init() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void destroy() {
+        ExecutorUtil.terminate(executor);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBossCount() {
+        new NioServerSocketChannelFactory(executor, executor, 1, 0);
+    }
+
+    @Test
+    public void testMultipleBosses() throws Throwable {
+        ServerBootstrap sb = new ServerBootstrap(
+                new NioServerSocketChannelFactory(executor, executor, 2, 4));
+        ClientBootstrap cb = new ClientBootstrap(new NioClientSocketChannelFactory(executor, executor));
+
+        List<NioSocketChannel> accepted = new ArrayList<NioSocketChannel>();
+        sb.getPipeline().addLast("handler", new AcceptHandler(accepted));
+        cb.getPipeline().addLast("handler", new SimpleChannelUpstreamHandler());
+
+        Channel sc = sb.bind(new InetSocketAddress(0));
+        int port = ((InetSocketAddress) sc.getLocalAddress()).getPort();
+        InetSocketAddress address = new InetSocketAddress(TestUtil.getLocalHost(), port);
+        List<ChannelFuture> futures = new ArrayList<ChannelFuture>();
+        try {
+            for (int i = 0; i < 100; i ++) {
+                futures.add(cb.connect(address));
+            }
+            for (ChannelFuture f: futures) {
+                assertTrue(f.awaitUninterruptibly().isSuccess());
+            }
+            waitForAccepted(accepted, 100);
+        } finally {
+            for (ChannelFuture f: futures) {
+                f.getChannel().close().awaitUninterruptibly();
+            }
+            sc.close().awaitUninterruptibly();
+        }
+
+        // All boss threads should have stopped accepting.
+        ChannelFuture f = cb.connect(address).awaitUninterruptibly();
+        assertFalse(f.isSuccess());
+    }
+
+    @Test
+    public void testLeastLoadedWorker() throws Throwable {
+        ServerBootstrap sb = new ServerBootstrap(
+                new NioServerSocketChannelFactory(executor, executor, 2));
+        ClientBootstrap cb = new ClientBootstrap(new NioClientSocketChannelFactory(executor, executor));
+
+        List<NioSocketChannel> accepted = new ArrayList<NioSocketChannel>();
+        sb.getPipeline().addLast("handler", new AcceptHandler(accepted));
+        cb.getPipeline().addLast("handler", new SimpleChannelUpstreamHandler());
+
+        Channel sc = sb.bind(new InetSocketAddress(0));
+        NioServerSocketPipelineSink sink =
+            (NioServerSocketPipelineSink) sc.getPipeline().getSink();
+        int port = ((InetSocketAddress) sc.getLocalAddress()).getPort();
+        InetSocketAddress address = new InetSocketAddress(TestUtil.getLocalHost(), port);
+        List<Channel> clients = new ArrayList<Channel>();
+        try {
+            // The workers are chosen in turn while they have the same load.
+            for (int i = 0; i < 4; i ++) {
+                ChannelFuture f = cb.connect(address);
+                assertTrue(f.awaitUninterruptibly().isSuccess());
+                clients.add(f.getChannel());
+                waitForAccepted(accepted, i + 1);
+            }
+            waitForLoad(sink, 4);
+            assertEquals(2, sink.getWorkerLoad(0));
+            assertEquals(2, sink.getWorkerLoad(1));
+
+            // Close the channels of one worker.
+            NioWorker drained = accepted.get(0).worker;
+            synchronized (accepted) {
+                for (NioSocketChannel ch: accepted) {
+                    if (ch.worker == drained) {
+                        ch.close().awaitUninterruptibly();
+                    }
+                }
+            }
+            int drainedIndex = drained.metrics.getWorkerId() - 1;
+            assertEquals(0, sink.getWorkerLoad(drainedIndex));
+            assertEquals(2, sink.getWorkerLoad(1 - drainedIndex));
+
+            // New channels go to the drained worker until it catches up.
+            for (int i = 0; i < 2; i ++) {
+                ChannelFuture f = cb.connect(address);
+                assertTrue(f.awaitUninterruptibly().isSuccess());
+                clients.add(f.getChannel());
+                waitForAccepted(accepted, i + 5);
+                synchronized (accepted) {
+                    assertSame(drained, accepted.get(i + 4).worker);
+                }
+            }
+            waitForLoad(sink, 4);
+            assertEquals(2, sink.getWorkerLoad(0));
+            assertEquals(2, sink.getWorkerLoad(1));
+        } finally {
+            for (Channel ch: clients) {
+                ch.close().awaitUninterruptibly();
+            }
+            sc.close().awaitUninterruptibly();
+        }
+    }
+
+    private static void waitForAccepted(
+            List<NioSocketChannel> accepted, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        for (;;) {
+            synchronized (accepted) {
+                if (accepted.size() >= expected) {
+                    return;
+                }
+            }
+            if (System.currentTimeMillis() > deadline) {
+                fail("accepted only " + accepted.size() + " of " + expected + " channels");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static void waitForLoad(
+            NioServerSocketPipelineSink sink, int expected) throws InterruptedException {
+        // The load is updated after channelOpen is fired.
+        long deadline = System.currentTimeMillis() + 10000;
+        while (sink.getWorkerLoad(0) + sink.getWorkerLoad(1) < expected) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("load did not reach " + expected);
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static final class AcceptHandler extends SimpleChannelUpstreamHandler {
+        private final List<NioSocketChannel> accepted;
+
+        AcceptHandler(List<NioSocketChannel> accepted) {
+            super();
+            this.accepted = accepted;
+        }
+
+        @Override
+        public void channelOpen(ChannelHandlerContext ctx, ChannelStateEvent e) {
+            synchronized (accepted) {
+                accepted.add((NioSocketChannel) e.getChannel());
+            }
+        }
+    }
+}
@@ -0,0 +1,396 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import static org.junit.Assert.*;
+
+import java.net.InetSocketAddress;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.WriteBufferEvent;
+import org.jboss.netty.util.TestUtil;
+import org.jboss.netty.util.internal.ExecutorUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public class NioSocketBackpressureTest {
+
+    private static final int HIGH_WATER_MARK = 128 * 1024;
+    private static final int LOW_WATER_MARK = 32 * 1024;
+    private static final int SOCKET_BUFFER_SIZE = 16 * 1024;
+
+    // The bytes which can be read at once after the reading is suspended.
+    private static final int MAX_READ_SIZE = 65536;
+
+    private static final Random random = new Random();
+
+    private ExecutorService executor;
+    private ServerBootstrap sb;
+    private ClientBootstrap cb;
+    private final AtomicReference<Throwable> exception = new AtomicReference<Throwable>();
+
+    @Before
+    public void init() {
+        executor = Executors.newCachedThreadPool();
+        sb = new ServerBootstrap(new NioServerSocketChannelFactory(executor, executor));
+        cb = new ClientBootstrap(new NioClientSocketChannelFactory(executor, executor));
+        sb.setOption("receiveBufferSize", SOCKET_BUFFER_SIZE);
+        sb.setOption("child.sendBufferSize", SOCKET_BUFFER_SIZE);
+        cb.setOption("sendBufferSize", SOCKET_BUFFER_SIZE);
+        cb.setOption("receiveBufferSize", SOCKET_BUFFER_SIZE);
+    }
+
+    @After
+    public void destroy() {
+        ExecutorUtil.terminate(executor);
+    }
+
+    @Test
+    public void testWaterMarks() throws Throwable {
+        SlowReader reader = new SlowReader();
+        WriteBufferEvents events = new WriteBufferEvents();
+        sb.getPipeline().addLast("handler", reader);
+        cb.getPipeline().addLast("handler", events);
+        cb.setOption("writeBufferHighWaterMark", HIGH_WATER_MARK);
+        cb.setOption("writeBufferLowWaterMark", LOW_WATER_MARK);
+
+        Channel sc = sb.bind(new InetSocketAddress(0));
+        Channel cc = connect(sc);
+
+        long written = 0;
+        ChannelBuffer data = randomBuffer(8192);
+        while (cc.isWritable()) {
+            cc.write(data.duplicate());
+            written += data.readableBytes();
+        }
+
+        WriteBufferEvent e = events.poll();
+        assertFalse(e.isWritable());
+        assertTrue(e.getQueuedBytes() >= HIGH_WATER_MARK);
+        assertTrue(e.getQueuedBytes() < HIGH_WATER_MARK + data.readableBytes());
+        assertTrue(e.getQueuedMessages() > 0);
+        assertEquals(Channel.OP_READ | Channel.OP_WRITE, cc.getInterestOps());
+
+        reader.awaitChannel().setReadable(true);
+        e = events.pollWritable();
+        assertTrue(e.getQueuedBytes() < LOW_WATER_MARK);
+        assertTrue(cc.isWritable());
+
+        reader.awaitBytes(written);
+        cc.close().awaitUninterruptibly();
+        sc.close().awaitUninterruptibly();
+        assertNoException();
+    }
+
+    @Test
+    public void testMessageWaterMarks() throws Throwable {
+        SlowReader reader = new SlowReader();
+        WriteBufferEvents events = new WriteBufferEvents();
+        sb.getPipeline().addLast("handler", reader);
+        cb.getPipeline().addLast("handler", events);
+        cb.setOption("writeBufferHighWaterMark", Integer.MAX_VALUE);
+        cb.setOption("writeBufferHighWaterMarkMessages", 16);
+        cb.setOption("writeBufferLowWaterMarkMessages", 4);
+
+        Channel sc = sb.bind(new InetSocketAddress(0));
+        Channel cc = connect(sc);
+
+        long written = 0;
+        ChannelBuffer data = randomBuffer(1024);
+        while (cc.isWritable()) {
+            cc.write(data.duplicate());
+            written += data.readableBytes();
+        }
+
+        WriteBufferEvent e = events.poll();
+        assertFalse(e.isWritable());
+        assertEquals(16, e.getQueuedMessages());
+
+        reader.awaitChannel().setReadable(true);
+        e = events.pollWritable();
+        assertTrue(e.getQueuedMessages() < 4);
+
+        reader.awaitBytes(written);
+        cc.close().awaitUninterruptibly();
+        sc.close().awaitUninterruptibly();
+        assertNoException();
+    }
+
+    @Test
+    public void testAutoSuspendRead() throws Throwable {
+        final AtomicLong maxQueuedBytes = new AtomicLong();
+        final WriteBufferEvents serverEvents = new WriteBufferEvents();
+        sb.getPipeline().addLast("events", serverEvents);
+        sb.getPipeline().addLast("handler", new SimpleChannelUpstreamHandler() {
+            @Override
+            public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+                e.getChannel().write(e.getMessage());
+                updateMax(maxQueuedBytes, (NioSocketChannel) e.getChannel());
+            }
+
+            @Override
+            public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+                exception.compareAndSet(null, e.getCause());
+            }
+        });
+        sb.setOption("child.writeBufferHighWaterMark", HIGH_WATER_MARK);
+        sb.setOption("child.writeBufferLowWaterMark", LOW_WATER_MARK);
+        sb.setOption("child.autoSuspendRead", true);
+
+        SlowReader reader = new SlowReader();
+        cb.getPipeline().addLast("handler", reader);
+
+        Channel sc = sb.bind(new InetSocketAddress(0));
+        Channel cc = connect(sc);
+
+        // Write much more than the server can hold without reading back.
+        long written = 0;
+        ChannelBuffer data = randomBuffer(16384);
+        for (int i = 0; i < 512; i ++) {
+            cc.write(data.duplicate());
+            written += data.readableBytes();
+        }
+
+        assertFalse(serverEvents.poll().isWritable());
+        Thread.sleep(500);
+        assertTrue(maxQueuedBytes.get() < HIGH_WATER_MARK + MAX_READ_SIZE);
+
+        reader.awaitChannel().setReadable(true);
+        reader.awaitBytes(written);
+        assertTrue(maxQueuedBytes.get() < HIGH_WATER_MARK + MAX_READ_SIZE);
+
+        cc.close().awaitUninterruptibly();
+        sc.close().awaitUninterruptibly();
+        assertNoException();
+    }
+
+    @Test
+    public void testBackpressurePeer() throws Throwable {
+        // client -> relay -> sink, where the sink does not read at first.
+        SlowReader sink = new SlowReader();
+        ServerBootstrap sinkBootstrap =
+            new ServerBootstrap(new NioServerSocketChannelFactory(executor, executor));
+        sinkBootstrap.setOption("receiveBufferSize", SOCKET_BUFFER_SIZE);
+        sinkBootstrap.getPipeline().addLast("handler", sink);
+        Channel sinkChannel = sinkBootstrap.bind(new InetSocketAddress(0));
+        final InetSocketAddress sinkAddress = new InetSocketAddress(
+                TestUtil.getLocalHost(),
+                ((InetSocketAddress) sinkChannel.getLocalAddress()).getPort());
+
+        final ClientBootstrap outboundBootstrap =
+            new ClientBootstrap(new NioClientSocketChannelFactory(executor, executor));
+        outboundBootstrap.setOption("sendBufferSize", SOCKET_BUFFER_SIZE);
+        outboundBootstrap.setOption("writeBufferHighWaterMark", HIGH_WATER_MARK);
+        outboundBootstrap.setOption("writeBufferLowWaterMark", LOW_WATER_MARK);
+        final WriteBufferEvents outboundEvents = new WriteBufferEvents();
+        outboundBootstrap.getPipeline().addLast("handler", outboundEvents);
+
+        final AtomicReference<Channel> outbound = new AtomicReference<Channel>();
+        final AtomicLong maxQueuedBytes = new AtomicLong();
+        sb.getPipeline().addLast("handler", new SimpleChannelUpstreamHandler() {
+            @Override
+            public void channelOpen(ChannelHandlerContext ctx, ChannelStateEvent e) {
+                final Channel inbound = e.getChannel();
+                inbound.setReadable(false);
+                outboundBootstrap.connect(sinkAddress).addListener(new ChannelFutureListener() {
+                    public void operationComplete(ChannelFuture future) {
+                        if (!future.isSuccess()) {
+                            exception.compareAndSet(null, future.getCause());
+                            return;
+                        }
+                        Channel ch = future.getChannel();
+                        ch.getConfig().setOption("backpressurePeer", inbound);
+                        outbound.set(ch);
+                        inbound.setReadable(true);
+                    }
+                });
+            }
+
+            @Override
+            public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+                NioSocketChannel ch = (NioSocketChannel) outbound.get();
+                ch.write(e.getMessage());
+                updateMax(maxQueuedBytes, ch);
+            }
+
+            @Override
+            public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+                exception.compareAndSet(null, e.getCause());
+            }
+        });
+        cb.getPipeline().addLast("handler", new SimpleChannelUpstreamHandler());
+
+        Channel sc = sb.bind(new InetSocketAddress(0));
+        Channel cc = connect(sc);
+
+        long written = 0;
+        ChannelBuffer data = randomBuffer(16384);
+        for (int i = 0; i < 512; i ++) {
+            cc.write(data.duplicate());
+            written += data.readableBytes();
+        }
+
+        assertFalse(outboundEvents.poll().isWritable());
+        Thread.sleep(500);
+        assertTrue(maxQueuedBytes.get() < HIGH_WATER_MARK + MAX_READ_SIZE);
+
+        sink.awaitChannel().setReadable(true);
+        sink.awaitBytes(written);
+        assertTrue(outboundEvents.pollWritable().getQueuedBytes() < LOW_WATER_MARK);
+        assertTrue(maxQueuedBytes.get() < HIGH_WATER_MARK + MAX_READ_SIZE);
+
+        cc.close().awaitUninterruptibly();
+        outbound.get().close().awaitUninterruptibly();
+        sc.close().awaitUninterruptibly();
+        sinkChannel.close().awaitUninterruptibly();
+        assertNoException();
+    }
+
+    private Channel connect(Channel sc) {
+        int port = ((InetSocketAddress) sc.getLocalAddress()).getPort();
+        ChannelFuture ccf = cb.connect(new InetSocketAddress(TestUtil.getLocalHost(), port));
+        assertTrue(ccf.awaitUninterruptibly().isSuccess());
+        return ccf.getChannel();
+    }
+
+    private void assertNoException() throws Throwable {
+        if (exception.get() != null) {
+            throw exception.get();
+        }
+    }
+
+    private static void updateMax(AtomicLong max, NioSocketChannel channel) {
+        long queuedBytes = channel.writeBufferSize.get();
+        for (;;) {
+            long current = max.get();
+            if (current >= queuedBytes || max.compareAndSet(current, queuedBytes)) {
+                break;
+            }
+        }
+    }
+
+    private static ChannelBuffer randomBuffer(int length) {
+        byte[] data = new byte[length];
+        random.nextBytes(data);
+        return ChannelBuffers.wrappedBuffer(data);
+    }
+
+    /**
+     * Does not read until {@link Channel#setReadable(boolean)} is called.
+     */
+    private final class SlowReader extends SimpleChannelUpstreamHandler {
+
+        private final CountDownLatch opened = new CountDownLatch(1);
+        private final AtomicLong receivedBytes = new AtomicLong();
+        private volatile Channel channel;
+
+        SlowReader() {
+            super();
+        }
+
+        @Override
+        public void channelOpen(ChannelHandlerContext ctx, ChannelStateEvent e) {
+            e.getChannel().setReadable(false);
+            channel = e.getChannel();
+            opened.countDown();
+        }
+
+        @Override
+        public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+            receivedBytes.addAndGet(((ChannelBuffer) e.getMessage()).readableBytes());
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+            exception.compareAndSet(null, e.getCause());
+        }
+
+        Channel awaitChannel() throws InterruptedException {
+            assertTrue(opened.await(10, TimeUnit.SECONDS));
+            return channel;
+        }
+
+        void awaitBytes(long expected) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 10000;
+            while (receivedBytes.get() < expected && exception.get() == null &&
+                   System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(expected, receivedBytes.get());
+        }
+    }
+
+    private final class WriteBufferEvents extends SimpleChannelUpstreamHandler {
+
+        private final BlockingQueue<WriteBufferEvent> events =
+            new LinkedBlockingQueue<WriteBufferEvent>();
+
+        WriteBufferEvents() {
+            super();
+        }
+
+        @Override
+        public void writeBufferChanged(ChannelHandlerContext ctx, WriteBufferEvent e) {
+            events.add(e);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+            exception.compareAndSet(null, e.getCause());
+        }
+
+        WriteBufferEvent poll() throws InterruptedException {
+            WriteBufferEvent e = events.poll(10, TimeUnit.SECONDS);
+            assertNotNull(e);
+            return e;
+        }
+
+        WriteBufferEvent pollWritable() throws InterruptedException {
+            for (;;) {
+                WriteBufferEvent e = poll();
+                if (e.isWritable()) {
+                    return e;
+                }
+            }
+        }
+    }
+}
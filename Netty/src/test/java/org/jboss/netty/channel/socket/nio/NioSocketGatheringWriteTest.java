@@ -0,0 +1,272 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.buffer.PooledChannelBuffer;
+import org.jboss.netty.buffer.PooledChannelBufferFactory;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.DefaultFileRegion;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.WriteCompletionEvent;
+import org.jboss.netty.util.TestUtil;
+import org.jboss.netty.util.internal.ExecutorUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public class NioSocketGatheringWriteTest {
+
+    private static final Random random = new Random();
+
+    private ExecutorService executor;
+
+    @Before
+    public void init() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void destroy() {
+        ExecutorUtil.terminate(executor);
+    }
+
+    @Test
+    public void testGatheringWrite() throws Throwable {
+        testGatheringWrite(8);
+    }
+
+    @Test
+    public void testNonGatheringWrite() throws Throwable {
+        testGatheringWrite(1);
+    }
+
+    private void testGatheringWrite(int maxBuffers) throws Throwable {
+        ServerBootstrap sb = new ServerBootstrap(new NioServerSocketChannelFactory(executor, executor));
+        ClientBootstrap cb = new ClientBootstrap(new NioClientSocketChannelFactory(executor, executor));
+
+        final ChannelBuffer received = ChannelBuffers.dynamicBuffer();
+        final AtomicReference<Throwable> exception = new AtomicReference<Throwable>();
+        sb.getPipeline().addLast("handler", new SimpleChannelUpstreamHandler() {
+            @Override
+            public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+                synchronized (received) {
+                    received.writeBytes((ChannelBuffer) e.getMessage());
+                }
+            }
+
+            @Override
+            public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+                exception.compareAndSet(null, e.getCause());
+            }
+        });
+
+        final AtomicLong writtenAmount = new AtomicLong();
+        cb.getPipeline().addLast("handler", new SimpleChannelUpstreamHandler() {
+            @Override
+            public void writeComplete(ChannelHandlerContext ctx, WriteCompletionEvent e) {
+                writtenAmount.addAndGet(e.getWrittenAmount());
+            }
+
+            @Override
+            public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+                exception.compareAndSet(null, e.getCause());
+            }
+        });
+        cb.setOption("gatheringWriteMaxBuffers", maxBuffers);
+        cb.setOption("gatheringWriteMaxBytes", 65536);
+
+        byte[] fileData = new byte[100000];
+        random.nextBytes(fileData);
+        File file = File.createTempFile("netty-", ".tmp");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(fileData);
+        out.close();
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+        Channel sc = sb.bind(new InetSocketAddress(0));
+        int port = ((InetSocketAddress) sc.getLocalAddress()).getPort();
+
+        ChannelFuture ccf = cb.connect(new InetSocketAddress(TestUtil.getLocalHost(), port));
+        assertTrue(ccf.awaitUninterruptibly().isSuccess());
+        Channel cc = ccf.getChannel();
+
+        ChannelBuffer expected = ChannelBuffers.dynamicBuffer();
+        List<ChannelFuture> futures = new ArrayList<ChannelFuture>();
+        for (int i = 0; i < 1000; i ++) {
+            ChannelBuffer m;
+            switch (i % 5) {
+            case 0:
+                // Small heap buffer
+                m = randomBuffer(ChannelBuffers.buffer(1 + random.nextInt(64)));
+                break;
+            case 1:
+                // Small direct buffer
+                m = randomBuffer(ChannelBuffers.directBuffer(1 + random.nextInt(64)));
+                break;
+            case 2:
+                // Large composite buffer with heap and direct components
+                m = ChannelBuffers.wrappedBuffer(
+                        randomBuffer(ChannelBuffers.buffer(40000)),
+                        randomBuffer(ChannelBuffers.directBuffer(30000)),
+                        ChannelBuffers.EMPTY_BUFFER,
+                        randomBuffer(ChannelBuffers.buffer(10)));
+                break;
+            case 3:
+                // Empty buffer
+                m = ChannelBuffers.EMPTY_BUFFER;
+                break;
+            default:
+                m = randomBuffer(ChannelBuffers.buffer(100 + random.nextInt(1000)));
+            }
+
+            expected.writeBytes(m, m.readerIndex(), m.readableBytes());
+            futures.add(cc.write(m));
+
+            if (i % 100 == 99) {
+                expected.writeBytes(fileData);
+                futures.add(cc.write(new DefaultFileRegion(raf.getChannel(), 0, fileData.length)));
+            }
+        }
+
+        for (ChannelFuture f: futures) {
+            assertTrue(f.await(10, TimeUnit.SECONDS));
+            assertTrue(f.isSuccess());
+        }
+
+        long deadline = System.currentTimeMillis() + 10000;
+        for (;;) {
+            synchronized (received) {
+                if (received.readableBytes() >= expected.readableBytes() &&
+                    writtenAmount.get() >= expected.readableBytes()) {
+                    break;
+                }
+            }
+            if (exception.get() != null || System.currentTimeMillis() > deadline) {
+                break;
+            }
+            Thread.sleep(10);
+        }
+
+        cc.close().awaitUninterruptibly();
+        sc.close().awaitUninterruptibly();
+        raf.close();
+
+        if (exception.get() != null) {
+            throw exception.get();
+        }
+
+        synchronized (received) {
+            assertEquals(expected, received);
+        }
+        assertEquals(expected.readableBytes(), writtenAmount.get());
+    }
+
+    @Test
+    public void testReleaseWrittenBuffers() throws Throwable {
+        testWrittenBufferOwnership(true);
+    }
+
+    @Test
+    public void testKeepWrittenBuffers() throws Throwable {
+        testWrittenBufferOwnership(false);
+    }
+
+    private void testWrittenBufferOwnership(boolean releaseWrittenBuffers) throws Throwable {
+        ServerBootstrap sb = new ServerBootstrap(new NioServerSocketChannelFactory(executor, executor));
+        ClientBootstrap cb = new ClientBootstrap(new NioClientSocketChannelFactory(executor, executor));
+
+        final AtomicLong receivedBytes = new AtomicLong();
+        sb.getPipeline().addLast("handler", new SimpleChannelUpstreamHandler() {
+            @Override
+            public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+                receivedBytes.addAndGet(((ChannelBuffer) e.getMessage()).readableBytes());
+            }
+        });
+        cb.getPipeline().addLast("handler", new SimpleChannelUpstreamHandler());
+        cb.setOption("releaseWrittenBuffers", releaseWrittenBuffers);
+
+        Channel sc = sb.bind(new InetSocketAddress(0));
+        int port = ((InetSocketAddress) sc.getLocalAddress()).getPort();
+        ChannelFuture ccf = cb.connect(new InetSocketAddress(TestUtil.getLocalHost(), port));
+        assertTrue(ccf.awaitUninterruptibly().isSuccess());
+        Channel cc = ccf.getChannel();
+
+        PooledChannelBufferFactory factory = new PooledChannelBufferFactory(false);
+        PooledChannelBuffer buf = (PooledChannelBuffer) randomBuffer(factory.getBuffer(100));
+        if (releaseWrittenBuffers) {
+            // The same buffer is written twice.
+            buf.retain();
+        }
+        ChannelFuture f1 = cc.write(buf);
+        ChannelFuture f2 = cc.write(buf);
+        assertTrue(f1.awaitUninterruptibly().isSuccess());
+        assertTrue(f2.awaitUninterruptibly().isSuccess());
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (receivedBytes.get() < 200 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        cc.close().awaitUninterruptibly();
+        sc.close().awaitUninterruptibly();
+
+        assertEquals(200, receivedBytes.get());
+        if (releaseWrittenBuffers) {
+            assertEquals(0, buf.refCnt());
+        } else {
+            assertEquals(1, buf.refCnt());
+            assertEquals(100, buf.readableBytes());
+            assertTrue(buf.release());
+        }
+        assertEquals(0, factory.getActiveBuffers());
+    }
+
+    private static ChannelBuffer randomBuffer(ChannelBuffer buf) {
+        byte[] data = new byte[buf.writableBytes()];
+        random.nextBytes(data);
+        buf.writeBytes(data);
+        return buf;
+    }
+}
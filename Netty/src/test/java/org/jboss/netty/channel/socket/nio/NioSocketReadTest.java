@@ -0,0 +1,230 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import static org.junit.Assert.*;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.buffer.DirectChannelBufferFactory;
+import org.jboss.netty.buffer.HeapChannelBufferFactory;
+import org.jboss.netty.buffer.PooledChannelBuffer;
+import org.jboss.netty.buffer.PooledChannelBufferFactory;
+import org.jboss.netty.channel.AdaptiveReceiveBufferSizePredictor;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.util.TestUtil;
+import org.jboss.netty.util.internal.ExecutorUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public class NioSocketReadTest {
+
+    private static final Random random = new Random();
+
+    private ExecutorService executor;
+
+    @Before
+    public void init() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void destroy() {
+        ExecutorUtil.terminate(executor);
+    }
+
+    @Test
+    public void testHeapBufferFactory() throws Throwable {
+        testRead(HeapChannelBufferFactory.getInstance(), false);
+    }
+
+    @Test
+    public void testDirectBufferFactory() throws Throwable {
+        testRead(DirectChannelBufferFactory.getInstance(), false);
+    }
+
+    @Test
+    public void testPooledHeapBufferFactory() throws Throwable {
+        testRead(PooledChannelBufferFactory.getInstance(false), true);
+    }
+
+    @Test
+    public void testPooledDirectBufferFactory() throws Throwable {
+        testRead(PooledChannelBufferFactory.getInstance(true), true);
+    }
+
+    private void testRead(ChannelBufferFactory factory, boolean pooled) throws Throwable {
+        ServerBootstrap sb = new ServerBootstrap(new NioServerSocketChannelFactory(executor, executor, 1));
+        ClientBootstrap cb = new ClientBootstrap(new NioClientSocketChannelFactory(executor, executor, 1));
+
+        // Keep all received buffers so that a buffer reused by a later read
+        // would be caught when they are compared in the end.
+        final List<ChannelBuffer> received = new ArrayList<ChannelBuffer>();
+        final AtomicReference<Throwable> exception = new AtomicReference<Throwable>();
+        sb.getPipeline().addLast("handler", new SimpleChannelUpstreamHandler() {
+            @Override
+            public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+                synchronized (received) {
+                    received.add((ChannelBuffer) e.getMessage());
+                }
+            }
+
+            @Override
+            public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+                exception.compareAndSet(null, e.getCause());
+            }
+        });
+        sb.setOption("child.bufferFactory", factory);
+        cb.getPipeline().addLast("handler", new SimpleChannelUpstreamHandler());
+
+        Channel sc = sb.bind(new InetSocketAddress(0));
+        int port = ((InetSocketAddress) sc.getLocalAddress()).getPort();
+        ChannelFuture ccf = cb.connect(new InetSocketAddress(TestUtil.getLocalHost(), port));
+        assertTrue(ccf.awaitUninterruptibly().isSuccess());
+        Channel cc = ccf.getChannel();
+
+        ChannelBuffer expected = ChannelBuffers.dynamicBuffer();
+        ChannelFuture f = null;
+        for (int i = 0; i < 200; i ++) {
+            byte[] data = new byte[1 + random.nextInt(i % 10 == 0? 100000 : 1000)];
+            random.nextBytes(data);
+            expected.writeBytes(data);
+            f = cc.write(ChannelBuffers.wrappedBuffer(data));
+        }
+        assertTrue(f.awaitUninterruptibly().isSuccess());
+
+        ChannelBuffer actual = ChannelBuffers.dynamicBuffer();
+        long deadline = System.currentTimeMillis() + 10000;
+        for (;;) {
+            int receivedBytes = 0;
+            synchronized (received) {
+                for (ChannelBuffer b: received) {
+                    receivedBytes += b.readableBytes();
+                }
+            }
+            if (receivedBytes >= expected.readableBytes() || exception.get() != null ||
+                System.currentTimeMillis() > deadline) {
+                break;
+            }
+            Thread.sleep(10);
+        }
+
+        cc.close().awaitUninterruptibly();
+        sc.close().awaitUninterruptibly();
+        if (exception.get() != null) {
+            throw exception.get();
+        }
+
+        synchronized (received) {
+            for (ChannelBuffer b: received) {
+                if (pooled) {
+                    assertSame(factory, ((PooledChannelBuffer) b).pool());
+                } else {
+                    assertSame(factory, b.factory());
+                }
+                // A small read must not pin a large buffer.
+                assertFalse(SocketReceiveBufferAllocator.isMostlyUnused(
+                        b.capacity(), b.readableBytes()));
+                actual.writeBytes(b);
+                if (pooled) {
+                    ChannelBuffers.release(b);
+                }
+            }
+        }
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testWorkerPredictor() throws Throwable {
+        ServerBootstrap sb = new ServerBootstrap(new NioServerSocketChannelFactory(executor, executor, 1));
+        ClientBootstrap cb = new ClientBootstrap(new NioClientSocketChannelFactory(executor, executor, 1));
+
+        final List<NioSocketChannel> accepted = new ArrayList<NioSocketChannel>();
+        sb.getPipeline().addLast("handler", new SimpleChannelUpstreamHandler() {
+            @Override
+            public void channelOpen(ChannelHandlerContext ctx, ChannelStateEvent e) {
+                synchronized (accepted) {
+                    accepted.add((NioSocketChannel) e.getChannel());
+                }
+            }
+        });
+        cb.getPipeline().addLast("handler", new SimpleChannelUpstreamHandler());
+
+        Channel sc = sb.bind(new InetSocketAddress(0));
+        int port = ((InetSocketAddress) sc.getLocalAddress()).getPort();
+        List<Channel> clients = new ArrayList<Channel>();
+        for (int i = 0; i < 3; i ++) {
+            ChannelFuture ccf = cb.connect(new InetSocketAddress(TestUtil.getLocalHost(), port));
+            assertTrue(ccf.awaitUninterruptibly().isSuccess());
+            clients.add(ccf.getChannel());
+        }
+
+        long deadline = System.currentTimeMillis() + 10000;
+        for (;;) {
+            synchronized (accepted) {
+                if (accepted.size() == 3 || System.currentTimeMillis() > deadline) {
+                    break;
+                }
+            }
+            Thread.sleep(10);
+        }
+
+        NioSocketChannel a, b, c;
+        synchronized (accepted) {
+            assertEquals(3, accepted.size());
+            a = accepted.get(0);
+            b = accepted.get(1);
+            c = accepted.get(2);
+        }
+        assertSame(a.worker, b.worker);
+        assertSame(a.worker, c.worker);
+
+        // Shared unless configured explicitly.
+        SocketReceiveBufferAllocator allocator = new SocketReceiveBufferAllocator();
+        assertSame(allocator.getPredictor(a), allocator.getPredictor(b));
+        c.getConfig().setReceiveBufferSizePredictor(new AdaptiveReceiveBufferSizePredictor());
+        assertNotSame(allocator.getPredictor(a), allocator.getPredictor(c));
+        assertSame(c.getConfig().getReceiveBufferSizePredictor(), allocator.getPredictor(c));
+
+        for (Channel ch: clients) {
+            ch.close().awaitUninterruptibly();
+        }
+        sc.close().awaitUninterruptibly();
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.channel.socket.nio;
+
+import static org.junit.Assert.*;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.util.TestUtil;
+import org.jboss.netty.util.internal.ExecutorUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public class NioWorkerMetricsTest {
+
+    private static final int DATA_SIZE = 1048576;
+
+    private ExecutorService executor;
+
+    @Before
+    public void init() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void destroy() {
+        ExecutorUtil.terminate(executor);
+    }
+
+    @Test
+    public void testHistogramIndex() {
+        assertEquals(0, DefaultNioWorkerMetrics.histogramIndex(0));
+        assertEquals(1, DefaultNioWorkerMetrics.histogramIndex(1));
+        assertEquals(1, DefaultNioWorkerMetrics.histogramIndex(1023));
+        assertEquals(2, DefaultNioWorkerMetrics.histogramIndex(1024));
+        assertEquals(2, DefaultNioWorkerMetrics.histogramIndex(4095));
+        assertEquals(3, DefaultNioWorkerMetrics.histogramIndex(4096));
+        assertEquals(4, DefaultNioWorkerMetrics.histogramIndex(16384));
+        assertEquals(5, DefaultNioWorkerMetrics.histogramIndex(65536));
+        assertEquals(6, DefaultNioWorkerMetrics.histogramIndex(262144));
+        assertEquals(6, DefaultNioWorkerMetrics.histogramIndex(1048575));
+        assertEquals(7, DefaultNioWorkerMetrics.histogramIndex(1048576));
+        assertEquals(7, DefaultNioWorkerMetrics.histogramIndex(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testMetrics() throws Throwable {
+        NioServerSocketChannelFactory sf = new NioServerSocketChannelFactory(executor, executor, 1);
+        NioClientSocketChannelFactory cf = new NioClientSocketChannelFactory(executor, executor, 1);
+        ServerBootstrap sb = new ServerBootstrap(sf);
+        ClientBootstrap cb = new ClientBootstrap(cf);
+
+        final AtomicLong received = new AtomicLong();
+        sb.getPipeline().addLast("handler", new SimpleChannelUpstreamHandler() {
+            @Override
+            public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+                received.addAndGet(((ChannelBuffer) e.getMessage()).readableBytes());
+            }
+        });
+        cb.getPipeline().addLast("handler", new SimpleChannelUpstreamHandler());
+
+        CountingListener serverListener = new CountingListener();
+        CountingListener clientListener = new CountingListener();
+        sf.setMetricsListener(serverListener);
+        cf.setMetricsListener(clientListener);
+        assertSame(serverListener, sf.getMetricsListener());
+
+        Channel sc = sb.bind(new InetSocketAddress(0));
+        int port = ((InetSocketAddress) sc.getLocalAddress()).getPort();
+        ChannelFuture ccf = cb.connect(new InetSocketAddress(TestUtil.getLocalHost(), port));
+        assertTrue(ccf.awaitUninterruptibly().isSuccess());
+        Channel cc = ccf.getChannel();
+        try {
+            ChannelBuffer data = ChannelBuffers.wrappedBuffer(new byte[8192]);
+            ChannelFuture f = null;
+            for (int i = 0; i < DATA_SIZE / data.capacity(); i ++) {
+                f = cc.write(data.duplicate());
+            }
+            assertTrue(f.awaitUninterruptibly().isSuccess());
+
+            long deadline = System.currentTimeMillis() + 10000;
+            while (received.get() < DATA_SIZE && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(DATA_SIZE, received.get());
+
+            NioWorkerMetrics serverWorker = sf.getWorkerMetrics()[0];
+            NioWorkerMetrics clientWorker = cf.getWorkerMetrics()[0];
+            assertEquals(1, serverWorker.getChannelCount());
+            assertEquals(1, clientWorker.getChannelCount());
+
+            assertEquals(DATA_SIZE, serverWorker.getReadBytes());
+            assertTrue(serverWorker.getReadCount() > 0);
+            assertTrue(serverWorker.getSelectCount() > 0);
+            assertTrue(serverWorker.getSelectedKeyCount() > 0);
+            assertTrue(serverWorker.getSelectTimeNanos() > 0);
+            assertEquals(DATA_SIZE, serverListener.readBytes.get());
+            assertEquals(serverWorker.getReadCount(), serverListener.readCount.get());
+            assertTrue(serverListener.selectCount.get() > 0);
+
+            assertEquals(DATA_SIZE, clientWorker.getWrittenBytes());
+            assertTrue(clientWorker.getWriteCount() >= clientWorker.getZeroByteWriteCount());
+            assertEquals(DATA_SIZE, clientListener.writtenBytes.get());
+            assertEquals(clientWorker.getWriteCount(), clientListener.writeCount.get());
+
+            long samples = 0;
+            for (long n: clientWorker.getQueuedBytesHistogram()) {
+                samples += n;
+            }
+            assertEquals(clientListener.writtenCount.get(), samples);
+            assertTrue(clientWorker.getQueuedBytesHistogram()[0] > 0);
+
+            MBeanServer server = MBeanServerFactory.newMBeanServer();
+            ObjectName[] names = NioWorkerMBeans.register(server, "test", sf.getWorkerMetrics());
+            assertEquals(1, names.length);
+            assertEquals(
+                    new ObjectName("org.jboss.netty:type=NioWorker,name=\"test\",boss=" +
+                                   serverWorker.getBossId() + ",worker=1"),
+                    names[0]);
+            assertEquals(
+                    Long.valueOf(DATA_SIZE), server.getAttribute(names[0], "ReadBytes"));
+            assertEquals(
+                    Integer.valueOf(0), server.getAttribute(names[0], "WriteTaskQueueSize"));
+            NioWorkerMBeans.unregister(server, names);
+            assertFalse(server.isRegistered(names[0]));
+        } finally {
+            cc.close().awaitUninterruptibly();
+            sc.close().awaitUninterruptibly();
+        }
+    }
+
+    private static final class CountingListener implements NioMetricsListener {
+
+        final AtomicLong selectCount = new AtomicLong();
+        final AtomicLong readCount = new AtomicLong();
+        final AtomicLong readBytes = new AtomicLong();
+        final AtomicLong writtenCount = new AtomicLong();
+        final AtomicLong writeCount = new AtomicLong();
+        final AtomicLong writtenBytes = new AtomicLong();
+
+        CountingListener() {
+            super();
+        }
+
+        public void selected(NioWorkerMetrics worker, int selectedKeys, long selectTimeNanos) {
+            selectCount.incrementAndGet();
+        }
+
+        public void read(NioWorkerMetrics worker, Channel channel, int readBytes, int readCount) {
+            this.readCount.addAndGet(readCount);
+            this.readBytes.addAndGet(readBytes);
+        }
+
+        public void written(
+                NioWorkerMetrics worker, Channel channel,
+                long writtenBytes, int writeCount, long queuedBytes) {
+            writtenCount.incrementAndGet();
+            this.writeCount.addAndGet(writeCount);
+            this.writtenBytes.addAndGet(writtenBytes);
+        }
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.codec.binary;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.handler.codec.embedder.CodecEmbedderException;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jboss.netty.handler.codec.embedder.EncoderEmbedder;
+import org.jboss.netty.handler.codec.frame.CorruptedFrameException;
+import org.junit.Test;
+
+/**
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public class BinaryObjectCodecTest {
+
+    private static BinaryClassRegistry newRegistry() {
+        BinaryClassRegistry registry = new BinaryClassRegistry();
+        registry.register(Sample.class);
+        registry.register(Derived.class);
+        registry.register(Color.class);
+        return registry;
+    }
+
+    private static ChannelBuffer encode(BinaryClassRegistry registry, boolean referenceTracking, Object o) {
+        EncoderEmbedder<ChannelBuffer> encoder = new EncoderEmbedder<ChannelBuffer>(
+                new BinaryObjectEncoder(registry, referenceTracking));
+        encoder.offer(o);
+        return encoder.poll();
+    }
+
+    private static Object decode(BinaryClassRegistry registry, ChannelBuffer encoded) {
+        DecoderEmbedder<Object> decoder = new DecoderEmbedder<Object>(
+                new BinaryObjectDecoder(registry));
+        decoder.offer(encoded);
+        return decoder.poll();
+    }
+
+    private static Object roundTrip(boolean referenceTracking, Object o) {
+        BinaryClassRegistry registry = newRegistry();
+        return decode(registry, encode(registry, referenceTracking, o));
+    }
+
+    private static Sample newSample() {
+        Sample s = new Sample();
+        s.i = -12345;
+        s.l = Long.MIN_VALUE;
+        s.b = true;
+        s.by = -1;
+        s.s = Short.MAX_VALUE;
+        s.c = '가';
+        s.f = 1.5f;
+        s.d = Math.PI;
+        s.str = "Hello, 世界 😀 \0";
+        s.boxed = Integer.valueOf(42);
+        s.ints = new int[] { 0, -1, Integer.MIN_VALUE, Integer.MAX_VALUE };
+        s.longs = new long[] { 0, -1, Long.MIN_VALUE, Long.MAX_VALUE };
+        s.bytes = new byte[] { 1, 2, 3 };
+        s.doubles = new double[] { -0.0, Double.NaN };
+        s.color = Color.BLUE;
+        s.list = new ArrayList<Object>(Arrays.asList(
+                "a", Long.valueOf(1), Boolean.FALSE, null, Character.valueOf('x'),
+                Byte.valueOf((byte) 7), Short.valueOf((short) -7), Float.valueOf(2.5f),
+                Double.valueOf(-2.5)));
+        s.map = new HashMap<String, Object>();
+        s.map.put("key", Color.RED);
+        s.set = new HashSet<String>(Arrays.asList("x", "y"));
+        s.names = new String[] { "n1", null };
+        s.transientValue = 1;
+        return s;
+    }
+
+    @Test
+    public void testRoundTrip() {
+        for (boolean referenceTracking: new boolean[] { true, false }) {
+            Sample expected = newSample();
+            Sample actual = (Sample) roundTrip(referenceTracking, expected);
+            assertEquals(expected.i, actual.i);
+            assertEquals(expected.l, actual.l);
+            assertEquals(expected.b, actual.b);
+            assertEquals(expected.by, actual.by);
+            assertEquals(expected.s, actual.s);
+            assertEquals(expected.c, actual.c);
+            assertEquals(expected.f, actual.f, 0);
+            assertEquals(expected.d, actual.d, 0);
+            assertEquals(expected.str, actual.str);
+            assertEquals(expected.boxed, actual.boxed);
+            assertArrayEquals(expected.ints, actual.ints);
+            assertArrayEquals(expected.longs, actual.longs);
+            assertArrayEquals(expected.bytes, actual.bytes);
+            assertEquals(Double.doubleToRawLongBits(-0.0), Double.doubleToRawLongBits(actual.doubles[0]));
+            assertTrue(Double.isNaN(actual.doubles[1]));
+            assertSame(Color.BLUE, actual.color);
+            assertEquals(expected.list, actual.list);
+            assertEquals(expected.map, actual.map);
+            assertEquals(expected.set, actual.set);
+            assertArrayEquals(expected.names, actual.names);
+            assertEquals(String[].class, actual.names.getClass());
+            assertEquals(0, actual.transientValue);
+            assertNull(actual.next);
+        }
+    }
+
+    @Test
+    public void testInheritance() {
+        Derived expected = new Derived(3);
+        expected.i = 1;
+        expected.children = new Sample[] { new Sample(), expected };
+        Derived actual = (Derived) roundTrip(true, expected);
+        assertEquals(1, actual.i);
+        assertEquals(3, actual.extra);
+        assertEquals(Sample[].class, actual.children.getClass());
+        assertSame(actual, actual.children[1]);
+    }
+
+    @Test
+    public void testReferenceTracking() {
+        Sample shared = new Sample();
+        Sample root = new Sample();
+        root.list = new ArrayList<Object>();
+        root.list.add(shared);
+        root.list.add(shared);
+
+        Sample actual = (Sample) roundTrip(true, root);
+        assertSame(actual.list.get(0), actual.list.get(1));
+
+        actual = (Sample) roundTrip(false, root);
+        assertNotSame(actual.list.get(0), actual.list.get(1));
+    }
+
+    @Test
+    public void testCycle() {
+        Sample root = new Sample();
+        root.next = root;
+        Sample actual = (Sample) roundTrip(true, root);
+        assertSame(actual, actual.next);
+    }
+
+    @Test
+    public void testCompactIntegers() {
+        BinaryClassRegistry registry = newRegistry();
+        // length (4) + flags (1) + tag (1) + value (1)
+        assertEquals(7, encode(registry, false, Integer.valueOf(-1)).readableBytes());
+        assertEquals(7, encode(registry, false, Long.valueOf(63)).readableBytes());
+        assertEquals(8, encode(registry, false, Long.valueOf(64)).readableBytes());
+
+        for (int v: new int[] { 0, 1, -1, 127, 128, -65, Integer.MAX_VALUE, Integer.MIN_VALUE }) {
+            assertEquals(Integer.valueOf(v), decode(registry, encode(registry, false, Integer.valueOf(v))));
+        }
+        for (long v: new long[] { 0, 1, -1, Long.MAX_VALUE, Long.MIN_VALUE }) {
+            assertEquals(Long.valueOf(v), decode(registry, encode(registry, false, Long.valueOf(v))));
+        }
+    }
+
+    @Test
+    public void testFragmentedInput() {
+        BinaryClassRegistry registry = newRegistry();
+        ChannelBuffer encoded = encode(registry, true, newSample());
+        DecoderEmbedder<Object> decoder = new DecoderEmbedder<Object>(
+                new BinaryObjectDecoder(registry));
+        while (encoded.readable()) {
+            assertNull(decoder.peek());
+            decoder.offer(encoded.readBytes(1));
+        }
+        assertEquals(newSample().str, ((Sample) decoder.poll()).str);
+    }
+
+    @Test
+    public void testUnregisteredClass() {
+        EncoderEmbedder<ChannelBuffer> encoder = new EncoderEmbedder<ChannelBuffer>(
+                new BinaryObjectEncoder(new BinaryClassRegistry()));
+        try {
+            encoder.offer(new Sample());
+            fail();
+        } catch (CodecEmbedderException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    @Test
+    public void testUnknownClassId() {
+        ChannelBuffer encoded = encode(newRegistry(), true, new Sample());
+        DecoderEmbedder<Object> decoder = new DecoderEmbedder<Object>(
+                new BinaryObjectDecoder(new BinaryClassRegistry()));
+        try {
+            decoder.offer(encoded);
+            fail();
+        } catch (CodecEmbedderException e) {
+            assertTrue(e.getCause() instanceof CorruptedFrameException);
+        }
+    }
+
+    @Test
+    public void testRegistration() {
+        BinaryClassRegistry registry = newRegistry();
+        assertEquals(3, registry.size());
+        assertEquals(BinaryClassRegistry.FIRST_ID, registry.register(Sample.class));
+        assertTrue(registry.isRegistered(Color.class));
+        assertFalse(registry.isRegistered(NoDefaultConstructor.class));
+
+        try {
+            registry.register(NoDefaultConstructor.class);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        try {
+            registry.register(List.class);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        assertEquals(3, registry.size());
+    }
+
+    enum Color {
+        RED,
+        BLUE {
+            @Override
+            public String toString() {
+                return "blue";
+            }
+        }
+    }
+
+    static class Sample {
+        int i;
+        long l;
+        boolean b;
+        byte by;
+        short s;
+        char c;
+        float f;
+        double d;
+        String str;
+        Integer boxed;
+        int[] ints;
+        long[] longs;
+        byte[] bytes;
+        double[] doubles;
+        Color color;
+        List<Object> list;
+        Map<String, Object> map;
+        HashSet<String> set;
+        String[] names;
+        Sample next;
+        transient int transientValue;
+    }
+
+    static final class Derived extends Sample {
+        final int extra;
+        Sample[] children;
+
+        private Derived() {
+            this(0);
+        }
+
+        Derived(int extra) {
+            this.extra = extra;
+        }
+    }
+
+    static final class NoDefaultConstructor {
+        NoDefaultConstructor(int value) {
+            super();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.codec.compression;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.buffer.DirectChannelBufferFactory;
+import org.jboss.netty.buffer.HeapChannelBufferFactory;
+import org.jboss.netty.handler.codec.embedder.CodecEmbedderException;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jboss.netty.handler.codec.embedder.EncoderEmbedder;
+import org.junit.Test;
+
+/**
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public class ZlibTest {
+
+    private static final ChannelBufferFactory HEAP = HeapChannelBufferFactory.getInstance();
+    private static final ChannelBufferFactory DIRECT = DirectChannelBufferFactory.getInstance();
+
+    private static final byte[] DATA = newData(100000);
+
+    private static byte[] newData(int length) {
+        Random random = new Random(0);
+        byte[] data = new byte[length];
+        for (int i = 0; i < data.length; i ++) {
+            // Compressible but not trivial.
+            data[i] = (byte) ('a' + random.nextInt(8));
+        }
+        return data;
+    }
+
+    @Test
+    public void testEngines() {
+        for (ZlibWrapper wrapper: ZlibWrapper.values()) {
+            for (int i = 0; i < 4; i ++) {
+                boolean jdkIn = (i & 1) != 0;
+                boolean jdkOut = (i & 2) != 0;
+                for (ChannelBufferFactory factory: new ChannelBufferFactory[] { HEAP, DIRECT }) {
+                    ZlibCompressor c = jdkIn?
+                            new JdkZlibCompressor(wrapper, 6, null) :
+                            new JZlibCompressor(wrapper, 6, null);
+                    ZlibDecompressor d = jdkOut?
+                            new JdkZlibDecompressor(wrapper, null) :
+                            new JZlibDecompressor(wrapper, null);
+                    assertRoundTrip(c, d, factory);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testDictionary() {
+        byte[] dictionary = "abcdefgh".getBytes();
+        for (int i = 0; i < 4; i ++) {
+            ZlibCompressor c = (i & 1) != 0?
+                    new JdkZlibCompressor(ZlibWrapper.ZLIB, 6, dictionary) :
+                    new JZlibCompressor(ZlibWrapper.ZLIB, 6, dictionary);
+            ZlibDecompressor d = (i & 2) != 0?
+                    new JdkZlibDecompressor(ZlibWrapper.ZLIB, dictionary) :
+                    new JZlibDecompressor(ZlibWrapper.ZLIB, dictionary);
+            assertRoundTrip(c, d, HEAP);
+        }
+    }
+
+    private static void assertRoundTrip(
+            ZlibCompressor c, ZlibDecompressor d, ChannelBufferFactory factory) {
+        ChannelBuffer compressed = ChannelBuffers.dynamicBuffer();
+        for (int i = 0; i < DATA.length; i += 30000) {
+            ChannelBuffer in = factory.getBuffer(DATA, i, Math.min(30000, DATA.length - i));
+            compressed.writeBytes(c.compress(in, factory));
+            assertFalse(in.readable());
+        }
+        compressed.writeBytes(c.finish(factory));
+
+        // Decompress in small pieces to split the headers and the footers.
+        ChannelBuffer decompressed = ChannelBuffers.dynamicBuffer();
+        while (compressed.readable()) {
+            ChannelBuffer in = factory.getBuffer(Math.min(7, compressed.readableBytes()));
+            compressed.readBytes(in);
+            ChannelBuffer out = d.decompress(in, factory);
+            if (out != null) {
+                decompressed.writeBytes(out);
+            }
+        }
+        assertTrue(d.isFinished());
+        assertEquals(ChannelBuffers.wrappedBuffer(DATA), decompressed);
+    }
+
+    @Test
+    public void testGzipCompatibility() throws Exception {
+        // Netty -> java.util.zip
+        EncoderEmbedder<ChannelBuffer> encoder =
+            new EncoderEmbedder<ChannelBuffer>(new ZlibEncoder(ZlibWrapper.GZIP));
+        encoder.offer(ChannelBuffers.wrappedBuffer(DATA));
+        encoder.finish();
+        ChannelBuffer compressed = ChannelBuffers.wrappedBuffer(
+                encoder.pollAll(new ChannelBuffer[encoder.size()]));
+        byte[] array = new byte[compressed.readableBytes()];
+        compressed.getBytes(compressed.readerIndex(), array);
+        assertArrayEquals(DATA, readFully(new GZIPInputStream(new ByteArrayInputStream(array))));
+
+        // java.util.zip -> Netty, with the optional header fields
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(bout);
+        out.write(DATA);
+        out.close();
+        byte[] gzip = bout.toByteArray();
+        ChannelBuffer header = ChannelBuffers.dynamicBuffer();
+        header.writeBytes(gzip, 0, 3);
+        header.writeByte(0x04 | 0x08 | 0x10); // FEXTRA, FNAME and FCOMMENT
+        header.writeBytes(gzip, 4, 6);
+        header.writeByte(3);
+        header.writeByte(0);
+        header.writeBytes(new byte[] { 1, 2, 3 });
+        header.writeBytes("name\0comment\0".getBytes());
+
+        DecoderEmbedder<ChannelBuffer> decoder =
+            new DecoderEmbedder<ChannelBuffer>(new ZlibDecoder(ZlibWrapper.GZIP));
+        ChannelBuffer in = ChannelBuffers.wrappedBuffer(
+                header, ChannelBuffers.wrappedBuffer(gzip, 10, gzip.length - 10));
+        while (in.readable()) {
+            decoder.offer(in.readBytes(Math.min(5, in.readableBytes())));
+        }
+        assertEquals(
+                ChannelBuffers.wrappedBuffer(DATA),
+                ChannelBuffers.wrappedBuffer(decoder.pollAll(new ChannelBuffer[decoder.size()])));
+    }
+
+    @Test
+    public void testCorruptedGzipFooter() throws Exception {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(bout);
+        out.write(DATA);
+        out.close();
+        byte[] gzip = bout.toByteArray();
+        gzip[gzip.length - 8] ^= 1;
+
+        DecoderEmbedder<ChannelBuffer> decoder =
+            new DecoderEmbedder<ChannelBuffer>(new ZlibDecoder(ZlibWrapper.GZIP));
+        try {
+            decoder.offer(ChannelBuffers.wrappedBuffer(gzip));
+            if (ZlibUtil.isJdkZlibEnabled()) {
+                fail();
+            }
+        } catch (CodecEmbedderException e) {
+            assertTrue(e.getCause() instanceof CompressionException);
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        for (;;) {
+            int n = in.read(buf);
+            if (n < 0) {
+                break;
+            }
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.codec.frame;
+
+import static org.junit.Assert.*;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.buffer.PooledChannelBuffer;
+import org.jboss.netty.buffer.PooledChannelBufferFactory;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.embedder.CodecEmbedderException;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jboss.netty.util.CharsetUtil;
+import org.junit.Test;
+
+/**
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public class FrameDecoderTest {
+
+    @Test
+    public void testDelimiterCopyCumulation() {
+        testDelimiter(false);
+    }
+
+    @Test
+    public void testDelimiterCompositeCumulation() {
+        testDelimiter(true);
+    }
+
+    private static void testDelimiter(boolean composite) {
+        DelimiterBasedFrameDecoder decoder = new DelimiterBasedFrameDecoder(
+                8192, ChannelBuffers.copiedBuffer("\r\n", CharsetUtil.US_ASCII),
+                ChannelBuffers.copiedBuffer("\n", CharsetUtil.US_ASCII));
+        decoder.setCompositeCumulation(composite);
+        DecoderEmbedder<ChannelBuffer> embedder = new DecoderEmbedder<ChannelBuffer>(decoder);
+
+        // Split the input byte by byte, including the delimiters.
+        String input = "first\r\nsecond\nthird line is a bit longer\r\n\nlast";
+        for (int i = 0; i < input.length(); i ++) {
+            embedder.offer(ChannelBuffers.copiedBuffer(
+                    input.substring(i, i + 1), CharsetUtil.US_ASCII));
+        }
+        embedder.finish();
+
+        assertFrame("first", embedder.poll());
+        assertFrame("second", embedder.poll());
+        assertFrame("third line is a bit longer", embedder.poll());
+        assertFrame("", embedder.poll());
+        assertNull(embedder.poll());
+    }
+
+    @Test
+    public void testDelimiterTooLongFrame() {
+        DelimiterBasedFrameDecoder decoder = new DelimiterBasedFrameDecoder(
+                4, ChannelBuffers.copiedBuffer("\n", CharsetUtil.US_ASCII));
+        DecoderEmbedder<ChannelBuffer> embedder = new DecoderEmbedder<ChannelBuffer>(decoder);
+        try {
+            embedder.offer(ChannelBuffers.copiedBuffer("abc", CharsetUtil.US_ASCII));
+            embedder.offer(ChannelBuffers.copiedBuffer("defg\nhi", CharsetUtil.US_ASCII));
+            fail();
+        } catch (CodecEmbedderException e) {
+            assertTrue(e.getCause() instanceof TooLongFrameException);
+        }
+
+        embedder.offer(ChannelBuffers.copiedBuffer("\n", CharsetUtil.US_ASCII));
+        assertFrame("hi", embedder.poll());
+    }
+
+    @Test
+    public void testLengthFieldCopyCumulation() {
+        testLengthField(false);
+    }
+
+    @Test
+    public void testLengthFieldCompositeCumulation() {
+        testLengthField(true);
+    }
+
+    private static void testLengthField(boolean composite) {
+        LengthFieldBasedFrameDecoder decoder =
+            new LengthFieldBasedFrameDecoder(1048576, 0, 4, 0, 4);
+        decoder.setCompositeCumulation(composite);
+        DecoderEmbedder<ChannelBuffer> embedder = new DecoderEmbedder<ChannelBuffer>(decoder);
+
+        ChannelBuffer input = ChannelBuffers.dynamicBuffer();
+        for (int length: new int[] { 100000, 0, 3, 70000 }) {
+            input.writeInt(length);
+            for (int i = 0; i < length; i ++) {
+                input.writeByte(i);
+            }
+        }
+
+        // Odd-sized pieces so that the length fields are split as well.
+        while (input.readable()) {
+            embedder.offer(input.readBytes(Math.min(1021, input.readableBytes())));
+        }
+        embedder.finish();
+
+        for (int length: new int[] { 100000, 0, 3, 70000 }) {
+            ChannelBuffer frame = embedder.poll();
+            assertEquals(length, frame.readableBytes());
+            for (int i = 0; i < length; i ++) {
+                assertEquals((byte) i, frame.getByte(i));
+            }
+        }
+        assertNull(embedder.poll());
+    }
+
+    @Test
+    public void testPooledInputCopyCumulation() {
+        testPooledInput(false);
+    }
+
+    @Test
+    public void testPooledInputCompositeCumulation() {
+        testPooledInput(true);
+    }
+
+    private static void testPooledInput(boolean composite) {
+        PooledChannelBufferFactory factory = new PooledChannelBufferFactory(false);
+        LengthFieldBasedFrameDecoder decoder =
+            new LengthFieldBasedFrameDecoder(1048576, 0, 4, 0, 4);
+        decoder.setCompositeCumulation(composite);
+        DecoderEmbedder<ChannelBuffer> embedder = new DecoderEmbedder<ChannelBuffer>(decoder);
+
+        ChannelBuffer input = ChannelBuffers.dynamicBuffer();
+        for (int length: new int[] { 3000, 5, 0, 10 }) {
+            input.writeInt(length);
+            for (int i = 0; i < length; i ++) {
+                input.writeByte(i);
+            }
+        }
+
+        while (input.readable()) {
+            ChannelBuffer piece = factory.getBuffer(Math.min(509, input.readableBytes()));
+            assertTrue(piece instanceof PooledChannelBuffer);
+            piece.writeBytes(input, piece.writableBytes());
+            embedder.offer(piece);
+        }
+        embedder.finish();
+
+        // Every received buffer has been released, and the frames do not
+        // need to be released.
+        assertEquals(0, factory.getActiveBuffers());
+        for (int length: new int[] { 3000, 5, 0, 10 }) {
+            ChannelBuffer frame = embedder.poll();
+            assertFalse(frame instanceof PooledChannelBuffer);
+            assertEquals(length, frame.readableBytes());
+            for (int i = 0; i < length; i ++) {
+                assertEquals((byte) i, frame.getByte(i));
+            }
+        }
+        assertNull(embedder.poll());
+    }
+
+    @Test
+    public void testExpectedFrameLength() {
+        final int[] capacity = new int[1];
+        LengthFieldBasedFrameDecoder decoder = new LengthFieldBasedFrameDecoder(65536, 0, 4) {
+            @Override
+            protected Object decode(
+                    ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception {
+                capacity[0] = Math.max(capacity[0], buffer.capacity());
+                return super.decode(ctx, channel, buffer);
+            }
+        };
+        DecoderEmbedder<ChannelBuffer> embedder = new DecoderEmbedder<ChannelBuffer>(decoder);
+
+        ChannelBuffer input = ChannelBuffers.buffer(4 + 50000);
+        input.writeInt(50000);
+        input.writerIndex(input.capacity());
+        embedder.offer(input.readBytes(100));
+
+        // The cumulation buffer must have been sized for the whole frame.
+        embedder.offer(input.readBytes(100));
+        assertTrue(capacity[0] >= 4 + 50000);
+        assertTrue(capacity[0] < 2 * (4 + 50000));
+
+        embedder.offer(input);
+        assertEquals(4 + 50000, embedder.poll().readableBytes());
+    }
+
+    private static void assertFrame(String expected, ChannelBuffer frame) {
+        assertNotNull(frame);
+        assertEquals(expected, frame.toString(CharsetUtil.US_ASCII));
+    }
+}
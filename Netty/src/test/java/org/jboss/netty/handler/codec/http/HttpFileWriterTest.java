@@ -0,0 +1,285 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.codec.http;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.handler.stream.ChunkedWriteHandler;
+import org.jboss.netty.util.CharsetUtil;
+import org.jboss.netty.util.TestUtil;
+import org.jboss.netty.util.internal.ExecutorUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public class HttpFileWriterTest {
+
+    private static final int FILE_LENGTH = 100000;
+
+    private ExecutorService executor;
+    private File file;
+    private byte[] fileData;
+
+    @Before
+    public void init() throws Exception {
+        executor = Executors.newCachedThreadPool();
+
+        fileData = new byte[FILE_LENGTH];
+        new Random().nextBytes(fileData);
+        file = File.createTempFile("netty-", ".tmp");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(fileData);
+        out.close();
+    }
+
+    @After
+    public void destroy() {
+        ExecutorUtil.terminate(executor);
+        file.delete();
+    }
+
+    @Test
+    public void testZeroCopy() throws Exception {
+        Response res = get(false, null);
+        assertEquals(200, res.status);
+        assertEquals(String.valueOf(FILE_LENGTH), res.header("Content-Length"));
+        assertEquals("bytes", res.header("Accept-Ranges"));
+        assertTrue(Arrays.equals(fileData, res.content));
+    }
+
+    @Test
+    public void testRange() throws Exception {
+        Response res = get(false, "bytes=100-1099");
+        assertEquals(206, res.status);
+        assertEquals("bytes 100-1099/" + FILE_LENGTH, res.header("Content-Range"));
+        assertTrue(Arrays.equals(range(100, 1000), res.content));
+
+        res = get(false, "bytes=99000-");
+        assertEquals(206, res.status);
+        assertEquals("bytes 99000-99999/" + FILE_LENGTH, res.header("Content-Range"));
+        assertTrue(Arrays.equals(range(99000, 1000), res.content));
+
+        res = get(false, "bytes=-10");
+        assertEquals(206, res.status);
+        assertTrue(Arrays.equals(range(FILE_LENGTH - 10, 10), res.content));
+
+        res = get(false, "bytes=99990-200000");
+        assertEquals(206, res.status);
+        assertTrue(Arrays.equals(range(FILE_LENGTH - 10, 10), res.content));
+    }
+
+    @Test
+    public void testUnsatisfiableRange() throws Exception {
+        Response res = get(false, "bytes=" + FILE_LENGTH + "-");
+        assertEquals(416, res.status);
+        assertEquals("bytes */" + FILE_LENGTH, res.header("Content-Range"));
+        assertEquals(0, res.content.length);
+    }
+
+    @Test
+    public void testIgnoredRange() throws Exception {
+        Response res = get(false, "bytes=10-5");
+        assertEquals(200, res.status);
+        assertTrue(Arrays.equals(fileData, res.content));
+
+        res = get(false, "bytes=0-10,20-30");
+        assertEquals(200, res.status);
+        assertTrue(Arrays.equals(fileData, res.content));
+    }
+
+    @Test
+    public void testCompressorFallback() throws Exception {
+        Response res = get(true, "bytes=100-1099");
+        assertEquals(200, res.status);
+        assertEquals("chunked", res.header("Transfer-Encoding"));
+        assertEquals("gzip", res.header("Content-Encoding"));
+        assertEquals("none", res.header("Accept-Ranges"));
+        assertNull(res.header("Content-Length"));
+
+        GZIPInputStream in = new GZIPInputStream(
+                new ByteArrayInputStream(dechunk(res.content)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        for (;;) {
+            int n = in.read(buf);
+            if (n < 0) {
+                break;
+            }
+            out.write(buf, 0, n);
+        }
+        assertTrue(Arrays.equals(fileData, out.toByteArray()));
+    }
+
+    private byte[] range(int offset, int length) {
+        byte[] data = new byte[length];
+        System.arraycopy(fileData, offset, data, 0, length);
+        return data;
+    }
+
+    private Response get(boolean compress, String range) throws Exception {
+        ServerBootstrap sb = new ServerBootstrap(
+                new NioServerSocketChannelFactory(executor, executor));
+        sb.getPipeline().addLast("decoder", new HttpRequestDecoder());
+        sb.getPipeline().addLast("encoder", new HttpResponseEncoder());
+        if (compress) {
+            sb.getPipeline().addLast("compressor", new HttpContentCompressor());
+        }
+        sb.getPipeline().addLast("chunkedWriter", new ChunkedWriteHandler());
+        sb.getPipeline().addLast("handler", new SimpleChannelUpstreamHandler() {
+            @Override
+            public void messageReceived(ChannelHandlerContext ctx, MessageEvent e)
+                    throws Exception {
+                HttpRequest req = (HttpRequest) e.getMessage();
+                HttpResponse res = new DefaultHttpResponse(
+                        HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+                HttpFileWriter.write(
+                        e.getChannel(), req, res,
+                        new RandomAccessFile(file, "r")).addListener(
+                                ChannelFutureListener.CLOSE);
+            }
+
+            @Override
+            public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+                e.getCause().printStackTrace();
+                e.getChannel().close();
+            }
+        });
+
+        Channel sc = sb.bind(new InetSocketAddress(0));
+        int port = ((InetSocketAddress) sc.getLocalAddress()).getPort();
+        Socket s = new Socket(TestUtil.getLocalHost(), port);
+        try {
+            s.setSoTimeout(10000);
+            StringBuilder req = new StringBuilder();
+            req.append("GET /file HTTP/1.1\r\nHost: localhost\r\n");
+            if (compress) {
+                req.append("Accept-Encoding: gzip\r\n");
+            }
+            if (range != null) {
+                req.append("Range: ").append(range).append("\r\n");
+            }
+            req.append("\r\n");
+            OutputStream out = s.getOutputStream();
+            out.write(req.toString().getBytes("ASCII"));
+            out.flush();
+
+            ByteArrayOutputStream received = new ByteArrayOutputStream();
+            InputStream in = s.getInputStream();
+            byte[] buf = new byte[8192];
+            for (;;) {
+                int n = in.read(buf);
+                if (n < 0) {
+                    break;
+                }
+                received.write(buf, 0, n);
+            }
+            return new Response(received.toByteArray());
+        } finally {
+            s.close();
+            sc.close().awaitUninterruptibly();
+        }
+    }
+
+    private static byte[] dechunk(byte[] chunked) {
+        ChannelBuffer in = ChannelBuffers.wrappedBuffer(chunked);
+        ChannelBuffer out = ChannelBuffers.dynamicBuffer();
+        for (;;) {
+            String line = readLine(in);
+            int length = Integer.parseInt(line.trim(), 16);
+            if (length == 0) {
+                break;
+            }
+            out.writeBytes(in, length);
+            readLine(in);
+        }
+        byte[] data = new byte[out.readableBytes()];
+        out.readBytes(data);
+        return data;
+    }
+
+    private static String readLine(ChannelBuffer in) {
+        StringBuilder buf = new StringBuilder();
+        for (;;) {
+            char c = (char) in.readByte();
+            if (c == '\n') {
+                break;
+            }
+            if (c != '\r') {
+                buf.append(c);
+            }
+        }
+        return buf.toString();
+    }
+
+    private static final class Response {
+        final int status;
+        final String headers;
+        final byte[] content;
+
+        Response(byte[] data) {
+            int i = 0;
+            while (!(data[i] == '\r' && data[i + 1] == '\n' &&
+                     data[i + 2] == '\r' && data[i + 3] == '\n')) {
+                i ++;
+            }
+            headers = new String(data, 0, i + 2, CharsetUtil.US_ASCII);
+            status = Integer.parseInt(headers.substring(9, 12));
+            content = new byte[data.length - i - 4];
+            System.arraycopy(data, i + 4, content, 0, content.length);
+        }
+
+        String header(String name) {
+            for (String line: headers.split("\r\n")) {
+                int colon = line.indexOf(':');
+                if (colon > 0 && line.substring(0, colon).equalsIgnoreCase(name)) {
+                    return line.substring(colon + 1).trim();
+                }
+            }
+            return null;
+        }
+    }
+}
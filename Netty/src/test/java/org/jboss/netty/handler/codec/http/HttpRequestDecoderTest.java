@@ -0,0 +1,179 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.codec.http;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.embedder.CodecEmbedderException;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jboss.netty.handler.codec.embedder.EncoderEmbedder;
+import org.jboss.netty.handler.codec.frame.TooLongFrameException;
+import org.jboss.netty.util.CharsetUtil;
+import org.junit.Test;
+
+/**
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public class HttpRequestDecoderTest {
+
+    private static final String REQUEST =
+        "GET /index.html HTTP/1.1\r\n" +
+        "Host: localhost\r\n" +
+        "content-type: text/plain\r\n" +
+        "X-Custom:   a  \r\n" +
+        "Folded: first\r\n" +
+        " \t second\r\n" +
+        "X-Custom: b\n" +
+        "Empty:\r\n" +
+        "Content-Length: 5\r\n" +
+        "\r\n" +
+        "hello";
+
+    @Test
+    public void testDecode() {
+        assertRequest(decode(toBytes(REQUEST), 0));
+    }
+
+    @Test
+    public void testDecodeByteByByte() {
+        assertRequest(decode(toBytes(REQUEST), 1));
+    }
+
+    @Test
+    public void testDecodeFragmented() {
+        assertRequest(decode(toBytes(REQUEST), 7));
+    }
+
+    private static void assertRequest(HttpRequest req) {
+        assertEquals(HttpMethod.GET, req.getMethod());
+        assertEquals("/index.html", req.getUri());
+        assertEquals("localhost", req.getHeader(HttpHeaders.Names.HOST));
+        assertEquals("text/plain", req.getHeader(HttpHeaders.Names.CONTENT_TYPE));
+        assertEquals(Arrays.asList("a", "b"), req.getHeaders("x-custom"));
+        assertEquals("first second", req.getHeader("Folded"));
+        assertEquals("", req.getHeader("Empty"));
+        assertEquals(5, HttpHeaders.getContentLength(req));
+        assertEquals("hello", req.getContent().toString(CharsetUtil.US_ASCII));
+
+        // The original case of the names and the order are preserved.
+        List<Map.Entry<String, String>> headers = req.getHeaders();
+        assertEquals(7, headers.size());
+        assertEquals("Host", headers.get(0).getKey());
+        assertEquals("content-type", headers.get(1).getKey());
+        assertEquals("X-Custom", headers.get(2).getKey());
+        assertEquals("Folded", headers.get(3).getKey());
+        assertEquals("X-Custom", headers.get(4).getKey());
+        assertEquals("b", headers.get(4).getValue());
+    }
+
+    @Test
+    public void testEncodeDecodedRequest() {
+        HttpRequest req = decode(toBytes(REQUEST), 0);
+        req.setHeader("X-New", "new");
+        req.removeHeader("Folded");
+
+        EncoderEmbedder<ChannelBuffer> encoder =
+            new EncoderEmbedder<ChannelBuffer>(new HttpRequestEncoder());
+        encoder.offer(req);
+        ChannelBuffer buf = ChannelBuffers.wrappedBuffer(
+                encoder.pollAll(new ChannelBuffer[encoder.size()]));
+        assertEquals(
+                "GET /index.html HTTP/1.1\r\n" +
+                "Host: localhost\r\n" +
+                "content-type: text/plain\r\n" +
+                "X-Custom: a\r\n" +
+                "X-Custom: b\r\n" +
+                "Empty: \r\n" +
+                "Content-Length: 5\r\n" +
+                "X-New: new\r\n" +
+                "\r\n" +
+                "hello",
+                buf.toString(CharsetUtil.ISO_8859_1));
+    }
+
+    @Test
+    public void testTrailingHeaders() {
+        HttpRequestDecoder decoder = new HttpRequestDecoder();
+        DecoderEmbedder<Object> embedder = new DecoderEmbedder<Object>(decoder);
+        embedder.offer(ChannelBuffers.wrappedBuffer(toBytes(
+                "POST / HTTP/1.1\r\n" +
+                "Transfer-Encoding: chunked\r\n" +
+                "\r\n" +
+                "3\r\nabc\r\n" +
+                "0\r\n" +
+                "Content-Length: 100\r\n" +
+                " continued\r\n" +
+                "X-Trailer: a\r\n" +
+                " b\r\n" +
+                "\r\n")));
+
+        HttpRequest req = (HttpRequest) embedder.poll();
+        assertTrue(req.isChunked());
+        HttpChunk chunk = (HttpChunk) embedder.poll();
+        assertEquals("abc", chunk.getContent().toString(CharsetUtil.US_ASCII));
+        HttpChunkTrailer trailer = (HttpChunkTrailer) embedder.poll();
+        assertNull(trailer.getHeader(HttpHeaders.Names.CONTENT_LENGTH));
+        assertEquals("a b", trailer.getHeader("X-Trailer"));
+        assertEquals(1, trailer.getHeaders().size());
+    }
+
+    @Test
+    public void testTooLongHeader() {
+        DecoderEmbedder<Object> embedder =
+            new DecoderEmbedder<Object>(new HttpRequestDecoder(4096, 64, 8192));
+        StringBuilder buf = new StringBuilder("GET / HTTP/1.1\r\nX-Long: ");
+        for (int i = 0; i < 100; i ++) {
+            buf.append('a');
+        }
+        try {
+            embedder.offer(ChannelBuffers.wrappedBuffer(toBytes(buf.toString())));
+            fail();
+        } catch (CodecEmbedderException e) {
+            assertTrue(e.getCause() instanceof TooLongFrameException);
+        }
+    }
+
+    private static HttpRequest decode(byte[] data, int fragmentSize) {
+        DecoderEmbedder<HttpRequest> embedder =
+            new DecoderEmbedder<HttpRequest>(new HttpRequestDecoder());
+        if (fragmentSize == 0) {
+            embedder.offer(ChannelBuffers.wrappedBuffer(data));
+        } else {
+            for (int i = 0; i < data.length; i += fragmentSize) {
+                embedder.offer(ChannelBuffers.wrappedBuffer(
+                        data, i, Math.min(fragmentSize, data.length - i)));
+            }
+        }
+        assertTrue(embedder.finish());
+        return embedder.poll();
+    }
+
+    private static byte[] toBytes(String s) {
+        byte[] data = new byte[s.length()];
+        for (int i = 0; i < data.length; i ++) {
+            data[i] = (byte) s.charAt(i);
+        }
+        return data;
+    }
+}
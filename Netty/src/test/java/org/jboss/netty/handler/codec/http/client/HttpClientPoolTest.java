@@ -0,0 +1,316 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.codec.http.client;
+
+import static org.junit.Assert.*;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.handler.codec.http.DefaultHttpRequest;
+import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpRequestDecoder;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseEncoder;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.jboss.netty.util.CharsetUtil;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.TestUtil;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.TimerTask;
+import org.jboss.netty.util.internal.ExecutorUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public class HttpClientPoolTest {
+
+    private ExecutorService executor;
+    private HashedWheelTimer timer;
+    private ServerBootstrap sb;
+    private Channel serverChannel;
+    private InetSocketAddress address;
+    private HttpClientPool pool;
+
+    final AtomicInteger accepted = new AtomicInteger();
+    final AtomicInteger maxPipelined = new AtomicInteger();
+    volatile boolean closeAfterResponse;
+    volatile boolean dropSecondRequest;
+
+    @Before
+    public void init() {
+        executor = Executors.newCachedThreadPool();
+        timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS);
+        sb = new ServerBootstrap(new NioServerSocketChannelFactory(executor, executor));
+        sb.setPipelineFactory(new ChannelPipelineFactory() {
+            public ChannelPipeline getPipeline() {
+                return Channels.pipeline(
+                        new HttpRequestDecoder(), new HttpResponseEncoder(), new ServerHandler());
+            }
+        });
+        serverChannel = sb.bind(new InetSocketAddress(0));
+        int port = ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+        address = new InetSocketAddress(TestUtil.getLocalHost(), port);
+    }
+
+    @After
+    public void destroy() {
+        if (pool != null) {
+            pool.close();
+        }
+        serverChannel.close().awaitUninterruptibly();
+        timer.stop();
+        ExecutorUtil.terminate(executor);
+    }
+
+    private HttpClientPool newPool(int maxConnectionsPerHost, int maxPipelineDepth, long idleTimeoutMillis) {
+        pool = new HttpClientPool(
+                new NioClientSocketChannelFactory(executor, executor), null, timer,
+                maxConnectionsPerHost, maxPipelineDepth,
+                idleTimeoutMillis, TimeUnit.MILLISECONDS, 65536);
+        pool.setOption("tcpNoDelay", true);
+        return pool;
+    }
+
+    private static HttpRequest newRequest(HttpMethod method, String uri) {
+        return new DefaultHttpRequest(HttpVersion.HTTP_1_1, method, uri);
+    }
+
+    private static String content(HttpResponseFuture f) throws Exception {
+        assertTrue(f.await(10, TimeUnit.SECONDS));
+        if (!f.isSuccess()) {
+            throw new AssertionError(f.getCause());
+        }
+        return f.getResponse().getContent().toString(CharsetUtil.UTF_8);
+    }
+
+    private void waitForConnectionCount(int expected) throws InterruptedException {
+        for (int i = 0; i < 500 && pool.getConnectionCount(address) != expected; i ++) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, pool.getConnectionCount(address));
+    }
+
+    @Test
+    public void testConnectionReuse() throws Exception {
+        newPool(4, 1, 60000);
+        for (int i = 0; i < 10; i ++) {
+            assertEquals("/" + i, content(pool.execute(address, newRequest(HttpMethod.GET, "/" + i))));
+        }
+        assertEquals(1, accepted.get());
+        assertEquals(1, pool.getConnectionCount(address));
+    }
+
+    @Test
+    public void testMaxConnectionsPerHost() throws Exception {
+        newPool(2, 1, 60000);
+        List<HttpResponseFuture> futures = new ArrayList<HttpResponseFuture>();
+        for (int i = 0; i < 50; i ++) {
+            futures.add(pool.execute(address, newRequest(HttpMethod.POST, "/" + i)));
+        }
+        for (int i = 0; i < 50; i ++) {
+            assertEquals("/" + i, content(futures.get(i)));
+        }
+        assertTrue(accepted.get() <= 2);
+        assertEquals(1, maxPipelined.get());
+    }
+
+    @Test
+    public void testPipelining() throws Exception {
+        newPool(1, 8, 60000);
+        List<HttpResponseFuture> futures = new ArrayList<HttpResponseFuture>();
+        for (int i = 0; i < 100; i ++) {
+            futures.add(pool.execute(address, newRequest(HttpMethod.GET, "/" + i)));
+        }
+        for (int i = 0; i < 100; i ++) {
+            assertEquals("/" + i, content(futures.get(i)));
+        }
+        assertEquals(1, accepted.get());
+        assertTrue(maxPipelined.get() > 1);
+        assertTrue(maxPipelined.get() <= 8);
+    }
+
+    @Test
+    public void testConnectionClose() throws Exception {
+        closeAfterResponse = true;
+        newPool(4, 1, 60000);
+        assertEquals("/a", content(pool.execute(address, newRequest(HttpMethod.GET, "/a"))));
+        assertEquals("/b", content(pool.execute(address, newRequest(HttpMethod.GET, "/b"))));
+        assertEquals(2, accepted.get());
+        waitForConnectionCount(0);
+    }
+
+    @Test
+    public void testIdleConnectionIsClosed() throws Exception {
+        newPool(4, 1, 100);
+        assertEquals("/", content(pool.execute(address, newRequest(HttpMethod.GET, "/"))));
+        assertEquals(1, pool.getConnectionCount(address));
+        waitForConnectionCount(0);
+    }
+
+    @Test
+    public void testIdempotentRequestIsRetried() throws Exception {
+        dropSecondRequest = true;
+        newPool(1, 1, 60000);
+        assertEquals("/1", content(pool.execute(address, newRequest(HttpMethod.GET, "/1"))));
+        assertEquals("/2", content(pool.execute(address, newRequest(HttpMethod.GET, "/2"))));
+        assertEquals(2, accepted.get());
+
+        HttpResponseFuture f = pool.execute(address, newRequest(HttpMethod.POST, "/3"));
+        assertTrue(f.await(10, TimeUnit.SECONDS));
+        assertFalse(f.isSuccess());
+        assertNotNull(f.getCause());
+    }
+
+    @Test
+    public void testUnreachableHost() throws Exception {
+        newPool(2, 1, 60000);
+        serverChannel.close().awaitUninterruptibly();
+        HttpResponseFuture f1 = pool.execute(address, newRequest(HttpMethod.GET, "/1"));
+        HttpResponseFuture f2 = pool.execute(address, newRequest(HttpMethod.GET, "/2"));
+        HttpResponseFuture f3 = pool.execute(address, newRequest(HttpMethod.GET, "/3"));
+        for (HttpResponseFuture f: new HttpResponseFuture[] { f1, f2, f3 }) {
+            assertTrue(f.await(10, TimeUnit.SECONDS));
+            assertFalse(f.isSuccess());
+        }
+        waitForConnectionCount(0);
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        newPool(2, 1, 60000);
+        assertEquals("/", content(pool.execute(address, newRequest(HttpMethod.GET, "/"))));
+        pool.close();
+        waitForConnectionCount(0);
+
+        HttpResponseFuture f = pool.execute(address, newRequest(HttpMethod.GET, "/"));
+        assertTrue(f.isDone());
+        assertFalse(f.isSuccess());
+    }
+
+    @Test
+    public void testListener() throws Exception {
+        newPool(2, 1, 60000);
+        final List<HttpResponse> responses = new ArrayList<HttpResponse>();
+        HttpResponseFuture f = pool.execute(address, newRequest(HttpMethod.GET, "/"));
+        f.awaitUninterruptibly();
+        f.addListener(new HttpResponseFutureListener() {
+            public void operationComplete(HttpResponseFuture future) {
+                responses.add(future.getResponse());
+            }
+        });
+        assertEquals(1, responses.size());
+        assertSame(f.getResponse(), responses.get(0));
+        assertTrue(f.getRequest().getHeader(HttpHeaders.Names.HOST).endsWith(":" + address.getPort()));
+    }
+
+    /**
+     * Answers the requests received within 5 milliseconds together, so
+     * that the pipelined requests can be counted.
+     */
+    private final class ServerHandler extends SimpleChannelUpstreamHandler implements TimerTask {
+
+        private final List<HttpRequest> received = new ArrayList<HttpRequest>();
+        private volatile Channel channel;
+        private int requests;
+
+        ServerHandler() {
+            super();
+        }
+
+        @Override
+        public void channelOpen(ChannelHandlerContext ctx, ChannelStateEvent e) {
+            channel = e.getChannel();
+            accepted.incrementAndGet();
+        }
+
+        @Override
+        public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+            if (++ requests == 2 && dropSecondRequest) {
+                e.getChannel().close();
+                return;
+            }
+
+            int n;
+            synchronized (received) {
+                received.add((HttpRequest) e.getMessage());
+                n = received.size();
+            }
+            for (;;) {
+                int max = maxPipelined.get();
+                if (n <= max || maxPipelined.compareAndSet(max, n)) {
+                    break;
+                }
+            }
+            if (n == 1) {
+                timer.newTimeout(this, 5, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        public void run(Timeout timeout) {
+            List<HttpRequest> requests;
+            synchronized (received) {
+                requests = new ArrayList<HttpRequest>(received);
+                received.clear();
+            }
+
+            for (HttpRequest request: requests) {
+                HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+                response.setContent(ChannelBuffers.copiedBuffer(request.getUri(), CharsetUtil.UTF_8));
+                HttpHeaders.setContentLength(response, response.getContent().readableBytes());
+                if (closeAfterResponse) {
+                    response.setHeader(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.CLOSE);
+                    channel.write(response).addListener(ChannelFutureListener.CLOSE);
+                    return;
+                }
+                channel.write(response);
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+            e.getChannel().close();
+        }
+    }
+}
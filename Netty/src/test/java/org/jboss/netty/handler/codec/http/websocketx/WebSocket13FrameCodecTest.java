@@ -0,0 +1,326 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.codec.http.websocketx;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.embedder.CodecEmbedderException;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jboss.netty.handler.codec.embedder.EncoderEmbedder;
+import org.jboss.netty.handler.codec.frame.CorruptedFrameException;
+import org.jboss.netty.handler.codec.frame.TooLongFrameException;
+import org.jboss.netty.util.CharsetUtil;
+import org.junit.Test;
+
+/**
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public class WebSocket13FrameCodecTest {
+
+    private static ChannelBuffer bytes(int... values) {
+        byte[] a = new byte[values.length];
+        for (int i = 0; i < a.length; i ++) {
+            a[i] = (byte) values[i];
+        }
+        return ChannelBuffers.wrappedBuffer(a);
+    }
+
+    private static ChannelBuffer payload(int length) {
+        byte[] a = new byte[length];
+        for (int i = 0; i < a.length; i ++) {
+            a[i] = (byte) (i * 31 + 7);
+        }
+        return ChannelBuffers.wrappedBuffer(a);
+    }
+
+    private static ChannelBuffer encode(boolean mask, WebSocketFrame... frames) {
+        EncoderEmbedder<ChannelBuffer> encoder = new EncoderEmbedder<ChannelBuffer>(
+                new WebSocket13FrameEncoder(mask));
+        List<ChannelBuffer> out = new ArrayList<ChannelBuffer>();
+        for (WebSocketFrame f: frames) {
+            encoder.offer(f);
+            out.add(encoder.poll());
+        }
+        return ChannelBuffers.wrappedBuffer(out.toArray(new ChannelBuffer[out.size()]));
+    }
+
+    private static List<WebSocketFrame> decode(
+            WebSocket13FrameDecoder decoder, ChannelBuffer in, int pieceSize) {
+        DecoderEmbedder<WebSocketFrame> embedder = new DecoderEmbedder<WebSocketFrame>(decoder);
+        List<WebSocketFrame> frames = new ArrayList<WebSocketFrame>();
+        while (in.readable()) {
+            embedder.offer(in.readBytes(Math.min(pieceSize, in.readableBytes())));
+            for (;;) {
+                WebSocketFrame f = embedder.poll();
+                if (f == null) {
+                    break;
+                }
+                frames.add(f);
+            }
+        }
+        return frames;
+    }
+
+    private static WebSocketFrame decodeOne(boolean masked, ChannelBuffer in) {
+        List<WebSocketFrame> frames = decode(
+                new WebSocket13FrameDecoder(masked, false), in, Integer.MAX_VALUE);
+        assertEquals(1, frames.size());
+        return frames.get(0);
+    }
+
+    private static Throwable decodeFailure(WebSocket13FrameDecoder decoder, ChannelBuffer in) {
+        DecoderEmbedder<WebSocketFrame> embedder = new DecoderEmbedder<WebSocketFrame>(decoder);
+        try {
+            embedder.offer(in);
+        } catch (CodecEmbedderException e) {
+            // The rest of the input is discarded.
+            embedder.pollAll();
+            embedder.offer(encode(true, new DefaultWebSocketFrame("after")));
+            assertNull(embedder.poll());
+            return e.getCause();
+        }
+        fail();
+        return null;
+    }
+
+    @Test
+    public void testUnmaskedHello() {
+        ChannelBuffer hello = bytes(0x81, 0x05, 0x48, 0x65, 0x6c, 0x6c, 0x6f);
+        assertEquals(hello, encode(false, new DefaultWebSocketFrame("Hello")));
+
+        WebSocketFrame f = decodeOne(false, hello);
+        assertEquals(WebSocketOpcode.TEXT, f.getOpcode());
+        assertTrue(f.isFinalFragment());
+        assertEquals(0, f.getRsv());
+        assertEquals("Hello", f.getTextData());
+    }
+
+    @Test
+    public void testMaskedHello() {
+        WebSocketFrame f = decodeOne(true, bytes(
+                0x81, 0x85, 0x37, 0xfa, 0x21, 0x3d, 0x7f, 0x9f, 0x4d, 0x51, 0x58));
+        assertEquals(WebSocketOpcode.TEXT, f.getOpcode());
+        assertEquals("Hello", f.getTextData());
+    }
+
+    @Test
+    public void testPayloadLengths() {
+        int[] lengths = { 0, 1, 7, 8, 9, 125, 126, 1024, 1025, 65535, 65536 };
+        for (boolean mask: new boolean[] { false, true }) {
+            for (int length: lengths) {
+                ChannelBuffer data = payload(length);
+                ChannelBuffer encoded = encode(
+                        mask, new DefaultWebSocketFrame(WebSocketOpcode.BINARY, data));
+                int headerLength = length <= 125? 2 : length <= 65535? 4 : 10;
+                if (mask) {
+                    headerLength += 4;
+                }
+                assertEquals(headerLength + length, encoded.readableBytes());
+                assertEquals(0, data.readerIndex());
+
+                List<WebSocketFrame> frames = decode(
+                        new WebSocket13FrameDecoder(mask, false, 65536, 65536),
+                        encoded, 1000);
+                assertEquals(1, frames.size());
+                assertEquals(WebSocketOpcode.BINARY, frames.get(0).getOpcode());
+                assertEquals(data, frames.get(0).getBinaryData());
+            }
+        }
+    }
+
+    @Test
+    public void testMaskingAtEveryOffset() {
+        ChannelBuffer src = payload(37);
+        int mask = 0x37fa213d;
+        byte[] key = { 0x37, (byte) 0xfa, 0x21, 0x3d };
+        for (int offset = 0; offset < 4; offset ++) {
+            for (int length = 0; length <= 21; length ++) {
+                ChannelBuffer dst = ChannelBuffers.buffer(length);
+                WebSocketMasking.mask(src, 3, dst, 0, length, mask, offset);
+                for (int i = 0; i < length; i ++) {
+                    assertEquals(
+                            (byte) (src.getByte(3 + i) ^ key[(offset + i) % 4]),
+                            dst.getByte(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLargeFrameIsStreamed() {
+        ChannelBuffer data = payload(20000);
+        ChannelBuffer encoded = encode(
+                true, new DefaultWebSocketFrame(WebSocketOpcode.BINARY, false, 0, data),
+                new DefaultWebSocketFrame(WebSocketOpcode.PING, bytes(1, 2, 3)),
+                new DefaultWebSocketFrame(WebSocketOpcode.CONTINUATION, payload(5)));
+
+        // Pieces not aligned to the masking key.
+        List<WebSocketFrame> frames = decode(
+                new WebSocket13FrameDecoder(true, false, 65536, 8192), encoded, 333);
+        ChannelBuffer received = ChannelBuffers.dynamicBuffer();
+        int i = 0;
+        for (; frames.get(i).getOpcode() != WebSocketOpcode.PING; i ++) {
+            WebSocketFrame f = frames.get(i);
+            assertEquals(i == 0? WebSocketOpcode.BINARY : WebSocketOpcode.CONTINUATION, f.getOpcode());
+            assertFalse(f.isFinalFragment());
+            assertTrue(f.getBinaryData().readableBytes() <= 8192);
+            received.writeBytes(f.getBinaryData());
+        }
+        assertTrue(i > 1);
+        assertEquals(data, received);
+
+        assertEquals(bytes(1, 2, 3), frames.get(i).getBinaryData());
+        assertEquals(i + 2, frames.size());
+        WebSocketFrame last = frames.get(i + 1);
+        assertEquals(WebSocketOpcode.CONTINUATION, last.getOpcode());
+        assertTrue(last.isFinalFragment());
+        assertEquals(payload(5), last.getBinaryData());
+    }
+
+    @Test
+    public void testSmallFramesDecodedByteByByte() {
+        ChannelBuffer encoded = encode(
+                true, new DefaultWebSocketFrame("a"), new DefaultWebSocketFrame(""),
+                new DefaultWebSocketFrame(WebSocketOpcode.BINARY, payload(300)));
+        List<WebSocketFrame> frames = decode(
+                new WebSocket13FrameDecoder(true, false), encoded, 1);
+        assertEquals(3, frames.size());
+        assertEquals("a", frames.get(0).getTextData());
+        assertEquals("", frames.get(1).getTextData());
+        assertEquals(payload(300), frames.get(2).getBinaryData());
+    }
+
+    @Test
+    public void testProtocolViolations() {
+        // Reserved opcode
+        assertTrue(decodeFailure(new WebSocket13FrameDecoder(true, false),
+                bytes(0x83, 0x80, 0, 0, 0, 0)) instanceof CorruptedFrameException);
+        // Unmasked frame from a client
+        assertTrue(decodeFailure(new WebSocket13FrameDecoder(true, false),
+                bytes(0x81, 0x00)) instanceof CorruptedFrameException);
+        // Reserved bits without an extension
+        assertTrue(decodeFailure(new WebSocket13FrameDecoder(true, false),
+                bytes(0xC1, 0x80, 0, 0, 0, 0)) instanceof CorruptedFrameException);
+        // Fragmented control frame
+        assertTrue(decodeFailure(new WebSocket13FrameDecoder(true, false),
+                bytes(0x09, 0x80, 0, 0, 0, 0)) instanceof CorruptedFrameException);
+        // Control frame longer than 125 bytes
+        assertTrue(decodeFailure(new WebSocket13FrameDecoder(true, false),
+                bytes(0x89, 0xFE, 0x00, 0x7E, 0, 0, 0, 0)) instanceof CorruptedFrameException);
+        // Non-minimal length
+        assertTrue(decodeFailure(new WebSocket13FrameDecoder(true, false),
+                bytes(0x82, 0xFE, 0x00, 0x05, 0, 0, 0, 0)) instanceof CorruptedFrameException);
+        // Continuation without a message
+        assertTrue(decodeFailure(new WebSocket13FrameDecoder(true, false),
+                bytes(0x80, 0x80, 0, 0, 0, 0)) instanceof CorruptedFrameException);
+        // New message before the previous one is finished
+        assertTrue(decodeFailure(new WebSocket13FrameDecoder(true, false),
+                bytes(0x01, 0x80, 0, 0, 0, 0, 0x81, 0x80, 0, 0, 0, 0)) instanceof CorruptedFrameException);
+        // Too long
+        assertTrue(decodeFailure(new WebSocket13FrameDecoder(true, false, 1000, 8192),
+                bytes(0x82, 0xFE, 0x03, 0xE9, 0, 0, 0, 0)) instanceof TooLongFrameException);
+    }
+
+    @Test
+    public void testDeflateHello() {
+        EncoderEmbedder<WebSocketFrame> encoder = new EncoderEmbedder<WebSocketFrame>(
+                new PerMessageDeflateEncoder(6, false, 0));
+        encoder.offer(new DefaultWebSocketFrame("Hello"));
+        WebSocketFrame f = encoder.poll();
+        assertEquals(WebSocketOpcode.TEXT, f.getOpcode());
+        assertEquals(4, f.getRsv());
+        assertEquals(bytes(0xf2, 0x48, 0xcd, 0xc9, 0xc9, 0x07, 0x00), f.getBinaryData());
+
+        // The example of a compressed message in two fragments
+        DecoderEmbedder<WebSocketFrame> decoder = new DecoderEmbedder<WebSocketFrame>(
+                new PerMessageDeflateDecoder(false));
+        decoder.offer(new DefaultWebSocketFrame(
+                WebSocketOpcode.TEXT, false, 4, bytes(0xf2, 0x48, 0xcd)));
+        decoder.offer(new DefaultWebSocketFrame(
+                WebSocketOpcode.CONTINUATION, true, 0, bytes(0xc9, 0xc9, 0x07, 0x00)));
+        ChannelBuffer received = ChannelBuffers.dynamicBuffer();
+        for (WebSocketFrame d: decoder.pollAll(new WebSocketFrame[0])) {
+            assertEquals(0, d.getRsv());
+            received.writeBytes(d.getBinaryData());
+        }
+        assertEquals("Hello", received.toString(CharsetUtil.UTF_8));
+    }
+
+    @Test
+    public void testDeflateRoundTrip() {
+        for (boolean noContextTakeover: new boolean[] { false, true }) {
+            EncoderEmbedder<ChannelBuffer> encoder = new EncoderEmbedder<ChannelBuffer>(
+                    new WebSocket13FrameEncoder(true),
+                    new PerMessageDeflateEncoder(6, noContextTakeover, 16));
+            DecoderEmbedder<WebSocketFrame> decoder = new DecoderEmbedder<WebSocketFrame>(
+                    new WebSocket13FrameDecoder(true, true),
+                    new PerMessageDeflateDecoder(noContextTakeover));
+
+            String[] messages = {
+                    "Hello, World! Hello, World! Hello, World!", "tiny", "",
+                    "Hello, World! Hello, World! Hello, World!" };
+            for (String m: messages) {
+                encoder.offer(new DefaultWebSocketFrame(m));
+                decoder.offer(encoder.poll());
+                WebSocketFrame f = decoder.poll();
+                assertEquals(WebSocketOpcode.TEXT, f.getOpcode());
+                assertEquals(0, f.getRsv());
+                assertEquals(m, f.getTextData());
+            }
+
+            // A fragmented message with a ping in the middle
+            ChannelBuffer data = payload(50000);
+            encoder.offer(new DefaultWebSocketFrame(
+                    WebSocketOpcode.BINARY, false, 0, data.slice(0, 20000)));
+            encoder.offer(new DefaultWebSocketFrame(WebSocketOpcode.PING, bytes(1)));
+            encoder.offer(new DefaultWebSocketFrame(
+                    WebSocketOpcode.CONTINUATION, true, 0, data.slice(20000, 30000)));
+            for (ChannelBuffer b: encoder.pollAll(new ChannelBuffer[0])) {
+                decoder.offer(b);
+            }
+            ChannelBuffer received = ChannelBuffers.dynamicBuffer();
+            boolean pinged = false;
+            for (WebSocketFrame f: decoder.pollAll(new WebSocketFrame[0])) {
+                if (f.getOpcode() == WebSocketOpcode.PING) {
+                    pinged = true;
+                } else {
+                    received.writeBytes(f.getBinaryData());
+                }
+            }
+            assertTrue(pinged);
+            assertEquals(data, received);
+
+            encoder.finish();
+            decoder.finish();
+        }
+    }
+
+    @Test
+    public void testSmallMessageIsNotCompressed() {
+        EncoderEmbedder<WebSocketFrame> encoder = new EncoderEmbedder<WebSocketFrame>(
+                new PerMessageDeflateEncoder(false));
+        WebSocketFrame frame = new DefaultWebSocketFrame("tiny");
+        encoder.offer(frame);
+        assertSame(frame, encoder.poll());
+    }
+}
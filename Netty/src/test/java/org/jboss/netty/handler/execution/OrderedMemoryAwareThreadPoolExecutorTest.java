@@ -0,0 +1,129 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.execution;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jboss.netty.util.internal.ExecutorUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public class OrderedMemoryAwareThreadPoolExecutorTest {
+
+    private static final int CHANNELS = 64;
+    private static final int MESSAGES = 1000;
+
+    private OrderedMemoryAwareThreadPoolExecutor executor;
+
+    @Before
+    public void init() {
+        executor = new OrderedMemoryAwareThreadPoolExecutor(8, 0, 0);
+    }
+
+    @After
+    public void destroy() {
+        ExecutorUtil.terminate(executor);
+    }
+
+    @Test
+    public void testEventOrder() throws Exception {
+        testEventOrder(new ExecutionHandler(executor));
+    }
+
+    @Test
+    public void testEventOrderWithMemoryLimit() throws Exception {
+        executor.setMaxChannelMemorySize(1024 * 1024);
+        executor.setMaxTotalMemorySize(16 * 1024 * 1024);
+        testEventOrder(new ExecutionHandler(executor));
+    }
+
+    @Test
+    public void testEventOrderWithCustomKey() throws Exception {
+        executor = new OrderedMemoryAwareThreadPoolExecutor(8, 0, 0) {
+            @Override
+            protected Object getChildExecutorKey(ChannelEvent e) {
+                return e.getChannel().getId();
+            }
+        };
+        testEventOrder(new ExecutionHandler(executor));
+        assertFalse(executor.getChildExecutorKeySet().isEmpty());
+    }
+
+    private void testEventOrder(ExecutionHandler executionHandler) throws Exception {
+        CountDownLatch latch = new CountDownLatch(CHANNELS);
+        AtomicReference<String> failure = new AtomicReference<String>();
+
+        @SuppressWarnings("unchecked")
+        DecoderEmbedder<Object>[] embedders = new DecoderEmbedder[CHANNELS];
+        for (int i = 0; i < CHANNELS; i ++) {
+            embedders[i] = new DecoderEmbedder<Object>(
+                    executionHandler, new OrderVerifier(latch, failure));
+        }
+
+        for (int i = 0; i < MESSAGES; i ++) {
+            for (DecoderEmbedder<Object> e: embedders) {
+                e.offer(Integer.valueOf(i));
+            }
+        }
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertNull(failure.get());
+    }
+
+    @Test
+    public void testChildExecutorIsAttached() throws Exception {
+        testEventOrder(new ExecutionHandler(executor));
+        assertTrue(executor.getChildExecutorKeySet().isEmpty());
+    }
+
+    private static final class OrderVerifier extends SimpleChannelUpstreamHandler {
+        private final CountDownLatch latch;
+        private final AtomicReference<String> failure;
+        private volatile int expected;
+
+        OrderVerifier(CountDownLatch latch, AtomicReference<String> failure) {
+            this.latch = latch;
+            this.failure = failure;
+        }
+
+        @Override
+        public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+            int actual = ((Integer) e.getMessage()).intValue();
+            if (actual != expected) {
+                failure.compareAndSet(null, "expected: " + expected + ", actual: " + actual);
+            }
+            expected = actual + 1;
+            if (expected == MESSAGES) {
+                latch.countDown();
+            }
+        }
+    }
+}
@@ -90,6 +90,10 @@ public abstract class AbstractSocketSslEchoTest {
         return false;
     }
 
+    protected boolean isBatching() {
+        return false;
+    }
+
     @Test
     public void testSslEcho() throws Throwable {
         ServerBootstrap sb = new ServerBootstrap(newServerSocketChannelFactory(executor));
@@ -107,9 +111,14 @@ public abstract class AbstractSocketSslEchoTest {
         sb.setOption("receiveBufferSize", 1048576);
         sb.setOption("receiveBufferSize", 1048576);
 
-        sb.getPipeline().addFirst("ssl", new SslHandler(sse));
+        SslHandler ssh = new SslHandler(sse);
+        SslHandler csh = new SslHandler(cse);
+        ssh.setBatching(isBatching());
+        csh.setBatching(isBatching());
+
+        sb.getPipeline().addFirst("ssl", ssh);
         sb.getPipeline().addLast("handler", sh);
-        cb.getPipeline().addFirst("ssl", new SslHandler(cse));
+        cb.getPipeline().addFirst("ssl", csh);
         cb.getPipeline().addLast("handler", ch);
 
         if (isExecutorRequired()) {
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.handler.timeout;
+
+import static org.junit.Assert.*;
+
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.TestUtil;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.internal.ExecutorUtil;
+import org.jboss.netty.util.internal.WorkerTimer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public class IdleStateHandlerTest {
+
+    private ExecutorService executor;
+    private Timer timer;
+
+    @Before
+    public void init() {
+        executor = Executors.newCachedThreadPool();
+        timer = new HashedWheelTimer();
+    }
+
+    @After
+    public void destroy() {
+        timer.stop();
+        ExecutorUtil.terminate(executor);
+    }
+
+    @Test
+    public void testWorkerTimer() throws Exception {
+        final IdleStateHandler idleStateHandler =
+            new IdleStateHandler(timer, 300, 0, 0, TimeUnit.MILLISECONDS);
+        final BlockingQueue<Object> events = new LinkedBlockingQueue<Object>();
+
+        ServerBootstrap sb = new ServerBootstrap(
+                new NioServerSocketChannelFactory(executor, executor));
+        sb.getPipeline().addLast("idle", idleStateHandler);
+        sb.getPipeline().addLast("handler", new IdleStateAwareChannelHandler() {
+            @Override
+            public void channelIdle(ChannelHandlerContext ctx, IdleStateEvent e) {
+                events.add(idleStateHandler.readerIdleTimeout);
+                events.add(e.getState());
+            }
+
+            @Override
+            public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+                events.add(e.getCause());
+            }
+        });
+
+        Channel sc = sb.bind(new InetSocketAddress(0));
+        int port = ((InetSocketAddress) sc.getLocalAddress()).getPort();
+        Socket s = new Socket(TestUtil.getLocalHost(), port);
+        try {
+            long startTime = System.currentTimeMillis();
+            for (int i = 0; i < 2; i ++) {
+                Timeout timeout = (Timeout) events.poll(5, TimeUnit.SECONDS);
+                assertNotNull(timeout);
+                assertTrue(timeout.getTimer() instanceof WorkerTimer);
+                assertEquals(IdleState.READER_IDLE, events.poll(5, TimeUnit.SECONDS));
+            }
+            assertTrue(System.currentTimeMillis() - startTime >= 500);
+        } finally {
+            s.close();
+            sc.close().awaitUninterruptibly();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jboss.netty.util.internal;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.TimerTask;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author <a href="http://www.jboss.org/netty/">The Netty Project</a>
+ * @author <a href="http://gleamynode.net/">Trustin Lee</a>
+ * @version $Rev$, $Date$
+ */
+public class WorkerTimerTest {
+
+    private final AtomicInteger wakeUps = new AtomicInteger();
+    private WorkerTimer timer;
+
+    @Before
+    public void init() {
+        timer = new WorkerTimer(new Runnable() {
+            public void run() {
+                wakeUps.incrementAndGet();
+            }
+        });
+        timer.setThread(Thread.currentThread());
+    }
+
+    @After
+    public void destroy() {
+        timer.setThread(null);
+    }
+
+    @Test
+    public void testExpire() throws Exception {
+        CountingTask task = new CountingTask();
+        Timeout timeout = timer.newTimeout(task, 150, TimeUnit.MILLISECONDS);
+        assertTrue(timer.getSelectTimeout(500) <= 100);
+
+        runUntil(task, 1, 2000);
+        assertTrue(timeout.isExpired());
+        assertFalse(timeout.isCancelled());
+        assertEquals(500, timer.getSelectTimeout(500));
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        CountingTask task = new CountingTask();
+        Timeout timeout = timer.newTimeout(task, 100, TimeUnit.MILLISECONDS);
+        timeout.cancel();
+        assertTrue(timeout.isCancelled());
+        assertFalse(timeout.isExpired());
+        assertEquals(500, timer.getSelectTimeout(500));
+
+        runFor(400);
+        assertEquals(0, task.count.get());
+    }
+
+    @Test
+    public void testReschedule() throws Exception {
+        final AtomicInteger count = new AtomicInteger();
+        TimerTask task = new TimerTask() {
+            public void run(Timeout timeout) {
+                if (count.incrementAndGet() < 3) {
+                    assertSame(timeout, WorkerTimer.reschedule(timeout, 50));
+                }
+            }
+        };
+        Timeout timeout = timer.newTimeout(task, 50, TimeUnit.MILLISECONDS);
+
+        // Postpone before it expires.
+        WorkerTimer.reschedule(timeout, 300);
+        runFor(200);
+        assertEquals(0, count.get());
+
+        long deadline = System.currentTimeMillis() + 3000;
+        while (count.get() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            timer.expireTimeouts();
+        }
+        assertEquals(3, count.get());
+        assertTrue(timeout.isExpired());
+    }
+
+    @Test
+    public void testCancelledTimeoutIsNotRescheduled() throws Exception {
+        CountingTask task = new CountingTask();
+        Timeout timeout = timer.newTimeout(task, 50, TimeUnit.MILLISECONDS);
+        timeout.cancel();
+        WorkerTimer.reschedule(timeout, 50);
+        assertTrue(timeout.isCancelled());
+
+        runFor(300);
+        assertEquals(0, task.count.get());
+    }
+
+    @Test
+    public void testHandOver() throws Exception {
+        final CountingTask task = new CountingTask();
+        final Timeout[] timeouts = new Timeout[2];
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                timeouts[0] = timer.newTimeout(task, 50, TimeUnit.MILLISECONDS);
+                timeouts[1] = timer.newTimeout(task, 50, TimeUnit.MILLISECONDS);
+                timeouts[1].cancel();
+            }
+        };
+        t.start();
+        t.join();
+
+        // The worker has to be woken up because it was not waiting for a tick.
+        assertTrue(wakeUps.get() > 0);
+        assertTrue(timer.getSelectTimeout(500) <= 100);
+
+        runUntil(task, 1, 2000);
+        runFor(200);
+        assertEquals(1, task.count.get());
+        assertTrue(timeouts[0].isExpired());
+        assertTrue(timeouts[1].isCancelled());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testStop() {
+        timer.stop();
+    }
+
+    private void runUntil(CountingTask task, int count, long timeoutMillis) throws Exception {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (task.count.get() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(timer.getSelectTimeout(500));
+            timer.expireTimeouts();
+        }
+        assertEquals(count, task.count.get());
+    }
+
+    private void runFor(long millis) throws Exception {
+        long deadline = System.currentTimeMillis() + millis;
+        while (System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            timer.expireTimeouts();
+        }
+    }
+
+    private static final class CountingTask implements TimerTask {
+        final AtomicInteger count = new AtomicInteger();
+
+        CountingTask() {
+            super();
+        }
+
+        public void run(Timeout timeout) {
+            count.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2011 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. See accompanying LICENSE file.
+ */
+
+package com.yahoo.omid.tso;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Random;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.group.DefaultChannelGroup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import com.yahoo.omid.benchmarks.AbstractBenchmark;
+import com.yahoo.omid.tso.messages.CommitRequest;
+
+/**
+ * Measures the commit rate of TSOHandler with one client per processor,
+ * each taking a start timestamp and committing {@code rowsPerCommit} rows
+ * picked at random from {@code rows} distinct keys, with the hash map split
+ * into {@code shards} shards. There is no WAL, and the replies are dropped,
+ * so that the conflict detection and the sequencer are all that is measured.
+ */
+@State(Scope.Benchmark)
+public class CommitBenchmark extends AbstractBenchmark {
+
+    @Param({ "1", "16" })
+    public int shards;
+
+    @Param({ "4" })
+    public int rowsPerCommit;
+
+    @Param({ "10000000" })
+    public int rows;
+
+    private TSOState state;
+    private TSOHandler handler;
+    private ChannelHandlerContext ctx;
+
+    @Setup
+    public void setUp() {
+        state = new TSOState(new TimestampOracle());
+        state.hashmap = new CommitHashMap(TSOState.MAX_ITEMS, TSOState.LOAD_FACTOR, shards);
+        handler = new TSOHandler(new DefaultChannelGroup(), state);
+        handler.start();
+        ctx = newProxy(ChannelHandlerContext.class, newProxy(Channel.class, null));
+    }
+
+    @TearDown
+    public void tearDown() {
+        handler.stop();
+    }
+
+    /**
+     * Returns an object whose methods, but those of Object, all return
+     * {@code channel} or nothing.
+     */
+    private static <T> T newProxy(Class<T> type, final Channel channel) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getDeclaringClass() == Object.class) {
+                            return method.invoke(this, args);
+                        }
+                        return method.getReturnType() == Channel.class ? channel : null;
+                    }
+                }));
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        private final Random random = new Random();
+        private final byte[] tableId = "usertable".getBytes();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public long commit(Client client) throws IOException {
+        long startTimestamp;
+        synchronized (state) {
+            startTimestamp = state.getSO().next(state.toWAL);
+        }
+        RowKey[] rowKeys = new RowKey[rowsPerCommit];
+        for (int i = 0; i < rowKeys.length; i++) {
+            rowKeys[i] = new RowKey(("user" + client.random.nextInt(rows)).getBytes(), client.tableId);
+        }
+        handler.handle(new CommitRequest(startTimestamp, rowKeys), ctx);
+        return startTimestamp;
+    }
+}
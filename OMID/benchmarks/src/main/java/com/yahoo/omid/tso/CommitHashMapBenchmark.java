@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2011 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. See accompanying LICENSE file.
+ */
+
+package com.yahoo.omid.tso;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.yahoo.omid.benchmarks.AbstractBenchmark;
+
+/**
+ * Compares CommitHashMap with the JNI map it replaced on the commit path of
+ * TSOHandler: a conflict check ("get") and the update after a commit ("put")
+ * of rows picked at random from {@code rows} distinct keys, in a map of
+ * {@code capacity} entries with the load factor of TSOState. The map is
+ * warmed up until it starts reusing old entries, so the puts include the
+ * largest deleted timestamp bookkeeping.
+ */
+@State(Scope.Thread)
+public class CommitHashMapBenchmark extends AbstractBenchmark {
+
+    private static final int KEYS = 1 << 20;
+
+    @Param({ "java", "native" })
+    public String map;
+
+    @Param({ "1000000" })
+    public int capacity;
+
+    @Param({ "100000", "10000000" })
+    public int rows;
+
+    private CommitHashMap javaMap;
+    private NativeCommitHashMap nativeMap;
+
+    private final byte[][] rowIds = new byte[KEYS][];
+    private final int[] hashes = new int[KEYS];
+    private final byte[] tableId = "usertable".getBytes();
+    private int next;
+    private long commitTimestamp;
+    private long largestDeletedTimestamp;
+
+    @Setup
+    public void setUp() {
+        if ("java".equals(map)) {
+            javaMap = new CommitHashMap(capacity, TSOState.LOAD_FACTOR);
+        } else if ("native".equals(map)) {
+            nativeMap = new NativeCommitHashMap(capacity, TSOState.LOAD_FACTOR);
+        } else {
+            throw new IllegalArgumentException("map: " + map);
+        }
+
+        Random random = new Random(42);
+        for (int i = 0; i < KEYS; i++) {
+            rowIds[i] = ("user" + random.nextInt(rows)).getBytes();
+            hashes[i] = new RowKey(rowIds[i], tableId).hashCode();
+        }
+
+        for (int i = 0; i < capacity * 2; i++) {
+            put();
+        }
+    }
+
+    @Benchmark
+    public long get() {
+        int i = next++ & KEYS - 1;
+        if (javaMap != null) {
+            return javaMap.get(rowIds[i], tableId, hashes[i]);
+        }
+        return nativeMap.get(rowIds[i], tableId, hashes[i]);
+    }
+
+    @Benchmark
+    public long put() {
+        int i = next++ & KEYS - 1;
+        if (javaMap != null) {
+            largestDeletedTimestamp = javaMap.put(rowIds[i], tableId, ++commitTimestamp, hashes[i],
+                    largestDeletedTimestamp);
+        } else {
+            largestDeletedTimestamp = nativeMap.put(rowIds[i], tableId, ++commitTimestamp, hashes[i],
+                    largestDeletedTimestamp);
+        }
+        return largestDeletedTimestamp;
+    }
+}
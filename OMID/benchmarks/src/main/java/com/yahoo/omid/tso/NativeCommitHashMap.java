@@ -0,0 +1,51 @@
+/**
+ * Copyright (c) 2011 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. See accompanying LICENSE file.
+ */
+
+package com.yahoo.omid.tso;
+
+/**
+ * The JNI commit hash map that CommitHashMap replaced, built from
+ * src/main/native. All its state is global, so only one instance may be used
+ * at a time.
+ */
+class NativeCommitHashMap {
+
+    native void init(int initialCapacity, int maxCommits, float loadFactor);
+
+    native static long gettotalput();
+
+    native static long gettotalget();
+
+    native static long gettotalwalkforput();
+
+    native static long gettotalwalkforget();
+
+    static {
+        System.loadLibrary("tso-commithashmap");
+    }
+
+    NativeCommitHashMap(int initialCapacity, float loadFactor) {
+        init(initialCapacity, (int) (initialCapacity * loadFactor), loadFactor);
+    }
+
+    native long get(byte[] rowId, byte[] tableId, int hash);
+
+    native long put(byte[] rowId, byte[] tableId, long value, int hash, long largestDeletedTimestamp);
+
+    native long getCommittedTimestamp(long startTimestamp);
+
+    native long setCommitted(long startTimestamp, long commitTimestamp, long largestDeletedTimestamp);
+}
@@ -14,12 +14,19 @@
  * limitations under the License. See accompanying LICENSE file.
  */
 
+/*
+ * The JNI commit hash map that CommitHashMap replaced, kept to compare the
+ * two in CommitHashMapBenchmark. All the state is global, so there can only
+ * be one NativeCommitHashMap per process.
+ */
+
 #include <jni.h>
+#include <stdio.h>
 #include <string.h>
 #include <unistd.h>
 #include <stdlib.h>
 
-#include "com_yahoo_omid_tso_CommitHashMap.h"
+extern "C" {
 
 #define MAX_KEY_SIZE 256
 /**
@@ -56,41 +63,41 @@ int tableLength;
 int threshold;
 
 /*
- * Class:     com_yahoo_omid_CommitHashMap
+ * Class:     com_yahoo_omid_tso_NativeCommitHashMap
  * Method:    gettotalput
  * Signature: ()J
  */
-JNIEXPORT jlong JNICALL Java_com_yahoo_omid_tso_CommitHashMap_gettotalput
+JNIEXPORT jlong JNICALL Java_com_yahoo_omid_tso_NativeCommitHashMap_gettotalput
 (JNIEnv * env, jclass jcls) {
    return totalput;
 }
 
 /*
- * Class:     com_yahoo_omid_CommitHashMap
+ * Class:     com_yahoo_omid_tso_NativeCommitHashMap
  * Method:    gettotalget
  * Signature: ()J
  */
-JNIEXPORT jlong JNICALL Java_com_yahoo_omid_tso_CommitHashMap_gettotalget
+JNIEXPORT jlong JNICALL Java_com_yahoo_omid_tso_NativeCommitHashMap_gettotalget
 (JNIEnv * env, jclass jcls) {
    return totalget;
 }
 
 /*
- * Class:     com_yahoo_omid_CommitHashMap
+ * Class:     com_yahoo_omid_tso_NativeCommitHashMap
  * Method:    gettotalwalkforput
  * Signature: ()J
  */
-JNIEXPORT jlong JNICALL Java_com_yahoo_omid_tso_CommitHashMap_gettotalwalkforput
+JNIEXPORT jlong JNICALL Java_com_yahoo_omid_tso_NativeCommitHashMap_gettotalwalkforput
 (JNIEnv * env, jclass jcls) {
    return totalwalkforput;
 }
 
 /*
- * Class:     com_yahoo_omid_CommitHashMap
+ * Class:     com_yahoo_omid_tso_NativeCommitHashMap
  * Method:    gettotalwalkforget
  * Signature: ()J
  */
-JNIEXPORT jlong JNICALL Java_com_yahoo_omid_tso_CommitHashMap_gettotalwalkforget
+JNIEXPORT jlong JNICALL Java_com_yahoo_omid_tso_NativeCommitHashMap_gettotalwalkforget
 (JNIEnv * env, jclass jcls) {
    return totalwalkforget;
 }
@@ -146,11 +153,11 @@ struct LargeEntry {
 };
 
 /*
- * Class:     CommitHashMap
+ * Class:     NativeCommitHashMap
  * Method:    init
  * Signature: ()V
  */
-JNIEXPORT void JNICALL Java_com_yahoo_omid_tso_CommitHashMap_init
+JNIEXPORT void JNICALL Java_com_yahoo_omid_tso_NativeCommitHashMap_init
 (JNIEnv * env, jobject jobj, jint initialCapacity, jint maxCommits,jfloat loadFactor) {
    tableLength = initialCapacity;
    threshold = (int) (initialCapacity * loadFactor);
@@ -192,13 +199,13 @@ JNIEXPORT void JNICALL Java_com_yahoo_omid_tso_CommitHashMap_init
 //          this hashtable.
 
 /*
- * Class:     CommitHashMap
+ * Class:     NativeCommitHashMap
  * Method:    get
  * Signature: (JI)J
  */
 
 jbyte keyarray[MAX_KEY_SIZE];
-JNIEXPORT jlong JNICALL Java_com_yahoo_omid_tso_CommitHashMap_get
+JNIEXPORT jlong JNICALL Java_com_yahoo_omid_tso_NativeCommitHashMap_get
 (JNIEnv * env , jobject jobj, jbyteArray rowId, jbyteArray tableId, jint hash) {
    totalget++;
    jsize rowidsize  = env->GetArrayLength(rowId);
@@ -219,11 +226,11 @@ JNIEXPORT jlong JNICALL Java_com_yahoo_omid_tso_CommitHashMap_get
 }
 
 /*
- * Class:     CommitHashMap
+ * Class:     NativeCommitHashMap
  * Method:    put
  * Signature: (JJJI)Z
  */
-JNIEXPORT jlong JNICALL Java_com_yahoo_omid_tso_CommitHashMap_put
+JNIEXPORT jlong JNICALL Java_com_yahoo_omid_tso_NativeCommitHashMap_put
 (JNIEnv * env , jobject jobj, jbyteArray rowId, jbyteArray tableId, jlong value, jint hash, jlong largestDeletedTimestamp) {
    totalput++;
    int index = (hash & 0x7FFFFFFF) % tableLength;
@@ -317,7 +324,7 @@ JNIEXPORT jlong JNICALL Java_com_yahoo_omid_tso_CommitHashMap_put
 }
 
 
-JNIEXPORT jlong JNICALL Java_com_yahoo_omid_tso_CommitHashMap_getCommittedTimestamp(JNIEnv *, jobject, jlong startTimestamp) {
+JNIEXPORT jlong JNICALL Java_com_yahoo_omid_tso_NativeCommitHashMap_getCommittedTimestamp(JNIEnv *, jobject, jlong startTimestamp) {
    int key = startTimestamp % gmaxCommits;
    StartCommit& entry = commitTable[key];
    if (entry.start == startTimestamp)
@@ -325,7 +332,7 @@ JNIEXPORT jlong JNICALL Java_com_yahoo_omid_tso_CommitHashMap_getCommittedTimest
    return 0;//which means that there is not such entry in the array, either deleted or never entered
 }
 
-JNIEXPORT jlong JNICALL Java_com_yahoo_omid_tso_CommitHashMap_setCommitted(JNIEnv * env , jobject jobj, jlong startTimestamp, jlong commitTimestamp, jlong largestDeletedTimestamp) {
+JNIEXPORT jlong JNICALL Java_com_yahoo_omid_tso_NativeCommitHashMap_setCommitted(JNIEnv * env , jobject jobj, jlong startTimestamp, jlong commitTimestamp, jlong largestDeletedTimestamp) {
    int key = startTimestamp % gmaxCommits;
    StartCommit& entry = commitTable[key];
    //assume(entry.start != startTimestamp);
@@ -336,4 +343,4 @@ JNIEXPORT jlong JNICALL Java_com_yahoo_omid_tso_CommitHashMap_setCommitted(JNIEn
    return largestDeletedTimestamp;
 }
 
-
+} // extern "C"
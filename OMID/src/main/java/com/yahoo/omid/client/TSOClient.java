@@ -18,22 +18,26 @@ package com.yahoo.omid.client;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.io.DataOutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.hadoop.conf.Configuration;
 import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferOutputStream;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFactory;
 import org.jboss.netty.channel.ChannelFuture;
@@ -64,6 +68,9 @@ import com.yahoo.omid.tso.messages.CommitResponse;
 import com.yahoo.omid.tso.messages.CommittedTransactionReport;
 import com.yahoo.omid.tso.messages.FullAbortRequest;
 import com.yahoo.omid.tso.messages.LargestDeletedTimestampReport;
+import com.yahoo.omid.tso.messages.TimestampRangeRequest;
+import com.yahoo.omid.tso.messages.TimestampRangeResponse;
+import com.yahoo.omid.tso.messages.TimestampReleaseRequest;
 import com.yahoo.omid.tso.messages.TimestampRequest;
 import com.yahoo.omid.tso.messages.TimestampResponse;
 import com.yahoo.omid.tso.serialization.TSODecoder;
@@ -78,16 +85,37 @@ public class TSOClient extends SimpleChannelHandler {
         OK, ABORTED
     };
 
+    /**
+     * Requests are written in batches of up to this many bytes
+     */
+    private static final int MAX_BATCH_SIZE = 64 * 1024;
+
     private Queue<CreateCallback> createCallbacks;
-    private Map<Long, CommitCallback> commitCallbacks;
-    private Map<Long, List<CommitQueryCallback>> isCommittedCallbacks;
+    private ConcurrentMap<Long, CommitCallback> commitCallbacks;
+    private ConcurrentMap<CommitQuery, CommitQuery> isCommittedCallbacks;
 
     private Committed committed = new Committed();
-    private Set<Long> aborted = Collections.synchronizedSet(new HashSet<Long>(1000));
+    private Set<Long> aborted = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>(1000));
     private long largestDeletedTimestamp;
     private long connectionTimestamp = 0;
     private boolean hasConnectionTimestamp = false;
 
+    /**
+     * Start timestamps requested at once, 1 to request them one by one
+     */
+    private int timestampBatch;
+
+    /**
+     * The local cache of start timestamps, [cachedTimestamp,
+     * cachedTimestampEnd), and the callbacks waiting for more. All of them
+     * are guarded by timestampCache.
+     */
+    private final Object timestampCache = new Object();
+    private long cachedTimestamp = 0;
+    private long cachedTimestampEnd = 0;
+    private int requestedTimestamps = 0;
+    private ArrayDeque<CreateCallback> timestampWaiters = new ArrayDeque<CreateCallback>();
+
     private ChannelFactory factory;
     private ClientBootstrap bootstrap;
     private Channel channel;
@@ -102,7 +130,17 @@ public class TSOClient extends SimpleChannelHandler {
     };
 
     private interface Op { //有5个实现类
-        public void execute(Channel channel);
+        /**
+         * Registers the callback of the operation
+         * 
+         * @return the request to send, or null if there is none
+         */
+        public TSOMessage execute();
+
+        /**
+         * Called once the request is written
+         */
+        public void written();
 
         public void error(Exception e);
     }
@@ -114,27 +152,18 @@ public class TSOClient extends SimpleChannelHandler {
             this.transactionId = transactionid;
         }
 
-        public void execute(Channel channel) {
-            try {
-                synchronized (commitCallbacks) {
-                    if (commitCallbacks.containsKey(transactionId)) {
-                        throw new IOException("Already committing transaction " + transactionId);
-                    }
-                }
-
-                AbortRequest ar = new AbortRequest();
-                ar.startTimestamp = transactionId;
-                ChannelFuture f = channel.write(ar);
-                f.addListener(new ChannelFutureListener() {
-                    public void operationComplete(ChannelFuture future) {
-                        if (!future.isSuccess()) {
-                            error(new IOException("Error writing to socket"));
-                        }
-                    }
-                });
-            } catch (Exception e) {
-                error(e);
+        public TSOMessage execute() {
+            if (commitCallbacks.containsKey(transactionId)) {
+                error(new IOException("Already committing transaction " + transactionId));
+                return null;
             }
+
+            AbortRequest ar = new AbortRequest();
+            ar.startTimestamp = transactionId;
+            return ar;
+        }
+
+        public void written() {
         }
 
         public void error(Exception e) {
@@ -148,32 +177,111 @@ public class TSOClient extends SimpleChannelHandler {
             this.cb = cb;
         }
 
-        public void execute(Channel channel) {
-            try {
-                synchronized (createCallbacks) {
-                    createCallbacks.add(cb);
-                }
+        public TSOMessage execute() {
+            // the responses come in the order of the requests, and any of
+            // them is as good as any other
+            createCallbacks.add(cb);
+            return new TimestampRequest();
+        }
 
-                TimestampRequest tr = new TimestampRequest();
-                ChannelFuture f = channel.write(tr);
-                f.addListener(new ChannelFutureListener() {
-                    public void operationComplete(ChannelFuture future) {
-                        if (!future.isSuccess()) {
-                            error(new IOException("Error writing to socket"));
-                        }
-                    }
-                });
-            } catch (Exception e) {
-                error(e);
+        public void written() {
+        }
+
+        public void error(Exception e) {
+            if (createCallbacks.remove(cb)) {
+                cb.error(e);
             }
         }
+    }
+
+    private class TimestampRangeOp implements Op {
+        private int count;
+
+        TimestampRangeOp(int count) {
+            this.count = count;
+        }
+
+        public TSOMessage execute() {
+            return new TimestampRangeRequest(count);
+        }
+
+        public void written() {
+        }
 
         public void error(Exception e) {
-            synchronized (createCallbacks) {
-                createCallbacks.remove();
+            failTimestamps(count, e);
+        }
+    }
+
+    private class TimestampReleaseOp implements Op {
+        private long startTimestamp;
+        private int count;
+
+        TimestampReleaseOp(long startTimestamp, int count) {
+            this.startTimestamp = startTimestamp;
+            this.count = count;
+        }
+
+        public TSOMessage execute() {
+            return new TimestampReleaseRequest(startTimestamp, count);
+        }
+
+        public void written() {
+        }
+
+        public void error(Exception e) {
+        }
+    }
+
+    /**
+     * The callbacks of the queries about a transaction on behalf of another.
+     * Concurrent queries about the same pair share one request.
+     */
+    private static class CommitQuery {
+        final long startTimestamp;
+        final long queryTimestamp;
+        private List<CommitQueryCallback> callbacks = new ArrayList<CommitQueryCallback>(1);
+        private boolean answered = false;
+
+        CommitQuery(long startTimestamp, long queryTimestamp) {
+            this.startTimestamp = startTimestamp;
+            this.queryTimestamp = queryTimestamp;
+        }
+
+        /**
+         * Adds a callback, unless the query has been answered already
+         */
+        synchronized boolean add(CommitQueryCallback cb) {
+            if (answered) {
+                return false;
             }
+            callbacks.add(cb);
+            return true;
+        }
 
-            cb.error(e);
+        /**
+         * Returns the callbacks to call, and takes no more
+         */
+        synchronized List<CommitQueryCallback> answered() {
+            List<CommitQueryCallback> result = callbacks;
+            callbacks = Collections.emptyList();
+            answered = true;
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof CommitQuery)) {
+                return false;
+            }
+            CommitQuery other = (CommitQuery) obj;
+            return startTimestamp == other.startTimestamp && queryTimestamp == other.queryTimestamp;
+        }
+
+        @Override
+        public int hashCode() {
+            long h = startTimestamp * 31 + queryTimestamp;
+            return (int) (h ^ (h >>> 32));
         }
     }
 
@@ -181,6 +289,7 @@ public class TSOClient extends SimpleChannelHandler {
         long startTimestamp;
         long pendingWriteTimestamp;
         CommitQueryCallback cb;
+        CommitQuery query;
 
         CommitQueryOp(long startTimestamp, long pendingWriteTimestamp, CommitQueryCallback cb) {
             this.startTimestamp = startTimestamp;
@@ -188,37 +297,32 @@ public class TSOClient extends SimpleChannelHandler {
             this.cb = cb;
         }
 
-        public void execute(Channel channel) {
-            try {
-                synchronized (isCommittedCallbacks) {
-                    List<CommitQueryCallback> callbacks = isCommittedCallbacks.get(startTimestamp);
-                    if (callbacks == null) {
-                        callbacks = new ArrayList<CommitQueryCallback>(1);
-                    }
-                    callbacks.add(cb);
-                    isCommittedCallbacks.put(startTimestamp, callbacks);
+        public TSOMessage execute() {
+            query = new CommitQuery(startTimestamp, pendingWriteTimestamp);
+            query.add(cb);
+            while (true) {
+                CommitQuery pending = isCommittedCallbacks.putIfAbsent(query, query);
+                if (pending == null) {
+                    return new CommitQueryRequest(startTimestamp, pendingWriteTimestamp);
                 }
-
-                CommitQueryRequest qr = new CommitQueryRequest(startTimestamp, pendingWriteTimestamp);
-                ChannelFuture f = channel.write(qr);
-                f.addListener(new ChannelFutureListener() {
-                    public void operationComplete(ChannelFuture future) {
-                        if (!future.isSuccess()) {
-                            error(new IOException("Error writing to socket"));
-                        }
-                    }
-                });
-            } catch (Exception e) {
-                error(e);
+                if (pending.add(cb)) {
+                    // the request in flight answers this one too
+                    return null;
+                }
+                // answered meanwhile
+                isCommittedCallbacks.remove(pending, pending);
             }
         }
 
+        public void written() {
+        }
+
         public void error(Exception e) {
-            synchronized (isCommittedCallbacks) {
-                isCommittedCallbacks.remove(startTimestamp);
+            if (isCommittedCallbacks.remove(query, query)) {
+                for (CommitQueryCallback cb : query.answered()) {
+                    cb.error(e);
+                }
             }
-
-            cb.error(e);
         }
     }
 
@@ -233,36 +337,26 @@ public class TSOClient extends SimpleChannelHandler {
             this.cb = cb;
         }
 
-        public void execute(Channel channel) {
-            try {
-                synchronized (commitCallbacks) {
-                    if (commitCallbacks.containsKey(transactionId)) {
-                        throw new IOException("Already committing transaction " + transactionId);
-                    }
-                    commitCallbacks.put(transactionId, cb); //在收到CommitResponse后删除
-                }
-
-                CommitRequest cr = new CommitRequest();
-                cr.startTimestamp = transactionId;
-                cr.rows = rows;
-                ChannelFuture f = channel.write(cr);
-                f.addListener(new ChannelFutureListener() {
-                    public void operationComplete(ChannelFuture future) {
-                        if (!future.isSuccess()) {
-                            error(new IOException("Error writing to socket"));
-                        }
-                    }
-                });
-            } catch (Exception e) {
-                error(e);
+        public TSOMessage execute() {
+            //在收到CommitResponse后删除
+            if (commitCallbacks.putIfAbsent(transactionId, cb) != null) {
+                cb.error(new IOException("Already committing transaction " + transactionId));
+                return null;
             }
+
+            CommitRequest cr = new CommitRequest();
+            cr.startTimestamp = transactionId;
+            cr.rows = rows;
+            return cr;
+        }
+
+        public void written() {
         }
 
         public void error(Exception e) {
-            synchronized (commitCallbacks) {
-                commitCallbacks.remove(transactionId);
+            if (commitCallbacks.remove(transactionId, cb)) {
+                cb.error(e);
             }
-            cb.error(e);
         }
     }
 
@@ -275,25 +369,14 @@ public class TSOClient extends SimpleChannelHandler {
             this.cb = cb;
         }
 
-        public void execute(Channel channel) {
-            try {
-                FullAbortRequest far = new FullAbortRequest();
-                far.startTimestamp = transactionId;
-
-                ChannelFuture f = channel.write(far);
-                f.addListener(new ChannelFutureListener() {
-                    public void operationComplete(ChannelFuture future) {
-                        if (!future.isSuccess()) {
-                            error(new IOException("Error writing to socket"));
-                        } else {
-                            cb.complete();
-                        }
-                    }
-                });
-            } catch (Exception e) {
-                error(e);
-            }
+        public TSOMessage execute() {
+            FullAbortRequest far = new FullAbortRequest();
+            far.startTimestamp = transactionId;
+            return far;
+        }
 
+        public void written() {
+            cb.complete();
         }
 
         public void error(Exception e) {
@@ -301,17 +384,39 @@ public class TSOClient extends SimpleChannelHandler {
         }
     }
 
-    private ArrayBlockingQueue<Op> queuedOps;
+    private static class Request {
+        final Op op;
+        final TSOMessage msg;
+
+        Request(Op op, TSOMessage msg) {
+            this.op = op;
+            this.msg = msg;
+        }
+    }
+
+    /**
+     * Operations waiting for the connection
+     */
+    private Queue<Op> queuedOps;
+
+    /**
+     * Requests waiting to be written. Whichever thread finds no other one
+     * writing takes all of them and writes them as one buffer, so concurrent
+     * requests are coalesced without waiting for each other.
+     */
+    private Queue<Request> pendingRequests = new ConcurrentLinkedQueue<Request>();
+    private AtomicBoolean writing = new AtomicBoolean();
 
     private State state;
+    private volatile boolean closed = false;
 
     public TSOClient(Configuration conf) throws IOException {
         state = State.DISCONNECTED;
-        queuedOps = new ArrayBlockingQueue<Op>(200);
+        queuedOps = new ConcurrentLinkedQueue<Op>();
         retryTimer = new Timer(true);
 
-        commitCallbacks = Collections.synchronizedMap(new HashMap<Long, CommitCallback>());
-        isCommittedCallbacks = Collections.synchronizedMap(new HashMap<Long, List<CommitQueryCallback>>());
+        commitCallbacks = new ConcurrentHashMap<Long, CommitCallback>();
+        isCommittedCallbacks = new ConcurrentHashMap<CommitQuery, CommitQuery>();
         createCallbacks = new ConcurrentLinkedQueue<CreateCallback>();
         channel = null;
 
@@ -327,7 +432,8 @@ public class TSOClient extends SimpleChannelHandler {
         bootstrap.getPipeline().addLast("executor",
                 new ExecutionHandler(new OrderedMemoryAwareThreadPoolExecutor(executorThreads, 1024 * 1024, 4 * 1024 * 1024)));
         bootstrap.getPipeline().addLast("handler", this);
-        bootstrap.setOption("tcpNoDelay", false);
+        // requests are coalesced before they are written
+        bootstrap.setOption("tcpNoDelay", true);
         bootstrap.setOption("keepAlive", true);
         bootstrap.setOption("reuseAddress", true);
         bootstrap.setOption("connectTimeoutMillis", 100);
@@ -336,6 +442,7 @@ public class TSOClient extends SimpleChannelHandler {
         int port = conf.getInt("tso.port", 1234);
         max_retries = conf.getInt("tso.max_retries", 100);
         retry_delay_ms = conf.getInt("tso.retry_delay_ms", 1000);
+        timestampBatch = Math.max(1, Math.min(conf.getInt("tso.timestamp_batch", 1), TimestampRangeRequest.MAX_COUNT));
 
         if (host == null) {
             throw new IOException("tso.host missing from configuration");
@@ -375,20 +482,190 @@ public class TSOClient extends SimpleChannelHandler {
         State state = connectIfNeeded();
 
         if (state == State.CONNECTING) {
-            try {
-                queuedOps.put(op);
-            } catch (InterruptedException e) {
-                throw new IOException("Couldn't add new operation", e);
+            queuedOps.add(op);
+            if (this.state == State.CONNECTED) {
+                // connected while it was queued
+                executeQueuedOps();
             }
         } else if (state == State.CONNECTED) {
-            op.execute(channel);
+            execute(op);
+            flush();
         } else {
             throw new IOException("Invalid connection state " + state);
         }
     }
 
+    private void executeQueuedOps() {
+        Op o = queuedOps.poll();
+        while (o != null && state == State.CONNECTED) {
+            execute(o);
+            o = queuedOps.poll();
+        }
+        flush();
+    }
+
+    private void execute(Op op) {
+        TSOMessage msg = op.execute();
+        if (msg != null) {
+            pendingRequests.add(new Request(op, msg));
+        }
+    }
+
+    /**
+     * Writes the pending requests, unless another thread is writing them
+     */
+    private void flush() {
+        while (!pendingRequests.isEmpty() && writing.compareAndSet(false, true)) {
+            try {
+                final List<Op> batch = new ArrayList<Op>();
+                ChannelBuffer buffer = ChannelBuffers.dynamicBuffer(256);
+                DataOutputStream out = new DataOutputStream(new ChannelBufferOutputStream(buffer));
+                Request r;
+                while (buffer.writerIndex() < MAX_BATCH_SIZE && (r = pendingRequests.poll()) != null) {
+                    try {
+                        TSOEncoder.encode(r.msg, out);
+                        batch.add(r.op);
+                    } catch (Exception e) {
+                        r.op.error(e);
+                    }
+                }
+
+                Channel channel = this.channel;
+                if (channel == null) {
+                    Exception e = new IOException("Channel Disconnected");
+                    for (Op op : batch) {
+                        op.error(e);
+                    }
+                    continue;
+                }
+                ChannelFuture f = channel.write(buffer);
+                f.addListener(new ChannelFutureListener() {
+                    public void operationComplete(ChannelFuture future) {
+                        if (!future.isSuccess()) {
+                            Exception e = new IOException("Error writing to socket");
+                            for (Op op : batch) {
+                                op.error(e);
+                            }
+                        } else {
+                            for (Op op : batch) {
+                                op.written();
+                            }
+                        }
+                    }
+                });
+            } finally {
+                writing.set(false);
+            }
+        }
+    }
+
+    /**
+     * Gets a start timestamp. With tso.timestamp_batch larger than 1 they
+     * are requested in ranges and handed out from a local cache, so most
+     * calls complete right away.
+     */
     public void getNewTimestamp(CreateCallback cb) throws IOException {
-        withConnection(new NewTimestampOp(cb));
+        if (timestampBatch <= 1) {
+            withConnection(new NewTimestampOp(cb));
+            return;
+        }
+        long timestamp = 0;
+        boolean request = false;
+        synchronized (timestampCache) {
+            if (cachedTimestamp < cachedTimestampEnd) {
+                timestamp = cachedTimestamp++;
+            } else {
+                timestampWaiters.add(cb);
+                if (timestampWaiters.size() > requestedTimestamps) {
+                    requestedTimestamps += timestampBatch;
+                    request = true;
+                }
+            }
+        }
+        if (timestamp != 0) {
+            cb.complete(timestamp);
+        } else if (request) {
+            try {
+                withConnection(new TimestampRangeOp(timestampBatch));
+            } catch (IOException e) {
+                failTimestamps(timestampBatch, e);
+            }
+        }
+    }
+
+    /**
+     * Hands a range of timestamps to the waiting callbacks and caches the
+     * rest of them
+     */
+    private void receivedTimestamps(long timestamp, int count) {
+        CreateCallback[] ready;
+        long releaseFrom = 0, releaseTo = 0;
+        synchronized (timestampCache) {
+            requestedTimestamps = Math.max(0, requestedTimestamps - count);
+            ready = new CreateCallback[Math.min(count, timestampWaiters.size())];
+            for (int i = 0; i < ready.length; i++) {
+                ready[i] = timestampWaiters.poll();
+            }
+            if (ready.length < count) {
+                // there is no cached timestamp while callbacks wait, but a
+                // range may arrive after the waiting callbacks got theirs
+                releaseFrom = cachedTimestamp;
+                releaseTo = cachedTimestampEnd;
+                cachedTimestamp = timestamp + ready.length;
+                cachedTimestampEnd = timestamp + count;
+            }
+        }
+        for (int i = 0; i < ready.length; i++) {
+            ready[i].complete(timestamp + i);
+        }
+        releaseTimestamps(releaseFrom, releaseTo);
+    }
+
+    /**
+     * Fails the callbacks waiting for a range request that failed
+     */
+    private void failTimestamps(int count, Exception e) {
+        List<CreateCallback> failed = new ArrayList<CreateCallback>();
+        synchronized (timestampCache) {
+            requestedTimestamps = Math.max(0, requestedTimestamps - count);
+            while (timestampWaiters.size() > requestedTimestamps) {
+                failed.add(timestampWaiters.pollLast());
+            }
+        }
+        for (CreateCallback cb : failed) {
+            cb.error(e);
+        }
+    }
+
+    /**
+     * Drops the cached timestamps smaller than the given one. A transaction
+     * that starts with any of them would not see a commit of this client, or
+     * would be aborted if the timestamp is not larger than the largest
+     * deleted one.
+     */
+    private void dropCachedTimestamps(long timestamp) {
+        long releaseFrom, releaseTo;
+        synchronized (timestampCache) {
+            releaseFrom = cachedTimestamp;
+            releaseTo = Math.min(timestamp, cachedTimestampEnd);
+            cachedTimestamp = Math.max(cachedTimestamp, releaseTo);
+        }
+        releaseTimestamps(releaseFrom, releaseTo);
+    }
+
+    /**
+     * Gives unused timestamps back to the TSO with one request, so it doesn't
+     * keep them as uncommitted until they are half aborted
+     */
+    private void releaseTimestamps(long from, long to) {
+        if (from >= to) {
+            return;
+        }
+        try {
+            withConnection(new TimestampReleaseOp(from, (int) (to - from)));
+        } catch (IOException e) {
+            LOG.warn("Couldn't release cached timestamps", e);
+        }
     }
 
     public void isCommitted(long startTimestamp, long pendingWriteTimestamp, CommitQueryCallback cb) throws IOException {
@@ -400,6 +677,22 @@ public class TSOClient extends SimpleChannelHandler {
     }
 
     public void commit(long transactionId, RowKey[] rows, CommitCallback cb) throws IOException {
+        if (timestampBatch > 1 && rows.length > 0) {
+            // later transactions of this client must see this one
+            final CommitCallback callback = cb;
+            cb = new CommitCallback() {
+                public void complete(Result res, long commitTimestamp) {
+                    if (res == Result.OK) {
+                        dropCachedTimestamps(commitTimestamp);
+                    }
+                    callback.complete(res, commitTimestamp);
+                }
+
+                public void error(Exception e) {
+                    callback.error(e);
+                }
+            };
+        }
         withConnection(new CommitOp(transactionId, rows, cb));
     }
 
@@ -418,6 +711,11 @@ public class TSOClient extends SimpleChannelHandler {
      */
     @Override
     synchronized public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e) {
+        if (closed) {
+            // a reconnect raced with close()
+            e.getChannel().close();
+            return;
+        }
         synchronized (state) {
             channel = e.getChannel();
             state = State.CONNECTED;
@@ -425,11 +723,7 @@ public class TSOClient extends SimpleChannelHandler {
         }
         clearState();
         LOG.debug("Channel connected");
-        Op o = queuedOps.poll();
-        while (o != null && state == State.CONNECTED) {
-            o.execute(channel);
-            o = queuedOps.poll();
-        }
+        executeQueuedOps();
     }
 
     private void clearState() {
@@ -446,21 +740,10 @@ public class TSOClient extends SimpleChannelHandler {
             LOG.debug("Channel disconnected");
             channel = null;
             state = State.DISCONNECTED;
-            for (CreateCallback cb : createCallbacks) {
-                cb.error(new IOException("Channel Disconnected"));
-            }
-            for (CommitCallback cb : commitCallbacks.values()) {
-                cb.error(new IOException("Channel Disconnected"));
+            failCallbacks(new IOException("Channel Disconnected"));
+            if (!closed) {
+                connectIfNeeded();
             }
-            for (List<CommitQueryCallback> lcqb : isCommittedCallbacks.values()) {
-                for (CommitQueryCallback cqb : lcqb) {
-                    cqb.error(new IOException("Channel Disconnected"));
-                }
-            }
-            createCallbacks.clear();
-            commitCallbacks.clear();
-            isCommittedCallbacks.clear();
-            connectIfNeeded();
         }
     }
 
@@ -498,10 +781,7 @@ public class TSOClient extends SimpleChannelHandler {
         Object msg = e.getMessage();
         if (msg instanceof CommitResponse) {
             CommitResponse r = (CommitResponse) msg;
-            CommitCallback cb = null;
-            synchronized (commitCallbacks) {
-                cb = commitCallbacks.remove(r.startTimestamp);
-            }
+            CommitCallback cb = commitCallbacks.remove(r.startTimestamp);
             if (cb == null) {
                 LOG.error("Received a commit response for a nonexisting commit");
                 return;
@@ -519,6 +799,13 @@ public class TSOClient extends SimpleChannelHandler {
                 return;
             }
             cb.complete(timestamp);
+        } else if (msg instanceof TimestampRangeResponse) {
+            TimestampRangeResponse r = (TimestampRangeResponse) msg;
+            if (!hasConnectionTimestamp || r.timestamp < connectionTimestamp) {
+                hasConnectionTimestamp = true;
+                connectionTimestamp = r.timestamp;
+            }
+            receivedTimestamps(r.timestamp, r.count);
         } else if (msg instanceof CommitQueryResponse) {
             CommitQueryResponse r = (CommitQueryResponse) msg;
             if (r.commitTimestamp != 0) {
@@ -526,15 +813,12 @@ public class TSOClient extends SimpleChannelHandler {
             } else if (r.committed) {
                 committed.commit(r.queryTimestamp, largestDeletedTimestamp);
             }
-            List<CommitQueryCallback> cbs = null;
-            synchronized (isCommittedCallbacks) {
-                cbs = isCommittedCallbacks.remove(r.startTimestamp);
-            }
-            if (cbs == null) {
+            CommitQuery query = isCommittedCallbacks.remove(new CommitQuery(r.startTimestamp, r.queryTimestamp));
+            if (query == null) {
                 LOG.error("Received a commit query response for a nonexisting request");
                 return;
             }
-            for (CommitQueryCallback cb : cbs) {
+            for (CommitQueryCallback cb : query.answered()) {
                 cb.complete(r.committed);
             }
         } else if (msg instanceof CommittedTransactionReport) {
@@ -550,6 +834,7 @@ public class TSOClient extends SimpleChannelHandler {
             LargestDeletedTimestampReport r = (LargestDeletedTimestampReport) msg;
             largestDeletedTimestamp = r.largestDeletedTimestamp;
             committed.raiseLargestDeletedTransaction(r.largestDeletedTimestamp);
+            dropCachedTimestamps(r.largestDeletedTimestamp + 1);
         } else if (msg instanceof ZipperState) {
             // ignore
         } else {
@@ -574,6 +859,9 @@ public class TSOClient extends SimpleChannelHandler {
                         public void run() {
                             synchronized (state) {
                                 state = State.DISCONNECTED;
+                                if (closed) {
+                                    return;
+                                }
                                 try {
                                     connectIfNeeded();
                                 } catch (IOException e) {
@@ -598,32 +886,43 @@ public class TSOClient extends SimpleChannelHandler {
         LOG.error("Unrecoverable error in client, bailing out", cause);
         Exception e = new IOException("Unrecoverable error", cause);
         Op o = queuedOps.poll();
-        ;
         while (o != null) {
             o.error(e);
             o = queuedOps.poll();
         }
-        synchronized (createCallbacks) {
-            for (CreateCallback cb : createCallbacks) {
-                cb.error(e);
-            }
-            createCallbacks.clear();
-        }
+        failCallbacks(e);
+    }
 
-        synchronized (commitCallbacks) {
-            for (CommitCallback cb : commitCallbacks.values()) {
+    /**
+     * Fails the requests waiting for a response
+     */
+    private void failCallbacks(Exception e) {
+        List<CreateCallback> waiters;
+        synchronized (timestampCache) {
+            // the timestamps of a previous connection are not used
+            cachedTimestamp = cachedTimestampEnd = 0;
+            requestedTimestamps = 0;
+            waiters = new ArrayList<CreateCallback>(timestampWaiters);
+            timestampWaiters.clear();
+        }
+        for (CreateCallback cb : waiters) {
+            cb.error(e);
+        }
+        for (CreateCallback cb = createCallbacks.poll(); cb != null; cb = createCallbacks.poll()) {
+            cb.error(e);
+        }
+        for (Long id : commitCallbacks.keySet()) {
+            CommitCallback cb = commitCallbacks.remove(id);
+            if (cb != null) {
                 cb.error(e);
             }
-            commitCallbacks.clear();
         }
-
-        synchronized (isCommittedCallbacks) {
-            for (List<CommitQueryCallback> cbs : isCommittedCallbacks.values()) {
-                for (CommitQueryCallback cb : cbs) {
+        for (CommitQuery query : isCommittedCallbacks.keySet()) {
+            if (isCommittedCallbacks.remove(query) != null) {
+                for (CommitQueryCallback cb : query.answered()) {
                     cb.error(e);
                 }
             }
-            isCommittedCallbacks.clear();
         }
     }
 
@@ -631,6 +930,16 @@ public class TSOClient extends SimpleChannelHandler {
     }
 
     public void close() {
+        Channel channel;
+        synchronized (this) {
+            closed = true;
+            channel = this.channel;
+        }
+        retryTimer.cancel();
+        if (channel != null) {
+            // the I/O threads are released only once the channel is closed
+            channel.close().awaitUninterruptibly();
+        }
         bootstrap.releaseExternalResources();
     }
 }
@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2011 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. See accompanying LICENSE file.
+ */
+
+package com.yahoo.omid.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The result of an asynchronous operation of the {@link TransactionManager}.
+ * 
+ * Listeners are notified in the thread that completes the operation, which
+ * usually is the I/O thread of the {@link TSOClient}, so they must not block.
+ */
+public class TransactionFuture<V> implements Future<V> {
+
+    public interface Listener<V> {
+        public void operationComplete(TransactionFuture<V> future);
+    }
+
+    private V value;
+    private Exception cause;
+    private boolean done = false;
+    private List<Listener<V>> listeners = new ArrayList<Listener<V>>(1);
+
+    void setSuccess(V value) {
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            this.value = value;
+            done = true;
+            notifyAll();
+        }
+        notifyListeners();
+    }
+
+    void setFailure(Exception cause) {
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            this.cause = cause;
+            done = true;
+            notifyAll();
+        }
+        notifyListeners();
+    }
+
+    private void notifyListeners() {
+        // no listener is added once done
+        for (Listener<V> l : listeners) {
+            l.operationComplete(this);
+        }
+        listeners = null;
+    }
+
+    /**
+     * Adds a listener, which is notified right away if the operation is
+     * complete already
+     */
+    public void addListener(Listener<V> listener) {
+        synchronized (this) {
+            if (!done) {
+                listeners.add(listener);
+                return;
+            }
+        }
+        listener.operationComplete(this);
+    }
+
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    public synchronized boolean isSuccess() {
+        return done && cause == null;
+    }
+
+    /**
+     * @return the reason of the failure, or null if the operation didn't fail
+     */
+    public synchronized Exception getCause() {
+        return cause;
+    }
+
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    public boolean isCancelled() {
+        return false;
+    }
+
+    public synchronized V get() throws InterruptedException, ExecutionException {
+        while (!done) {
+            wait();
+        }
+        return result();
+    }
+
+    public synchronized V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+            TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!done) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, left);
+        }
+        return result();
+    }
+
+    private V result() throws ExecutionException {
+        if (cause != null) {
+            throw new ExecutionException(cause);
+        }
+        return value;
+    }
+}
@@ -22,6 +22,10 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -47,6 +51,7 @@ public class TransactionManager {
     private static Object lock = new Object();
     private Configuration conf;
     private HashMap<byte[], HTable> tableCache;
+    private Executor cleanupExecutor;
 
     public static void close() {
         tsoclient.close();
@@ -60,6 +65,15 @@ public class TransactionManager {
             }
         }
         tableCache = new HashMap<byte[], HTable>();
+        // the callbacks run in the I/O thread of the client, which must not
+        // block on the cleanup of aborted transactions
+        cleanupExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "omid-cleanup");
+                t.setDaemon(true);
+                return t;
+            }
+        });
     }
 
     /**
@@ -72,20 +86,42 @@ public class TransactionManager {
      * @throws TransactionException
      */
     public TransactionState beginTransaction() throws TransactionException {
-        SyncCreateCallback cb = new SyncCreateCallback();
+        TransactionFuture<TransactionState> future = beginTransactionAsync();
         try {
-            //这里会在另一个线程中执行，当执行完时会调用com.yahoo.omid.client.SyncCreateCallback.complete(long)
-            //然后complete(long)方法调用countDown，这样下面的cb.await()就会结束等待了
-            tsoclient.getNewTimestamp(cb); //获得一个新的时间戳，可以用于HBase的put，作为put的时间戳，rollback时可按些时间戳删除
-            cb.await(); //主线程等待
-        } catch (Exception e) {
+            //主线程等待，直到TSOClient的I/O线程收到TimestampResponse
+            return future.get();
+        } catch (InterruptedException e) {
             throw new TransactionException("Could not get new timestamp", e);
+        } catch (ExecutionException e) {
+            throw (TransactionException) e.getCause();
         }
-        if (cb.getException() != null) {
-            throw new TransactionException("Error retrieving timestamp", cb.getException());
-        }
+    }
+
+    /**
+     * Starts a new transaction without waiting for the timestamp.
+     *
+     * Many transactions can be started at once this way, and their requests
+     * share the writes to the TSO.
+     *
+     * @return Future of the object which identifies the transaction. It fails with a {@link TransactionException}.
+     */
+    public TransactionFuture<TransactionState> beginTransactionAsync() {
+        final TransactionFuture<TransactionState> future = new TransactionFuture<TransactionState>();
+        try {
+            //获得一个新的时间戳，可以用于HBase的put，作为put的时间戳，rollback时可按些时间戳删除
+            tsoclient.getNewTimestamp(new CreateCallback() {
+                public void complete(long startTimestamp) {
+                    future.setSuccess(new TransactionState(startTimestamp, tsoclient));
+                }
 
-        return new TransactionState(cb.getStartTimestamp(), tsoclient);
+                public void error(Exception e) {
+                    future.setFailure(new TransactionException("Error retrieving timestamp", e));
+                }
+            });
+        } catch (Exception e) {
+            future.setFailure(new TransactionException("Could not get new timestamp", e));
+        }
+        return future;
     }
 
     /**
@@ -97,30 +133,66 @@ public class TransactionManager {
      * @throws TransactionException
      */
     public void tryCommit(TransactionState transactionState) throws CommitUnsuccessfulException, TransactionException {
-        if (LOG.isTraceEnabled()) {
-            LOG.trace("tryCommit " + transactionState.getStartTimestamp());
-        }
-        SyncCommitCallback cb = new SyncCommitCallback();
+        TransactionFuture<TransactionState> future = tryCommitAsync(transactionState);
         try {
-            tsoclient.commit(transactionState.getStartTimestamp(), transactionState.getRows(), cb);
-            cb.await();
-        } catch (Exception e) {
+            future.get();
+        } catch (InterruptedException e) {
             throw new TransactionException("Could not commit", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CommitUnsuccessfulException) {
+                throw (CommitUnsuccessfulException) e.getCause();
+            }
+            throw (TransactionException) e.getCause();
         }
-        if (cb.getException() != null) {
-            throw new TransactionException("Error committing", cb.getException());
-        }
+    }
 
+    /**
+     * Commits a transaction without waiting for the result. If the transaction is aborted the changes are
+     * rolled back before the future fails with a {@link CommitUnsuccessfulException}.
+     *
+     * @param transactionState Object identifying the transaction to be committed.
+     * @return Future of the committed transaction. It fails with a {@link CommitUnsuccessfulException} or a
+     *         {@link TransactionException}.
+     */
+    public TransactionFuture<TransactionState> tryCommitAsync(final TransactionState transactionState) {
         if (LOG.isTraceEnabled()) {
-            LOG.trace("doneCommit " + transactionState.getStartTimestamp() + " TS_c: " + cb.getCommitTimestamp() + " Success: "
-                    + (cb.getResult() == TSOClient.Result.OK));
+            LOG.trace("tryCommit " + transactionState.getStartTimestamp());
         }
+        final TransactionFuture<TransactionState> future = new TransactionFuture<TransactionState>();
+        CommitCallback cb = new CommitCallback() {
+            public void complete(TSOClient.Result res, long commitTimestamp) {
+                if (LOG.isTraceEnabled()) {
+                    LOG.trace("doneCommit " + transactionState.getStartTimestamp() + " TS_c: " + commitTimestamp
+                            + " Success: " + (res == TSOClient.Result.OK));
+                }
+
+                if (res == TSOClient.Result.ABORTED) {
+                    cleanupExecutor.execute(new Runnable() {
+                        public void run() {
+                            try {
+                                cleanup(transactionState);
+                                future.setFailure(new CommitUnsuccessfulException());
+                            } catch (TransactionException e) {
+                                future.setFailure(e);
+                            }
+                        }
+                    });
+                    return;
+                }
+                transactionState.setCommitTimestamp(commitTimestamp);
+                future.setSuccess(transactionState);
+            }
 
-        if (cb.getResult() == TSOClient.Result.ABORTED) {
-            cleanup(transactionState);
-            throw new CommitUnsuccessfulException();
+            public void error(Exception e) {
+                future.setFailure(new TransactionException("Error committing", e));
+            }
+        };
+        try {
+            tsoclient.commit(transactionState.getStartTimestamp(), transactionState.getRows(), cb);
+        } catch (Exception e) {
+            future.setFailure(new TransactionException("Could not commit", e));
         }
-        transactionState.setCommitTimestamp(cb.getCommitTimestamp());
+        return future;
     }
 
     /**
@@ -148,7 +220,9 @@ public class TransactionManager {
         cleanup(transactionState);
     }
 
-    private void cleanup(final TransactionState transactionState) throws TransactionException {
+    // HTable is not thread safe, and aborted commits are cleaned up in the
+    // cleanup thread
+    private synchronized void cleanup(final TransactionState transactionState) throws TransactionException {
         Map<byte[], List<Delete>> deleteBatches = new HashMap<byte[], List<Delete>>();
         for (final RowKeyFamily rowkey : transactionState.getRows()) {
             List<Delete> batch = deleteBatches.get(rowkey.getTable());
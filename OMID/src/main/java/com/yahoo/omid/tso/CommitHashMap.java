@@ -16,44 +16,86 @@
 
 package com.yahoo.omid.tso;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.jboss.netty.util.internal.ConcurrentHashMap;
 
 /**
  * A hash map that uses byte[] for the key rather than longs.
- * 
- * Change it to lazyly clean the old entries, i.e., upon a hit This would reduce
- * the mem access benefiting from cache locality
- * 
+ *
+ * The entries live in open addressing tables in direct memory, so the map
+ * creates no objects per entry and does not add to the garbage collection
+ * work no matter how large it is. Each entry takes one slot of
+ * {@value #SLOT_SIZE} bytes: the insertion order, the commit timestamp, the
+ * hash, the row and table id lengths and the first {@value #KEY_CAPACITY}
+ * bytes of the row id concatenated with the table id. Longer keys are
+ * compared by their prefix and a 64 bit fingerprint of the whole key; a
+ * fingerprint collision can only make a row look committed later than it
+ * was, which aborts a transaction but never lets a conflict through.
+ *
+ * Entries are never removed. An entry becomes old once more than
+ * <code>initialCapacity * loadFactor</code> newer entries have been put, and
+ * a put reuses the first old slot it finds, raising the largest deleted
+ * timestamp to the commit timestamp of the entry it replaces.
+ *
+ * The rows are partitioned by their hash into shards, each with its own
+ * table, its own largest deleted timestamp and its own lock, so that
+ * transactions that write to different shards can be checked for conflicts
+ * in parallel. A thread must hold the locks of the shards of the rows it
+ * gets or puts (see {@link #lockShards(RowKey[])}); everything else is
+ * guarded by the lock of the shared TSOState.
+ *
  * @author maysam
  */
 
 class CommitHashMap {
 
-    native void init(int initialCapacity, int maxCommits, float loadFactor);
+    /**
+     * The size of a slot in bytes, which is the size of a cache line on most
+     * processors
+     */
+    static final int SLOT_SIZE = 64;
+
+    /**
+     * The number of key bytes stored in a slot
+     */
+    static final int KEY_CAPACITY = 32;
 
-    native static long gettotalput(); //是get total put
+    /**
+     * The number of slots that get and put look at before giving up
+     */
+    static final int MAX_PROBES = 16;
 
-    native static long gettotalget(); //是get total get
+    /**
+     * The largest power of two of slots that fits in a direct buffer
+     */
+    static final int MAX_CAPACITY = 1 << 24;
 
-    native static long gettotalwalkforput(); //是get total walk for put
+    // slot layout
+    private static final int ORDER = 0; // 0 if the slot has never been used
+    private static final int VALUE = 8;
+    private static final int FINGERPRINT = 16; // 0 if the key fits in the slot
+    private static final int HASH = 24;
+    private static final int ROW_LENGTH = 28;
+    private static final int TABLE_LENGTH = 30;
+    private static final int KEY = 32;
 
-    native static long gettotalwalkforget(); //是get total walk for get
+    private static final int COMMIT_SIZE = 16;
 
-    // Load the library
-    static {
-        //       System.out.println(System.getProperty("java.library.path"));
-        //       try {
-        //        System.out.println(new java.io.File(".").getCanonicalPath());
-        //    } catch (IOException e) {
-        //        // TODO Auto-generated catch block
-        //        e.printStackTrace();
-        //    }
-        System.loadLibrary("tso-commithashmap");
-    }
+    private final Shard[] shards;
+    private final int shardShift;
+
+    /**
+     * The start and commit timestamp pairs, indexed by the start timestamp
+     */
+    private final ByteBuffer commitTable;
+    private final int maxCommits;
 
     /**
      * Constructs a new, empty hashtable with a default capacity and load factor,
@@ -66,7 +108,7 @@ class CommitHashMap {
     /**
      * Constructs a new, empty hashtable with the specified initial capacity and
      * default load factor, which is <code>0.75</code>.
-     * 
+     *
      * @param initialCapacity
      *           the initial capacity of the hashtable.
      * @throws IllegalArgumentException
@@ -78,30 +120,119 @@ class CommitHashMap {
 
     /**
      * Constructs a new, empty hashtable with the specified initial capacity and
-     * the specified load factor.
-     * 
+     * the specified load factor and a single shard.
+     *
      * @param initialCapacity
      *           the initial capacity of the hashtable.
      * @param loadFactor
-     *           the load factor of the hashtable.
+     *           the fraction of the initial capacity kept before the oldest
+     *           entries are reused.
      * @throws IllegalArgumentException
-     *            if the initial capacity is less than zero, or if the load
-     *            factor is nonpositive.
+     *            if the initial capacity is less than zero or too large for
+     *            a direct buffer, or if the load factor is nonpositive.
      */
     public CommitHashMap(int initialCapacity, float loadFactor) {
+        this(initialCapacity, loadFactor, 1);
+    }
+
+    /**
+     * Constructs a new, empty hashtable with the specified initial capacity,
+     * load factor and number of shards.
+     *
+     * @param initialCapacity
+     *           the initial capacity of the hashtable, which is divided
+     *           among the shards and rounded up to a power of two per shard.
+     * @param loadFactor
+     *           the fraction of the initial capacity kept before the oldest
+     *           entries are reused.
+     * @param shards
+     *           the number of shards, which is rounded up to a power of two.
+     * @throws IllegalArgumentException
+     *            if the initial capacity is less than zero or too large for
+     *            a direct buffer, if the load factor is nonpositive or if the
+     *            number of shards is not positive.
+     */
+    public CommitHashMap(int initialCapacity, float loadFactor, int shards) {
         if (initialCapacity < 0) {
             throw new IllegalArgumentException("Illegal Capacity: " + initialCapacity);
         }
         if (loadFactor <= 0) {
             throw new IllegalArgumentException("Illegal Load: " + loadFactor);
         }
+        if (shards <= 0 || shards > 1 << 16) {
+            throw new IllegalArgumentException("Illegal Shards: " + shards);
+        }
         if (initialCapacity == 0) {
             initialCapacity = 1;
         }
 
+        int shardBits = 0;
+        while (1 << shardBits < shards) {
+            shardBits++;
+        }
+        this.shards = new Shard[1 << shardBits];
+        this.shardShift = 32 - shardBits;
+        int shardCapacity = (initialCapacity + this.shards.length - 1) >>> shardBits;
+        if (shardCapacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Illegal Capacity: " + initialCapacity);
+        }
+        for (int i = 0; i < this.shards.length; i++) {
+            this.shards[i] = new Shard(shardCapacity, loadFactor);
+        }
+
         //assuming the worst case that each transaction modifies a value, this is the right size because it is proportional to the hashmap size
-        int txnCommitArraySize = (int) (initialCapacity * loadFactor);
-        this.init(initialCapacity, txnCommitArraySize, loadFactor);
+        int txnCommitArraySize = Math.max(1, (int) (initialCapacity * loadFactor));
+        if (txnCommitArraySize > Integer.MAX_VALUE / COMMIT_SIZE) {
+            throw new IllegalArgumentException("Illegal Capacity: " + initialCapacity);
+        }
+        commitTable = ByteBuffer.allocateDirect(txnCommitArraySize * COMMIT_SIZE).order(ByteOrder.nativeOrder());
+        maxCommits = txnCommitArraySize;
+    }
+
+    int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Returns the shard of a row. The slot in a shard is taken from the low
+     * bits of the hash, so the shard is taken from the high bits of the hash
+     * multiplied by the golden ratio.
+     */
+    private int shardOf(int hash) {
+        return (int) (((hash * 0x9E3779B9L) & 0xFFFFFFFFL) >>> shardShift);
+    }
+
+    /**
+     * Locks the shards of the specified rows in ascending order, which
+     * cannot deadlock with another thread locking an overlapping set.
+     *
+     * @return the locked shards, to be passed to {@link #unlockShards(int[])}
+     */
+    int[] lockShards(RowKey[] rows) {
+        int[] locked = new int[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            locked[i] = shardOf(rows[i].hashCode());
+        }
+        Arrays.sort(locked);
+        int count = 0;
+        for (int i = 0; i < locked.length; i++) {
+            if (count == 0 || locked[count - 1] != locked[i]) {
+                locked[count++] = locked[i];
+            }
+        }
+        if (count < locked.length) {
+            locked = Arrays.copyOf(locked, count);
+        }
+        for (int shard : locked) {
+            shards[shard].lock.lock();
+        }
+        return locked;
+    }
+
+    void unlockShards(int[] locked) {
+        for (int i = locked.length - 1; i >= 0; i--) {
+            shards[locked[i]].lock.unlock();
+        }
     }
 
     /**
@@ -110,45 +241,109 @@ class CommitHashMap {
      * the one with the largest key, because (i) put always put the recent ones
      * ahead, (ii) a new put on the same key has always larger value (because
      * value is commit timestamp and the map is atmoic)
-     * 
+     *
      * @param key
      *           a key in the hashtable.
      * @return the value to which the key is mapped in this hashtable;
-     *         <code>null</code> if the key is not mapped to any value in this
+     *         <code>0</code> if the key is not mapped to any value in this
      *         hashtable.
-     * @see #put(int, Object)
+     * @see #put(byte[], byte[], long, int, long)
      */
-    native long get(byte[] rowId, byte[] tableId, int hash);
+    long get(byte[] rowId, byte[] tableId, int hash) {
+        return shards[shardOf(hash)].get(rowId, tableId, hash);
+    }
 
     /**
      * Maps the specified <code>key</code> to the specified <code>value</code> in
      * this hashtable. The key cannot be <code>null</code>.
-     * 
+     *
      * The value can be retrieved by calling the <code>get</code> method with a
      * key that is equal to the original key.
-     * 
+     *
      * It guarantees that if multiple entries with the same keys exist then the
      * first one is the most fresh one, i.e., with the largest value
-     * 
+     *
+     * If none of the probed slots is free or old, the least recently put of
+     * them is reused, which is as safe as reusing an old one because the
+     * largest deleted timestamp covers it.
+     *
      * @param key
      *           the hashtable key.
      * @param value
      *           the value.
+     * @return the largest deleted timestamp, raised to the largest deleted
+     *         timestamp of the shard of the key if it was larger
      * @throws NullPointerException
-     *            if the key is <code>null</code>. return true if the vlaue is
-     *            replaced
+     *            if the key is <code>null</code>.
      */
-    native long put(byte[] rowId, byte[] tableId, long value, int hash, long largestDeletedTimestamp);
+    long put(byte[] rowId, byte[] tableId, long value, int hash, long largestDeletedTimestamp) {
+        return Math.max(largestDeletedTimestamp, shards[shardOf(hash)].put(rowId, tableId, value, hash));
+    }
+
+    /**
+     * Returns the largest commit timestamp replaced in the shard of a row. A
+     * row that is not in the map may have been committed up to then.
+     */
+    long getLargestDeletedTimestamp(int hash) {
+        return shards[shardOf(hash)].largestDeletedTimestamp;
+    }
+
+    long gettotalput() { //是get total put
+        long total = 0;
+        for (Shard shard : shards) {
+            total += shard.totalput;
+        }
+        return total;
+    }
+
+    long gettotalget() { //是get total get
+        long total = 0;
+        for (Shard shard : shards) {
+            total += shard.totalget;
+        }
+        return total;
+    }
+
+    long gettotalwalkforput() { //是get total walk for put
+        long total = 0;
+        for (Shard shard : shards) {
+            total += shard.totalwalkforput;
+        }
+        return total;
+    }
+
+    long gettotalwalkforget() { //是get total walk for get
+        long total = 0;
+        for (Shard shard : shards) {
+            total += shard.totalwalkforget;
+        }
+        return total;
+    }
 
     /**
-     * Returns the commit timestamp 
+     * Returns the commit timestamp
      *
      * @param   startTimestamp   the transaction start timestamp
      * @return  commit timestamp if such mapping exist, 0 otherwise
      */
-    native long getCommittedTimestamp(long startTimestamp);
+    long getCommittedTimestamp(long startTimestamp) {
+        int offset = (int) (startTimestamp % maxCommits) * COMMIT_SIZE;
+        if (commitTable.getLong(offset) == startTimestamp) {
+            return commitTable.getLong(offset + 8);
+        }
+        return 0;//which means that there is not such entry in the array, either deleted or never entered
+    }
 
-    native long setCommitted(long startTimestamp, long commitTimestamp, long largestDeletedTimestamp);
+    long setCommitted(long startTimestamp, long commitTimestamp, long largestDeletedTimestamp) {
+        int offset = (int) (startTimestamp % maxCommits) * COMMIT_SIZE;
+        long commit = commitTable.getLong(offset + 8);
+        if (commitTable.getLong(offset) != startTimestamp && commit > largestDeletedTimestamp) {
+            largestDeletedTimestamp = commit;
+        }
+        commitTable.putLong(offset, startTimestamp);
+        commitTable.putLong(offset + 8, commitTimestamp);
+        return largestDeletedTimestamp;
+    }
 
     // set of half aborted transactions
     // TODO: set the initial capacity in a smarter way
@@ -174,90 +369,159 @@ class CommitHashMap {
     boolean isHalfAborted(long startTimestamp) {
         return halfAborted.contains(new AbortedTransaction(startTimestamp, 0));
     }
-}
 
-/*
- * class CommitHashMap {
- * 
- * private Entry table[];
- * 
- * private int count;
- * 
- * private int threshold;
- * 
- * private static long largestOrder = 1;
- * 
- * private TSOState sharedState = null;
- * 
- * public static int totalget = 0; public static int totalwalkforget = 0; public
- * static int totalput = 0; public static int totalwalkforput = 0;
- * 
- * private static class Entry { long order;//the assigned order after insert int
- * hash;//keep the computed hash for efficient comparison of keys byte[]
- * key;//which is row id; long tag;//which is the start timestamp; long
- * value;//which is commit timestamp Entry next;
- * 
- * protected Entry(byte[] key, int hash, long tag, long value, Entry next) {
- * this.order = ++largestOrder; this.hash = hash; this.key = key; this.tag =
- * tag; this.value = value; this.next = next; } protected Entry(Entry next) {
- * this.order = 0; this.hash = 0; this.key = new byte[8]; this.tag = 0;
- * this.value = 0; this.next = next; } }
- * 
- * public CommitHashMap(TSOState state) { this(1000, 0.75f, state); }
- * 
- * public CommitHashMap(int initialCapacity, TSOState state) {
- * this(initialCapacity, 0.75f, state); }
- * 
- * public CommitHashMap(int initialCapacity, float loadFactor, TSOState state) {
- * super(); if (initialCapacity < 0) { throw new
- * IllegalArgumentException("Illegal Capacity: " + initialCapacity); } if
- * (loadFactor <= 0) { throw new IllegalArgumentException("Illegal Load: " +
- * loadFactor); } if (initialCapacity == 0) { initialCapacity = 1; }
- * 
- * table = new Entry[initialCapacity]; this.sharedState = state; threshold =
- * (int) (initialCapacity * loadFactor); //Initialze the table not to interfere
- * with garbage collection
- * System.out.println("MEMORY initialization start ..."); for (int i = 0; i <
- * initialCapacity; i++) { if (i%1000000==0) System.out.println("MEMORY i="+ i);
- * Entry e1 = new Entry(null); Entry e2 = new Entry(null); Entry e3 = new
- * Entry(null); e1.next = e2; e2.next = e3; table[i] = e1; }
- * System.out.println("MEMORY initialization end"); }
- * 
- * public int size() { return count; }
- * 
- * public boolean isEmpty() { return count == 0; }
- * 
- * public long get(byte[] key, int hash) { totalget++; totalwalkforget++;//at
- * least one for array access Entry tab[] = table; //int hash = (int)key; int
- * index = (hash & 0x7FFFFFFF) % tab.length; for (Entry e = tab[index]; e !=
- * null; e = e.next) { totalwalkforget++; if (e.order == 0)//empty break; if
- * (e.hash == hash) //if (java.util.Arrays.equals(e.key, key)) //if (e.key ==
- * key) return e.value; } return 0; }
- * 
- * public boolean put(byte[] key, long tag, long value, int hash) { totalput++;
- * totalwalkforput++;//at least one for array access // Makes sure the key is
- * not already in the hashtable. Entry tab[] = table; //int hash = (int)key; int
- * index = (hash & 0x7FFFFFFF) % tab.length; Entry firstReference = null;
- * //boolean thereIsOld = false; for (Entry e = tab[index]; e != null; e =
- * e.next) { totalwalkforput++; boolean isOld = e.order == 0 ? true :
- * largestOrder - e.order > threshold; if (isOld) { if (e.value >
- * sharedState.largestDeletedTimestamp) sharedState.largestDeletedTimestamp =
- * e.value; if (firstReference != null) {//swap it with e //e.key =
- * firstReference.key; for (byte b = 0; b < 8; b++) e.key[b] =
- * firstReference.key[b]; e.hash = firstReference.hash; e.tag =
- * firstReference.tag; e.value = firstReference.value; e.order =
- * firstReference.order; e = firstReference; } for (byte b = 0; b < 8; b++)
- * e.key[b] = key[b]; //e.key = key; e.hash = hash; e.tag = tag; e.value =
- * value; e.order = ++largestOrder; totalgced++; totalgcrun++; return true; }
- * //update the first reference to the key if (e.hash == hash && firstReference
- * == null) //if (java.util.Arrays.equals(e.key, key) && firstReference == null)
- * //if (e.key == key && firstReference == null) firstReference = e; //if
- * (!thereIsOld && isOld)//there are some old items here //thereIsOld = true; }
- * 
- * // Creates the new entry. Entry e = new Entry(key, hash, tag, value,
- * tab[index]); if (count % 100000 == 0)
- * System.out.println("NNNNNNNNNNNNNNNNNNNew Entry " + count); tab[index] = e;
- * count++; return false; }
- * 
- * public static int totalgcrun = 0; public static int totalgced = 0; }
- */
+    /**
+     * One partition of the rows, guarded by its own lock
+     */
+    private static final class Shard {
+
+        final ReentrantLock lock = new ReentrantLock();
+
+        private final ByteBuffer table;
+        private final int mask;
+
+        /**
+         * An entry could be reused if its older than this threshold
+         */
+        private final int threshold;
+
+        private long largestOrder = 0;
+
+        long largestDeletedTimestamp = 0;
+
+        long totalput;
+        long totalget;
+        long totalwalkforput;
+        long totalwalkforget;
+
+        // the key of the current get or put, packed the way it is stored in a slot
+        private final long[] keyWords = new long[KEY_CAPACITY / 8];
+        private int rowLength;
+        private int tableLength;
+        private long fingerprint;
+
+        Shard(int initialCapacity, float loadFactor) {
+            int capacity = 1;
+            while (capacity < initialCapacity) {
+                capacity <<= 1;
+            }
+            table = ByteBuffer.allocateDirect(capacity * SLOT_SIZE).order(ByteOrder.nativeOrder());
+            mask = capacity - 1;
+            threshold = (int) (initialCapacity * loadFactor);
+        }
+
+        long get(byte[] rowId, byte[] tableId, int hash) {
+            totalget++;
+            loadKey(rowId, tableId);
+            for (int i = 0; i < MAX_PROBES; i++) {
+                totalwalkforget++;
+                int offset = ((hash + i) & mask) * SLOT_SIZE;
+                if (table.getLong(offset + ORDER) == 0) {//empty
+                    break;
+                }
+                if (matches(offset, hash)) {
+                    return table.getLong(offset + VALUE);
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Returns the largest deleted timestamp of this shard after the put.
+         */
+        long put(byte[] rowId, byte[] tableId, long value, int hash) {
+            totalput++;
+            loadKey(rowId, tableId);
+            int victim = -1;
+            long victimOrder = Long.MAX_VALUE;
+            boolean free = false;
+            for (int i = 0; i < MAX_PROBES; i++) {
+                totalwalkforput++;
+                int offset = ((hash + i) & mask) * SLOT_SIZE;
+                long order = table.getLong(offset + ORDER);
+                if (order == 0) {
+                    // slots are never emptied, so the key is not further along
+                    if (!free) {
+                        victim = offset;
+                    }
+                    break;
+                }
+                // an old slot may come before the key, which must not be left
+                // behind as an older duplicate
+                if (matches(offset, hash)) {
+                    table.putLong(offset + VALUE, value);
+                    table.putLong(offset + ORDER, ++largestOrder);
+                    return largestDeletedTimestamp;
+                }
+                if (free) {
+                    continue;
+                }
+                if (largestOrder - order > threshold) {
+                    victim = offset;
+                    free = true;
+                } else if (order < victimOrder) {
+                    victimOrder = order;
+                    victim = offset;
+                }
+            }
+
+            long replaced = table.getLong(victim + VALUE);
+            if (replaced > largestDeletedTimestamp) {
+                largestDeletedTimestamp = replaced;
+            }
+            table.putLong(victim + ORDER, ++largestOrder);
+            table.putLong(victim + VALUE, value);
+            table.putLong(victim + FINGERPRINT, fingerprint);
+            table.putInt(victim + HASH, hash);
+            table.putShort(victim + ROW_LENGTH, (short) rowLength);
+            table.putShort(victim + TABLE_LENGTH, (short) tableLength);
+            for (int i = 0; i < keyWords.length; i++) {
+                table.putLong(victim + KEY + i * 8, keyWords[i]);
+            }
+            return largestDeletedTimestamp;
+        }
+
+        /**
+         * Packs the first KEY_CAPACITY bytes of the row id followed by the table id
+         * into keyWords and fingerprints the keys that do not fit.
+         */
+        private void loadKey(byte[] rowId, byte[] tableId) {
+            rowLength = rowId.length;
+            tableLength = tableId.length;
+            Arrays.fill(keyWords, 0);
+            int keyLength = Math.min(rowLength + tableLength, KEY_CAPACITY);
+            for (int i = 0; i < keyLength; i++) {
+                long b = (i < rowLength ? rowId[i] : tableId[i - rowLength]) & 0xFF;
+                keyWords[i >>> 3] |= b << ((i & 7) << 3);
+            }
+
+            if (rowLength + tableLength <= KEY_CAPACITY) {
+                fingerprint = 0;
+                return;
+            }
+            // FNV-1a over the whole key
+            long h = 0xcbf29ce484222325L;
+            for (byte b : rowId) {
+                h = (h ^ (b & 0xFF)) * 0x100000001b3L;
+            }
+            for (byte b : tableId) {
+                h = (h ^ (b & 0xFF)) * 0x100000001b3L;
+            }
+            fingerprint = h;
+        }
+
+        private boolean matches(int offset, int hash) {
+            if (table.getInt(offset + HASH) != hash || table.getShort(offset + ROW_LENGTH) != (short) rowLength
+                    || table.getShort(offset + TABLE_LENGTH) != (short) tableLength) {
+                return false;
+            }
+            int words = (Math.min(rowLength + tableLength, KEY_CAPACITY) + 7) >>> 3;
+            for (int i = 0; i < words; i++) {
+                if (table.getLong(offset + KEY + i * 8) != keyWords[i]) {
+                    return false;
+                }
+            }
+            return table.getLong(offset + FINGERPRINT) == fingerprint;
+        }
+    }
+}
@@ -53,6 +53,9 @@ import com.yahoo.omid.tso.messages.CommitQueryResponse;
 import com.yahoo.omid.tso.messages.CommitRequest;
 import com.yahoo.omid.tso.messages.CommitResponse;
 import com.yahoo.omid.tso.messages.FullAbortRequest;
+import com.yahoo.omid.tso.messages.TimestampRangeRequest;
+import com.yahoo.omid.tso.messages.TimestampRangeResponse;
+import com.yahoo.omid.tso.messages.TimestampReleaseRequest;
 import com.yahoo.omid.tso.messages.TimestampRequest;
 import com.yahoo.omid.tso.messages.TimestampResponse;
 import com.yahoo.omid.tso.persistence.LoggerAsyncCallback.AddRecordCallback;
@@ -164,6 +167,12 @@ public class TSOHandler extends SimpleChannelHandler {
         if (msg instanceof TimestampRequest) {
             handle((TimestampRequest) msg, ctx);
             return;
+        } else if (msg instanceof TimestampRangeRequest) {
+            handle((TimestampRangeRequest) msg, ctx);
+            return;
+        } else if (msg instanceof TimestampReleaseRequest) {
+            handle((TimestampReleaseRequest) msg, ctx);
+            return;
         } else if (msg instanceof CommitRequest) {
             handle((CommitRequest) msg, ctx);
             return;
@@ -233,7 +242,59 @@ public class TSOHandler extends SimpleChannelHandler {
                 return;
             }
         }
+        sendTimestamp(new TimestampResponse(timestamp), ctx);
+    }
+
+    /**
+     * Handle the TimestampRangeRequest message
+     */
+    public void handle(TimestampRangeRequest msg, ChannelHandlerContext ctx) {
+        int count = Math.max(1, Math.min(msg.count, TimestampRangeRequest.MAX_COUNT));
+        long timestamp;
+        synchronized (sharedState) {
+            try {
+                timestamp = timestampOracle.next(count, sharedState.toWAL);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+        }
+        sendTimestamp(new TimestampRangeResponse(timestamp, count), ctx);
+    }
+
+    /**
+     * Handle the TimestampReleaseRequest message. The released timestamps
+     * are taken as empty transactions, as a read only commit does, so they
+     * don't linger as uncommitted. The ones the largest deleted timestamp
+     * passed are half aborted already, and they are fully aborted here.
+     */
+    public void handle(TimestampReleaseRequest msg, ChannelHandlerContext ctx) {
+        int count = Math.max(0, Math.min(msg.count, TimestampRangeRequest.MAX_COUNT));
+        synchronized (sharedState) {
+            for (long id = msg.startTimestamp; id < msg.startTimestamp + count; id++) {
+                if (id > sharedState.largestDeletedTimestamp) {
+                    sharedState.uncommited.commit(id);
+                } else if (sharedState.hashmap.isHalfAborted(id)) {
+                    try {
+                        sharedState.toWAL.writeByte(LoggerProtocol.FULLABORT);
+                        sharedState.toWAL.writeLong(id);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                    sharedState.processFullAbort(id);
+                    synchronized (sharedMsgBufLock) {
+                        queueFullAbort(id);
+                    }
+                }
+            }
+        }
+    }
 
+    /**
+     * Sends the reports the client hasn't seen yet followed by the response,
+     * so the client knows of every commit before the timestamps it gets
+     */
+    private void sendTimestamp(TSOMessage response, ChannelHandlerContext ctx) {
         ReadingBuffer buffer;
         Channel channel = ctx.getChannel();
         boolean bootstrap = false;
@@ -270,7 +331,7 @@ public class TSOHandler extends SimpleChannelHandler {
             cb = buffer.flush(future);
         }
         Channels.write(ctx, future, cb); //cb中放的是什么消息类型在client进行TSODecoder.decode时才懂
-        Channels.write(channel, new TimestampResponse(timestamp));
+        Channels.write(channel, response);
     }
 
     ChannelBuffer cb = ChannelBuffers.buffer(10); //无用字段
@@ -324,12 +385,20 @@ public class TSOHandler extends SimpleChannelHandler {
 
     /**
      * Handle the CommitRequest message
+     *
+     * The rows are checked for conflicts and updated holding only the locks
+     * of their shards of the hash map, so commits of rows in different shards
+     * run in parallel. The lock of the shared state is held just to assign
+     * the commit timestamp and to log and replicate the outcome, which keeps
+     * the timestamps, the WAL and the replicated messages in the same order.
      */
     public void handle(CommitRequest msg, ChannelHandlerContext ctx) {
         CommitResponse reply = new CommitResponse(msg.startTimestamp);
-        ByteArrayOutputStream baos = sharedState.baos;
-        DataOutputStream toWAL = sharedState.toWAL;
-        synchronized (sharedState) {
+        CommitHashMap hashmap = sharedState.hashmap;
+        boolean rowsCommitted = false;
+        long largestDeletedTimestamp = 0;
+        int[] shards = hashmap.lockShards(msg.rows);
+        try {
             //0. check if it should abort
             if (msg.startTimestamp < timestampOracle.first()) {
                 reply.committed = false;
@@ -342,130 +411,166 @@ public class TSOHandler extends SimpleChannelHandler {
                 //1. check the write-write conflicts
                 for (RowKey r : msg.rows) {
                     long value;
-                    value = sharedState.hashmap.get(r.getRow(), r.getTable(), r.hashCode());
+                    value = hashmap.get(r.getRow(), r.getTable(), r.hashCode());
+                    long shardLargestDeletedTimestamp = hashmap.getLargestDeletedTimestamp(r.hashCode());
                     //value是0，说明之前没有对r.getTable()表中的r.getRow()行进行过修改
                     //value != 0，说明上一次事务的时间戳比当前事务的时间戳大时，中止当前事务
                     if (value != 0 && value > msg.startTimestamp) {
                         reply.committed = false;//set as abort
                         break;
-                        //这个else分枝无用 https://github.com/yahoo/omid/issues/27
-                    } else if (value == 0 && sharedState.largestDeletedTimestamp > msg.startTimestamp) {
-                        //then it could have been committed after start timestamp but deleted by recycling
+                    } else if (value <= shardLargestDeletedTimestamp && shardLargestDeletedTimestamp > msg.startTimestamp) {
+                        //then a later commit of the row could have been deleted by recycling in this shard,
+                        //before the largest deleted timestamp of the state was raised
                         LOG.warn("Old transaction {Start timestamp  " + msg.startTimestamp + "} {Largest deleted timestamp "
-                                + sharedState.largestDeletedTimestamp + "}");
+                                + shardLargestDeletedTimestamp + "}");
                         reply.committed = false;//set as abort
                         break;
                     }
                 }
             }
 
-            if (reply.committed) {
-                //2. commit
-                try {
-                    long commitTimestamp = timestampOracle.next(toWAL);
-                    sharedState.uncommited.commit(commitTimestamp);
-                    sharedState.uncommited.commit(msg.startTimestamp);
-                    reply.commitTimestamp = commitTimestamp;
-                    if (msg.rows.length > 0) {
-                        if (LOG.isTraceEnabled()) {
-                            LOG.trace("Adding commit to WAL");
-                        }
-                        toWAL.writeByte(LoggerProtocol.COMMIT);
-                        toWAL.writeLong(msg.startTimestamp);
-                        toWAL.writeLong(commitTimestamp);
+            synchronized (sharedState) {
+                if (reply.committed && msg.startTimestamp < sharedState.largestDeletedTimestamp) {
+                    // Raised while the rows were checked, so it may have been half aborted already
+                    reply.committed = false;//set as abort
+                    LOG.warn("Too old starttimestamp: ST " + msg.startTimestamp + " MAX " + sharedState.largestDeletedTimestamp);
+                }
 
-                        long oldLargestDeletedTimestamp = sharedState.largestDeletedTimestamp;
+                ByteArrayOutputStream baos = sharedState.baos;
+                DataOutputStream toWAL = sharedState.toWAL;
+                if (reply.committed) {
+                    //2. commit
+                    try {
+                        long commitTimestamp = timestampOracle.next(toWAL);
+                        sharedState.uncommited.commit(commitTimestamp);
+                        sharedState.uncommited.commit(msg.startTimestamp);
+                        reply.commitTimestamp = commitTimestamp;
+                        if (msg.rows.length > 0) {
+                            if (LOG.isTraceEnabled()) {
+                                LOG.trace("Adding commit to WAL");
+                            }
+                            toWAL.writeByte(LoggerProtocol.COMMIT);
+                            toWAL.writeLong(msg.startTimestamp);
+                            toWAL.writeLong(commitTimestamp);
 
-                        for (RowKey r : msg.rows) {
-                            sharedState.largestDeletedTimestamp = sharedState.hashmap.put(r.getRow(), r.getTable(),
-                                    commitTimestamp, r.hashCode(), oldLargestDeletedTimestamp);
-                        }
+                            long oldLargestDeletedTimestamp = sharedState.largestDeletedTimestamp;
 
-                        //会改变largestDeletedTimestamp
-                        sharedState.processCommit(msg.startTimestamp, commitTimestamp); //放到CommitHashMap中
-                        if (sharedState.largestDeletedTimestamp > oldLargestDeletedTimestamp) {
-                            toWAL.writeByte(LoggerProtocol.LARGESTDELETEDTIMESTAMP);
-                            toWAL.writeLong(sharedState.largestDeletedTimestamp);
-                            Set<Long> toAbort = sharedState.uncommited
-                                    .raiseLargestDeletedTransaction(sharedState.largestDeletedTimestamp);
-                            if (LOG.isWarnEnabled() && !toAbort.isEmpty()) {
-                                LOG.warn("Slow transactions after raising max: " + toAbort.size());
+                            //会改变largestDeletedTimestamp
+                            sharedState.processCommit(msg.startTimestamp, commitTimestamp); //放到CommitHashMap中
+                            if (sharedState.largestDeletedTimestamp > oldLargestDeletedTimestamp) {
+                                raiseLargestDeletedTimestamp();
                             }
                             synchronized (sharedMsgBufLock) {
-                                for (Long id : toAbort) {
-                                    sharedState.hashmap.setHalfAborted(id);
-                                    queueHalfAbort(id);
-                                }
-                                queueLargestIncrease(sharedState.largestDeletedTimestamp);
+                                //往currentBuffer的writeBuffer写数据
+                                queueCommit(msg.startTimestamp, commitTimestamp);
                             }
+                            rowsCommitted = true;
                         }
-                        if (sharedState.largestDeletedTimestamp > sharedState.previousLargestDeletedTimestamp
-                                + TSOState.MAX_ITEMS) {
-                            // schedule snapshot
-                            executor.submit(createAbortedSnaphostTask);
-                            sharedState.previousLargestDeletedTimestamp = sharedState.largestDeletedTimestamp;
-                        }
-                        synchronized (sharedMsgBufLock) {
-                            //往currentBuffer的writeBuffer写数据
-                            queueCommit(msg.startTimestamp, commitTimestamp);
-                        }
+                    } catch (IOException e) {
+                        e.printStackTrace();
                     }
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            } else { //add it to the aborted list
-                abortCount++;
-                try {
-                    toWAL.writeByte(LoggerProtocol.ABORT);
-                    toWAL.writeLong(msg.startTimestamp);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-                //processXXX方法用来操作CommitHashMap和Uncommited
-                sharedState.processAbort(msg.startTimestamp);
+                } else { //add it to the aborted list
+                    abortCount++;
+                    try {
+                        toWAL.writeByte(LoggerProtocol.ABORT);
+                        toWAL.writeLong(msg.startTimestamp);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                    //processXXX方法用来操作CommitHashMap和Uncommited
+                    sharedState.processAbort(msg.startTimestamp);
 
-                //而queueXXX方法对应Zipper，用来编码字节到输出ChannelBuffer
-                synchronized (sharedMsgBufLock) {
-                    queueHalfAbort(msg.startTimestamp);
+                    //而queueXXX方法对应Zipper，用来编码字节到输出ChannelBuffer
+                    synchronized (sharedMsgBufLock) {
+                        queueHalfAbort(msg.startTimestamp);
+                    }
                 }
-            }
 
-            TSOHandler.transferredBytes.incrementAndGet();
+                TSOHandler.transferredBytes.incrementAndGet();
 
-            ChannelandMessage cam = new ChannelandMessage(ctx, reply);
+                ChannelandMessage cam = new ChannelandMessage(ctx, reply);
 
-            sharedState.nextBatch.add(cam);
-            //在这里才发响应消息，如果缓存字节不够大，则不发响应消息
-            if (sharedState.baos.size() >= TSOState.BATCH_SIZE) {
-                if (LOG.isTraceEnabled()) {
-                    LOG.trace("Going to add record of size " + sharedState.baos.size());
-                }
-                //sharedState.lh.asyncAddEntry(baos.toByteArray(), this, sharedState.nextBatch);
-                sharedState.addRecord(baos.toByteArray(), new AddRecordCallback() {
-                    @Override
-                    public void addRecordComplete(int rc, Object ctx) {
-                        if (rc != Code.OK) {
-                            LOG.warn("Write failed: " + LoggerException.getMessage(rc));
-
-                        } else {
-                            //在这里才发响应消息
-                            synchronized (callbackLock) {
-                                @SuppressWarnings("unchecked")
-                                ArrayList<ChannelandMessage> theBatch = (ArrayList<ChannelandMessage>) ctx;
-                                for (ChannelandMessage cam : theBatch) {
-                                    Channels.write(cam.ctx, Channels.succeededFuture(cam.ctx.getChannel()), cam.msg);
+                sharedState.nextBatch.add(cam);
+                //在这里才发响应消息，如果缓存字节不够大，则不发响应消息
+                if (sharedState.baos.size() >= TSOState.BATCH_SIZE) {
+                    if (LOG.isTraceEnabled()) {
+                        LOG.trace("Going to add record of size " + sharedState.baos.size());
+                    }
+                    //sharedState.lh.asyncAddEntry(baos.toByteArray(), this, sharedState.nextBatch);
+                    sharedState.addRecord(baos.toByteArray(), new AddRecordCallback() {
+                        @Override
+                        public void addRecordComplete(int rc, Object ctx) {
+                            if (rc != Code.OK) {
+                                LOG.warn("Write failed: " + LoggerException.getMessage(rc));
+
+                            } else {
+                                //在这里才发响应消息
+                                synchronized (callbackLock) {
+                                    @SuppressWarnings("unchecked")
+                                    ArrayList<ChannelandMessage> theBatch = (ArrayList<ChannelandMessage>) ctx;
+                                    for (ChannelandMessage cam : theBatch) {
+                                        Channels.write(cam.ctx, Channels.succeededFuture(cam.ctx.getChannel()), cam.msg);
+                                    }
                                 }
-                            }
 
+                            }
                         }
-                    }
-                }, sharedState.nextBatch); //sharedState.nextBatch传给addRecordComplete方法的Object ctx参数
-                sharedState.nextBatch = new ArrayList<ChannelandMessage>(sharedState.nextBatch.size() + 5);
-                sharedState.baos.reset();
+                    }, sharedState.nextBatch); //sharedState.nextBatch传给addRecordComplete方法的Object ctx参数
+                    sharedState.nextBatch = new ArrayList<ChannelandMessage>(sharedState.nextBatch.size() + 5);
+                    sharedState.baos.reset();
+                }
             }
 
+            //3. update the rows, which are still locked, with the commit timestamp
+            if (rowsCommitted) {
+                for (RowKey r : msg.rows) {
+                    largestDeletedTimestamp = hashmap.put(r.getRow(), r.getTable(), reply.commitTimestamp, r.hashCode(),
+                            largestDeletedTimestamp);
+                }
+            }
+        } finally {
+            hashmap.unlockShards(shards);
+        }
+
+        if (largestDeletedTimestamp > sharedState.largestDeletedTimestamp) {
+            synchronized (sharedState) {
+                if (largestDeletedTimestamp > sharedState.largestDeletedTimestamp) {
+                    sharedState.largestDeletedTimestamp = largestDeletedTimestamp;
+                    try {
+                        raiseLargestDeletedTimestamp();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
         }
+    }
 
+    /**
+     * Logs and replicates a raise of the largest deleted timestamp and half
+     * aborts the transactions that started before it and are still running.
+     * Must be called holding the lock of the shared state.
+     */
+    private void raiseLargestDeletedTimestamp() throws IOException {
+        DataOutputStream toWAL = sharedState.toWAL;
+        toWAL.writeByte(LoggerProtocol.LARGESTDELETEDTIMESTAMP);
+        toWAL.writeLong(sharedState.largestDeletedTimestamp);
+        Set<Long> toAbort = sharedState.uncommited.raiseLargestDeletedTransaction(sharedState.largestDeletedTimestamp);
+        if (LOG.isWarnEnabled() && !toAbort.isEmpty()) {
+            LOG.warn("Slow transactions after raising max: " + toAbort.size());
+        }
+        synchronized (sharedMsgBufLock) {
+            for (Long id : toAbort) {
+                sharedState.hashmap.setHalfAborted(id);
+                queueHalfAbort(id);
+            }
+            queueLargestIncrease(sharedState.largestDeletedTimestamp);
+        }
+        if (sharedState.largestDeletedTimestamp > sharedState.previousLargestDeletedTimestamp + TSOState.MAX_ITEMS) {
+            // schedule snapshot
+            executor.submit(createAbortedSnaphostTask);
+            sharedState.previousLargestDeletedTimestamp = sharedState.largestDeletedTimestamp;
+        }
     }
 
     /**
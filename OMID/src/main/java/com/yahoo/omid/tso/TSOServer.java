@@ -39,6 +39,7 @@ import org.jboss.netty.handler.execution.OrderedMemoryAwareThreadPoolExecutor;
 import org.jboss.netty.util.ObjectSizeEstimator;
 
 import com.yahoo.omid.tso.persistence.BookKeeperStateBuilder;
+import com.yahoo.omid.tso.persistence.FileStateBuilder;
 import com.yahoo.omid.tso.persistence.LoggerAsyncCallback.AddRecordCallback;
 import com.yahoo.omid.tso.persistence.LoggerProtocol;
 
@@ -99,8 +100,8 @@ public class TSOServer implements Runnable {
         // Create the global ChannelGroup
         ChannelGroup channelGroup = new DefaultChannelGroup(TSOServer.class.getName());
         // threads max
-        // int maxThreads = Runtime.getRuntime().availableProcessors() *2 + 1;
-        int maxThreads = 5;
+        // commits of rows in different shards of the hash map run in parallel
+        int maxThreads = Runtime.getRuntime().availableProcessors() * 2 + 1;
         // Memory limitation: 1MB by channel, 1GB global, 100 ms of timeout
         ThreadPoolExecutor pipelineExecutor = new OrderedMemoryAwareThreadPoolExecutor(maxThreads, 1048576, 1073741824, 100,
                 TimeUnit.MILLISECONDS, new ObjectSizeEstimator() {
@@ -114,7 +115,11 @@ public class TSOServer implements Runnable {
         // TODO: make it singleton
         //TimestampOracle timestampOracle = new TimestampOracle();
         // The wrapper for the shared state of TSO
-        state = BookKeeperStateBuilder.getState(this.config);
+        if (config.getLogDir() != null) {
+            state = FileStateBuilder.getState(this.config);
+        } else {
+            state = BookKeeperStateBuilder.getState(this.config);
+        }
 
         if (state == null) {
             LOG.error("Couldn't build state");
@@ -131,6 +136,7 @@ public class TSOServer implements Runnable {
         System.out.println("PARAM MAX_ITEMS: " + TSOState.MAX_ITEMS);
         System.out.println("PARAM BATCH_SIZE: " + TSOState.BATCH_SIZE);
         System.out.println("PARAM LOAD_FACTOR: " + TSOState.LOAD_FACTOR);
+        System.out.println("PARAM SHARDS: " + state.hashmap.getShardCount());
         System.out.println("PARAM MAX_THREADS: " + maxThreads);
 
         final TSOHandler handler = new TSOHandler(channelGroup, state);
@@ -34,6 +34,12 @@ public class TSOServerConfig {
         return new TSOServerConfig(port, batch, recoveryEnabled, ensSize, qSize, zkservers);
     }
 
+    static public TSOServerConfig configFactory(int port, int batch, String logDir) {
+        TSOServerConfig config = new TSOServerConfig(port, batch, true, 0, 0, null);
+        config.logDir = logDir;
+        return config;
+    }
+
     static public TSOServerConfig parseConfig(String args[]) {
         TSOServerConfig config = new TSOServerConfig();
 
@@ -59,6 +65,9 @@ public class TSOServerConfig {
     @Parameter(names = "-zk", description = "ZooKeeper ensemble: host1:port1,host2:port2...")
     private String zkServers;
 
+    @Parameter(names = "-logdir", description = "Logs operations to local files in this directory instead of BookKeeper, and recovers from them")
+    private String logDir;
+
     @Parameter(names = "-ensemble", description = "WAL ensemble size")
     private int ensemble;
 
@@ -70,6 +79,7 @@ public class TSOServerConfig {
         this.batch = Integer.parseInt(System.getProperty("BATCH", "0"));
         this.recoveryEnabled = Boolean.parseBoolean(System.getProperty("RECOVERABLE", "false"));
         this.zkServers = System.getProperty("ZKSERVERS");
+        this.logDir = System.getProperty("LOGDIR");
         this.ensemble = Integer.parseInt(System.getProperty("ENSEMBLE", "3"));
         this.quorum = Integer.parseInt(System.getProperty("QUORUM", "2"));
     }
@@ -99,6 +109,10 @@ public class TSOServerConfig {
         return zkServers;
     }
 
+    public String getLogDir() {
+        return logDir;
+    }
+
     public int getEnsembleSize() {
         return ensemble;
     }
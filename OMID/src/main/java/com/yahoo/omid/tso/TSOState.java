@@ -69,6 +69,20 @@ public class TSOState {
      */
     static final public float LOAD_FACTOR = 0.5f;
 
+    /**
+     * The number of shards of the hash map, which bounds the number of
+     * commits checked for conflicts in parallel. By default one per processor,
+     * but no more than one per 1024 entries
+     */
+    static public int SHARDS = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), MAX_ITEMS / 1024));
+    static {
+        try {
+            SHARDS = Integer.valueOf(System.getProperty("omid.shards"));
+        } catch (Exception e) {
+            // ignore, usedefault
+        }
+    };
+
     /**
      * Object that implements the logic to log records
      * for recoverability
@@ -96,16 +110,16 @@ public class TSOState {
     /**
      * Largest Deleted Timestamp
      */
-    public long largestDeletedTimestamp = 0;
+    public volatile long largestDeletedTimestamp = 0;
     public long previousLargestDeletedTimestamp = 0;
 
     public SharedMessageBuffer sharedMessageBuffer = new SharedMessageBuffer();
 
     /**
      * The hash map to to keep track of recently committed rows
-     * each bucket is about 20 byte, so the initial capacity is 20MB
+     * each entry takes a 64 byte slot of direct memory
      */
-    public CommitHashMap hashmap = new CommitHashMap(MAX_ITEMS, LOAD_FACTOR);
+    public CommitHashMap hashmap = new CommitHashMap(MAX_ITEMS, LOAD_FACTOR, SHARDS);
 
     public Uncommited uncommited;
 
@@ -71,6 +71,32 @@ public class TimestampOracle {
         return last;
     }
 
+    /**
+     * Must be called holding an exclusive lock
+     * 
+     * Reserves count consecutive timestamps, with at most one record in the
+     * WAL, so a recovered oracle starts after all of them
+     * 
+     * return the first timestamp of the range
+     */
+    public long next(int count, DataOutputStream toWal) throws IOException {
+        long first = last + 1;
+        last += count;
+        if (last >= maxTimestamp) {
+            maxTimestamp = last + TIMESTAMP_BATCH;
+            toWal.writeByte(LoggerProtocol.TIMESTAMPORACLE);
+            toWal.writeLong(maxTimestamp);
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("Logging TimestampOracle " + maxTimestamp);
+            }
+        }
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Next timestamps: " + first + "-" + last);
+        }
+
+        return first;
+    }
+
     public long get() {
         return last;
     }
@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) 2011 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. See accompanying LICENSE file.
+ */
+
+package com.yahoo.omid.tso.messages;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+import com.yahoo.omid.tso.TSOMessage;
+
+/**
+ * The message object for requesting a range of consecutive timestamps from
+ * TSO, so a client can start many transactions with one round trip
+ * 
+ */
+public class TimestampRangeRequest implements TSOMessage {
+
+    /**
+     * The largest range the TSO hands out
+     */
+    public static final int MAX_COUNT = 1000;
+
+    /**
+     * the number of timestamps
+     */
+    public int count;
+
+    public TimestampRangeRequest(int count) {
+        this.count = count;
+    }
+
+    public TimestampRangeRequest() {
+    }
+
+    @Override
+    public String toString() {
+        return "TimestampRangeRequest: " + count;
+    }
+
+    @Override
+    public void writeObject(ChannelBuffer buffer) {
+        buffer.writeInt(count);
+    }
+
+    @Override
+    public void readObject(ChannelBuffer aInputStream) {
+        count = aInputStream.readInt();
+    }
+
+    @Override
+    public void writeObject(DataOutputStream aOutputStream) throws IOException {
+        aOutputStream.writeInt(count);
+    }
+}
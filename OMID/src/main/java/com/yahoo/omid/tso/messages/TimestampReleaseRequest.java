@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2011 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. See accompanying LICENSE file.
+ */
+
+package com.yahoo.omid.tso.messages;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+import com.yahoo.omid.tso.TSOMessage;
+
+/**
+ * The message object for giving back a range of consecutive timestamps a
+ * client got from TSO but didn't start transactions with
+ * 
+ */
+public class TimestampReleaseRequest implements TSOMessage {
+
+    /**
+     * the first timestamp of the range
+     */
+    public long startTimestamp;
+
+    /**
+     * the number of timestamps
+     */
+    public int count;
+
+    public TimestampReleaseRequest(long startTimestamp, int count) {
+        this.startTimestamp = startTimestamp;
+        this.count = count;
+    }
+
+    public TimestampReleaseRequest() {
+    }
+
+    @Override
+    public String toString() {
+        return "TimestampReleaseRequest: T_s:" + startTimestamp + " count:" + count;
+    }
+
+    @Override
+    public void readObject(ChannelBuffer aInputStream) {
+        startTimestamp = aInputStream.readLong();
+        count = aInputStream.readInt();
+    }
+
+    @Override
+    public void writeObject(DataOutputStream aOutputStream) throws IOException {
+        aOutputStream.writeLong(startTimestamp);
+        aOutputStream.writeInt(count);
+    }
+
+    @Override
+    public void writeObject(ChannelBuffer buffer) {
+        buffer.writeLong(startTimestamp);
+        buffer.writeInt(count);
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ * Copyright (c) 2011 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. See accompanying LICENSE file.
+ */
+
+package com.yahoo.omid.tso.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A segment of the local WAL written by {@link FileStateLogger}. A segment
+ * is a preallocated file that starts with a header
+ *
+ *   magic (int) | id of the first entry (long)
+ *
+ * followed by entries
+ *
+ *   length (int) | checksum (int) | entry id (long) | record (length bytes)
+ *
+ * where the checksum is the CRC32 of the entry id and the record. Entry ids
+ * are consecutive across segments, so the stale entries of a recycled file
+ * and a torn write both end the segment.
+ *
+ * A segment also keeps what recovery needs from it, so that the logger can
+ * tell when it is no longer needed.
+ */
+class FileSegment {
+
+    static final int MAGIC = 0x4f4d4944; // "OMID"
+    static final int HEADER_SIZE = 12;
+    static final int ENTRY_HEADER_SIZE = 16;
+
+    private static final String PREFIX = "wal-";
+    private static final String SUFFIX = ".log";
+    static final String FREE_SUFFIX = ".free";
+
+    final long number;
+    final File file;
+    long firstEntryId;
+    long nextEntryId;
+
+    /**
+     * Largest commit timestamp of the segment
+     */
+    long maxCommitTimestamp;
+
+    /**
+     * Last largest deleted timestamp of the segment, 0 if there is none
+     */
+    long largestDeletedTimestamp;
+
+    /**
+     * Number of aborted snapshots of the segment
+     */
+    int snapshots;
+
+    boolean timestampOracle;
+
+    FileSegment(File dir, long number, long firstEntryId) {
+        this.number = number;
+        this.file = new File(dir, name(number));
+        this.firstEntryId = firstEntryId;
+        this.nextEntryId = firstEntryId;
+    }
+
+    /**
+     * Constructor of a segment to read
+     */
+    FileSegment(File dir, long number) {
+        this(dir, number, -1);
+    }
+
+    static String name(long number) {
+        return String.format(PREFIX + "%020d" + SUFFIX, number);
+    }
+
+    /**
+     * Returns the number of a segment file, or -1 if it is not one
+     */
+    static long number(String name) {
+        if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Computes the checksum of an entry
+     */
+    static int checksum(CRC32 crc, long entryId, byte[] record, int offset, int length) {
+        crc.reset();
+        for (int i = 56; i >= 0; i -= 8) {
+            crc.update((int) (entryId >>> i));
+        }
+        crc.update(record, offset, length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Takes note of the operations of a record that recovery needs
+     */
+    void track(byte[] record) {
+        ByteBuffer bb = ByteBuffer.wrap(record);
+        while (bb.hasRemaining()) {
+            switch (bb.get()) {
+            case LoggerProtocol.TIMESTAMPORACLE:
+                bb.getLong();
+                timestampOracle = true;
+                break;
+            case LoggerProtocol.COMMIT:
+                bb.getLong();
+                maxCommitTimestamp = Math.max(maxCommitTimestamp, bb.getLong());
+                break;
+            case LoggerProtocol.LARGESTDELETEDTIMESTAMP:
+                largestDeletedTimestamp = bb.getLong();
+                break;
+            case LoggerProtocol.SNAPSHOT:
+                bb.getLong();
+                snapshots++;
+                break;
+            case LoggerProtocol.ABORT:
+            case LoggerProtocol.FULLABORT:
+                bb.getLong();
+                break;
+            case LoggerProtocol.LOGSTART:
+                break;
+            default:
+                // not a record of LoggerProtocol, nothing to track
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads the valid entries of the segment file, up to the first torn or
+     * stale one, and tracks them.
+     * 
+     * @return the records, or null if the header is not valid
+     */
+    List<byte[]> read() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer bb = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (bb.remaining() < HEADER_SIZE || bb.getInt() != MAGIC) {
+                return null;
+            }
+            firstEntryId = nextEntryId = bb.getLong();
+
+            List<byte[]> records = new ArrayList<byte[]>();
+            CRC32 crc = new CRC32();
+            while (bb.remaining() >= ENTRY_HEADER_SIZE) {
+                int length = bb.getInt();
+                int checksum = bb.getInt();
+                long entryId = bb.getLong();
+                if (length <= 0 || length > bb.remaining() || entryId != nextEntryId) {
+                    break;
+                }
+                byte[] record = new byte[length];
+                bb.get(record);
+                if (checksum(crc, entryId, record, 0, length) != checksum) {
+                    break;
+                }
+                records.add(record);
+                track(record);
+                nextEntryId++;
+            }
+            return records;
+        } finally {
+            raf.close();
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/**
+ * Copyright (c) 2011 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. See accompanying LICENSE file.
+ */
+
+package com.yahoo.omid.tso.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.yahoo.omid.tso.TSOServerConfig;
+import com.yahoo.omid.tso.TSOState;
+import com.yahoo.omid.tso.TimestampOracle;
+import com.yahoo.omid.tso.persistence.LoggerAsyncCallback.LoggerInitCallback;
+import com.yahoo.omid.tso.persistence.LoggerException.Code;
+
+/**
+ * Builds the TSO state from the segments of a local log directory written
+ * by FileStateLogger, and hands the directory over to a new logger. The
+ * segments are read and checked in parallel, while the records of the
+ * segments already read are replayed in order. A lock file keeps a second
+ * TSO from using the same directory.
+ */
+public class FileStateBuilder extends StateBuilder {
+    private static final Log LOG = LogFactory.getLog(FileStateBuilder.class);
+
+    private static final String LOCK = "lock";
+    private static final int PARALLEL_READS = 4;
+
+    public static TSOState getState(TSOServerConfig config) {
+        TSOState returnValue;
+        FileStateBuilder builder = new FileStateBuilder(config);
+        try {
+            returnValue = builder.buildState();
+            LOG.info("State built");
+        } catch (Throwable e) {
+            LOG.error("Error while building the state.", e);
+            returnValue = null;
+        } finally {
+            builder.shutdown();
+        }
+        return returnValue;
+    }
+
+    TimestampOracle timestampOracle;
+    TSOServerConfig config;
+    ExecutorService readers;
+    FileLock lock;
+    FileStateLogger logger;
+
+    FileStateBuilder(TSOServerConfig config) {
+        this.timestampOracle = new TimestampOracle();
+        this.config = config;
+        this.readers = Executors.newFixedThreadPool(PARALLEL_READS);
+    }
+
+    @Override
+    TSOState buildState() throws LoggerException {
+        File dir = new File(config.getLogDir());
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            LOG.error("Could not create log directory " + dir);
+            throw LoggerException.create(Code.IOFAILED);
+        }
+
+        try {
+            RandomAccessFile raf = new RandomAccessFile(new File(dir, LOCK), "rw");
+            try {
+                lock = raf.getChannel().tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+            if (lock == null) {
+                raf.close();
+                LOG.warn("Log directory locked by another TSO: " + dir);
+                throw LoggerException.create(Code.INITLOCKFAILED);
+            }
+        } catch (IOException e) {
+            LOG.error("Failed to lock log directory " + dir, e);
+            throw LoggerException.create(Code.IOFAILED);
+        }
+
+        List<Long> numbers = new ArrayList<Long>();
+        for (String name : dir.list()) {
+            long number = FileSegment.number(name);
+            if (number >= 0) {
+                numbers.add(number);
+            }
+        }
+        Long[] sorted = numbers.toArray(new Long[numbers.size()]);
+        Arrays.sort(sorted);
+
+        List<FileSegment> segments = new ArrayList<FileSegment>();
+        List<Future<List<byte[]>>> reads = new ArrayList<Future<List<byte[]>>>();
+        for (long number : sorted) {
+            segments.add(new FileSegment(dir, number));
+        }
+
+        /*
+         * Replays the segments in order, keeping up to PARALLEL_READS of
+         * them read ahead.
+         */
+        LoggerProtocol lp = new LoggerProtocol(timestampOracle);
+        List<FileSegment> recovered = new ArrayList<FileSegment>();
+        long nextEntryId = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            while (reads.size() < segments.size() && reads.size() < i + PARALLEL_READS) {
+                final FileSegment s = segments.get(reads.size());
+                reads.add(readers.submit(new Callable<List<byte[]>>() {
+                    @Override
+                    public List<byte[]> call() throws IOException {
+                        return s.read();
+                    }
+                }));
+            }
+
+            FileSegment s = segments.get(i);
+            List<byte[]> records;
+            try {
+                records = reads.get(i).get();
+                reads.set(i, null);
+            } catch (InterruptedException e) {
+                LOG.error("Interrupted while reading " + s.file, e);
+                throw LoggerException.create(Code.IOFAILED);
+            } catch (ExecutionException e) {
+                LOG.error("Failed to read " + s.file, e.getCause());
+                throw LoggerException.create(Code.IOFAILED);
+            }
+
+            if (records != null && i > 0 && s.firstEntryId > nextEntryId) {
+                LOG.error("Missing records before " + s.file);
+                throw LoggerException.create(Code.LOGCORRUPTED);
+            }
+            if (records == null || (i > 0 && s.firstEntryId < nextEntryId)) {
+                if (i < segments.size() - 1) {
+                    LOG.error("Invalid segment " + s.file);
+                    throw LoggerException.create(Code.LOGCORRUPTED);
+                }
+                // a recycled file was being started when the TSO stopped
+                LOG.warn("Discarding unfinished segment " + s.file);
+                if (!s.file.renameTo(new File(dir, s.file.getName() + FileSegment.FREE_SUFFIX))) {
+                    s.file.delete();
+                }
+                break;
+            }
+
+            for (byte[] record : records) {
+                lp.execute(ByteBuffer.wrap(record));
+            }
+            nextEntryId = s.nextEntryId;
+            recovered.add(s);
+        }
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Recovered " + recovered.size() + " segments, next entry " + nextEntryId);
+        }
+
+        long nextSegmentNumber = sorted.length == 0 ? 0 : sorted[sorted.length - 1] + 1;
+        final TSOState state = lp.getState();
+        logger = new FileStateLogger(dir, lock, recovered, nextSegmentNumber, nextEntryId);
+        logger.initialize(new LoggerInitCallback() {
+            public void loggerInitComplete(int rc, StateLogger sl, Object ctx) {
+                state.setLogger(sl);
+            }
+        }, null);
+        // owned by the logger now
+        lock = null;
+
+        return state;
+    }
+
+    /**
+     * Shuts down state builder.
+     */
+    @Override
+    public void shutdown() {
+        readers.shutdownNow();
+        if (lock != null) {
+            try {
+                lock.release();
+                lock.channel().close();
+            } catch (IOException e) {
+                LOG.error("Error while shutting down", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,454 @@
+/**
+ * Copyright (c) 2011 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. See accompanying LICENSE file.
+ */
+
+package com.yahoo.omid.tso.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.yahoo.omid.tso.persistence.LoggerAsyncCallback.AddRecordCallback;
+import com.yahoo.omid.tso.persistence.LoggerAsyncCallback.LoggerInitCallback;
+import com.yahoo.omid.tso.persistence.LoggerException.Code;
+
+/**
+ * Local file implementation of StateLogger, for a TSO that runs without a
+ * BookKeeper ensemble.
+ * 
+ * Records are appended to preallocated segment files (see FileSegment), so
+ * that an fsync of the data does not have to update the file size. A single
+ * writer thread takes all the records queued while it was syncing the
+ * previous ones, writes them and syncs once before calling their callbacks.
+ * The more records are queued, the larger the groups and the fewer the
+ * fsyncs, with no timer to tune.
+ * 
+ * A segment is recycled once recovery does not need it any more: all its
+ * commits are below the largest deleted timestamp logged after it, and the
+ * newer segments hold a timestamp oracle record and the aborted snapshots
+ * the aborted transactions are rebuilt from.
+ */
+class FileStateLogger implements StateLogger {
+    private static final Log LOG = LogFactory.getLog(FileStateLogger.class);
+
+    /**
+     * The size of a segment of the log in bytes
+     */
+    static public int SEGMENT_SIZE = 64 * 1024 * 1024;
+    static {
+        try {
+            SEGMENT_SIZE = Integer.valueOf(System.getProperty("omid.segmentSize"));
+        } catch (Exception e) {
+            // ignore, usedefault
+        }
+    };
+
+    /**
+     * The number of recycled segment files kept for reuse
+     */
+    private static final int MAX_FREE_SEGMENTS = 2;
+
+    /**
+     * The number of aborted snapshots that must follow a segment to recycle
+     * it. A transaction aborted while a snapshot is taken may be logged
+     * before it, and is only in the snapshot after the next one.
+     */
+    private static final int SNAPSHOTS_TO_RECYCLE = 3;
+
+    private static final ByteBuffer ZEROS = ByteBuffer.allocateDirect(1024 * 1024);
+
+    private final File dir;
+    private final FileLock lock;
+
+    /**
+     * The segments recovery needs, oldest first. The last one is written.
+     */
+    private final LinkedList<FileSegment> segments;
+    private final LinkedList<File> free = new LinkedList<File>();
+    private long nextSegmentNumber;
+    private long nextEntryId;
+
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private long position;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(1024 * 1024);
+    private final CRC32 crc = new CRC32();
+
+    private final ExecutorService allocator;
+    private Future<File> allocation;
+
+    private final Object queueLock = new Object();
+    private List<Entry> queue = new ArrayList<Entry>();
+    private boolean running;
+    private Thread writer;
+
+    /**
+     * Flag to determine whether this logger is operating or not.
+     */
+    private volatile boolean enabled = false;
+
+    private static class Entry {
+        final byte[] record;
+        final AddRecordCallback cb;
+        final Object ctx;
+
+        Entry(byte[] record, AddRecordCallback cb, Object ctx) {
+            this.record = record;
+            this.cb = cb;
+            this.ctx = ctx;
+        }
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param dir the log directory
+     * @param lock the lock of the log directory, released on shutdown
+     * @param segments the recovered segments, oldest first
+     * @param nextSegmentNumber the number of the next segment
+     * @param nextEntryId the id of the next entry
+     */
+    FileStateLogger(File dir, FileLock lock, List<FileSegment> segments, long nextSegmentNumber, long nextEntryId) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Constructing Logger");
+        }
+
+        this.dir = dir;
+        this.lock = lock;
+        this.segments = new LinkedList<FileSegment>(segments);
+        this.nextSegmentNumber = nextSegmentNumber;
+        this.nextEntryId = nextEntryId;
+        this.allocator = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r);
+                t.setDaemon(true);
+                t.setName("WAL Allocator");
+                return t;
+            }
+        });
+
+        for (File f : dir.listFiles()) {
+            if (f.getName().endsWith(FileSegment.FREE_SUFFIX)) {
+                if (free.size() < MAX_FREE_SEGMENTS) {
+                    free.add(f);
+                } else {
+                    f.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens a new segment and starts the writer thread.
+     * 
+     * @param cb
+     * @param ctx
+     */
+    @Override
+    public void initialize(LoggerInitCallback cb, Object ctx) throws LoggerException {
+        try {
+            roll();
+        } catch (IOException e) {
+            LOG.error("Failed to create a segment in " + dir, e);
+            throw LoggerException.create(Code.IOFAILED);
+        }
+
+        running = true;
+        enabled = true;
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        });
+        writer.setDaemon(true);
+        writer.setName("WAL Writer");
+        writer.start();
+
+        cb.loggerInitComplete(Code.OK, this, ctx);
+    }
+
+    /**
+     * Adds a record to the log of operations. The callback is called once
+     * the record is on disk.
+     * 
+     * @param record
+     * @param cb
+     * @param ctx
+     */
+    @Override
+    public void addRecord(byte[] record, AddRecordCallback cb, Object ctx) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Adding record.");
+        }
+
+        synchronized (queueLock) {
+            if (enabled && running) {
+                queue.add(new Entry(record, cb, ctx));
+                if (queue.size() == 1) {
+                    queueLock.notify();
+                }
+                return;
+            }
+        }
+        cb.addRecordComplete(Code.LOGGERDISABLED, ctx);
+    }
+
+    /**
+     * The loop of the writer thread, which writes and syncs the queued
+     * records as a group until the logger shuts down.
+     */
+    private void write() {
+        List<Entry> batch = new ArrayList<Entry>();
+        while (true) {
+            synchronized (queueLock) {
+                while (queue.isEmpty() && running) {
+                    try {
+                        queueLock.wait();
+                    } catch (InterruptedException e) {
+                        LOG.warn("Interrupted while waiting for records", e);
+                        running = false;
+                    }
+                }
+                if (queue.isEmpty()) {
+                    return;
+                }
+                List<Entry> tmp = queue;
+                queue = batch;
+                batch = tmp;
+            }
+
+            int rc = enabled ? write(batch) : Code.LOGGERDISABLED;
+            for (Entry e : batch) {
+                e.cb.addRecordComplete(rc, e.ctx);
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Writes a group of records and syncs them.
+     * 
+     * @return the return code for the callbacks of the records
+     */
+    private int write(List<Entry> batch) {
+        try {
+            for (Entry e : batch) {
+                int length = e.record.length;
+                int size = FileSegment.ENTRY_HEADER_SIZE + length;
+                if (position + buffer.position() + size > SEGMENT_SIZE) {
+                    if (FileSegment.HEADER_SIZE + size > SEGMENT_SIZE) {
+                        throw new IOException("Record of " + length + " bytes larger than a segment");
+                    }
+                    roll();
+                }
+                if (buffer.remaining() < size) {
+                    flush();
+                    if (buffer.capacity() < size) {
+                        buffer = ByteBuffer.allocateDirect(size);
+                    }
+                }
+                buffer.putInt(length);
+                buffer.putInt(FileSegment.checksum(crc, nextEntryId, e.record, 0, length));
+                buffer.putLong(nextEntryId);
+                buffer.put(e.record);
+
+                FileSegment segment = segments.getLast();
+                segment.track(e.record);
+                segment.nextEntryId = ++nextEntryId;
+            }
+            flush();
+            channel.force(false);
+            return Code.OK;
+        } catch (IOException e) {
+            LOG.error("Failed to write to " + dir + ", disabling logger", e);
+            enabled = false;
+            return Code.ADDFAILED;
+        }
+    }
+
+    /**
+     * Writes the buffer at the end of the current segment.
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Syncs and closes the current segment, if any, and starts a new one
+     * with a recycled or preallocated file. The header of the new segment
+     * is written with its first records.
+     */
+    private void roll() throws IOException {
+        if (channel != null) {
+            flush();
+            channel.force(false);
+            file.close();
+        }
+
+        recycle();
+
+        FileSegment segment = new FileSegment(dir, nextSegmentNumber++, nextEntryId);
+        File f = takeFree();
+        if (f == null) {
+            allocate(segment.file);
+        } else if (!f.renameTo(segment.file)) {
+            throw new IOException("Failed to rename " + f + " to " + segment.file);
+        }
+        segments.add(segment);
+
+        file = new RandomAccessFile(segment.file, "rw");
+        channel = file.getChannel();
+        position = 0;
+        buffer.putInt(FileSegment.MAGIC);
+        buffer.putLong(nextEntryId);
+
+        if (free.isEmpty() && allocation == null) {
+            // have the next segment ready before this one is full
+            allocation = allocator.submit(new Callable<File>() {
+                @Override
+                public File call() throws IOException {
+                    File f = File.createTempFile("wal-", FileSegment.FREE_SUFFIX, dir);
+                    allocate(f);
+                    return f;
+                }
+            });
+        }
+    }
+
+    /**
+     * Frees the oldest segments that recovery does not need any more.
+     */
+    private void recycle() {
+        long largestDeletedTimestamp = 0;
+        int snapshots = 0;
+        boolean timestampOracle = false;
+        int recyclable = segments.size();
+        for (Iterator<FileSegment> it = segments.descendingIterator(); it.hasNext(); recyclable--) {
+            FileSegment s = it.next();
+            if (largestDeletedTimestamp != 0 && timestampOracle && snapshots >= SNAPSHOTS_TO_RECYCLE
+                    && s.maxCommitTimestamp <= largestDeletedTimestamp) {
+                break;
+            }
+            if (largestDeletedTimestamp == 0) {
+                largestDeletedTimestamp = s.largestDeletedTimestamp;
+            }
+            timestampOracle |= s.timestampOracle;
+            snapshots += s.snapshots;
+        }
+
+        for (; recyclable > 0; recyclable--) {
+            FileSegment s = segments.removeFirst();
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Recycling " + s.file);
+            }
+            File f = new File(dir, s.file.getName() + FileSegment.FREE_SUFFIX);
+            if (free.size() < MAX_FREE_SEGMENTS && s.file.renameTo(f)) {
+                free.add(f);
+            } else if (!s.file.delete()) {
+                LOG.warn("Failed to delete " + s.file);
+            }
+        }
+    }
+
+    private File takeFree() throws IOException {
+        if (!free.isEmpty()) {
+            return free.removeFirst();
+        }
+        if (allocation == null) {
+            return null;
+        }
+        try {
+            return allocation.get();
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while allocating a segment");
+        } catch (ExecutionException e) {
+            LOG.warn("Failed to allocate a segment", e.getCause());
+            return null;
+        } finally {
+            allocation = null;
+        }
+    }
+
+    /**
+     * Fills a file with zeros up to the segment size, and syncs it.
+     */
+    static void allocate(File f) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        try {
+            FileChannel ch = raf.getChannel();
+            ByteBuffer zeros = ZEROS.duplicate();
+            for (long pos = 0; pos < SEGMENT_SIZE;) {
+                zeros.clear();
+                zeros.limit((int) Math.min(zeros.capacity(), SEGMENT_SIZE - pos));
+                pos += ch.write(zeros, pos);
+            }
+            ch.force(true);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Shuts down this logger once the queued records are written.
+     */
+    public void shutdown() {
+        synchronized (queueLock) {
+            running = false;
+            queueLock.notify();
+        }
+        try {
+            if (writer != null) {
+                writer.join();
+            }
+        } catch (InterruptedException e) {
+            LOG.warn("Interrupted while closing logger.", e);
+        }
+        enabled = false;
+        allocator.shutdownNow();
+        try {
+            if (file != null) {
+                file.close();
+            }
+            lock.release();
+            lock.channel().close();
+        } catch (IOException e) {
+            LOG.warn("Exception while closing " + dir, e);
+        }
+    }
+
+}
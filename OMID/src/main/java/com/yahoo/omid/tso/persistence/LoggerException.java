@@ -32,6 +32,8 @@ public abstract class LoggerException extends Exception {
         int BKOPFAILED = -3;
         int ZKOPFAILED = -4;
         int LOGGERDISABLED = -5;
+        int IOFAILED = -6;
+        int LOGCORRUPTED = -7;
 
         int ILLEGALOP = -101;
     }
@@ -53,6 +55,10 @@ public abstract class LoggerException extends Exception {
             return new ZKOpFailedException();
         case Code.LOGGERDISABLED:
             return new LoggerDisabledException();
+        case Code.IOFAILED:
+            return new IOFailedException();
+        case Code.LOGCORRUPTED:
+            return new LogCorruptedException();
         default:
             return new IllegalOpException();
         }
@@ -81,6 +87,10 @@ public abstract class LoggerException extends Exception {
             return "ZooKeeper operation failed";
         case Code.LOGGERDISABLED:
             return "Logger disabled";
+        case Code.IOFAILED:
+            return "File operation failed";
+        case Code.LOGCORRUPTED:
+            return "Log corrupted";
         default:
             return "Invalid operation";
         }
@@ -116,6 +126,18 @@ public abstract class LoggerException extends Exception {
         }
     }
 
+    public static class IOFailedException extends LoggerException {
+        public IOFailedException() {
+            super(Code.IOFAILED);
+        }
+    }
+
+    public static class LogCorruptedException extends LoggerException {
+        public LogCorruptedException() {
+            super(Code.LOGCORRUPTED);
+        }
+    }
+
     public static class IllegalOpException extends LoggerException {
         public IllegalOpException() {
             super(Code.ILLEGALOP);
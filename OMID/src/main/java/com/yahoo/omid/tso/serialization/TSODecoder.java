@@ -35,6 +35,9 @@ import com.yahoo.omid.tso.messages.CommitResponse;
 import com.yahoo.omid.tso.messages.CommittedTransactionReport;
 import com.yahoo.omid.tso.messages.FullAbortRequest;
 import com.yahoo.omid.tso.messages.LargestDeletedTimestampReport;
+import com.yahoo.omid.tso.messages.TimestampRangeRequest;
+import com.yahoo.omid.tso.messages.TimestampRangeResponse;
+import com.yahoo.omid.tso.messages.TimestampReleaseRequest;
 import com.yahoo.omid.tso.messages.TimestampRequest;
 import com.yahoo.omid.tso.messages.TimestampResponse;
 
@@ -75,6 +78,15 @@ public class TSODecoder extends FrameDecoder {
             case TSOMessage.TimestampResponse:
                 msg = new TimestampResponse();
                 break;
+            case TSOMessage.TimestampRangeRequest:
+                msg = new TimestampRangeRequest();
+                break;
+            case TSOMessage.TimestampRangeResponse:
+                msg = new TimestampRangeResponse();
+                break;
+            case TSOMessage.TimestampReleaseRequest:
+                msg = new TimestampReleaseRequest();
+                break;
             case TSOMessage.CommitRequest:
                 msg = new CommitRequest();
                 break;
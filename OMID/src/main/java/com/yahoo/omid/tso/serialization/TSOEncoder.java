@@ -37,6 +37,9 @@ import com.yahoo.omid.tso.messages.CommitResponse;
 import com.yahoo.omid.tso.messages.CommittedTransactionReport;
 import com.yahoo.omid.tso.messages.FullAbortRequest;
 import com.yahoo.omid.tso.messages.LargestDeletedTimestampReport;
+import com.yahoo.omid.tso.messages.TimestampRangeRequest;
+import com.yahoo.omid.tso.messages.TimestampRangeResponse;
+import com.yahoo.omid.tso.messages.TimestampReleaseRequest;
 import com.yahoo.omid.tso.messages.TimestampRequest;
 import com.yahoo.omid.tso.messages.TimestampResponse;
 
@@ -44,18 +47,37 @@ public class TSOEncoder extends OneToOneEncoder {
 
     //just override decode method
     protected Object encode(ChannelHandlerContext ctx, Channel channel, Object msg) throws Exception {
+        if (msg instanceof ChannelBuffer) {
+            return msg;
+        }
         ByteArrayOutputStream buffer = BufferPool.getBuffer();
         buffer.reset();
         DataOutputStream objWrapper = new DataOutputStream(buffer);
-        if (msg instanceof ChannelBuffer) {
-            return msg;
-            //以下总共12种消息类型，3对Request/Response, 4个Report，一个AbortRequest和ZipperState
-            //不包括CleanedTransactionReportByte、AbortedTransactionReportByte
-            //第一个字节是消息类型
-        } else if (msg instanceof TimestampRequest) {
+        encode(msg, objWrapper);
+        ChannelBuffer result = ChannelBuffers.wrappedBuffer(buffer.toByteArray());
+        BufferPool.pushBuffer(buffer); //重用Buffer
+        return result;
+    }
+
+    /**
+     * Writes the type and the content of a message. A client that coalesces
+     * requests writes them to one buffer this way, and the buffer goes
+     * through the encoder as is.
+     */
+    public static void encode(Object msg, DataOutputStream objWrapper) throws Exception {
+        //以下总共12种消息类型，3对Request/Response, 4个Report，一个AbortRequest和ZipperState
+        //不包括CleanedTransactionReportByte、AbortedTransactionReportByte
+        //第一个字节是消息类型
+        if (msg instanceof TimestampRequest) {
             objWrapper.writeByte(TSOMessage.TimestampRequest);
         } else if (msg instanceof TimestampResponse) {
             objWrapper.writeByte(TSOMessage.TimestampResponse);
+        } else if (msg instanceof TimestampRangeRequest) {
+            objWrapper.writeByte(TSOMessage.TimestampRangeRequest);
+        } else if (msg instanceof TimestampRangeResponse) {
+            objWrapper.writeByte(TSOMessage.TimestampRangeResponse);
+        } else if (msg instanceof TimestampReleaseRequest) {
+            objWrapper.writeByte(TSOMessage.TimestampReleaseRequest);
         } else if (msg instanceof CommitRequest) {
             objWrapper.writeByte(TSOMessage.CommitRequest);
         } else if (msg instanceof CommitResponse) {
@@ -80,8 +102,5 @@ public class TSOEncoder extends OneToOneEncoder {
             throw new Exception("Wrong obj");
         //写具体的消息内容
         ((TSOMessage) msg).writeObject(objWrapper);
-        ChannelBuffer result = ChannelBuffers.wrappedBuffer(buffer.toByteArray());
-        BufferPool.pushBuffer(buffer); //重用Buffer
-        return result;
     }
 }
@@ -0,0 +1,195 @@
+/**
+ * Copyright (c) 2011 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. See accompanying LICENSE file.
+ */
+
+package com.yahoo.omid.client;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.conf.Configuration;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelHandler;
+import org.jboss.netty.channel.group.ChannelGroup;
+import org.jboss.netty.channel.group.DefaultChannelGroup;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+
+import com.yahoo.omid.tso.TSOMessage;
+import com.yahoo.omid.tso.messages.CommitQueryRequest;
+import com.yahoo.omid.tso.messages.CommitQueryResponse;
+import com.yahoo.omid.tso.messages.CommitRequest;
+import com.yahoo.omid.tso.messages.CommitResponse;
+import com.yahoo.omid.tso.messages.TimestampRangeRequest;
+import com.yahoo.omid.tso.messages.TimestampRangeResponse;
+import com.yahoo.omid.tso.messages.TimestampRequest;
+import com.yahoo.omid.tso.messages.TimestampResponse;
+import com.yahoo.omid.tso.serialization.TSODecoder;
+import com.yahoo.omid.tso.serialization.TSOEncoder;
+
+/**
+ * A TSO that answers the client requests without checking anything, for
+ * testing the client alone. It keeps the requests it receives, commits or
+ * aborts every commit request and can hold back the answers to the commit
+ * queries, or stop answering at all.
+ */
+public class StubTSO {
+
+   private final AtomicLong timestamp = new AtomicLong(1);
+   private final List<TSOMessage> received = new ArrayList<TSOMessage>();
+   private final List<Object[]> heldQueries = new ArrayList<Object[]>();
+   private final ChannelGroup channels = new DefaultChannelGroup(StubTSO.class.getName());
+   private final ServerBootstrap bootstrap;
+   private final int port;
+
+   private volatile boolean abortCommits = false;
+   private volatile boolean silent = false;
+   private boolean holdQueries = false;
+
+   public StubTSO() {
+      bootstrap = new ServerBootstrap(new NioServerSocketChannelFactory(Executors.newCachedThreadPool(),
+            Executors.newCachedThreadPool()));
+      bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+         public ChannelPipeline getPipeline() {
+            ChannelPipeline pipeline = Channels.pipeline();
+            pipeline.addLast("decoder", new TSODecoder(null));
+            pipeline.addLast("encoder", new TSOEncoder());
+            pipeline.addLast("handler", new Handler());
+            return pipeline;
+         }
+      });
+      Channel channel = bootstrap.bind(new InetSocketAddress("localhost", 0));
+      channels.add(channel);
+      port = ((InetSocketAddress) channel.getLocalAddress()).getPort();
+   }
+
+   public Configuration getConfiguration() {
+      Configuration conf = new Configuration();
+      conf.set("tso.host", "localhost");
+      conf.setInt("tso.port", port);
+      return conf;
+   }
+
+   public void setAbortCommits(boolean abortCommits) {
+      this.abortCommits = abortCommits;
+   }
+
+   /**
+    * Stops answering the requests
+    */
+   public void setSilent(boolean silent) {
+      this.silent = silent;
+   }
+
+   /**
+    * Holds back the answers to the commit queries until released
+    */
+   public synchronized void holdQueries() {
+      holdQueries = true;
+   }
+
+   public synchronized void releaseQueries() {
+      holdQueries = false;
+      for (Object[] query : heldQueries) {
+         answer((Channel) query[0], (CommitQueryRequest) query[1]);
+      }
+      heldQueries.clear();
+   }
+
+   /**
+    * @return the received requests of the given type
+    */
+   public synchronized <T extends TSOMessage> List<T> get(Class<T> type) {
+      List<T> result = new ArrayList<T>();
+      for (TSOMessage msg : received) {
+         if (type.isInstance(msg)) {
+            result.add(type.cast(msg));
+         }
+      }
+      return result;
+   }
+
+   /**
+    * @return the number of received requests of the given type
+    */
+   public int count(Class<? extends TSOMessage> type) {
+      return get(type).size();
+   }
+
+   /**
+    * Closes the connections of the clients
+    */
+   public void disconnect() {
+      for (Channel channel : channels) {
+         if (channel.getParent() != null) {
+            channel.close().awaitUninterruptibly();
+         }
+      }
+   }
+
+   public void close() {
+      channels.close().awaitUninterruptibly();
+      bootstrap.releaseExternalResources();
+   }
+
+   private void answer(Channel channel, CommitQueryRequest query) {
+      channel.write(new CommitQueryResponse(query.startTimestamp, query.queryTimestamp, true));
+   }
+
+   private class Handler extends SimpleChannelHandler {
+      @Override
+      public void channelOpen(ChannelHandlerContext ctx, ChannelStateEvent e) {
+         channels.add(e.getChannel());
+      }
+
+      @Override
+      public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+         TSOMessage msg = (TSOMessage) e.getMessage();
+         Channel channel = e.getChannel();
+         synchronized (StubTSO.this) {
+            received.add(msg);
+            if (silent) {
+               return;
+            }
+            if (msg instanceof CommitQueryRequest && holdQueries) {
+               heldQueries.add(new Object[] { channel, msg });
+               return;
+            }
+         }
+         if (msg instanceof TimestampRequest) {
+            channel.write(new TimestampResponse(timestamp.getAndIncrement()));
+         } else if (msg instanceof TimestampRangeRequest) {
+            int count = ((TimestampRangeRequest) msg).count;
+            channel.write(new TimestampRangeResponse(timestamp.getAndAdd(count), count));
+         } else if (msg instanceof CommitRequest) {
+            CommitResponse response = new CommitResponse(((CommitRequest) msg).startTimestamp);
+            response.committed = !abortCommits;
+            response.commitTimestamp = abortCommits ? 0 : timestamp.getAndIncrement();
+            channel.write(response);
+         } else if (msg instanceof CommitQueryRequest) {
+            answer(channel, (CommitQueryRequest) msg);
+         }
+      }
+   }
+}
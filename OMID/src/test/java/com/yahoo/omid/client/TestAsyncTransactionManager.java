@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2011 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. See accompanying LICENSE file.
+ */
+
+package com.yahoo.omid.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.yahoo.omid.tso.messages.CommitRequest;
+import com.yahoo.omid.tso.messages.FullAbortRequest;
+
+public class TestAsyncTransactionManager {
+
+   private StubTSO tso;
+   private TransactionManager tm;
+
+   @Before
+   public void setUp() throws Exception {
+      tso = new StubTSO();
+      // the client is shared by the transaction managers
+      TransactionManager.tsoclient = null;
+      tm = new TransactionManager(tso.getConfiguration());
+      // wait for the connection
+      tm.beginTransaction();
+   }
+
+   @After
+   public void tearDown() throws Exception {
+      TransactionManager.close();
+      TransactionManager.tsoclient = null;
+      tso.close();
+   }
+
+   @Test
+   public void testBeginAndCommit() throws Exception {
+      TransactionFuture<TransactionState> begin = tm.beginTransactionAsync();
+      final CountDownLatch notified = new CountDownLatch(1);
+      begin.addListener(new TransactionFuture.Listener<TransactionState>() {
+         public void operationComplete(TransactionFuture<TransactionState> future) {
+            notified.countDown();
+         }
+      });
+      TransactionState state = begin.get(10, TimeUnit.SECONDS);
+      assertTrue(notified.await(10, TimeUnit.SECONDS));
+      assertTrue(begin.isSuccess());
+      assertTrue(state.getStartTimestamp() > 0);
+
+      TransactionFuture<TransactionState> commit = tm.tryCommitAsync(state);
+      assertTrue(commit.get(10, TimeUnit.SECONDS) == state);
+      assertTrue(commit.isSuccess());
+      assertTrue(state.getCommitTimestamp() > state.getStartTimestamp());
+
+      // a listener added once done is notified right away
+      final CountDownLatch late = new CountDownLatch(1);
+      commit.addListener(new TransactionFuture.Listener<TransactionState>() {
+         public void operationComplete(TransactionFuture<TransactionState> future) {
+            late.countDown();
+         }
+      });
+      assertEquals(0, late.getCount());
+   }
+
+   @Test
+   public void testAbortedCommitFails() throws Exception {
+      tso.setAbortCommits(true);
+      TransactionState state = tm.beginTransactionAsync().get(10, TimeUnit.SECONDS);
+      TransactionFuture<TransactionState> commit = tm.tryCommitAsync(state);
+      try {
+         commit.get(10, TimeUnit.SECONDS);
+         fail("The commit should fail");
+      } catch (ExecutionException e) {
+         assertTrue(e.getCause() instanceof CommitUnsuccessfulException);
+      }
+      assertFalse(commit.isSuccess());
+      assertTrue(commit.getCause() instanceof CommitUnsuccessfulException);
+      assertEquals(1, tso.count(CommitRequest.class));
+
+      // the sync method reports the same
+      state = tm.beginTransaction();
+      try {
+         tm.tryCommit(state);
+         fail("The commit should fail");
+      } catch (CommitUnsuccessfulException e) {
+         // expected
+      }
+
+      // the cleanup of the aborted transactions has reached the TSO
+      TransactionState next = tm.beginTransaction();
+      assertTrue(next.getStartTimestamp() > state.getStartTimestamp());
+      assertEquals(2, tso.count(FullAbortRequest.class));
+   }
+
+   @Test
+   public void testFailedCommitFails() throws Exception {
+      TransactionState state = tm.beginTransactionAsync().get(10, TimeUnit.SECONDS);
+      tso.setSilent(true);
+      TransactionFuture<TransactionState> commit = tm.tryCommitAsync(state);
+      // the connection is lost before the response
+      tso.disconnect();
+      try {
+         commit.get(10, TimeUnit.SECONDS);
+         fail("The commit should fail");
+      } catch (ExecutionException e) {
+         assertTrue(e.getCause() instanceof TransactionException);
+      }
+      assertFalse(commit.isSuccess());
+   }
+
+   @Test
+   public void testFailedBeginFails() throws Exception {
+      tso.setSilent(true);
+      TransactionFuture<TransactionState> begin = tm.beginTransactionAsync();
+      tso.disconnect();
+      try {
+         begin.get(10, TimeUnit.SECONDS);
+         fail("The transaction should not start");
+      } catch (ExecutionException e) {
+         assertTrue(e.getCause() instanceof TransactionException);
+      }
+      assertFalse(begin.isSuccess());
+   }
+}
@@ -0,0 +1,259 @@
+/**
+ * Copyright (c) 2011 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. See accompanying LICENSE file.
+ */
+
+package com.yahoo.omid.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelDownstreamHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.yahoo.omid.client.TSOClient.Result;
+import com.yahoo.omid.tso.RowKey;
+import com.yahoo.omid.tso.messages.AbortRequest;
+import com.yahoo.omid.tso.messages.CommitQueryRequest;
+import com.yahoo.omid.tso.messages.FullAbortRequest;
+import com.yahoo.omid.tso.messages.TimestampRangeRequest;
+import com.yahoo.omid.tso.messages.TimestampReleaseRequest;
+import com.yahoo.omid.tso.messages.TimestampRequest;
+
+public class TestTSOClient {
+
+   private StubTSO tso;
+   private WriteControlClient client;
+
+   /**
+    * A client that counts its writes, and can block them or make them fail
+    */
+   static class WriteControlClient extends TSOClient {
+      final AtomicInteger writes = new AtomicInteger();
+      volatile boolean fail = false;
+      volatile CountDownLatch blocked = null;
+      volatile CountDownLatch release = null;
+
+      WriteControlClient(Configuration conf) throws IOException {
+         super(conf);
+      }
+
+      @Override
+      public synchronized void channelOpen(ChannelHandlerContext ctx, ChannelStateEvent e) {
+         super.channelOpen(ctx, e);
+         e.getChannel().getPipeline().addFirst("writes", new SimpleChannelDownstreamHandler() {
+            @Override
+            public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+               writes.incrementAndGet();
+               CountDownLatch release = WriteControlClient.this.release;
+               if (release != null) {
+                  WriteControlClient.this.release = null;
+                  blocked.countDown();
+                  release.await();
+               }
+               if (fail) {
+                  e.getFuture().setFailure(new IOException("Write failed"));
+               } else {
+                  super.writeRequested(ctx, e);
+               }
+            }
+         });
+      }
+
+      /**
+       * The next write waits for the returned latch
+       */
+      CountDownLatch blockNextWrite() {
+         blocked = new CountDownLatch(1);
+         release = new CountDownLatch(1);
+         return release;
+      }
+
+      void awaitBlocked() throws InterruptedException {
+         assertTrue(blocked.await(10, TimeUnit.SECONDS));
+      }
+   }
+
+   @Before
+   public void setUp() throws Exception {
+      tso = new StubTSO();
+      client = new WriteControlClient(tso.getConfiguration());
+      // wait for the connection
+      SyncCreateCallback cb = new SyncCreateCallback();
+      client.getNewTimestamp(cb);
+      cb.await();
+      assertNull(cb.getException());
+   }
+
+   @After
+   public void tearDown() throws Exception {
+      client.close();
+      tso.close();
+   }
+
+   /**
+    * Starts a request in another thread, which blocks writing it
+    */
+   private CountDownLatch blockWriting(final AbortCompleteCallback cb) throws Exception {
+      CountDownLatch release = client.blockNextWrite();
+      new Thread() {
+         public void run() {
+            try {
+               client.completeAbort(1, cb);
+            } catch (IOException e) {
+               cb.error(e);
+            }
+         }
+      }.start();
+      client.awaitBlocked();
+      return release;
+   }
+
+   @Test
+   public void testRequestsAreCoalesced() throws Exception {
+      int writes = client.writes.get();
+      SyncAbortCompleteCallback first = new SyncAbortCompleteCallback();
+      CountDownLatch release = blockWriting(first);
+
+      // queued while the first request is being written
+      SyncCreateCallback[] cbs = new SyncCreateCallback[10];
+      for (int i = 0; i < cbs.length; i++) {
+         cbs[i] = new SyncCreateCallback();
+         client.getNewTimestamp(cbs[i]);
+      }
+      release.countDown();
+
+      for (int i = 0; i < cbs.length; i++) {
+         cbs[i].await();
+         assertNull(cbs[i].getException());
+         if (i > 0) {
+            assertTrue(cbs[i].getStartTimestamp() > cbs[i - 1].getStartTimestamp());
+         }
+      }
+      first.await();
+      assertNull(first.getException());
+      assertEquals(writes + 2, client.writes.get());
+      assertEquals(11, tso.count(TimestampRequest.class));
+      assertEquals(1, tso.count(FullAbortRequest.class));
+   }
+
+   @Test
+   public void testFailedWriteFailsEveryOperation() throws Exception {
+      client.fail = true;
+      SyncAbortCompleteCallback first = new SyncAbortCompleteCallback();
+      CountDownLatch release = blockWriting(first);
+
+      SyncCreateCallback create = new SyncCreateCallback();
+      client.getNewTimestamp(create);
+      SyncAbortCompleteCallback abort = new SyncAbortCompleteCallback();
+      client.completeAbort(2, abort);
+      SyncCommitQueryCallback query = new SyncCommitQueryCallback();
+      client.isCommitted(3, 4, query);
+      release.countDown();
+
+      first.await();
+      create.await();
+      abort.await();
+      query.await();
+      assertNotNull(first.getException());
+      assertNotNull(create.getException());
+      assertNotNull(abort.getException());
+      assertNotNull(query.getException());
+
+      // nothing is left behind waiting for a response
+      client.fail = false;
+      SyncCreateCallback next = new SyncCreateCallback();
+      client.getNewTimestamp(next);
+      next.await();
+      assertNull(next.getException());
+      assertTrue(next.getStartTimestamp() > 0);
+   }
+
+   @Test
+   public void testCommitQueriesAreShared() throws Exception {
+      tso.holdQueries();
+      SyncCommitQueryCallback first = new SyncCommitQueryCallback();
+      client.isCommitted(10, 5, first);
+      SyncCommitQueryCallback second = new SyncCommitQueryCallback();
+      client.isCommitted(10, 5, second);
+      SyncCommitQueryCallback other = new SyncCommitQueryCallback();
+      client.isCommitted(10, 6, other);
+
+      // a request that follows the queries makes sure the TSO has them
+      SyncCreateCallback cb = new SyncCreateCallback();
+      client.getNewTimestamp(cb);
+      cb.await();
+      assertEquals(2, tso.count(CommitQueryRequest.class));
+
+      tso.releaseQueries();
+      first.await();
+      second.await();
+      other.await();
+      assertTrue(first.isCommitted());
+      assertTrue(second.isCommitted());
+      assertTrue(other.isCommitted());
+   }
+
+   @Test
+   public void testCommitReleasesCachedTimestamps() throws Exception {
+      Configuration conf = tso.getConfiguration();
+      conf.setInt("tso.timestamp_batch", 10);
+      TSOClient batching = new TSOClient(conf);
+      try {
+         SyncCreateCallback begin = new SyncCreateCallback();
+         batching.getNewTimestamp(begin);
+         begin.await();
+         assertNull(begin.getException());
+         long startTimestamp = begin.getStartTimestamp();
+
+         SyncCommitCallback commit = new SyncCommitCallback();
+         batching.commit(startTimestamp, new RowKey[] { new RowKey("row".getBytes(), "table".getBytes()) }, commit);
+         commit.await();
+         assertEquals(Result.OK, commit.getResult());
+
+         // the cached timestamps are older than the commit, so the next
+         // transaction starts with a new range
+         SyncCreateCallback next = new SyncCreateCallback();
+         batching.getNewTimestamp(next);
+         next.await();
+         assertNull(next.getException());
+         assertTrue(next.getStartTimestamp() > commit.getCommitTimestamp());
+         assertEquals(2, tso.count(TimestampRangeRequest.class));
+
+         // the unused ones are given back with one request, and nothing is aborted
+         List<TimestampReleaseRequest> released = tso.get(TimestampReleaseRequest.class);
+         assertEquals(1, released.size());
+         assertEquals(startTimestamp + 1, released.get(0).startTimestamp);
+         assertEquals(9, released.get(0).count);
+         assertEquals(0, tso.count(AbortRequest.class));
+         assertEquals(0, tso.count(FullAbortRequest.class));
+      } finally {
+         batching.close();
+      }
+   }
+}
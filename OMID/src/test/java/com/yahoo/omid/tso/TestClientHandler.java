@@ -45,6 +45,8 @@ import com.yahoo.omid.tso.messages.CommitQueryRequest;
 import com.yahoo.omid.tso.messages.CommitRequest;
 import com.yahoo.omid.tso.messages.CommitResponse;
 import com.yahoo.omid.tso.messages.FullAbortRequest;
+import com.yahoo.omid.tso.messages.TimestampRangeRequest;
+import com.yahoo.omid.tso.messages.TimestampReleaseRequest;
 import com.yahoo.omid.tso.messages.TimestampRequest;
 
 /**
@@ -101,6 +103,10 @@ public class TestClientHandler extends TSOClient {
       } else if (msg instanceof FullAbortRequest) {
          FullAbortRequest atr = (FullAbortRequest) msg;
          completeAbort(atr.startTimestamp, new SyncAbortCompleteCallback());
+      } else if (msg instanceof TimestampRangeRequest || msg instanceof TimestampReleaseRequest) {
+         // the client only sends these from its timestamp cache, so they
+         // go to the TSO as they are
+         channel.write(msg);
       }
    }
 
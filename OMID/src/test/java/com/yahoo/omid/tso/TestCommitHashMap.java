@@ -0,0 +1,219 @@
+/**
+ * Copyright (c) 2011 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. See accompanying LICENSE file.
+ */
+
+package com.yahoo.omid.tso;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class TestCommitHashMap {
+
+   private static final byte[] TABLE = "table".getBytes();
+
+   @Test
+   public void testPutAndGet() throws Exception {
+      CommitHashMap map = new CommitHashMap(1000, 0.5f);
+      byte[] row = "row".getBytes();
+      int hash = new RowKey(row, TABLE).hashCode();
+
+      assertEquals(0, map.get(row, TABLE, hash));
+      assertEquals(7, map.put(row, TABLE, 10, hash, 7));
+      assertEquals(10, map.get(row, TABLE, hash));
+      assertEquals(7, map.put(row, TABLE, 20, hash, 7));
+      assertEquals(20, map.get(row, TABLE, hash));
+      assertEquals(0, map.get("other".getBytes(), TABLE, hash));
+   }
+
+   @Test
+   public void testKeysWithTheSameBytes() throws Exception {
+      CommitHashMap map = new CommitHashMap(1000, 0.5f);
+      // the same hash and the same concatenated bytes, split differently
+      map.put("ab".getBytes(), "c".getBytes(), 10, 42, 0);
+      assertEquals(0, map.get("a".getBytes(), "bc".getBytes(), 42));
+      map.put("a".getBytes(), "bc".getBytes(), 20, 42, 0);
+      assertEquals(10, map.get("ab".getBytes(), "c".getBytes(), 42));
+      assertEquals(20, map.get("a".getBytes(), "bc".getBytes(), 42));
+   }
+
+   @Test
+   public void testLongKeys() throws Exception {
+      CommitHashMap map = new CommitHashMap(1000, 0.5f);
+      byte[] row1 = new byte[100];
+      byte[] row2 = new byte[100];
+      Arrays.fill(row1, (byte) 'x');
+      Arrays.fill(row2, (byte) 'x');
+      row2[99] = 'y';
+
+      map.put(row1, TABLE, 10, 42, 0);
+      assertEquals(10, map.get(row1.clone(), TABLE, 42));
+      assertEquals(0, map.get(row2, TABLE, 42));
+      map.put(row2, TABLE, 20, 42, 0);
+      assertEquals(10, map.get(row1, TABLE, 42));
+      assertEquals(20, map.get(row2, TABLE, 42));
+   }
+
+   @Test
+   public void testEviction() throws Exception {
+      checkEviction(false);
+   }
+
+   @Test
+   public void testEvictionWithCollidingHashes() throws Exception {
+      checkEviction(true);
+   }
+
+   /**
+    * Every row must either map to its last commit timestamp or have been
+    * evicted with a commit timestamp not larger than the largest deleted one.
+    */
+   private void checkEviction(boolean collide) {
+      CommitHashMap map = new CommitHashMap(64, 0.5f);
+      int rows = 1000;
+      long[] lastCommit = new long[rows];
+      long largestDeletedTimestamp = 0;
+      long commitTimestamp = 0;
+      for (int i = 0; i < 20000; i++) {
+         int r = (i * 7919) % rows;
+         if (i % 3 == 0) {
+            r = r % 40;
+         }
+         byte[] row = Integer.toString(r).getBytes();
+         int hash = collide ? 0 : new RowKey(row, TABLE).hashCode();
+         commitTimestamp++;
+         long ldt = map.put(row, TABLE, commitTimestamp, hash, largestDeletedTimestamp);
+         assertTrue(ldt >= largestDeletedTimestamp);
+         largestDeletedTimestamp = ldt;
+         lastCommit[r] = commitTimestamp;
+
+         for (int j = 0; j < rows; j += 37) {
+            byte[] other = Integer.toString(j).getBytes();
+            int otherHash = collide ? 0 : new RowKey(other, TABLE).hashCode();
+            long value = map.get(other, TABLE, otherHash);
+            assertTrue(value == lastCommit[j] || lastCommit[j] <= largestDeletedTimestamp);
+         }
+      }
+      assertTrue(largestDeletedTimestamp > 0);
+      assertTrue(largestDeletedTimestamp < commitTimestamp);
+   }
+
+   /**
+    * A put must update the slot of its key even if an old slot comes first,
+    * or the older value shows up once the newer slot is reused.
+    */
+   @Test
+   public void testPutBehindOldSlot() throws Exception {
+      CommitHashMap map = new CommitHashMap(64, 0.5f); // entries are old after 32 puts
+      byte[] key = "key".getBytes();
+      map.put("x".getBytes(), TABLE, 1, 0, 0);
+      map.put(key, TABLE, 5, 0, 0);
+      for (int i = 0; i < 32; i++) {
+         map.put(Integer.toString(i).getBytes(), TABLE, 6 + i, 10 + i, 0);
+      }
+      // the slot of "x" is old now, the one of the key is not
+      map.put(key, TABLE, 100, 0, 0);
+      for (int i = 0; i < 33; i++) {
+         map.put(Integer.toString(i).getBytes(), TABLE, 101 + i, 10 + i, 0);
+      }
+      long largestDeletedTimestamp = map.put("y".getBytes(), TABLE, 200, 0, 0);
+      long value = map.get(key, TABLE, 0);
+      assertTrue(value == 100 || value == 0 && largestDeletedTimestamp >= 100);
+   }
+
+   @Test
+   public void testCommittedTimestamps() throws Exception {
+      CommitHashMap map = new CommitHashMap(100, 0.5f);
+      assertEquals(0, map.getCommittedTimestamp(1));
+      assertEquals(0, map.setCommitted(1, 2, 0));
+      assertEquals(2, map.getCommittedTimestamp(1));
+      assertEquals(0, map.getCommittedTimestamp(51));
+
+      // 51 takes the place of 1 in a table of 50
+      assertEquals(2, map.setCommitted(51, 52, 0));
+      assertEquals(0, map.getCommittedTimestamp(1));
+      assertEquals(52, map.getCommittedTimestamp(51));
+      assertEquals(60, map.setCommitted(101, 102, 60));
+   }
+
+   @Test
+   public void testStatistics() throws Exception {
+      CommitHashMap map = new CommitHashMap(1000, 0.5f, 4);
+      map.put("row".getBytes(), TABLE, 10, 42, 0);
+      map.get("row".getBytes(), TABLE, 42);
+      map.get("other".getBytes(), TABLE, 43);
+      assertEquals(1, map.gettotalput());
+      assertEquals(2, map.gettotalget());
+      assertTrue(map.gettotalwalkforput() > 0);
+      assertTrue(map.gettotalwalkforget() > 0);
+   }
+
+   @Test
+   public void testShards() throws Exception {
+      assertEquals(1, new CommitHashMap(1000, 0.5f).getShardCount());
+      assertEquals(8, new CommitHashMap(1000, 0.5f, 5).getShardCount());
+
+      CommitHashMap map = new CommitHashMap(1000, 0.5f, 8);
+      RowKey[] rows = new RowKey[100];
+      for (int i = 0; i < rows.length; i++) {
+         rows[i] = new RowKey(Integer.toString(i).getBytes(), TABLE);
+      }
+      int[] locked = map.lockShards(rows);
+      assertTrue(locked.length > 1);
+      for (int i = 1; i < locked.length; i++) {
+         assertTrue(locked[i - 1] < locked[i]);
+      }
+      for (int i = 0; i < rows.length; i++) {
+         map.put(rows[i].getRow(), TABLE, i + 1, rows[i].hashCode(), 0);
+      }
+      map.unlockShards(locked);
+      for (int i = 0; i < rows.length; i++) {
+         assertEquals(i + 1, map.get(rows[i].getRow(), TABLE, rows[i].hashCode()));
+      }
+      assertEquals(0, map.lockShards(new RowKey[0]).length);
+   }
+
+   /**
+    * Evictions raise the largest deleted timestamp of their shard only.
+    */
+   @Test
+   public void testLargestDeletedTimestampPerShard() throws Exception {
+      CommitHashMap map = new CommitHashMap(128, 0.5f, 2);
+      RowKey other = null;
+      long commitTimestamp = 0;
+      for (int i = 0; map.getLargestDeletedTimestamp(new RowKey(TABLE, TABLE).hashCode()) == 0; i++) {
+         RowKey row = new RowKey(Integer.toString(i).getBytes(), TABLE);
+         if (shardOf(map, row) != shardOf(map, new RowKey(TABLE, TABLE))) {
+            other = row;
+            continue;
+         }
+         commitTimestamp++;
+         long ldt = map.put(row.getRow(), TABLE, commitTimestamp, row.hashCode(), 0);
+         assertEquals(map.getLargestDeletedTimestamp(row.hashCode()), ldt);
+      }
+      assertTrue(other != null);
+      assertEquals(0, map.getLargestDeletedTimestamp(other.hashCode()));
+      assertEquals(7, map.put(other.getRow(), TABLE, commitTimestamp + 1, other.hashCode(), 7));
+   }
+
+   private int shardOf(CommitHashMap map, RowKey row) {
+      int[] locked = map.lockShards(new RowKey[] { row });
+      map.unlockShards(locked);
+      return locked[0];
+   }
+}
@@ -16,10 +16,17 @@
 
 package com.yahoo.omid.tso;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
+import com.yahoo.omid.tso.messages.CommitQueryRequest;
+import com.yahoo.omid.tso.messages.CommitQueryResponse;
+import com.yahoo.omid.tso.messages.TimestampRangeRequest;
+import com.yahoo.omid.tso.messages.TimestampRangeResponse;
+import com.yahoo.omid.tso.messages.TimestampReleaseRequest;
 import com.yahoo.omid.tso.messages.TimestampRequest;
 import com.yahoo.omid.tso.messages.TimestampResponse;
 
@@ -35,5 +42,51 @@ public class TestTimestamps extends TSOTestBase {
       TimestampResponse tr2 = clientHandler.receiveMessage(TimestampResponse.class);
       assertTrue(tr2.timestamp > tr1.timestamp);
    }
+
+   @Test
+   public void testGetTimestampRange() throws Exception {
+      clientHandler.sendMessage(new TimestampRequest());
+      clientHandler.receiveBootstrap();
+      TimestampResponse tr1 = clientHandler.receiveMessage(TimestampResponse.class);
+
+      clientHandler.sendMessage(new TimestampRangeRequest(100));
+      TimestampRangeResponse trr = clientHandler.receiveMessage(TimestampRangeResponse.class);
+      assertTrue(trr.timestamp > tr1.timestamp);
+      assertEquals(100, trr.count);
+
+      clientHandler.sendMessage(new TimestampRangeRequest(TimestampRangeRequest.MAX_COUNT + 1));
+      TimestampRangeResponse capped = clientHandler.receiveMessage(TimestampRangeResponse.class);
+      assertTrue(capped.timestamp >= trr.timestamp + trr.count);
+      assertEquals(TimestampRangeRequest.MAX_COUNT, capped.count);
+
+      clientHandler.sendMessage(new TimestampRequest());
+      TimestampResponse tr2 = clientHandler.receiveMessage(TimestampResponse.class);
+      assertTrue(tr2.timestamp >= capped.timestamp + capped.count);
+   }
+
+   @Test
+   public void testReleaseTimestampRange() throws Exception {
+      clientHandler.sendMessage(new TimestampRequest());
+      clientHandler.receiveBootstrap();
+      clientHandler.receiveMessage(TimestampResponse.class);
+
+      clientHandler.sendMessage(new TimestampRangeRequest(10));
+      TimestampRangeResponse trr = clientHandler.receiveMessage(TimestampRangeResponse.class);
+      clientHandler.sendMessage(new TimestampRequest());
+      TimestampResponse tr = clientHandler.receiveMessage(TimestampResponse.class);
+
+      // an unused timestamp of the range is taken as a running transaction
+      clientHandler.sendMessage(new CommitQueryRequest(tr.timestamp, trr.timestamp + 5));
+      CommitQueryResponse cqr1 = clientHandler.receiveMessage(CommitQueryResponse.class);
+      assertFalse(cqr1.committed);
+      assertFalse(cqr1.retry);
+
+      // and it is over once released
+      clientHandler.sendMessage(new TimestampReleaseRequest(trr.timestamp + 1, 9));
+      clientHandler.sendMessage(new CommitQueryRequest(tr.timestamp, trr.timestamp + 5));
+      CommitQueryResponse cqr2 = clientHandler.receiveMessage(CommitQueryResponse.class);
+      assertFalse(cqr2.committed);
+      assertTrue(cqr2.retry);
+   }
    
 }
\ No newline at end of file
@@ -0,0 +1,228 @@
+/**
+ * Copyright (c) 2011 Yahoo! Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. See accompanying LICENSE file.
+ */
+
+package com.yahoo.omid.tso.persistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.yahoo.omid.tso.TSOServerConfig;
+import com.yahoo.omid.tso.TSOState;
+import com.yahoo.omid.tso.persistence.LoggerAsyncCallback.AddRecordCallback;
+import com.yahoo.omid.tso.persistence.LoggerException.Code;
+
+public class TestFileStateLogger {
+
+   private File dir;
+   private TSOServerConfig config;
+   private FileStateBuilder builder;
+   private int segmentSize;
+
+   @Before
+   public void setUp() throws Exception {
+      dir = File.createTempFile("omid-wal", "");
+      dir.delete();
+      config = TSOServerConfig.configFactory(1234, 0, dir.getPath());
+      segmentSize = FileStateLogger.SEGMENT_SIZE;
+      FileStateLogger.SEGMENT_SIZE = 64 * 1024;
+   }
+
+   @After
+   public void tearDown() throws Exception {
+      shutdown();
+      FileStateLogger.SEGMENT_SIZE = segmentSize;
+      for (File f : dir.listFiles()) {
+         f.delete();
+      }
+      dir.delete();
+   }
+
+   private TSOState recover() throws Exception {
+      builder = new FileStateBuilder(config);
+      try {
+         return builder.buildState();
+      } finally {
+         builder.shutdown();
+      }
+   }
+
+   private void shutdown() {
+      if (builder != null && builder.logger != null) {
+         builder.logger.shutdown();
+      }
+      builder = null;
+   }
+
+   private void add(TSOState state, byte[]... records) throws Exception {
+      final CountDownLatch latch = new CountDownLatch(records.length);
+      final AtomicInteger failed = new AtomicInteger();
+      for (byte[] record : records) {
+         state.addRecord(record, new AddRecordCallback() {
+            @Override
+            public void addRecordComplete(int rc, Object ctx) {
+               if (rc != Code.OK) {
+                  failed.incrementAndGet();
+               }
+               latch.countDown();
+            }
+         }, null);
+      }
+      latch.await();
+      assertEquals(0, failed.get());
+   }
+
+   private static byte[] record(byte op, long... values) throws IOException {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      DataOutputStream dos = new DataOutputStream(baos);
+      dos.writeByte(op);
+      for (long value : values) {
+         dos.writeLong(value);
+      }
+      return baos.toByteArray();
+   }
+
+   private int countSegments() {
+      int segments = 0;
+      for (String name : dir.list()) {
+         if (FileSegment.number(name) >= 0) {
+            segments++;
+         }
+      }
+      return segments;
+   }
+
+   @Test
+   public void testRecovery() throws Exception {
+      TSOState state = recover();
+      assertEquals(0, state.largestDeletedTimestamp);
+      add(state, record(LoggerProtocol.TIMESTAMPORACLE, 1000),
+            record(LoggerProtocol.COMMIT, 10, 11),
+            record(LoggerProtocol.LARGESTDELETEDTIMESTAMP, 5));
+      add(state, record(LoggerProtocol.LARGESTDELETEDTIMESTAMP, 8));
+      shutdown();
+
+      state = recover();
+      assertEquals(8, state.largestDeletedTimestamp);
+      assertTrue(builder.timestampOracle.first() >= 1000);
+      long first = builder.timestampOracle.first();
+      add(state, record(LoggerProtocol.TIMESTAMPORACLE, first + 1000));
+      shutdown();
+
+      state = recover();
+      assertEquals(8, state.largestDeletedTimestamp);
+      assertTrue(builder.timestampOracle.first() >= first + 1000);
+   }
+
+   @Test
+   public void testLock() throws Exception {
+      recover();
+      FileStateBuilder other = new FileStateBuilder(config);
+      try {
+         other.buildState();
+         fail("The log directory is locked");
+      } catch (LoggerException e) {
+         assertEquals(Code.INITLOCKFAILED, e.getCode());
+      } finally {
+         other.shutdown();
+      }
+   }
+
+   @Test
+   public void testTornWrite() throws Exception {
+      TSOState state = recover();
+      add(state, record(LoggerProtocol.LARGESTDELETEDTIMESTAMP, 5));
+      add(state, record(LoggerProtocol.LARGESTDELETEDTIMESTAMP, 8));
+      shutdown();
+
+      // the last byte of the last record
+      File segment = new File(dir, FileSegment.name(0));
+      RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+      long last = FileSegment.HEADER_SIZE + 2 * FileSegment.ENTRY_HEADER_SIZE + 2 * 9 - 1;
+      raf.seek(last);
+      int b = raf.read();
+      raf.seek(last);
+      raf.write(b ^ 1);
+      raf.close();
+
+      state = recover();
+      assertEquals(5, state.largestDeletedTimestamp);
+      add(state, record(LoggerProtocol.LARGESTDELETEDTIMESTAMP, 9));
+      shutdown();
+
+      state = recover();
+      assertEquals(9, state.largestDeletedTimestamp);
+   }
+
+   @Test
+   public void testMissingRecords() throws Exception {
+      TSOState state = recover();
+      add(state, record(LoggerProtocol.LARGESTDELETEDTIMESTAMP, 5));
+      shutdown();
+      state = recover();
+      add(state, record(LoggerProtocol.LARGESTDELETEDTIMESTAMP, 8));
+      shutdown();
+
+      RandomAccessFile raf = new RandomAccessFile(new File(dir, FileSegment.name(0)), "rw");
+      raf.seek(FileSegment.HEADER_SIZE);
+      raf.writeInt(0);
+      raf.close();
+
+      try {
+         recover();
+         fail("The first segment is corrupted");
+      } catch (LoggerException e) {
+         assertEquals(Code.LOGCORRUPTED, e.getCode());
+      }
+   }
+
+   @Test
+   public void testRecycling() throws Exception {
+      TSOState state = recover();
+      long timestamp = 0;
+      for (int i = 0; i < 10000; i++) {
+         byte[][] records = new byte[100][];
+         for (int j = 0; j < records.length; j++) {
+            timestamp += 2;
+            records[j] = record(LoggerProtocol.COMMIT, timestamp - 1, timestamp);
+         }
+         add(state, records);
+         add(state, record(LoggerProtocol.TIMESTAMPORACLE, timestamp + 1000),
+               record(LoggerProtocol.LARGESTDELETEDTIMESTAMP, timestamp - 100),
+               record(LoggerProtocol.SNAPSHOT, i));
+         assertTrue(countSegments() <= 5);
+      }
+      assertEquals(10000L * 100 * 2, timestamp);
+      shutdown();
+
+      state = recover();
+      // commits evicted from the commit table may raise it further
+      assertTrue(state.largestDeletedTimestamp >= timestamp - 100);
+      assertTrue(builder.timestampOracle.first() >= timestamp + 1000);
+   }
+}